@@ -45,4 +45,17 @@ public interface ReadyRunnable extends Runnable {
      * @return a boolean.
      */
     public boolean isReady();
+
+    /**
+     * Asks the runnable to run the given callback as soon as it becomes
+     * ready, after {@link #isReady()} returned false. The callback may be run
+     * by the calling thread if the runnable is ready by then.
+     *
+     * @param callback run once, when the runnable is ready
+     * @return false if the runnable cannot tell when it will be ready, in which
+     *         case the callback is never run and the scheduler has to ask again
+     */
+    default boolean notifyWhenReady(Runnable callback) {
+        return false;
+    }
 }
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.scheduler;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +54,7 @@ public class Schedule {
     private final ScheduleTimer m_timer;
     private volatile int m_currentExpirationCode;
     private volatile boolean m_scheduled = false;
+    private final AtomicLong m_tick = new AtomicLong();
 	
     
     class ScheduleEntry implements ReadyRunnable {
@@ -74,8 +76,21 @@ public class Schedule {
             return isExpired() || m_schedulable.isReady();
         }
 
+        @Override
+        public boolean notifyWhenReady(Runnable callback) {
+            return !isExpired() && m_schedulable.notifyWhenReady(callback);
+        }
+
         @Override
         public void run() {
+            try {
+                doRun();
+            } finally {
+                m_tick.incrementAndGet();
+            }
+        }
+
+        private void doRun() {
             if (isExpired()) {
                 LOG.debug("Schedule {} expired.  No need to run.", this);
                 return;
@@ -131,8 +146,10 @@ public class Schedule {
     }
 
     private void schedule(long interval) {
-        if (interval >= 0 && m_scheduled)
+        if (interval >= 0 && m_scheduled) {
+            m_tick.incrementAndGet();
             m_timer.schedule(interval, new ScheduleEntry(++m_currentExpirationCode));
+        }
     }
 
     /**
@@ -155,6 +172,19 @@ public class Schedule {
     public void unschedule() {
         m_scheduled = false;
         m_currentExpirationCode++;
+        m_tick.incrementAndGet();
+    }
+
+    /**
+     * Identifies the current run of the schedule. The tick changes whenever a
+     * run ends, whether or not the schedulable was run, and whenever the
+     * schedule is changed, so that work started while the schedulable was
+     * checked for readiness can be matched to the run that uses it.
+     *
+     * @return the current tick
+     */
+    public long getTick() {
+        return m_tick.get();
     }
 
 }
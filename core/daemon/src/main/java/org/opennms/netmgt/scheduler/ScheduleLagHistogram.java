@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of the delay between the time a task was due and
+ * the time a worker actually started running it. Recording is lock-free so
+ * it can be updated from every worker thread without contention on a shared
+ * monitor.
+ */
+public class ScheduleLagHistogram {
+
+    /**
+     * Upper bounds (inclusive, in milliseconds) of each bucket. Values larger
+     * than the last bound land in an implicit overflow bucket.
+     */
+    private static final long[] BOUNDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500,
+        1000, 2000, 5000, 10000, 30000, 60000, 300000
+    };
+
+    private final AtomicLongArray m_counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_sum = new AtomicLong();
+    private final AtomicLong m_max = new AtomicLong();
+
+    /**
+     * Record a single lag observation.
+     *
+     * @param lagMillis the lag in milliseconds, negative values count as 0
+     */
+    public void record(final long lagMillis) {
+        final long lag = Math.max(0, lagMillis);
+        m_counts.incrementAndGet(bucketFor(lag));
+        m_count.incrementAndGet();
+        m_sum.addAndGet(lag);
+        long max;
+        while (lag > (max = m_max.get())) {
+            if (m_max.compareAndSet(max, lag)) {
+                break;
+            }
+        }
+    }
+
+    private static int bucketFor(final long lag) {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (lag <= BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BOUNDS.length;
+    }
+
+    public long getCount() {
+        return m_count.get();
+    }
+
+    public long getMax() {
+        return m_max.get();
+    }
+
+    public double getMean() {
+        final long count = m_count.get();
+        return count == 0 ? 0d : (double)m_sum.get() / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the given percentile,
+     * or the maximum observed lag when the percentile falls into the overflow
+     * bucket.
+     *
+     * @param percentile a value between 0 and 100
+     * @return the estimated lag in milliseconds at that percentile
+     */
+    public long getPercentile(final double percentile) {
+        final long[] counts = getBucketCounts();
+        long total = 0;
+        for (final long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long)Math.ceil(total * Math.min(100d, Math.max(0d, percentile)) / 100d);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return a copy of the per-bucket counts, the last entry being the overflow bucket
+     */
+    public long[] getBucketCounts() {
+        final long[] counts = new long[m_counts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = m_counts.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * @return a copy of the inclusive upper bound of every bucket except the overflow bucket
+     */
+    public static long[] getBucketBounds() {
+        return BOUNDS.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScheduleLagHistogram[count=%d, mean=%.1fms, p50=%dms, p99=%dms, max=%dms]",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link Scheduler} used by a daemon. The implementation can be
+ * selected with system properties, either for every daemon at once:
+ *
+ * <pre>
+ * org.opennms.netmgt.scheduler.type=wheel
+ * </pre>
+ *
+ * or for a single daemon, using the lower-cased name of its scheduler:
+ *
+ * <pre>
+ * org.opennms.netmgt.scheduler.poller.type=wheel
+ * org.opennms.netmgt.scheduler.collectd.type=legacy
+ * </pre>
+ *
+ * The default is the {@link LegacyScheduler}.
+ */
+public final class Schedulers {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Schedulers.class);
+
+    public static final String TYPE_PROPERTY = "org.opennms.netmgt.scheduler.type";
+
+    public static final String TICK_PROPERTY = "org.opennms.netmgt.scheduler.wheel.tick";
+
+    public static final String QUEUE_CAPACITY_PROPERTY = "org.opennms.netmgt.scheduler.wheel.queueCapacity";
+
+    public static final String STARTUP_SPREAD_PROPERTY = "org.opennms.netmgt.scheduler.wheel.startupSpread";
+
+    public static final String LEGACY = "legacy";
+
+    public static final String WHEEL = "wheel";
+
+    private Schedulers() {
+    }
+
+    /**
+     * Create the scheduler configured for the given daemon.
+     *
+     * @param parent
+     *            the name of the scheduler, also used as the thread name prefix
+     * @param maxSize
+     *            the number of threads used to run the scheduled tasks
+     * @return a new, not yet started, scheduler
+     */
+    public static Scheduler newScheduler(final String parent, final int maxSize) {
+        return newScheduler(parent, maxSize, LEGACY);
+    }
+
+    /**
+     * Create the scheduler configured for the given daemon, using the given
+     * type when none is configured.
+     *
+     * @param parent
+     *            the name of the scheduler, also used as the thread name prefix
+     * @param maxSize
+     *            the number of threads used to run the scheduled tasks
+     * @param defaultType
+     *            either {@link #LEGACY} or {@link #WHEEL}
+     * @return a new, not yet started, scheduler
+     */
+    public static Scheduler newScheduler(final String parent, final int maxSize, final String defaultType) {
+        final String perDaemon = "org.opennms.netmgt.scheduler." + parent.toLowerCase(Locale.ROOT) + ".type";
+        final String type = System.getProperty(perDaemon, System.getProperty(TYPE_PROPERTY, defaultType)).trim().toLowerCase(Locale.ROOT);
+
+        if (Objects.equals(WHEEL, type)) {
+            LOG.info("Using a timing wheel scheduler for {}", parent);
+            return new TimingWheelScheduler(parent, maxSize,
+                    Long.getLong(TICK_PROPERTY, TimingWheelScheduler.DEFAULT_TICK_MILLIS),
+                    TimingWheelScheduler.DEFAULT_WHEEL_BITS,
+                    Integer.getInteger(QUEUE_CAPACITY_PROPERTY, TimingWheelScheduler.DEFAULT_QUEUE_CAPACITY),
+                    Long.getLong(STARTUP_SPREAD_PROPERTY, TimingWheelScheduler.DEFAULT_STARTUP_SPREAD_MILLIS));
+        }
+        if (!Objects.equals(LEGACY, type)) {
+            LOG.warn("Unknown scheduler type '{}' for {}, falling back to '{}'", type, parent, LEGACY);
+        }
+        return new LegacyScheduler(parent, maxSize);
+    }
+}
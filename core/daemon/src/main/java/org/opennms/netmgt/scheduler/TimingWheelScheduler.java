@@ -0,0 +1,566 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} backed by a hierarchical timing wheel.
+ *
+ * Unlike the {@link LegacyScheduler}, which walks every scheduled runnable
+ * once a second, this scheduler files each runnable into the bucket of the
+ * tick it is due in, so the cost of a tick is proportional to the number of
+ * tasks that actually expire. Tasks that are far in the future live in the
+ * coarser wheels and are cascaded down as their time approaches.
+ *
+ * Tasks that are scheduled without a delay while the scheduler is starting
+ * up are spread with random jitter across the start-up window, so that a
+ * daemon that schedules its whole inventory at once does not hit every
+ * agent in the same second.
+ *
+ * A task that is due but not ready yet is handed to a worker as soon as it
+ * reports that it became ready, see {@link ReadyRunnable#notifyWhenReady(Runnable)}.
+ * Tasks that cannot report it are asked again a second later.
+ *
+ * The worker threads take their tasks from one shared bounded queue, so a
+ * task that runs long only holds up its own thread and never the tasks
+ * queued behind it. When the queue is full the due tasks stay in the wheel
+ * and are retried on the next tick instead of piling up in an unbounded
+ * executor queue. The delay between the time a task was originally due and
+ * the time it actually started, including the time spent waiting for it to
+ * become ready, is recorded in a {@link ScheduleLagHistogram}.
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    public static final int DEFAULT_WHEEL_BITS = 9;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    public static final long DEFAULT_STARTUP_SPREAD_MILLIS = 60000;
+
+    /**
+     * How long to wait before asking a due, but not yet ready, runnable again
+     * when it cannot notify the scheduler once it is ready. This matches the
+     * polling period of the {@link LegacyScheduler}.
+     */
+    static final long NOT_READY_RETRY_MILLIS = 1000;
+
+    private static final int LEVELS = 4;
+
+    private final String m_name;
+
+    private final long m_tickMillis;
+
+    private final int m_wheelBits;
+
+    private final int m_mask;
+
+    private final long m_maxTicks;
+
+    /**
+     * The buckets of each wheel, indexed by level and slot. Guarded by itself.
+     */
+    private final ArrayDeque<Entry>[][] m_wheel;
+
+    private final long m_baseTime;
+
+    /**
+     * The last tick that has been processed. Guarded by {@link #m_wheel}.
+     */
+    private long m_currentTick;
+
+    private final BlockingQueue<Entry> m_queue;
+
+    private final Thread[] m_workers;
+
+    private final long m_startupSpreadMillis;
+
+    private volatile long m_spreadUntil = Long.MAX_VALUE;
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    private final AtomicLong m_numTasksExecuted = new AtomicLong();
+
+    private final AtomicLong m_numTasksDeferred = new AtomicLong();
+
+    private final ScheduleLagHistogram m_lag = new ScheduleLagHistogram();
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    /**
+     * Constructs a new timing wheel scheduler using the default tick, wheel
+     * size, queue capacity per worker and start-up spread.
+     *
+     * @param parent
+     *            String prepended to the names of the scheduler threads
+     * @param maxSize
+     *            The number of worker threads.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_BITS, DEFAULT_QUEUE_CAPACITY, DEFAULT_STARTUP_SPREAD_MILLIS);
+    }
+
+    /**
+     * Constructs a new timing wheel scheduler.
+     *
+     * @param parent
+     *            String prepended to the names of the scheduler threads
+     * @param maxSize
+     *            The number of worker threads.
+     * @param tickMillis
+     *            The resolution of the innermost wheel.
+     * @param wheelBits
+     *            The base 2 logarithm of the number of slots in each wheel.
+     * @param queueCapacity
+     *            The number of tasks that may be waiting for a worker,
+     *            multiplied by the number of workers.
+     * @param startupSpreadMillis
+     *            The window across which tasks scheduled without a delay
+     *            during start-up are spread, 0 to disable.
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickMillis, final int wheelBits, final int queueCapacity, final long startupSpreadMillis) {
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        Assert.isTrue(tickMillis > 0, "tickMillis must be positive");
+        Assert.isTrue(wheelBits > 0 && wheelBits * LEVELS < 63, "wheelBits out of range");
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+
+        m_name = parent + "-Scheduler";
+        m_status = START_PENDING;
+        m_tickMillis = tickMillis;
+        m_wheelBits = wheelBits;
+        m_mask = (1 << wheelBits) - 1;
+        m_maxTicks = (1L << (wheelBits * LEVELS)) - 1;
+        m_wheel = new ArrayDeque[LEVELS][1 << wheelBits];
+        m_baseTime = getCurrentTime();
+        m_currentTick = 0;
+        m_startupSpreadMillis = Math.max(0, startupSpreadMillis);
+
+        m_queue = new ArrayBlockingQueue<>((int)Math.min(Integer.MAX_VALUE, (long)queueCapacity * maxSize));
+        final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory(parent, maxSize);
+        m_workers = new Thread[maxSize];
+        for (int i = 0; i < maxSize; i++) {
+            m_workers[i] = threadFactory.newThread(this::work);
+            m_workers[i].setDaemon(true);
+        }
+    }
+
+    private static class Entry {
+        private final ReadyRunnable m_runnable;
+        /**
+         * The time the runnable was originally due, kept across retries so
+         * that the recorded lag covers the whole wait.
+         */
+        private final long m_due;
+        /**
+         * The time the entry is next looked at, later than {@link #m_due}
+         * once the runnable was found not to be ready.
+         */
+        private final long m_deadline;
+        private long m_tick;
+
+        private Entry(final ReadyRunnable runnable, final long deadline) {
+            this(runnable, deadline, deadline);
+        }
+
+        private Entry(final ReadyRunnable runnable, final long due, final long deadline) {
+            m_runnable = runnable;
+            m_due = due;
+            m_deadline = deadline;
+        }
+    }
+
+    /**
+     * The loop of every worker thread, taking the next task from the shared
+     * queue as soon as the previous one completed.
+     */
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Entry entry;
+            try {
+                entry = m_queue.take();
+            } catch (final InterruptedException e) {
+                break;
+            }
+            m_lag.record(getCurrentTime() - entry.m_due);
+            m_numTasksExecuted.incrementAndGet();
+            try {
+                entry.m_runnable.run();
+            } catch (final Throwable t) {
+                LOG.warn("run: unexpected exception running {}", entry.m_runnable, t);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(long interval, final ReadyRunnable runnable) {
+        final long now = getCurrentTime();
+        if (interval <= 0 && m_startupSpreadMillis > 0 && now < m_spreadUntil) {
+            interval = ThreadLocalRandom.current().nextLong(m_startupSpreadMillis);
+        }
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        m_scheduled.incrementAndGet();
+        synchronized (m_wheel) {
+            insert(new Entry(runnable, now + Math.max(0, interval)));
+        }
+    }
+
+    private long tickFor(final long time) {
+        final long offset = time - m_baseTime;
+        return offset <= 0 ? 0 : (offset + m_tickMillis - 1) / m_tickMillis;
+    }
+
+    /**
+     * Files the entry into the wheel, never into the tick currently being
+     * processed. Must be called while holding the lock on {@link #m_wheel}.
+     */
+    private void insert(final Entry entry) {
+        final long tick = Math.min(Math.max(tickFor(entry.m_deadline), m_currentTick + 1), m_currentTick + m_maxTicks);
+        entry.m_tick = tick;
+
+        final long delta = tick - m_currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << ((level + 1) * m_wheelBits))) {
+            level++;
+        }
+        final int slot = (int)((tick >>> (level * m_wheelBits)) & m_mask);
+        ArrayDeque<Entry> bucket = m_wheel[level][slot];
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            m_wheel[level][slot] = bucket;
+        }
+        bucket.add(entry);
+    }
+
+    /**
+     * Moves the wheel forward by one tick, collecting every entry that is due.
+     * Must be called while holding the lock on {@link #m_wheel}.
+     */
+    private void advance(final List<Entry> due) {
+        final long tick = ++m_currentTick;
+
+        // cascade the coarser wheels whose slot starts at this tick, outermost first
+        int top = 0;
+        while (top < LEVELS - 1 && (tick & ((1L << ((top + 1) * m_wheelBits)) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level > 0; level--) {
+            final int slot = (int)((tick >>> (level * m_wheelBits)) & m_mask);
+            final ArrayDeque<Entry> bucket = m_wheel[level][slot];
+            if (bucket == null) {
+                continue;
+            }
+            m_wheel[level][slot] = null;
+            for (final Entry entry : bucket) {
+                if (entry.m_tick <= tick) {
+                    due.add(entry);
+                } else {
+                    insert(entry);
+                }
+            }
+        }
+
+        final int slot = (int)(tick & m_mask);
+        final ArrayDeque<Entry> bucket = m_wheel[0][slot];
+        if (bucket != null) {
+            m_wheel[0][slot] = null;
+            due.addAll(bucket);
+        }
+    }
+
+    private void dispatch(final List<Entry> due, final long now) {
+        final List<Entry> retry = new ArrayList<>();
+        for (final Entry entry : due) {
+            if (entry.m_deadline > now) {
+                // clamped to the size of the outermost wheel, not due yet
+                retry.add(entry);
+                continue;
+            }
+            if (!entry.m_runnable.isReady()) {
+                if (!entry.m_runnable.notifyWhenReady(() -> dispatchReady(entry))) {
+                    retry.add(new Entry(entry.m_runnable, entry.m_due, now + NOT_READY_RETRY_MILLIS));
+                }
+                continue;
+            }
+            m_scheduled.decrementAndGet();
+            if (!offer(entry)) {
+                m_scheduled.incrementAndGet();
+                m_numTasksDeferred.incrementAndGet();
+                retry.add(entry);
+            }
+        }
+
+        if (!retry.isEmpty()) {
+            synchronized (m_wheel) {
+                for (final Entry entry : retry) {
+                    insert(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands an entry that just became ready to the workers without waiting for
+     * the next tick, or files it into the next tick if the queue is full.
+     */
+    private void dispatchReady(final Entry entry) {
+        m_scheduled.decrementAndGet();
+        if (!offer(entry)) {
+            m_scheduled.incrementAndGet();
+            m_numTasksDeferred.incrementAndGet();
+            synchronized (m_wheel) {
+                insert(entry);
+            }
+        }
+    }
+
+    /**
+     * Hands the entry to whichever worker becomes idle first.
+     */
+    private boolean offer(final Entry entry) {
+        return m_queue.offer(entry);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        for (final Thread worker : m_workers) {
+            worker.start();
+        }
+        m_spreadUntil = getCurrentTime() + m_startupSpreadMillis;
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Returns total number of elements currently scheduled, including the
+     * ones that are due but have not been handed to a worker yet.
+     *
+     * @return the number of elements in the wheel
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the number of tasks that are waiting for a worker.
+     *
+     * @return the size of the shared queue
+     */
+    public int getQueued() {
+        return m_queue.size();
+    }
+
+    /**
+     * Returns the number of times a due task was kept in the wheel for
+     * another tick because the queue was full.
+     *
+     * @return the number of deferrals
+     */
+    public long getNumTasksDeferred() {
+        return m_numTasksDeferred.get();
+    }
+
+    /**
+     * Returns the histogram of the delay between the time tasks were due
+     * and the time they started running.
+     *
+     * @return the lag histogram
+     */
+    public ScheduleLagHistogram getLagHistogram() {
+        return m_lag;
+    }
+
+    /**
+     * The main method of the scheduler. This method advances the wheel
+     * once per tick and hands the expired runnables to the workers.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        final List<Entry> due = new ArrayList<>();
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                try {
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        if (m_status == PAUSE_PENDING) {
+                            LOG.debug("run: pausing.");
+                        }
+                        m_status = PAUSED;
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    break;
+                }
+
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+                    m_status = RUNNING;
+                }
+            }
+
+            final long now = getCurrentTime();
+            final long nextTick;
+            synchronized (m_wheel) {
+                final long target = Math.max(0, now - m_baseTime) / m_tickMillis;
+                while (m_currentTick < target) {
+                    advance(due);
+                }
+                nextTick = m_currentTick + 1;
+            }
+
+            if (!due.isEmpty()) {
+                dispatch(due, now);
+                due.clear();
+            }
+
+            synchronized (this) {
+                final long sleep = m_baseTime + nextTick * m_tickMillis - getCurrentTime();
+                if (sleep > 0 && m_status == RUNNING) {
+                    try {
+                        wait(sleep);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (final Thread worker : m_workers) {
+            worker.interrupt();
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+}
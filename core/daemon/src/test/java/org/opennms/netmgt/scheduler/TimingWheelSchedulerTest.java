@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.core.fiber.PausableFiber;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler m_scheduler;
+
+    @After
+    public void tearDown() {
+        if (m_scheduler != null && m_scheduler.getStatus() != PausableFiber.STOPPED) {
+            m_scheduler.stop();
+        }
+    }
+
+    private static class TimedRunnable implements ReadyRunnable {
+        private final long m_notBefore;
+        private final CountDownLatch m_latch;
+        private final AtomicInteger m_early;
+
+        private TimedRunnable(final long notBefore, final CountDownLatch latch, final AtomicInteger early) {
+            m_notBefore = notBefore;
+            m_latch = latch;
+            m_early = early;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (System.currentTimeMillis() < m_notBefore) {
+                m_early.incrementAndGet();
+            }
+            m_latch.countDown();
+        }
+    }
+
+    @Test
+    public void testRunsEveryTaskNoSoonerThanScheduled() throws InterruptedException {
+        // 4 slots per wheel so that the longer delays have to cascade through the outer wheels
+        m_scheduler = new TimingWheelScheduler("Test", 4, 5, 2, 100, 0);
+        m_scheduler.start();
+
+        final int count = 500;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            final long delay = (i * 7) % 1500;
+            m_scheduler.schedule(delay, new TimedRunnable(System.currentTimeMillis() + delay, latch, early));
+        }
+
+        assertTrue("not every task ran", latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(count, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+        assertEquals(count, m_scheduler.getLagHistogram().getCount());
+    }
+
+    @Test
+    public void testWaitsForReadiness() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 1, 10, 4, 10, 0);
+        m_scheduler.start();
+
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return ready.get();
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertEquals(false, latch.await(300, TimeUnit.MILLISECONDS));
+        ready.set(true);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDispatchesAsSoonAsReady() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 1, 10, 4, 10, 0);
+        m_scheduler.start();
+
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        final AtomicReference<Runnable> callback = new AtomicReference<>();
+        final CountDownLatch registered = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return ready.get();
+            }
+
+            @Override
+            public boolean notifyWhenReady(final Runnable whenReady) {
+                callback.set(whenReady);
+                registered.countDown();
+                return true;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue(registered.await(5, TimeUnit.SECONDS));
+        ready.set(true);
+        callback.get().run();
+        // well within the interval used to re-check runnables that cannot notify
+        assertTrue(latch.await(TimingWheelScheduler.NOT_READY_RETRY_MILLIS / 2, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testLagIncludesTimeSpentNotReady() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 1, 10, 4, 10, 0);
+        m_scheduler.start();
+
+        final long readyAt = System.currentTimeMillis() + TimingWheelScheduler.NOT_READY_RETRY_MILLIS + 200;
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return System.currentTimeMillis() >= readyAt;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // measured from the original deadline, not from the last readiness check
+        assertTrue(m_scheduler.getLagHistogram().getMax() >= TimingWheelScheduler.NOT_READY_RETRY_MILLIS);
+    }
+
+    @Test
+    public void testSlowTaskDoesNotHoldUpOtherWorkers() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 4, 10, 0);
+        m_scheduler.start();
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // every one of these has to go through the one worker that is not blocked
+        final int count = 20;
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            m_scheduler.schedule(0, new TimedRunnable(0, latch, new AtomicInteger()));
+        }
+
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            blocker.countDown();
+        }
+    }
+
+    @Test
+    public void testFullQueuesDeferTasks() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 1, 10, 4, 1, 0);
+        m_scheduler.start();
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            m_scheduler.schedule(0, new ReadyRunnable() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void run() {
+                    try {
+                        blocker.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        Thread.sleep(200);
+        assertTrue(m_scheduler.getNumTasksDeferred() > 0);
+        assertTrue(m_scheduler.getQueued() <= 1);
+
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStartupSpread() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 6, 100, 1000);
+
+        final int count = 200;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger early = new AtomicInteger();
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            m_scheduler.schedule(0, new TimedRunnable(0, latch, early));
+        }
+        m_scheduler.start();
+
+        Thread.sleep(250);
+        assertTrue("tasks were not spread across the start-up window", latch.getCount() > 0);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 500);
+    }
+
+    @Test
+    public void testPauseAndResume() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 1, 10, 4, 10, 0);
+        m_scheduler.start();
+        while (m_scheduler.getStatus() != PausableFiber.RUNNING) {
+            Thread.sleep(10);
+        }
+
+        m_scheduler.pause();
+        while (m_scheduler.getStatus() != PausableFiber.PAUSED) {
+            Thread.sleep(10);
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(10, new TimedRunnable(0, latch, new AtomicInteger()));
+        assertEquals(false, latch.await(300, TimeUnit.MILLISECONDS));
+
+        m_scheduler.resume();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        final ScheduleLagHistogram histogram = new ScheduleLagHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(3);
+        }
+        histogram.record(150);
+        histogram.record(-5);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5, histogram.getPercentile(50));
+        assertEquals(5, histogram.getPercentile(98));
+        assertEquals(150, histogram.getPercentile(100));
+        assertEquals(150, histogram.getMax());
+    }
+}
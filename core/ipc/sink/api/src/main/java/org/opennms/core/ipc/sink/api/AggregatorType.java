@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.api;
+
+/**
+ * Selects the implementation used to realize a module's {@link AggregationPolicy}.
+ *
+ * Both implementations honor the completion size and completion interval of the
+ * policy, they only differ in how the buckets are stored and flushed.
+ */
+public enum AggregatorType {
+
+    /**
+     * Buckets are shared by all of the producer threads and guarded by striped locks.
+     * Aged buckets are found by periodically scanning all of the buckets.
+     */
+    DEFAULT,
+
+    /**
+     * Buckets are accumulated in per-core shards, so that producer threads rarely
+     * contend with one another, and aged buckets are flushed using a timing wheel.
+     *
+     * Messages with the same key that are sent from different threads may end up
+     * in different buckets.
+     */
+    SHARDED;
+
+    public static AggregatorType fromString(String type, AggregatorType defaultType) {
+        if (type == null) {
+            return defaultType;
+        }
+        for (AggregatorType aggregatorType : values()) {
+            if (aggregatorType.name().equalsIgnoreCase(type.trim())) {
+                return aggregatorType;
+            }
+        }
+        return defaultType;
+    }
+}
@@ -90,6 +90,16 @@ public interface SinkModule<S extends Message, T extends Message> {
      */
     AggregationPolicy<S,T,?> getAggregationPolicy();
 
+    /**
+     * Defines which aggregator implementation should be used to apply
+     * the {@link AggregationPolicy}.
+     *
+     * @return the type of aggregator used for this module
+     */
+    default AggregatorType getAggregatorType() {
+        return AggregatorType.DEFAULT;
+    }
+
     /**
      * Defines how messages should be asynchronously dispatched.
      *
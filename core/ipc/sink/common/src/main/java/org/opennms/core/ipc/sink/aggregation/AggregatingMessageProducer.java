@@ -29,21 +29,32 @@
 package org.opennms.core.ipc.sink.aggregation;
 
 import org.opennms.core.ipc.sink.api.AggregationPolicy;
+import org.opennms.core.ipc.sink.api.AggregatorType;
 import org.opennms.core.ipc.sink.api.MessageDispatcher;
 import org.opennms.core.ipc.sink.api.SinkModule;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * A {@link MessageDispatcher} that applies the {@link SinkModule}'s {@link AggregationPolicy}
- * using the {@link Aggregator}.
+ * using the {@link Aggregator}, or the {@link ShardedAggregator}.
  *
  * @author jwhite
  */
 public abstract class AggregatingMessageProducer<S, T> implements MessageDispatcher<S> {
 
-    private final Aggregator<S,T> aggregator;
+    private final MessageAggregator<S,T> aggregator;
 
     public AggregatingMessageProducer(String id, AggregationPolicy<S,T,?> policy) {
-        aggregator = new Aggregator<S,T>(id, policy, this);
+        this(id, policy, AggregatorType.DEFAULT, null);
+    }
+
+    public AggregatingMessageProducer(String id, AggregationPolicy<S,T,?> policy, AggregatorType aggregatorType, MetricRegistry metrics) {
+        if (aggregatorType == AggregatorType.SHARDED) {
+            aggregator = new ShardedAggregator<S,T>(id, policy, this, metrics);
+        } else {
+            aggregator = new Aggregator<S,T>(id, policy, this);
+        }
     }
 
     @Override
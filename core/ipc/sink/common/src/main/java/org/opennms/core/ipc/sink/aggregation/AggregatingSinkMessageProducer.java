@@ -29,20 +29,38 @@
 package org.opennms.core.ipc.sink.aggregation;
 
 import org.opennms.core.ipc.sink.api.AggregationPolicy;
+import org.opennms.core.ipc.sink.api.AggregatorType;
 import org.opennms.core.ipc.sink.api.MessageDispatcher;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.api.SyncDispatcher;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * A {@link MessageDispatcher} that applies the {@link SinkModule}'s {@link AggregationPolicy}
- * using the {@link Aggregator}.
+ * using the {@link Aggregator}, or the {@link ShardedAggregator}.
  *
  * @author jwhite
  */
 public abstract class AggregatingSinkMessageProducer<S extends Message, T extends Message> extends AggregatingMessageProducer<S,T> implements SyncDispatcher<S> {
 
+    /**
+     * System property prefix used to override the aggregator type of a module,
+     * i.e. org.opennms.ipc.sink.aggregation.Syslog.type=sharded
+     */
+    public static final String AGGREGATOR_TYPE_SYS_PROP_PREFIX = "org.opennms.ipc.sink.aggregation.";
+
     public AggregatingSinkMessageProducer(SinkModule<S, T> module) {
         super(module.getId(), module.getAggregationPolicy());
     }
+
+    public AggregatingSinkMessageProducer(SinkModule<S, T> module, MetricRegistry metrics) {
+        super(module.getId(), module.getAggregationPolicy(), getAggregatorType(module), metrics);
+    }
+
+    public static AggregatorType getAggregatorType(SinkModule<?, ?> module) {
+        final String type = System.getProperty(AGGREGATOR_TYPE_SYS_PROP_PREFIX + module.getId() + ".type");
+        return AggregatorType.fromString(type, module.getAggregatorType());
+    }
 }
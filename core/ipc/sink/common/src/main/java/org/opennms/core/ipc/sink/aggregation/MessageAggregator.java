@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.aggregation;
+
+import org.opennms.core.ipc.sink.api.AggregationPolicy;
+
+/**
+ * Realizes a given {@link AggregationPolicy}.
+ *
+ * @param <S> individual message
+ * @param <T> aggregated message (i.e. bucket)
+ */
+public interface MessageAggregator<S, T> extends AutoCloseable {
+
+    /**
+     * Aggregates the given messages into a bucket and returns
+     * the bucket if it is ready to be dispatched.
+     *
+     * @param message the message to aggregated
+     * @return the bucket if it is ready to be dispatched, or <code>null</code>
+     * if nothing is ready to be dispatched
+     */
+    T aggregate(S message);
+}
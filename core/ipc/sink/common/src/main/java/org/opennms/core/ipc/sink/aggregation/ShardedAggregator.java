@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.aggregation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opennms.core.ipc.sink.api.AggregationPolicy;
+import org.opennms.core.sysprops.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An alternative to the {@link Aggregator} for modules with many producer threads.
+ *
+ * Each producer thread is pinned to one of a fixed number of shards (one per core by default)
+ * and accumulates into the buckets held by that shard. The lock guarding a shard is only
+ * contended when more threads than shards are producing, or when the shard is being flushed.
+ *
+ * Instead of periodically scanning all of the buckets, every bucket which is waiting on the
+ * completion interval is linked into the slot of a timing wheel matching its deadline. The
+ * flush thread only visits the slots which have come due, so the cost of flushing is proportional
+ * to the number of expiring buckets rather than the number of live buckets. The buckets double
+ * as the wheel entries, so no additional objects are allocated when scheduling.
+ *
+ * @param <S> individual message
+ * @param <T> aggregated message (i.e. bucket)
+ */
+public class ShardedAggregator<S, T> implements MessageAggregator<S, T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedAggregator.class);
+
+    /**
+     * System property used to override the default number of shards.
+     */
+    public static final String NUM_SHARDS_SYS_PROP = "org.opennms.ipc.sink.aggregation.shards";
+
+    public static final int DEFAULT_NUM_SHARDS = Runtime.getRuntime().availableProcessors();
+
+    private static final int NUM_SHARDS = Math.max(1, SystemProperties.getInteger(NUM_SHARDS_SYS_PROP, DEFAULT_NUM_SHARDS));
+
+    /**
+     * Number of wheel ticks per completion interval. A bucket is flushed at most
+     * completionIntervalMs / TICKS_PER_INTERVAL after its deadline.
+     */
+    private static final int TICKS_PER_INTERVAL = 16;
+
+    private final AggregationPolicy<S,T,Object> aggregationPolicy;
+
+    private final AggregatingMessageProducer<S,T> messageProducer;
+
+    private final int completionSize;
+
+    private final long completionIntervalMs;
+
+    private final Shard[] shards;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    private final ThreadLocal<Shard> threadShard;
+
+    private final LongAdder bucketCount = new LongAdder();
+
+    private final Histogram bucketAge;
+
+    private final long tickMs;
+
+    private final AtomicReference<Bucket>[] slots;
+
+    private final ScheduledExecutorService flushExecutor;
+
+    /**
+     * The next tick to be visited by the flush thread.
+     */
+    private long nextTick;
+
+    public ShardedAggregator(String id, AggregationPolicy<S,T,?> policy, AggregatingMessageProducer<S,T> messageProducer, MetricRegistry metrics) {
+        this(id, policy, messageProducer, metrics, NUM_SHARDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ShardedAggregator(String id, AggregationPolicy<S,T,?> policy, AggregatingMessageProducer<S,T> messageProducer, MetricRegistry metrics, int numShards) {
+        aggregationPolicy = (AggregationPolicy<S,T,Object>)Objects.requireNonNull(policy);
+        this.messageProducer = Objects.requireNonNull(messageProducer);
+        completionSize = aggregationPolicy.getCompletionSize();
+        completionIntervalMs = aggregationPolicy.getCompletionIntervalMs();
+
+        shards = new ShardedAggregator.Shard[Math.max(1, numShards)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        threadShard = ThreadLocal.withInitial(() -> shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)]);
+
+        if (metrics != null) {
+            final String bucketsName = MetricRegistry.name(id, "aggregator", "buckets");
+            metrics.remove(bucketsName);
+            metrics.register(bucketsName, (Gauge<Long>) bucketCount::sum);
+            bucketAge = metrics.histogram(MetricRegistry.name(id, "aggregator", "bucketAge"));
+        } else {
+            bucketAge = null;
+        }
+
+        if (completionIntervalMs > 0) {
+            tickMs = Math.max(1, completionIntervalMs / TICKS_PER_INTERVAL);
+            // The wheel spans two intervals, so every pending deadline maps to a distinct
+            // slot even when the flush thread is running behind
+            final int slotCount = (int)Math.min(Integer.MAX_VALUE, (2 * completionIntervalMs) / tickMs + 1);
+            slots = new AtomicReference[slotCount];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new AtomicReference<>();
+            }
+            nextTick = System.currentTimeMillis() / tickMs;
+
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat(String.format("AggregatorFlush-%s", id))
+                    .setDaemon(true)
+                    .build());
+            flushExecutor.scheduleAtFixedRate(() -> {
+                try {
+                    flush(System.currentTimeMillis());
+                } catch (Throwable t) {
+                    // The executor stops scheduling the task if we throw, so we catch here to make
+                    // sure that the flushing keeps running
+                    LOG.error("An error occurred while flushing one or more aggregates in module '{}'.", id, t);
+                }
+            }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        } else {
+            tickMs = 0;
+            slots = null;
+            flushExecutor = null;
+        }
+    }
+
+    @Override
+    public T aggregate(S message) {
+        // Compute the key
+        final Object key = aggregationPolicy.key(message);
+        final Shard shard = threadShard.get();
+
+        Bucket bucket;
+        boolean created = false;
+        T accumulator;
+        shard.lock.lock();
+        try {
+            // Obtain the bucket, creating a new one if it doesn't already exist
+            bucket = shard.buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(shard, key);
+                shard.buckets.put(key, bucket);
+                created = true;
+            }
+
+            // Accumulate into the bucket
+            accumulator = bucket.accumulate(message);
+            if (accumulator != null) {
+                // The bucket is ready to be dispatched
+                shard.buckets.remove(key);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+
+        if (accumulator != null) {
+            if (!created) {
+                bucketCount.decrement();
+            }
+            recordAge(bucket, System.currentTimeMillis());
+        } else if (created) {
+            bucketCount.increment();
+            if (slots != null) {
+                schedule(bucket);
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Dispatches the buckets whose deadline falls on or before the given time.
+     */
+    protected void flush(long now) {
+        final long currentTick = now / tickMs;
+        // Never visit a slot more than once per pass, even if we've fallen behind by more than a rotation
+        for (long tick = Math.max(nextTick, currentTick - slots.length + 1); tick <= currentTick; tick++) {
+            Bucket bucket = slots[(int)Math.floorMod(tick, (long)slots.length)].getAndSet(null);
+            while (bucket != null) {
+                final Bucket next = bucket.nextScheduled;
+                bucket.nextScheduled = null;
+                if (bucket.deadline <= now) {
+                    expire(bucket, now);
+                } else {
+                    // Not due yet, this happens for buckets that share the current tick
+                    schedule(bucket);
+                }
+                bucket = next;
+            }
+        }
+        // The current tick is revisited on the next pass since more buckets may come due within it
+        nextTick = currentTick;
+    }
+
+    private void schedule(Bucket bucket) {
+        final AtomicReference<Bucket> slot = slots[(int)Math.floorMod(bucket.deadline / tickMs, (long)slots.length)];
+        Bucket head;
+        do {
+            head = slot.get();
+            bucket.nextScheduled = head;
+        } while (!slot.compareAndSet(head, bucket));
+    }
+
+    private void expire(Bucket bucket, long now) {
+        final Shard shard = bucket.shard;
+        T message = null;
+        shard.lock.lock();
+        try {
+            // The bucket may have already been dispatched because it reached the
+            // completion size, in which case there's nothing left to do
+            if (shard.buckets.get(bucket.key) == bucket) {
+                shard.buckets.remove(bucket.key);
+                message = bucket.getValue();
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+
+        if (message != null) {
+            bucketCount.decrement();
+            recordAge(bucket, now);
+            messageProducer.dispatch(message);
+        }
+    }
+
+    private void recordAge(Bucket bucket, long now) {
+        if (bucketAge != null) {
+            bucketAge.update(bucket.firstTimeMillis > 0 ? now - bucket.firstTimeMillis : 0);
+        }
+    }
+
+    /**
+     * @return the number of buckets currently accumulating messages
+     */
+    public long getBucketCount() {
+        return bucketCount.sum();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+    }
+
+    private class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Object, Bucket> buckets = new HashMap<>();
+    }
+
+    private class Bucket {
+        private final Shard shard;
+        private final Object key;
+        private Object accumulator;
+        private int count = 0;
+        private long firstTimeMillis;
+        private volatile long deadline = Long.MAX_VALUE;
+        private Bucket nextScheduled;
+
+        private Bucket(Shard shard, Object key) {
+            this.shard = shard;
+            this.key = key;
+        }
+
+        private T accumulate(S message) {
+            accumulator = aggregationPolicy.aggregate(accumulator, message);
+            count++;
+            if (count >= completionSize) {
+                // We're ready!
+                return aggregationPolicy.build(accumulator);
+            } else if (completionIntervalMs > 0) {
+                final long now = System.currentTimeMillis();
+                if (count == 1) {
+                    firstTimeMillis = now;
+                    deadline = now + completionIntervalMs;
+                } else if (now - firstTimeMillis >= completionIntervalMs) {
+                    // We're ready!
+                    return aggregationPolicy.build(accumulator);
+                }
+            }
+            // We're NOT ready yet...
+            return null;
+        }
+
+        private T getValue() {
+            return aggregationPolicy.build(accumulator);
+        }
+    }
+}
@@ -121,7 +121,7 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         final SinkModule<S,T> module = state.getModule();
         if (module.getAggregationPolicy() != null) {
             // Aggregate the message before dispatching them
-            return new AggregatingSinkMessageProducer<S,T>(module) {
+            return new AggregatingSinkMessageProducer<S,T>(module, state.getMetrics()) {
                 @Override
                 public void dispatch(T message) {
                     AbstractMessageDispatcherFactory.this.timedDispatch(state, message);
@@ -31,6 +31,7 @@ package org.opennms.core.ipc.sink.aggregation;
 import static com.jayway.awaitility.Awaitility.await;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertEquals;
@@ -40,13 +41,17 @@ import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.core.ipc.sink.api.AggregationPolicy;
+import org.opennms.core.ipc.sink.api.AggregatorType;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.MessageDispatcherFactory;
@@ -69,7 +74,7 @@ public class AggregationTest {
 
     private final InetAddress localhost = InetAddress.getLoopbackAddress();
 
-    private final List<Object> dispatchedMessages = new ArrayList<>();
+    private final List<Object> dispatchedMessages = Collections.synchronizedList(new ArrayList<>());
 
     private final MessageDispatcherFactory capturingMessageDispatcherFactory = new AbstractMessageDispatcherFactory<Void>() {
         @Override
@@ -208,6 +213,110 @@ public class AggregationTest {
         }
     }
 
+    @Test
+    public void shardedAggregateWithoutInterval() throws Exception {
+        SinkModuleWithAggregateNoInterval aggregatingSinkModule = new SinkModuleWithAggregateNoInterval();
+        aggregatingSinkModule.setAggregatorType(AggregatorType.SHARDED);
+        try(SyncDispatcher<UDPPacket> dispatcher = capturingMessageDispatcherFactory.createSyncDispatcher(aggregatingSinkModule)) {
+            for (byte i = 0; i < 10 * COMPLETION_SIZE; i++) {
+                UDPPacket packet = new UDPPacket(localhost, ByteBuffer.wrap(new byte[]{(byte)i}));
+                dispatcher.send(packet);
+            }
+            // The message should have been aggregated
+            assertEquals(10, dispatchedMessages.size());
+        }
+    }
+
+    @Test
+    public void shardedAggregateWithInterval() throws Exception {
+        SinkModuleWithAggregateAndInterval aggregatingSinkModule = new SinkModuleWithAggregateAndInterval();
+        aggregatingSinkModule.setAggregatorType(AggregatorType.SHARDED);
+        try(SyncDispatcher<UDPPacket> dispatcher = capturingMessageDispatcherFactory.createSyncDispatcher(aggregatingSinkModule)) {
+            // Send less than COMPLETION_SIZE packets
+            assertThat(COMPLETION_SIZE, greaterThan(1));
+            UDPPacket packet = new UDPPacket(localhost, ByteBuffer.wrap(new byte[]{(byte)42}));
+            dispatcher.send(packet);
+
+            // Now wait until the aggregate is dispatched
+            await().atMost(4 * COMPLETION_INTERVAL_MS, MILLISECONDS)
+                .pollDelay(50, MILLISECONDS)
+                .until(() -> dispatchedMessages, hasSize(1));
+        }
+    }
+
+    /**
+     * Every message sent from concurrent producers must be dispatched exactly once,
+     * whether its bucket completes by size or by age.
+     */
+    @Test
+    public void shardedAggregateFromManyThreads() throws Exception {
+        final int NUM_THREADS = 8;
+        final int PACKETS_PER_THREAD = 1001;
+
+        SinkModuleWithAggregateAndInterval aggregatingSinkModule = new SinkModuleWithAggregateAndInterval();
+        aggregatingSinkModule.setAggregatorType(AggregatorType.SHARDED);
+        try(SyncDispatcher<UDPPacket> dispatcher = capturingMessageDispatcherFactory.createSyncDispatcher(aggregatingSinkModule)) {
+            final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+            for (int t = 0; t < NUM_THREADS; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < PACKETS_PER_THREAD; i++) {
+                        dispatcher.send(new UDPPacket(localhost, ByteBuffer.wrap(new byte[]{(byte)i})));
+                    }
+                });
+            }
+            executor.shutdown();
+            assertEquals(true, executor.awaitTermination(10, SECONDS));
+
+            await().atMost(4 * COMPLETION_INTERVAL_MS, MILLISECONDS)
+                .pollDelay(50, MILLISECONDS)
+                .until(() -> countDispatchedPackets(), equalTo(NUM_THREADS * PACKETS_PER_THREAD));
+        }
+    }
+
+    @Test
+    public void shardedAggregatorExposesBucketMetrics() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final AggregationPolicy<UDPPacket, UDPPacketLog, ?> policy = new SinkModuleWithAggregateAndInterval().getAggregationPolicy();
+        try (AggregatingMessageProducer<UDPPacket, UDPPacketLog> producer = new AggregatingMessageProducer<UDPPacket, UDPPacketLog>("test", policy, AggregatorType.SHARDED, metrics) {
+            @Override
+            public void dispatch(UDPPacketLog message) {
+                dispatchedMessages.add(message);
+            }
+        }) {
+            producer.send(new UDPPacket(localhost, ByteBuffer.wrap(new byte[]{(byte)42})));
+            assertEquals(1L, metrics.getGauges().get("test.aggregator.buckets").getValue());
+
+            await().atMost(4 * COMPLETION_INTERVAL_MS, MILLISECONDS)
+                .pollDelay(50, MILLISECONDS)
+                .until(() -> dispatchedMessages, hasSize(1));
+            assertEquals(0L, metrics.getGauges().get("test.aggregator.buckets").getValue());
+            assertEquals(1L, metrics.getHistograms().get("test.aggregator.bucketAge").getCount());
+            assertThat(metrics.getHistograms().get("test.aggregator.bucketAge").getSnapshot().getMax(),
+                    greaterThan((long)COMPLETION_INTERVAL_MS - 1));
+        }
+    }
+
+    @Test
+    public void aggregatorTypeCanBeOverriddenWithSystemProperty() {
+        final SinkModuleWithAggregateAndInterval module = new SinkModuleWithAggregateAndInterval();
+        final String property = AggregatingSinkMessageProducer.AGGREGATOR_TYPE_SYS_PROP_PREFIX + module.getId() + ".type";
+        assertEquals(AggregatorType.DEFAULT, AggregatingSinkMessageProducer.getAggregatorType(module));
+        try {
+            System.setProperty(property, "sharded");
+            assertEquals(AggregatorType.SHARDED, AggregatingSinkMessageProducer.getAggregatorType(module));
+        } finally {
+            System.clearProperty(property);
+        }
+    }
+
+    private int countDispatchedPackets() {
+        synchronized (dispatchedMessages) {
+            return dispatchedMessages.stream()
+                    .mapToInt(m -> ((UDPPacketLog)m).getPackets().size())
+                    .sum();
+        }
+    }
+
     public static class UDPPacket implements Message {
         private final InetAddress source;
         private final ByteBuffer bytes;
@@ -411,6 +520,8 @@ public class AggregationTest {
 
     private static abstract class AbstractSinkModule<S extends Message, T extends Message> implements SinkModule<S, T> {
 
+        private AggregatorType aggregatorType = AggregatorType.DEFAULT;
+
         @Override
         public String getId() {
             return getClass().getCanonicalName();
@@ -445,5 +556,14 @@ public class AggregationTest {
         public AsyncPolicy getAsyncPolicy() {
             return null;
         }
+
+        @Override
+        public AggregatorType getAggregatorType() {
+            return aggregatorType;
+        }
+
+        public void setAggregatorType(AggregatorType aggregatorType) {
+            this.aggregatorType = aggregatorType;
+        }
     }
 }
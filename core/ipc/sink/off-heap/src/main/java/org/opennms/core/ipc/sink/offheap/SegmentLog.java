@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only log of records stored in a series of memory-mapped segment files.
+ * <p>
+ * Every record is framed as a 4 byte length, followed by a 4 byte CRC32 of the payload and the payload itself. The
+ * producer appends to the newest segment and the consumer reads from the oldest one, each using its own cursor, so
+ * that a single producer and a single consumer never need to coordinate beyond publishing the committed position of
+ * a segment. Segments are deleted as soon as they have been fully consumed.
+ * <p>
+ * The position of the consumer is persisted in a small memory-mapped cursor file. After a crash, the segments are
+ * scanned and truncated at the first record that is incomplete or fails its checksum, and reading resumes from the
+ * persisted cursor.
+ * <p>
+ * Calls to {@link #append} must be serialized by the caller, and so must calls to {@link #poll} and {@link #release}.
+ */
+class SegmentLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentLog.class);
+
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final String SEGMENT_EXTENSION = ".segment";
+    private static final String CURSOR_FILE_NAME = "consumer.cursor";
+    private static final int CURSOR_SIZE = 16;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // Limits the number of segments on disk, permits are returned when a segment is deleted
+    private final Semaphore segmentPermits;
+
+    private final Deque<Segment> segments = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean waitingForCapacity = false;
+
+    // Producer state
+    private final CRC32 appendCrc = new CRC32();
+    private Segment head;
+    private long nextSegmentId;
+
+    // Consumer state
+    private final CRC32 pollCrc = new CRC32();
+    private final CRC32 cursorCrc = new CRC32();
+    private final MappedByteBuffer cursor;
+    private Segment tail;
+    private int readPosition;
+
+    SegmentLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + RECORD_HEADER_SIZE);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("Max segments must be greater than 0");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(CURSOR_FILE_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            cursor = channel.map(FileChannel.MapMode.READ_WRITE, 0, CURSOR_SIZE);
+        }
+
+        recover();
+        segmentPermits = new Semaphore(maxSegments - segments.size());
+    }
+
+    private void recover() throws IOException {
+        final List<Long> segmentIds = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+            for (Path path : stream) {
+                final String fileName = path.getFileName().toString();
+                try {
+                    segmentIds.add(Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file {} in segment log {}", path, directory);
+                }
+            }
+        }
+        Collections.sort(segmentIds);
+
+        // The cursor is only trusted if its checksum matches, otherwise we start from the oldest segment
+        long cursorSegmentId = -1;
+        int cursorPosition = 0;
+        cursorCrc.reset();
+        for (int i = 0; i < 12; i++) {
+            cursorCrc.update(cursor.get(i));
+        }
+        if ((int) cursorCrc.getValue() == cursor.getInt(12)) {
+            cursorSegmentId = cursor.getLong(0);
+            cursorPosition = cursor.getInt(8);
+        } else if (!segmentIds.isEmpty()) {
+            LOG.warn("Consumer cursor for segment log {} is invalid, reading from the oldest segment.", directory);
+        }
+
+        for (long segmentId : segmentIds) {
+            if (segmentId < cursorSegmentId) {
+                // Fully consumed, but not yet deleted before we stopped
+                Files.deleteIfExists(segmentPath(segmentId));
+                continue;
+            }
+
+            final Segment segment = Segment.open(segmentPath(segmentId), segmentId, 0);
+            final int skipTo = segmentId == cursorSegmentId ? cursorPosition : 0;
+            int position = 0;
+            int records = 0;
+            while (position + RECORD_HEADER_SIZE <= segment.capacity) {
+                final int length = segment.buffer.getInt(position);
+                if (length <= 0 || length > segment.capacity - position - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                if (checksum(pollCrc, segment.buffer, position + RECORD_HEADER_SIZE, length) != segment.buffer.getInt(position + 4)) {
+                    LOG.warn("Truncating segment {} at position {} since the record failed its checksum.", segment.path, position);
+                    break;
+                }
+                if (position >= skipTo) {
+                    records++;
+                }
+                position += RECORD_HEADER_SIZE + length;
+            }
+            segment.committed = position;
+            segment.sealed = true;
+            size.addAndGet(records);
+            segments.addLast(segment);
+        }
+
+        if (!segments.isEmpty()) {
+            // Continue appending to the newest segment
+            head = segments.peekLast();
+            head.sealed = false;
+            head.writeView.position(head.committed);
+            nextSegmentId = head.id + 1;
+
+            tail = segments.peekFirst();
+            readPosition = tail.id == cursorSegmentId ? Math.min(cursorPosition, tail.committed) : 0;
+            LOG.info("Recovered {} records in {} segments from {}.", size.get(), segments.size(), directory);
+        } else {
+            nextSegmentId = Math.max(0, cursorSegmentId);
+        }
+        writeCursor(tail != null ? tail.id : nextSegmentId, readPosition);
+    }
+
+    /**
+     * Appends a record, blocking until a segment is available if the log is at capacity.
+     *
+     * @param length the length of the record
+     * @param writer writes exactly length bytes into the given buffer
+     */
+    void append(int length, Consumer<ByteBuffer> writer) throws IOException, InterruptedException {
+        final int recordSize = RECORD_HEADER_SIZE + length;
+        if (head == null || head.capacity - head.writeView.position() < recordSize) {
+            roll(recordSize);
+        }
+
+        final ByteBuffer view = head.writeView;
+        final int start = view.position();
+        view.position(start + RECORD_HEADER_SIZE);
+        final ByteBuffer payload = view.slice();
+        payload.limit(length);
+        writer.accept(payload);
+        if (payload.position() != length) {
+            throw new IllegalStateException("Expected " + length + " bytes to be written, but got " + payload.position());
+        }
+
+        view.putInt(start, length);
+        view.putInt(start + 4, checksum(appendCrc, view, start + RECORD_HEADER_SIZE, length));
+        view.position(start + recordSize);
+
+        // Publish the record to the consumer
+        head.committed = start + recordSize;
+        size.incrementAndGet();
+    }
+
+    private void roll(int recordSize) throws IOException, InterruptedException {
+        if (head != null) {
+            head.buffer.force();
+            head.sealed = true;
+        }
+
+        if (!segmentPermits.tryAcquire()) {
+            waitingForCapacity = true;
+            try {
+                segmentPermits.acquire();
+            } finally {
+                waitingForCapacity = false;
+            }
+        }
+
+        final long segmentId = nextSegmentId++;
+        try {
+            head = Segment.open(segmentPath(segmentId), segmentId, Math.max(segmentSize, recordSize));
+        } catch (IOException e) {
+            segmentPermits.release();
+            throw e;
+        }
+        segments.addLast(head);
+    }
+
+    /**
+     * Reads and removes the oldest record.
+     * <p>
+     * The record is still accounted for in {@link #size()} until {@link #release()} is called, so that the log does
+     * not appear to be empty while the caller is handing the record off.
+     *
+     * @param reader converts the record, the buffer is only valid for the duration of the call
+     * @return the converted record, or {@code null} if there are no records available
+     */
+    <R> R poll(Function<ByteBuffer, R> reader) throws IOException {
+        while (true) {
+            if (tail == null) {
+                tail = segments.peekFirst();
+                readPosition = 0;
+                if (tail == null) {
+                    return null;
+                }
+            }
+
+            // The producer seals a segment after its last commit, so check in that order
+            final boolean sealed = tail.sealed;
+            final int committed = tail.committed;
+            if (readPosition < committed) {
+                final ByteBuffer buffer = tail.readView;
+                final int length = buffer.getInt(readPosition);
+                final int crc = buffer.getInt(readPosition + 4);
+                final int start = readPosition + RECORD_HEADER_SIZE;
+                if (length <= 0 || length > committed - start) {
+                    LOG.warn("Skipping the remainder of segment {} since the record at position {} is malformed.", tail.path, readPosition);
+                    readPosition = committed;
+                    continue;
+                }
+                readPosition = start + length;
+                writeCursor(tail.id, readPosition);
+
+                if (checksum(pollCrc, buffer, start, length) != crc) {
+                    LOG.warn("Skipping record at position {} of segment {} since it failed its checksum.", start, tail.path);
+                    size.decrementAndGet();
+                    continue;
+                }
+                final R record;
+                buffer.limit(start + length).position(start);
+                try {
+                    record = reader.apply(buffer.slice());
+                } catch (RuntimeException e) {
+                    size.decrementAndGet();
+                    throw e;
+                } finally {
+                    buffer.clear();
+                }
+                if (sealed && readPosition >= committed) {
+                    // Release the segment right away, the producer may be waiting on it
+                    retireTail();
+                }
+                return record;
+            } else if (!sealed) {
+                return null;
+            }
+
+            // We've consumed everything in a sealed segment, move on to the next one
+            retireTail();
+        }
+    }
+
+    /**
+     * Stops accounting for the record returned by the last call to {@link #poll}.
+     */
+    void release() {
+        size.decrementAndGet();
+    }
+
+    private void retireTail() throws IOException {
+        final Segment consumed = segments.pollFirst();
+        tail = segments.peekFirst();
+        readPosition = 0;
+        writeCursor(tail != null ? tail.id : consumed.id + 1, 0);
+        try {
+            Files.deleteIfExists(consumed.path);
+        } finally {
+            segmentPermits.release();
+        }
+    }
+
+    private void writeCursor(long segmentId, int position) {
+        cursor.putLong(0, segmentId);
+        cursor.putInt(8, position);
+        cursorCrc.reset();
+        for (int i = 0; i < 12; i++) {
+            cursorCrc.update(cursor.get(i));
+        }
+        cursor.putInt(12, (int) cursorCrc.getValue());
+    }
+
+    private static int checksum(CRC32 crc, ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private Path segmentPath(long segmentId) {
+        return directory.resolve(String.format("%019d%s", segmentId, SEGMENT_EXTENSION));
+    }
+
+    /**
+     * @return the number of records that have yet to be read
+     */
+    int size() {
+        return Math.max(0, size.get());
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return true if the producer is waiting for a segment to be consumed
+     */
+    boolean isFull() {
+        return waitingForCapacity;
+    }
+
+    @Override
+    public void close() {
+        if (head != null) {
+            head.buffer.force();
+        }
+        cursor.force();
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long id;
+        private final int capacity;
+        private final MappedByteBuffer buffer;
+        private final ByteBuffer writeView;
+        private final ByteBuffer readView;
+        private volatile int committed;
+        private volatile boolean sealed;
+
+        private Segment(Path path, long id, MappedByteBuffer buffer) {
+            this.path = path;
+            this.id = id;
+            this.capacity = buffer.capacity();
+            this.buffer = buffer;
+            this.writeView = buffer.duplicate();
+            this.readView = buffer.duplicate();
+        }
+
+        private static Segment open(Path path, long id, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                final long mappedSize = size > 0 ? size : channel.size();
+                return new Segment(path, id, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+            }
+        }
+    }
+}
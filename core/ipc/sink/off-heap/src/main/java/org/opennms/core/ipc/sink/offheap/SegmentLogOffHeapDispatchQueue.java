@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.opennms.core.ipc.sink.api.DispatchQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.swrve.ratelimitedlogger.RateLimitedLog;
+
+/**
+ * A {@link DispatchQueue} that first attempts to queue items in memory and upon overflowing the allocated in-memory
+ * queue writes batches of items "off heap" to a {@link SegmentLog}. The in-memory queue and the batch being
+ * accumulated are volatile, the batches written to the log are durable and will be reloaded after a crash.
+ * <p>
+ * Unlike the {@link QueueFileOffHeapDispatchQueue}, enqueueing and dequeueing do not share a lock while reading or
+ * writing the file, and batches are encoded using a compact binary framing rather than Java serialization:
+ * <pre>
+ * batch := count:int32 entry{count}
+ * entry := keyLength:int32 key:byte{keyLength} messageLength:int32 message:byte{messageLength}
+ * </pre>
+ * where a key length of -1 denotes a null key. Keys are preserved when entries are read back from the log.
+ * <p>
+ * This queue can be configured to only queue to memory by specifying the maximum off-heap size of 0.
+ *
+ * @param <T> the type being queued
+ */
+public class SegmentLogOffHeapDispatchQueue<T> implements DispatchQueue<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentLogOffHeapDispatchQueue.class);
+    private final RateLimitedLog RATE_LIMITED_LOGGER = RateLimitedLog
+            .withRateLimit(LOG)
+            .maxRate(5)
+            .every(Duration.ofSeconds(30))
+            .build();
+
+    private static final String DIRECTORY_EXTENSION = ".segments";
+
+    static final int MIN_SEGMENT_SIZE = 4 * 1024;
+    static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    // How long to wait on the in-memory queue before checking the log again
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final Function<T, byte[]> serializer;
+    private final Function<byte[], T> deserializer;
+    private final String moduleName;
+    private final int batchSize;
+    private final BlockingQueue<Map.Entry<String, T>> inMemoryQueue;
+
+    private final SegmentLog offHeapLog;
+
+    // Used to guard access to the batch, and to append to the log
+    private final Lock batchLock = new ReentrantLock(true);
+    // Used to ensure only one thread can be enqueing at a time
+    private final Lock enqueueLock = new ReentrantLock(true);
+    // Used to ensure only one thread can be reading from the log at a time
+    private final Lock readLock = new ReentrantLock();
+
+    private List<Map.Entry<String, T>> batch;
+    // Number of entries in the batch, readable without holding the batch lock
+    private volatile int batchedCount;
+
+    // Entries of the record read from the log which have not been moved in-memory yet, guarded by the read lock.
+    // The record is only released from the log once all of its entries are in-memory, so that the log does not
+    // appear empty to producers while older entries are still on their way to the in-memory queue.
+    private Deque<Map.Entry<String, T>> handOff;
+
+    public SegmentLogOffHeapDispatchQueue(Function<T, byte[]> serializer, Function<byte[], T> deserializer,
+                                          String moduleName, Path filePath, int inMemoryQueueSize, int batchSize,
+                                          long maxFileSizeInBytes) throws IOException {
+        Objects.requireNonNull(serializer);
+        Objects.requireNonNull(deserializer);
+        Objects.requireNonNull(moduleName);
+
+        if (inMemoryQueueSize < 1) {
+            throw new IllegalArgumentException("In memory queue size must be greater than 0");
+        }
+
+        if (inMemoryQueueSize % batchSize != 0) {
+            throw new IllegalArgumentException("In memory queue size must be a multiple of batch size");
+        }
+
+        if (maxFileSizeInBytes < 0) {
+            throw new IllegalArgumentException("Max file size must be either 0 or a positive integer");
+        }
+
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.moduleName = moduleName;
+        this.batchSize = batchSize;
+        batch = new ArrayList<>(batchSize);
+
+        inMemoryQueue = new ArrayBlockingQueue<>(inMemoryQueueSize, true);
+
+        // Setting the max file size to 0 or less will disable the off-heap portion of this queue
+        if (maxFileSizeInBytes > 0) {
+            Objects.requireNonNull(filePath);
+            final int segmentSize = getSegmentSize(maxFileSizeInBytes);
+            final int maxSegments = (int) Math.max(1, maxFileSizeInBytes / segmentSize);
+            offHeapLog = new SegmentLog(Paths.get(filePath.toString(), moduleName + DIRECTORY_EXTENSION),
+                    segmentSize, maxSegments);
+        } else {
+            offHeapLog = null;
+        }
+    }
+
+    /**
+     * Splits the off-heap capacity into (up to) 16 segments, so that disk space is released
+     * in reasonably small steps as the log is drained.
+     */
+    static int getSegmentSize(long maxFileSizeInBytes) {
+        return (int) Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, maxFileSizeInBytes / 16));
+    }
+
+    /**
+     * When enqueueing we prefer the in-memory queue unless the log or the batch are already in use. Otherwise the
+     * entry is added to the batch, and once the batch is full it is appended to the log, blocking if the log is
+     * currently at capacity.
+     */
+    @Override
+    public EnqueueResult enqueue(T message, String key) throws WriteFailedException {
+        enqueueLock.lock();
+        try {
+            final Map.Entry<String, T> msgEntry = new AbstractMap.SimpleImmutableEntry<>(key, message);
+
+            // Off-heap queueing is not enabled so queue directly to memory
+            if (offHeapLog == null) {
+                try {
+                    inMemoryQueue.put(msgEntry);
+                } catch (InterruptedException e) {
+                    throw new WriteFailedException(e);
+                }
+                return EnqueueResult.IMMEDIATE;
+            }
+
+            batchLock.lock();
+            try {
+                if (offHeapLog.isEmpty() && batch.isEmpty() && inMemoryQueue.offer(msgEntry)) {
+                    LOG.trace("Enqueueing {} with key {} in-memory", message, key);
+                    return EnqueueResult.IMMEDIATE;
+                }
+
+                LOG.trace("Batching message {} with key {} for off-heap queue", message, key);
+                batch.add(msgEntry);
+                batchedCount = batch.size();
+                if (batch.size() >= batchSize) {
+                    // Appending while holding the batch lock guarantees that the batch can't be moved
+                    // to the in-memory queue ahead of older entries which are on their way to the log.
+                    // The consumer only needs this lock once the log is empty, and never while the
+                    // append is waiting for capacity.
+                    final List<Map.Entry<String, T>> fullBatch = batch;
+                    batch = new ArrayList<>(batchSize);
+                    try {
+                        append(fullBatch);
+                    } finally {
+                        batchedCount = 0;
+                    }
+                }
+            } finally {
+                batchLock.unlock();
+            }
+
+            return EnqueueResult.DEFERRED;
+        } finally {
+            enqueueLock.unlock();
+        }
+    }
+
+    private void append(List<Map.Entry<String, T>> entries) throws WriteFailedException {
+        final byte[][] keys = new byte[entries.size()][];
+        final byte[][] values = new byte[entries.size()][];
+        int length = 4;
+        for (int i = 0; i < entries.size(); i++) {
+            final Map.Entry<String, T> entry = entries.get(i);
+            keys[i] = entry.getKey() != null ? entry.getKey().getBytes(StandardCharsets.UTF_8) : null;
+            values[i] = serializer.apply(entry.getValue());
+            length += 8 + (keys[i] != null ? keys[i].length : 0) + values[i].length;
+        }
+
+        try {
+            offHeapLog.append(length, buffer -> {
+                buffer.putInt(keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null) {
+                        buffer.putInt(keys[i].length);
+                        buffer.put(keys[i]);
+                    } else {
+                        buffer.putInt(-1);
+                    }
+                    buffer.putInt(values[i].length);
+                    buffer.put(values[i]);
+                }
+            });
+        } catch (IOException | InterruptedException e) {
+            RATE_LIMITED_LOGGER.warn("Failed to flush to off-heap for module {}", moduleName, e);
+            throw new WriteFailedException(e);
+        }
+    }
+
+    private Deque<Map.Entry<String, T>> decode(ByteBuffer buffer) {
+        final int count = buffer.getInt();
+        final Deque<Map.Entry<String, T>> entries = new ArrayDeque<>(count);
+        for (int i = 0; i < count; i++) {
+            final int keyLength = buffer.getInt();
+            String key = null;
+            if (keyLength >= 0) {
+                final byte[] keyBytes = new byte[keyLength];
+                buffer.get(keyBytes);
+                key = new String(keyBytes, StandardCharsets.UTF_8);
+            }
+            final byte[] value = new byte[buffer.getInt()];
+            buffer.get(value);
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(key, deserializer.apply(value)));
+        }
+        return entries;
+    }
+
+    /**
+     * On every call to dequeue, if the off-heap log is configured and there is room in memory, we move a batch from
+     * the log to the in-memory queue, or the pending batch if the log is empty. We then take exclusively from the
+     * head of the in-memory queue which ensures ordering with respect to the discrete queues.
+     * <p>
+     * A batch read from the log which does not fit in memory is kept aside and moved by subsequent calls. Producers
+     * keep batching while it is pending, so newer entries can not overtake it.
+     */
+    @Override
+    public Map.Entry<String, T> dequeue() throws InterruptedException {
+        if (offHeapLog == null) {
+            return inMemoryQueue.take();
+        }
+
+        while (true) {
+            readLock.lock();
+            try {
+                if (handOff == null && inMemoryQueue.remainingCapacity() >= batchSize) {
+                    handOff = offHeapLog.poll(this::decode);
+                    if (handOff == null) {
+                        moveBatchInMemory();
+                    }
+                }
+                if (handOff != null) {
+                    moveHandOffInMemory();
+                }
+            } catch (IOException e) {
+                RATE_LIMITED_LOGGER.warn("Exception while dequeueing for module {}", moduleName, e);
+                throw new RuntimeException(e);
+            } finally {
+                readLock.unlock();
+            }
+
+            // Don't block indefinitely, more entries may become available off-heap while we wait
+            final Map.Entry<String, T> entry = inMemoryQueue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (entry != null) {
+                return entry;
+            }
+        }
+    }
+
+    private void moveHandOffInMemory() {
+        int moved = 0;
+        while (!handOff.isEmpty() && inMemoryQueue.offer(handOff.peekFirst())) {
+            handOff.removeFirst();
+            moved++;
+        }
+        LOG.trace("Moved {} entries from off-heap to in-memory", moved);
+
+        if (handOff.isEmpty()) {
+            handOff = null;
+            offHeapLog.release();
+        }
+    }
+
+    private void moveBatchInMemory() {
+        batchLock.lock();
+        try {
+            if (offHeapLog.isEmpty() && !batch.isEmpty() && inMemoryQueue.remainingCapacity() >= batch.size()) {
+                LOG.trace("Moved {} batched entries to in-memory", batch.size());
+                inMemoryQueue.addAll(batch);
+                batch.clear();
+                batchedCount = 0;
+            }
+        } finally {
+            batchLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        if (offHeapLog == null) {
+            return inMemoryQueue.remainingCapacity() <= 0;
+        }
+        return offHeapLog.isFull();
+    }
+
+    @Override
+    public int getSize() {
+        if (offHeapLog == null) {
+            return inMemoryQueue.size();
+        }
+        return inMemoryQueue.size() + offHeapLog.size() * batchSize + batchedCount;
+    }
+}
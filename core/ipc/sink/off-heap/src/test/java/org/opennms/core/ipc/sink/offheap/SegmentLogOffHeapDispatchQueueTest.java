@@ -0,0 +1,397 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.ipc.sink.api.DispatchQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+
+import com.jayway.awaitility.core.ConditionTimeoutException;
+
+public class SegmentLogOffHeapDispatchQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void canQueueAndDequeue() throws IOException, WriteFailedException, InterruptedException {
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                "canQueueAndDequeue", Paths.get(folder.newFolder().toURI()), 1, 1, 10000);
+
+        // Since size is 1, the first entry should be in-memory and the second entry should be on disk
+        String payload1 = "msg1";
+        queue.enqueue(payload1, "key1");
+
+        String payload2 = "msg2";
+        queue.enqueue(payload2, "key2");
+
+        assertThat(queue.getSize(), equalTo(2));
+
+        assertThat(queue.dequeue().getValue(), equalTo(payload1));
+        assertThat(queue.dequeue().getValue(), equalTo(payload2));
+    }
+
+    @Test
+    public void canQueueAndDequeueInParallel() throws IOException {
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                "canQueueAndDequeue", Paths.get(folder.newFolder().toURI()), 20, 5, 100_000);
+
+        int numEntries = 11_111;
+        List<String> toQueue = IntStream.range(0, numEntries)
+                .boxed()
+                .map(Object::toString)
+                .collect(Collectors.toList());
+
+        CountDownLatch startedQueueing = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger(0);
+        CompletableFuture.runAsync(() -> {
+            while(count.get() < numEntries) {
+                try {
+                    queue.enqueue(toQueue.get(count.getAndIncrement()), "key");
+                    startedQueueing.countDown();
+                } catch (WriteFailedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        List<String> dequeued = new CopyOnWriteArrayList<>();
+        CompletableFuture.runAsync(() -> {
+            try {
+                startedQueueing.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            while(true) {
+                try {
+                    dequeued.add(queue.dequeue().getValue());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        await().atMost(1, TimeUnit.MINUTES).until(() -> dequeued, equalTo(toQueue));
+    }
+
+    @Test
+    public void preservesOrderWhenSwitchingBetweenOffHeapAndInMemory() throws Exception {
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                "preservesOrderWhenSwitching", Paths.get(folder.newFolder().toURI()), 4, 2, 1_000_000);
+
+        int numEntries = 20_000;
+
+        // The producer enqueues in bursts which overflow to the log, and pauses so that the consumer drains the
+        // log and the queue goes back to the in-memory fast path
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            try {
+                for (int i = 0; i < numEntries; i++) {
+                    queue.enqueue(Integer.toString(i), "key" + i);
+                    if (i % 97 == 0) {
+                        Thread.sleep(1);
+                    }
+                }
+            } catch (WriteFailedException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        int expected = 0;
+        while (expected < numEntries) {
+            Map.Entry<String, String> entry = queue.dequeue();
+            assertThat(entry.getValue(), equalTo(Integer.toString(expected)));
+            assertThat(entry.getKey(), equalTo("key" + expected));
+            expected++;
+            if (expected % 113 == 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        producer.get(1, TimeUnit.MINUTES);
+        assertThat(queue.getSize(), equalTo(0));
+    }
+
+    @Test
+    public void movesBatchesLargerThanTheInMemoryQueue() throws IOException, WriteFailedException, InterruptedException {
+        Path path = Paths.get(folder.newFolder().toURI());
+        String moduleName = "movesBatchesLargerThanTheInMemoryQueue";
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 5, 5, 10000);
+
+        for (int i = 0; i < 10; i++) {
+            queue.enqueue("msg" + i, "key" + i);
+        }
+
+        // Come back with a smaller in-memory queue, so the batch on disk does not fit in memory at once
+        queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 2, 1, 10000);
+
+        // Entries enqueued while the batch is being moved must not overtake it
+        assertThat(queue.dequeue().getValue(), equalTo("msg5"));
+        queue.enqueue("msg10", "key10");
+        for (int i = 6; i <= 10; i++) {
+            assertThat(queue.dequeue().getValue(), equalTo("msg" + i));
+        }
+        assertThat(queue.getSize(), equalTo(0));
+    }
+
+    @Test
+    public void dequeuesInOrderAndPreservesKeys() throws IOException, WriteFailedException, InterruptedException {
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                "dequeuesInOrder", Paths.get(folder.newFolder().toURI()), 1000, 100, 10_000_000);
+
+        int numEntries = 10020;
+        List<String> toQueue = IntStream.range(0, numEntries)
+                .boxed()
+                .map(Object::toString)
+                .collect(Collectors.toList());
+
+        for (String s : toQueue) {
+            queue.enqueue(s, "key" + s);
+        }
+
+        assertThat(queue.getSize(), equalTo(numEntries));
+
+        List<String> dequeued = new ArrayList<>();
+
+        while(queue.getSize() > 0) {
+            Map.Entry<String, String> entry = queue.dequeue();
+            assertThat(entry.getKey(), equalTo("key" + entry.getValue()));
+            dequeued.add(entry.getValue());
+        }
+
+        assertThat(dequeued, equalTo(toQueue));
+    }
+
+    @Test
+    public void blocksWhenEmpty() throws IOException, WriteFailedException {
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                "blocksWhenEmpty", Paths.get(folder.newFolder().toURI()), 1, 1, 10000);
+
+        AtomicReference<String> atomicString = new AtomicReference<>(null);
+        AtomicBoolean receivedValue = new AtomicBoolean(false);
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                atomicString.set(queue.dequeue().getValue());
+                receivedValue.set(true);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertThat(atomicString.get(), is(nullValue()));
+
+        String payload = "a";
+
+        try {
+            await().pollDelay(10, TimeUnit.MILLISECONDS)
+                    .atMost(100, TimeUnit.MILLISECONDS)
+                    .until(receivedValue::get);
+            fail("Dequeue did not block");
+        } catch (ConditionTimeoutException expected) {
+        }
+
+        queue.enqueue(payload, "key");
+
+        await().pollDelay(10, TimeUnit.MILLISECONDS)
+                .atMost(1, TimeUnit.SECONDS)
+                .until(() -> Objects.equals(payload, atomicString.get()));
+    }
+
+    @Test
+    public void blocksWhenFull() throws WriteFailedException, IOException, InterruptedException {
+        // A single segment of the minimum size
+        SegmentLogOffHeapDispatchQueue<byte[]> queue = new SegmentLogOffHeapDispatchQueue<>(b -> b, b -> b,
+                "blocksWhenFull", Paths.get(folder.newFolder().toURI()), 1, 1, SegmentLogOffHeapDispatchQueue.MIN_SEGMENT_SIZE);
+
+        // Fill the in-memory queue and the segment
+        queue.enqueue(new byte[0], "key1");
+        queue.enqueue(new byte[SegmentLogOffHeapDispatchQueue.MIN_SEGMENT_SIZE / 2], "key2");
+
+        AtomicBoolean didQueue = new AtomicBoolean(false);
+
+        CompletableFuture.runAsync(() -> {
+            // Now try to queue again and verify that we block
+            try {
+                queue.enqueue(new byte[SegmentLogOffHeapDispatchQueue.MIN_SEGMENT_SIZE / 2], "key3");
+                didQueue.set(true);
+            } catch (WriteFailedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        try {
+            await().pollDelay(10, TimeUnit.MILLISECONDS)
+                    .atMost(100, TimeUnit.MILLISECONDS)
+                    .until(didQueue::get);
+            fail("Enqueue happened but we should have been blocking");
+        } catch (ConditionTimeoutException expected) {
+        }
+        assertThat(queue.isFull(), equalTo(true));
+
+        // Now dequeue which should free up the segment
+        queue.dequeue();
+        queue.dequeue();
+
+        await().atMost(1, TimeUnit.SECONDS).until(didQueue::get);
+        assertThat(queue.isFull(), equalTo(false));
+        assertThat(queue.dequeue().getKey(), equalTo("key3"));
+    }
+
+    @Test
+    public void canDequeueOffHeapAfterRestart() throws IOException, WriteFailedException, InterruptedException {
+        Path path = Paths.get(folder.newFolder().toURI());
+        String moduleName = "canQueueAfterRestart";
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 1, 1, 10000);
+
+        // Should be immediate since it should be queued in-memory
+        String payload1 = "msg1";
+        assertThat(queue.enqueue(payload1, "key1"), equalTo(DispatchQueue.EnqueueResult.IMMEDIATE));
+
+        // Should get deferred since it will be written off-heap
+        String payload2 = "msg2";
+        assertThat(queue.enqueue(payload2, "key2"), equalTo(DispatchQueue.EnqueueResult.DEFERRED));
+
+        // Reinitialize to simulate coming back up after restart
+        queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 1, 1, 10000);
+
+        // We will have lost the in-memory portion of the queue
+        assertThat(queue.getSize(), equalTo(1));
+        Map.Entry<String, String> entry = queue.dequeue();
+        assertThat(entry.getKey(), equalTo("key2"));
+        assertThat(entry.getValue(), equalTo(payload2));
+    }
+
+    @Test
+    public void resumesFromConsumerCursorAfterRestart() throws IOException, WriteFailedException, InterruptedException {
+        Path path = Paths.get(folder.newFolder().toURI());
+        String moduleName = "resumesFromConsumerCursorAfterRestart";
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 1, 1, 10000);
+
+        for (int i = 0; i < 5; i++) {
+            queue.enqueue("msg" + i, "key" + i);
+        }
+        // msg0 is in-memory, msg1 is read from the log into memory
+        assertThat(queue.dequeue().getValue(), equalTo("msg0"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg1"));
+
+        queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 1, 1, 10000);
+
+        assertThat(queue.getSize(), equalTo(3));
+        assertThat(queue.dequeue().getValue(), equalTo("msg2"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg3"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg4"));
+    }
+
+    @Test
+    public void recoversFromTornWrite() throws IOException, WriteFailedException, InterruptedException {
+        Path path = Paths.get(folder.newFolder().toURI());
+        String moduleName = "recoversFromTornWrite";
+        DispatchQueue<String> queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 1, 1, 10000);
+
+        for (int i = 0; i < 4; i++) {
+            queue.enqueue("msg" + i, "key" + i);
+        }
+
+        // Corrupt the payload of the last record, as if we crashed while writing it
+        File segment = path.resolve(moduleName + ".segments").toFile().listFiles((dir, name) -> name.endsWith(".segment"))[0];
+        int recordSize = SegmentLog.RECORD_HEADER_SIZE + 4 + 4 + "key0".length() + 4 + "msg0".length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(2 * recordSize + recordSize - 1);
+            file.write('!');
+        }
+
+        queue = new SegmentLogOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 1, 1, 10000);
+
+        // The torn record is discarded, and we can keep appending after the last good record
+        assertThat(queue.getSize(), equalTo(2));
+        queue.enqueue("msg4", "key4");
+        assertThat(queue.dequeue().getValue(), equalTo("msg1"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg2"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg4"));
+    }
+
+    @Test
+    public void canSpanManySegments() throws IOException, WriteFailedException, InterruptedException {
+        Path path = Paths.get(folder.newFolder().toURI());
+        String moduleName = "canSpanManySegments";
+        DispatchQueue<byte[]> queue = new SegmentLogOffHeapDispatchQueue<>(b -> b, b -> b,
+                moduleName, path, 10, 10, 4 * 1024 * 1024);
+
+        int numEntries = 2000;
+        for (int i = 0; i < numEntries; i++) {
+            byte[] payload = new byte[1000];
+            payload[0] = (byte) i;
+            queue.enqueue(payload, "key");
+        }
+
+        for (int i = 0; i < numEntries; i++) {
+            assertThat(queue.dequeue().getValue()[0], equalTo((byte) i));
+        }
+
+        // Only the segment being written to should remain
+        File[] segments = path.resolve(moduleName + ".segments").toFile().listFiles((dir, name) -> name.endsWith(".segment"));
+        assertThat(segments.length, equalTo(1));
+    }
+}
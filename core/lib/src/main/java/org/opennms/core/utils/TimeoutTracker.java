@@ -149,6 +149,21 @@ public class TimeoutTracker {
 
     }
 
+    /**
+     * Returns how long {@link #startAttempt()} would sleep before starting the
+     * next attempt, so that callers that must not block can wait for it
+     * themselves.
+     *
+     * @return the delay in milliseconds, 0 unless strict timeouts are enabled
+     */
+    public long getStartDelayInMillis() {
+        if (!m_strictTimeouts) {
+            return 0L;
+        }
+        final long delay = m_nextRetryTimeNanos - System.nanoTime();
+        return delay <= 0 ? 0L : TimeUnit.MILLISECONDS.convert(delay + 999999L, TimeUnit.NANOSECONDS);
+    }
+
     private void sleep(long nanos) {
         long millis = nanos / 1000000L;
         int remainingNanos = (int)(nanos % 1000000L);
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+/**
+ * The PDU sizes learned for a single agent.
+ *
+ * The profile backs off when the agent answers with a tooBig error or stops
+ * answering, and grows again after a run of successful walks, never beyond
+ * the values configured for the agent. Walks started with
+ * {@link AgentPduProfiles} enabled use {@link #getMaxVarsPerPdu(int)} and
+ * {@link #getMaxRepetitions(int)} in place of the configured values.
+ */
+public class AgentPduProfile {
+
+    /**
+     * The number of consecutive successful walks after which the sizes grow.
+     */
+    public static final int GROWTH_INTERVAL = 3;
+
+    private int m_maxVarsPerPdu;
+    private int m_maxRepetitions;
+    private int m_successes = 0;
+    private boolean m_changed = false;
+
+    public AgentPduProfile() {
+        this(0, 0);
+    }
+
+    /**
+     * @param maxVarsPerPdu the learned varbinds per PDU, 0 if unknown
+     * @param maxRepetitions the learned GETBULK repetitions, 0 if unknown
+     */
+    public AgentPduProfile(int maxVarsPerPdu, int maxRepetitions) {
+        m_maxVarsPerPdu = maxVarsPerPdu;
+        m_maxRepetitions = maxRepetitions;
+    }
+
+    public synchronized int getMaxVarsPerPdu(int configured) {
+        return m_maxVarsPerPdu > 0 ? Math.min(m_maxVarsPerPdu, configured) : configured;
+    }
+
+    public synchronized int getMaxRepetitions(int configured) {
+        return m_maxRepetitions > 0 ? Math.min(m_maxRepetitions, configured) : configured;
+    }
+
+    /**
+     * The agent rejected a request as tooBig. The walk itself already
+     * reduced the varbinds per PDU until the agent answered, so use that
+     * value and halve the repetitions, which multiply the response size.
+     *
+     * @param maxVarsPerPdu the varbinds per PDU the walk ended with
+     * @param maxRepetitions the repetitions the walk was started with
+     */
+    public synchronized void onTooBig(int maxVarsPerPdu, int maxRepetitions) {
+        m_maxVarsPerPdu = Math.max(1, maxVarsPerPdu);
+        m_maxRepetitions = Math.max(1, maxRepetitions / 2);
+        m_successes = 0;
+        m_changed = true;
+    }
+
+    /**
+     * The agent stopped answering. Large responses that are dropped on the
+     * way back look the same as an agent that is down, so halve both sizes.
+     */
+    public synchronized void onTimeout(int maxVarsPerPdu, int maxRepetitions) {
+        m_maxVarsPerPdu = Math.max(1, maxVarsPerPdu / 2);
+        m_maxRepetitions = Math.max(1, maxRepetitions / 2);
+        m_successes = 0;
+        m_changed = true;
+    }
+
+    /**
+     * The walk completed without error. Every {@link #GROWTH_INTERVAL}
+     * consecutive successes the sizes grow by a quarter, up to the
+     * configured values.
+     */
+    public synchronized void onSuccess(int configuredMaxVarsPerPdu, int configuredMaxRepetitions) {
+        if (m_maxVarsPerPdu <= 0 && m_maxRepetitions <= 0) {
+            // nothing learned yet, the configured values are fine
+            return;
+        }
+        if (++m_successes < GROWTH_INTERVAL) {
+            return;
+        }
+        m_successes = 0;
+        final int vars = grow(m_maxVarsPerPdu, configuredMaxVarsPerPdu);
+        final int reps = grow(m_maxRepetitions, configuredMaxRepetitions);
+        if (vars != m_maxVarsPerPdu || reps != m_maxRepetitions) {
+            m_maxVarsPerPdu = vars;
+            m_maxRepetitions = reps;
+            m_changed = true;
+        }
+    }
+
+    private static int grow(int learned, int configured) {
+        if (learned <= 0 || learned >= configured) {
+            return learned;
+        }
+        return Math.min(configured, learned + Math.max(1, learned / 4));
+    }
+
+    synchronized int getLearnedMaxVarsPerPdu() {
+        return m_maxVarsPerPdu;
+    }
+
+    synchronized int getLearnedMaxRepetitions() {
+        return m_maxRepetitions;
+    }
+
+    /**
+     * @return whether the profile changed since the last call
+     */
+    synchronized boolean clearChanged() {
+        final boolean changed = m_changed;
+        m_changed = false;
+        return changed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AgentPduProfile[maxVarsPerPdu=" + m_maxVarsPerPdu + ", maxRepetitions=" + m_maxRepetitions + "]";
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link AgentPduProfile} of every agent that was walked, and
+ * optionally stores them in a file so that the learned sizes survive a
+ * restart. Adaptive walks are enabled with:
+ *
+ * <pre>
+ * org.opennms.netmgt.snmp.adaptive=true
+ * org.opennms.netmgt.snmp.adaptive.profiles=${opennms.home}/data/snmp-pdu-profiles.properties
+ * org.opennms.netmgt.snmp.adaptive.pipelineDepth=4
+ * </pre>
+ *
+ * The file holds one <code>address=maxVarsPerPdu,maxRepetitions</code> line
+ * per agent and is rewritten periodically while profiles change. With a
+ * pipeline depth greater than 1, the columns of a walk are split across up
+ * to that many requests that are outstanding at the same time, see
+ * {@link PipelinedSnmpWalker}.
+ */
+public class AgentPduProfiles {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AgentPduProfiles.class);
+
+    public static final String ENABLED_PROPERTY = "org.opennms.netmgt.snmp.adaptive";
+
+    public static final String FILE_PROPERTY = "org.opennms.netmgt.snmp.adaptive.profiles";
+
+    public static final String SAVE_INTERVAL_PROPERTY = "org.opennms.netmgt.snmp.adaptive.saveInterval";
+
+    public static final String PIPELINE_DEPTH_PROPERTY = "org.opennms.netmgt.snmp.adaptive.pipelineDepth";
+
+    public static final long DEFAULT_SAVE_INTERVAL_SECONDS = 60;
+
+    public static final int DEFAULT_PIPELINE_DEPTH = 1;
+
+    private static AgentPduProfiles s_instance;
+
+    private final Map<InetAddress, AgentPduProfile> m_profiles = new ConcurrentHashMap<>();
+
+    private final File m_file;
+
+    private int m_pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+
+    private ScheduledExecutorService m_saver;
+
+    /**
+     * @return the shared profiles, or null if adaptive walks are disabled
+     */
+    public static synchronized AgentPduProfiles getInstance() {
+        final Properties config = SnmpUtils.getConfig();
+        if (!Boolean.parseBoolean(config.getProperty(ENABLED_PROPERTY, "false"))) {
+            return null;
+        }
+        if (s_instance == null) {
+            final String fileName = config.getProperty(FILE_PROPERTY);
+            s_instance = new AgentPduProfiles(fileName == null ? null : new File(fileName));
+            s_instance.setPipelineDepth(Integer.parseInt(config.getProperty(PIPELINE_DEPTH_PROPERTY, Integer.toString(DEFAULT_PIPELINE_DEPTH))));
+            s_instance.load();
+            if (s_instance.m_file != null) {
+                s_instance.startSaving(Long.parseLong(config.getProperty(SAVE_INTERVAL_PROPERTY, Long.toString(DEFAULT_SAVE_INTERVAL_SECONDS))));
+            }
+        }
+        return s_instance;
+    }
+
+    /**
+     * @param file where the profiles are stored, or null to keep them in memory only
+     */
+    public AgentPduProfiles(File file) {
+        m_file = file;
+    }
+
+    public AgentPduProfile getProfile(InetAddress address) {
+        return m_profiles.computeIfAbsent(address, a -> new AgentPduProfile());
+    }
+
+    public int getPipelineDepth() {
+        return m_pipelineDepth;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        m_pipelineDepth = Math.max(1, pipelineDepth);
+    }
+
+    /**
+     * Create a walker that uses the sizes learned for the agent and reports
+     * the outcome of the walk back to its profile.
+     */
+    public SnmpWalker createWalker(SnmpStrategy strategy, SnmpAgentConfig agentConfig, String name, CollectionTracker tracker) {
+        final AgentPduProfile profile = getProfile(agentConfig.getEffectiveAddress());
+
+        final SnmpAgentConfig adaptedConfig = new SnmpAgentConfig(agentConfig.getAddress(), agentConfig);
+        adaptedConfig.setProxyFor(agentConfig.getProxyFor());
+        adaptedConfig.setRetries(agentConfig.getRetries());
+        adaptedConfig.setTTL(agentConfig.getTTL());
+        adaptedConfig.setMaxVarsPerPdu(profile.getMaxVarsPerPdu(agentConfig.getMaxVarsPerPdu()));
+        adaptedConfig.setMaxRepetitions(profile.getMaxRepetitions(agentConfig.getMaxRepetitions()));
+
+        final List<CollectionTracker> laneTrackers = PipelinedSnmpWalker.split(tracker, m_pipelineDepth);
+        final SnmpWalker walker;
+        if (laneTrackers.size() == 1) {
+            walker = strategy.createWalker(adaptedConfig, name, tracker);
+        } else {
+            final List<SnmpWalker> lanes = new ArrayList<>(laneTrackers.size());
+            for (final CollectionTracker laneTracker : laneTrackers) {
+                lanes.add(strategy.createWalker(adaptedConfig, name, laneTracker));
+            }
+            walker = new PipelinedSnmpWalker(adaptedConfig, name, tracker, lanes);
+        }
+        walker.setPduProfile(profile, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions());
+        return walker;
+    }
+
+    public int size() {
+        return m_profiles.size();
+    }
+
+    public synchronized void load() {
+        if (m_file == null || !m_file.canRead()) {
+            return;
+        }
+        final Properties props = new Properties();
+        try (InputStream in = new FileInputStream(m_file)) {
+            props.load(in);
+        } catch (IOException e) {
+            LOG.warn("Unable to read SNMP PDU profiles from {}", m_file, e);
+            return;
+        }
+        for (final String address : props.stringPropertyNames()) {
+            final String[] sizes = props.getProperty(address).split(",");
+            try {
+                m_profiles.put(InetAddrUtils.addr(address), new AgentPduProfile(Integer.parseInt(sizes[0].trim()), Integer.parseInt(sizes[1].trim())));
+            } catch (RuntimeException e) {
+                LOG.warn("Ignoring invalid SNMP PDU profile {}={} in {}", address, props.getProperty(address), m_file);
+            }
+        }
+        LOG.info("Loaded {} SNMP PDU profiles from {}", m_profiles.size(), m_file);
+    }
+
+    /**
+     * Write the profiles to the file if any of them changed since the last save.
+     */
+    public synchronized void save() {
+        if (m_file == null) {
+            return;
+        }
+        boolean changed = false;
+        final Properties props = new Properties();
+        for (final Map.Entry<InetAddress, AgentPduProfile> entry : m_profiles.entrySet()) {
+            final AgentPduProfile profile = entry.getValue();
+            changed |= profile.clearChanged();
+            if (profile.getLearnedMaxVarsPerPdu() > 0) {
+                props.setProperty(InetAddrUtils.str(entry.getKey()), profile.getLearnedMaxVarsPerPdu() + "," + profile.getLearnedMaxRepetitions());
+            }
+        }
+        if (!changed) {
+            return;
+        }
+        final File tmp = new File(m_file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, "SNMP PDU sizes learned per agent");
+        } catch (IOException e) {
+            LOG.warn("Unable to write SNMP PDU profiles to {}", tmp, e);
+            return;
+        }
+        if (!tmp.renameTo(m_file)) {
+            LOG.warn("Unable to replace SNMP PDU profiles in {}", m_file);
+        }
+    }
+
+    private synchronized void startSaving(long intervalSeconds) {
+        m_saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "SnmpPduProfileSaver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        m_saver.scheduleWithFixedDelay(this::save, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::save, "SnmpPduProfileSaver-shutdown"));
+    }
+}
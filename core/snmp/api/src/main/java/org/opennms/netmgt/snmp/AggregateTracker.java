@@ -250,6 +250,10 @@ public class AggregateTracker extends CollectionTracker {
         }
     }
     
+    CollectionTracker[] getChildren() {
+        return m_children;
+    }
+
     @Override
     public void setFailed(boolean failed) {
         super.setFailed(failed);
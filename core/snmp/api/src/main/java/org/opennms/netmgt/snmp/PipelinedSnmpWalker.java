@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Walks disjoint parts of a tracker in parallel, so that several GETBULK
+ * requests are outstanding against the agent at the same time instead of
+ * one. Each lane is a walker of its own, created by the strategy, and this
+ * walker completes once all of them have. It sends no requests itself, so
+ * it is not a {@link PduSnmpWalker}.
+ *
+ * @see #split(CollectionTracker, int)
+ */
+public class PipelinedSnmpWalker extends SnmpWalker {
+
+    /**
+     * A part of the children of an {@link AggregateTracker}. Responses are
+     * processed one lane at a time, since the trackers storing the results
+     * do not expect to be called concurrently.
+     */
+    private static class LaneTracker extends AggregateTracker {
+        private final Object m_lock;
+
+        private LaneTracker(List<Collectable> children, CollectionTracker parent, Object lock) {
+            super(children, parent);
+            m_lock = lock;
+        }
+
+        @Override
+        public ResponseProcessor buildNextPdu(PduBuilder pduBuilder) throws SnmpException {
+            final ResponseProcessor responseProcessor = super.buildNextPdu(pduBuilder);
+            return new ResponseProcessor() {
+                @Override
+                public void processResponse(SnmpObjId snmpObjId, SnmpValue val) throws SnmpException {
+                    synchronized (m_lock) {
+                        responseProcessor.processResponse(snmpObjId, val);
+                    }
+                }
+
+                @Override
+                public boolean processErrors(int errorStatus, int errorIndex) throws SnmpException {
+                    synchronized (m_lock) {
+                        return responseProcessor.processErrors(errorStatus, errorIndex);
+                    }
+                }
+            };
+        }
+    }
+
+    private final List<SnmpWalker> m_lanes;
+
+    private final AtomicInteger m_pending;
+
+    private final AtomicReference<SnmpWalker> m_failedLane = new AtomicReference<>();
+
+    public PipelinedSnmpWalker(SnmpAgentConfig agentConfig, String name, CollectionTracker tracker, List<SnmpWalker> lanes) {
+        super(agentConfig.getAddress(), name, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions(), agentConfig.getRetries(), tracker);
+        m_lanes = Collections.unmodifiableList(new ArrayList<>(lanes));
+        m_pending = new AtomicInteger(m_lanes.size());
+    }
+
+    /**
+     * Splits the columns walked by the given tracker into at most the given
+     * number of lanes. Aggregates with a single child are looked through, so
+     * that a walk request wrapped in one or more aggregates is split by its
+     * columns.
+     *
+     * @return the trackers of the lanes, or a list with only the given
+     * tracker if it cannot be split
+     */
+    public static List<CollectionTracker> split(CollectionTracker tracker, int lanes) {
+        CollectionTracker parent = tracker;
+        while (parent instanceof AggregateTracker && ((AggregateTracker)parent).getChildren().length == 1) {
+            parent = ((AggregateTracker)parent).getChildren()[0];
+        }
+        if (lanes < 2 || !(parent instanceof AggregateTracker)) {
+            return Collections.singletonList(tracker);
+        }
+
+        final CollectionTracker[] children = ((AggregateTracker)parent).getChildren();
+        if (children.length < 2) {
+            return Collections.singletonList(tracker);
+        }
+
+        final int count = Math.min(lanes, children.length);
+        final List<List<Collectable>> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (int i = 0; i < children.length; i++) {
+            parts.get(i % count).add(children[i]);
+        }
+
+        final List<CollectionTracker> laneTrackers = new ArrayList<>(count);
+        for (final List<Collectable> part : parts) {
+            laneTrackers.add(new LaneTracker(part, parent, tracker));
+        }
+        return laneTrackers;
+    }
+
+    public List<SnmpWalker> getLanes() {
+        return m_lanes;
+    }
+
+    @Override
+    public void start() {
+        for (final SnmpWalker lane : m_lanes) {
+            lane.setCallback(this::laneComplete);
+        }
+        for (final SnmpWalker lane : m_lanes) {
+            lane.start();
+        }
+    }
+
+    private void laneComplete(SnmpWalker lane, Throwable t) {
+        if (t != null) {
+            m_failedLane.compareAndSet(null, lane);
+        }
+        if (m_pending.decrementAndGet() > 0) {
+            return;
+        }
+
+        final SnmpWalker failed = m_failedLane.get();
+        if (failed == null) {
+            handleDone();
+        } else if (failed.timedOut()) {
+            handleTimeout(failed.getErrorMessage());
+        } else {
+            handleError(failed.getErrorMessage(), failed.getErrorThrowable());
+        }
+    }
+
+    @Override
+    protected int getMaxVarsPerPduInUse() {
+        int maxVarsPerPdu = getMaxVarsPerPdu();
+        for (final SnmpWalker lane : m_lanes) {
+            maxVarsPerPdu = Math.min(maxVarsPerPdu, lane.getMaxVarsPerPdu());
+        }
+        return maxVarsPerPdu;
+    }
+
+    @Override
+    public void close() {
+        for (final SnmpWalker lane : m_lanes) {
+            lane.close();
+        }
+    }
+}
@@ -67,7 +67,7 @@ public abstract class SnmpUtils {
     }
 
     public static SnmpWalker createWalker(SnmpAgentConfig agentConfig, String name, CollectionTracker... trackers) {
-        return getStrategy().createWalker(agentConfig, name, createTooBigTracker(agentConfig, trackers));
+        return newWalker(agentConfig, name, createTooBigTracker(agentConfig, trackers));
     }
 
     private static TooBigReportingAggregator createTooBigTracker(SnmpAgentConfig agentConfig, CollectionTracker... trackers) {
@@ -75,7 +75,15 @@ public abstract class SnmpUtils {
     }
     
     public static SnmpWalker createWalker(SnmpAgentConfig agentConfig, String name, CollectionTracker tracker) {
-        return getStrategy().createWalker(agentConfig, name, createTooBigTracker(agentConfig, tracker));
+        return newWalker(agentConfig, name, createTooBigTracker(agentConfig, tracker));
+    }
+
+    private static SnmpWalker newWalker(SnmpAgentConfig agentConfig, String name, CollectionTracker tracker) {
+        final AgentPduProfiles profiles = AgentPduProfiles.getInstance();
+        if (profiles == null) {
+            return getStrategy().createWalker(agentConfig, name, tracker);
+        }
+        return profiles.createWalker(getStrategy(), agentConfig, name, tracker);
     }
 
     private static TooBigReportingAggregator createTooBigTracker(SnmpAgentConfig agentConfig, CollectionTracker tracker) {
@@ -134,6 +142,34 @@ public abstract class SnmpUtils {
         return results;
     }
 
+    /**
+     * Asynchronous variant of {@link #getColumns(SnmpAgentConfig, String, SnmpObjId)}.
+     *
+     * As with the blocking variant, the values collected before a failure or
+     * timeout are returned rather than an exceptional completion.
+     */
+    public static CompletableFuture<List<SnmpValue>> getColumnsAsync(final SnmpAgentConfig agentConfig, final String name, final SnmpObjId oid) {
+        final CompletableFuture<List<SnmpValue>> future = new CompletableFuture<>();
+        final List<SnmpValue> results = new ArrayList<>();
+
+        final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, name, new ColumnTracker(oid) {
+            @Override
+            protected void storeResult(SnmpResult res) {
+                results.add(res.getValue());
+            }
+        });
+        walker.setCallback((w, t) -> {
+            if (t != null) {
+                LOG.debug("getColumnsAsync: walk of {} did not complete: {}", oid, w.getErrorMessage());
+            }
+            future.complete(results);
+            // Close the walker from another thread, it is still in use while the callback is running
+            CompletableFuture.runAsync(w::close);
+        });
+        walker.start();
+        return future;
+    }
+
     public static Map<SnmpInstId, SnmpValue> getOidValues(SnmpAgentConfig agentConfig, String name, SnmpObjId oid) 
 	throws InterruptedException {
 
@@ -32,31 +32,31 @@ import java.net.InetAddress;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * A walk of an agent driven by a {@link CollectionTracker}: its outcome, the
+ * callback and the waiting for it to complete. How the requests are sent is
+ * left to the subclasses, see {@link PduSnmpWalker}.
+ */
 public abstract class SnmpWalker implements AutoCloseable {
 
-    protected abstract static class WalkerPduBuilder extends PduBuilder {
-        protected WalkerPduBuilder(int maxVarsPerPdu) {
-            super(maxVarsPerPdu);
-        }
-        
-        public abstract void reset();
-    }
-    
     private final String m_name;
     private final CollectionTracker m_tracker;
 
     private final CountDownLatch m_signal;
 
     private final InetAddress m_address;
-    private WalkerPduBuilder m_pduBuilder;
-    private ResponseProcessor m_responseProcessor;
     private final int m_maxVarsPerPdu;
+    private final int m_maxRepetitions;
     private boolean m_error = false;
     private String m_errorMessage = "";
     private Throwable m_errorThrowable = null;
 
     private SnmpWalkCallback m_callback;
 
+    private AgentPduProfile m_pduProfile;
+    private int m_configuredMaxVarsPerPdu;
+    private int m_configuredMaxRepetitions;
+
     protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, int maxRetries, CollectionTracker tracker) {
         m_address = address;
         m_signal = new CountDownLatch(1);
@@ -68,6 +68,7 @@ public abstract class SnmpWalker implements AutoCloseable {
         m_tracker.setMaxRetries(maxRetries);
         
         m_maxVarsPerPdu = maxVarsPerPdu;
+        m_maxRepetitions = maxRepetitions;
     }
 
     /**
@@ -80,32 +81,33 @@ public abstract class SnmpWalker implements AutoCloseable {
         m_callback = callback;
     }
 
-    protected abstract WalkerPduBuilder createPduBuilder(int maxVarsPerPdu);
-    
-    public void start() {
-        m_pduBuilder = createPduBuilder(m_maxVarsPerPdu);
-        try {
-            buildAndSendNextPdu();
-        } catch (Throwable e) {
-            handleFatalError(e);
-        }
-    }
-    
-    public final int getMaxVarsPerPdu() {
-        return (m_pduBuilder == null ? m_maxVarsPerPdu : m_pduBuilder.getMaxVarsPerPdu());
+    /**
+     * Sets the (optional) profile that learns from the outcome of this walk.
+     *
+     * @param profile the profile of the agent being walked
+     * @param configuredMaxVarsPerPdu the configured value the profile may grow back to
+     * @param configuredMaxRepetitions the configured value the profile may grow back to
+     */
+    public void setPduProfile(AgentPduProfile profile, int configuredMaxVarsPerPdu, int configuredMaxRepetitions) {
+        m_pduProfile = profile;
+        m_configuredMaxVarsPerPdu = configuredMaxVarsPerPdu;
+        m_configuredMaxRepetitions = configuredMaxRepetitions;
     }
 
-    protected void buildAndSendNextPdu() throws SnmpException {
-        if (m_tracker.isFinished()) {
-            handleDone();
-        } else {
-            m_pduBuilder.reset();
-            m_responseProcessor = m_tracker.buildNextPdu(m_pduBuilder);
-            sendNextPdu(m_pduBuilder);
-        }
+    public abstract void start();
+
+    public int getMaxVarsPerPdu() {
+        return m_maxVarsPerPdu;
     }
 
-    protected abstract void sendNextPdu(WalkerPduBuilder pduBuilder) throws SnmpException;
+    /**
+     * @return the varbinds per PDU the walk is currently using, which is
+     * less than {@link #getMaxVarsPerPdu()} was at the start after the agent
+     * answered with tooBig
+     */
+    protected int getMaxVarsPerPduInUse() {
+        return getMaxVarsPerPdu();
+    }
 
     protected void handleDone() {
         finish();
@@ -162,6 +164,7 @@ public abstract class SnmpWalker implements AutoCloseable {
     }
 
     private void finish() {
+        updatePduProfile();
         signal();
         // Trigger the callback after the latch was decreased and the session was closed.
         if (m_callback != null) {
@@ -177,6 +180,20 @@ public abstract class SnmpWalker implements AutoCloseable {
         }
     }
 
+    private void updatePduProfile() {
+        if (m_pduProfile == null) {
+            return;
+        }
+        if (timedOut()) {
+            m_pduProfile.onTimeout(getMaxVarsPerPduInUse(), m_maxRepetitions);
+        } else if (getMaxVarsPerPduInUse() < m_maxVarsPerPdu) {
+            // the walk had to shrink its PDUs after a tooBig response
+            m_pduProfile.onTooBig(getMaxVarsPerPduInUse(), m_maxRepetitions);
+        } else if (!failed()) {
+            m_pduProfile.onSuccess(m_configuredMaxVarsPerPdu, m_configuredMaxRepetitions);
+        }
+    }
+
     @Override
     public abstract void close();
 
@@ -206,13 +223,8 @@ public abstract class SnmpWalker implements AutoCloseable {
          */ 
     }
     
-    // processErrors returns true if we need to retry the request and false otherwise
-    protected boolean processErrors(int errorStatus, int errorIndex) throws SnmpException {
-        return m_responseProcessor.processErrors(errorStatus, errorIndex);
-    }
-    
-    protected void processResponse(SnmpObjId receivedOid, SnmpValue val) throws SnmpException {
-        m_responseProcessor.processResponse(receivedOid, val);
+    protected final CollectionTracker getTracker() {
+        return m_tracker;
     }
 
     protected final InetAddress getAddress() {
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AgentPduProfileTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testUsesConfiguredValuesUntilSomethingWasLearned() {
+        final AgentPduProfile profile = new AgentPduProfile();
+        assertEquals(10, profile.getMaxVarsPerPdu(10));
+        assertEquals(2, profile.getMaxRepetitions(2));
+
+        // successes alone never change a fresh profile
+        for (int i = 0; i < 10; i++) {
+            profile.onSuccess(10, 2);
+        }
+        assertEquals(0, profile.getLearnedMaxVarsPerPdu());
+        assertEquals(0, profile.getLearnedMaxRepetitions());
+    }
+
+    @Test
+    public void testBacksOffAndGrowsBack() {
+        final AgentPduProfile profile = new AgentPduProfile();
+
+        profile.onTooBig(25, 40);
+        assertEquals(25, profile.getMaxVarsPerPdu(50));
+        assertEquals(20, profile.getMaxRepetitions(40));
+
+        profile.onTimeout(25, 20);
+        assertEquals(12, profile.getMaxVarsPerPdu(50));
+        assertEquals(10, profile.getMaxRepetitions(40));
+
+        // a smaller configured value always wins
+        assertEquals(5, profile.getMaxVarsPerPdu(5));
+
+        // growth only happens after a run of successes
+        for (int i = 1; i < AgentPduProfile.GROWTH_INTERVAL; i++) {
+            profile.onSuccess(50, 40);
+        }
+        assertEquals(12, profile.getMaxVarsPerPdu(50));
+        profile.onSuccess(50, 40);
+        assertEquals(15, profile.getMaxVarsPerPdu(50));
+        assertEquals(12, profile.getMaxRepetitions(40));
+
+        // and never beyond the configured values
+        for (int i = 0; i < 100; i++) {
+            profile.onSuccess(50, 40);
+        }
+        assertEquals(50, profile.getMaxVarsPerPdu(50));
+        assertEquals(40, profile.getMaxRepetitions(40));
+    }
+
+    @Test
+    public void testNeverBacksOffBelowOne() {
+        final AgentPduProfile profile = new AgentPduProfile();
+        for (int i = 0; i < 10; i++) {
+            profile.onTimeout(1, 1);
+        }
+        assertEquals(1, profile.getMaxVarsPerPdu(10));
+        assertEquals(1, profile.getMaxRepetitions(2));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final File file = new File(tempFolder.getRoot(), "snmp-pdu-profiles.properties");
+        final InetAddress router = InetAddrUtils.addr("192.168.1.1");
+        final InetAddress server = InetAddrUtils.addr("192.168.1.2");
+
+        final AgentPduProfiles profiles = new AgentPduProfiles(file);
+        profiles.getProfile(router).onTooBig(8, 10);
+        profiles.getProfile(server);
+        profiles.save();
+        assertTrue(file.exists());
+
+        final AgentPduProfiles loaded = new AgentPduProfiles(file);
+        loaded.load();
+        // only profiles that learned something are stored
+        assertEquals(1, loaded.size());
+        assertEquals(8, loaded.getProfile(router).getMaxVarsPerPdu(10));
+        assertEquals(5, loaded.getProfile(router).getMaxRepetitions(10));
+    }
+
+    @Test
+    public void testSplitsColumnsIntoLanes() {
+        final List<Collectable> columns = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            columns.add(new ColumnTracker(SnmpObjId.get(".1.3.6.1.2.1.2.2.1." + i)));
+        }
+        final AggregateTracker walk = new AggregateTracker(columns);
+        // the walk is wrapped the same way SnmpUtils wraps it
+        final AggregateTracker root = new AggregateTracker(new Collectable[] { walk });
+
+        final List<CollectionTracker> lanes = PipelinedSnmpWalker.split(root, 2);
+        assertEquals(2, lanes.size());
+        assertEquals(3, ((AggregateTracker)lanes.get(0)).getChildren().length);
+        assertEquals(2, ((AggregateTracker)lanes.get(1)).getChildren().length);
+        assertSame(walk, lanes.get(0).getParent());
+
+        // a single column cannot be split
+        final AggregateTracker single = new AggregateTracker(new Collectable[] { new ColumnTracker(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.1")) });
+        assertSame(single, PipelinedSnmpWalker.split(single, 4).get(0));
+    }
+}
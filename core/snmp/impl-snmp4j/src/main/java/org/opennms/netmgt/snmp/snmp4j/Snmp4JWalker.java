@@ -31,10 +31,10 @@ package org.opennms.netmgt.snmp.snmp4j;
 import java.io.IOException;
 
 import org.opennms.netmgt.snmp.CollectionTracker;
+import org.opennms.netmgt.snmp.PduSnmpWalker;
 import org.opennms.netmgt.snmp.SnmpException;
 import org.opennms.netmgt.snmp.SnmpObjId;
 import org.opennms.netmgt.snmp.SnmpValue;
-import org.opennms.netmgt.snmp.SnmpWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.PDU;
@@ -46,7 +46,7 @@ import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.VariableBinding;
 
-public class Snmp4JWalker extends SnmpWalker {
+public class Snmp4JWalker extends PduSnmpWalker {
 	
 	private static final transient Logger LOG = LoggerFactory.getLogger(Snmp4JWalker.class);
 	
@@ -226,6 +226,33 @@ public class ScheduleTest extends TestCase {
         assertRunAndScheduled(1000, 1000, 2, 1);
     }
     
+    public void testTickChangesWithEveryRun() {
+        m_interval.addSuspension(1500, 2500);
+
+        long tick = m_sched.getTick();
+        m_sched.schedule();
+        assertTrue(m_sched.getTick() != tick);
+
+        tick = m_sched.getTick();
+        m_scheduler.next();
+        assertRunAndScheduled(0, 1000, 1, 1);
+        assertTrue(m_sched.getTick() != tick);
+
+        tick = m_sched.getTick();
+        m_scheduler.next();
+        assertTrue(m_sched.getTick() != tick);
+
+        // the suspended run changes the tick as well
+        tick = m_sched.getTick();
+        m_scheduler.next();
+        assertRunAndScheduled(2000, 1000, 2, 1);
+        assertTrue(m_sched.getTick() != tick);
+
+        tick = m_sched.getTick();
+        m_sched.unschedule();
+        assertTrue(m_sched.getTick() != tick);
+    }
+
     private void assertRunAndScheduled(long currentTime, long interval, int count, int entryCount) {
         assertEquals(count, m_schedulable.getRunCount());
         assertEquals(currentTime, m_scheduler.getCurrentTime());
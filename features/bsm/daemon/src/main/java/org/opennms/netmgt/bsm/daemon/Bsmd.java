@@ -31,6 +31,7 @@ package org.opennms.netmgt.bsm.daemon;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Executors;
@@ -38,7 +39,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleDeltaListener;
 import org.opennms.netmgt.bsm.service.BusinessServiceManager;
 import org.opennms.netmgt.bsm.service.BusinessServiceStateChangeHandler;
 import org.opennms.netmgt.bsm.service.BusinessServiceStateMachine;
@@ -83,7 +84,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
  * @author jwhite
  */
 @EventListener(name=Bsmd.NAME, logPrefix="bsmd")
-public class Bsmd implements SpringServiceDaemon, BusinessServiceStateChangeHandler, AlarmLifecycleListener {
+public class Bsmd implements SpringServiceDaemon, BusinessServiceStateChangeHandler, AlarmLifecycleDeltaListener {
     private static final Logger LOG = LoggerFactory.getLogger(Bsmd.class);
 
     protected static final long DEFAULT_POLL_INTERVAL = 30; // seconds
@@ -161,6 +162,13 @@ public class Bsmd implements SpringServiceDaemon, BusinessServiceStateChangeHand
         m_stateMachine.handleAllAlarms(wrappedAlarms);
     }
 
+    @Override
+    public void handleAlarmSnapshotDelta(List<OnmsAlarm> updatedAlarms, Map<Integer, String> deletedAlarms) {
+        LOG.debug("Handling {} updated and {} deleted alarms.", updatedAlarms.size(), deletedAlarms.size());
+        updatedAlarms.forEach(this::handleNewOrUpdatedAlarm);
+        deletedAlarms.forEach(this::handleDeletedAlarm);
+    }
+
     @Override
     public void preHandleAlarmSnapshot() {
         // pass, nothing to do here
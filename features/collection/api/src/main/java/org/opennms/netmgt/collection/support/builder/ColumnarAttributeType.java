@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.support.builder;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opennms.netmgt.collection.api.AttributeGroupType;
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.CollectionAttribute;
+import org.opennms.netmgt.collection.api.Persister;
+import org.opennms.netmgt.collection.support.AbstractCollectionAttributeType;
+
+/**
+ * The group, name, metric identifier and type of an attribute in a
+ * {@link ColumnarCollectionSet}.
+ *
+ * Instances are interned, so every collection set that contains the same
+ * attribute refers to the same instance, and are compared by identity.
+ */
+public final class ColumnarAttributeType extends AbstractCollectionAttributeType {
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, ColumnarAttributeType[]>> s_typesByGroupAndName = new ConcurrentHashMap<>();
+
+    private final String m_name;
+    private final AttributeType m_type;
+    private final String m_identifier;
+
+    private ColumnarAttributeType(AttributeGroupType groupType, String name, AttributeType type, String identifier) {
+        super(groupType);
+        m_name = Objects.requireNonNull(name, "name cannot be null");
+        m_type = Objects.requireNonNull(type, "type cannot be null");
+        m_identifier = identifier;
+    }
+
+    public static ColumnarAttributeType intern(String group, String name, AttributeType type, String identifier) {
+        final ConcurrentMap<String, ColumnarAttributeType[]> typesByName = s_typesByGroupAndName.computeIfAbsent(group, g -> new ConcurrentHashMap<>());
+        ColumnarAttributeType existing = find(typesByName.get(name), type, identifier);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (typesByName) {
+            final ColumnarAttributeType[] types = typesByName.get(name);
+            existing = find(types, type, identifier);
+            if (existing != null) {
+                return existing;
+            }
+            final ColumnarAttributeType created = new ColumnarAttributeType(new AttributeGroupType(group, AttributeGroupType.IF_TYPE_ALL), name, type, identifier);
+            if (types == null) {
+                typesByName.put(name, new ColumnarAttributeType[] { created });
+            } else {
+                final ColumnarAttributeType[] extended = Arrays.copyOf(types, types.length + 1);
+                extended[types.length] = created;
+                typesByName.put(name, extended);
+            }
+            return created;
+        }
+    }
+
+    private static ColumnarAttributeType find(ColumnarAttributeType[] types, AttributeType type, String identifier) {
+        if (types != null) {
+            for (final ColumnarAttributeType candidate : types) {
+                if (candidate.m_type == type && Objects.equals(candidate.m_identifier, identifier)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    @Override
+    public AttributeType getType() {
+        return m_type;
+    }
+
+    public String getGroup() {
+        return getGroupType().getName();
+    }
+
+    /**
+     * @return the metric identifier, or the name if the attribute has none
+     */
+    public String getMetricIdentifier() {
+        return m_identifier != null ? m_identifier : m_name;
+    }
+
+    @Override
+    public void storeAttribute(CollectionAttribute attribute, Persister persister) {
+        if (AttributeType.STRING.equals(m_type)) {
+            persister.persistStringAttribute(attribute);
+        } else {
+            persister.persistNumericAttribute(attribute);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ColumnarAttributeType[group=%s, name=%s, type=%s, identifier=%s]", getGroup(), m_name, m_type, m_identifier);
+    }
+}
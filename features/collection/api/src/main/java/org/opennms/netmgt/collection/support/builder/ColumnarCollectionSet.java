@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.support.builder;
+
+import java.util.Date;
+import java.util.OptionalLong;
+
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionResource;
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.api.CollectionSetVisitor;
+import org.opennms.netmgt.collection.api.CollectionStatus;
+import org.opennms.netmgt.collection.api.ServiceParameters;
+import org.opennms.netmgt.collection.support.AbstractCollectionAttribute;
+import org.opennms.netmgt.collection.support.AbstractCollectionResource;
+
+/**
+ * A {@link CollectionSet} that keeps its values in arrays instead of a tree
+ * of resources, groups and attributes.
+ *
+ * The attributes of resource <code>r</code> are the indices from
+ * {@link #getAttributeStart(int)} to {@link #getAttributeEnd(int)}, ordered
+ * by group. Numeric values are stored as doubles, string values as strings,
+ * and the {@link ColumnarAttributeType} of each attribute is shared with all
+ * other collection sets.
+ *
+ * Visitors that implement {@link ColumnarCollectionSetVisitor} read the
+ * arrays directly. All others are given resources and attributes that
+ * read from the arrays. These are created on the first such visit and
+ * shared by all later ones, so thresholding and the persisters that are
+ * not columnar do not each rebuild the tree.
+ *
+ * Use the {@link ColumnarCollectionSetBuilder} to create instances. These
+ * are not marshalled, use the {@link CollectionSetBuilder} for collection
+ * sets that are sent to or from a Minion.
+ */
+public class ColumnarCollectionSet implements CollectionSet {
+
+    private final CollectionAgent m_agent;
+    private final CollectionStatus m_status;
+    private final Date m_timestamp;
+    private final Long m_sequenceNumber;
+    private final boolean m_ignorePersist;
+    private final boolean m_disableCounterPersistence;
+
+    private final Resource[] m_resources;
+    private final int[] m_offsets;
+    private final ColumnarAttributeType[] m_types;
+    private final double[] m_numericValues;
+    private final String[] m_stringValues;
+
+    private volatile AbstractCollectionResource[] m_collectionResources;
+
+    ColumnarCollectionSet(CollectionAgent agent, CollectionStatus status, Date timestamp, Long sequenceNumber,
+            boolean ignorePersist, boolean disableCounterPersistence, Resource[] resources, int[] offsets,
+            ColumnarAttributeType[] types, double[] numericValues, String[] stringValues) {
+        m_agent = agent;
+        m_status = status;
+        m_timestamp = timestamp;
+        m_sequenceNumber = sequenceNumber;
+        m_ignorePersist = ignorePersist;
+        m_disableCounterPersistence = disableCounterPersistence;
+        m_resources = resources;
+        m_offsets = offsets;
+        m_types = types;
+        m_numericValues = numericValues;
+        m_stringValues = stringValues;
+    }
+
+    public CollectionAgent getAgent() {
+        return m_agent;
+    }
+
+    @Override
+    public CollectionStatus getStatus() {
+        return m_status;
+    }
+
+    @Override
+    public boolean ignorePersist() {
+        return m_ignorePersist;
+    }
+
+    @Override
+    public Date getCollectionTimestamp() {
+        return m_timestamp;
+    }
+
+    @Override
+    public OptionalLong getSequenceNumber() {
+        return m_sequenceNumber == null ? OptionalLong.empty() : OptionalLong.of(m_sequenceNumber);
+    }
+
+    public int getResourceCount() {
+        return m_resources.length;
+    }
+
+    public Resource getResource(int resource) {
+        return m_resources[resource];
+    }
+
+    /**
+     * @return the index of the first attribute of the given resource
+     */
+    public int getAttributeStart(int resource) {
+        return m_offsets[resource];
+    }
+
+    /**
+     * @return the index after the last attribute of the given resource
+     */
+    public int getAttributeEnd(int resource) {
+        return m_offsets[resource + 1];
+    }
+
+    public int getAttributeCount() {
+        return m_types.length;
+    }
+
+    public ColumnarAttributeType getAttributeType(int attribute) {
+        return m_types[attribute];
+    }
+
+    /**
+     * @return the value of a numeric attribute, or NaN for a string attribute
+     */
+    public double getNumericValue(int attribute) {
+        return m_numericValues[attribute];
+    }
+
+    /**
+     * @return the value of a string attribute, or null for a numeric attribute
+     */
+    public String getStringValue(int attribute) {
+        return m_stringValues == null ? null : m_stringValues[attribute];
+    }
+
+    public boolean isStringAttribute(int attribute) {
+        return AttributeType.STRING.equals(m_types[attribute].getType());
+    }
+
+    public boolean shouldPersist(int attribute) {
+        return !(m_disableCounterPersistence && AttributeType.COUNTER.equals(m_types[attribute].getType()));
+    }
+
+    /**
+     * @return a new {@link CollectionResource} for the given resource, without attributes
+     */
+    public AbstractCollectionResource toCollectionResource(int resource) {
+        return CollectionSetBuilder.toCollectionResource(m_resources[resource], m_agent);
+    }
+
+    @Override
+    public void visit(CollectionSetVisitor visitor) {
+        if (visitor instanceof ColumnarCollectionSetVisitor) {
+            ((ColumnarCollectionSetVisitor)visitor).visitColumnarCollectionSet(this);
+            return;
+        }
+
+        visitor.visitCollectionSet(this);
+        for (AbstractCollectionResource collectionResource : getCollectionResources()) {
+            collectionResource.visit(visitor);
+        }
+        visitor.completeCollectionSet(this);
+    }
+
+    private AbstractCollectionResource[] getCollectionResources() {
+        AbstractCollectionResource[] collectionResources = m_collectionResources;
+        if (collectionResources == null) {
+            synchronized (this) {
+                collectionResources = m_collectionResources;
+                if (collectionResources == null) {
+                    collectionResources = new AbstractCollectionResource[m_resources.length];
+                    for (int resource = 0; resource < m_resources.length; resource++) {
+                        collectionResources[resource] = toCollectionResource(resource);
+                        for (int attribute = m_offsets[resource]; attribute < m_offsets[resource + 1]; attribute++) {
+                            collectionResources[resource].addAttribute(new ColumnarAttribute(collectionResources[resource], attribute));
+                        }
+                    }
+                    m_collectionResources = collectionResources;
+                }
+            }
+        }
+        return collectionResources;
+    }
+
+    private class ColumnarAttribute extends AbstractCollectionAttribute {
+        private final int m_index;
+
+        private ColumnarAttribute(CollectionResource resource, int index) {
+            super(m_types[index], resource);
+            m_index = index;
+        }
+
+        @Override
+        public String getMetricIdentifier() {
+            return m_types[m_index].getMetricIdentifier();
+        }
+
+        @Override
+        public Number getNumericValue() {
+            return isStringAttribute(m_index) ? null : Double.valueOf(m_numericValues[m_index]);
+        }
+
+        @Override
+        public String getStringValue() {
+            return ColumnarCollectionSet.this.getStringValue(m_index);
+        }
+
+        @Override
+        public boolean shouldPersist(ServiceParameters params) {
+            return ColumnarCollectionSet.this.shouldPersist(m_index);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Attribute[%s:%s]", getMetricIdentifier(), isStringAttribute(m_index) ? getStringValue() : m_numericValues[m_index]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ColumnarCollectionSet[agent=%s, resources=%d, attributes=%d, status=%s, timestamp=%s]",
+                m_agent, m_resources.length, m_types.length, m_status, m_timestamp);
+    }
+}
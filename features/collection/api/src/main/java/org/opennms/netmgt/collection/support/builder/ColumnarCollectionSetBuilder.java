@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.support.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionStatus;
+import org.opennms.netmgt.collection.support.NumericAttributeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fluent API for building a {@link ColumnarCollectionSet}, with the same
+ * methods as the {@link CollectionSetBuilder}.
+ *
+ * Attributes are appended to arrays as they are added, no object is created
+ * per attribute. The arrays are grouped by resource and group when the
+ * collection set is built.
+ */
+public class ColumnarCollectionSetBuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarCollectionSetBuilder.class);
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final int RESOURCE_BITS = 24;
+    private static final int GROUP_BITS = 12;
+    private static final int ATTRIBUTE_BITS = 27;
+
+    private final CollectionAgent m_agent;
+    private CollectionStatus m_status = CollectionStatus.SUCCEEDED;
+    private Date m_timestamp = new Date();
+    private boolean m_disableCounterPersistence = false;
+    private boolean m_ignorePersist = false;
+    private Long m_sequenceNumber;
+
+    private final Map<Resource, Integer> m_resourceIndices = new HashMap<>();
+    private final List<Resource> m_resources = new ArrayList<>();
+    private final Map<String, Integer> m_groupIndices = new HashMap<>();
+    private Resource m_lastResource;
+    private int m_lastResourceIndex;
+
+    private int m_size = 0;
+    private int[] m_resourceOfAttribute = new int[INITIAL_CAPACITY];
+    private int[] m_groupOfAttribute = new int[INITIAL_CAPACITY];
+    private ColumnarAttributeType[] m_types = new ColumnarAttributeType[INITIAL_CAPACITY];
+    private double[] m_numericValues = new double[INITIAL_CAPACITY];
+    private String[] m_stringValues;
+
+    public ColumnarCollectionSetBuilder(CollectionAgent agent) {
+        m_agent = Objects.requireNonNull(agent, "agent cannot be null");
+    }
+
+    public ColumnarCollectionSetBuilder withStatus(CollectionStatus status) {
+        m_status = Objects.requireNonNull(status, "status cannot be null");
+        return this;
+    }
+
+    public ColumnarCollectionSetBuilder withTimestamp(Date timestamp) {
+        m_timestamp = Objects.requireNonNull(timestamp, "timestamp cannot be null");
+        return this;
+    }
+
+    public ColumnarCollectionSetBuilder withGauge(Resource resource, String group, String name, Number value) {
+        return withNumericAttribute(resource, group, name, value, AttributeType.GAUGE);
+    }
+
+    public ColumnarCollectionSetBuilder withCounter(Resource resource, String group, String name, Number value) {
+        return withNumericAttribute(resource, group, name, value, AttributeType.COUNTER);
+    }
+
+    public ColumnarCollectionSetBuilder withNumericAttribute(Resource resource, String group, String name, Number value, AttributeType type) {
+        return withIdentifiedNumericAttribute(resource, group, name, value, type, null);
+    }
+
+    public ColumnarCollectionSetBuilder withStringAttribute(Resource resource, String group, String name, String value) {
+        return withIdentifiedStringAttribute(resource, group, name, value, null);
+    }
+
+    public ColumnarCollectionSetBuilder withIdentifiedNumericAttribute(Resource resource, String group, String name, Number value, AttributeType type, String metricId) {
+        if (!type.isNumeric()) {
+            throw new IllegalArgumentException("attribute type " + type  + " is not numeric.");
+        }
+        if (value == null) {
+            LOG.info("Ignoring null value for attribute '{}' in group '{}' on resource '{}'", name, group, resource);
+            return this;
+        }
+        add(resource, group, ColumnarAttributeType.intern(group, name, type, metricId), value.doubleValue(), null);
+        return this;
+    }
+
+    public ColumnarCollectionSetBuilder withIdentifiedStringAttribute(Resource resource, String group, String name, String value, String metricId) {
+        add(resource, group, ColumnarAttributeType.intern(group, name, AttributeType.STRING, metricId), Double.NaN, value);
+        return this;
+    }
+
+    public ColumnarCollectionSetBuilder withAttribute(Resource resource, String group, String name, String value, AttributeType type) {
+        if (value == null) {
+            LOG.info("Ignoring null value for attribute '{}' in group '{}' on resource '{}'", name, group, resource);
+            return this;
+        } else if (type.isNumeric()) {
+            return withNumericAttribute(resource, group, name, NumericAttributeUtils.parseNumericValue(value), type);
+        } else {
+            return withStringAttribute(resource, group, name, value);
+        }
+    }
+
+    public ColumnarCollectionSetBuilder disableCounterPersistence(boolean disableCounterPersistence) {
+        m_disableCounterPersistence = disableCounterPersistence;
+        return this;
+    }
+
+    /**
+     * @param ignorePersist whether counters must not be persisted, i.e. because the agent restarted
+     */
+    public ColumnarCollectionSetBuilder withIgnorePersist(boolean ignorePersist) {
+        m_ignorePersist = ignorePersist;
+        return this;
+    }
+
+    public ColumnarCollectionSetBuilder withSequenceNumber(Long sequenceNumber) {
+        m_sequenceNumber = sequenceNumber;
+        return this;
+    }
+
+    private void add(Resource resource, String group, ColumnarAttributeType type, double numericValue, String stringValue) {
+        if (m_size == m_types.length) {
+            final int capacity = m_size * 2;
+            m_resourceOfAttribute = Arrays.copyOf(m_resourceOfAttribute, capacity);
+            m_groupOfAttribute = Arrays.copyOf(m_groupOfAttribute, capacity);
+            m_types = Arrays.copyOf(m_types, capacity);
+            m_numericValues = Arrays.copyOf(m_numericValues, capacity);
+            if (m_stringValues != null) {
+                m_stringValues = Arrays.copyOf(m_stringValues, capacity);
+            }
+        }
+        if (stringValue != null && m_stringValues == null) {
+            m_stringValues = new String[m_types.length];
+        }
+
+        m_resourceOfAttribute[m_size] = indexOf(resource);
+        m_groupOfAttribute[m_size] = groupIndexOf(group);
+        m_types[m_size] = type;
+        m_numericValues[m_size] = numericValue;
+        if (stringValue != null) {
+            m_stringValues[m_size] = stringValue;
+        }
+        m_size++;
+    }
+
+    private int indexOf(Resource resource) {
+        // Attributes are usually added resource by resource
+        if (resource != m_lastResource) {
+            Integer index = m_resourceIndices.get(resource);
+            if (index == null) {
+                index = m_resources.size();
+                m_resources.add(resource);
+                m_resourceIndices.put(resource, index);
+            }
+            m_lastResource = resource;
+            m_lastResourceIndex = index;
+        }
+        return m_lastResourceIndex;
+    }
+
+    private int groupIndexOf(String group) {
+        Integer index = m_groupIndices.get(group);
+        if (index == null) {
+            index = m_groupIndices.size();
+            m_groupIndices.put(group, index);
+        }
+        return index;
+    }
+
+    public ColumnarCollectionSet build() {
+        if (m_resources.size() >= 1 << RESOURCE_BITS || m_groupIndices.size() >= 1 << GROUP_BITS || m_size >= 1 << ATTRIBUTE_BITS) {
+            throw new IllegalStateException("Too many resources, groups or attributes for a columnar collection set: "
+                    + m_resources.size() + "/" + m_groupIndices.size() + "/" + m_size);
+        }
+
+        // Order the attributes by resource, then group, then insertion order
+        final long[] keys = new long[m_size];
+        for (int i = 0; i < m_size; i++) {
+            keys[i] = ((long)m_resourceOfAttribute[i] << (GROUP_BITS + ATTRIBUTE_BITS))
+                    | ((long)m_groupOfAttribute[i] << ATTRIBUTE_BITS)
+                    | i;
+        }
+        Arrays.sort(keys);
+
+        final int[] offsets = new int[m_resources.size() + 1];
+        final ColumnarAttributeType[] types = new ColumnarAttributeType[m_size];
+        final double[] numericValues = new double[m_size];
+        final String[] stringValues = m_stringValues == null ? null : new String[m_size];
+        for (int i = 0; i < m_size; i++) {
+            final int attribute = (int)(keys[i] & ((1L << ATTRIBUTE_BITS) - 1));
+            offsets[m_resourceOfAttribute[attribute] + 1]++;
+            types[i] = m_types[attribute];
+            numericValues[i] = m_numericValues[attribute];
+            if (stringValues != null) {
+                stringValues[i] = m_stringValues[attribute];
+            }
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+
+        return new ColumnarCollectionSet(m_agent, m_status, m_timestamp, m_sequenceNumber, m_ignorePersist,
+                m_disableCounterPersistence, m_resources.toArray(new Resource[m_resources.size()]), offsets,
+                types, numericValues, stringValues);
+    }
+
+    public int getNumResources() {
+        return m_resources.size();
+    }
+
+    public int getNumAttributes() {
+        return m_size;
+    }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.support.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.collection.api.AttributeGroup;
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionAttribute;
+import org.opennms.netmgt.collection.api.CollectionResource;
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.api.CollectionStatus;
+import org.opennms.netmgt.collection.support.AbstractCollectionSetVisitor;
+
+public class ColumnarCollectionSetTest {
+
+    private final CollectionAgent agent = mock(CollectionAgent.class);
+
+    private final NodeLevelResource node = new NodeLevelResource(1);
+
+    private final InterfaceLevelResource eth0 = new InterfaceLevelResource(node, "eth0");
+
+    @Test
+    public void canGroupAttributesByResourceAndGroup() {
+        final ColumnarCollectionSet collectionSet = new ColumnarCollectionSetBuilder(agent)
+                .withStatus(CollectionStatus.FAILED)
+                .withIgnorePersist(true)
+                .withCounter(eth0, "mib2-interfaces", "ifInOctets", 100)
+                .withGauge(node, "mib2-host", "hrSystemUsers", 3)
+                .withStringAttribute(eth0, "mib2-interfaces", "ifAlias", "uplink")
+                .withCounter(eth0, "mib2-X-interfaces", "ifHCInOctets", 1000)
+                .withCounter(eth0, "mib2-interfaces", "ifOutOctets", 200)
+                .withGauge(node, "mib2-host", "hrSystemProcesses", null)
+                .build();
+
+        assertEquals(CollectionStatus.FAILED, collectionSet.getStatus());
+        assertTrue(collectionSet.ignorePersist());
+
+        // null values are skipped
+        assertEquals(2, collectionSet.getResourceCount());
+        assertEquals(5, collectionSet.getAttributeCount());
+
+        // resources in the order they were first seen, attributes by group
+        assertEquals(eth0, collectionSet.getResource(0));
+        assertEquals(0, collectionSet.getAttributeStart(0));
+        assertEquals(4, collectionSet.getAttributeEnd(0));
+        assertEquals("ifInOctets", collectionSet.getAttributeType(0).getName());
+        assertEquals("ifAlias", collectionSet.getAttributeType(1).getName());
+        assertEquals("ifOutOctets", collectionSet.getAttributeType(2).getName());
+        assertEquals("ifHCInOctets", collectionSet.getAttributeType(3).getName());
+
+        assertEquals(node, collectionSet.getResource(1));
+        assertEquals(4, collectionSet.getAttributeStart(1));
+        assertEquals(5, collectionSet.getAttributeEnd(1));
+        assertEquals(3.0, collectionSet.getNumericValue(4), 0.0);
+
+        assertTrue(collectionSet.isStringAttribute(1));
+        assertEquals("uplink", collectionSet.getStringValue(1));
+        assertTrue(Double.isNaN(collectionSet.getNumericValue(1)));
+        assertNull(collectionSet.getStringValue(0));
+    }
+
+    @Test
+    public void canShareAttributeTypes() {
+        final ColumnarCollectionSet first = new ColumnarCollectionSetBuilder(agent)
+                .withCounter(eth0, "mib2-interfaces", "ifInOctets", 1)
+                .build();
+        final ColumnarCollectionSet second = new ColumnarCollectionSetBuilder(agent)
+                .withCounter(eth0, "mib2-interfaces", "ifInOctets", 2)
+                .build();
+        assertSame(first.getAttributeType(0), second.getAttributeType(0));
+        assertEquals(AttributeType.COUNTER, first.getAttributeType(0).getType());
+    }
+
+    @Test
+    public void canVisitLikeTheCollectionSetBuilder() {
+        final CollectionSetBuilder builder = new CollectionSetBuilder(agent);
+        final ColumnarCollectionSetBuilder columnarBuilder = new ColumnarCollectionSetBuilder(agent);
+        for (int i = 1; i <= 3; i++) {
+            final InterfaceLevelResource resource = new InterfaceLevelResource(node, "eth" + i);
+            builder.withCounter(resource, "mib2-interfaces", "ifInOctets", i * 100)
+                    .withAttribute(resource, "mib2-interfaces", "ifAlias", "port " + i, AttributeType.STRING)
+                    .withIdentifiedNumericAttribute(resource, "mib2-interfaces", "ifSpeed", 1000, AttributeType.GAUGE, "speed");
+            columnarBuilder.withCounter(resource, "mib2-interfaces", "ifInOctets", i * 100)
+                    .withAttribute(resource, "mib2-interfaces", "ifAlias", "port " + i, AttributeType.STRING)
+                    .withIdentifiedNumericAttribute(resource, "mib2-interfaces", "ifSpeed", 1000, AttributeType.GAUGE, "speed");
+        }
+        builder.withGauge(node, "mib2-host", "hrSystemUsers", 3);
+        columnarBuilder.withGauge(node, "mib2-host", "hrSystemUsers", 3);
+
+        final List<String> expected = visit(builder.build());
+        assertEquals(18, expected.size());
+        assertEquals(expected, visit(columnarBuilder.build()));
+    }
+
+    @Test
+    public void canShareResourcesAcrossVisitors() {
+        final ColumnarCollectionSet collectionSet = newInterfaceCollectionSet(10);
+        final List<CollectionResource> first = getResources(collectionSet);
+        final List<CollectionResource> second = getResources(collectionSet);
+        assertEquals(11, first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    /**
+     * Thresholding and the persisters that are not columnar visit the same
+     * collection set one after the other. Only the first of them should pay
+     * for the resources and attributes.
+     */
+    @Test
+    public void canVisitAgainWithoutAllocatingTheTree() {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean)threadMXBean).isThreadAllocatedMemorySupported());
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threadMXBean;
+        final long threadId = Thread.currentThread().getId();
+
+        // warm up the visitor and the allocation counter
+        getResources(newInterfaceCollectionSet(1000));
+
+        final ColumnarCollectionSet collectionSet = newInterfaceCollectionSet(1000);
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        getResources(collectionSet);
+        final long firstVisit = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        before = allocations.getThreadAllocatedBytes(threadId);
+        getResources(collectionSet);
+        final long secondVisit = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(String.format("first visit allocated %d bytes, second visit %d bytes", firstVisit, secondVisit),
+                secondVisit * 4 < firstVisit);
+    }
+
+    private ColumnarCollectionSet newInterfaceCollectionSet(int numInterfaces) {
+        final ColumnarCollectionSetBuilder builder = new ColumnarCollectionSetBuilder(agent);
+        for (int i = 1; i <= numInterfaces; i++) {
+            final InterfaceLevelResource resource = new InterfaceLevelResource(node, "eth" + i);
+            builder.withCounter(resource, "mib2-interfaces", "ifInOctets", i * 100)
+                    .withCounter(resource, "mib2-interfaces", "ifOutOctets", i * 200)
+                    .withGauge(resource, "mib2-interfaces", "ifSpeed", 1000);
+        }
+        return builder.withGauge(node, "mib2-host", "hrSystemUsers", 3).build();
+    }
+
+    private static List<CollectionResource> getResources(CollectionSet collectionSet) {
+        final List<CollectionResource> resources = new ArrayList<>();
+        collectionSet.visit(new AbstractCollectionSetVisitor() {
+            @Override
+            public void visitResource(CollectionResource resource) {
+                resources.add(resource);
+            }
+        });
+        return resources;
+    }
+
+    private static List<String> visit(CollectionSet collectionSet) {
+        final List<String> visited = new ArrayList<>();
+        collectionSet.visit(new AbstractCollectionSetVisitor() {
+            @Override
+            public void visitResource(CollectionResource resource) {
+                visited.add(resource.getResourceTypeName() + "/" + resource.getInstance());
+            }
+
+            @Override
+            public void visitGroup(AttributeGroup group) {
+                visited.add(group.getName());
+            }
+
+            @Override
+            public void visitAttribute(CollectionAttribute attribute) {
+                visited.add(attribute.getMetricIdentifier() + "=" + (AttributeType.STRING.equals(attribute.getType())
+                        ? attribute.getStringValue() : attribute.getNumericValue().doubleValue()));
+            }
+        });
+        return visited;
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.ServiceParameters;
+import org.opennms.netmgt.collection.support.PersistAllSelectorStrategy;
+import org.opennms.netmgt.collection.support.builder.AbstractResource;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSet;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSetBuilder;
+import org.opennms.netmgt.snmp.SnmpValue;
+
+/**
+ * Fills a {@link ColumnarCollectionSetBuilder} while the trackers of an
+ * {@link SnmpCollectionSet} store their results, instead of adding an
+ * {@link SnmpAttribute} to a group of the {@link SnmpCollectionResource}
+ * for every value and converting that tree afterwards.
+ *
+ * The same resources, groups and values are kept as by
+ * {@link SnmpCollectionSetToCollectionSetDTOConverter#convertToColumnar(SnmpCollectionSet)}.
+ * The only resources that still get their attributes are generic index
+ * resources whose persistence selector looks at the collected values.
+ * They are added when the collection set is built.
+ */
+class ColumnarSnmpCollectionSetBuilder {
+
+    private final ColumnarCollectionSetBuilder m_builder;
+
+    private final ServiceParameters m_params;
+
+    /**
+     * The builder resource of each resource that is persisted, or null
+     */
+    private final Map<SnmpCollectionResource, AbstractResource> m_resources = new IdentityHashMap<>();
+
+    private final Set<SnmpCollectionResource> m_selectedResources = new LinkedHashSet<>();
+
+    ColumnarSnmpCollectionSetBuilder(SnmpCollectionAgent agent, ServiceParameters params) {
+        m_builder = new ColumnarCollectionSetBuilder(agent);
+        m_params = params;
+    }
+
+    void setAttributeValue(SnmpCollectionResource resource, SnmpAttributeType type, SnmpValue value) {
+        if (isSelectedByValue(resource)) {
+            resource.setAttributeValue(type, value);
+            m_selectedResources.add(resource);
+            return;
+        }
+
+        final AbstractResource builderResource = getBuilderResource(resource);
+        if (builderResource == null || !SnmpAttributeGroup.shouldPersist(resource, type.getGroupType())) {
+            return;
+        }
+
+        final String group = type.getGroupType().getName();
+        if (type instanceof HexStringAttributeType) {
+            m_builder.withAttribute(builderResource, group, type.getName(), value.toHexString(), type.getType());
+        } else if (type.getType().isNumeric() && isInteger(value)) {
+            m_builder.withNumericAttribute(builderResource, group, type.getName(), value.toLong(), type.getType());
+        } else {
+            m_builder.withAttribute(builderResource, group, type.getName(), value.toString(), type.getType());
+        }
+    }
+
+    ColumnarCollectionSet build(SnmpCollectionSet collectionSet) {
+        final SnmpCollectionSetToCollectionSetDTOConverter converter = new SnmpCollectionSetToCollectionSetDTOConverter()
+                .withParameters(m_params);
+        for (SnmpCollectionResource resource : m_selectedResources) {
+            converter.addResourceToBuilder(m_builder, resource);
+        }
+        return m_builder.withTimestamp(collectionSet.getCollectionTimestamp())
+                .withStatus(collectionSet.getStatus())
+                .withIgnorePersist(collectionSet.ignorePersist())
+                .build();
+    }
+
+    private AbstractResource getBuilderResource(SnmpCollectionResource resource) {
+        if (m_resources.containsKey(resource)) {
+            return m_resources.get(resource);
+        }
+        AbstractResource builderResource = SnmpCollectionSetToCollectionSetDTOConverter.toBuilderResource(resource);
+        if (builderResource != null && !resource.shouldPersist(m_params)) {
+            builderResource = null;
+        }
+        m_resources.put(resource, builderResource);
+        return builderResource;
+    }
+
+    private static boolean isSelectedByValue(SnmpCollectionResource resource) {
+        return resource instanceof GenericIndexResource
+                && !(((GenericIndexResourceType)resource.getResourceType()).getPersistenceSelectorStrategy() instanceof PersistAllSelectorStrategy);
+    }
+
+    /**
+     * The values that are converted to the same number with and without going through a string.
+     */
+    private static boolean isInteger(SnmpValue value) {
+        switch (value.getType()) {
+            case SnmpValue.SNMP_INT32:
+            case SnmpValue.SNMP_COUNTER32:
+            case SnmpValue.SNMP_GAUGE32:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
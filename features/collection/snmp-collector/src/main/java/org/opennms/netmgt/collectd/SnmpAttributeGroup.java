@@ -50,21 +50,30 @@ public class SnmpAttributeGroup extends AttributeGroup {
 	 */
 	@Override
 	protected boolean doShouldPersist() {
-		boolean shouldPersist = super.doShouldPersist();
+		return super.doShouldPersist() || matchesIfType((SnmpCollectionResource)getResource(), getIfType());
+	}
+
+	/**
+	 * Same as {@link #shouldPersist(org.opennms.netmgt.collection.api.ServiceParameters)} for a group of the
+	 * given type, without creating the group.
+	 */
+	static boolean shouldPersist(SnmpCollectionResource resource, AttributeGroupType groupType) {
+		final String ifType = groupType.getIfType();
+		if (AttributeGroupType.IF_TYPE_IGNORE.equalsIgnoreCase(ifType)) return true;
+		if (AttributeGroupType.IF_TYPE_ALL.equalsIgnoreCase(ifType)) return true;
+		return matchesIfType(resource, ifType);
+	}
 
-		if (shouldPersist) {
-			return shouldPersist;
-		} else {
-			String type = String.valueOf(((SnmpCollectionResource)getResource()).getSnmpIfType());
+	private static boolean matchesIfType(SnmpCollectionResource resource, String ifType) {
+		String type = String.valueOf(resource.getSnmpIfType());
 
-			if (type.equals(getIfType())) return true;
+		if (type.equals(ifType)) return true;
 
-			StringTokenizer tokenizer = new StringTokenizer(getIfType(), ",");
-			while(tokenizer.hasMoreTokens()) {
-				if (type.equals(tokenizer.nextToken()))
-					return true;
-			}
-			return false;
+		StringTokenizer tokenizer = new StringTokenizer(ifType, ",");
+		while(tokenizer.hasMoreTokens()) {
+			if (type.equals(tokenizer.nextToken()))
+				return true;
 		}
+		return false;
 	}
 }
@@ -222,7 +222,7 @@ public abstract class SnmpAttributeType extends AbstractCollectionAttributeType
         if (resource == null) {
             collectionSet.notifyIfNotFound(this, res);
         } else {
-            resource.setAttributeValue(this, res.getValue());
+            collectionSet.setAttributeValue(resource, this, res.getValue());
         }
     }
 
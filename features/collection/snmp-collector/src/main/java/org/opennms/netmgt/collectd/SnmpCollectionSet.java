@@ -51,6 +51,7 @@ import org.opennms.netmgt.collection.api.CollectionStatus;
 import org.opennms.netmgt.collection.api.CollectionTimedOut;
 import org.opennms.netmgt.collection.api.CollectionUnknown;
 import org.opennms.netmgt.collection.api.CollectionWarning;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSet;
 import org.opennms.netmgt.snmp.AggregateTracker;
 import org.opennms.netmgt.snmp.Collectable;
 import org.opennms.netmgt.snmp.CollectionTracker;
@@ -58,6 +59,7 @@ import org.opennms.netmgt.snmp.SnmpAgentConfig;
 import org.opennms.netmgt.snmp.SnmpAgentTimeoutException;
 import org.opennms.netmgt.snmp.SnmpResult;
 import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
 import org.opennms.netmgt.snmp.SnmpWalker;
 import org.opennms.netmgt.snmp.proxy.LocationAwareSnmpClient;
 import org.slf4j.Logger;
@@ -100,6 +102,7 @@ public class SnmpCollectionSet implements Collectable, CollectionSet {
     private CollectionStatus m_status = CollectionStatus.FAILED;
     private boolean m_ignorePersist;
     private Date m_timestamp;
+    private ColumnarSnmpCollectionSetBuilder m_columnarBuilder;
 
     /**
      * <p>toString</p>
@@ -548,6 +551,35 @@ public class SnmpCollectionSet implements Collectable, CollectionSet {
         return agentConfig;
     }
 
+    /**
+     * Stores the collected values in a {@link ColumnarCollectionSet} instead
+     * of the resources, unless MIB object properties are computed from them.
+     *
+     * @return whether the values are stored in a {@link ColumnarCollectionSet}
+     */
+    boolean storeColumnar() {
+        if (new SnmpPropertyExtenderProcessor().hasMibObjProperties(m_snmpCollection.getName(), m_agent.getSysObjectId(), m_agent.getHostAddress())) {
+            return false;
+        }
+        m_columnarBuilder = new ColumnarSnmpCollectionSetBuilder(m_agent, m_snmpCollection.getServiceParameters());
+        return true;
+    }
+
+    void setAttributeValue(SnmpCollectionResource resource, SnmpAttributeType type, SnmpValue value) {
+        if (m_columnarBuilder != null) {
+            m_columnarBuilder.setAttributeValue(resource, type, value);
+        } else {
+            resource.setAttributeValue(type, value);
+        }
+    }
+
+    /**
+     * @return the values collected after {@link #storeColumnar()}
+     */
+    ColumnarCollectionSet buildColumnarCollectionSet() {
+        return m_columnarBuilder.build(this);
+    }
+
     /**
      * <p>notifyIfNotFound</p>
      *
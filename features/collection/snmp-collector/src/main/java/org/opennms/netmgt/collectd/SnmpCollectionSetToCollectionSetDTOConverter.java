@@ -32,12 +32,15 @@ import java.util.Collection;
 import java.util.Objects;
 
 import org.opennms.netmgt.collection.api.AttributeGroup;
+import org.opennms.netmgt.collection.api.AttributeType;
 import org.opennms.netmgt.collection.api.CollectionAttribute;
 import org.opennms.netmgt.collection.api.CollectionResource;
 import org.opennms.netmgt.collection.api.ServiceParameters;
 import org.opennms.netmgt.collection.dto.CollectionSetDTO;
 import org.opennms.netmgt.collection.support.builder.AbstractResource;
 import org.opennms.netmgt.collection.support.builder.CollectionSetBuilder;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSet;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSetBuilder;
 import org.opennms.netmgt.collection.support.builder.GenericTypeResource;
 import org.opennms.netmgt.collection.support.builder.InterfaceLevelResource;
 import org.opennms.netmgt.collection.support.builder.NodeLevelResource;
@@ -54,10 +57,22 @@ import org.slf4j.LoggerFactory;
  * Usage:
  * <code>new SnmpCollectionSetToCollectionSetDTOConverter().withParameters(params).convert(collectionSet)</code>
  * </p>
+ * <p>
+ * {@link #convertToColumnar(SnmpCollectionSet)} converts the same attributes to a
+ * {@link ColumnarCollectionSet} instead.
+ * </p>
  * 
  */
 public class SnmpCollectionSetToCollectionSetDTOConverter {
 
+    /**
+     * The attributes of a converted collection set are passed to either builder through this.
+     */
+    @FunctionalInterface
+    private interface AttributeSink {
+        void withAttribute(Resource resource, String group, String name, String value, AttributeType type);
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(SnmpCollectionSetToCollectionSetDTOConverter.class);
 
     private ServiceParameters params;
@@ -79,37 +94,67 @@ public class SnmpCollectionSetToCollectionSetDTOConverter {
         return builder.build();
     }
 
+    public ColumnarCollectionSet convertToColumnar(SnmpCollectionSet collectionSet) {
+        Objects.requireNonNull(collectionSet, "SnmpCollectionSet cannot be null");
+        Objects.requireNonNull(params, "ServiceParameters cannot be null");
+        ColumnarCollectionSetBuilder builder = new ColumnarCollectionSetBuilder(collectionSet.getAgent());
+        builder.withTimestamp(collectionSet.getCollectionTimestamp());
+        builder.withStatus(collectionSet.getStatus());
+        builder.withIgnorePersist(collectionSet.ignorePersist());
+
+        for (CollectionResource collectionResource : collectionSet.getResources()){
+            addResource(builder::withAttribute, collectionResource);
+        }
+        return builder.build();
+    }
+
     public void addResourceToBuilder(CollectionSetBuilder builder, CollectionResource collectionResource) {
+        addResource(builder::withAttribute, collectionResource);
+    }
+
+    private void addResource(AttributeSink builder, CollectionResource collectionResource) {
 
             SnmpCollectionResource snmpResource = (SnmpCollectionResource) collectionResource;
-            AbstractResource builderResource;
+            AbstractResource builderResource = toBuilderResource(collectionResource);
+            if (builderResource == null) {
+                return;
+            }
+            // we add only groups that should be persisted to the CollectionBuilder since it doesn't have the concept
+            // of "shouldPersist".
+            Collection<AttributeGroup> groups = snmpResource.getGroups();
+            if(collectionResource.shouldPersist(params)) {
+                addGroupsToBuilder(builder, builderResource, groups);
+            }
+    }
+
+    void addResourceToBuilder(ColumnarCollectionSetBuilder builder, SnmpCollectionResource collectionResource) {
+        addResource(builder::withAttribute, collectionResource);
+    }
 
+    /**
+     * @return the resource the builders use for the given resource, or null if it is not supported
+     */
+    static AbstractResource toBuilderResource(CollectionResource collectionResource) {
             if(collectionResource instanceof NodeInfo) {
                 NodeInfo nodeInfo = (NodeInfo) collectionResource;
-                builderResource = new NodeLevelResource(nodeInfo.getNodeId());
+                return new NodeLevelResource(nodeInfo.getNodeId());
             } else if(collectionResource instanceof IfInfo) {
                 IfInfo ifInfo = (IfInfo) collectionResource;
-                builderResource = new InterfaceLevelResource(new NodeLevelResource(ifInfo.getNodeId()), ifInfo.getAttributesMap().get("snmpifname"));
+                return new InterfaceLevelResource(new NodeLevelResource(ifInfo.getNodeId()), ifInfo.getAttributesMap().get("snmpifname"));
             } else if(collectionResource instanceof GenericIndexResource) {
                 GenericIndexResource genericResource = (GenericIndexResource) collectionResource;
                 ResourceType resourceType = ((GenericIndexResourceType)genericResource.getResourceType()).getResourceType();
-                builderResource = new GenericTypeResource(new NodeLevelResource(genericResource.getCollectionAgent().getNodeId())
+                return new GenericTypeResource(new NodeLevelResource(genericResource.getCollectionAgent().getNodeId())
                         ,resourceType
                         ,genericResource.getUnmodifiedInstance());
             } else {
                 // We don't do anything for AliasedResource as discussed with jesse - AliasedResource is not used currently
                 LOG.warn("we don't support {}, will ignore it", collectionResource.getClass().getName());
-                return;
-            }
-            // we add only groups that should be persisted to the CollectionBuilder since it doesn't have the concept
-            // of "shouldPersist".
-            Collection<AttributeGroup> groups = snmpResource.getGroups();
-            if(collectionResource.shouldPersist(params)) {
-                addGroupsToBuilder(builder, builderResource, groups);
+                return null;
             }
     }
 
-    private void addGroupsToBuilder(CollectionSetBuilder builder, Resource resource, Collection<AttributeGroup> groups){
+    private void addGroupsToBuilder(AttributeSink builder, Resource resource, Collection<AttributeGroup> groups){
         for(AttributeGroup group : groups){
             if(group.shouldPersist(params)){
                 addGroupToBuilder(builder, resource, group);
@@ -117,7 +162,7 @@ public class SnmpCollectionSetToCollectionSetDTOConverter {
         }
     }
 
-    private void addGroupToBuilder(CollectionSetBuilder builder, Resource resource, AttributeGroup group) {
+    private void addGroupToBuilder(AttributeSink builder, Resource resource, AttributeGroup group) {
         for (CollectionAttribute attribute : group.getAttributes()) {
             String value;
             if(!attribute.shouldPersist(params)){
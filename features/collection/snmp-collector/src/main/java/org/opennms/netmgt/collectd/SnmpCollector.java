@@ -47,6 +47,11 @@ import org.slf4j.LoggerFactory;
  * <P>
  * The SnmpCollector class ...
  * </P>
+ * <P>
+ * When the {@value #COLUMNAR_SYS_PROP} system property is set to true, the
+ * collected values are returned as a {@link org.opennms.netmgt.collection.support.builder.ColumnarCollectionSet},
+ * so the SNMP resources and attributes can be discarded right after the collection.
+ * </P>
  *
  * @author <A HREF="mailto:brozow@opennms.org">Matt Brozowski</A>
  */
@@ -54,6 +59,8 @@ public class SnmpCollector extends AbstractSnmpCollector {
 
     private static final Logger LOG = LoggerFactory.getLogger(SnmpCollector.class);
 
+    public static final String COLUMNAR_SYS_PROP = "org.opennms.netmgt.collectd.SnmpCollector.columnar";
+
     /**
      * {@inheritDoc}
      *
@@ -80,6 +87,8 @@ public class SnmpCollector extends AbstractSnmpCollector {
 
             SnmpCollectionSet collectionSet = snmpCollection.createCollectionSet((SnmpCollectionAgent)agent);
             collectionSet.setCollectionTimestamp(new Date());
+            final boolean columnar = Boolean.getBoolean(COLUMNAR_SYS_PROP);
+            final boolean storeColumnar = columnar && collectionSet.storeColumnar();
             if (!collectionSet.hasDataToCollect()) {
                 LOG.info("agent {} defines no data to collect.  Skipping.", agent);
                 // should we return here?
@@ -102,6 +111,11 @@ public class SnmpCollector extends AbstractSnmpCollector {
             } else {
                 collectionSet.checkForSystemRestart();
             }
+            if (storeColumnar) {
+                return collectionSet.buildColumnarCollectionSet();
+            } else if (columnar) {
+                return new SnmpCollectionSetToCollectionSetDTOConverter().withParameters(params).convertToColumnar(collectionSet);
+            }
             return collectionSet;
         } catch (CollectionException e) {
             throw e;
@@ -75,6 +75,13 @@ public class SnmpPropertyExtenderProcessor {
         m_dataCollectionConfigDao = config;
     }
 
+    /**
+     * @return whether {@link #process(SnmpCollectionSet, String, String, String)} may add attributes
+     */
+    public boolean hasMibObjProperties(final String collectionName, final String sysObjectId, final String ipAddress) {
+        return !getDataCollectionConfigDao().getMibObjProperties(collectionName, sysObjectId, ipAddress).isEmpty();
+    }
+
     /**
      * Process.
      *
@@ -107,6 +107,11 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
     
     private String instance;
 
+    /**
+     * Replaces the checkpointer configured with system properties, used by tests.
+     */
+    private static volatile Optional<ThresholdStateCheckpointer> checkpointerOverride;
+
     private static final Map<Class<? extends AbstractThresholdEvaluatorState.AbstractState>,
             SerializingBlobStore<? extends AbstractThresholdEvaluatorState.AbstractState>> serdesMap
             = new ConcurrentHashMap<>();
@@ -179,6 +184,13 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
 
     private void persistStateIfNeeded() {
         if (shouldPersist()) {
+            final ThresholdStateCheckpointer checkpointer = getCheckpointer();
+            // Hand the serialized state to the checkpointer, which writes it with the next batch
+            if (checkpointer != null && checkpointer.markDirty(key, fst.asByteArray(state),
+                    thresholdingSession.getBlobStore(), stateTTL)) {
+                isStateDirty = false;
+                return;
+            }
             try {
                 long newTimestamp = kvStore.put(key, state, THRESHOLDING_KV_CONTEXT, stateTTL);
                 lastUpdatedCache.put(key, newTimestamp);
@@ -192,6 +204,13 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
         }
     }
 
+    /**
+     * Records the timestamp of a state written by the {@link ThresholdStateCheckpointer}.
+     */
+    static void checkpointed(String key, long timestamp) {
+        lastUpdatedCache.put(key, timestamp);
+    }
+
     @SuppressWarnings("unchecked")
     private void fetchState() {
         thresholdingSession.getThresholdStateMonitor().withReadLock(() -> {
@@ -204,6 +223,26 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
                 return;
             }
 
+            final ThresholdStateCheckpointer checkpointer = getCheckpointer();
+            if (checkpointer != null) {
+                // If our changes have not been checkpointed yet then the copy in memory is the most recent one
+                if (!firstEvaluation && checkpointer.isPending(key)) {
+                    return;
+                }
+                // A new evaluator picks up the state queued by its predecessor, which may not have been written yet
+                if (firstEvaluation) {
+                    final byte[] queued = checkpointer.getState(key, !isDistributed());
+                    if (queued != null) {
+                        try {
+                            state = (T) fst.asObject(queued);
+                            return;
+                        } catch (RuntimeException e) {
+                            RATE_LIMITED_LOGGER.warn("Failed to read queued state for threshold {}", key, e);
+                        }
+                    }
+                }
+            }
+
             try {
                 Long lastKnownUpdate = lastUpdatedCache.get(key);
 
@@ -291,6 +330,11 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
     public synchronized void reinitialize() {
         firstEvaluation = true;
         clearStateBeforePersist();
+        final ThresholdStateCheckpointer checkpointer = getCheckpointer();
+        if (checkpointer != null) {
+            // The persisted state is being deleted, don't write it back
+            checkpointer.forget(key);
+        }
     }
 
     protected abstract void clearStateBeforePersist();
@@ -432,4 +476,20 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
     static void clearSerdesMap() {
         serdesMap.clear();
     }
+
+    /**
+     * Looks the checkpointer up on every use, since it is replaced when the thresholding service is restarted.
+     */
+    private static ThresholdStateCheckpointer getCheckpointer() {
+        final Optional<ThresholdStateCheckpointer> override = checkpointerOverride;
+        if (override != null) {
+            return override.orElse(null);
+        }
+        return ThresholdStateCheckpointer.getInstance();
+    }
+
+    @VisibleForTesting
+    static void setCheckpointer(ThresholdStateCheckpointer checkpointer) {
+        checkpointerOverride = Optional.ofNullable(checkpointer);
+    }
 }
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.features.distributed.kvstore.api.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Writes the state of threshold evaluators to the {@link org.opennms.features.distributed.kvstore.api.BlobStore}
+ * in batches on a schedule, instead of once per evaluation.
+ * <p>
+ * Evaluators whose state changed hand the serialized state to {@link #markDirty(String, byte[], BlobStore, int)},
+ * which keeps it in a {@link ThresholdStateTable} outside of the Java heap. Every
+ * {@link #CHECKPOINT_INTERVAL_PROPERTY} milliseconds the dirty states are drained from the table and written with one
+ * bulk put per {@link #CHECKPOINT_BATCH_SIZE_PROPERTY} states. States that fail to be written are flagged dirty again
+ * and retried with the next checkpoint.
+ * <p>
+ * The table also serves the first evaluation of an evaluator that was recreated, e.g. when its thresholding session
+ * was restarted, so that it does not have to wait for the store. When the table is full of states that were not
+ * written yet, evaluators fall back to writing their state directly.
+ * <p>
+ * Checkpointing is disabled by default. When enabled, the state written by an instance may be up to one interval
+ * behind its in-memory copy, which is the window other instances see when thresholding is distributed.
+ */
+public class ThresholdStateCheckpointer {
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdStateCheckpointer.class);
+
+    public static final String CHECKPOINT_INTERVAL_PROPERTY = "org.opennms.netmgt.threshd.state.checkpointInterval";
+
+    public static final String CHECKPOINT_BATCH_SIZE_PROPERTY = "org.opennms.netmgt.threshd.state.checkpointBatchSize";
+
+    public static final String CHECKPOINT_TABLE_SIZE_PROPERTY = "org.opennms.netmgt.threshd.state.checkpointTableSize";
+
+    private static final long DEFAULT_TABLE_SIZE = 64L * 1024 * 1024;
+
+    private static final int TABLE_SEGMENTS = 16;
+
+    private static final long BATCH_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static volatile ThresholdStateCheckpointer instance;
+
+    private final long intervalMs;
+
+    private final int batchSize;
+
+    private final ThresholdStateTable table;
+
+    private final AtomicLong tableFull = new AtomicLong();
+
+    private final AtomicLong statesWritten = new AtomicLong();
+
+    private final AtomicLong writesFailed = new AtomicLong();
+
+    private volatile BlobStore blobStore;
+
+    private volatile int ttlInSeconds;
+
+    private ScheduledExecutorService executor;
+
+    private volatile boolean stopped;
+
+    public ThresholdStateCheckpointer(long intervalMs, int batchSize) {
+        this(intervalMs, batchSize, DEFAULT_TABLE_SIZE);
+    }
+
+    public ThresholdStateCheckpointer(long intervalMs, int batchSize, long tableSize) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+        table = new ThresholdStateTable(TABLE_SEGMENTS, tableSize);
+    }
+
+    /**
+     * @return the checkpointer configured with system properties, started on first use, or null if checkpointing is
+     * disabled
+     */
+    public static ThresholdStateCheckpointer getInstance() {
+        final ThresholdStateCheckpointer current = instance;
+        if (current != null) {
+            return current;
+        }
+        return createInstance();
+    }
+
+    private static synchronized ThresholdStateCheckpointer createInstance() {
+        if (instance == null) {
+            long intervalMs = SystemProperties.getLong(CHECKPOINT_INTERVAL_PROPERTY, 0L);
+            if (intervalMs <= 0) {
+                return null;
+            }
+            LOG.info("Checkpointing threshold states every {}ms", intervalMs);
+            instance = new ThresholdStateCheckpointer(intervalMs,
+                    SystemProperties.getInteger(CHECKPOINT_BATCH_SIZE_PROPERTY, 1000),
+                    SystemProperties.getLong(CHECKPOINT_TABLE_SIZE_PROPERTY, DEFAULT_TABLE_SIZE));
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Writes the outstanding states and stops the checkpointer created by {@link #getInstance()}, if any.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        stopped = false;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("threshold-state-checkpointer")
+                .setDaemon(true)
+                .build());
+        executor.scheduleWithFixedDelay(this::checkpointSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        // States marked dirty from now on are written directly by their evaluators
+        stopped = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(BATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        checkpoint();
+    }
+
+    /**
+     * Queues the serialized state of an evaluator to be written with the next checkpoint.
+     *
+     * @return false if the checkpointer was stopped or has no room left and the caller must write the state itself
+     */
+    boolean markDirty(String key, byte[] state, BlobStore blobStore, int ttlInSeconds) {
+        if (stopped) {
+            return false;
+        }
+        // All of the thresholding sessions share the same store
+        this.blobStore = blobStore;
+        this.ttlInSeconds = ttlInSeconds;
+        if (!table.put(key, state, true)) {
+            tableFull.incrementAndGet();
+            // Don't let an older copy that is still queued overwrite the state written by the caller
+            table.remove(key);
+            return false;
+        }
+        if (stopped) {
+            // Unless the final checkpoint already took it, the state would never be written
+            return !table.clean(key);
+        }
+        return true;
+    }
+
+    /**
+     * @param includeWritten whether to return states that were already written to the store, which is only safe if no
+     *                       other instance writes the same keys
+     * @return the last serialized state queued for the given key, or null if there is none
+     */
+    byte[] getState(String key, boolean includeWritten) {
+        if (!includeWritten && !table.isDirty(key)) {
+            return null;
+        }
+        return table.get(key);
+    }
+
+    /**
+     * @return true if the state of the given key was queued and not written yet
+     */
+    boolean isPending(String key) {
+        return table.isDirty(key);
+    }
+
+    /**
+     * Drops the given key from the next checkpoint, used when the persisted state is being deleted.
+     */
+    void forget(String key) {
+        table.remove(key);
+    }
+
+    private void checkpointSafely() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to checkpoint threshold states", e);
+        }
+    }
+
+    /**
+     * Writes every dirty state, waiting for each batch to complete before draining the next one.
+     */
+    @VisibleForTesting
+    void checkpoint() {
+        final BlobStore target = blobStore;
+        if (target == null) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        // States marked dirty while the checkpoint runs are left for the next one
+        int remaining = table.getDirtyCount();
+        int count = 0;
+        while (remaining > 0) {
+            final Map<String, byte[]> batch = new LinkedHashMap<>();
+            final Map<String, Integer> versions = new HashMap<>();
+            final int drained = table.drainDirty(Math.min(batchSize, remaining), (key, state, version) -> {
+                batch.put(key, state);
+                versions.put(key, version);
+            });
+            if (drained == 0) {
+                break;
+            }
+            remaining -= drained;
+            count += drained;
+            write(target, batch, versions);
+        }
+        if (count > 0) {
+            LOG.debug("Checkpointed {} threshold states in {}ms", count, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void write(BlobStore target, Map<String, byte[]> batch, Map<String, Integer> versions) {
+        try {
+            final long timestamp = target.putAllAsync(batch, AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT,
+                    ttlInSeconds).get(BATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            for (String key : batch.keySet()) {
+                AbstractThresholdEvaluatorState.checkpointed(key, timestamp);
+            }
+            statesWritten.addAndGet(batch.size());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.warn("Failed to checkpoint {} threshold states", batch.size(), e);
+        }
+        writesFailed.addAndGet(batch.size());
+        // Retry with the next checkpoint, unless the states were replaced or forgotten in the meantime
+        versions.forEach(table::redirty);
+    }
+
+    /**
+     * @return the number of states waiting for the next checkpoint
+     */
+    public int getPending() {
+        return table.getDirtyCount();
+    }
+
+    /**
+     * @return the number of states in the table, including the ones that were already written
+     */
+    public int getTableEntries() {
+        return table.size();
+    }
+
+    /**
+     * @return the number of states that evaluators had to write themselves because the table was full
+     */
+    public long getTableFull() {
+        return tableFull.get();
+    }
+
+    public long getStatesWritten() {
+        return statesWritten.get();
+    }
+
+    public long getWritesFailed() {
+        return writesFailed.get();
+    }
+}
@@ -0,0 +1,605 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A compact table of serialized threshold evaluator states kept outside of the Java heap.
+ * <p>
+ * The table is split into segments, each guarded by its own lock. A segment keeps its records in a direct buffer and
+ * finds them through an open addressing index held in another direct buffer, so the entries cost neither heap objects
+ * nor garbage collection work. A record is updated in place as long as the new state fits into it, otherwise the
+ * state moves to a new record and the space of the old one is reclaimed the next time the segment is compacted.
+ * <p>
+ * Records put as dirty stay flagged until they are drained for a checkpoint. When a segment runs out of space the
+ * clean records are dropped, since they can be loaded from the store again.
+ */
+class ThresholdStateTable {
+
+    interface DirtyStateConsumer {
+        void accept(String key, byte[] state, int version);
+    }
+
+    // Record layout: hash, key length, value capacity, value length, version, flags, key bytes, value bytes
+    private static final int HASH = 0;
+    private static final int KEY_LENGTH = 4;
+    private static final int VALUE_CAPACITY = 8;
+    private static final int VALUE_LENGTH = 12;
+    private static final int VERSION = 16;
+    private static final int FLAGS = 20;
+    private static final int HEADER = 21;
+
+    private static final byte DIRTY = 1;
+    private static final byte DEAD = 2;
+
+    // Index slots hold the offset of the record plus one
+    private static final int FREE = 0;
+    private static final int TOMBSTONE = -1;
+
+    private static final int INITIAL_SEGMENT_BYTES = 64 * 1024;
+    private static final int INITIAL_INDEX_SLOTS = 1024;
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private final Segment[] segments;
+
+    private int drainCursor;
+
+    /**
+     * @param numSegments the number of independently locked segments
+     * @param maxBytes    the space available to the records of all segments, the indexes come on top of that
+     */
+    ThresholdStateTable(int numSegments, long maxBytes) {
+        if (numSegments <= 0) {
+            throw new IllegalArgumentException("numSegments must be positive");
+        }
+        final int segmentBytes = (int) Math.min(MAX_SEGMENT_BYTES, maxBytes / numSegments);
+        if (segmentBytes < HEADER) {
+            throw new IllegalArgumentException("maxBytes is too small for " + numSegments + " segments");
+        }
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(segmentBytes);
+        }
+    }
+
+    /**
+     * @return a copy of the state stored for the given key, or null if there is none
+     */
+    byte[] get(String key) {
+        final byte[] keyBytes = toBytes(key);
+        final int hash = hash(keyBytes);
+        final Segment segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            return segment.get(hash, keyBytes);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the state stored for the given key has not been drained yet
+     */
+    boolean isDirty(String key) {
+        final byte[] keyBytes = toBytes(key);
+        final int hash = hash(keyBytes);
+        final Segment segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            return segment.isDirty(hash, keyBytes);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the state for the given key, replacing the previous one.
+     *
+     * @return false if the segment of the key is full of dirty records and the state was not stored
+     */
+    boolean put(String key, byte[] state, boolean dirty) {
+        final byte[] keyBytes = toBytes(key);
+        final int hash = hash(keyBytes);
+        final Segment segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            return segment.put(hash, keyBytes, state, dirty);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Clears the dirty flag of the given key.
+     *
+     * @return true if the state was dirty
+     */
+    boolean clean(String key) {
+        final byte[] keyBytes = toBytes(key);
+        final int hash = hash(keyBytes);
+        final Segment segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            return segment.clean(hash, keyBytes);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Flags the state of the given key dirty again, unless it was replaced after it was drained with the given
+     * version.
+     */
+    void redirty(String key, int version) {
+        final byte[] keyBytes = toBytes(key);
+        final int hash = hash(keyBytes);
+        final Segment segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            segment.redirty(hash, keyBytes, version);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    void remove(String key) {
+        final byte[] keyBytes = toBytes(key);
+        final int hash = hash(keyBytes);
+        final Segment segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            segment.remove(hash, keyBytes);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Clears the dirty flag of up to the given number of states and hands them to the consumer. The consumer is
+     * called with the lock of a segment held, so it should do no more than collect the states.
+     *
+     * @return the number of states drained
+     */
+    synchronized int drainDirty(int max, DirtyStateConsumer consumer) {
+        int drained = 0;
+        for (int i = 0; i < segments.length && drained < max; i++) {
+            final Segment segment = segments[drainCursor];
+            segment.lock.lock();
+            try {
+                drained += segment.drainDirty(max - drained, consumer);
+                if (segment.dirtyRecords == 0) {
+                    drainCursor = (drainCursor + 1) % segments.length;
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return drained;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    int getDirtyCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                count += segment.dirtyRecords;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the off-heap memory held by the records and indexes of all segments
+     */
+    long getAllocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                bytes += segment.data.capacity() + 4L * segment.slots;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return bytes;
+    }
+
+    private Segment segmentFor(int hash) {
+        // The low bits pick the index slot, use the high ones for the segment
+        return segments[(hash >>> 16) % segments.length];
+    }
+
+    private static byte[] toBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final int maxBytes;
+
+        private ByteBuffer data;
+
+        private IntBuffer index;
+
+        private int slots;
+
+        // Index slots that are not free, including tombstones
+        private int usedSlots;
+
+        private int size;
+
+        private int writePosition;
+
+        private int liveBytes;
+
+        // Offsets of records that were flagged dirty, may contain records that have been cleaned or moved since
+        private int[] dirty = new int[64];
+
+        private int dirtyCount;
+
+        private int dirtyRecords;
+
+        private Segment(int maxBytes) {
+            this.maxBytes = maxBytes;
+            data = ByteBuffer.allocateDirect(Math.min(INITIAL_SEGMENT_BYTES, maxBytes));
+            slots = INITIAL_INDEX_SLOTS;
+            index = newIndex(slots);
+        }
+
+        private byte[] get(int hash, byte[] key) {
+            final int slot = find(hash, key);
+            if (slot < 0) {
+                return null;
+            }
+            final int offset = index.get(slot) - 1;
+            final byte[] value = new byte[data.getInt(offset + VALUE_LENGTH)];
+            read(offset + HEADER + key.length, value);
+            return value;
+        }
+
+        private boolean isDirty(int hash, byte[] key) {
+            final int slot = find(hash, key);
+            return slot >= 0 && (data.get(index.get(slot) - 1 + FLAGS) & DIRTY) != 0;
+        }
+
+        private boolean put(int hash, byte[] key, byte[] value, boolean dirty) {
+            int slot = find(hash, key);
+            if (slot >= 0) {
+                final int offset = index.get(slot) - 1;
+                if (data.getInt(offset + VALUE_CAPACITY) >= value.length) {
+                    write(offset + HEADER + key.length, value);
+                    data.putInt(offset + VALUE_LENGTH, value.length);
+                    data.putInt(offset + VERSION, data.getInt(offset + VERSION) + 1);
+                    if (dirty) {
+                        markDirty(offset);
+                    }
+                    return true;
+                }
+            }
+
+            // Round the capacity up so that states which grow by a few bytes can still be updated in place
+            final int capacity = (value.length + 7) & ~7;
+            final int recordSize = HEADER + key.length + capacity;
+            if (!ensureSpace(recordSize)) {
+                return false;
+            }
+
+            // Making space may have moved the records
+            slot = find(hash, key);
+            int version = 0;
+            if (slot >= 0) {
+                final int previous = index.get(slot) - 1;
+                version = data.getInt(previous + VERSION) + 1;
+                dirty |= (data.get(previous + FLAGS) & DIRTY) != 0;
+                release(previous);
+            } else {
+                slot = -slot - 1;
+                if (index.get(slot) == FREE) {
+                    usedSlots++;
+                }
+            }
+
+            final int offset = writePosition;
+            data.putInt(offset + HASH, hash);
+            data.putInt(offset + KEY_LENGTH, key.length);
+            data.putInt(offset + VALUE_CAPACITY, capacity);
+            data.putInt(offset + VALUE_LENGTH, value.length);
+            data.putInt(offset + VERSION, version);
+            data.put(offset + FLAGS, (byte) 0);
+            write(offset + HEADER, key);
+            write(offset + HEADER + key.length, value);
+            writePosition += recordSize;
+            liveBytes += recordSize;
+            size++;
+            index.put(slot, offset + 1);
+            if (dirty) {
+                markDirty(offset);
+            }
+
+            if (usedSlots * 4L >= slots * 3L) {
+                // Grow when the index is filled with live records, otherwise it is only the tombstones to clear
+                rehash(size * 2 >= slots ? slots * 2 : slots);
+            }
+            return true;
+        }
+
+        private boolean clean(int hash, byte[] key) {
+            final int slot = find(hash, key);
+            if (slot < 0) {
+                return false;
+            }
+            final int offset = index.get(slot) - 1;
+            final byte flags = data.get(offset + FLAGS);
+            if ((flags & DIRTY) == 0) {
+                return false;
+            }
+            data.put(offset + FLAGS, (byte) (flags & ~DIRTY));
+            dirtyRecords--;
+            return true;
+        }
+
+        private void redirty(int hash, byte[] key, int version) {
+            final int slot = find(hash, key);
+            if (slot >= 0) {
+                final int offset = index.get(slot) - 1;
+                if (data.getInt(offset + VERSION) == version) {
+                    markDirty(offset);
+                }
+            }
+        }
+
+        private void remove(int hash, byte[] key) {
+            final int slot = find(hash, key);
+            if (slot >= 0) {
+                release(index.get(slot) - 1);
+                index.put(slot, TOMBSTONE);
+            }
+        }
+
+        private int drainDirty(int max, DirtyStateConsumer consumer) {
+            int drained = 0;
+            int i = 0;
+            for (; i < dirtyCount && drained < max; i++) {
+                final int offset = dirty[i];
+                final byte flags = data.get(offset + FLAGS);
+                if ((flags & (DIRTY | DEAD)) != DIRTY) {
+                    // Cleaned or moved since it was flagged
+                    continue;
+                }
+                data.put(offset + FLAGS, (byte) (flags & ~DIRTY));
+                dirtyRecords--;
+
+                final byte[] key = new byte[data.getInt(offset + KEY_LENGTH)];
+                read(offset + HEADER, key);
+                final byte[] value = new byte[data.getInt(offset + VALUE_LENGTH)];
+                read(offset + HEADER + key.length, value);
+                consumer.accept(new String(key, StandardCharsets.UTF_8), value, data.getInt(offset + VERSION));
+                drained++;
+            }
+            System.arraycopy(dirty, i, dirty, 0, dirtyCount - i);
+            dirtyCount -= i;
+            return drained;
+        }
+
+        /**
+         * @return the index slot of the key, or the negated slot to insert it at minus one if it is missing
+         */
+        private int find(int hash, byte[] key) {
+            final int mask = slots - 1;
+            int firstTombstone = -1;
+            int slot = hash & mask;
+            for (int probes = 0; probes < slots; probes++, slot = (slot + 1) & mask) {
+                final int entry = index.get(slot);
+                if (entry == FREE) {
+                    return -(firstTombstone >= 0 ? firstTombstone : slot) - 1;
+                } else if (entry == TOMBSTONE) {
+                    if (firstTombstone < 0) {
+                        firstTombstone = slot;
+                    }
+                } else if (data.getInt(entry - 1 + HASH) == hash && keyEquals(entry - 1, key)) {
+                    return slot;
+                }
+            }
+            // The index is rehashed before it fills up, so there is always a tombstone to reuse here
+            return -firstTombstone - 1;
+        }
+
+        private boolean keyEquals(int offset, byte[] key) {
+            if (data.getInt(offset + KEY_LENGTH) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (data.get(offset + HEADER + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void markDirty(int offset) {
+            final byte flags = data.get(offset + FLAGS);
+            if ((flags & DIRTY) != 0) {
+                return;
+            }
+            data.put(offset + FLAGS, (byte) (flags | DIRTY));
+            dirtyRecords++;
+            if (dirtyCount == dirty.length) {
+                dirty = Arrays.copyOf(dirty, dirty.length * 2);
+            }
+            dirty[dirtyCount++] = offset;
+        }
+
+        private void release(int offset) {
+            final byte flags = data.get(offset + FLAGS);
+            if ((flags & DIRTY) != 0) {
+                dirtyRecords--;
+            }
+            data.put(offset + FLAGS, DEAD);
+            liveBytes -= recordSize(offset);
+            size--;
+        }
+
+        private int recordSize(int offset) {
+            return HEADER + data.getInt(offset + KEY_LENGTH) + data.getInt(offset + VALUE_CAPACITY);
+        }
+
+        /**
+         * Makes room for a record of the given size by reclaiming the space of dead records, growing the buffer, or
+         * as a last resort by dropping the clean records.
+         */
+        private boolean ensureSpace(int recordSize) {
+            if (writePosition + recordSize <= data.capacity()) {
+                return true;
+            }
+
+            final long needed = (long) liveBytes + recordSize;
+            long capacity = data.capacity();
+            // Leave some headroom so that a full segment is not compacted on every put
+            while (capacity < needed + needed / 4 && capacity < maxBytes) {
+                capacity = Math.min(capacity * 2, maxBytes);
+            }
+            if (needed <= capacity) {
+                compact((int) capacity, false);
+                return true;
+            }
+
+            compact(maxBytes, true);
+            return writePosition + recordSize <= data.capacity();
+        }
+
+        private void compact(int capacity, boolean dropClean) {
+            final ByteBuffer target = ByteBuffer.allocateDirect(capacity);
+            final IntBuffer targetIndex = newIndex(slots);
+            int position = 0;
+            int dropped = 0;
+            dirtyCount = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                final int entry = index.get(slot);
+                if (entry == FREE || entry == TOMBSTONE) {
+                    continue;
+                }
+                final int offset = entry - 1;
+                final boolean isDirty = (data.get(offset + FLAGS) & DIRTY) != 0;
+                if (dropClean && !isDirty) {
+                    dropped++;
+                    continue;
+                }
+                final int length = recordSize(offset);
+                final ByteBuffer record = data.duplicate();
+                record.limit(offset + length).position(offset);
+                target.position(position);
+                target.put(record);
+                insert(targetIndex, slots, data.getInt(offset + HASH), position + 1);
+                if (isDirty) {
+                    if (dirtyCount == dirty.length) {
+                        dirty = Arrays.copyOf(dirty, dirty.length * 2);
+                    }
+                    dirty[dirtyCount++] = position;
+                }
+                position += length;
+            }
+            data = target;
+            index = targetIndex;
+            size -= dropped;
+            usedSlots = size;
+            writePosition = position;
+            liveBytes = position;
+        }
+
+        private void rehash(int newSlots) {
+            final IntBuffer target = newIndex(newSlots);
+            for (int slot = 0; slot < slots; slot++) {
+                final int entry = index.get(slot);
+                if (entry != FREE && entry != TOMBSTONE) {
+                    insert(target, newSlots, data.getInt(entry - 1 + HASH), entry);
+                }
+            }
+            index = target;
+            slots = newSlots;
+            usedSlots = size;
+        }
+
+        private static void insert(IntBuffer index, int slots, int hash, int entry) {
+            final int mask = slots - 1;
+            int slot = hash & mask;
+            while (index.get(slot) != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            index.put(slot, entry);
+        }
+
+        private static IntBuffer newIndex(int slots) {
+            // Direct buffers are zeroed, so every slot starts out free
+            return ByteBuffer.allocateDirect(slots * 4).asIntBuffer();
+        }
+
+        private void read(int position, byte[] target) {
+            final ByteBuffer buffer = data.duplicate();
+            buffer.position(position);
+            buffer.get(target);
+        }
+
+        private void write(int position, byte[] source) {
+            final ByteBuffer buffer = data.duplicate();
+            buffer.position(position);
+            buffer.put(source);
+        }
+    }
+}
@@ -36,6 +36,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.opennms.core.soa.lookup.ServiceLookup;
 import org.opennms.core.soa.lookup.ServiceLookupBuilder;
@@ -116,6 +117,13 @@ public class ThresholdingServiceImpl implements ThresholdingService, EventListen
         eventIpcManager.addEventListener(this, UEI_LIST);
     }
 
+    @PreDestroy
+    public void destroy() {
+        reInitializeTimer.cancel();
+        // Write the threshold states that have not been checkpointed yet
+        ThresholdStateCheckpointer.shutdown();
+    }
+
     // OSGi init entry point
     public void initOsgi() {
         // If we were started viag OSGi then we are on Sentinel therefore we will mark ourselves as being distributed
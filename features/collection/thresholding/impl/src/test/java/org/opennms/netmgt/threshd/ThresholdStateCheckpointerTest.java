@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.features.distributed.kvstore.api.BlobStore;
+import org.opennms.features.distributed.kvstore.blob.inmemory.InMemoryMapBlobStore;
+import org.opennms.netmgt.config.threshd.Threshold;
+import org.opennms.netmgt.config.threshd.ThresholdType;
+import org.opennms.netmgt.threshd.api.ThresholdingSession;
+import org.opennms.netmgt.threshd.api.ThresholdingSessionKey;
+
+public class ThresholdStateCheckpointerTest {
+    private final BlobStore blobStore = InMemoryMapBlobStore.withDefaultTicks();
+    private final ThresholdingSession thresholdingSession = mock(ThresholdingSession.class);
+    private final ThresholdStateCheckpointer checkpointer = new ThresholdStateCheckpointer(60000, 3);
+
+    @Before
+    public void setUp() {
+        ThresholdingSessionKey key = mock(ThresholdingSessionKey.class);
+        when(key.getNodeId()).thenReturn(1);
+        when(key.getLocation()).thenReturn("Default");
+        when(key.getResource()).thenReturn("resource");
+        when(key.getServiceName()).thenReturn("SNMP");
+        when(thresholdingSession.getKey()).thenReturn(key);
+        when(thresholdingSession.getBlobStore()).thenReturn(blobStore);
+        when(thresholdingSession.getThresholdStateMonitor()).thenReturn(new BlobStoreAwareMonitor(blobStore));
+
+        AbstractThresholdEvaluatorState.clearSerdesMap();
+        AbstractThresholdEvaluatorState.setCheckpointer(checkpointer);
+    }
+
+    @After
+    public void tearDown() {
+        AbstractThresholdEvaluatorState.setCheckpointer(null);
+        AbstractThresholdEvaluatorState.clearSerdesMap();
+    }
+
+    @Test
+    public void canCheckpointInBatches() {
+        final int numStates = 10;
+        final List<ThresholdEvaluatorState> states = new ArrayList<>();
+        for (int i = 0; i < numStates; i++) {
+            ThresholdEvaluatorState state = newState("if" + i);
+            assertEquals(ThresholdEvaluatorState.Status.NO_CHANGE, state.evaluate(100.0));
+            states.add(state);
+        }
+
+        // Nothing is written until the next checkpoint
+        assertEquals(0, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+        assertEquals(numStates, checkpointer.getPending());
+
+        checkpointer.checkpoint();
+        assertEquals(numStates, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+        assertEquals(numStates, checkpointer.getStatesWritten());
+        assertEquals(0, checkpointer.getPending());
+
+        // States that did not change are not written again
+        checkpointer.checkpoint();
+        assertEquals(numStates, checkpointer.getStatesWritten());
+    }
+
+    @Test
+    public void canResumeFromCheckpoint() {
+        ThresholdEvaluatorState state = newState("if0");
+        assertEquals(ThresholdEvaluatorState.Status.NO_CHANGE, state.evaluate(100.0));
+        checkpointer.checkpoint();
+
+        // A new evaluator for the same threshold, e.g. after a restart, loads the state on its first evaluation
+        state = newState("if0");
+        assertEquals(ThresholdEvaluatorState.Status.TRIGGERED, state.evaluate(100.0));
+    }
+
+    @Test
+    public void picksUpQueuedStateBeforeItIsWritten() {
+        ThresholdEvaluatorState state = newState("if0");
+        assertEquals(ThresholdEvaluatorState.Status.NO_CHANGE, state.evaluate(100.0));
+        assertEquals(1, checkpointer.getPending());
+
+        // The state of the previous evaluator is read from the table, it is not in the store yet
+        state = newState("if0");
+        assertEquals(ThresholdEvaluatorState.Status.TRIGGERED, state.evaluate(100.0));
+        assertEquals(0, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+    }
+
+    @Test
+    public void writesDirectlyOnceStopped() {
+        checkpointer.start();
+        checkpointer.stop();
+
+        ThresholdEvaluatorState state = newState("if0");
+        assertEquals(ThresholdEvaluatorState.Status.NO_CHANGE, state.evaluate(100.0));
+
+        assertEquals(0, checkpointer.getPending());
+        assertEquals(1, blobStore.enumerateContext(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT).size());
+    }
+
+    @Test
+    public void createsANewInstanceAfterShutdown() {
+        System.setProperty(ThresholdStateCheckpointer.CHECKPOINT_INTERVAL_PROPERTY, "60000");
+        try {
+            final ThresholdStateCheckpointer first = ThresholdStateCheckpointer.getInstance();
+            assertNotNull(first);
+            assertSame(first, ThresholdStateCheckpointer.getInstance());
+
+            ThresholdStateCheckpointer.shutdown();
+            final ThresholdStateCheckpointer second = ThresholdStateCheckpointer.getInstance();
+            assertNotNull(second);
+            assertNotSame(first, second);
+        } finally {
+            ThresholdStateCheckpointer.shutdown();
+            System.clearProperty(ThresholdStateCheckpointer.CHECKPOINT_INTERVAL_PROPERTY);
+        }
+    }
+
+    private ThresholdEvaluatorState newState(String instance) {
+        Threshold threshold = new Threshold();
+        threshold.setType(ThresholdType.HIGH);
+        threshold.setDsName("ds-name");
+        threshold.setDsType("node");
+        threshold.setValue(99.0);
+        threshold.setRearm(0.5);
+        threshold.setTrigger(2);
+        ThresholdEvaluatorState state = new ThresholdEvaluatorHighLow.ThresholdEvaluatorStateHighLow(
+                new ThresholdConfigWrapper(threshold), thresholdingSession);
+        state.setInstance(instance);
+        return state;
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ThresholdStateTableTest {
+
+    @Test
+    public void canPutGetAndRemove() {
+        final ThresholdStateTable table = new ThresholdStateTable(4, 1024 * 1024);
+        assertNull(table.get("a"));
+
+        assertTrue(table.put("a", bytes("first"), false));
+        assertArrayEquals(bytes("first"), table.get("a"));
+        assertFalse(table.isDirty("a"));
+
+        // Smaller values are updated in place, larger ones move to a new record
+        assertTrue(table.put("a", bytes("1st"), true));
+        assertArrayEquals(bytes("1st"), table.get("a"));
+        assertTrue(table.put("a", bytes("a much longer state than before"), true));
+        assertArrayEquals(bytes("a much longer state than before"), table.get("a"));
+        assertTrue(table.isDirty("a"));
+        assertEquals(1, table.size());
+        assertEquals(1, table.getDirtyCount());
+
+        table.remove("a");
+        assertNull(table.get("a"));
+        assertEquals(0, table.size());
+        assertEquals(0, table.getDirtyCount());
+    }
+
+    @Test
+    public void canDrainDirtyStates() {
+        final ThresholdStateTable table = new ThresholdStateTable(4, 1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            table.put("key" + i, bytes("state" + i), i % 2 == 0);
+        }
+        assertEquals(5, table.getDirtyCount());
+
+        final Map<String, byte[]> drained = new HashMap<>();
+        final Map<String, Integer> versions = new HashMap<>();
+        assertEquals(3, table.drainDirty(3, (key, state, version) -> {
+            drained.put(key, state);
+            versions.put(key, version);
+        }));
+        assertEquals(2, table.drainDirty(10, (key, state, version) -> drained.put(key, state)));
+        assertEquals(0, table.getDirtyCount());
+        assertEquals(5, drained.size());
+        drained.forEach((key, state) -> assertArrayEquals(bytes("state" + key.substring(3)), state));
+
+        // A failed write flags the state dirty again, unless it was replaced in the meantime
+        final String retried = versions.keySet().iterator().next();
+        table.redirty(retried, versions.get(retried));
+        assertTrue(table.isDirty(retried));
+        table.drainDirty(10, (key, state, version) -> {});
+
+        table.put(retried, bytes("newer"), false);
+        table.redirty(retried, versions.get(retried));
+        assertFalse(table.isDirty(retried));
+    }
+
+    @Test
+    public void growsAndCompacts() {
+        final ThresholdStateTable table = new ThresholdStateTable(2, 16 * 1024 * 1024);
+        final int count = 50000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(table.put("key" + i, bytes("state" + i), true));
+        }
+        // Rewrite every state with a larger one so that the old records have to be reclaimed
+        for (int i = 0; i < count; i++) {
+            assertTrue(table.put("key" + i, bytes("a larger state " + i), true));
+        }
+        assertEquals(count, table.size());
+        assertEquals(count, table.getDirtyCount());
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(bytes("a larger state " + i), table.get("key" + i));
+        }
+        assertEquals(count, table.drainDirty(Integer.MAX_VALUE, (key, state, version) -> {}));
+    }
+
+    @Test
+    public void dropsCleanStatesWhenFull() {
+        final ThresholdStateTable table = new ThresholdStateTable(1, 4096);
+        int stored = 0;
+        while (table.put("key" + stored, new byte[100], true)) {
+            stored++;
+        }
+        assertTrue(stored > 0);
+        assertEquals(stored, table.getDirtyCount());
+
+        // Once written, the states make room for new ones
+        table.drainDirty(Integer.MAX_VALUE, (key, state, version) -> {});
+        assertTrue(table.put("another", new byte[100], true));
+        assertArrayEquals(new byte[100], table.get("another"));
+        assertTrue(table.size() < stored + 1);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
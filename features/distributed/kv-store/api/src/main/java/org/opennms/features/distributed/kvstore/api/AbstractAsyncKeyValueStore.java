@@ -76,6 +76,17 @@ public abstract class AbstractAsyncKeyValueStore<T> extends AbstractKeyValueStor
         return CompletableFuture.supplyAsync(() -> put(key, value, context, ttlInSeconds), executor);
     }
 
+    /**
+     * Writes the values with a single call to {@link #putAll(Map, String, Integer)} on the executor.
+     */
+    @Override
+    public CompletableFuture<Long> putAllAsync(Map<String, T> values, String context, Integer ttlInSeconds) {
+        Objects.requireNonNull(values);
+        Objects.requireNonNull(context);
+
+        return CompletableFuture.supplyAsync(() -> putAll(values, context, ttlInSeconds), executor);
+    }
+
     @Override
     public final CompletableFuture<Optional<T>> getAsync(String key, String context) {
         Objects.requireNonNull(key);
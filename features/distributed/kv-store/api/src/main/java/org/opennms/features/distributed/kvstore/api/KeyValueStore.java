@@ -28,6 +28,8 @@
 
 package org.opennms.features.distributed.kvstore.api;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalLong;
@@ -127,6 +129,42 @@ public interface KeyValueStore<T> {
      */
     CompletableFuture<Long> putAsync(String key, T value, String context, Integer ttlInSeconds);
 
+    /**
+     * Put several values of the same context with a suggested time-to-live.
+     * <p>
+     * The default implementation puts the values one at a time. Implementations that can write several records in a
+     * single round trip should override it.
+     *
+     * @param context      a context used to differentiate between keys with the same name (forms a compound key)
+     * @param ttlInSeconds the time to live in seconds for these keys or no ttl if null
+     * @return the timestamp the values were persisted with, the most recent one if they were persisted one at a time
+     */
+    default long putAll(Map<String, T> values, String context, Integer ttlInSeconds) {
+        long timestamp = 0;
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            timestamp = Math.max(timestamp, put(entry.getKey(), entry.getValue(), context, ttlInSeconds));
+        }
+        return timestamp;
+    }
+
+    /**
+     * Put several values of the same context with a suggested time-to-live.
+     * <p>
+     * The default implementation starts one asynchronous put per value.
+     *
+     * @param context      a context used to differentiate between keys with the same name (forms a compound key)
+     * @param ttlInSeconds the time to live in seconds for these keys or no ttl if null
+     * @return a future containing the most recent timestamp the values were persisted with
+     */
+    default CompletableFuture<Long> putAllAsync(Map<String, T> values, String context, Integer ttlInSeconds) {
+        final List<CompletableFuture<Long>> futures = new ArrayList<>(values.size());
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            futures.add(putAsync(entry.getKey(), entry.getValue(), context, ttlInSeconds));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> futures.stream().mapToLong(CompletableFuture::join).max().orElse(0L));
+    }
+
     /**
      * @param context a context used to differentiate between keys with the same name (forms a compound key)
      * @return a future containing an optional of the value if present or empty if the key did not exist
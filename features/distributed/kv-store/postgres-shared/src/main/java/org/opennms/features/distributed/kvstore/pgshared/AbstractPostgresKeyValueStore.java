@@ -143,6 +143,51 @@ public abstract class AbstractPostgresKeyValueStore<T, S> extends AbstractAsyncK
         return now;
     }
 
+    /**
+     * Upserts all of the values with a single JDBC batch.
+     */
+    @Override
+    public long putAll(Map<String, T> values, String context, Integer ttlInSeconds) {
+        Objects.requireNonNull(values);
+        Objects.requireNonNull(context);
+
+        long now = System.currentTimeMillis();
+        if (values.isEmpty()) {
+            return now;
+        }
+
+        Timestamp lastUpdated = new Timestamp(now);
+        Timestamp expiresAt = ttlInSeconds != null ?
+                new Timestamp(now + TimeUnit.MILLISECONDS.convert(ttlInSeconds, TimeUnit.SECONDS)) : null;
+
+        withStatement(this::getUpsertStatement, upsertStatement -> {
+            for (Map.Entry<String, T> entry : values.entrySet()) {
+                Objects.requireNonNull(entry.getKey());
+                Objects.requireNonNull(entry.getValue());
+
+                upsertStatement.setString(1, entry.getKey());
+                upsertStatement.setString(2, context);
+                upsertStatement.setTimestamp(3, lastUpdated);
+                upsertStatement.setTimestamp(6, lastUpdated);
+
+                if (expiresAt != null) {
+                    upsertStatement.setTimestamp(4, expiresAt);
+                    upsertStatement.setTimestamp(7, expiresAt);
+                } else {
+                    upsertStatement.setNull(4, Types.DATE);
+                    upsertStatement.setNull(7, Types.DATE);
+                }
+
+                upsertStatement.setObject(5, getSQLTypeFromValueType(entry.getValue()));
+                upsertStatement.setObject(8, getSQLTypeFromValueType(entry.getValue()));
+                upsertStatement.addBatch();
+            }
+            return upsertStatement.executeBatch();
+        });
+
+        return now;
+    }
+
     @Override
     public Optional<T> get(String key, String context) {
         Objects.requireNonNull(key);
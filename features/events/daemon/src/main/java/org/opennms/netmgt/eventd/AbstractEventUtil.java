@@ -404,7 +404,7 @@ public abstract class AbstractEventUtil implements EventUtil {
 
 	public AbstractEventUtil(MetricRegistry registry) {
 	    // Build the cache, and enable statistics collection if we've been given a metric registry
-	    final long maximumCacheSize = Long.parseLong(System.getProperty("org.opennms.eventd.eventTemplateCacheSize", "1000"));
+	    final long maximumCacheSize = Long.parseLong(System.getProperty("org.opennms.eventd.eventTemplateCacheSize", "10000"));
 	    final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
                 .maximumSize(maximumCacheSize);
 	    if (registry != null) {
@@ -773,6 +773,10 @@ public abstract class AbstractEventUtil implements EventUtil {
 		if (input == null) {
 			return null;
 		}
+		// Nothing to expand, avoid the cache lookup
+		if (input.indexOf('%') < 0) {
+			return input;
+		}
 		try {
 			final EventTemplate eventTemplate = eventTemplateCache.get(input);
 			Supplier<String> expander = () -> eventTemplate.expand(event, decode);
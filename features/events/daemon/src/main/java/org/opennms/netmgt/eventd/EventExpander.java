@@ -29,12 +29,16 @@
 package org.opennms.netmgt.eventd;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.opennms.netmgt.config.api.EventConfDao;
+import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.events.api.EventProcessor;
 import org.opennms.netmgt.events.api.EventProcessorException;
 import org.opennms.netmgt.model.events.EventUtils;
@@ -121,6 +125,18 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
      */
     private static final String DEFAULT_EVENT_UEI = "uei.opennms.org/default/event";
 
+    /**
+     * Events after which the values cached by the {@link EventUtil} for the node are stale.
+     */
+    private static final Set<String> NODE_CHANGED_UEIS = new HashSet<>(Arrays.asList(
+            EventConstants.NODE_ADDED_EVENT_UEI,
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+            EventConstants.PROVISION_SCAN_COMPLETE_UEI,
+            EventConstants.HARDWARE_INVENTORY_SUCCESSFUL_UEI));
+
     private final Timer expandTimer;
 
     public EventExpander(MetricRegistry registry) {
@@ -563,6 +579,10 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
      *            The event to expand if necessary.
      */
     public void expandEvent(Event e) {
+        if (e.hasNodeid() && NODE_CHANGED_UEIS.contains(e.getUei())) {
+            m_eventUtil.invalidateNodeCache(e.getNodeid());
+        }
+
         org.opennms.netmgt.xml.eventconf.Event econf = lookup(m_eventConfDao, e);
 
         if (econf != null) {
@@ -31,13 +31,14 @@ package org.opennms.netmgt.eventd;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -53,6 +54,7 @@ import org.opennms.netmgt.events.api.EventIpcManager;
 import org.opennms.netmgt.events.api.EventListener;
 import org.opennms.netmgt.events.api.EventProxyException;
 import org.opennms.netmgt.events.api.ThreadAwareEventListener;
+import org.opennms.netmgt.events.api.model.IAlarmData;
 import org.opennms.netmgt.events.api.model.IEvent;
 import org.opennms.netmgt.events.api.model.ImmutableMapper;
 import org.opennms.netmgt.xml.event.*;
@@ -64,11 +66,20 @@ import org.springframework.util.StringUtils;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 /**
  * An implementation of the EventIpcManager interface that can be used to
  * communicate between services in the same JVM
  *
+ * By default, every listener gets its own executor that delivers the events
+ * to the listener in the order they were broadcast. When the number of broadcast
+ * lanes is greater than 1 (see {@link #BROADCAST_LANES_SYS_PROP}), the events for
+ * each listener are instead spread over that many single-threaded lanes by key:
+ * the reduction key for events that carry alarm data, and the node ID otherwise.
+ * Events with the same key are still delivered in order, while a slow event for
+ * one key no longer holds up the events for the other keys.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -77,6 +88,12 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     
     private static final Logger LOG = LoggerFactory.getLogger(EventIpcManagerDefaultImpl.class);
 
+    /**
+     * Number of ordered lanes used to deliver events to each listener.
+     * Values less than or equal to 1 disable sharding.
+     */
+    public static final String BROADCAST_LANES_SYS_PROP = "org.opennms.eventd.broadcast.lanes";
+
     public static class DiscardTrapsAndSyslogEvents implements RejectedExecutionHandler {
         /**
          * Creates a <tt>DiscardOldestPolicy</tt> for the given executor.
@@ -103,17 +120,17 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     /**
      * Hash table of list of event listeners keyed by event UEI
      */
-    private Map<String, List<EventListener>> m_ueiListeners = new HashMap<String, List<EventListener>>();
+    private Map<String, List<EventListener>> m_ueiListeners = new ConcurrentHashMap<String, List<EventListener>>();
 
     /**
      * The list of event listeners interested in all events
      */
-    private List<EventListener> m_listeners = new ArrayList<EventListener>();
+    private List<EventListener> m_listeners = new CopyOnWriteArrayList<EventListener>();
 
     /**
      * Hash table of event listener threads keyed by the listener's id
      */
-    private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
+    private Map<String, EventListenerExecutor> m_listenerThreads = new ConcurrentHashMap<String, EventListenerExecutor>();
 
     /**
      * The thread pool handling the events
@@ -126,6 +143,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     
     private Integer m_handlerQueueLength;
 
+    private int m_broadcastLanes = Integer.getInteger(BROADCAST_LANES_SYS_PROP, 0);
+
     private final MetricRegistry m_registry;
 
     /**
@@ -133,6 +152,9 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
      * is added to an execution queue when the 'sendNow()' is called. The
      * ListenerThread reads events off of this queue and sends them to the
      * appropriate listener.
+     *
+     * When sharding is enabled, the listener gets one single-threaded executor
+     * per lane instead, and each event is queued to the lane selected by its key.
      */
     private static class EventListenerExecutor {
         /**
@@ -141,45 +163,72 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         private final EventListener m_listener;
 
         /**
-         * The thread that is running this runnable.
+         * The threads that are running this runnable, one per lane.
          */
-        private final ExecutorService m_delegateThread;
+        private final ThreadPoolExecutor[] m_delegateThreads;
+
+        private final MetricRegistry m_registry;
+
+        private final Timer m_lagTimer;
 
         /**
          * Constructor
          */
-        EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
+        EventListenerExecutor(EventListener listener, Integer handlerQueueLength, int lanes, MetricRegistry registry) {
             m_listener = listener;
+            m_registry = registry;
 
             int numThreads = 1;
             if (m_listener instanceof ThreadAwareEventListener) {
                 numThreads = ((ThreadAwareEventListener)m_listener).getNumThreads();
             }
 
-            m_delegateThread = new ThreadPoolExecutor(
-                    numThreads,
-                    numThreads,
-                    0L,
-                    TimeUnit.MILLISECONDS,
-                    handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength),
-                    // This ThreadFactory will ensure that the log prefix of the calling thread
-                    // is used for all events that this listener handles. Therefore, if Notifd
-                    // registers for an event then all logs for handling that event will end up
-                    // inside notifd.log.
-                    new LogPreservingThreadFactory(m_listener.getName(), numThreads),
-                    new RejectedExecutionHandler() {
-                        @Override
-                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+            // Listeners that asked for multiple threads already handle events out of order
+            final int numLanes = lanes > 1 && numThreads <= 1 ? lanes : 1;
+            final int threadsPerLane = numLanes > 1 ? 1 : numThreads;
+
+            m_delegateThreads = new ThreadPoolExecutor[numLanes];
+            for (int i = 0; i < numLanes; i++) {
+                m_delegateThreads[i] = new ThreadPoolExecutor(
+                        threadsPerLane,
+                        threadsPerLane,
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength),
+                        // This ThreadFactory will ensure that the log prefix of the calling thread
+                        // is used for all events that this listener handles. Therefore, if Notifd
+                        // registers for an event then all logs for handling that event will end up
+                        // inside notifd.log.
+                        new LogPreservingThreadFactory(numLanes > 1 ? m_listener.getName() + "-lane" + i : m_listener.getName(), threadsPerLane),
+                        new RejectedExecutionHandler() {
+                            @Override
+                            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                                LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                            }
                         }
+                );
+            }
+
+            m_lagTimer = m_registry.timer(MetricRegistry.name("eventlisteners", m_listener.getName(), "lag"));
+            m_registry.remove(MetricRegistry.name("eventlisteners", m_listener.getName(), "queued"));
+            m_registry.register(MetricRegistry.name("eventlisteners", m_listener.getName(), "queued"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    int queued = 0;
+                    for (ThreadPoolExecutor delegateThread : m_delegateThreads) {
+                        queued += delegateThread.getQueue().size();
                     }
-            );
+                    return queued;
+                }
+            });
         }
 
         public CompletableFuture<Void> addEvent(final IEvent event) {
+            final long queuedAt = System.nanoTime();
             return CompletableFuture.runAsync(new Runnable() {
                 @Override
                 public void run() {
+                    m_lagTimer.update(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
                     try {
                          if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvent on {} for event {}", m_listener.getName(), event.toStringSimple());
 
@@ -194,17 +243,52 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
                         LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
                     }
                 }
-            }, m_delegateThread);
+            }, getLane(event));
+        }
+
+        private ExecutorService getLane(final IEvent event) {
+            if (m_delegateThreads.length == 1) {
+                return m_delegateThreads[0];
+            }
+            return m_delegateThreads[Math.floorMod(Objects.hashCode(getOrderingKey(event)), m_delegateThreads.length)];
         }
 
         /**
          * Stops the execution of this listener.
          */
         public void stop() {
-            m_delegateThread.shutdown();
+            for (ThreadPoolExecutor delegateThread : m_delegateThreads) {
+                delegateThread.shutdown();
+            }
+            m_registry.remove(MetricRegistry.name("eventlisteners", m_listener.getName(), "lag"));
+            m_registry.remove(MetricRegistry.name("eventlisteners", m_listener.getName(), "queued"));
         }
     }
 
+    /**
+     * Returns the key used to order the events delivered to a listener.
+     *
+     * Events for a node are keyed on the node ID, so that everything about a node, whether or not
+     * it carries alarm data, is delivered in order. Other alarm-related events are keyed on the clear
+     * key when present and the reduction key otherwise, so that a resolution is delivered after the
+     * problem it clears. The interface is used for all other events.
+     */
+    static Object getOrderingKey(final IEvent event) {
+        if (event.getNodeid() != null && event.getNodeid() > 0) {
+            return event.getNodeid();
+        }
+        final IAlarmData alarmData = event.getAlarmData();
+        if (alarmData != null) {
+            if (alarmData.getClearKey() != null) {
+                return alarmData.getClearKey();
+            }
+            if (alarmData.getReductionKey() != null) {
+                return alarmData.getReductionKey();
+            }
+        }
+        return event.getInterface();
+    }
+
     /**
      * <p>Constructor for EventIpcManagerDefaultImpl.</p>
      */
@@ -496,7 +580,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             return;
         }
         
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength, m_broadcastLanes, m_registry);
         m_listenerThreads.put(listener.getName(), listenerThread);
     }
 
@@ -506,7 +590,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     private void addUeiForListener(String uei, EventListener listener) {
         // Ensure there is a list for this UEI
         if (!m_ueiListeners.containsKey(uei)) {
-            m_ueiListeners.put(uei, new ArrayList<EventListener>());
+            m_ueiListeners.put(uei, new CopyOnWriteArrayList<EventListener>());
         }
         
         List<EventListener> listenersList = m_ueiListeners.get(uei);
@@ -636,6 +720,25 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         m_handlerQueueLength = size;
     }
 
+    /**
+     * <p>getBroadcastLanes</p>
+     *
+     * @return a int.
+     */
+    public int getBroadcastLanes() {
+        return m_broadcastLanes;
+    }
+
+    /**
+     * Sets the number of ordered lanes used to deliver the events to each listener.
+     * Only affects the listeners registered after the call.
+     *
+     * @param broadcastLanes a int.
+     */
+    public void setBroadcastLanes(int broadcastLanes) {
+        m_broadcastLanes = broadcastLanes;
+    }
+
     @Override
     public boolean hasEventListener(final String uei) {
         if (this.m_ueiListeners.containsKey(uei)) {
@@ -142,5 +142,15 @@ public interface EventUtil {
 	Date decodeSnmpV2TcDateAndTime(BigInteger octetStringValue);
 
 	String getPrimaryInterface(long nodeId) throws SQLException;
+
+	/**
+	 * Drops any cached values for the given node. Called when an event
+	 * signals that the node, its assets or its hardware inventory changed.
+	 *
+	 * @param nodeId
+	 *            the node ID
+	 */
+	default void invalidateNodeCache(long nodeId) {
+	}
 }
 
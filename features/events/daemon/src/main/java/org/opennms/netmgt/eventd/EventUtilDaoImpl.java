@@ -30,10 +30,18 @@ package org.opennms.netmgt.eventd;
 
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,11 +67,26 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
+/**
+ * {@link EventUtil} that retrieves the node related values from the database.
+ *
+ * Asset and hardware field values are cached per node, since they are used by
+ * the templates of many event definitions and rarely change. The cached values
+ * of a node are dropped when {@link #invalidateNodeCache(long)} is called, which
+ * the {@link EventExpander} does for the events signaling a change to the node,
+ * and after {@link #NODE_CACHE_TTL_SYS_PROP} seconds.
+ */
 public class EventUtilDaoImpl extends AbstractEventUtil {
 
     private static final Logger LOG = LoggerFactory.getLogger(EventUtilDaoImpl.class);
 
+    public static final String NODE_CACHE_SIZE_SYS_PROP = "org.opennms.eventd.nodeCache.maxSize";
+
+    public static final String NODE_CACHE_TTL_SYS_PROP = "org.opennms.eventd.nodeCache.ttlSeconds";
+
 	@Autowired
 	private NodeDao nodeDao;
 	
@@ -80,9 +103,24 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
 
 	private final Pattern HW_PARM_PATTERN = Pattern.compile("^hardware\\[(.*):(.*)\\]$");
 
-	private final static Map<String, PropertyDescriptor> assetDescriptorsByName = getDescriptorsForStrings(OnmsAssetRecord.class);
+	private final static Map<String, Method> assetGettersByName = getGettersForStrings(OnmsAssetRecord.class);
+
+	private final static Map<String, Method> hwEntityGettersByName = getGettersForStrings(OnmsHwEntity.class);
 
-	private final static Map<String, PropertyDescriptor> hwEntityDescriptorsByName = getDescriptorsForStrings(OnmsHwEntity.class);
+	/**
+	 * Asset field values by node ID.
+	 */
+	private final Cache<Long, Map<String, String>> assetCache = newNodeCache();
+
+	/**
+	 * Hardware field values by node ID and parameter.
+	 */
+	private final Cache<Long, ConcurrentMap<String, Optional<String>>> hwCache = newNodeCache();
+
+	/**
+	 * Asset field names by parameter, i.e. 'asset[Building]' -> 'building'.
+	 */
+	private final Map<String, Optional<String>> assetFieldsByParm = new ConcurrentHashMap<>();
 
     public EventUtilDaoImpl() { }
 
@@ -137,23 +175,53 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
 
     @Override
     public String getAssetFieldValue(String parm, long nodeId) {
-        final Matcher matcher = ASSET_PARM_PATTERN.matcher(parm);
-        if (!matcher.matches()) {
+        final Optional<String> assetField = assetFieldsByParm.computeIfAbsent(parm, p -> {
+            final Matcher matcher = ASSET_PARM_PATTERN.matcher(p);
+            if (!matcher.matches()) {
+                return Optional.empty();
+            }
+            return Optional.of(matcher.group(1).toLowerCase());
+        });
+        if (!assetField.isPresent()) {
             LOG.warn("Unsupported asset field parameter '{}'.", parm);
             return null;
         }
-        final String assetField = matcher.group(1).toLowerCase();
-
-        OnmsAssetRecord assetRecord = assetRecordDao.findByNodeId((int)nodeId);
-        if (assetRecord == null) {
-            return null;
-        }
 
-        return getStringPropertyByName(assetField, assetRecord, assetDescriptorsByName);
+        final Map<String, String> assetFields = getCached(assetCache, nodeId, () -> {
+            final OnmsAssetRecord assetRecord = assetRecordDao.findByNodeId((int)nodeId);
+            if (assetRecord == null) {
+                return Collections.emptyMap();
+            }
+            final Map<String, String> values = new HashMap<>();
+            for (String field : assetGettersByName.keySet()) {
+                values.put(field, getStringPropertyByName(field, assetRecord, assetGettersByName));
+            }
+            return values;
+        });
+        return assetFields.get(assetField.get());
     }
 
     @Override
     public String getHardwareFieldValue(String parm, long nodeId) {
+        final ConcurrentMap<String, Optional<String>> hwFields = getCached(hwCache, nodeId, ConcurrentHashMap::new);
+        Optional<String> value = hwFields.get(parm);
+        if (value == null) {
+            value = Optional.ofNullable(lookupHardwareFieldValue(parm, nodeId));
+            hwFields.put(parm, value);
+        }
+        return value.orElse(null);
+    }
+
+    /**
+     * Drops the cached asset and hardware field values for the given node.
+     */
+    @Override
+    public void invalidateNodeCache(long nodeId) {
+        assetCache.invalidate(nodeId);
+        hwCache.invalidate(nodeId);
+    }
+
+    private String lookupHardwareFieldValue(String parm, long nodeId) {
         final Matcher matcher = HW_PARM_PATTERN.matcher(parm);
         if (!matcher.matches()) {
             LOG.warn("Unsupported hardware field parameter '{}'.", parm);
@@ -177,11 +245,10 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
                         Order.desc("id")
                 }));
             List<OnmsHwEntity> hwEntities = hwEntityDao.findMatching(criteria);
-            System.err.println(hwEntities);
             if (hwEntities.size() < 1) {
                 return null;
             }
-            return getStringPropertyByName(hwField, hwEntities.get(0), hwEntityDescriptorsByName);
+            return getStringPropertyByName(hwField, hwEntities.get(0), hwEntityGettersByName);
         }
 
         // Retrieve the entity by index if the select is an integer
@@ -192,7 +259,7 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
                 // No entry with this index
                 return null;
             }
-            return getStringPropertyByName(hwField, hwEntity, hwEntityDescriptorsByName);
+            return getStringPropertyByName(hwField, hwEntity, hwEntityGettersByName);
         } catch (NumberFormatException e) {
             // pass
         }
@@ -203,7 +270,7 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
             // No entry with this name
             return null;
         }
-        return getStringPropertyByName(hwField, hwEntity, hwEntityDescriptorsByName);
+        return getStringPropertyByName(hwField, hwEntity, hwEntityGettersByName);
     }
 
     /**
@@ -238,38 +305,52 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
         return super.expandParms(input, event, decode);
     }
 
+    private static <V> V getCached(Cache<Long, V> cache, long nodeId, Supplier<V> loader) {
+        try {
+            return cache.get(nodeId, loader::get);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static <V> Cache<Long, V> newNodeCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(Long.getLong(NODE_CACHE_SIZE_SYS_PROP, 10000L))
+                .expireAfterWrite(Long.getLong(NODE_CACHE_TTL_SYS_PROP, 300L), TimeUnit.SECONDS)
+                .build();
+    }
+
     /**
      * Retrieves the property with the given name on the bean.
      *
      * Returns null if there is no such property, or if there's an
      * error in retrieving it.
      */
-    private static String getStringPropertyByName(String name, Object bean, Map<String, PropertyDescriptor> map) {
-        PropertyDescriptor propertyDescr = map.get(name);
-        if (propertyDescr == null) {
+    private static String getStringPropertyByName(String name, Object bean, Map<String, Method> map) {
+        Method getter = map.get(name);
+        if (getter == null) {
             return null;
         }
 
         try {
-            return (String)PropertyUtils.getProperty(bean, propertyDescr.getName());
-        } catch (IllegalAccessException | InvocationTargetException
-                | NoSuchMethodException e) {
-            LOG.error("Retrieving propery {} on {} by name failed.", propertyDescr, bean);
+            return (String)getter.invoke(bean);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            LOG.error("Retrieving propery {} on {} by name failed.", getter.getName(), bean);
             return null;
         }
     }
 
     /**
-     * Retrieves the list of PropertyDescriptor that are of type String
+     * Retrieves the getters of the properties that are of type String
      * and maps them with their lower-case name.
      */
-    private static Map<String, PropertyDescriptor> getDescriptorsForStrings(Class<?> clazz) {
-        Map<String, PropertyDescriptor> descriptorsByName = new HashMap<String, PropertyDescriptor>();
+    private static Map<String, Method> getGettersForStrings(Class<?> clazz) {
+        Map<String, Method> gettersByName = new HashMap<String, Method>();
         for (PropertyDescriptor pd : PropertyUtils.getPropertyDescriptors(clazz)) {
-            if (pd.getPropertyType() == String.class) {
-                descriptorsByName.put(pd.getName().toLowerCase(), pd);
+            if (pd.getPropertyType() == String.class && pd.getReadMethod() != null) {
+                gettersByName.put(pd.getName().toLowerCase(), pd.getReadMethod());
             }
         }
-        return descriptorsByName;
+        return gettersByName;
     }
 }
@@ -28,13 +28,31 @@
 
 package org.opennms.netmgt.eventd.processor;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.dao.api.MonitoringSystemDao;
@@ -49,6 +67,10 @@ import org.opennms.netmgt.eventd.EventUtil;
 import org.opennms.netmgt.events.api.EventDatabaseConstants;
 import org.opennms.netmgt.events.api.EventProcessorException;
 import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsEventParameter;
+import org.opennms.netmgt.model.OnmsMonitoringSystem;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsServiceType;
 import org.opennms.netmgt.model.OnmsSeverity;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Header;
@@ -56,13 +78,19 @@ import org.opennms.netmgt.xml.event.Log;
 import org.opennms.netmgt.xml.event.Operaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
@@ -86,10 +114,19 @@ import com.codahale.metrics.Timer.Context;
  * @see org.opennms.netmgt.events.api.EventDatabaseConstants#DB_ATTRIB_DELIM
  * @see org.opennms.netmgt.events.api.EventDatabaseConstants#NAME_VAL_DELIM
  *
+ * When write-behind is enabled (see {@link #WRITE_BEHIND_BATCH_SIZE_SYS_PROP}), the
+ * event logs from all of the handler threads are queued and persisted by a single
+ * writer thread, which groups up to the configured number of events into a single
+ * transaction. The nodes, services and systems referenced by the batch are looked up
+ * once, the IDs are allocated with a single query, and the events and their parameters
+ * are inserted with one JDBC batch each. The calling thread still waits until its events
+ * have been committed, so the database ID is set on the events, and the rows are visible
+ * to the listeners, before the events are broadcast.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public class HibernateEventWriter implements EventWriter {
+public class HibernateEventWriter implements EventWriter, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(HibernateEventWriter.class);
 
     public static final String LOG_MSG_DEST_DO_NOT_PERSIST = "donotpersist";
@@ -97,6 +134,24 @@ public class HibernateEventWriter implements EventWriter {
     public static final String LOG_MSG_DEST_LOG_AND_DISPLAY = "logndisplay";
     public static final String LOG_MSG_DEST_LOG_ONLY = "logonly";
     public static final String LOG_MSG_DEST_DISPLAY_ONLY = "displayonly";
+
+    /**
+     * Maximum number of events persisted in a single write-behind transaction.
+     * Write-behind is disabled when this is less than or equal to 0.
+     */
+    public static final String WRITE_BEHIND_BATCH_SIZE_SYS_PROP = "org.opennms.eventd.writer.batchSize";
+
+    /**
+     * Maximum amount of time, in milliseconds, the writer thread waits for a
+     * batch to fill up before flushing it.
+     */
+    public static final String WRITE_BEHIND_FLUSH_INTERVAL_SYS_PROP = "org.opennms.eventd.writer.flushIntervalMs";
+
+    /**
+     * Maximum number of event logs waiting to be written. Handler threads
+     * block when the queue is full.
+     */
+    public static final String WRITE_BEHIND_QUEUE_LENGTH_SYS_PROP = "org.opennms.eventd.writer.queueLength";
     
     @Autowired
     private TransactionOperations m_transactionManager;
@@ -119,10 +174,40 @@ public class HibernateEventWriter implements EventWriter {
     @Autowired
     private EventUtil eventUtil;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private final Timer writeTimer;
 
+    private final Histogram batchSizes;
+
+    private final Timer flushTimer;
+
+    private final Counter statements;
+
+    private int m_writeBehindBatchSize = Integer.getInteger(WRITE_BEHIND_BATCH_SIZE_SYS_PROP, 0);
+
+    private long m_writeBehindFlushInterval = Long.getLong(WRITE_BEHIND_FLUSH_INTERVAL_SYS_PROP, 10L);
+
+    private int m_writeBehindQueueLength = Integer.getInteger(WRITE_BEHIND_QUEUE_LENGTH_SYS_PROP, 10000);
+
+    private BlockingQueue<PendingWrite> m_writeBehindQueue;
+
+    private ExecutorService m_writeBehindExecutor;
+
     public HibernateEventWriter(MetricRegistry registry) {
         writeTimer = Objects.requireNonNull(registry).timer("eventlogs.process.write");
+        batchSizes = registry.histogram("eventlogs.process.write.batchSize");
+        flushTimer = registry.timer("eventlogs.process.write.flush");
+        statements = registry.counter("eventlogs.process.write.statements");
+        registry.remove("eventlogs.process.write.queued");
+        registry.register("eventlogs.process.write.queued", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                final BlockingQueue<PendingWrite> queue = m_writeBehindQueue;
+                return queue == null ? 0 : queue.size();
+            }
+        });
     }
 
     /**
@@ -181,26 +266,378 @@ public class HibernateEventWriter implements EventWriter {
 
             // Time the transaction and insertions
             try (Context context = writeTimer.time()) {
-                final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+                if (m_writeBehindBatchSize > 0) {
+                    writeBehind(eventLog.getHeader(), eventsToPersist);
+                } else {
+                    persist(eventLog.getHeader(), eventsToPersist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists the given events in a single transaction.
+     */
+    private void persist(final Header eventHeader, final List<Event> eventsToPersist) throws EventProcessorException {
+        final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+
+        m_transactionManager.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (Event eachEvent : eventsToPersist) {
+                    try {
+                        process(eventHeader, eachEvent);
+                    } catch (EventProcessorException e) {
+                        exception.set(e);
+                        return;
+                    }
+                }
+            }
+        });
+
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+    }
+
+    /**
+     * Hands the events over to the writer thread and waits until they have been committed.
+     */
+    private void writeBehind(final Header eventHeader, final List<Event> eventsToPersist) throws EventProcessorException {
+        final PendingWrite pendingWrite = new PendingWrite(eventHeader, eventsToPersist);
+        try {
+            getWriteBehindQueue().put(pendingWrite);
+            pendingWrite.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for events to be persisted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EventProcessorException) {
+                throw (EventProcessorException)e.getCause();
+            }
+            throw new EventProcessorException("Unexpected exception while storing events.", e.getCause());
+        }
+    }
+
+    private synchronized BlockingQueue<PendingWrite> getWriteBehindQueue() {
+        if (m_writeBehindQueue == null) {
+            m_writeBehindQueue = new LinkedBlockingQueue<>(m_writeBehindQueueLength);
+            m_writeBehindExecutor = Executors.newSingleThreadExecutor(new LogPreservingThreadFactory(HibernateEventWriter.class.getSimpleName(), 1));
+            m_writeBehindExecutor.execute(new WriteBehindRunnable(m_writeBehindQueue));
+        }
+        return m_writeBehindQueue;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (m_writeBehindExecutor != null) {
+            m_writeBehindExecutor.shutdownNow();
+            m_writeBehindExecutor = null;
+        }
+        if (m_writeBehindQueue != null) {
+            final List<PendingWrite> remaining = new ArrayList<>();
+            m_writeBehindQueue.drainTo(remaining);
+            for (PendingWrite pendingWrite : remaining) {
+                pendingWrite.future.completeExceptionally(new EventProcessorException("Event writer was stopped before the events were persisted."));
+            }
+            m_writeBehindQueue = null;
+        }
+    }
+
+    /**
+     * The event logs of a single handler waiting to be persisted.
+     */
+    private static class PendingWrite {
+        private final Header header;
+        private final List<Event> events;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(Header header, List<Event> events) {
+            this.header = header;
+            this.events = events;
+        }
+    }
+
+    /**
+     * Drains the write-behind queue, flushing a batch once it reaches the
+     * configured size or when the flush interval elapsed since the first
+     * event log of the batch was taken from the queue.
+     */
+    private class WriteBehindRunnable implements Runnable {
+        private final BlockingQueue<PendingWrite> m_queue;
+
+        private WriteBehindRunnable(BlockingQueue<PendingWrite> queue) {
+            m_queue = queue;
+        }
+
+        @Override
+        public void run() {
+            final List<PendingWrite> batch = new ArrayList<>();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    final PendingWrite first = m_queue.take();
+                    batch.add(first);
+                    int numEvents = first.events.size();
+
+                    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_writeBehindFlushInterval);
+                    while (numEvents < m_writeBehindBatchSize) {
+                        final PendingWrite next = m_queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        numEvents += next.events.size();
+                    }
 
+                    flush(batch, numEvents);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (PendingWrite pendingWrite : batch) {
+                        pendingWrite.future.completeExceptionally(new EventProcessorException("Event writer was stopped before the events were persisted."));
+                    }
+                } catch (Throwable t) {
+                    LOG.error("Unexpected exception while writing events.", t);
+                    for (PendingWrite pendingWrite : batch) {
+                        pendingWrite.future.completeExceptionally(t);
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void flush(final List<PendingWrite> batch, final int numEvents) {
+            batchSizes.update(numEvents);
+
+            final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+            try (Context context = flushTimer.time()) {
                 m_transactionManager.execute(new TransactionCallbackWithoutResult() {
                     @Override
                     protected void doInTransactionWithoutResult(TransactionStatus status) {
-                        for (Event eachEvent : eventsToPersist) {
-                            try {
-                                process(eventLog.getHeader(), eachEvent);
-                            } catch (EventProcessorException e) {
-                                exception.set(e);
-                                return;
-                            }
+                        try {
+                            insert(batch, numEvents);
+                        } catch (EventProcessorException e) {
+                            exception.set(e);
+                            status.setRollbackOnly();
                         }
                     }
                 });
+            } catch (Throwable t) {
+                exception.set(new EventProcessorException("Unexpected exception while storing events.", t));
+            }
+
+            if (exception.get() == null) {
+                for (PendingWrite pendingWrite : batch) {
+                    pendingWrite.future.complete(null);
+                }
+                return;
+            }
+
+            // The batch was rolled back - retry each of the logs in its own transaction so that
+            // a single bad event does not prevent the others from being persisted
+            LOG.debug("Failed to persist batch of {} events, retrying them individually.", numEvents, exception.get());
+            for (PendingWrite pendingWrite : batch) {
+                try {
+                    persist(pendingWrite.header, pendingWrite.events);
+                    pendingWrite.future.complete(null);
+                } catch (Throwable t) {
+                    pendingWrite.future.completeExceptionally(t);
+                }
+            }
+        }
+    }
 
-                if (exception.get() != null) {
-                    throw exception.get();
+    /**
+     * Inserts the events of the batch with a JDBC batch for the events and another one for their parameters.
+     * The entities referenced by the events are looked up once for the whole batch, before any row is
+     * inserted, and the IDs are allocated from the sequence with a single query.
+     */
+    private void insert(final List<PendingWrite> batch, final int numEvents) throws EventProcessorException {
+        final EntityLookups lookups = new EntityLookups(true);
+        final List<Event> events = new ArrayList<>(numEvents);
+        final List<OnmsEvent> ovents = new ArrayList<>(numEvents);
+        try {
+            for (PendingWrite pendingWrite : batch) {
+                for (Event eachEvent : pendingWrite.events) {
+                    LOG.debug("HibernateEventWriter: processing {}, nodeid: {}, ipaddr: {}, serviceid: {}, time: {}", eachEvent.getUei(), eachEvent.getNodeid(), eachEvent.getInterface(), eachEvent.getService(), eachEvent.getTime());
+                    events.add(eachEvent);
+                    ovents.add(createOnmsEvent(pendingWrite.header, eachEvent, lookups));
                 }
             }
+
+            final List<Integer> ids = jdbcTemplate.queryForList("SELECT nextval('eventsNxtId') FROM generate_series(1, ?)", Integer.class, ovents.size());
+            int numStatements = lookups.getNumLookups() + 1;
+            for (int i = 0; i < ovents.size(); i++) {
+                ovents.get(i).setId(ids.get(i));
+            }
+
+            jdbcTemplate.batchUpdate(INSERT_EVENT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    setEventValues(ps, ovents.get(i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return ovents.size();
+                }
+            });
+            numStatements++;
+
+            final List<OnmsEventParameter> parameters = new ArrayList<>();
+            final List<Integer> positions = new ArrayList<>();
+            for (OnmsEvent ovent : ovents) {
+                final List<OnmsEventParameter> eventParameters = ovent.getEventParameters();
+                for (int i = 0; i < eventParameters.size(); i++) {
+                    parameters.add(eventParameters.get(i));
+                    positions.add(i);
+                }
+            }
+            if (!parameters.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_EVENT_PARAMETER_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        final OnmsEventParameter parameter = parameters.get(i);
+                        ps.setInt(1, parameter.getEvent().getId());
+                        ps.setString(2, parameter.getName());
+                        ps.setString(3, parameter.getValue());
+                        ps.setString(4, parameter.getType());
+                        ps.setInt(5, positions.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return parameters.size();
+                    }
+                });
+                numStatements++;
+            }
+            statements.inc(numStatements);
+        } catch (DeadlockLoserDataAccessException e) {
+            throw new EventProcessorException("Encountered deadlock when inserting batch of " + numEvents + " events.", e);
+        } catch (Throwable e) {
+            throw new EventProcessorException("Unexpected exception while storing batch of " + numEvents + " events.", e);
+        }
+
+        // Update the events with the database IDs of the events stored in the database
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).setDbid(ovents.get(i).getId());
+        }
+    }
+
+    private static final String INSERT_EVENT_SQL = "INSERT INTO events (eventId, eventUei, nodeId, eventTime, eventHost, " +
+            "eventSource, ipAddr, systemId, eventSnmpHost, serviceId, eventSnmp, eventCreateTime, eventDescr, " +
+            "eventLogGroup, eventLogMsg, eventSeverity, ifIndex, eventPathOutage, eventCorrelation, eventSuppressedCount, " +
+            "eventOperInstruct, eventAutoAction, eventOperAction, eventOperActionMenuText, eventNotification, eventTTicket, " +
+            "eventTTicketState, eventForward, eventMouseOverText, eventLog, eventDisplay, eventAckUser, eventAckTime) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EVENT_PARAMETER_SQL = "INSERT INTO event_parameters (eventID, name, value, type, position) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static void setEventValues(final PreparedStatement ps, final OnmsEvent ovent) throws SQLException {
+        int i = 1;
+        ps.setInt(i++, ovent.getId());
+        ps.setString(i++, ovent.getEventUei());
+        setInteger(ps, i++, ovent.getNode() != null ? ovent.getNode().getId() : null);
+        ps.setTimestamp(i++, toTimestamp(ovent.getEventTime()));
+        ps.setString(i++, ovent.getEventHost());
+        ps.setString(i++, ovent.getEventSource());
+        ps.setString(i++, ovent.getIpAddr() != null ? InetAddressUtils.str(ovent.getIpAddr()) : null);
+        ps.setString(i++, ovent.getDistPoller().getId());
+        ps.setString(i++, ovent.getEventSnmpHost());
+        setInteger(ps, i++, ovent.getServiceType() != null ? ovent.getServiceType().getId() : null);
+        ps.setString(i++, ovent.getEventSnmp());
+        ps.setTimestamp(i++, toTimestamp(ovent.getEventCreateTime()));
+        ps.setString(i++, ovent.getEventDescr());
+        ps.setString(i++, ovent.getEventLogGroup());
+        ps.setString(i++, ovent.getEventLogMsg());
+        setInteger(ps, i++, ovent.getEventSeverity());
+        setInteger(ps, i++, ovent.getIfIndex());
+        ps.setString(i++, ovent.getEventPathOutage());
+        ps.setString(i++, ovent.getEventCorrelation());
+        setInteger(ps, i++, ovent.getEventSuppressedCount());
+        ps.setString(i++, ovent.getEventOperInstruct());
+        ps.setString(i++, ovent.getEventAutoAction());
+        ps.setString(i++, ovent.getEventOperAction());
+        ps.setString(i++, ovent.getEventOperActionMenuText());
+        ps.setString(i++, ovent.getEventNotification());
+        ps.setString(i++, ovent.getEventTTicket());
+        setInteger(ps, i++, ovent.getEventTTicketState());
+        ps.setString(i++, ovent.getEventForward());
+        ps.setString(i++, ovent.getEventMouseOverText());
+        ps.setString(i++, ovent.getEventLog());
+        ps.setString(i++, ovent.getEventDisplay());
+        ps.setString(i++, ovent.getEventAckUser());
+        ps.setTimestamp(i, toTimestamp(ovent.getEventAckTime()));
+    }
+
+    private static void setInteger(final PreparedStatement ps, final int index, final Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+
+    private static Timestamp toTimestamp(final Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    /**
+     * Looks up the entities referenced by the events. When caching, each distinct entity is only
+     * looked up once, which is used to resolve all of the entities of a batch before inserting it.
+     */
+    private class EntityLookups {
+        private final boolean caching;
+        private final Map<Object, Optional<Object>> cache = new HashMap<>();
+        private int numLookups = 0;
+
+        private EntityLookups(boolean caching) {
+            this.caching = caching;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K, V> V lookup(String type, K key, Function<K, V> loader) {
+            if (!caching) {
+                return loader.apply(key);
+            }
+            return (V)cache.computeIfAbsent(Arrays.asList(type, key), k -> {
+                numLookups++;
+                return Optional.ofNullable(loader.apply(key));
+            }).orElse(null);
+        }
+
+        private OnmsNode getNode(Integer nodeId) {
+            return lookup("node", nodeId, id -> nodeDao.get(id));
+        }
+
+        private OnmsMonitoringSystem getDistPoller(String id) {
+            return lookup("distPoller", id, distPollerDao::get);
+        }
+
+        private OnmsMonitoringSystem getMonitoringSystem(String id) {
+            return lookup("monitoringSystem", id, monitoringSystemDao::get);
+        }
+
+        private OnmsMonitoringSystem whoami() {
+            return lookup("whoami", "", id -> distPollerDao.whoami());
+        }
+
+        private OnmsServiceType getServiceType(String name) {
+            return lookup("serviceType", name, serviceTypeDao::findByName);
+        }
+
+        private String getEventHost(Event event) {
+            if (event.getHost() == null || !event.hasNodeid()) {
+                // Resolved without a lookup
+                return eventUtil.getEventHost(event);
+            }
+            return lookup("eventHost", Arrays.asList(event.getNodeid(), event.getHost()), key -> eventUtil.getEventHost(event));
+        }
+
+        private int getNumLookups() {
+            return numLookups;
         }
     }
 
@@ -213,7 +650,7 @@ public class HibernateEventWriter implements EventWriter {
         LOG.debug("HibernateEventWriter: processing {}, nodeid: {}, ipaddr: {}, serviceid: {}, time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
 
         try {
-            final OnmsEvent ovent = createOnmsEvent(eventHeader, event);
+            final OnmsEvent ovent = createOnmsEvent(eventHeader, event, new EntityLookups(false));
             eventDao.save(ovent);
 
             // Update the event with the database ID of the event stored in the database
@@ -232,7 +669,7 @@ public class HibernateEventWriter implements EventWriter {
      *                Thrown if a required resource cannot be found in the
      *                properties file.
      */
-    private OnmsEvent createOnmsEvent(final Header eventHeader, final Event event) {
+    private OnmsEvent createOnmsEvent(final Header eventHeader, final Event event, final EntityLookups lookups) {
 
         OnmsEvent ovent = new OnmsEvent();
 
@@ -244,7 +681,7 @@ public class HibernateEventWriter implements EventWriter {
 
         // nodeID
         if (event.hasNodeid()) {
-            ovent.setNode(nodeDao.get(event.getNodeid().intValue()));
+            ovent.setNode(lookups.getNode(event.getNodeid().intValue()));
         }
 
         // eventTime
@@ -252,7 +689,7 @@ public class HibernateEventWriter implements EventWriter {
 
         // eventHost
         // Resolve the event host to a hostname using the ipInterface table
-        ovent.setEventHost(EventDatabaseConstants.format(eventUtil.getEventHost(event), EVENT_HOST_FIELD_SIZE));
+        ovent.setEventHost(EventDatabaseConstants.format(lookups.getEventHost(event), EVENT_HOST_FIELD_SIZE));
 
         // eventSource
         ovent.setEventSource(EventDatabaseConstants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
@@ -272,22 +709,22 @@ public class HibernateEventWriter implements EventWriter {
         // If available, use the header's distPoller
         if (eventHeader != null && eventHeader.getDpName() != null && !"".equals(eventHeader.getDpName().trim())) {
             // TODO: Should we also try a look up the value in the MinionDao and LocationMonitorDao here?
-            ovent.setDistPoller(distPollerDao.get(eventHeader.getDpName()));
+            ovent.setDistPoller(lookups.getDistPoller(eventHeader.getDpName()));
         }
         // Otherwise, use the event's distPoller
         if (ovent.getDistPoller() == null && event.getDistPoller() != null && !"".equals(event.getDistPoller().trim())) {
-            ovent.setDistPoller(monitoringSystemDao.get(event.getDistPoller()));
+            ovent.setDistPoller(lookups.getMonitoringSystem(event.getDistPoller()));
         }
         // And if both are unavailable, use the local system as the event's source system
         if (ovent.getDistPoller() == null) {
-            ovent.setDistPoller(distPollerDao.whoami());
+            ovent.setDistPoller(lookups.whoami());
         }
 
         // eventSnmpHost
         ovent.setEventSnmpHost(EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
         // service
-        ovent.setServiceType(serviceTypeDao.findByName(event.getService()));
+        ovent.setServiceType(lookups.getServiceType(event.getService()));
 
         // eventSnmp
         ovent.setEventSnmp(event.getSnmp() == null ? null : SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
@@ -402,7 +839,42 @@ public class HibernateEventWriter implements EventWriter {
         return ovent;
     }
 
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
     public void setTransactionManager(TransactionOperations transactionManager) {
         m_transactionManager = transactionManager;
     }
+
+    /**
+     * Number of statements issued to insert the write-behind batches, including the lookups.
+     */
+    long getNumWriteBehindStatements() {
+        return statements.getCount();
+    }
+
+    public int getWriteBehindBatchSize() {
+        return m_writeBehindBatchSize;
+    }
+
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        m_writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+    public long getWriteBehindFlushInterval() {
+        return m_writeBehindFlushInterval;
+    }
+
+    public void setWriteBehindFlushInterval(long writeBehindFlushInterval) {
+        m_writeBehindFlushInterval = writeBehindFlushInterval;
+    }
+
+    public int getWriteBehindQueueLength() {
+        return m_writeBehindQueueLength;
+    }
+
+    public void setWriteBehindQueueLength(int writeBehindQueueLength) {
+        m_writeBehindQueueLength = writeBehindQueueLength;
+    }
 }
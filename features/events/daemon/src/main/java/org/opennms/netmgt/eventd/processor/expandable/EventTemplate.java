@@ -32,7 +32,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import org.opennms.netmgt.eventd.EventUtil;
 import org.opennms.netmgt.xml.event.Event;
@@ -47,6 +46,9 @@ import com.google.common.collect.Lists;
  *
  * For each placeholder in the {@link EventTemplate#input} a {@link ExpandableToken} is created.
  * The expandable state of the {@link EventTemplate} is the expanded state of all tokens ({@link EventTemplate#tokens}.
+ *
+ * Adjacent constants are merged while parsing, so the tokens alternate between constants and parameters,
+ * and expanding the template only appends each of them to a single buffer.
  */
 public class EventTemplate implements ExpandableToken {
 
@@ -60,6 +62,10 @@ public class EventTemplate implements ExpandableToken {
 
     private final List<ExpandableToken> tokens = Lists.newArrayList();
 
+    private final StringBuilder pendingConstant = new StringBuilder();
+
+    private final ExpandableToken[] plan;
+
     private final EventUtil eventUtil;
 
     private final boolean requiresTransaction;
@@ -68,6 +74,7 @@ public class EventTemplate implements ExpandableToken {
         this.input = Objects.requireNonNull(input);
         this.eventUtil = Objects.requireNonNull(eventUtil);
         parse();
+        this.plan = tokens.toArray(new ExpandableToken[0]);
         this.requiresTransaction = tokens.stream().filter(ExpandableToken::requiresTransaction).findAny().isPresent();
     }
 
@@ -87,13 +94,13 @@ public class EventTemplate implements ExpandableToken {
 
             LOG.debug("checking input {}", tempInp);
             // copy till first %
-            tokens.add(new ExpandableConstant(tempInp.substring(0, index1)));
+            addConstant(tempInp.substring(0, index1));
             tempInp = tempInp.substring(index1);
 
             index2 = tempInp.indexOf(PERCENT, 1);
             // If another % character is the next value
             if (index2 == 1) {
-                tokens.add(new ExpandableConstant(PERCENT));
+                addConstant(String.valueOf(PERCENT));
                 tempInp = tempInp.substring(index2 + 1);
                 LOG.debug("Escaped percent %% found in value");
                 continue;
@@ -105,12 +112,13 @@ public class EventTemplate implements ExpandableToken {
                 // If there's any whitespace in between the % signs, then do not try to
                 // expand it with a parameter value
                 if (WHITESPACE_PATTERN.matcher(parm).matches()) {
-                    tokens.add(new ExpandableConstant(PERCENT));
+                    addConstant(String.valueOf(PERCENT));
                     tempInp = tempInp.substring(1);
                     LOG.debug("skipping parm: {} because whitespace found in value", parm);
                     continue;
                 }
 
+                flushConstant();
                 tokens.add(new ExpandableParameter(parm, eventUtil));
 
                 if (index2 < (inpLen - 1)) {
@@ -123,16 +131,35 @@ public class EventTemplate implements ExpandableToken {
             }
         }
         if ((index1 == -1 || index2 == -1) && (tempInp != null)) {
-            tokens.add(new ExpandableConstant(tempInp));
+            addConstant(tempInp);
+        }
+        flushConstant();
+        if (tokens.isEmpty()) {
+            tokens.add(new ExpandableConstant(""));
+        }
+    }
+
+    private void addConstant(String constant) {
+        pendingConstant.append(constant);
+    }
+
+    private void flushConstant() {
+        if (pendingConstant.length() > 0) {
+            tokens.add(new ExpandableConstant(pendingConstant.toString()));
+            pendingConstant.setLength(0);
         }
     }
 
     @Override
     public String expand(Event event, Map<String, Map<String, String>> decode) {
-        final String collect = tokens.stream()
-                .map(t -> t.expand(event, decode))
-                .collect(Collectors.joining());
-        return collect;
+        if (plan.length == 1) {
+            return plan[0].expand(event, decode);
+        }
+        final StringBuilder sb = new StringBuilder(input.length() + 16 * plan.length);
+        for (ExpandableToken token : plan) {
+            sb.append(token.expand(event, decode));
+        }
+        return sb.toString();
     }
 
     // If we find any token which requires a transaction, the template itself requires a transaction as well
@@ -37,9 +37,13 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
@@ -55,6 +59,7 @@ import org.opennms.netmgt.events.api.ThreadAwareEventListener;
 import org.opennms.netmgt.events.api.model.IEvent;
 import org.opennms.netmgt.events.api.model.ImmutableMapper;
 import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Log;
 import org.opennms.test.ThreadLocker;
@@ -834,4 +839,143 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         // Release
         locker.release();
     }
+
+    /**
+     * Verify that events for the same node are delivered in order when the
+     * broadcast is sharded, and that a blocked node does not hold up the others.
+     */
+    public void testShardedBroadcast() throws InterruptedException {
+        final int numNodes = 4;
+        final int numEventsPerNode = 50;
+        final CountDownLatch unblockNode1 = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(numNodes * numEventsPerNode);
+        final Map<Long, List<Integer>> receivedByNode = new ConcurrentHashMap<>();
+        final EventListener listener = new EventListener() {
+            @Override
+            public String getName() {
+                return "testShardedBroadcast";
+            }
+
+            @Override
+            public void onEvent(IEvent event) {
+                if (event.getNodeid() == 1L) {
+                    try {
+                        unblockNode1.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                receivedByNode.computeIfAbsent(event.getNodeid(), k -> new CopyOnWriteArrayList<>())
+                        .add(Integer.valueOf(event.getParm("seq").getValue().getContent()));
+                received.countDown();
+            }
+        };
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl(m_registry);
+        manager.setHandlerPoolSize(5);
+        manager.setEventHandler(m_eventHandler);
+        manager.setBroadcastLanes(numNodes);
+        manager.afterPropertiesSet();
+        manager.addEventListener(listener);
+
+        for (int i = 0; i < numEventsPerNode; i++) {
+            for (long nodeId = 1; nodeId <= numNodes; nodeId++) {
+                EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testShardedBroadcast");
+                bldr.setNodeid(nodeId);
+                bldr.addParam("seq", i);
+                manager.broadcastNow(bldr.getEvent(), false);
+            }
+        }
+
+        // The other nodes are delivered while node 1 is blocked
+        await().atMost(10, TimeUnit.SECONDS).until(() -> receivedByNode.keySet().size() == numNodes - 1);
+        assertFalse(receivedByNode.containsKey(1L));
+        assertTrue(m_registry.getGauges().get("eventlisteners.testShardedBroadcast.queued").getValue() instanceof Integer);
+
+        unblockNode1.countDown();
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+
+        for (long nodeId = 1; nodeId <= numNodes; nodeId++) {
+            final List<Integer> seqs = receivedByNode.get(nodeId);
+            assertEquals(numEventsPerNode, seqs.size());
+            for (int i = 0; i < numEventsPerNode; i++) {
+                assertEquals("out of order event for node " + nodeId, Integer.valueOf(i), seqs.get(i));
+            }
+        }
+
+        manager.removeEventListener(listener);
+        assertFalse(m_registry.getGauges().containsKey("eventlisteners.testShardedBroadcast.queued"));
+    }
+
+    /**
+     * Verify that a problem and its resolution are delivered in order when the
+     * broadcast is sharded, although their reduction keys differ.
+     */
+    public void testShardedBroadcastDeliversResolutionAfterProblem() throws InterruptedException {
+        final int numNodes = 32;
+        final CountDownLatch received = new CountDownLatch(numNodes * 2);
+        final Map<String, List<String>> receivedByKey = new ConcurrentHashMap<>();
+        final EventListener listener = new EventListener() {
+            @Override
+            public String getName() {
+                return "testShardedBroadcastDeliversResolutionAfterProblem";
+            }
+
+            @Override
+            public void onEvent(IEvent event) {
+                if (EventConstants.NODE_DOWN_EVENT_UEI.equals(event.getUei())) {
+                    // Slow down the problems, so that a resolution on another lane would overtake them
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                final String key = event.getNodeid() != null ? event.getNodeid().toString() : event.getAlarmData().getClearKey();
+                receivedByKey.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(event.getUei());
+                received.countDown();
+            }
+        };
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl(m_registry);
+        manager.setHandlerPoolSize(5);
+        manager.setEventHandler(m_eventHandler);
+        manager.setBroadcastLanes(8);
+        manager.afterPropertiesSet();
+        manager.addEventListener(listener);
+
+        for (long nodeId = 1; nodeId <= numNodes; nodeId++) {
+            manager.broadcastNow(createAlarmEvent(EventConstants.NODE_DOWN_EVENT_UEI, nodeId, 1), false);
+            manager.broadcastNow(createAlarmEvent(EventConstants.NODE_UP_EVENT_UEI, nodeId, 2), false);
+        }
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+
+        for (long nodeId = 1; nodeId <= numNodes; nodeId++) {
+            assertEquals("out of order events for node " + nodeId,
+                    Arrays.asList(EventConstants.NODE_DOWN_EVENT_UEI, EventConstants.NODE_UP_EVENT_UEI),
+                    receivedByKey.get(Long.toString(nodeId)));
+        }
+        manager.removeEventListener(listener);
+
+        // Without a node, the resolution is keyed on the problem it clears
+        final Event problem = createAlarmEvent(EventConstants.NODE_DOWN_EVENT_UEI, 0, 1);
+        problem.setNodeid(null);
+        final Event resolution = createAlarmEvent(EventConstants.NODE_UP_EVENT_UEI, 0, 2);
+        resolution.setNodeid(null);
+        assertEquals(EventIpcManagerDefaultImpl.getOrderingKey(ImmutableMapper.fromMutableEvent(problem)),
+                EventIpcManagerDefaultImpl.getOrderingKey(ImmutableMapper.fromMutableEvent(resolution)));
+    }
+
+    private static Event createAlarmEvent(String uei, long nodeId, int alarmType) {
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setAlarmType(alarmType);
+        alarmData.setReductionKey(uei + "::" + nodeId);
+        if (alarmType == 2) {
+            alarmData.setClearKey(EventConstants.NODE_DOWN_EVENT_UEI + "::" + nodeId);
+        }
+        return new EventBuilder(uei, "testShardedBroadcast")
+                .setNodeid(nodeId)
+                .setAlarmData(alarmData)
+                .getEvent();
+    }
 }
@@ -81,6 +81,10 @@ public class EventUtilHibernateIT {
     @Before
     public void setUp() throws Exception {
     	m_populator.populateDatabase();
+    	// The node IDs are reused across the temporary databases
+    	for (OnmsNode node : m_populator.getNodeDao().findAll()) {
+    	    eventUtilDaoImpl.invalidateNodeCache(node.getId());
+    	}
     }
 
     @Test
@@ -243,6 +247,28 @@ public class EventUtilHibernateIT {
         assertEquals("42", asset);
     }
 
+    @Test
+    @JUnitTemporaryDatabase
+    public void testAssetFieldValueCache() {
+        OnmsNode node1 = m_populator.getNode1();
+        OnmsAssetRecord asset1 = node1.getAssetRecord();
+        asset1.setAdmin("first-admin");
+        m_assetRecordDao.saveOrUpdate(asset1);
+        assertEquals("first-admin", eventUtilDaoImpl.getAssetFieldValue("asset[admin]", node1.getId()));
+
+        // The value is cached until the node is invalidated
+        asset1.setAdmin("second-admin");
+        m_assetRecordDao.saveOrUpdate(asset1);
+        assertEquals("first-admin", eventUtilDaoImpl.getAssetFieldValue("asset[admin]", node1.getId()));
+
+        eventUtilDaoImpl.invalidateNodeCache(node1.getId());
+        assertEquals("second-admin", eventUtilDaoImpl.getAssetFieldValue("asset[admin]", node1.getId()));
+
+        // Unknown fields
+        assertNull(eventUtilDaoImpl.getAssetFieldValue("asset[doesNotExist]", node1.getId()));
+        assertNull(eventUtilDaoImpl.getAssetFieldValue("notAnAsset", node1.getId()));
+    }
+
     @Test
     @JUnitTemporaryDatabase
     public void getHardwareFieldValue() {
@@ -55,6 +55,7 @@ import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpValue;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
 import org.opennms.netmgt.xml.event.Log;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -382,4 +383,45 @@ public class HibernateEventWriterIT {
         assertEquals("event count", new Integer(1), jdbcTemplate.queryForObject("select count(*) from events", Integer.class));
         assertEquals("event service ID", new Integer(serviceId), jdbcTemplate.queryForObject("select serviceID from events", Integer.class));
     }
+
+    /**
+     * Verifies that the write-behind batches are inserted with a constant number of statements,
+     * rather than with one statement per event.
+     */
+    @Test
+    public void testWriteBehindBatchesInserts() throws Exception {
+        final int numEvents = 100;
+        final int serviceId = 1;
+        final String serviceName = "some bogus service";
+        jdbcTemplate.update("insert into service (serviceId, serviceName) values (?, ?)", new Object[] { serviceId, serviceName });
+
+        final HibernateEventWriter writer = (HibernateEventWriter)m_eventWriter;
+        writer.setWriteBehindBatchSize(numEvents);
+        try {
+            final Log log = new Log();
+            log.setEvents(new Events());
+            for (int i = 0; i < numEvents; i++) {
+                final EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "someSource");
+                bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+                bldr.setService(serviceName);
+                bldr.addParam("seq", i);
+                log.getEvents().addEvent(bldr.getEvent());
+            }
+
+            final long statementsBefore = writer.getNumWriteBehindStatements();
+            m_eventWriter.process(log);
+            final long numStatements = writer.getNumWriteBehindStatements() - statementsBefore;
+
+            // The service and the local system are looked up once, followed by the ID allocation
+            // and the batches for the events and their parameters
+            assertEquals(5L, numStatements);
+            for (Event event : log.getEvents().getEventCollection()) {
+                assertTrue(event.getDbid() > 0);
+            }
+            assertEquals("event count", Integer.valueOf(numEvents), jdbcTemplate.queryForObject("select count(*) from events where serviceID = ?", Integer.class, serviceId));
+            assertEquals("parameter count", Integer.valueOf(numEvents), jdbcTemplate.queryForObject("select count(*) from event_parameters where name = 'seq'", Integer.class));
+        } finally {
+            writer.setWriteBehindBatchSize(0);
+        }
+    }
 }
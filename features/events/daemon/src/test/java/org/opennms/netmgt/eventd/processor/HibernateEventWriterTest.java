@@ -35,6 +35,13 @@ import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.netmgt.events.api.EventProcessorException;
@@ -63,6 +70,11 @@ public class HibernateEventWriterTest {
         eventWriter.setTransactionManager(transactionManager);
     }
 
+    @After
+    public void tearDown() {
+        eventWriter.destroy();
+    }
+
     /**
      * Verifies that no transaction is opened when none of the events
      * in the event log need to be persisted.
@@ -116,4 +128,36 @@ public class HibernateEventWriterTest {
         eventWriter.process(log);
         verify(transactionManager, times(1)).execute(any());
     }
+
+    /**
+     * Verifies that the event logs from multiple threads are grouped
+     * into a single transaction when write-behind is enabled.
+     */
+    @Test
+    public void testWriteBehindGroupsLogsIntoSingleTransaction() throws Exception {
+        final int numLogs = 10;
+        eventWriter.setWriteBehindBatchSize(numLogs);
+        eventWriter.setWriteBehindFlushInterval(60000);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(numLogs);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numLogs; i++) {
+                final EventBuilder bldr = new EventBuilder("testUei", "testSource");
+                bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+                futures.add(executor.submit(() -> {
+                    eventWriter.process(bldr.getLog());
+                    return null;
+                }));
+            }
+            // Wait for all of the writes to complete
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(transactionManager, times(1)).execute(any());
+    }
 }
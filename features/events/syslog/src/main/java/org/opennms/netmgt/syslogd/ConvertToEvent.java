@@ -33,6 +33,7 @@ import static org.opennms.core.utils.InetAddressUtils.str;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -59,6 +60,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /**
  * This routine does the majority of Syslogd's work.
@@ -84,6 +87,8 @@ public class ConvertToEvent {
 
     private final Event m_event;
 
+    private static final Interner<String> INTERNED_STRINGS = Interners.newWeakInterner();
+
     private static final LoadingCache<String,Pattern> CACHED_PATTERNS = CacheBuilder.newBuilder().build(
         new CacheLoader<String,Pattern>() {
             public Pattern load(String expression) {
@@ -319,6 +324,13 @@ public class ConvertToEvent {
             message.setHostName(addr.getHostAddress());
         }
 
+        // The same handful of hosts and programs send most of the messages
+        // so share their strings instead of keeping a copy on every event
+        message.setHostName(INTERNED_STRINGS.intern(message.getHostName()));
+        if (message.getProcessName() != null) {
+            message.setProcessName(INTERNED_STRINGS.intern(message.getProcessName()));
+        }
+
         final String priorityTxt = message.getSeverity().toString();
         final String facilityTxt = message.getFacility().toString();
 
@@ -341,10 +353,11 @@ public class ConvertToEvent {
         * node to match against nodeId.
          */
 
-        // Time to verify UEI matching.
-
-        EventBuilder bldr = toEventBuilder(message, systemId, location, receivedTimestamp);
+        // Time to verify UEI matching. This is done before the event is
+        // built so that discarded messages never pay for the node lookup
+        // and parameter conversions.
 
+        final UeiMatchResult ueiMatchResult = new UeiMatchResult();
         final List<UeiMatch> ueiMatch = (config.getUeiList() == null ? Collections.emptyList() : config.getUeiList());
         for (final UeiMatch uei : ueiMatch) {
             final boolean messageMatchesUeiListEntry = containsIgnoreCase(uei.getFacilities(), facilityTxt) &&
@@ -355,11 +368,11 @@ public class ConvertToEvent {
 
             if (messageMatchesUeiListEntry) {
                 if (uei.getMatch().getType().equals("substr")) {
-                    if (matchSubstring(message.getMessage(), uei, bldr, config.getDiscardUei())) {
+                    if (matchSubstring(message.getMessage(), uei, ueiMatchResult, config.getDiscardUei())) {
                         break;
                     }
                 } else if ((uei.getMatch().getType().startsWith("regex"))) {
-                    if (matchRegex(message.getMessage(), uei, bldr, config.getDiscardUei())) {
+                    if (matchRegex(message.getMessage(), uei, ueiMatchResult, config.getDiscardUei())) {
                         break;
                     }
                 }
@@ -396,6 +409,9 @@ public class ConvertToEvent {
             }
         }
 
+        final EventBuilder bldr = toEventBuilder(message, systemId, location, receivedTimestamp);
+        ueiMatchResult.applyTo(bldr);
+
         if (doHide) {
             LOG.debug("Hiding syslog message from Event - May contain sensitive data");
             bldr.setLogMessage(HIDDEN_MESSAGE);
@@ -457,12 +473,12 @@ public class ConvertToEvent {
      * 
      * @param message
      * @param uei
-     * @param bldr
+     * @param result
      * @param discardUei
      * @return
      * @throws MessageDiscardedException
      */
-    private static boolean matchSubstring(String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    private static boolean matchSubstring(String message, final UeiMatch uei, final UeiMatchResult result, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
         if (message.contains(uei.getMatch().getExpression())) {
             if (discardUei.equals(uei.getUei())) {
@@ -471,7 +487,7 @@ public class ConvertToEvent {
             } else {
                 // Update the UEI to the new value
                 if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on substring match, to : {}", uei.getUei());
-                bldr.setUei(uei.getUei());
+                result.uei = uei.getUei();
                 return true;
             }
         } else {
@@ -487,12 +503,12 @@ public class ConvertToEvent {
      * 
      * @param message
      * @param uei
-     * @param bldr
+     * @param result
      * @param discardUei
      * @return
      * @throws MessageDiscardedException
      */
-    private static boolean matchRegex(final String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    private static boolean matchRegex(final String message, final UeiMatch uei, final UeiMatchResult result, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
         final String expression = uei.getMatch().getExpression();
         final Pattern msgPat = getPattern(expression);
@@ -512,7 +528,7 @@ public class ConvertToEvent {
             } else {
                 // Update the UEI to the new value
                 if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on regex match, to : {}", uei.getUei());
-                bldr.setUei(uei.getUei());
+                result.uei = uei.getUei();
             }
 
             if (msgMat.groupCount() > 0) {
@@ -521,7 +537,7 @@ public class ConvertToEvent {
                     if (traceEnabled) LOG.trace("Doing default parameter mappings for this regex match.");
                     for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
                         if (traceEnabled) LOG.trace("Added parm 'group{}' with value '{}' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
-                        bldr.addParam("group"+groupNum, msgMat.group(groupNum));
+                        result.addParam("group"+groupNum, msgMat.group(groupNum));
                     }
                 }
 
@@ -532,7 +548,7 @@ public class ConvertToEvent {
                         String parmName = assignment.getParameterName();
                         String parmValue = msgMat.group(assignment.getMatchingGroup());
                         parmValue = parmValue == null ? "" : parmValue;
-                        bldr.addParam(parmName, parmValue);
+                        result.addParam(parmName, parmValue);
                         if (traceEnabled) {
                             LOG.trace("Added parm '{}' with value '{}' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
                         }
@@ -547,6 +563,30 @@ public class ConvertToEvent {
         return false;
     }
 
+    /**
+     * The outcome of the UEI matching, collected before the {@link EventBuilder}
+     * exists and applied to it once the message is known not to be discarded.
+     */
+    private static class UeiMatchResult {
+        private String uei;
+        private final List<String> paramNames = new ArrayList<>(0);
+        private final List<String> paramValues = new ArrayList<>(0);
+
+        private void addParam(final String name, final String value) {
+            paramNames.add(name);
+            paramValues.add(value);
+        }
+
+        private void applyTo(final EventBuilder bldr) {
+            if (uei != null) {
+                bldr.setUei(uei);
+            }
+            for (int i = 0; i < paramNames.size(); i++) {
+                bldr.addParam(paramNames.get(i), paramValues.get(i));
+            }
+        }
+    }
+
     /**
      * <p>getEvent</p>
      *
@@ -77,4 +77,15 @@ public interface ParserStage {
 	 * that the next stage can continue processing.
 	 */
 	ParserState apply(ParserState state);
+
+	/**
+	 * Process the state for this stage without copying it first. The
+	 * buffer position and message of the given state are updated directly
+	 * so callers that need to backtrack must pass a {@link ParserState#clone()}.
+	 * 
+	 * @return The same state if the stage matched, otherwise {@code null}
+	 */
+	default ParserState applyInPlace(ParserState state) {
+		return apply(state);
+	}
 }
\ No newline at end of file
@@ -37,7 +37,6 @@ import java.util.EmptyStackException;
 import java.util.List;
 import java.util.Objects;
 import java.util.Stack;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -84,49 +83,67 @@ public class ParserStageSequenceBuilder {
 	}
 
 	/**
-	 * The state of an individual {@link ParserStage} operation.
+	 * The state of an individual {@link ParserStage} operation. Stages run
+	 * to completion one at a time on the parsing thread so a single instance
+	 * per thread is {@link #reset(ByteBuffer)} and reused for every stage.
 	 */
 	private static class ParserStageState {
-		public final ByteBuffer buffer;
+
+		/**
+		 * Don't hold on to accumulators that grew beyond this size after
+		 * parsing an unusually large message.
+		 */
+		private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+		private static final ThreadLocal<ParserStageState> STATES = ThreadLocal.withInitial(ParserStageState::new);
+
+		public ByteBuffer buffer;
 
 		private StringBuilder accumulatedValue = null;
-		private AtomicInteger accumulatedSize = null;
+		private int accumulatedSize = 0;
 
 		// Only used by MatchMonth
 		public RadixTreeNode<CharacterWithValue> currentNode = null; 
 
-		public ParserStageState(ByteBuffer input) {
-			buffer = input;
-		}
-
-		public void accumulate(char c) {
-			accessAccumulatedValue().append(c);
-			accessAccumulatedSize().incrementAndGet();
+		public static ParserStageState forBuffer(ByteBuffer input) {
+			return STATES.get().reset(input);
 		}
 
-		public int getAccumulatedSize() {
-			return accessAccumulatedSize().get();
+		private ParserStageState reset(ByteBuffer input) {
+			buffer = input;
+			if (accumulatedValue != null) {
+				if (accumulatedValue.capacity() > MAX_RETAINED_CAPACITY) {
+					accumulatedValue = null;
+				} else {
+					accumulatedValue.setLength(0);
+				}
+			}
+			accumulatedSize = 0;
+			currentNode = null;
+			return this;
 		}
 
-		private final StringBuilder accessAccumulatedValue() {
+		public void accumulate(char c) {
 			if (accumulatedValue == null) {
 				accumulatedValue = new StringBuilder();
 			}
-			return accumulatedValue;
+			accumulatedValue.append(c);
+			accumulatedSize++;
 		}
 
-		private final AtomicInteger accessAccumulatedSize() {
-			if (accumulatedSize == null) {
-				accumulatedSize = new AtomicInteger();
-			}
+		public int getAccumulatedSize() {
 			return accumulatedSize;
 		}
 
+		public String getAccumulatedValue() {
+			return accumulatedSize > 0 ? accumulatedValue.toString() : null;
+		}
+
 		@Override
 		public String toString() {
 			return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
-				.append("accumulatedValue", accumulatedValue == null ? "null" : accumulatedValue.toString())
-				.append("accumulatedSize", accumulatedSize == null ? 0 : accumulatedSize.get())
+				.append("accumulatedValue", accumulatedSize > 0 ? accumulatedValue.toString() : "null")
+				.append("accumulatedSize", accumulatedSize)
 				.toString();
 		}
 	}
@@ -340,17 +357,21 @@ public class ParserStageSequenceBuilder {
 		public final ParserState apply(final ParserState incomingState) {
 			if (incomingState == null) {
 				return null;
-			} else {
-				LOG.trace("Starting stage: " + this);
 			}
+			return applyInPlace(incomingState.clone());
+		}
 
-			ParserState state = incomingState.clone();
+		@Override
+		public final ParserState applyInPlace(final ParserState state) {
+			if (state == null) {
+				return null;
+			} else if (LOG.isTraceEnabled()) {
+				LOG.trace("Starting stage: {}", this);
+			}
 
-			// Create a new state for the current ParserStage.
-			// Use ByteBuffer.duplicate() to create a buffer with marks
-			// and positions that only this stage will use.
-//			ParserStageState stageState = new ParserStageState(state.getBuffer().duplicate()); 
-			ParserStageState stageState = new ParserStageState(state.getBuffer()); 
+			// Consume the state's own buffer: callers that need to retain the
+			// original position must pass a ParserState#clone() instead
+			final ParserStageState stageState = ParserStageState.forBuffer(state.getMutableBuffer());
 
 			while(true) {
 				stageState.buffer.mark();
@@ -368,7 +389,7 @@ public class ParserStageSequenceBuilder {
 //						reset(stageState);
 
 						LOG.trace("End of buffer with terminal match");
-						return new ParserState(stageState.buffer, state.message);
+						return state;
 					} else if (m_optional) {
 //						// TODO: Should we reset the buffer here? It probably
 //						// doesn't matter since we're at the end of the buffer.
@@ -378,10 +399,10 @@ public class ParserStageSequenceBuilder {
 //						reset(stageState);
 
 						LOG.trace("End of buffer with optional match");
-						return new ParserState(stageState.buffer, state.message);
+						return state;
 					} else {
 						// Reached end of buffer, match failed
-						LOG.trace("Parse failed due to buffer underflow: " + this);
+						LOG.trace("Parse failed due to buffer underflow: {}", this);
 						return null;
 					}
 				}
@@ -403,7 +424,7 @@ public class ParserStageSequenceBuilder {
 //						// Reset any local state if necessary
 //						reset(stageState);
 
-						return new ParserState(stageState.buffer, state.message);
+						return state;
 					case COMPLETE_WITHOUT_CONSUMING:
 						if (m_resultConsumer != null) {
 							try {
@@ -421,7 +442,7 @@ public class ParserStageSequenceBuilder {
 						// Move the mark back before the current character
 						stageState.buffer.reset();
 
-						return new ParserState(stageState.buffer, state.message);
+						return state;
 					case CANCEL:
 						if (m_optional) {
 							stageState.buffer.reset();
@@ -429,7 +450,7 @@ public class ParserStageSequenceBuilder {
 							// Reset any local state if necessary
 							reset(stageState);
 
-							return new ParserState(stageState.buffer, state.message);
+							return state;
 						} else {
 							// Match failed
 							LOG.trace("Parse failed: {}", this);
@@ -452,12 +473,7 @@ public class ParserStageSequenceBuilder {
 		}
 
 		protected static String getAccumulatedValue(ParserStageState state) {
-			final StringBuilder accumulatedValue = state.accumulatedValue;
-			if (accumulatedValue == null) {
-				return null;
-			} else {
-				return accumulatedValue.toString();
-			}
+			return state.getAccumulatedValue();
 		}
 
 		protected R getValue(ParserStageState state) {
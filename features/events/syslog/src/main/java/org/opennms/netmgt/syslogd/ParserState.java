@@ -62,6 +62,14 @@ public class ParserState implements Cloneable {
 		return buffer.asReadOnlyBuffer();
 	}
 
+	/**
+	 * @return The underlying buffer so that stages applied in place can
+	 * advance its position
+	 */
+	ByteBuffer getMutableBuffer() {
+		return buffer;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this)
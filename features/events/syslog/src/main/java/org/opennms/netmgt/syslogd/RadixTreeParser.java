@@ -30,9 +30,10 @@ package org.opennms.netmgt.syslogd;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 import org.opennms.core.collections.RadixTree;
@@ -45,20 +46,17 @@ import org.slf4j.LoggerFactory;
  * <p>This class uses a {@link RadixTree} to store a tree of parser stages.
  * Each leaf node of the tree represents a complete parse of an incoming
  * message. To parse incoming {@link ByteBuffer} messages, the {@link RadixTree}
- * is traversed and each stage is added as a future processing step. When a leaf node 
- * is reached and returns a non-null result, ie. a complete parse, that result is 
- * returned as the parse result.</p>
+ * is traversed depth-first and each stage is applied to the parser state in place.
+ * The first leaf node that returns a non-null result, ie. a complete parse, is
+ * returned as the parse result and the remaining branches are never evaluated.</p>
  * 
  * <p>You can teach the parser new {@link ParserStage} sequences by using the 
  * {@link #teach(ParserStage[])} method. This will add the stages to the {@link RadixTree}.</p>
  * 
- * <p>TODO: Make the parser tree construction phased or asynchronous so that tree 
- * nodes are added as-needed to complete the parse. In many cases, the first
- * several branches of the tree will result in a complete parse, making it unnecessary
- * to add all possible branches to the execution tree.</p>
- * 
- * <p>TODO: Allow cancellation of in-progress branches when the first non-null result
- * is obtained.</p>
+ * <p>The parser state is only cloned where the tree branches so that each sibling
+ * starts from the same buffer position and message contents. Sequences of
+ * single-child nodes are collapsed by {@link #performEdgeCompression()} and run
+ * without any copying at all.</p>
  * 
  * <p>TODO: Score and sort parse branches based on successful parses. If a particular parse
  * branch is successful, we should have a way to increment a score on the stages in
@@ -153,9 +151,20 @@ public class RadixTreeParser implements ByteBufferParser<SyslogMessage> {
 
 		@Override
 		public ParserState apply(ParserState state) {
+			if (state == null) {
+				return null;
+			}
+			return applyInPlace(state.clone());
+		}
+
+		@Override
+		public ParserState applyInPlace(ParserState state) {
 			ParserState currentState = state;
 			for (ParserStage member : members) {
-				currentState = member.apply(currentState);
+				currentState = member.applyInPlace(currentState);
+				if (currentState == null) {
+					return null;
+				}
 			}
 			return currentState;
 		}
@@ -182,92 +191,53 @@ public class RadixTreeParser implements ByteBufferParser<SyslogMessage> {
 
 	@Override
 	public CompletableFuture<SyslogMessage> parse(ByteBuffer incoming) {
-		ParserState state = new ParserState(incoming);
-
-		// TODO: Use better collection than ArrayList?
-		// We have to make sure that this list maintains the insertion order
-		// so that the first future that completes is definitely returned by
-		// {@link RadixTreeParser#firstNonNullResult()}
-		final List<CompletableFuture<ParserState>> finishedFutures = new ArrayList<>();
-
-		// Top of future tree is parser state
-		final CompletableFuture<ParserState> parent = CompletableFuture.completedFuture(state);
-
-		// Recursively construct the parser tree
-		addStageFutures(finishedFutures, parent, tree);
-
-		return firstNonNullResult(finishedFutures).thenApply(s -> {
-			if (s == null) {
-				return null;
-			} else {
-				return s.message;
-			}
-		});
+		// Stages advance the buffer in place so work on a private duplicate
+		final ParserState state = parse(tree, new ParserState(incoming.duplicate()));
+		if (state == null) {
+			LOG.debug("All parse branches completed with a null result");
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.completedFuture(state.message);
 	}
 
 	/**
+	 * Apply the node's stage to the state and then descend into its children
+	 * in insertion order, returning the state of the first leaf that matches.
+	 * 
 	 * TODO: Use a visitor pattern instead?
 	 */
-	private static void addStageFutures(List<CompletableFuture<ParserState>> finishedFutures, CompletableFuture<ParserState> parent, RadixTreeNode<ParserStage> node) {
-		final CompletableFuture<ParserState> current;
-
-		// If we're at the root of the radix tree (where the content is null), 
-		// use the parent future as the current future
-		if (node.getContent() == null) {
-			current = parent;
-		} else {
-			// Otherwise, apply the current node's stage to the parent
-			current = parent.thenApply(s -> { return node.getContent().apply(s); });
-		}
-
-		// If the node has children, then recursively process the children. Do not
-		// add the current node to the finished futures list: we're only concerned
-		// with seeing if the leaf nodes complete, not the intermediate stages
-		if (node.getChildren() != null && node.getChildren().size() > 0) {
-			for (RadixTreeNode<ParserStage> child : node.getChildren()) {
-				addStageFutures(finishedFutures, current, child);
+	private static ParserState parse(RadixTreeNode<ParserStage> node, ParserState state) {
+		ParserState current = state;
+
+		// The root of the radix tree has no content
+		if (node.getContent() != null) {
+			try {
+				current = node.getContent().applyInPlace(state);
+			} catch (RuntimeException e) {
+				LOG.trace("Parse branch failed: {}", node.getContent(), e);
+				return null;
+			}
+			if (current == null) {
+				return null;
 			}
-		} else {
-			// If the node is a leaf node, then add it to the list of futures
-			// that need to be evaluated as part of the parse tree
-			finishedFutures.add(current);
 		}
-	}
-
-	private static <T> CompletableFuture<T> firstNonNullResult(List<? extends CompletionStage<T>> futures) {
 
-		CompletableFuture<T> parent = new CompletableFuture<>();
+		final Set<RadixTreeNode<ParserStage>> children = node.getChildren();
+		if (children == null || children.isEmpty()) {
+			// Leaf node: this is a complete parse
+			return current;
+		}
 
-		CompletableFuture.allOf(
-			futures.stream().map(
-				s -> s.thenAccept(t -> {
-//					System.out.println("VALUE " + t);
-					// After each stage completes, if its result is non-null
-					// then complete the parent future
-					if (t != null) {
-						if (!parent.complete(t)) {
-							LOG.trace("More than one future completed with a non-null result");
-						} else {
-							LOG.trace("Non-null result returned");
-						}
-					}
-				})
-			).toArray(
-				CompletableFuture<?>[]::new
-			)
-		).exceptionally(ex -> {
-			// If all futures complete exceptionally, mark this future as exceptional as well
-//			parent.completeExceptionally(ex);
-			parent.complete(null);
-			return null;
-		}).thenAccept(v -> {
-			// If the parent isn't complete yet, then all children returned null so just
-			// complete with null
-			if (parent.complete(null)) {
-				LOG.debug("All futures completed with a null result");
+		final Iterator<RadixTreeNode<ParserStage>> iterator = children.iterator();
+		while (iterator.hasNext()) {
+			final RadixTreeNode<ParserStage> child = iterator.next();
+			// Every branch but the last gets its own copy of the state so
+			// that a failed branch doesn't affect its siblings
+			final ParserState result = parse(child, iterator.hasNext() ? current.clone() : current);
+			if (result != null) {
+				return result;
 			}
-		});
-
-		return parent;
+		}
+		return null;
 	}
 }
@@ -48,24 +48,24 @@ public class SingleSequenceParser implements ByteBufferParser<SyslogMessage> {
 	@Override
 	public CompletableFuture<SyslogMessage> parse(ByteBuffer incoming) {
 
-		// Put all mutable parts of the parse operation into a state object
-		final ParserState state = new ParserState(incoming);
-
-		CompletableFuture<ParserState> future = CompletableFuture.completedFuture(state);
+		// Put all mutable parts of the parse operation into a state object,
+		// stages advance a private duplicate of the incoming buffer
+		ParserState state = new ParserState(incoming.duplicate());
 
 		// Apply each parse stage to the message
-		for (ParserStage stage : m_stages) {
-			future = future.thenApply(stage::apply);
+		try {
+			for (ParserStage stage : m_stages) {
+				state = stage.applyInPlace(state);
+				if (state == null) {
+					return CompletableFuture.completedFuture(null);
+				}
+			}
+		} catch (RuntimeException e) {
+			final CompletableFuture<SyslogMessage> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
 		}
 
-		//future.exceptionally(e -> { /* DO SOMETHING */ return null; });
-
-		return future.thenApply(s -> {
-			if (s == null) {
-				return null;
-			} else {
-				return s.message;
-			}
-		});
+		return CompletableFuture.completedFuture(state.message);
 	}
 }
@@ -83,6 +83,9 @@ public class SyslogMessage implements Cloneable {
     private ZoneId m_zoneId;
 
     private String m_hostname;
+    // Resolved on first use and kept until the host name changes
+    private InetAddress m_hostAddress;
+    private boolean m_hostAddressResolved = false;
     private String m_processName;
     private String m_processId;
     private String m_messageId;
@@ -268,9 +271,24 @@ public class SyslogMessage implements Cloneable {
     
     public void setHostName(final String hostname) {
         m_hostname = hostname;
+        m_hostAddress = null;
+        m_hostAddressResolved = false;
     }
 
+    /**
+     * Resolve the host name of the message. The result (including a failed
+     * resolution) is cached so that the address can be used repeatedly while
+     * matching and building the event without additional lookups.
+     */
     public InetAddress getHostAddress() {
+        if (!m_hostAddressResolved) {
+            m_hostAddress = resolveHostAddress();
+            m_hostAddressResolved = true;
+        }
+        return m_hostAddress;
+    }
+
+    private InetAddress resolveHostAddress() {
         if (m_hostname != null) {
             try {
                 return InetAddress.getByName(m_hostname);
@@ -63,6 +63,39 @@ public class BufferParserTest {
 		assertEquals(0, new RadixTreeParser().size());
 	}
 
+	/**
+	 * Make sure that a branch that fails part way through doesn't leak
+	 * its partial results into a sibling branch or move the caller's buffer.
+	 */
+	@Test
+	public void testRadixTreeParserBacktracking() throws Exception {
+		final RadixTreeParser radixParser = new RadixTreeParser();
+		radixParser.teach(new ParserStageSequenceBuilder()
+			.stringUntilWhitespace((s,v) -> { s.message.setProcessName(v); })
+			.whitespace()
+			.character('X')
+			.terminal().string((s,v) -> { s.message.setMessage(v); })
+			.getStages().toArray(new ParserStage[0]));
+		radixParser.teach(new ParserStageSequenceBuilder()
+			.stringUntilWhitespace((s,v) -> { s.message.setHostName(v); })
+			.whitespace()
+			.terminal().string((s,v) -> { s.message.setMessage(v); })
+			.getStages().toArray(new ParserStage[0]));
+		radixParser.performEdgeCompression();
+
+		final ByteBuffer incoming = ByteBuffer.wrap("myhost hello world".getBytes(StandardCharsets.US_ASCII));
+		final SyslogMessage message = radixParser.parse(incoming).get();
+
+		assertNotNull(message);
+		assertEquals("myhost", message.getHostName());
+		assertEquals("hello world", message.getMessage());
+		assertNull(message.getProcessName());
+		assertEquals(0, incoming.position());
+
+		// Nothing matches
+		assertNull(radixParser.parse(ByteBuffer.wrap("myhost".getBytes(StandardCharsets.US_ASCII))).get());
+	}
+
 	@Test
 	public void testDifferentImplementations() throws Exception {
 
@@ -36,7 +36,6 @@ import java.util.Objects;
 import java.util.Optional;
 
 import org.opennms.core.utils.InetAddressUtils;
-import org.opennms.netmgt.config.api.EventConfDao;
 import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.MonitoringLocationDao;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -46,19 +45,38 @@ import org.opennms.netmgt.snmp.SnmpObjId;
 import org.opennms.netmgt.snmp.SnmpResult;
 import org.opennms.netmgt.snmp.SnmpValue;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 class EventCreator {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(EventCreator.class);
 
+    /**
+     * Maximum number of varbind OIDs for which a decoder is kept.
+     */
+    private static final long VARBIND_DECODER_CACHE_SIZE = 10000;
+
     private final InterfaceToNodeCache cache;
-    private final EventConfDao eventConfDao;
+    private final TrapIdentityCache identityCache;
 
-    public EventCreator(InterfaceToNodeCache cache, EventConfDao eventConfDao) {
+    private final LoadingCache<SnmpObjId, VarbindDecoder> varbindDecoders = CacheBuilder.newBuilder()
+            .maximumSize(VARBIND_DECODER_CACHE_SIZE)
+            .build(new CacheLoader<SnmpObjId, VarbindDecoder>() {
+                @Override
+                public VarbindDecoder load(SnmpObjId name) {
+                    return new VarbindDecoder(name);
+                }
+            });
+
+    public EventCreator(InterfaceToNodeCache cache, TrapIdentityCache identityCache) {
         this.cache = Objects.requireNonNull(cache);
-        this.eventConfDao = Objects.requireNonNull(eventConfDao);
+        this.identityCache = Objects.requireNonNull(identityCache);
     }
 
     public Event createEventFrom(final TrapDTO trapDTO, final String systemId, final String location, final InetAddress trapAddress) {
@@ -85,10 +103,10 @@ class EventCreator {
 
         // Handle var bindings
         for (SnmpResult eachResult : trapDTO.getResults()) {
-            final SnmpObjId name = eachResult.getBase();
+            final VarbindDecoder decoder = varbindDecoders.getUnchecked(eachResult.getBase());
             final SnmpValue value = eachResult.getValue();
-            eventBuilder.addParam(SyntaxToEvent.processSyntax(name.toString(), value));
-            if (EventConstants.OID_SNMP_IFINDEX.isPrefixOf(name)) {
+            eventBuilder.addParam(decoder.decode(value));
+            if (decoder.ifIndex) {
                 eventBuilder.setIfIndex(value.toInt());
             }
         }
@@ -106,12 +124,7 @@ class EventCreator {
 
         // Get event template and set uei, if unknown
         final Event event = eventBuilder.getEvent();
-        final org.opennms.netmgt.xml.eventconf.Event econf = eventConfDao.findByEvent(event);
-        if (econf == null || econf.getUei() == null) {
-            event.setUei("uei.opennms.org/default/trap");
-        } else {
-            event.setUei(econf.getUei());
-        }
+        event.setUei(identityCache.getUei(event));
         return event;
     }
 
@@ -123,4 +136,37 @@ class EventCreator {
         }
         return cache.getFirstNodeId(location, trapAddress);
     }
+
+    /**
+     * Everything about the conversion of a varbind into an event parameter
+     * that only depends on its OID and on the syntax of its value.
+     */
+    private static class VarbindDecoder {
+        /**
+         * The event type of each SNMP syntax, indexed by its tag.
+         */
+        private static final String[] TYPES = new String[256];
+
+        static {
+            for (int i = 0; i < TYPES.length; i++) {
+                TYPES[i] = SyntaxToEvent.getTypeFor(i);
+            }
+        }
+
+        private final String name;
+        private final String displayableEncoding;
+        private final boolean ifIndex;
+
+        private VarbindDecoder(SnmpObjId oid) {
+            name = oid.toString();
+            displayableEncoding = SyntaxToEvent.getDisplayableEncodingFor(name);
+            ifIndex = EventConstants.OID_SNMP_IFINDEX.isPrefixOf(oid);
+        }
+
+        private Parm decode(SnmpValue value) {
+            final int syntax = value.getType();
+            final String type = syntax >= 0 && syntax < TYPES.length ? TYPES[syntax] : SyntaxToEvent.getTypeFor(syntax);
+            return SyntaxToEvent.processSyntax(name, type, displayableEncoding, value);
+        }
+    }
 }
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Folds identical trap events received within a window into a single event.
+ *
+ * The first event of a window is always forwarded right away. Any identical
+ * event received before the window closes is suppressed, and when the window
+ * closes the most recent of these is sent on with a {@value #DEDUPE_COUNT_PARM}
+ * parameter holding the number of suppressed events.
+ *
+ * Events are considered identical when they come from the same agent with the
+ * same UEI, trap identity, community and varbind values. The sysUpTime varbind
+ * is ignored since it differs for every trap.
+ */
+class TrapDeduplicator implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrapDeduplicator.class);
+
+    public static final String DEDUPE_COUNT_PARM = "dedupeCount";
+
+    private static final String SYSUPTIME_OID = ".1.3.6.1.2.1.1.3.0";
+
+    private final long windowNanos;
+
+    private final Consumer<Event> summaryConsumer;
+
+    private final TrapdInstrumentation instrumentation;
+
+    private final Map<List<Object>, Window> windows = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    TrapDeduplicator(long windowMs, Consumer<Event> summaryConsumer, TrapdInstrumentation instrumentation) {
+        if (windowMs <= 0) {
+            throw new IllegalArgumentException("Window must be strictly positive: " + windowMs);
+        }
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.summaryConsumer = Objects.requireNonNull(summaryConsumer);
+        this.instrumentation = Objects.requireNonNull(instrumentation);
+
+        // Check twice per window so that summaries are at most half a window late
+        final long period = Math.max(1, windowMs / 2);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("trapd-dedupe-%d")
+                .setDaemon(true)
+                .build());
+        scheduler.scheduleAtFixedRate(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public long getWindowMs() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+    }
+
+    /**
+     * @return true if the event should be forwarded, false if it was folded
+     * into an earlier one
+     */
+    public boolean accept(final Event event) {
+        final List<Object> key = keyOf(event);
+        final long now = System.nanoTime();
+
+        final Window[] expired = new Window[1];
+        final boolean[] forward = new boolean[1];
+        windows.compute(key, (k, window) -> {
+            if (window != null && now - window.start < windowNanos) {
+                window.last = event;
+                window.suppressed++;
+                return window;
+            }
+            expired[0] = window;
+            forward[0] = true;
+            return new Window(now);
+        });
+
+        if (expired[0] != null) {
+            // The previous window of this key closed but wasn't flushed yet
+            emitSummary(expired[0]);
+        }
+        if (!forward[0]) {
+            instrumentation.incDeduplicatedCount();
+        }
+        return forward[0];
+    }
+
+    private void flushExpired() {
+        try {
+            flush(System.nanoTime(), false);
+        } catch (Throwable t) {
+            LOG.warn("Failed to flush the deduplicated traps.", t);
+        }
+    }
+
+    private void flush(final long now, final boolean all) {
+        final List<Window> expired = new ArrayList<>();
+        for (final List<Object> key : windows.keySet()) {
+            windows.computeIfPresent(key, (k, window) -> {
+                if (all || now - window.start >= windowNanos) {
+                    expired.add(window);
+                    return null;
+                }
+                return window;
+            });
+        }
+        expired.forEach(this::emitSummary);
+    }
+
+    private void emitSummary(final Window window) {
+        if (window.suppressed == 0) {
+            return;
+        }
+        final Event event = window.last;
+        event.addParm(new Parm(DEDUPE_COUNT_PARM, Integer.toString(window.suppressed)));
+        LOG.debug("Sending event {} in place of {} duplicate traps", event.getUei(), window.suppressed);
+        summaryConsumer.accept(event);
+    }
+
+    /**
+     * Stops the window expiration and sends the summaries of all of the open windows.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(System.nanoTime(), true);
+    }
+
+    private static List<Object> keyOf(final Event event) {
+        final List<Object> key = new ArrayList<>();
+        key.add(event.getUei());
+        key.add(event.getDistPoller());
+        key.add(event.getInterface());
+        key.add(event.getHost());
+        final Snmp snmp = event.getSnmp();
+        if (snmp != null) {
+            key.add(snmp.getId());
+            key.add(snmp.getGeneric());
+            key.add(snmp.getSpecific());
+            key.add(snmp.getCommunity());
+            key.add(snmp.getVersion());
+        }
+        for (final Parm parm : event.getParmCollection()) {
+            if (SYSUPTIME_OID.equals(parm.getParmName())) {
+                continue;
+            }
+            key.add(parm.getParmName());
+            key.add(parm.getValue() != null ? parm.getValue().getContent() : null);
+        }
+        return key;
+    }
+
+    private static class Window {
+        private final long start;
+        private Event last;
+        private int suppressed = 0;
+
+        private Window(final long start) {
+            this.start = start;
+        }
+    }
+}
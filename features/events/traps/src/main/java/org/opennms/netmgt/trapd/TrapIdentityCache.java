@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.opennms.netmgt.config.api.EventConfDao;
+import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.LogDestType;
+import org.opennms.netmgt.xml.eventconf.Logmsg;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the outcome of the event configuration lookups performed for every trap:
+ * the UEI of the matching event definition and whether the trap should be discarded.
+ *
+ * Entries are keyed by the trap identity and by the agent, i.e. all of the fields of the
+ * event that can be referenced by a mask element other than the varbinds. Traps that
+ * could be matched by an event definition with a varbind (or parm) mask therefore always
+ * go to the event configuration. Such definitions are only tolerated when their mask
+ * names the enterprise ids they apply to, otherwise the cache is bypassed altogether.
+ *
+ * The cache is cleared whenever the event configuration is reloaded or modified.
+ */
+class TrapIdentityCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrapIdentityCache.class);
+
+    /**
+     * System property used to override the maximum number of entries kept in the
+     * cache. Set to 0 to disable the cache.
+     */
+    public static final String CACHE_SIZE_SYS_PROP = "org.opennms.trapd.identityCache.size";
+
+    public static final long DEFAULT_CACHE_SIZE = 10000;
+
+    public static final String DEFAULT_TRAP_UEI = "uei.opennms.org/default/trap";
+
+    private final EventConfDao eventConfDao;
+
+    private final TrapdInstrumentation instrumentation;
+
+    private final Cache<Key, Match> cache;
+
+    private volatile Revision revision = new Revision(null, 0, null);
+
+    TrapIdentityCache(EventConfDao eventConfDao, TrapdInstrumentation instrumentation) {
+        this(eventConfDao, instrumentation, Long.getLong(CACHE_SIZE_SYS_PROP, DEFAULT_CACHE_SIZE));
+    }
+
+    TrapIdentityCache(EventConfDao eventConfDao, TrapdInstrumentation instrumentation, long cacheSize) {
+        this.eventConfDao = Objects.requireNonNull(eventConfDao);
+        this.instrumentation = Objects.requireNonNull(instrumentation);
+        this.cache = cacheSize > 0 ? CacheBuilder.newBuilder().maximumSize(cacheSize).build() : null;
+    }
+
+    /**
+     * @return the UEI of the event definition matching the given trap event,
+     * or {@link #DEFAULT_TRAP_UEI} if there is none
+     */
+    public String getUei(final Event event) {
+        final Revision current = cache != null ? checkRevision() : null;
+        final Key key = keyOf(event, current);
+        if (key == null) {
+            instrumentation.incIdentityCacheMissCount();
+            return findUei(event);
+        }
+
+        final Match cached = cache.getIfPresent(key);
+        if (cached != null) {
+            instrumentation.incIdentityCacheHitCount();
+            return cached.uei;
+        }
+
+        instrumentation.incIdentityCacheMissCount();
+        final Match match = new Match(findUei(event));
+        putIfCurrent(key, match, current);
+        return match.uei;
+    }
+
+    /**
+     * Caches a match that was looked up against the given revision, unless the
+     * event configuration changed in the meantime. This is done while holding
+     * the lock used by {@link #updateRevision()} so that a lookup that was in
+     * flight when the cache was cleared can't put a stale entry back.
+     */
+    private synchronized void putIfCurrent(final Key key, final Match match, final Revision lookedUp) {
+        if (revision == lookedUp && lookedUp.isCurrent(eventConfDao.getRootEvents())) {
+            cache.put(key, match);
+        }
+    }
+
+    /**
+     * @param event the trap event, with the UEI returned by {@link #getUei(Event)}
+     * @return true if the event definition of the trap asks for it to be discarded
+     */
+    public boolean shouldDiscard(final Event event) {
+        final Key key = cache != null ? keyOf(event, checkRevision()) : null;
+        final Match match = key != null ? cache.getIfPresent(key) : null;
+        if (match == null) {
+            return findDiscard(event);
+        }
+
+        // The discard flag is resolved against the event with its UEI
+        // set, so it is filled in on first use
+        Boolean discard = match.discard;
+        if (discard == null) {
+            discard = findDiscard(event);
+            match.discard = discard;
+        }
+        return discard;
+    }
+
+    private String findUei(final Event event) {
+        final org.opennms.netmgt.xml.eventconf.Event econf = eventConfDao.findByEvent(event);
+        if (econf == null || econf.getUei() == null) {
+            return DEFAULT_TRAP_UEI;
+        }
+        return econf.getUei();
+    }
+
+    private boolean findDiscard(final Event event) {
+        final org.opennms.netmgt.xml.eventconf.Event econf = eventConfDao.findByEvent(event);
+        if (econf != null) {
+            final Logmsg logmsg = econf.getLogmsg();
+            return logmsg != null && LogDestType.DISCARDTRAPS.equals(logmsg.getDest());
+        }
+        return false;
+    }
+
+    /**
+     * @return the key of the event, or null if its lookups can't be cached
+     */
+    private Key keyOf(final Event event, final Revision current) {
+        if (cache == null || event.getSnmp() == null) {
+            return null;
+        }
+
+        final Set<String> sensitiveIds = current.varbindSensitiveIds;
+        if (sensitiveIds == null || sensitiveIds.contains(event.getSnmp().getId())) {
+            return null;
+        }
+        return new Key(event);
+    }
+
+    private Revision checkRevision() {
+        final Revision current = revision;
+        if (current.isCurrent(eventConfDao.getRootEvents())) {
+            return current;
+        }
+        return updateRevision();
+    }
+
+    private synchronized Revision updateRevision() {
+        final Events root = eventConfDao.getRootEvents();
+        if (revision.isCurrent(root)) {
+            return revision;
+        }
+
+        cache.invalidateAll();
+        final Revision updated = root == null
+                ? new Revision(null, 0, null)
+                : new Revision(root, root.getRevision(), findVarbindSensitiveIds(root));
+        revision = updated;
+        LOG.debug("Event configuration changed, cleared the trap identity cache. Varbind sensitive enterprise ids: {}", updated.varbindSensitiveIds);
+        return updated;
+    }
+
+    /**
+     * @return the enterprise ids of all of the definitions that match on varbinds,
+     * or null if any of these definitions isn't limited to a literal set of ids
+     */
+    static Set<String> findVarbindSensitiveIds(final Events root) {
+        final List<org.opennms.netmgt.xml.eventconf.Event> events = new ArrayList<>();
+        root.forEachEvent(events, (accum, econf) -> {
+            accum.add(econf);
+            return accum;
+        });
+
+        final Set<String> ids = new HashSet<>();
+        for (final org.opennms.netmgt.xml.eventconf.Event econf : events) {
+            final Mask mask = econf.getMask();
+            if (mask == null || !isVarbindSensitive(mask)) {
+                continue;
+            }
+            final List<String> values = mask.getMaskElementValues(Maskelement.TAG_SNMP_EID);
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            for (final String value : values) {
+                if (value.startsWith("~") || value.endsWith("%")) {
+                    return null;
+                }
+                ids.add(value);
+            }
+        }
+        return ids;
+    }
+
+    private static boolean isVarbindSensitive(final Mask mask) {
+        if (!mask.getVarbinds().isEmpty()) {
+            return true;
+        }
+        for (final Maskelement element : mask.getMaskelements()) {
+            if (element.getMename().startsWith("parm[")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The version of the event configuration the cached entries were derived from.
+     */
+    private static final class Revision {
+        private final Events root;
+        private final int revision;
+        /**
+         * Enterprise ids referenced by definitions which match on varbinds, or null if
+         * such a definition may apply to any enterprise id.
+         */
+        private final Set<String> varbindSensitiveIds;
+
+        private Revision(final Events root, final int revision, final Set<String> varbindSensitiveIds) {
+            this.root = root;
+            this.revision = revision;
+            this.varbindSensitiveIds = varbindSensitiveIds;
+        }
+
+        private boolean isCurrent(final Events currentRoot) {
+            return currentRoot == root && (root == null || root.getRevision() == revision);
+        }
+    }
+
+    private static final class Match {
+        private final String uei;
+        private volatile Boolean discard;
+
+        private Match(final String uei) {
+            this.uei = uei;
+        }
+    }
+
+    /**
+     * The fields of a trap event which can be referenced by mask elements.
+     */
+    private static final class Key {
+        private final String source;
+        private final String enterpriseId;
+        private final Integer generic;
+        private final Integer specific;
+        private final String community;
+        private final String host;
+        private final String snmpHost;
+        private final String ipInterface;
+        private final Long nodeId;
+        private final int hashCode;
+
+        private Key(final Event event) {
+            final Snmp snmp = event.getSnmp();
+            source = event.getSource();
+            enterpriseId = snmp.getId();
+            generic = snmp.getGeneric();
+            specific = snmp.getSpecific();
+            community = snmp.getCommunity();
+            host = event.getHost();
+            snmpHost = event.getSnmphost();
+            ipInterface = event.getInterface();
+            nodeId = event.getNodeid();
+            hashCode = Objects.hash(source, enterpriseId, generic, specific, community, host, snmpHost, ipInterface, nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && Objects.equals(enterpriseId, other.enterpriseId)
+                    && Objects.equals(generic, other.generic)
+                    && Objects.equals(specific, other.specific)
+                    && Objects.equals(host, other.host)
+                    && Objects.equals(snmpHost, other.snmpHost)
+                    && Objects.equals(ipInterface, other.ipInterface)
+                    && Objects.equals(nodeId, other.nodeId)
+                    && Objects.equals(community, other.community)
+                    && Objects.equals(source, other.source);
+        }
+    }
+}
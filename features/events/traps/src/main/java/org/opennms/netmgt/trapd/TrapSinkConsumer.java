@@ -31,6 +31,7 @@ package org.opennms.netmgt.trapd;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.opennms.core.ipc.sink.api.MessageConsumer;
 import org.opennms.core.ipc.sink.api.MessageConsumerManager;
@@ -47,8 +48,6 @@ import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Events;
 import org.opennms.netmgt.xml.event.Log;
-import org.opennms.netmgt.xml.eventconf.LogDestType;
-import org.opennms.netmgt.xml.eventconf.Logmsg;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -84,12 +83,25 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 	@Autowired
 	private DistPollerDao distPollerDao;
 
+	private TrapIdentityCache identityCache;
+
 	private EventCreator eventCreator;
 
+	private TrapDeduplicator deduplicator;
+
 	@PostConstruct
 	public void init() throws Exception {
+		identityCache = new TrapIdentityCache(eventConfDao, trapdInstrumentation);
+		eventCreator = new EventCreator(interfaceToNodeCache, identityCache);
 		messageConsumerManager.registerConsumer(this);
-		eventCreator = new EventCreator(interfaceToNodeCache, eventConfDao);
+	}
+
+	@PreDestroy
+	public synchronized void destroy() {
+		if (deduplicator != null) {
+			deduplicator.close();
+			deduplicator = null;
+		}
 	}
 
 	@Override
@@ -100,27 +112,59 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 	@Override
 	public void handleMessage(TrapLogDTO messageLog) {
 		try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Trapd.LOG4J_CATEGORY)) {
-			final Log eventLog = toLog(messageLog);
-
-			eventForwarder.sendNowSync(eventLog);
-
-			// If configured, also send events for new suspects
-			if (config.getNewSuspectOnTrap()) {
-				eventLog.getEvents().getEventCollection().stream()
-						.filter(e -> !e.hasNodeid())
-						.forEach(e -> {
-							sendNewSuspectEvent(e.getInterface(), e.getDistPoller());
-							LOG.debug("Sent newSuspectEvent for interface {}", e.getInterface());
-						});
-			}
+			send(toLog(messageLog));
 		}
 	}
 
+	private void send(Log eventLog) {
+		eventForwarder.sendNowSync(eventLog);
+
+		// If configured, also send events for new suspects
+		if (config.getNewSuspectOnTrap()) {
+			eventLog.getEvents().getEventCollection().stream()
+					.filter(e -> !e.hasNodeid())
+					.forEach(e -> {
+						sendNewSuspectEvent(e.getInterface(), e.getDistPoller());
+						LOG.debug("Sent newSuspectEvent for interface {}", e.getInterface());
+					});
+		}
+	}
+
+	/**
+	 * Sends the event which stands for a series of duplicate traps.
+	 */
+	private void sendDeduplicated(Event event) {
+		try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Trapd.LOG4J_CATEGORY)) {
+			final Log log = new Log();
+			final Events events = new Events();
+			events.addEvent(event);
+			log.setEvents(events);
+			send(log);
+		}
+	}
+
+	/**
+	 * @return the deduplicator for the configured window, or null if
+	 * deduplication is disabled
+	 */
+	private synchronized TrapDeduplicator getDeduplicator() {
+		final int windowMs = config.getDedupeWindowMs();
+		if (deduplicator != null && deduplicator.getWindowMs() != windowMs) {
+			deduplicator.close();
+			deduplicator = null;
+		}
+		if (deduplicator == null && windowMs > 0) {
+			deduplicator = new TrapDeduplicator(windowMs, this::sendDeduplicated, trapdInstrumentation);
+		}
+		return deduplicator;
+	}
+
 	private Log toLog(TrapLogDTO messageLog) {
 		final Log log = new Log();
 		final Events events = new Events();
 		log.setEvents(events);
 
+		final TrapDeduplicator deduplicator = getDeduplicator();
 		for (TrapDTO eachMessage : messageLog.getMessages()) {
 			try {
 				final Event event = eventCreator.createEventFrom(
@@ -128,11 +172,13 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 						messageLog.getSystemId(),
 						messageLog.getLocation(),
 						messageLog.getTrapAddress());
-				if (!shouldDiscard(event)) {
+				if (!identityCache.shouldDiscard(event)) {
 					if (event.getSnmp() != null) {
 						trapdInstrumentation.incTrapsReceivedCount(event.getSnmp().getVersion());
 					}
-					events.addEvent(event);
+					if (deduplicator == null || deduplicator.accept(event)) {
+						events.addEvent(event);
+					}
 				} else {
 					LOG.debug("Trap discarded due to matching event having logmsg dest == discardtraps");
 					trapdInstrumentation.incDiscardCount();
@@ -155,13 +201,4 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 		// send the event to eventd
 		eventForwarder.sendNow(bldr.getEvent());
 	}
-
-	private boolean shouldDiscard(Event event) {
-		org.opennms.netmgt.xml.eventconf.Event econf = eventConfDao.findByEvent(event);
-		if (econf != null) {
-			final Logmsg logmsg = econf.getLogmsg();
-			return logmsg != null && LogDestType.DISCARDTRAPS.equals(logmsg.getDest());
-		}
-		return false;
-	}
 }
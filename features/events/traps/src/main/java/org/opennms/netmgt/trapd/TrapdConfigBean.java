@@ -63,6 +63,7 @@ public class TrapdConfigBean implements TrapdConfig, Serializable {
 	private int queueSize;
 	private int numThreads;
 	private boolean useAddressFromVarbind;
+	private int dedupeWindowMs;
 
 	public TrapdConfigBean() {
 
@@ -81,6 +82,7 @@ public class TrapdConfigBean implements TrapdConfig, Serializable {
 		setBatchSize(trapdConfiguration.getBatchSize());
 		setQueueSize(trapdConfiguration.getQueueSize());
 		setNumThreads(trapdConfiguration.getThreads());
+		setDedupeWindowMs(trapdConfiguration.getDedupeWindow());
 		if (trapdConfiguration.getSnmpv3UserCollection() != null) {
 			setSnmpV3Users(trapdConfiguration.getSnmpv3UserCollection().stream()
 						.map(TrapdConfigBean::toSnmpV3User)
@@ -171,9 +173,19 @@ public class TrapdConfigBean implements TrapdConfig, Serializable {
 		setBatchSize(config.getBatchSize());
 		setQueueSize(config.getQueueSize());
 		setNumThreads(config.getNumThreads());
+		setDedupeWindowMs(config.getDedupeWindowMs());
 		setSnmpV3Users(config.getSnmpV3Users());
 	}
 
+	@Override
+	public int getDedupeWindowMs() {
+		return dedupeWindowMs;
+	}
+
+	public void setDedupeWindowMs(int dedupeWindowMs) {
+		this.dedupeWindowMs = dedupeWindowMs;
+	}
+
 	public void setBatchIntervalMs(int batchIntervalInMs) {
 		this.batchIntervalInMs = batchIntervalInMs;
 	}
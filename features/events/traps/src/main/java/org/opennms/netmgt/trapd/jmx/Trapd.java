@@ -91,6 +91,24 @@ public class Trapd extends AbstractSpringContextJmxServiceDaemon<org.opennms.net
     public long getTrapsErrored() {
         return getTrapdInstrumentation().getTrapsErrored();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getIdentityCacheHits() {
+        return getTrapdInstrumentation().getIdentityCacheHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getIdentityCacheMisses() {
+        return getTrapdInstrumentation().getIdentityCacheMisses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDeduplicated() {
+        return getTrapdInstrumentation().getTrapsDeduplicated();
+    }
     
     private TrapdInstrumentation getTrapdInstrumentation() {
         return TrapSinkConsumer.trapdInstrumentation;
@@ -44,6 +44,9 @@ public class TrapdInstrumentation {
     private final AtomicLong vUnknownTrapsReceived = new AtomicLong();
     private final AtomicLong trapsDiscarded = new AtomicLong();
     private final AtomicLong trapsErrored = new AtomicLong();
+    private final AtomicLong identityCacheHits = new AtomicLong();
+    private final AtomicLong identityCacheMisses = new AtomicLong();
+    private final AtomicLong trapsDeduplicated = new AtomicLong();
 
     public void incTrapsReceivedCount(String version) {
         trapsReceived.incrementAndGet();
@@ -67,6 +70,18 @@ public class TrapdInstrumentation {
         trapsErrored.incrementAndGet();
     }
 
+    public void incIdentityCacheHitCount() {
+        identityCacheHits.incrementAndGet();
+    }
+
+    public void incIdentityCacheMissCount() {
+        identityCacheMisses.incrementAndGet();
+    }
+
+    public void incDeduplicatedCount() {
+        trapsDeduplicated.incrementAndGet();
+    }
+
     public long getV1TrapsReceived() {
         return v1TrapsReceived.get();
     }
@@ -94,4 +109,16 @@ public class TrapdInstrumentation {
     public long getTrapsReceived() {
         return trapsReceived.get();
     }
+
+    public long getIdentityCacheHits() {
+        return identityCacheHits.get();
+    }
+
+    public long getIdentityCacheMisses() {
+        return identityCacheMisses.get();
+    }
+
+    public long getTrapsDeduplicated() {
+        return trapsDeduplicated.get();
+    }
 }
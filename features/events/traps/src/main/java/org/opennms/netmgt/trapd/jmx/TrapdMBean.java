@@ -57,4 +57,13 @@ public interface TrapdMBean extends BaseOnmsMBean {
     
     /** @return The number of traps not processed due to errors since Trapd was last started */
     public long getTrapsErrored();
+
+    /** @return The number of traps whose event definition was found in the trap identity cache since Trapd was last started */
+    public long getIdentityCacheHits();
+
+    /** @return The number of traps whose event definition had to be looked up in the event configuration since Trapd was last started */
+    public long getIdentityCacheMisses();
+
+    /** @return The number of duplicate traps folded into another event since Trapd was last started */
+    public long getTrapsDeduplicated();
 }
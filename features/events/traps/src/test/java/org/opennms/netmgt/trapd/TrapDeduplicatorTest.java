@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+
+public class TrapDeduplicatorTest {
+
+    private final List<Event> summaries = new CopyOnWriteArrayList<>();
+
+    private final TrapdInstrumentation instrumentation = new TrapdInstrumentation();
+
+    private TrapDeduplicator deduplicator;
+
+    @After
+    public void tearDown() {
+        if (deduplicator != null) {
+            deduplicator.close();
+        }
+    }
+
+    @Test
+    public void shouldFoldIdenticalTraps() {
+        deduplicator = new TrapDeduplicator(TimeUnit.MINUTES.toMillis(1), summaries::add, instrumentation);
+
+        assertTrue(deduplicator.accept(linkDown("10.0.0.1", "1000")));
+        assertFalse(deduplicator.accept(linkDown("10.0.0.1", "1001")));
+        assertFalse(deduplicator.accept(linkDown("10.0.0.1", "1002")));
+        // Different agent
+        assertTrue(deduplicator.accept(linkDown("10.0.0.2", "1003")));
+        assertEquals(0, summaries.size());
+        assertEquals(2, instrumentation.getTrapsDeduplicated());
+
+        // Closing sends the summary of the open windows
+        deduplicator.close();
+        assertEquals(1, summaries.size());
+        assertEquals("10.0.0.1", summaries.get(0).getInterface());
+        assertEquals("2", summaries.get(0).getParm(TrapDeduplicator.DEDUPE_COUNT_PARM).getValue().getContent());
+    }
+
+    @Test
+    public void shouldSendSummaryWhenWindowExpires() {
+        deduplicator = new TrapDeduplicator(100, summaries::add, instrumentation);
+
+        assertTrue(deduplicator.accept(linkDown("10.0.0.1", "1000")));
+        assertFalse(deduplicator.accept(linkDown("10.0.0.1", "1001")));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> summaries.size(), equalTo(1));
+        assertEquals("1", summaries.get(0).getParm(TrapDeduplicator.DEDUPE_COUNT_PARM).getValue().getContent());
+
+        // A new window is opened once the previous one closed
+        assertTrue(deduplicator.accept(linkDown("10.0.0.1", "1002")));
+    }
+
+    @Test
+    public void shouldNotFoldTrapsWithDifferentVarbinds() {
+        deduplicator = new TrapDeduplicator(TimeUnit.MINUTES.toMillis(1), summaries::add, instrumentation);
+
+        final Event ifOne = linkDown("10.0.0.1", "1000");
+        ifOne.addParm(new Parm(".1.3.6.1.2.1.2.2.1.1.1", "1"));
+        final Event ifTwo = linkDown("10.0.0.1", "1001");
+        ifTwo.addParm(new Parm(".1.3.6.1.2.1.2.2.1.1.2", "2"));
+
+        assertTrue(deduplicator.accept(ifOne));
+        assertTrue(deduplicator.accept(ifTwo));
+        assertEquals(0, instrumentation.getTrapsDeduplicated());
+    }
+
+    private static Event linkDown(String agent, String sysUpTime) {
+        final EventBuilder builder = new EventBuilder("uei.opennms.org/generic/traps/SNMP_Link_Down", "trapd");
+        builder.setInterface(InetAddressUtils.addr(agent));
+        builder.setHost(agent);
+        builder.setCommunity("public");
+        builder.setSnmpVersion("v2c");
+        builder.setEnterpriseId(".1.3.6.1.6.3.1.1.5");
+        builder.setGeneric(2);
+        builder.setSpecific(0);
+        builder.addParam(".1.3.6.1.2.1.1.3.0", sysUpTime);
+        return builder.getEvent();
+    }
+}
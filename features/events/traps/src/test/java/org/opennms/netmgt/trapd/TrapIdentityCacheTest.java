@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.api.EventConfDao;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.trapd.jmx.TrapdInstrumentation;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.LogDestType;
+import org.opennms.netmgt.xml.eventconf.Logmsg;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.opennms.netmgt.xml.eventconf.Varbind;
+
+public class TrapIdentityCacheTest {
+
+    private static final String ENTERPRISE_ID = ".1.3.6.1.4.1.5813";
+
+    private static final String UEI = "uei.opennms.org/test/trap";
+
+    private final EventConfDao eventConfDao = mock(EventConfDao.class);
+
+    private final TrapdInstrumentation instrumentation = new TrapdInstrumentation();
+
+    private final Events root = new Events();
+
+    private final org.opennms.netmgt.xml.eventconf.Event econf = new org.opennms.netmgt.xml.eventconf.Event();
+
+    @Before
+    public void setUp() {
+        econf.setUei(UEI);
+        econf.setMask(mask(ENTERPRISE_ID));
+        final Logmsg logmsg = new Logmsg();
+        logmsg.setDest(LogDestType.DISCARDTRAPS);
+        econf.setLogmsg(logmsg);
+        root.addEvent(econf);
+
+        when(eventConfDao.getRootEvents()).thenReturn(root);
+        when(eventConfDao.findByEvent(any(Event.class))).thenReturn(econf);
+    }
+
+    @Test
+    public void shouldCacheLookupsByTrapIdentity() {
+        final TrapIdentityCache cache = new TrapIdentityCache(eventConfDao, instrumentation);
+
+        for (int i = 0; i < 3; i++) {
+            final Event event = trap(ENTERPRISE_ID, "10.0.0.1");
+            assertEquals(UEI, cache.getUei(event));
+            event.setUei(UEI);
+            assertTrue(cache.shouldDiscard(event));
+        }
+
+        // One lookup for the UEI and one for the discard flag
+        verify(eventConfDao, times(2)).findByEvent(any(Event.class));
+        assertEquals(2, instrumentation.getIdentityCacheHits());
+        assertEquals(1, instrumentation.getIdentityCacheMisses());
+
+        // Another agent has its own entry
+        assertEquals(UEI, cache.getUei(trap(ENTERPRISE_ID, "10.0.0.2")));
+        assertEquals(2, instrumentation.getIdentityCacheMisses());
+    }
+
+    @Test
+    public void shouldBypassCacheForVarbindMasks() {
+        final org.opennms.netmgt.xml.eventconf.Event byVarbind = new org.opennms.netmgt.xml.eventconf.Event();
+        byVarbind.setUei(UEI + "/varbind");
+        final Mask mask = mask(ENTERPRISE_ID);
+        final Varbind varbind = new Varbind();
+        varbind.setVbnumber(1);
+        varbind.addVbvalue("1");
+        mask.addVarbind(varbind);
+        byVarbind.setMask(mask);
+        root.addEvent(byVarbind);
+
+        final TrapIdentityCache cache = new TrapIdentityCache(eventConfDao, instrumentation);
+        cache.getUei(trap(ENTERPRISE_ID, "10.0.0.1"));
+        cache.getUei(trap(ENTERPRISE_ID, "10.0.0.1"));
+        verify(eventConfDao, times(2)).findByEvent(any(Event.class));
+        assertEquals(0, instrumentation.getIdentityCacheHits());
+
+        // Other enterprises can still be cached
+        cache.getUei(trap(".1.3.6.1.4.1.9", "10.0.0.1"));
+        cache.getUei(trap(".1.3.6.1.4.1.9", "10.0.0.1"));
+        verify(eventConfDao, times(3)).findByEvent(any(Event.class));
+        assertEquals(1, instrumentation.getIdentityCacheHits());
+    }
+
+    @Test
+    public void shouldInvalidateWhenEventConfigurationChanges() {
+        final TrapIdentityCache cache = new TrapIdentityCache(eventConfDao, instrumentation);
+        cache.getUei(trap(ENTERPRISE_ID, "10.0.0.1"));
+
+        final org.opennms.netmgt.xml.eventconf.Event reloaded = new org.opennms.netmgt.xml.eventconf.Event();
+        reloaded.setUei(UEI + "/reloaded");
+        reloaded.setMask(mask(ENTERPRISE_ID));
+        final Events reloadedRoot = new Events();
+        reloadedRoot.addEvent(reloaded);
+        when(eventConfDao.getRootEvents()).thenReturn(reloadedRoot);
+        when(eventConfDao.findByEvent(any(Event.class))).thenReturn(reloaded);
+
+        final Event event = trap(ENTERPRISE_ID, "10.0.0.1");
+        assertEquals(UEI + "/reloaded", cache.getUei(event));
+        event.setUei(UEI + "/reloaded");
+        assertFalse(cache.shouldDiscard(event));
+    }
+
+    @Test
+    public void shouldNotCacheLookupsThatRacedWithAReload() {
+        final org.opennms.netmgt.xml.eventconf.Event reloaded = new org.opennms.netmgt.xml.eventconf.Event();
+        reloaded.setUei(UEI + "/reloaded");
+        reloaded.setMask(mask(ENTERPRISE_ID));
+        final Events reloadedRoot = new Events();
+        reloadedRoot.addEvent(reloaded);
+
+        // The configuration is reloaded while the first lookup is in flight
+        final AtomicReference<Events> currentRoot = new AtomicReference<>(root);
+        when(eventConfDao.getRootEvents()).thenAnswer(invocation -> currentRoot.get());
+        when(eventConfDao.findByEvent(any(Event.class))).thenAnswer(invocation -> {
+            if (currentRoot.getAndSet(reloadedRoot) == root) {
+                return econf;
+            }
+            return reloaded;
+        });
+
+        final TrapIdentityCache cache = new TrapIdentityCache(eventConfDao, instrumentation);
+        assertEquals(UEI, cache.getUei(trap(ENTERPRISE_ID, "10.0.0.1")));
+        assertEquals(UEI + "/reloaded", cache.getUei(trap(ENTERPRISE_ID, "10.0.0.1")));
+        assertEquals(0, instrumentation.getIdentityCacheHits());
+    }
+
+    @Test
+    public void shouldDefaultToGenericTrapUei() {
+        when(eventConfDao.findByEvent(any(Event.class))).thenReturn(null);
+        final TrapIdentityCache cache = new TrapIdentityCache(eventConfDao, instrumentation);
+        assertEquals(TrapIdentityCache.DEFAULT_TRAP_UEI, cache.getUei(trap(ENTERPRISE_ID, "10.0.0.1")));
+    }
+
+    private static Mask mask(String enterpriseId) {
+        final Maskelement element = new Maskelement();
+        element.setMename(Maskelement.TAG_SNMP_EID);
+        element.addMevalue(enterpriseId);
+        final Mask mask = new Mask();
+        mask.addMaskelement(element);
+        return mask;
+    }
+
+    private static Event trap(String enterpriseId, String agent) {
+        final EventBuilder builder = new EventBuilder(null, "trapd");
+        builder.setInterface(InetAddressUtils.addr(agent));
+        builder.setSnmpHost(agent);
+        builder.setHost(agent);
+        builder.setCommunity("public");
+        builder.setSnmpVersion("v2c");
+        builder.setEnterpriseId(enterpriseId);
+        builder.setGeneric(6);
+        builder.setSpecific(1);
+        return builder.getEvent();
+    }
+}
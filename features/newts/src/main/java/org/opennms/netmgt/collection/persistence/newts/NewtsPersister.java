@@ -30,10 +30,15 @@ package org.opennms.netmgt.collection.persistence.newts;
 
 import org.opennms.netmgt.collection.api.AbstractPersister;
 import org.opennms.netmgt.collection.api.AttributeGroup;
+import org.opennms.netmgt.collection.api.AttributeType;
 import org.opennms.netmgt.collection.api.CollectionResource;
 import org.opennms.netmgt.collection.api.PersistException;
 import org.opennms.netmgt.collection.api.ServiceParameters;
+import org.opennms.netmgt.collection.support.builder.ColumnarAttributeType;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSet;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSetVisitor;
 import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.newts.NewtsWriter;
 import org.opennms.netmgt.rrd.RrdRepository;
 import org.opennms.newts.api.Context;
@@ -43,9 +48,12 @@ import org.opennms.newts.api.Context;
  *
  * Both string and numeric attributes are persisted via {@link org.opennms.netmgt.collection.persistence.newts.NewtsPersistOperationBuilder}.
  *
+ * A {@link ColumnarCollectionSet} is read group by group from its arrays,
+ * without creating an object for every attribute.
+ *
  * @author jwhite
  */
-public class NewtsPersister extends AbstractPersister {
+public class NewtsPersister extends AbstractPersister implements ColumnarCollectionSetVisitor {
 
     private final RrdRepository m_repository;
     private final NewtsWriter m_newtsWriter;
@@ -74,6 +82,59 @@ public class NewtsPersister extends AbstractPersister {
         }
     }
 
+    @Override
+    public void visitColumnarCollectionSet(ColumnarCollectionSet collectionSet) {
+        visitCollectionSet(collectionSet);
+        for (int resourceIndex = 0; resourceIndex < collectionSet.getResourceCount(); resourceIndex++) {
+            final CollectionResource resource = collectionSet.toCollectionResource(resourceIndex);
+            LOG.info("Persisting data for resource {}", resource);
+            pushShouldPersist(resource);
+            if (shouldPersist()) {
+                persistColumns(collectionSet, resource, collectionSet.getAttributeStart(resourceIndex), collectionSet.getAttributeEnd(resourceIndex));
+            }
+            popShouldPersist();
+        }
+        completeCollectionSet(collectionSet);
+    }
+
+    private void persistColumns(ColumnarCollectionSet collectionSet, CollectionResource resource, int start, int end) {
+        ResourcePath stringAttributePath = null;
+        // The attributes of a resource are ordered by group
+        int groupStart = start;
+        while (groupStart < end) {
+            final String group = collectionSet.getAttributeType(groupStart).getGroup();
+            m_builder = new NewtsPersistOperationBuilder(m_newtsWriter, m_context, m_repository, resource, group);
+            if (resource.getTimeKeeper() != null) {
+                m_builder.setTimeKeeper(resource.getTimeKeeper());
+            }
+            setBuilder(m_builder);
+
+            int attribute = groupStart;
+            for (; attribute < end && group.equals(collectionSet.getAttributeType(attribute).getGroup()); attribute++) {
+                if (!collectionSet.shouldPersist(attribute)) {
+                    continue;
+                }
+                final ColumnarAttributeType type = collectionSet.getAttributeType(attribute);
+                if (collectionSet.isStringAttribute(attribute)) {
+                    final String value = collectionSet.getStringValue(attribute);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (stringAttributePath == null) {
+                        stringAttributePath = ResourceTypeUtils.getResourcePathWithRepository(m_repository, resource.getPath());
+                    }
+                    m_builder.persistStringAttribute(stringAttributePath, type.getName(), value);
+                } else {
+                    final boolean ignoreValue = isIgnorePersist() && AttributeType.COUNTER.equals(type.getType());
+                    m_builder.setAttributeValue(type, ignoreValue ? Double.NaN : collectionSet.getNumericValue(attribute));
+                    m_builder.setAttributeMetadata(type.getMetricIdentifier(), type.getName());
+                }
+            }
+            commitBuilder();
+            groupStart = attribute;
+        }
+    }
+
     @Override
     protected void persistStringAttribute(ResourcePath path, String key, String value) throws PersistException {
         m_builder.persistStringAttribute(path, key, value);
@@ -51,6 +51,7 @@ import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.model.RrdGraphAttribute;
 import org.opennms.netmgt.model.StringPropertyAttribute;
 import org.opennms.netmgt.newts.NewtsWriter;
+import org.opennms.netmgt.newts.support.IndexWriteFilter;
 import org.opennms.netmgt.newts.support.NewtsUtils;
 import org.opennms.netmgt.newts.support.SearchableResourceMetadataCache;
 import org.opennms.newts.api.Context;
@@ -101,6 +102,9 @@ public class NewtsResourceStorageDao implements ResourceStorageDao {
     @Autowired
     private CassandraIndexer m_indexer;
 
+    @Autowired(required=false)
+    private IndexWriteFilter m_indexWriteFilter;
+
     @Autowired
     private NewtsWriter m_newtsWriter;
 
@@ -164,6 +168,9 @@ public class NewtsResourceStorageDao implements ResourceStorageDao {
         for (final Result result : results) {
             m_sampleRepository.delete(m_context, result.getResource());
             m_indexer.delete(m_context, result.getResource());
+            if (m_indexWriteFilter != null) {
+                m_indexWriteFilter.delete(m_context, result.getResource());
+            }
         }
 
         return true;
@@ -321,6 +328,10 @@ public class NewtsResourceStorageDao implements ResourceStorageDao {
         m_indexer = indexer;
     }
 
+    public void setIndexWriteFilter(IndexWriteFilter indexWriteFilter) {
+        m_indexWriteFilter = indexWriteFilter;
+    }
+
     public void setSampleRepository(CassandraSampleRepository sampleRepository) {
         m_sampleRepository = sampleRepository;
     }
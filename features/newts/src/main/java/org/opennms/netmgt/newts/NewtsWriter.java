@@ -29,6 +29,8 @@
 package org.opennms.netmgt.newts;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -40,6 +42,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.newts.support.IndexWriteFilter;
 import org.opennms.netmgt.newts.support.NewtsUtils;
 import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.SampleRepository;
@@ -70,6 +73,14 @@ import com.swrve.ratelimitedlogger.RateLimitedLog;
  * Calls to {@link #insert()} publish the samples to a ring buffer so
  * that they don't block while the data is being persisted.
  *
+ * When <code>newts.writer_shards</code> is greater than zero, the ring buffer
+ * is split into that many {@link NewtsWriterShard}s by resource. Each shard
+ * has a single consumer which groups the samples by partition before
+ * inserting them, and publishers block for up to <code>newts.publish_timeout</code>
+ * milliseconds when a shard is full instead of dropping the samples right away.
+ * The <code>newts.writer_threads</code> are split between the shards, each
+ * of which inserts up to its share of the batches concurrently.
+ *
  * @author jwhite
  */
 public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBean {
@@ -87,6 +98,9 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
     @Autowired
     private Indexer m_indexer;
 
+    @Autowired(required=false)
+    private IndexWriteFilter m_indexWriteFilter;
+
     private WorkerPool<SampleBatchEvent> m_workerPool;
 
     private RingBuffer<SampleBatchEvent> m_ringBuffer;
@@ -97,6 +111,12 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
 
     private final int m_numWriterThreads;
 
+    private final int m_numShards;
+
+    private final long m_publishTimeoutMs;
+
+    private NewtsWriterShard[] m_shards;
+
     private final Meter m_droppedSamples;
 
     /**
@@ -105,25 +125,34 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
      */
     private final AtomicLong m_numEntriesOnRingBuffer = new AtomicLong();
 
+    public NewtsWriter(Integer maxBatchSize, Integer ringBufferSize, Integer numWriterThreads, MetricRegistry registry) {
+        this(maxBatchSize, ringBufferSize, numWriterThreads, 0, 0L, registry);
+    }
+
     @Inject
     public NewtsWriter(@Named("newts.max_batch_size") Integer maxBatchSize, @Named("newts.ring_buffer_size") Integer ringBufferSize,
-            @Named("newts.writer_threads") Integer numWriterThreads, @Named("newtsMetricRegistry") MetricRegistry registry) {
+            @Named("newts.writer_threads") Integer numWriterThreads, @Named("newts.writer_shards") Integer numShards,
+            @Named("newts.publish_timeout") Long publishTimeoutMs, @Named("newtsMetricRegistry") MetricRegistry registry) {
         Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be strictly positive");
         Preconditions.checkArgument(ringBufferSize > 0, "ringBufferSize must be positive");
         Preconditions.checkArgument(DoubleMath.isMathematicalInteger(Math.log(ringBufferSize) / Math.log(2)), "ringBufferSize must be a power of two");
         Preconditions.checkArgument(numWriterThreads > 0, "numWriterThreads must be positive");
+        Preconditions.checkArgument(numShards >= 0, "numShards must not be negative");
+        Preconditions.checkArgument(publishTimeoutMs >= 0, "publishTimeoutMs must not be negative");
         Preconditions.checkNotNull(registry, "metric registry");
 
         m_maxBatchSize = maxBatchSize;
         m_ringBufferSize = ringBufferSize;
         m_numWriterThreads = numWriterThreads;
+        m_numShards = numShards;
+        m_publishTimeoutMs = publishTimeoutMs;
         m_numEntriesOnRingBuffer.set(0L);
 
         registry.register(MetricRegistry.name("ring-buffer", "size"),
                 new Gauge<Long>() {
                     @Override
                     public Long getValue() {
-                        return m_numEntriesOnRingBuffer.get();
+                        return getNumEntriesOnRingBuffer();
                     }
                 });
         registry.register(MetricRegistry.name("ring-buffer", "max-size"),
@@ -137,7 +166,30 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
         m_droppedSamples = registry.meter(MetricRegistry.name("ring-buffer", "dropped-samples"));
 
         LOG.debug("Using max_batch_size: {} and ring_buffer_size: {}", maxBatchSize, m_ringBufferSize);
-        setUpWorkerPool();
+        if (m_numShards > 0) {
+            setUpShards(registry);
+        } else {
+            setUpWorkerPool();
+        }
+    }
+
+    private void setUpShards(MetricRegistry registry) {
+        final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("NewtsWriter-Shard-%d").build();
+        final Executor executor = Executors.newCachedThreadPool(namedThreadFactory);
+
+        // The shards split the configured ring buffer size between them
+        final int shardRingBufferSize = Math.max(1, Integer.highestOneBit(m_ringBufferSize / m_numShards));
+        // The shards split the configured writer threads between them as well
+        final int numInserters = Math.max(1, m_numWriterThreads / m_numShards);
+        LOG.debug("Using {} shards with a ring_buffer_size of {}, {} inserters each and a publish timeout of {}ms",
+                m_numShards, shardRingBufferSize, numInserters, m_publishTimeoutMs);
+
+        m_shards = new NewtsWriterShard[m_numShards];
+        for (int i = 0; i < m_numShards; i++) {
+            m_shards[i] = new NewtsWriterShard(this, i, m_maxBatchSize, shardRingBufferSize, numInserters, registry);
+            m_shards[i].start(executor);
+        }
     }
 
     private void setUpWorkerPool() {
@@ -168,14 +220,93 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
         if (m_workerPool != null) {
             m_workerPool.drainAndHalt();
         }
+        if (m_shards != null) {
+            for (NewtsWriterShard shard : m_shards) {
+                shard.drainAndHalt();
+            }
+        }
+    }
+
+    private long getNumEntriesOnRingBuffer() {
+        if (m_shards == null) {
+            return m_numEntriesOnRingBuffer.get();
+        }
+        long numEntries = 0;
+        for (NewtsWriterShard shard : m_shards) {
+            numEntries += shard.getNumEntriesOnRingBuffer();
+        }
+        return numEntries;
     }
 
     public void insert(List<Sample> samples) {
-        pushToRingBuffer(samples, TRANSLATOR);
+        if (m_shards != null) {
+            pushToShards(samples, false);
+        } else {
+            pushToRingBuffer(samples, TRANSLATOR);
+        }
     }
 
     public void index(List<Sample> samples) {
-        pushToRingBuffer(samples, INDEX_ONLY_TRANSLATOR);
+        if (m_shards != null) {
+            pushToShards(samples, true);
+        } else {
+            pushToRingBuffer(samples, INDEX_ONLY_TRANSLATOR);
+        }
+    }
+
+    private int getShardIndex(Sample sample) {
+        return (sample.getResource().getId().hashCode() & Integer.MAX_VALUE) % m_shards.length;
+    }
+
+    private void pushToShards(List<Sample> samples, boolean indexOnly) {
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        // The samples are usually all for the same resource, in which case the list can be published as is
+        final int firstShard = getShardIndex(samples.get(0));
+        boolean singleShard = true;
+        for (Sample sample : samples) {
+            if (getShardIndex(sample) != firstShard) {
+                singleShard = false;
+                break;
+            }
+        }
+        if (singleShard) {
+            publishToShard(firstShard, samples, indexOnly);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        final List<Sample>[] samplesByShard = new List[m_shards.length];
+        for (Sample sample : samples) {
+            final int shard = getShardIndex(sample);
+            if (samplesByShard[shard] == null) {
+                samplesByShard[shard] = new ArrayList<>();
+            }
+            samplesByShard[shard].add(sample);
+        }
+        for (int i = 0; i < samplesByShard.length; i++) {
+            if (samplesByShard[i] != null) {
+                publishToShard(i, samplesByShard[i], indexOnly);
+            }
+        }
+    }
+
+    private void publishToShard(int shard, List<Sample> samples, boolean indexOnly) {
+        if (!m_shards[shard].publish(samples, indexOnly, m_publishTimeoutMs)) {
+            RATE_LIMITED_LOGGER.error("The ring buffer for shard {} is still full after {}ms. {} samples associated with resource ids {} will be dropped.",
+                    shard, m_publishTimeoutMs, samples.size(), new Object() {
+                        @Override
+                        public String toString() {
+                            return samples.stream()
+                                    .map(s -> s.getResource().getId())
+                                    .distinct()
+                                    .collect(Collectors.joining(", "));
+                        }
+                    });
+            m_droppedSamples.mark(samples.size());
+        }
     }
 
     private void pushToRingBuffer(List<Sample> samples, EventTranslatorOneArg<SampleBatchEvent, List<Sample>> translator) {
@@ -209,12 +340,25 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
         // Decrement our entry counter
         m_numEntriesOnRingBuffer.decrementAndGet();
 
+        write(samples, event.isIndexOnly());
+    }
+
+    /**
+     * Inserts or indexes the samples in batches of at most max_batch_size.
+     */
+    void write(List<Sample> samples, boolean indexOnly) {
         // Partition the samples into collections smaller then max_batch_size
         for (List<Sample> batch : Lists.partition(samples, m_maxBatchSize)) {
             try {
-                if (event.isIndexOnly() && !NewtsUtils.DISABLE_INDEXING) {
-                    LOG.debug("Indexing {} samples", batch.size());
-                    m_indexer.update(batch);
+                if (indexOnly && !NewtsUtils.DISABLE_INDEXING) {
+                    final Collection<Sample> toIndex = m_indexWriteFilter != null ? m_indexWriteFilter.filter(batch) : batch;
+                    LOG.debug("Indexing {} of {} samples", toIndex.size(), batch.size());
+                    if (!toIndex.isEmpty()) {
+                        m_indexer.update(toIndex);
+                        if (m_indexWriteFilter != null) {
+                            m_indexWriteFilter.indexed(toIndex);
+                        }
+                    }
                 } else {
                     LOG.debug("Inserting {} samples", batch.size());
                     m_sampleRepository.insert(batch);
@@ -256,4 +400,8 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
     public void setIndexer(Indexer indexer) {
         m_indexer = indexer;
     }
+
+    public void setIndexWriteFilter(IndexWriteFilter indexWriteFilter) {
+        m_indexWriteFilter = indexWriteFilter;
+    }
 }
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.newts;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.newts.api.Sample;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.FatalExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+
+/**
+ * One shard of the {@link NewtsWriter} when it runs in sharded mode.
+ *
+ * Each shard has its own ring buffer and a single consumer thread, and
+ * receives all of the samples for the resources that hash to it. Samples
+ * that are waiting on the ring buffer are grouped by context and resource,
+ * the partition key of the samples table, so that every insert only
+ * touches a single partition and can be routed to one of its replicas.
+ *
+ * With more than one inserter, the consumer hands the grouped batches to
+ * the executor and up to that many of them are inserted concurrently. The
+ * consumer waits for an inserter to free up before handing off the next
+ * batch, so a slow repository still fills the ring buffer.
+ *
+ * Publishers wait up to the publish timeout for room on a full ring buffer
+ * before the samples are dropped.
+ */
+class NewtsWriterShard implements EventHandler<SampleBatchEvent> {
+
+    /**
+     * How long a blocked publisher sleeps before checking the ring buffer again.
+     */
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final EventTranslatorTwoArg<SampleBatchEvent, List<Sample>, Boolean> TRANSLATOR =
+            new EventTranslatorTwoArg<SampleBatchEvent, List<Sample>, Boolean>() {
+                public void translateTo(SampleBatchEvent event, long sequence, List<Sample> samples, Boolean indexOnly) {
+                    event.setIndexOnly(indexOnly);
+                    event.setSamples(samples);
+                    event.setPublishedAt(System.currentTimeMillis());
+                }
+            };
+
+    private final NewtsWriter m_writer;
+
+    private final int m_maxBatchSize;
+
+    private final int m_numInserters;
+
+    /**
+     * Permits for the inserts that run concurrently with the consumer.
+     */
+    private final Semaphore m_inserters;
+
+    private Executor m_executor;
+
+    private final RingBuffer<SampleBatchEvent> m_ringBuffer;
+
+    private final BatchEventProcessor<SampleBatchEvent> m_processor;
+
+    /**
+     * Samples waiting to be inserted, keyed by partition. Only used by the consumer thread.
+     */
+    private final Map<String, List<Sample>> m_pending = new LinkedHashMap<>();
+
+    private final AtomicLong m_numEntriesOnRingBuffer = new AtomicLong();
+
+    private final AtomicLong m_lag = new AtomicLong();
+
+    private final Histogram m_batchSizes;
+
+    private final Meter m_droppedSamples;
+
+    private final Meter m_blockedPublishes;
+
+    NewtsWriterShard(NewtsWriter writer, int index, int maxBatchSize, int ringBufferSize, int numInserters, MetricRegistry registry) {
+        m_writer = writer;
+        m_maxBatchSize = maxBatchSize;
+        m_numInserters = numInserters;
+        m_inserters = new Semaphore(numInserters);
+
+        m_ringBuffer = RingBuffer.createMultiProducer(SampleBatchEvent::new, ringBufferSize);
+        m_processor = new BatchEventProcessor<SampleBatchEvent>(m_ringBuffer, m_ringBuffer.newBarrier(), this);
+        m_processor.setExceptionHandler(new FatalExceptionHandler());
+        m_ringBuffer.addGatingSequences(m_processor.getSequence());
+
+        final String shard = "shard-" + index;
+        registry.register(MetricRegistry.name("ring-buffer", shard, "size"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return m_numEntriesOnRingBuffer.get();
+                    }
+                });
+        registry.register(MetricRegistry.name("ring-buffer", shard, "lag"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return m_lag.get();
+                    }
+                });
+        m_batchSizes = registry.histogram(MetricRegistry.name("ring-buffer", shard, "batch-size"));
+        m_droppedSamples = registry.meter(MetricRegistry.name("ring-buffer", shard, "dropped-samples"));
+        m_blockedPublishes = registry.meter(MetricRegistry.name("ring-buffer", shard, "blocked-publishes"));
+    }
+
+    void start(Executor executor) {
+        m_executor = executor;
+        executor.execute(m_processor);
+    }
+
+    /**
+     * Waits for the consumer to write everything that was published so far and stops it.
+     */
+    void drainAndHalt() {
+        while (m_processor.getSequence().get() < m_ringBuffer.getCursor()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        // Wait for the inserts that are still running
+        m_inserters.acquireUninterruptibly(m_numInserters);
+        m_inserters.release(m_numInserters);
+        m_processor.halt();
+    }
+
+    long getNumEntriesOnRingBuffer() {
+        return m_numEntriesOnRingBuffer.get();
+    }
+
+    /**
+     * Publishes the samples, waiting up to the given timeout for room on the ring buffer.
+     *
+     * @return false if the samples were dropped
+     */
+    boolean publish(List<Sample> samples, boolean indexOnly, long timeoutMs) {
+        m_numEntriesOnRingBuffer.incrementAndGet();
+        if (m_ringBuffer.tryPublishEvent(TRANSLATOR, samples, indexOnly)) {
+            return true;
+        }
+
+        m_blockedPublishes.mark();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (deadline - System.nanoTime() > 0) {
+            LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+            if (m_ringBuffer.tryPublishEvent(TRANSLATOR, samples, indexOnly)) {
+                return true;
+            }
+        }
+
+        m_numEntriesOnRingBuffer.decrementAndGet();
+        m_droppedSamples.mark(samples.size());
+        return false;
+    }
+
+    @Override
+    public void onEvent(SampleBatchEvent event, long sequence, boolean endOfBatch) throws Exception {
+        // We'd expect the logs from this thread to be in collectd.log
+        Logging.putPrefix("collectd");
+
+        final List<Sample> samples = event.getSamples();
+        event.setSamples(null);
+        m_numEntriesOnRingBuffer.decrementAndGet();
+        m_lag.set(System.currentTimeMillis() - event.getPublishedAt());
+
+        if (event.isIndexOnly()) {
+            write(samples, true);
+        } else {
+            String contextId = null;
+            String resourceId = null;
+            String key = null;
+            List<Sample> partition = null;
+            for (Sample sample : samples) {
+                // Samples from the same resource are usually adjacent, so only look up the partition when the resource changes
+                if (partition == null
+                        || !sample.getResource().getId().equals(resourceId)
+                        || !sample.getContext().getId().equals(contextId)) {
+                    contextId = sample.getContext().getId();
+                    resourceId = sample.getResource().getId();
+                    key = contextId + '/' + resourceId;
+                    partition = m_pending.get(key);
+                    if (partition == null) {
+                        partition = new ArrayList<>(m_maxBatchSize);
+                        m_pending.put(key, partition);
+                    }
+                }
+                partition.add(sample);
+                if (partition.size() >= m_maxBatchSize) {
+                    m_pending.remove(key);
+                    insert(partition);
+                    partition = null;
+                }
+            }
+        }
+
+        if (endOfBatch) {
+            final Iterator<List<Sample>> it = m_pending.values().iterator();
+            while (it.hasNext()) {
+                final List<Sample> partition = it.next();
+                it.remove();
+                insert(partition);
+            }
+        }
+    }
+
+    private void insert(List<Sample> batch) {
+        m_batchSizes.update(batch.size());
+        write(batch, false);
+    }
+
+    private void write(List<Sample> samples, boolean indexOnly) {
+        if (m_numInserters == 1) {
+            m_writer.write(samples, indexOnly);
+            return;
+        }
+
+        m_inserters.acquireUninterruptibly();
+        try {
+            m_executor.execute(() -> {
+                try {
+                    Logging.putPrefix("collectd");
+                    m_writer.write(samples, indexOnly);
+                } finally {
+                    m_inserters.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            m_inserters.release();
+            m_writer.write(samples, indexOnly);
+        }
+    }
+}
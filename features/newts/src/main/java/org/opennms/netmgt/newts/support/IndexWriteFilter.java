@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.newts.support;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps track of the resources, metrics and attributes that were already
+ * indexed, so that samples which would not produce any new index entries
+ * can be kept from reaching the indexer.
+ *
+ * The {@link org.opennms.newts.cassandra.search.ResourceMetadataCache} used by
+ * the indexer does the same, but it starts out empty and is only filled as the
+ * {@link CachePrimer} works its way through the whole resource index. Until then,
+ * the first collection cycle after a restart rewrites the index of every resource.
+ * The keys tracked here are stored in a {@link MappedKeySet}, which survives
+ * restarts, and a small in-heap LRU of recently seen samples sits in front of it.
+ *
+ * The index entries are written with the Cassandra TTL, so keys are only trusted
+ * for half of the TTL after they were last indexed. Older samples are passed to the
+ * indexer again, which writes the entries anew before Cassandra expires them.
+ *
+ * The filter is disabled, and lets all of the samples through, when no file is configured.
+ */
+public class IndexWriteFilter implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexWriteFilter.class);
+
+    private static final char SEPARATOR = '\0';
+
+    private final MappedKeySet m_keys;
+
+    /**
+     * Maps context, resource and metric to the hash code of the resource attributes
+     * with which the sample was last found to be indexed.
+     */
+    private final Cache<String, Recent> m_recent;
+
+    /**
+     * How long a key is trusted after it was indexed, in milliseconds, or 0 if keys don't expire.
+     */
+    private final long m_maxAge;
+
+    private final LongSupplier m_clock;
+
+    /**
+     * When the keys that are no longer trusted are next removed from the file.
+     */
+    private final AtomicLong m_nextPurge;
+
+    private final Meter m_passed;
+    private final Meter m_filtered;
+    private final Meter m_recentHits;
+
+    private static class Recent {
+        private final int m_attributesHash;
+        private final long m_indexedAt;
+
+        private Recent(int attributesHash, long indexedAt) {
+            m_attributesHash = attributesHash;
+            m_indexedAt = indexedAt;
+        }
+    }
+
+    @Inject
+    public IndexWriteFilter(@Named("search.index_filter.file") String file, @Named("search.index_filter.capacity") Integer capacity,
+            @Named("search.index_filter.lru_entries") Long lruEntries, @Named("search.cassandra.time-to-live") int ttl,
+            @Named("newtsMetricRegistry") MetricRegistry registry) {
+        this(file, capacity, lruEntries, ttl, registry, System::currentTimeMillis);
+    }
+
+    IndexWriteFilter(String file, int capacity, long lruEntries, int ttl, MetricRegistry registry, LongSupplier clock) {
+        m_keys = open(file, capacity);
+        m_recent = CacheBuilder.newBuilder().maximumSize(lruEntries).build();
+        m_maxAge = ttl > 0 ? TimeUnit.SECONDS.toMillis(ttl) / 2 : 0;
+        m_clock = clock;
+        m_nextPurge = new AtomicLong(clock.getAsLong() + m_maxAge / 4);
+
+        m_passed = registry.meter(name("index-filter", "passed"));
+        m_filtered = registry.meter(name("index-filter", "filtered"));
+        m_recentHits = registry.meter(name("index-filter", "lru-hits"));
+        registry.register(name("index-filter", "size"),
+                new Gauge<Integer>() {
+                    @Override
+                    public Integer getValue() {
+                        return m_keys != null ? m_keys.size() : 0;
+                    }
+                });
+    }
+
+    private static MappedKeySet open(String file, int capacity) {
+        if (file == null || file.trim().isEmpty()) {
+            LOG.debug("No index filter file configured. All samples will be passed to the indexer.");
+            return null;
+        }
+        try {
+            return new MappedKeySet(new File(file.trim()), capacity);
+        } catch (IOException e) {
+            LOG.warn("Failed to open index filter file {}. All samples will be passed to the indexer.", file, e);
+            return null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return m_keys != null;
+    }
+
+    /**
+     * Returns the samples which may still require index entries to be written.
+     */
+    public Collection<Sample> filter(Collection<Sample> samples) {
+        if (m_keys == null) {
+            return samples;
+        }
+
+        final List<Sample> toIndex = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            if (!isIndexed(sample)) {
+                toIndex.add(sample);
+            }
+        }
+        m_passed.mark(toIndex.size());
+        m_filtered.mark(samples.size() - toIndex.size());
+        return toIndex.size() == samples.size() ? samples : toIndex;
+    }
+
+    /**
+     * Records that the given samples were indexed successfully.
+     */
+    public void indexed(Collection<Sample> samples) {
+        if (m_keys == null) {
+            return;
+        }
+
+        final long now = m_clock.getAsLong();
+        for (Sample sample : samples) {
+            final Resource resource = sample.getResource();
+            final String resourceKey = resourceKey(sample.getContext(), resource);
+            m_keys.add(MappedKeySet.fingerprint(resourceKey), now);
+            m_keys.add(MappedKeySet.fingerprint(metricKey(resourceKey, sample.getName())), now);
+            if (resource.getAttributes().isPresent()) {
+                for (Map.Entry<String, String> attribute : resource.getAttributes().get().entrySet()) {
+                    m_keys.add(MappedKeySet.fingerprint(attributeKey(resourceKey, attribute)), now);
+                }
+            }
+            m_recent.put(recentKey(resourceKey, sample.getName()), new Recent(attributesHash(resource), now));
+        }
+        purgeIfNeeded(now);
+    }
+
+    /**
+     * Removes the keys that are no longer trusted from the file, a few times per max age,
+     * so that resources which are no longer collected don't take up space forever.
+     */
+    private void purgeIfNeeded(long now) {
+        if (m_maxAge <= 0) {
+            return;
+        }
+        final long nextPurge = m_nextPurge.get();
+        if (now >= nextPurge && m_nextPurge.compareAndSet(nextPurge, now + m_maxAge / 4)) {
+            m_keys.removeOlderThan(now - m_maxAge);
+        }
+    }
+
+    /**
+     * Forgets the given resource after it was removed from the index, so
+     * that it is fully indexed again if it reappears.
+     */
+    public void delete(Context context, Resource resource) {
+        if (m_keys == null) {
+            return;
+        }
+
+        final String resourceKey = resourceKey(context, resource);
+        m_keys.remove(MappedKeySet.fingerprint(resourceKey));
+        // The metric and attribute keys are only consulted when the resource key is present
+        m_recent.asMap().keySet().removeIf(key -> key.startsWith(resourceKey + SEPARATOR));
+    }
+
+    private boolean isIndexed(Sample sample) {
+        final Resource resource = sample.getResource();
+        final String resourceKey = resourceKey(sample.getContext(), resource);
+        final String recentKey = recentKey(resourceKey, sample.getName());
+        final int attributesHash = attributesHash(resource);
+        final long notBefore = m_maxAge > 0 ? m_clock.getAsLong() - m_maxAge : Long.MIN_VALUE + 1;
+
+        final Recent recent = m_recent.getIfPresent(recentKey);
+        if (recent != null && recent.m_attributesHash == attributesHash && recent.m_indexedAt >= notBefore) {
+            m_recentHits.mark();
+            return true;
+        }
+
+        // The entries expire with the oldest of the keys
+        long indexedAt = Math.min(m_keys.getTimestamp(MappedKeySet.fingerprint(resourceKey)),
+                m_keys.getTimestamp(MappedKeySet.fingerprint(metricKey(resourceKey, sample.getName()))));
+        if (indexedAt < notBefore) {
+            return false;
+        }
+        if (resource.getAttributes().isPresent()) {
+            for (Map.Entry<String, String> attribute : resource.getAttributes().get().entrySet()) {
+                indexedAt = Math.min(indexedAt, m_keys.getTimestamp(MappedKeySet.fingerprint(attributeKey(resourceKey, attribute))));
+                if (indexedAt < notBefore) {
+                    return false;
+                }
+            }
+        }
+
+        m_recent.put(recentKey, new Recent(attributesHash, indexedAt));
+        return true;
+    }
+
+    private static String resourceKey(Context context, Resource resource) {
+        return context.getId() + SEPARATOR + resource.getId();
+    }
+
+    private static String recentKey(String resourceKey, String metric) {
+        return resourceKey + SEPARATOR + metric;
+    }
+
+    private static String metricKey(String resourceKey, String metric) {
+        return resourceKey + SEPARATOR + 'm' + SEPARATOR + metric;
+    }
+
+    private static String attributeKey(String resourceKey, Map.Entry<String, String> attribute) {
+        return resourceKey + SEPARATOR + 'a' + SEPARATOR + attribute.getKey() + SEPARATOR + attribute.getValue();
+    }
+
+    private static int attributesHash(Resource resource) {
+        return resource.getAttributes().isPresent() ? resource.getAttributes().get().hashCode() : 0;
+    }
+
+    @Override
+    public void destroy() {
+        if (m_keys != null) {
+            m_keys.close();
+        }
+    }
+}
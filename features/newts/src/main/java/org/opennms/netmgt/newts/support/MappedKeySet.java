@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.newts.support;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * A set of 64-bit key fingerprints stored in a memory mapped file, so that
+ * it survives restarts. Every fingerprint carries the time at which it was
+ * last added, so that callers can tell how old the entry is.
+ *
+ * The file holds a small header followed by an open addressing table with
+ * linear probing. The table is rehashed into a new file of twice the size
+ * once it is 75% full, up to {@link #MAX_CAPACITY} slots.
+ *
+ * Since only fingerprints are stored, two different keys may collide, in
+ * which case {@link #contains(long)} returns a false positive. With 64-bit
+ * fingerprints the odds stay negligible even for hundreds of millions of keys.
+ */
+public class MappedKeySet implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedKeySet.class);
+
+    /**
+     * Keeps the table in a single mapping, which is limited to 2GB.
+     */
+    public static final int MAX_CAPACITY = 1 << 26;
+
+    /**
+     * Returned by {@link #getTimestamp(long)} for fingerprints that are not in the set.
+     */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x4e4b5953;
+    private static final int VERSION = 2;
+
+    // fingerprint, timestamp
+    private static final int SLOT_SIZE = 16;
+
+    // magic, version, capacity, size, used
+    private static final int HEADER_SIZE = 24;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 12;
+    private static final int USED_OFFSET = 16;
+
+    private static final long EMPTY = 0L;
+    private static final long DELETED = 1L;
+
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private final File m_file;
+
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    private MappedByteBuffer m_buffer;
+    private int m_capacity;
+    private int m_size;
+    /* live and deleted slots */
+    private int m_used;
+    private boolean m_full = false;
+
+    public MappedKeySet(File file, int initialCapacity) throws IOException {
+        m_file = file;
+        if (!load()) {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            create(m_file, tableSizeFor(initialCapacity));
+            map(m_file);
+        }
+        LOG.info("Using {} with {} keys and a capacity of {}.", m_file, m_size, m_capacity);
+    }
+
+    /**
+     * Returns the fingerprint of the given key.
+     */
+    public static long fingerprint(String key) {
+        final long fingerprint = Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+        // Keep clear of the reserved slot markers
+        return (fingerprint == EMPTY || fingerprint == DELETED) ? fingerprint + 2 : fingerprint;
+    }
+
+    public boolean contains(long fingerprint) {
+        return getTimestamp(fingerprint) != ABSENT;
+    }
+
+    /**
+     * Returns the time at which the fingerprint was last added.
+     *
+     * @return the timestamp, or {@link #ABSENT} if the fingerprint is not in the set
+     */
+    public long getTimestamp(long fingerprint) {
+        m_lock.readLock().lock();
+        try {
+            final int slot = indexOf(fingerprint);
+            return slot >= 0 ? getStamp(slot) : ABSENT;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the fingerprint to the set, stamped with the current time.
+     *
+     * @return false if the fingerprint was already present, or if the set is full
+     */
+    public boolean add(long fingerprint) {
+        return add(fingerprint, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds the fingerprint to the set, or updates its timestamp if it is already present.
+     *
+     * @return false if the fingerprint was already present, or if the set is full
+     */
+    public boolean add(long fingerprint, long timestamp) {
+        m_lock.writeLock().lock();
+        try {
+            final int existing = indexOf(fingerprint);
+            if (existing >= 0) {
+                putStamp(existing, timestamp);
+                return false;
+            }
+            if (m_used + 1 > m_capacity * MAX_LOAD_FACTOR && !rehash()) {
+                return false;
+            }
+
+            int slot = slotFor(fingerprint);
+            while (true) {
+                final long current = get(slot);
+                if (current == EMPTY || current == DELETED) {
+                    if (current == EMPTY) {
+                        m_used++;
+                    }
+                    put(slot, fingerprint);
+                    putStamp(slot, timestamp);
+                    m_size++;
+                    writeCounts();
+                    return true;
+                }
+                slot = (slot + 1) & (m_capacity - 1);
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the fingerprint from the set.
+     *
+     * @return true if the fingerprint was present
+     */
+    public boolean remove(long fingerprint) {
+        m_lock.writeLock().lock();
+        try {
+            final int slot = indexOf(fingerprint);
+            if (slot < 0) {
+                return false;
+            }
+            put(slot, DELETED);
+            m_size--;
+            writeCounts();
+            return true;
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the fingerprints that were last added before the given time.
+     *
+     * @return the number of fingerprints removed
+     */
+    public int removeOlderThan(long timestamp) {
+        m_lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int slot = 0; slot < m_capacity; slot++) {
+                final long current = get(slot);
+                if (current != EMPTY && current != DELETED && getStamp(slot) < timestamp) {
+                    put(slot, DELETED);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                m_size -= removed;
+                writeCounts();
+                LOG.debug("Removed {} keys older than {} from {}.", removed, timestamp, m_file);
+            }
+            return removed;
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        m_lock.readLock().lock();
+        try {
+            return m_size;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    public int capacity() {
+        m_lock.readLock().lock();
+        try {
+            return m_capacity;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the changes to disk.
+     */
+    public void flush() {
+        m_lock.writeLock().lock();
+        try {
+            m_buffer.force();
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private int indexOf(long fingerprint) {
+        int slot = slotFor(fingerprint);
+        while (true) {
+            final long current = get(slot);
+            if (current == fingerprint) {
+                return slot;
+            } else if (current == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & (m_capacity - 1);
+        }
+    }
+
+    private int slotFor(long fingerprint) {
+        return (int)(fingerprint ^ (fingerprint >>> 32)) & (m_capacity - 1);
+    }
+
+    private long get(int slot) {
+        return m_buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private void put(int slot, long fingerprint) {
+        m_buffer.putLong(HEADER_SIZE + slot * SLOT_SIZE, fingerprint);
+    }
+
+    private long getStamp(int slot) {
+        return m_buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+    }
+
+    private void putStamp(int slot, long timestamp) {
+        m_buffer.putLong(HEADER_SIZE + slot * SLOT_SIZE + 8, timestamp);
+    }
+
+    private void writeCounts() {
+        m_buffer.putInt(SIZE_OFFSET, m_size);
+        m_buffer.putInt(USED_OFFSET, m_used);
+    }
+
+    /**
+     * Copies the live fingerprints to a new table, twice as large unless
+     * most of the used slots are deletions.
+     *
+     * @return false if the table cannot grow any further
+     */
+    private boolean rehash() {
+        final int capacity = (m_size + 1 > m_capacity * MAX_LOAD_FACTOR / 2) ? m_capacity * 2 : m_capacity;
+        if (capacity > MAX_CAPACITY) {
+            if (!m_full) {
+                LOG.warn("{} is full with {} keys. No further keys will be added.", m_file, m_size);
+                m_full = true;
+            }
+            return false;
+        }
+
+        final long[] fingerprints = new long[m_size];
+        final long[] stamps = new long[m_size];
+        int n = 0;
+        for (int slot = 0; slot < m_capacity; slot++) {
+            final long current = get(slot);
+            if (current != EMPTY && current != DELETED) {
+                fingerprints[n] = current;
+                stamps[n++] = getStamp(slot);
+            }
+        }
+
+        final File tmp = new File(m_file.getPath() + ".tmp");
+        try {
+            create(tmp, capacity);
+            Files.move(tmp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            map(m_file);
+        } catch (IOException e) {
+            LOG.warn("Failed to grow {} to {} slots. No further keys will be added.", m_file, capacity, e);
+            m_full = true;
+            return false;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int slot = slotFor(fingerprints[i]);
+            while (get(slot) != EMPTY) {
+                slot = (slot + 1) & (m_capacity - 1);
+            }
+            put(slot, fingerprints[i]);
+            putStamp(slot, stamps[i]);
+        }
+        m_size = n;
+        m_used = n;
+        writeCounts();
+        LOG.debug("Rehashed {} keys in {} into {} slots.", n, m_file, capacity);
+        return true;
+    }
+
+    private boolean load() throws IOException {
+        if (!m_file.canRead() || m_file.length() < HEADER_SIZE) {
+            return false;
+        }
+        map(m_file);
+        final int capacity = m_buffer.getInt(CAPACITY_OFFSET);
+        if (m_buffer.getInt(0) != MAGIC || m_buffer.getInt(4) != VERSION
+                || capacity <= 0 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1
+                || m_file.length() != HEADER_SIZE + (long)capacity * SLOT_SIZE) {
+            LOG.warn("Ignoring the contents of {} since it is not a valid key set.", m_file);
+            return false;
+        }
+        return true;
+    }
+
+    private static void create(File file, int capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Extending the file zero-fills the table, which marks all of the slots as empty
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + (long)capacity * SLOT_SIZE);
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(capacity);
+            raf.writeInt(0);
+            raf.writeInt(0);
+        }
+    }
+
+    private void map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            m_buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+        m_capacity = m_buffer.getInt(CAPACITY_OFFSET);
+        m_size = m_buffer.getInt(SIZE_OFFSET);
+        m_used = m_buffer.getInt(USED_OFFSET);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        final int slots = (int)Math.min(MAX_CAPACITY, Math.max(16L, (long)Math.ceil(capacity / MAX_LOAD_FACTOR)));
+        return Integer.bitCount(slots) == 1 ? slots : Math.min(MAX_CAPACITY, Integer.highestOneBit(slots) << 1);
+    }
+}
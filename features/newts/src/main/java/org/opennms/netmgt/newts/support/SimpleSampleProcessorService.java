@@ -37,6 +37,7 @@ import java.util.concurrent.TimeUnit;
 import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.SampleProcessor;
 import org.opennms.newts.api.SampleProcessorService;
+import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * A simple sample processing service that executes the sample processors
@@ -48,6 +49,9 @@ public class SimpleSampleProcessorService implements SampleProcessorService {
 
     private final Set<SampleProcessor> m_processors;
 
+    @Autowired(required=false)
+    private IndexWriteFilter m_indexWriteFilter;
+
     public SimpleSampleProcessorService(Set<SampleProcessor> processors) {
         if (NewtsUtils.DISABLE_INDEXING) {
             // Currently the only processor is the indexing processor so
@@ -60,7 +64,22 @@ public class SimpleSampleProcessorService implements SampleProcessorService {
 
     @Override
     public void submit(Collection<Sample> samples) {
-        m_processors.stream().forEach(p -> p.submit(samples));
+        if (m_indexWriteFilter == null || m_processors.isEmpty()) {
+            m_processors.stream().forEach(p -> p.submit(samples));
+            return;
+        }
+
+        // The indexing processor is the only one, so samples that were already indexed need not be processed
+        final Collection<Sample> toIndex = m_indexWriteFilter.filter(samples);
+        if (toIndex.isEmpty()) {
+            return;
+        }
+        m_processors.stream().forEach(p -> p.submit(toIndex));
+        m_indexWriteFilter.indexed(toIndex);
+    }
+
+    public void setIndexWriteFilter(IndexWriteFilter indexWriteFilter) {
+        m_indexWriteFilter = indexWriteFilter;
     }
 
     @Override
@@ -29,8 +29,12 @@
 package org.opennms.netmgt.newts;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -119,6 +123,161 @@ public class NewtsWriterTest {
         assertEquals(ringBufferSize, sampleRepo.getNumSamplesInserted());
     }
 
+    /**
+     * Holds up the writer of a single shard and verifies that the samples
+     * that queue up in the meantime are inserted grouped by resource.
+     */
+    @Test
+    public void samplesAreGroupedByResourceWhenSharded() throws Exception {
+        Resource x = new Resource("x");
+        Resource y = new Resource("y");
+
+        GatedSampleRepository sampleRepo = new GatedSampleRepository();
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(16, 1024, 1, 1, 5000L, registry);
+        writer.setSampleRepository(sampleRepo);
+
+        writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(0))));
+        sampleRepo.awaitBlocked();
+
+        for (int i = 0; i < 10; i++) {
+            Resource r = i % 2 == 0 ? x : y;
+            Sample s = new Sample(Timestamp.now(), r, "y", MetricType.COUNTER, new Counter(i));
+            writer.insert(Lists.newArrayList(s));
+        }
+
+        sampleRepo.open();
+        writer.destroy();
+
+        List<Collection<Sample>> batches = sampleRepo.getBatches();
+        assertEquals(3, batches.size());
+        assertEquals(1, batches.get(0).size());
+        assertEquals(5, batches.get(1).size());
+        assertTrue(batches.get(1).stream().allMatch(s -> s.getResource().getId().equals("x")));
+        assertEquals(5, batches.get(2).size());
+        assertTrue(batches.get(2).stream().allMatch(s -> s.getResource().getId().equals("y")));
+        assertEquals(3, registry.histogram("ring-buffer.shard-0.batch-size").getCount());
+    }
+
+    /**
+     * Uses a latch to verify that a single shard inserts the batches
+     * of different resources concurrently when it has several writer threads.
+     */
+    @Test
+    public void shardsInsertConcurrently() throws Exception {
+        int numWriterThreads = 4;
+
+        LatchedSampleRepository sampleRepo = new LatchedSampleRepository(numWriterThreads);
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, 1024, numWriterThreads, 1, 5000L, registry);
+        writer.setSampleRepository(sampleRepo);
+
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < numWriterThreads; i++) {
+            samples.add(new Sample(Timestamp.now(), new Resource("r" + i), "y", MetricType.COUNTER, new Counter(i)));
+        }
+        writer.insert(samples);
+
+        // Only returns once all of the inserts were blocked on the latch at the same time
+        writer.destroy();
+        assertEquals(numWriterThreads, registry.histogram("ring-buffer.shard-0.batch-size").getCount());
+    }
+
+    /**
+     * Fills the ring buffer of a shard and verifies that the next insert
+     * waits for room instead of dropping the samples.
+     */
+    @Test
+    public void insertsBlockWhenShardIsFull() throws Exception {
+        Resource x = new Resource("x");
+
+        GatedSampleRepository sampleRepo = new GatedSampleRepository();
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, 2, 1, 1, 10000L, registry);
+        writer.setSampleRepository(sampleRepo);
+
+        writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(0))));
+        sampleRepo.awaitBlocked();
+        writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(1))));
+
+        Thread opener = new Thread(() -> {
+            try {
+                Thread.sleep(250);
+            } catch (InterruptedException e) {
+                throw Throwables.propagate(e);
+            }
+            sampleRepo.open();
+        });
+        opener.start();
+
+        // Blocks until the gate is opened
+        writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(2))));
+        opener.join();
+        writer.destroy();
+
+        assertEquals(3, sampleRepo.getNumSamplesInserted());
+        assertEquals(0, registry.meter("ring-buffer.dropped-samples").getCount());
+        assertEquals(1, registry.meter("ring-buffer.shard-0.blocked-publishes").getCount());
+    }
+
+    /**
+     * Verifies that samples are dropped once the publish timeout expires.
+     */
+    @Test
+    public void samplesAreDroppedWhenShardStaysFull() throws Exception {
+        Resource x = new Resource("x");
+
+        GatedSampleRepository sampleRepo = new GatedSampleRepository();
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, 2, 1, 1, 50L, registry);
+        writer.setSampleRepository(sampleRepo);
+
+        writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(0))));
+        sampleRepo.awaitBlocked();
+        writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(1))));
+        writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(2))));
+
+        assertEquals(1, registry.meter("ring-buffer.dropped-samples").getCount());
+        assertEquals(1, registry.meter("ring-buffer.shard-0.dropped-samples").getCount());
+
+        sampleRepo.open();
+        writer.destroy();
+        assertEquals(2, sampleRepo.getNumSamplesInserted());
+    }
+
+    private static class GatedSampleRepository extends MockSampleRepository {
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final List<Collection<Sample>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void insert(Collection<Sample> samples, boolean calculateTimeToLive) {
+            batches.add(new ArrayList<>(samples));
+            blocked.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        public void awaitBlocked() throws InterruptedException {
+            blocked.await();
+        }
+
+        public void open() {
+            gate.countDown();
+        }
+
+        public List<Collection<Sample>> getBatches() {
+            return batches;
+        }
+
+        public int getNumSamplesInserted() {
+            return batches.stream().mapToInt(Collection::size).sum();
+        }
+    }
+
     private static class LatchedSampleRepository extends MockSampleRepository {
         private final CountDownLatch latch;
 
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.newts.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class IndexWriteFilterTest {
+
+    private static final int TTL = 86400;
+
+    @Rule
+    public TemporaryFolder m_tempFolder = new TemporaryFolder();
+
+    @Test
+    public void filtersSamplesThatWereIndexedBeforeRestart() throws Exception {
+        final String file = new File(m_tempFolder.getRoot(), "keys.dat").getAbsolutePath();
+        final List<Sample> samples = Lists.newArrayList(
+                sample("a:b", "m1", ImmutableMap.of("k", "v")),
+                sample("a:b", "m2", ImmutableMap.of("k", "v")),
+                sample("a:c", "m1", null));
+
+        IndexWriteFilter filter = new IndexWriteFilter(file, 16, 8L, TTL, new MetricRegistry());
+        assertTrue(filter.isEnabled());
+        assertSame(samples, filter.filter(samples));
+        filter.indexed(samples);
+        assertTrue(filter.filter(samples).isEmpty());
+        filter.destroy();
+
+        // The keys survive a restart
+        filter = new IndexWriteFilter(file, 16, 8L, TTL, new MetricRegistry());
+        assertTrue(filter.filter(samples).isEmpty());
+
+        // New metrics and changed attributes still need to be indexed
+        final Sample newMetric = sample("a:b", "m3", ImmutableMap.of("k", "v"));
+        final Sample newAttribute = sample("a:b", "m1", ImmutableMap.of("k", "v2"));
+        Collection<Sample> toIndex = filter.filter(Lists.newArrayList(samples.get(0), newMetric, newAttribute));
+        assertEquals(Lists.newArrayList(newMetric, newAttribute), toIndex);
+
+        // Deleted resources are indexed again
+        filter.delete(Context.DEFAULT_CONTEXT, new Resource("a:c"));
+        toIndex = filter.filter(samples);
+        assertEquals(Lists.newArrayList(samples.get(2)), toIndex);
+        filter.destroy();
+    }
+
+    @Test
+    public void indexesSamplesAgainBeforeTheTtlExpires() throws Exception {
+        final String file = new File(m_tempFolder.getRoot(), "keys.dat").getAbsolutePath();
+        final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1000));
+        final Sample first = sample("a:b", "m1", ImmutableMap.of("k", "v"));
+        final Sample second = sample("a:c", "m1", null);
+        final List<Sample> samples = Lists.newArrayList(first, second);
+
+        IndexWriteFilter filter = new IndexWriteFilter(file, 16, 8L, TTL, new MetricRegistry(), now::get);
+        filter.indexed(samples);
+        assertTrue(filter.filter(samples).isEmpty());
+
+        // Only the second sample is indexed again later on
+        now.addAndGet(TimeUnit.HOURS.toMillis(6));
+        filter.indexed(Lists.newArrayList(second));
+
+        // Once half of the TTL has passed, the first sample is indexed again, both from the LRU and after a restart
+        now.addAndGet(TimeUnit.HOURS.toMillis(7));
+        assertEquals(Lists.newArrayList(first), filter.filter(samples));
+        filter.destroy();
+        filter = new IndexWriteFilter(file, 16, 8L, TTL, new MetricRegistry(), now::get);
+        assertEquals(Lists.newArrayList(first), filter.filter(samples));
+
+        filter.indexed(Lists.newArrayList(first));
+        assertTrue(filter.filter(samples).isEmpty());
+        filter.destroy();
+    }
+
+    @Test
+    public void keySetRemovesOldKeys() throws Exception {
+        final MappedKeySet keys = new MappedKeySet(new File(m_tempFolder.getRoot(), "old.dat"), 16);
+        assertTrue(keys.add(MappedKeySet.fingerprint("old"), 100L));
+        assertTrue(keys.add(MappedKeySet.fingerprint("refreshed"), 100L));
+        assertTrue(keys.add(MappedKeySet.fingerprint("new"), 300L));
+
+        // Adding a key again refreshes its timestamp
+        assertFalse(keys.add(MappedKeySet.fingerprint("refreshed"), 300L));
+        assertEquals(300L, keys.getTimestamp(MappedKeySet.fingerprint("refreshed")));
+
+        assertEquals(1, keys.removeOlderThan(200L));
+        assertEquals(2, keys.size());
+        assertFalse(keys.contains(MappedKeySet.fingerprint("old")));
+        assertEquals(MappedKeySet.ABSENT, keys.getTimestamp(MappedKeySet.fingerprint("old")));
+        assertTrue(keys.contains(MappedKeySet.fingerprint("refreshed")));
+        assertTrue(keys.contains(MappedKeySet.fingerprint("new")));
+        keys.close();
+    }
+
+    @Test
+    public void passesAllSamplesWhenDisabled() {
+        final IndexWriteFilter filter = new IndexWriteFilter("", 16, 8L, TTL, new MetricRegistry());
+        final List<Sample> samples = Lists.newArrayList(sample("a:b", "m1", null));
+        assertFalse(filter.isEnabled());
+        filter.indexed(samples);
+        assertSame(samples, filter.filter(samples));
+    }
+
+    @Test
+    public void keySetGrowsAndReloads() throws Exception {
+        final File file = new File(m_tempFolder.getRoot(), "grow.dat");
+        MappedKeySet keys = new MappedKeySet(file, 4);
+        final int initialCapacity = keys.capacity();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(keys.add(MappedKeySet.fingerprint("key" + i)));
+        }
+        assertFalse(keys.add(MappedKeySet.fingerprint("key0")));
+        assertTrue(keys.remove(MappedKeySet.fingerprint("key1")));
+        assertEquals(999, keys.size());
+        assertTrue(keys.capacity() > initialCapacity);
+        keys.close();
+
+        keys = new MappedKeySet(file, 4);
+        assertEquals(999, keys.size());
+        assertTrue(keys.contains(MappedKeySet.fingerprint("key0")));
+        assertFalse(keys.contains(MappedKeySet.fingerprint("key1")));
+        assertTrue(keys.contains(MappedKeySet.fingerprint("key999")));
+        assertFalse(keys.contains(MappedKeySet.fingerprint("key1000")));
+        keys.close();
+    }
+
+    private static Sample sample(String resourceId, String metric, Map<String, String> attributes) {
+        final Resource resource = new Resource(resourceId, Optional.fromNullable(attributes));
+        return new Sample(Timestamp.now(), Context.DEFAULT_CONTEXT, resource, metric, MetricType.GAUGE, new Gauge(1.0d));
+    }
+}
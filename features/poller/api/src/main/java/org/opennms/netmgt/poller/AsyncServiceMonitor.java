@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that is able to perform a poll without blocking
+ * the calling thread for the duration of the poll.
+ * </p>
+ *
+ * <p>
+ * When a monitor implements this interface, the poller invokes
+ * {@link #pollAsync(MonitoredService, Map)} instead of
+ * {@link #poll(MonitoredService, Map)} and only spends a thread on the
+ * result once the returned future completes. Implementations should perform
+ * their I/O with non-blocking channels and must not block in
+ * {@link #pollAsync(MonitoredService, Map)} itself.
+ * </p>
+ *
+ * <p>
+ * The synchronous {@link #poll(MonitoredService, Map)} must remain
+ * available and return the same result, typically by waiting on the future.
+ * </p>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * Starts polling the given service.
+     *
+     * @param svc
+     *            Includes details about to the service being monitored.
+     * @param parameters
+     *            Includes the service parameters defined in <EM>poller-configuration.xml</EM> and those
+     *            returned by {@link #getRuntimeAttributes(MonitoredService, Map)}.
+     * @return a future completed with the availability of the service. Failures
+     *         that the synchronous poll would report as a status must be reported
+     *         as a status here too, rather than completing the future exceptionally.
+     * @exception java.lang.RuntimeException
+     *                Thrown if the parameters are invalid and the poll could not be started.
+     */
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters);
+
+}
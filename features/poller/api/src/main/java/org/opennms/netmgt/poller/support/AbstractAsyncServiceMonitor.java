@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.support;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+
+/**
+ * Base class for monitors that implement the non-blocking
+ * {@link AsyncServiceMonitor#pollAsync(MonitoredService, Map)} and derive
+ * the synchronous poll from it.
+ */
+public abstract class AbstractAsyncServiceMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+
+    /**
+     * {@inheritDoc}
+     *
+     * Waits for the result of {@link #pollAsync(MonitoredService, Map)}.
+     */
+    @Override
+    public PollStatus poll(final MonitoredService svc, final Map<String, Object> parameters) {
+        try {
+            return pollAsync(svc, parameters).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
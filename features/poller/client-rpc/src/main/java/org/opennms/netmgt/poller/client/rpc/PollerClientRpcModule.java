@@ -34,6 +34,7 @@ import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.poller.ServiceMonitorRegistry;
@@ -44,6 +45,13 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
 
     public static final String RPC_MODULE_ID = "Poller";
 
+    /**
+     * When set to true, monitors that implement {@link AsyncServiceMonitor} are
+     * polled with {@link AsyncServiceMonitor#pollAsync} instead of on a pool thread.
+     * Same property as the one that enables asynchronous polling in pollerd.
+     */
+    public static final String ASYNC_POLLING_PROPERTY = "org.opennms.netmgt.poller.async";
+
     @Autowired
     private ServiceMonitorRegistry serviceMonitorRegistry;
 
@@ -51,6 +59,8 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
     @Qualifier("pollerExecutor")
     private Executor executor;
 
+    private boolean asyncPollingEnabled = Boolean.getBoolean(ASYNC_POLLING_PROPERTY);
+
     public PollerClientRpcModule() {
         super(PollerRequestDTO.class, PollerResponseDTO.class);
     }
@@ -68,6 +78,24 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
             return CompletableFuture.completedFuture(new PollerResponseDTO(PollStatus.unknown("No monitor found with class name '" + className + "'.")));
         }
 
+        if (asyncPollingEnabled && monitor instanceof AsyncServiceMonitor) {
+            // Don't tie up a thread from the pool while the poll is in flight,
+            // only hand the result over to it once it is available
+            CompletableFuture<PollStatus> future;
+            try {
+                future = ((AsyncServiceMonitor)monitor).pollAsync(request, request.getMonitorParameters());
+            } catch (RuntimeException e) {
+                future = CompletableFuture.completedFuture(PollStatus.unknown(e.getMessage()));
+            }
+            return future.handleAsync((pollStatus, ex) -> {
+                if (ex != null) {
+                    final Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    pollStatus = PollStatus.unknown(cause.getMessage());
+                }
+                return new PollerResponseDTO(pollStatus);
+            }, executor);
+        }
+
         return CompletableFuture.supplyAsync(new Supplier<PollerResponseDTO>() {
             @Override
             public PollerResponseDTO get() {
@@ -91,6 +119,10 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
         this.executor = executor;
     }
 
+    public void setAsyncPollingEnabled(boolean asyncPollingEnabled) {
+        this.asyncPollingEnabled = asyncPollingEnabled;
+    }
+
     @Override
     public PollerResponseDTO createResponseWithException(Throwable ex) {
         return new PollerResponseDTO(ex);
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.poller.client.rpc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+
+public class PollerClientRpcModuleTest {
+
+    @Test(timeout = 30000)
+    public void pollsOnAPoolThreadByDefault() throws Exception {
+        final PollerClientRpcModule module = createModule();
+        assertEquals("sync", poll(module).getReason());
+    }
+
+    @Test(timeout = 30000)
+    public void pollsAsynchronouslyWhenEnabled() throws Exception {
+        final PollerClientRpcModule module = createModule();
+        module.setAsyncPollingEnabled(true);
+        assertEquals("async", poll(module).getReason());
+    }
+
+    private static PollerClientRpcModule createModule() {
+        final PollerClientRpcModule module = new PollerClientRpcModule();
+        module.setExecutor(Runnable::run);
+        module.setServiceMonitorRegistry(new ServiceMonitorRegistry() {
+            @Override
+            public ServiceMonitor getMonitorByClassName(String className) {
+                return new DualMonitor();
+            }
+
+            @Override
+            public Set<String> getMonitorClassNames() {
+                return Collections.singleton(DualMonitor.class.getCanonicalName());
+            }
+        });
+        return module;
+    }
+
+    private static PollStatus poll(PollerClientRpcModule module) throws Exception {
+        final PollerRequestDTO request = new PollerRequestDTO();
+        request.setClassName(DualMonitor.class.getCanonicalName());
+        return module.execute(request).get(10, TimeUnit.SECONDS).getPollStatus();
+    }
+
+    /**
+     * Tells which of its polls was used.
+     */
+    private static class DualMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+        @Override
+        public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+            return PollStatus.unavailable("sync");
+        }
+
+        @Override
+        public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+            return CompletableFuture.completedFuture(PollStatus.unavailable("async"));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.commons.lang.StringUtils;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncIoSupport;
+import org.opennms.netmgt.poller.monitors.support.AsyncSocketClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A variant of the {@link HttpMonitor} that performs its I/O without
+ * blocking a thread for the duration of the poll. It accepts the same
+ * parameters and produces the same results as the HttpMonitor, but only
+ * supports plain HTTP.
+ *
+ * The whole response is read before it is evaluated, so the response time
+ * is taken when the status line arrives, as with the HttpMonitor.
+ */
+public class AsyncHttpMonitor extends HttpMonitor implements AsyncServiceMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpMonitor.class);
+
+    /** {@inheritDoc} */
+    @Override
+    public PollStatus poll(final MonitoredService svc, final Map<String, Object> parameters) {
+        try {
+            return pollAsync(svc, parameters).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final HttpMonitorClient httpClient = new HttpMonitorClient(svc.getNodeLabel(), svc.getAddress(), new TreeMap<String, Object>(parameters));
+        return pollPort(svc, parameters, httpClient, 0)
+                .thenApply(v -> httpClient.determinePollStatusResponse());
+    }
+
+    private CompletableFuture<Void> pollPort(final MonitoredService svc, final Map<String, Object> parameters, final HttpMonitorClient httpClient, final int portIndex) {
+        final int[] ports = determinePorts(httpClient.getParameters());
+        if (portIndex >= ports.length || httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final InetAddress addr = svc.getAddress();
+        final int currentPort = ports[portIndex];
+        httpClient.setTimeoutTracker(new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT));
+        LOG.debug("Port = {}, Address = {}, {}", currentPort, addr, httpClient.getTimeoutTracker());
+
+        httpClient.setCurrentPort(currentPort);
+        final String serviceInfo = new StringBuilder(addr.toString())
+        .append(":").append(svc.getSvcName()).append(":").append(currentPort)
+        .toString();
+
+        httpClient.getTimeoutTracker().reset();
+        final boolean[] skipRemainingPorts = { false };
+        return attempt(httpClient, serviceInfo, skipRemainingPorts)
+                .thenCompose(v -> {
+                    if (skipRemainingPorts[0]) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    return pollPort(svc, parameters, httpClient, portIndex + 1);
+                });
+    }
+
+    private CompletableFuture<Void> attempt(final HttpMonitorClient httpClient, final String serviceInfo, final boolean[] skipRemainingPorts) {
+        final TimeoutTracker tracker = httpClient.getTimeoutTracker();
+        if (!tracker.shouldRetry() || httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final AsyncSocketClient[] client = { null };
+        final double[] responseTime = { 0 };
+        final StringBuilder response = new StringBuilder();
+        final long soTimeout = tracker.getSoTimeout();
+
+        return AsyncIoSupport.startAttempt(tracker)
+            .thenCompose(v -> AsyncSocketClient.connect(new InetSocketAddress(httpClient.m_addr, httpClient.getCurrentPort()), tracker.getConnectionTimeout()))
+            .thenCompose(c -> {
+                client[0] = c;
+                httpClient.setPollStatus(PollStatus.SERVICE_UNRESPONSIVE);
+                LOG.debug("AsyncHttpMonitor: connected to host: {} on port: {}", httpClient.m_addr, httpClient.getCurrentPort());
+                return c.write(httpClient.getHttpCommand().getBytes(), soTimeout);
+            })
+            .thenCompose(v -> client[0].readLine(soTimeout))
+            .thenCompose(statusLine -> {
+                responseTime[0] = tracker.elapsedTimeInMillis();
+                if (statusLine == null) {
+                    return CompletableFuture.<String>completedFuture(null);
+                }
+                response.append(statusLine).append('\n');
+                if (StringUtils.isBlank(httpClient.getResponseText())) {
+                    return CompletableFuture.<String>completedFuture(null);
+                }
+                // collect the rest of the response, the server closes the connection when it is done
+                return client[0].readLineMatching(line -> {
+                    response.append(line).append('\n');
+                    return false;
+                }, soTimeout);
+            })
+            .handle((v, e) -> {
+                if (client[0] != null) {
+                    client[0].close();
+                }
+                try {
+                    if (e != null) {
+                        throw AsyncIoSupport.unwrap(e);
+                    }
+                    httpClient.receiveHttpResponse(new BufferedReader(new StringReader(response.toString())));
+                    verifyResponse(httpClient, serviceInfo, responseTime[0]);
+                } catch (Throwable t) {
+                    if (handlePollException(t, httpClient, serviceInfo)) {
+                        skipRemainingPorts[0] = true;
+                    }
+                }
+                return null;
+            })
+            .thenCompose(v -> {
+                tracker.nextAttempt();
+                return attempt(httpClient, serviceInfo, skipRemainingPorts);
+            });
+    }
+
+}
@@ -37,16 +37,24 @@ import java.net.NoRouteToHostException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.AsyncDatagramClient;
+import org.opennms.netmgt.poller.monitors.support.AsyncIoSupport;
+import org.opennms.netmgt.poller.monitors.support.AsyncSocketClient;
 import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
 import org.xbill.DNS.Message;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.Record;
@@ -65,7 +73,7 @@ import org.xbill.DNS.Type;
  * @author <A HREF="mailto:tarus@opennms.org">Tarus Balog </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
-final public class DnsMonitor extends AbstractServiceMonitor {
+final public class DnsMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     private static final Logger LOG = LoggerFactory.getLogger(DnsMonitor.class);
     /**
      * Default DNS port.
@@ -124,22 +132,11 @@ final public class DnsMonitor extends AbstractServiceMonitor {
 
         // Host to lookup?
         //
-        String lookup = ParameterMap.getKeyedString(parameters, "lookup", null);
-        if (lookup == null || lookup.length() == 0) {
-            // Get hostname of local machine for future DNS lookups
-        	lookup = InetAddressUtils.getLocalHostAddressAsString();
-        	if (lookup == null) {
-        		throw new UnsupportedOperationException("Unable to look up local host address.");
-        	}
-        }
+        String lookup = getLookup(parameters);
 
         // What do we consider fatal?
         //
-        final List<Integer> fatalCodes = new ArrayList<>();
-        for (final int code : ParameterMap.getKeyedIntegerArray(parameters, "fatal-response-codes", DEFAULT_FATAL_RESP_CODES)) {
-            fatalCodes.add(code);
-        }
-        
+        final List<Integer> fatalCodes = getFatalCodes(parameters);
 
 	int minAnswers = ParameterMap.getKeyedInteger(parameters, "min-answers", DEFAULT_MIN_ANSWERS);
 	int maxAnswers = ParameterMap.getKeyedInteger(parameters, "max-answers", DEFAULT_MAX_ANSWERS);
@@ -164,6 +161,62 @@ final public class DnsMonitor extends AbstractServiceMonitor {
         return serviceStatus;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <P>
+     * Same as {@link #poll(MonitoredService, Map)}, but the queries are sent
+     * from a socket shared by all DNS polls and no thread is held while
+     * waiting for the response. A truncated response is queried again over
+     * TCP, like the {@link SimpleResolver} used by the synchronous poll does.
+     * </P>
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        // get the parameters
+        //
+        TimeoutTracker timeoutTracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+
+        // Host to lookup?
+        //
+        String lookup = getLookup(parameters);
+
+        // What do we consider fatal?
+        //
+        final List<Integer> fatalCodes = getFatalCodes(parameters);
+
+	int minAnswers = ParameterMap.getKeyedInteger(parameters, "min-answers", DEFAULT_MIN_ANSWERS);
+	int maxAnswers = ParameterMap.getKeyedInteger(parameters, "max-answers", DEFAULT_MAX_ANSWERS);
+
+        // get the address and DNS address request
+        //
+        final InetAddress addr = svc.getAddress();
+
+        timeoutTracker.reset();
+        return pollDNSAsync(timeoutTracker, port, addr, lookup, fatalCodes, minAnswers, maxAnswers);
+    }
+
+    private static String getLookup(Map<String, Object> parameters) {
+        String lookup = ParameterMap.getKeyedString(parameters, "lookup", null);
+        if (lookup == null || lookup.length() == 0) {
+            // Get hostname of local machine for future DNS lookups
+        	lookup = InetAddressUtils.getLocalHostAddressAsString();
+        	if (lookup == null) {
+        		throw new UnsupportedOperationException("Unable to look up local host address.");
+        	}
+        }
+        return lookup;
+    }
+
+    private static List<Integer> getFatalCodes(Map<String, Object> parameters) {
+        final List<Integer> fatalCodes = new ArrayList<>();
+        for (final int code : ParameterMap.getKeyedIntegerArray(parameters, "fatal-response-codes", DEFAULT_FATAL_RESP_CODES)) {
+            fatalCodes.add(code);
+        }
+        return fatalCodes;
+    }
+
     private PollStatus pollDNS(final TimeoutTracker timeoutTracker, final int port, final InetAddress address, final String lookup, final List<Integer> fatalCodes, int minAnswers, int maxAnswers) {
     	final String addr = InetAddressUtils.str(address);
         for (timeoutTracker.reset(); timeoutTracker.shouldRetry(); timeoutTracker.nextAttempt()) {
@@ -176,12 +229,39 @@ final public class DnsMonitor extends AbstractServiceMonitor {
                 resolver.setTimeout((timeout < 1 ? 1 : (int) timeout));
                 final Record question = Record.newRecord(name, Type.A, DClass.IN);
                 final Message query = Message.newQuery(question);
-                PollStatus status;
 
                 timeoutTracker.startAttempt();
                 final Message response = resolver.send(query);
                 double responseTime = timeoutTracker.elapsedTimeInMillis();
 
+                return checkResponse(response, responseTime, addr, fatalCodes, minAnswers, maxAnswers);
+
+            } catch (final InterruptedIOException e) {
+                // No response received, retry without marking the poll failed. If we get this condition over and over until 
+                // the retries are exhausted, it will leave serviceStatus null and we'll get the log message at the bottom 
+            } catch (final NoRouteToHostException e) {
+                String reason1 = "No route to host exception for address: " + addr;
+                LOG.debug(reason1, e);
+                return PollStatus.unavailable(reason1);
+            } catch (final ConnectException e) {
+                String reason1 = "Connection exception for address: " + addr;
+                LOG.debug(reason1, e);
+                return PollStatus.unavailable(reason1);
+            } catch (final IOException e) {
+                String reason1 = "IOException while polling address: " + addr + " " + e.getMessage();
+                LOG.debug(reason1, e);
+                return PollStatus.unavailable(reason1);
+            }
+        }
+        String reason = "Never received valid DNS response for address: " + addr;
+       
+        LOG.debug(reason);
+        return PollStatus.unavailable(reason);
+    }
+
+    private static PollStatus checkResponse(final Message response, final double responseTime, final String addr, final List<Integer> fatalCodes, int minAnswers, int maxAnswers) {
+                PollStatus status;
+
                 final Integer rcode = response.getHeader().getRcode();
                 LOG.debug("received response code: {}", rcode);
 
@@ -211,29 +291,104 @@ final public class DnsMonitor extends AbstractServiceMonitor {
                     LOG.debug("valid DNS response received, responseTime = {}ms", responseTime);
                     return status;
                 }
+    }
 
-            } catch (final InterruptedIOException e) {
-                // No response received, retry without marking the poll failed. If we get this condition over and over until 
-                // the retries are exhausted, it will leave serviceStatus null and we'll get the log message at the bottom 
-            } catch (final NoRouteToHostException e) {
-                String reason1 = "No route to host exception for address: " + addr;
-                LOG.debug(reason1, e);
-                return PollStatus.unavailable(reason1);
-            } catch (final ConnectException e) {
-                String reason1 = "Connection exception for address: " + addr;
-                LOG.debug(reason1, e);
-                return PollStatus.unavailable(reason1);
-            } catch (final IOException e) {
-                String reason1 = "IOException while polling address: " + addr + " " + e.getMessage();
-                LOG.debug(reason1, e);
-                return PollStatus.unavailable(reason1);
-            }
+    private CompletableFuture<PollStatus> pollDNSAsync(final TimeoutTracker timeoutTracker, final int port, final InetAddress address, final String lookup, final List<Integer> fatalCodes, int minAnswers, int maxAnswers) {
+        final String addr = InetAddressUtils.str(address);
+        if (!timeoutTracker.shouldRetry()) {
+            String reason = "Never received valid DNS response for address: " + addr;
+            LOG.debug(reason);
+            return CompletableFuture.completedFuture(PollStatus.unavailable(reason));
         }
-        String reason = "Never received valid DNS response for address: " + addr;
-       
-        LOG.debug(reason);
-        return PollStatus.unavailable(reason);
+
+        final Message query;
+        try {
+            final Name name = Name.fromString(lookup, Name.root);
+            final Record question = Record.newRecord(name, Type.A, DClass.IN);
+            query = Message.newQuery(question);
+        } catch (final IOException e) {
+            String reason1 = "IOException while polling address: " + addr + " " + e.getMessage();
+            LOG.debug(reason1, e);
+            return CompletableFuture.completedFuture(PollStatus.unavailable(reason1));
+        }
+        double timeout = timeoutTracker.getSoTimeout() / 1000d;
+        final long timeoutInMillis = (timeout < 1 ? 1 : (int) timeout) * 1000L;
+        final InetSocketAddress server = new InetSocketAddress(address, port);
+
+        return AsyncIoSupport.startAttempt(timeoutTracker)
+            .thenCompose(v -> AsyncDatagramClient.getInstance().exchange(server, id -> {
+                query.getHeader().setID(id);
+                return query.toWire();
+            }, timeoutInMillis))
+            .thenCompose(bytes -> {
+                final Message response;
+                try {
+                    response = new Message(bytes);
+                } catch (final IOException e) {
+                    throw new CompletionException(e);
+                }
+                if (response.getHeader().getFlag(Flags.TC)) {
+                    // The answers did not fit in a datagram, ask again over TCP
+                    LOG.debug("received a truncated response from {}, retrying over TCP", addr);
+                    return sendOverTcp(server, query, timeoutInMillis);
+                }
+                return CompletableFuture.completedFuture(response);
+            })
+            .thenApply(response -> checkResponse(response, timeoutTracker.elapsedTimeInMillis(), addr, fatalCodes, minAnswers, maxAnswers))
+            .handle((status, e) -> {
+                if (e == null) {
+                    return CompletableFuture.completedFuture(status);
+                }
+                final Throwable cause = AsyncIoSupport.unwrap(e);
+                if (cause instanceof InterruptedIOException) {
+                    // No response received, retry without marking the poll failed. If we get this condition over and over until
+                    // the retries are exhausted, we'll get the log message once they are
+                    timeoutTracker.nextAttempt();
+                    return pollDNSAsync(timeoutTracker, port, address, lookup, fatalCodes, minAnswers, maxAnswers);
+                } else if (cause instanceof NoRouteToHostException) {
+                    String reason1 = "No route to host exception for address: " + addr;
+                    LOG.debug(reason1, cause);
+                    return CompletableFuture.completedFuture(PollStatus.unavailable(reason1));
+                } else if (cause instanceof ConnectException) {
+                    String reason1 = "Connection exception for address: " + addr;
+                    LOG.debug(reason1, cause);
+                    return CompletableFuture.completedFuture(PollStatus.unavailable(reason1));
+                } else if (cause instanceof IOException) {
+                    String reason1 = "IOException while polling address: " + addr + " " + cause.getMessage();
+                    LOG.debug(reason1, cause);
+                    return CompletableFuture.completedFuture(PollStatus.unavailable(reason1));
+                }
+                final CompletableFuture<PollStatus> failed = new CompletableFuture<>();
+                failed.completeExceptionally(cause);
+                return failed;
+            })
+            .thenCompose(Function.identity());
     }
 
+    /**
+     * Sends the query over TCP, where each message is preceded by its length
+     * in two bytes.
+     */
+    private static CompletableFuture<Message> sendOverTcp(final InetSocketAddress server, final Message query, final long timeoutInMillis) {
+        return AsyncSocketClient.connect(server, timeoutInMillis).thenCompose(client -> {
+            final byte[] wire = query.toWire();
+            final byte[] request = new byte[wire.length + 2];
+            request[0] = (byte)(wire.length >>> 8);
+            request[1] = (byte)wire.length;
+            System.arraycopy(wire, 0, request, 2, wire.length);
 
+            final CompletableFuture<Message> response = client.write(request, timeoutInMillis)
+                .thenCompose(v -> client.read(2, timeoutInMillis))
+                .thenCompose(length -> client.read(((length[0] & 0xff) << 8) | (length[1] & 0xff), timeoutInMillis))
+                .thenApply(bytes -> {
+                    try {
+                        return new Message(bytes);
+                    } catch (final IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+            response.whenComplete((message, e) -> client.close());
+            return response;
+        });
+    }
 }
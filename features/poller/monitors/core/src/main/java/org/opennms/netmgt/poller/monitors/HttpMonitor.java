@@ -83,7 +83,7 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
     /**
      * Default retries.
      */
-    private static final int DEFAULT_RETRY = 0;
+    static final int DEFAULT_RETRY = 0;
 
     /**
      * Default URL to 'GET'
@@ -94,7 +94,7 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
      * Default timeout. Specifies how long (in milliseconds) to block waiting for data from the
      * monitored interface.
      */
-    private static final int DEFAULT_TIMEOUT = 3000; // 3 second timeout on read()
+    static final int DEFAULT_TIMEOUT = 3000; // 3 second timeout on read()
 
     public static final String PARAMETER_VERBOSE = "verbose";
     public static final String PARAMETER_USER_AGENT = "user-agent";
@@ -151,52 +151,11 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
                     LOG.debug("HttpMonitor: connected to host: {} on port: {}", addr, currentPort);
 
                     httpClient.sendHttpCommand();
-                    
-                    if (httpClient.isEndOfStream()) {
-                        continue;
-                    }
-
-                    httpClient.setResponseTime(httpClient.getTimeoutTracker().elapsedTimeInMillis());
-                    logResponseTimes(httpClient.getResponseTime(), httpClient.getCurrentLine());
-
-                    if (httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE && StringUtils.isNotBlank(httpClient.getResponseText())) {
-                        httpClient.setPollStatus(PollStatus.SERVICE_UNAVAILABLE);
-                        httpClient.readLinedMatching();
-                        
-                        if (httpClient.isEndOfStream()) {
-                            continue;
-                        }
-
-                        httpClient.read();
-
-                        if (!httpClient.isResponseTextFound()) {
-                            String message = "Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response for " + serviceInfo;
-                            LOG.debug(message);
-                            httpClient.setReason("Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response");
-                        }
-                    }
-                    
-                } catch (NoRouteToHostException e) {
-                    LOG.warn("checkStatus: No route to host exception while polling {}", serviceInfo, e);
-                    portIndex = determinePorts(httpClient.getParameters()).length; // Will cause outer for(;;) to terminate
-                    httpClient.setReason("No route to host exception");
-                } catch (SocketTimeoutException e) {
-                    LOG.info("checkStatus: HTTP socket connection for service {} timed out with {}", serviceInfo, httpClient.getTimeoutTracker().toString());
-                    httpClient.setReason("HTTP connection timeout");
-                } catch (InterruptedIOException e) {
-                    LOG.info(String.format("checkStatus: HTTP connection for service {} interrupted after {} bytes transferred with {}", serviceInfo, e.bytesTransferred, httpClient.getTimeoutTracker().toString()), e);
-                    httpClient.setReason(String.format("HTTP connection interrupted, %d bytes transferred", e.bytesTransferred));
-                } catch (ConnectException e) {
-                    LOG.warn("Connection exception for {}", serviceInfo, e);
-                    httpClient.setReason("HTTP connection exception on port: "+determinePorts(httpClient.getParameters())[portIndex]+": "+e.getMessage());
-                } catch (IOException e) {
-                    String exceptionClass = e.getClass().getSimpleName();
-                    LOG.warn("{} while polling {}", exceptionClass, serviceInfo, e);
-                    httpClient.setReason("IOException while polling address: "+addr+": "+e.getMessage());
+                    verifyResponse(httpClient, serviceInfo, httpClient.getTimeoutTracker().elapsedTimeInMillis());
                 } catch (Throwable e) {
-                    String exceptionClass = e.getClass().getSimpleName();
-                    LOG.warn("Unexpected {} while polling {}", exceptionClass, serviceInfo, e);
-                    httpClient.setReason("Unexpected exception while polling address: "+addr+": "+e.getMessage());
+                    if (handlePollException(e, httpClient, serviceInfo)) {
+                        portIndex = determinePorts(httpClient.getParameters()).length; // Will cause outer for(;;) to terminate
+                    }
                 } finally {
                     httpClient.closeConnection();
                 }
@@ -207,6 +166,69 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
 
     }
 
+    /**
+     * Checks the response that has been received by the client: records the
+     * response time and, when a response text is configured, scans the body
+     * for it.
+     */
+    void verifyResponse(final HttpMonitorClient httpClient, final String serviceInfo, final double responseTime) throws IOException {
+        if (httpClient.isEndOfStream()) {
+            return;
+        }
+
+        httpClient.setResponseTime(responseTime);
+        logResponseTimes(httpClient.getResponseTime(), httpClient.getCurrentLine());
+
+        if (httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE && StringUtils.isNotBlank(httpClient.getResponseText())) {
+            httpClient.setPollStatus(PollStatus.SERVICE_UNAVAILABLE);
+            httpClient.readLinedMatching();
+
+            if (httpClient.isEndOfStream()) {
+                return;
+            }
+
+            httpClient.read();
+
+            if (!httpClient.isResponseTextFound()) {
+                String message = "Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response for " + serviceInfo;
+                LOG.debug(message);
+                httpClient.setReason("Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response");
+            }
+        }
+    }
+
+    /**
+     * Records the reason for a failed attempt.
+     *
+     * @return true if none of the remaining ports should be tried
+     */
+    boolean handlePollException(final Throwable e, final HttpMonitorClient httpClient, final String serviceInfo) {
+        if (e instanceof NoRouteToHostException) {
+            LOG.warn("checkStatus: No route to host exception while polling {}", serviceInfo, e);
+            httpClient.setReason("No route to host exception");
+            return true;
+        } else if (e instanceof SocketTimeoutException) {
+            LOG.info("checkStatus: HTTP socket connection for service {} timed out with {}", serviceInfo, httpClient.getTimeoutTracker().toString());
+            httpClient.setReason("HTTP connection timeout");
+        } else if (e instanceof InterruptedIOException) {
+            final int bytesTransferred = ((InterruptedIOException)e).bytesTransferred;
+            LOG.info(String.format("checkStatus: HTTP connection for service {} interrupted after {} bytes transferred with {}", serviceInfo, bytesTransferred, httpClient.getTimeoutTracker().toString()), e);
+            httpClient.setReason(String.format("HTTP connection interrupted, %d bytes transferred", bytesTransferred));
+        } else if (e instanceof ConnectException) {
+            LOG.warn("Connection exception for {}", serviceInfo, e);
+            httpClient.setReason("HTTP connection exception on port: "+httpClient.getCurrentPort()+": "+e.getMessage());
+        } else if (e instanceof IOException) {
+            String exceptionClass = e.getClass().getSimpleName();
+            LOG.warn("{} while polling {}", exceptionClass, serviceInfo, e);
+            httpClient.setReason("IOException while polling address: "+httpClient.m_addr+": "+e.getMessage());
+        } else {
+            String exceptionClass = e.getClass().getSimpleName();
+            LOG.warn("Unexpected {} while polling {}", exceptionClass, serviceInfo, e);
+            httpClient.setReason("Unexpected exception while polling address: "+httpClient.m_addr+": "+e.getMessage());
+        }
+        return false;
+    }
+
     private void logResponseTimes(Double responseTime, String line) {
         LOG.debug("poll: response= {}", line);
         LOG.debug("poll: responseTime= {}ms", responseTime);
@@ -538,7 +560,15 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
                 HttpMonitor.LOG.debug("Sending HTTP command: {}", m_httpCmd);
             }
             m_httpSocket.getOutputStream().write(m_httpCmd.getBytes());
-            m_lineRdr = new BufferedReader(new InputStreamReader(m_httpSocket.getInputStream()));
+            receiveHttpResponse(new BufferedReader(new InputStreamReader(m_httpSocket.getInputStream())));
+        }
+
+        /**
+         * Reads the status line of the response from the given reader, which
+         * is also used for the rest of the response.
+         */
+        public void receiveHttpResponse(final BufferedReader lineReader) throws IOException {
+            m_lineRdr = lineReader;
             readLine();
             if (determineVerbosity(m_parameters)) {
                 HttpMonitor.LOG.debug("Server response: {}", m_currentLine);
@@ -547,6 +577,10 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
             m_headerFinished = false; // Clean header flag for each HTTP request.
         }
 
+        public String getHttpCommand() {
+            return m_httpCmd;
+        }
+
         private void buildCommand() {
             /*
              * Sorting this map just in case the poller gets changed and the Map
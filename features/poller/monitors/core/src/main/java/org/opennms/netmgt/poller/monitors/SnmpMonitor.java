@@ -32,11 +32,14 @@ import java.net.InetAddress;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.PropertiesUtils;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
@@ -61,7 +64,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="mailto:mike@opennms.org">Mike Davidson </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
-public class SnmpMonitor extends SnmpMonitorStrategy {
+public class SnmpMonitor extends SnmpMonitorStrategy implements AsyncServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(SnmpMonitor.class);
 
@@ -87,9 +90,27 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
      */
     @Override
     public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        PollStatus status = PollStatus.unavailable();
-        InetAddress ipaddr = svc.getAddress();
+        try {
+            return pollAsync(svc, parameters).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <P>
+     * Issues the GET or WALK through the asynchronous SNMP strategy and
+     * evaluates the result once the agent has responded.
+     * </P>
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        InetAddress ipaddr = svc.getAddress();
         // Retrieve this interface's SNMP peer object
         //
         final SnmpAgentConfig agentConfig = getAgentConfig(svc, parameters);
@@ -135,104 +156,125 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
         //
         try {
 
-            TimeoutTracker tracker = new TimeoutTracker(parameters, agentConfig.getRetries(), agentConfig.getTimeout());
+            final TimeoutTracker tracker = new TimeoutTracker(parameters, agentConfig.getRetries(), agentConfig.getTimeout());
             tracker.reset();
             tracker.startAttempt();
 
-            SnmpObjId snmpObjectId = SnmpObjId.get(oid);
+            final SnmpObjId snmpObjectId = SnmpObjId.get(oid);
 
+            final CompletableFuture<PollStatus> future;
             // This if block will count the number of matches within a walk and mark the service
             // as up if it is between the minimum and maximum number, down if otherwise. Setting
             // the parameter "matchall" to "count" will act as if "walk" has been set to "true".
             if ("count".equals(matchstr)) {
-                if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
-                    reasonTemplate = "Value: ${matchCount} outside of range Min: ${minimum} to Max: ${maximum}";
-                }
-                int matchCount = 0;
-                List<SnmpValue> results = SnmpUtils.getColumns(agentConfig, "snmpPoller", snmpObjectId);
-                for(SnmpValue result : results) {
-
-                    if (result != null) {
-                        LOG.debug("poll: SNMPwalk poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
-                        if (meetsCriteria(result, operator, operand)) {
-                            matchCount++;
-                        }
-                    }
-                }
-                svcParams.setProperty("matchCount", String.valueOf(matchCount));
-                LOG.debug("poll: SNMPwalk count succeeded, total={} min={} max={}", matchCount, countMin, countMax);
-                if ((countMin <= matchCount) && (matchCount <= countMax)) {
-                    status = PollStatus.available(tracker.elapsedTimeInMillis());
-                } else {
-                    String reason = PropertiesUtils.substitute(reasonTemplate, svcParams);
-                    LOG.debug(reason);
-                    status = PollStatus.unavailable(reason);
-                    return status;
-                }
+                final String template = DEFAULT_REASON_TEMPLATE.equals(reasonTemplate) ? "Value: ${matchCount} outside of range Min: ${minimum} to Max: ${maximum}" : reasonTemplate;
+                future = SnmpUtils.getColumnsAsync(agentConfig, "snmpPoller", snmpObjectId)
+                        .thenApply(results -> evaluateCount(results, tracker, hostAddress, oid, operator, operand, countMin, countMax, template, svcParams));
             } else if ("true".equals(walkstr)) {
-                if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
-                    reasonTemplate = "SNMP poll failed, addr=${ipaddr} oid=${oid}";
-                }
-                List<SnmpValue> results = SnmpUtils.getColumns(agentConfig, "snmpPoller", snmpObjectId);
-                for(SnmpValue result : results) {
-                    if (result != null) {
-                        svcParams.setProperty("observedValue", getStringValue(result));
-                        if (meetsCriteria(result, operator, operand)) {
-                            status = PollStatus.available(tracker.elapsedTimeInMillis());
-                            if ("false".equals(matchstr)) {
-                                return status;
-                            }
-                        } else if ("true".equals(matchstr)) {
-                            String reason = PropertiesUtils.substitute(reasonTemplate, svcParams);
-                            LOG.debug(reason);
-                            status = PollStatus.unavailable(reason);
-                            return status;
-                        }
-                    }
-                }
-
+                final String template = DEFAULT_REASON_TEMPLATE.equals(reasonTemplate) ? "SNMP poll failed, addr=${ipaddr} oid=${oid}" : reasonTemplate;
+                future = SnmpUtils.getColumnsAsync(agentConfig, "snmpPoller", snmpObjectId)
+                        .thenApply(results -> evaluateWalk(results, tracker, operator, operand, matchstr, template, svcParams));
             } else {
+                final String template;
                 if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
                     if (operator != null) {
-                        reasonTemplate = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
+                        template = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
                     } else {
-                        reasonTemplate = "Observed value '${observedValue}' was null";
+                        template = "Observed value '${observedValue}' was null";
                     }
+                } else {
+                    template = reasonTemplate;
                 }
+                // A failed GET is treated like an empty response, the same as the blocking SnmpUtils.get()
+                future = SnmpUtils.getAsync(agentConfig, new SnmpObjId[] { snmpObjectId })
+                        .handle((results, t) -> {
+                            if (t != null) {
+                                LOG.debug("poll: SNMP GET failed, addr={} oid={}", hostAddress, oid, t);
+                            }
+                            final SnmpValue result = t != null || results == null || results.length == 0 ? null : results[0];
+                            return evaluateGet(result, tracker, hostAddress, oid, operator, operand, template, svcParams);
+                        });
+            }
+            return future.exceptionally(t -> handleException(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t, hostAddress));
+        } catch (Throwable t) {
+            return CompletableFuture.completedFuture(handleException(t, hostAddress));
+        }
+    }
 
-                SnmpValue result = SnmpUtils.get(agentConfig, snmpObjectId);
+    private PollStatus evaluateCount(List<SnmpValue> results, TimeoutTracker tracker, String hostAddress, String oid, String operator, String operand, int countMin, int countMax, String reasonTemplate, Properties svcParams) {
+        int matchCount = 0;
+        for(SnmpValue result : results) {
 
-                if (result != null) {
-                    svcParams.setProperty("observedValue", getStringValue(result));
-                    LOG.debug("poll: SNMP poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
-                    
-                    if (meetsCriteria(result, operator, operand)) {
-                        status = PollStatus.available(tracker.elapsedTimeInMillis());
-                    } else {
-                        status = PollStatus.unavailable(PropertiesUtils.substitute(reasonTemplate, svcParams));
+            if (result != null) {
+                LOG.debug("poll: SNMPwalk poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
+                if (meetsCriteria(result, operator, operand)) {
+                    matchCount++;
+                }
+            }
+        }
+        svcParams.setProperty("matchCount", String.valueOf(matchCount));
+        LOG.debug("poll: SNMPwalk count succeeded, total={} min={} max={}", matchCount, countMin, countMax);
+        if ((countMin <= matchCount) && (matchCount <= countMax)) {
+            return PollStatus.available(tracker.elapsedTimeInMillis());
+        } else {
+            String reason = PropertiesUtils.substitute(reasonTemplate, svcParams);
+            LOG.debug(reason);
+            return PollStatus.unavailable(reason);
+        }
+    }
+
+    private PollStatus evaluateWalk(List<SnmpValue> results, TimeoutTracker tracker, String operator, String operand, String matchstr, String reasonTemplate, Properties svcParams) {
+        PollStatus status = PollStatus.unavailable();
+        for(SnmpValue result : results) {
+            if (result != null) {
+                svcParams.setProperty("observedValue", getStringValue(result));
+                if (meetsCriteria(result, operator, operand)) {
+                    status = PollStatus.available(tracker.elapsedTimeInMillis());
+                    if ("false".equals(matchstr)) {
+                        return status;
                     }
-                } else {
-                    String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
+                } else if ("true".equals(matchstr)) {
+                    String reason = PropertiesUtils.substitute(reasonTemplate, svcParams);
                     LOG.debug(reason);
                     status = PollStatus.unavailable(reason);
+                    return status;
                 }
             }
+        }
+        return status;
+    }
+
+    private PollStatus evaluateGet(SnmpValue result, TimeoutTracker tracker, String hostAddress, String oid, String operator, String operand, String reasonTemplate, Properties svcParams) {
+        if (result != null) {
+            svcParams.setProperty("observedValue", getStringValue(result));
+            LOG.debug("poll: SNMP poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
 
-        } catch (NumberFormatException e) {
-            String reason = "Number operator used on a non-number " + e.getMessage();
+            if (meetsCriteria(result, operator, operand)) {
+                return PollStatus.available(tracker.elapsedTimeInMillis());
+            } else {
+                return PollStatus.unavailable(PropertiesUtils.substitute(reasonTemplate, svcParams));
+            }
+        } else {
+            String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
             LOG.debug(reason);
-            status = PollStatus.unavailable(reason);
-        } catch (IllegalArgumentException e) {
-            String reason = "Invalid SNMP Criteria: " + e.getMessage();
+            return PollStatus.unavailable(reason);
+        }
+    }
+
+    private static PollStatus handleException(Throwable t, String hostAddress) {
+        if (t instanceof NumberFormatException) {
+            String reason = "Number operator used on a non-number " + t.getMessage();
             LOG.debug(reason);
-            status = PollStatus.unavailable(reason);
-        } catch (Throwable t) {
+            return PollStatus.unavailable(reason);
+        } else if (t instanceof IllegalArgumentException) {
+            String reason = "Invalid SNMP Criteria: " + t.getMessage();
+            LOG.debug(reason);
+            return PollStatus.unavailable(reason);
+        } else {
             String reason = "Unexpected exception during SNMP poll of interface " + hostAddress;
             LOG.debug(reason, t);
-            status = PollStatus.unavailable(reason);
+            return PollStatus.unavailable(reason);
         }
-
-        return status;
     }
 
 }
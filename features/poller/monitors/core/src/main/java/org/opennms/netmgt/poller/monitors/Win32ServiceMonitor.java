@@ -29,6 +29,7 @@
 package org.opennms.netmgt.poller.monitors;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.poller.MonitoredService;
@@ -49,7 +50,7 @@ public class Win32ServiceMonitor extends SnmpMonitor {
 	
 	/** {@inheritDoc} */
 	@Override
-	public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+	public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
 		String serviceName = ParameterMap.getKeyedString(parameters, "service-name", DEFAULT_SERVICE_NAME);
 		int snLength = serviceName.length();
 		
@@ -65,6 +66,6 @@ public class Win32ServiceMonitor extends SnmpMonitor {
 		parameters.put("operator", "=");
 		parameters.put("operand", "1");
 		
-		return super.poll(svc, parameters);
+		return super.pollAsync(svc, parameters);
 	}
 }
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+/**
+ * Request/response exchanges over UDP for protocols that carry a 16 bit
+ * transaction identifier in the first two bytes of every message, such as
+ * DNS.
+ *
+ * All exchanges share one socket and a single receiver thread, which
+ * matches each datagram to the pending request with the same peer and
+ * identifier. The number of requests in flight is therefore only bounded
+ * by the identifier space of each peer, not by the number of threads.
+ */
+public class AsyncDatagramClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncDatagramClient.class);
+
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    private static final int MAX_ID_ATTEMPTS = 16;
+
+    private static final Supplier<AsyncDatagramClient> INSTANCE = Suppliers.memoize(() -> {
+        try {
+            return new AsyncDatagramClient();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    });
+
+    private final DatagramChannel m_channel;
+
+    private final ConcurrentMap<Key, CompletableFuture<byte[]>> m_pending = new ConcurrentHashMap<>();
+
+    private static final class Key {
+        private final SocketAddress m_peer;
+        private final int m_id;
+
+        private Key(final SocketAddress peer, final int id) {
+            m_peer = peer;
+            m_id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(m_peer, m_id);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key)obj;
+            return m_id == other.m_id && Objects.equals(m_peer, other.m_peer);
+        }
+    }
+
+    private AsyncDatagramClient() throws IOException {
+        m_channel = DatagramChannel.open();
+        m_channel.bind(null);
+
+        final Thread receiver = new Thread(this::receive, "AsyncMonitor-UDP-Receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public static AsyncDatagramClient getInstance() {
+        return INSTANCE.get();
+    }
+
+    /**
+     * Sends a request and waits for the matching response.
+     *
+     * @param peer
+     *            the address to send the request to
+     * @param encoder
+     *            builds the request for the transaction identifier picked by
+     *            this client, which must be written to the first two bytes
+     * @param timeoutInMillis
+     *            how long to wait for the response
+     * @return a future completed with the response, or failed with a
+     *         {@link SocketTimeoutException} if none arrived in time
+     */
+    public CompletableFuture<byte[]> exchange(final InetSocketAddress peer, final IntFunction<byte[]> encoder, final long timeoutInMillis) {
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        Key key = null;
+        for (int i = 0; i < MAX_ID_ATTEMPTS && key == null; i++) {
+            final Key candidate = new Key(peer, ThreadLocalRandom.current().nextInt(0x10000));
+            if (m_pending.putIfAbsent(candidate, future) == null) {
+                key = candidate;
+            }
+        }
+        if (key == null) {
+            future.completeExceptionally(new IOException("Too many outstanding requests to " + peer));
+            return future;
+        }
+
+        final Key pendingKey = key;
+        try {
+            m_channel.send(ByteBuffer.wrap(encoder.apply(key.m_id)), peer);
+        } catch (final IOException | RuntimeException e) {
+            m_pending.remove(pendingKey, future);
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        AsyncIoSupport.schedule(() -> {
+            if (m_pending.remove(pendingKey, future)) {
+                future.completeExceptionally(new SocketTimeoutException("No response received from " + peer + " within " + timeoutInMillis + "ms"));
+            }
+        }, timeoutInMillis);
+        return future;
+    }
+
+    private void receive() {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        for (;;) {
+            try {
+                buffer.clear();
+                final SocketAddress from = m_channel.receive(buffer);
+                buffer.flip();
+                if (buffer.remaining() < 2) {
+                    continue;
+                }
+                final int id = buffer.getShort(0) & 0xffff;
+                final CompletableFuture<byte[]> future = m_pending.remove(new Key(from, id));
+                if (future == null) {
+                    LOG.debug("Discarding unexpected datagram from {} with id {}", from, id);
+                    continue;
+                }
+                final byte[] response = new byte[buffer.remaining()];
+                buffer.get(response);
+                future.complete(response);
+            } catch (final ClosedChannelException e) {
+                LOG.warn("The UDP channel was closed, no more responses will be received.", e);
+                return;
+            } catch (final IOException e) {
+                LOG.debug("Error receiving datagram.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.TimeoutTracker;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Shared resources for the monitors that poll with non-blocking I/O.
+ *
+ * All of the asynchronous monitors share a small pool of I/O threads,
+ * sized with the <code>org.opennms.netmgt.poller.monitors.async.threads</code>
+ * system property, and a single timer thread used to expire requests.
+ * Neither pool ever blocks on a remote agent, so they do not need to grow
+ * with the number of services being polled.
+ */
+public final class AsyncIoSupport {
+
+    public static final String THREADS_PROPERTY = "org.opennms.netmgt.poller.monitors.async.threads";
+
+    private static final Supplier<AsynchronousChannelGroup> CHANNEL_GROUP = Suppliers.memoize(() -> {
+        final int threads = Integer.getInteger(THREADS_PROPERTY, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            return AsynchronousChannelGroup.withFixedThreadPool(threads, new ThreadFactoryBuilder()
+                    .setNameFormat("AsyncMonitor-IO-%d")
+                    .setDaemon(true)
+                    .build());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    });
+
+    private static final Supplier<ScheduledExecutorService> TIMER = Suppliers.memoize(() ->
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("AsyncMonitor-Timer")
+                .setDaemon(true)
+                .build()));
+
+    private AsyncIoSupport() {
+    }
+
+    public static AsynchronousChannelGroup getChannelGroup() {
+        return CHANNEL_GROUP.get();
+    }
+
+    /**
+     * Runs the given task on the shared timer thread. The task must not block.
+     */
+    public static ScheduledFuture<?> schedule(final Runnable task, final long delayInMillis) {
+        return TIMER.get().schedule(task, delayInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a future that completes after the given delay.
+     */
+    public static CompletableFuture<Void> delay(final long delayInMillis) {
+        if (delayInMillis <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        schedule(() -> future.complete(null), delayInMillis);
+        return future;
+    }
+
+    /**
+     * Non-blocking equivalent of {@link TimeoutTracker#startAttempt()}, which
+     * sleeps between attempts when strict timeouts are enabled.
+     */
+    public static CompletableFuture<Void> startAttempt(final TimeoutTracker tracker) {
+        return delay(tracker.getStartDelayInMillis()).thenRun(tracker::startAttempt);
+    }
+
+    /**
+     * Strips the wrappers added by {@link CompletableFuture} from a failure.
+     */
+    public static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+}
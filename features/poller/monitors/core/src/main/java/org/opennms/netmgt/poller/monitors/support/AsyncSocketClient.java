@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A line oriented TCP client built on {@link AsynchronousSocketChannel}.
+ *
+ * None of the methods block: every operation returns a future that is
+ * completed from the shared I/O threads of {@link AsyncIoSupport}. Timeouts
+ * are reported as {@link SocketTimeoutException}s, like the blocking socket
+ * API the monitors used before. A client is meant to be used by a single
+ * poll, one operation at a time.
+ */
+public class AsyncSocketClient implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSocketClient.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Lines longer than this are split, so that a peer which never sends a
+     * line terminator cannot make us buffer without bound.
+     */
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private final AsynchronousSocketChannel m_channel;
+
+    private final ByteBuffer m_readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final ByteArrayOutputStream m_line = new ByteArrayOutputStream();
+
+    private final Charset m_charset;
+
+    private boolean m_endOfStream = false;
+
+    private AsyncSocketClient(final AsynchronousSocketChannel channel, final Charset charset) {
+        m_channel = channel;
+        m_charset = charset;
+        // start out with nothing to read
+        m_readBuffer.flip();
+    }
+
+    /**
+     * Opens a connection, decoding lines with the platform charset like an
+     * {@link java.io.InputStreamReader} would.
+     */
+    public static CompletableFuture<AsyncSocketClient> connect(final InetSocketAddress address, final long timeoutInMillis) {
+        return connect(address, timeoutInMillis, Charset.defaultCharset());
+    }
+
+    public static CompletableFuture<AsyncSocketClient> connect(final InetSocketAddress address, final long timeoutInMillis, final Charset charset) {
+        final CompletableFuture<AsyncSocketClient> future = new CompletableFuture<>();
+        final AsynchronousSocketChannel channel;
+        try {
+            channel = AsynchronousSocketChannel.open(AsyncIoSupport.getChannelGroup());
+        } catch (final IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        final ScheduledFuture<?> timeout = AsyncIoSupport.schedule(() -> {
+            if (future.completeExceptionally(new SocketTimeoutException("connect timed out after " + timeoutInMillis + "ms"))) {
+                closeQuietly(channel);
+            }
+        }, timeoutInMillis);
+
+        channel.connect(address, null, new CompletionHandler<Void, Void>() {
+            @Override
+            public void completed(final Void result, final Void attachment) {
+                timeout.cancel(false);
+                if (!future.complete(new AsyncSocketClient(channel, charset))) {
+                    closeQuietly(channel);
+                }
+            }
+
+            @Override
+            public void failed(final Throwable t, final Void attachment) {
+                timeout.cancel(false);
+                future.completeExceptionally(t);
+                closeQuietly(channel);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Writes all of the given bytes.
+     */
+    public CompletableFuture<Void> write(final byte[] data, final long timeoutInMillis) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        write(ByteBuffer.wrap(data), timeoutInMillis, future);
+        return future;
+    }
+
+    private void write(final ByteBuffer buffer, final long timeoutInMillis, final CompletableFuture<Void> future) {
+        m_channel.write(buffer, timeoutInMillis, TimeUnit.MILLISECONDS, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(final Integer written, final Void attachment) {
+                if (buffer.hasRemaining()) {
+                    write(buffer, timeoutInMillis, future);
+                } else {
+                    future.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(final Throwable t, final Void attachment) {
+                future.completeExceptionally(translate(t, timeoutInMillis));
+            }
+        });
+    }
+
+    /**
+     * Reads the next line, without its terminator.
+     *
+     * @return a future completed with the line, or with <code>null</code> at the end of the stream
+     */
+    public CompletableFuture<String> readLine(final long timeoutInMillis) {
+        return readLineMatching(line -> true, timeoutInMillis);
+    }
+
+    /**
+     * Reads lines until one of them is accepted by the given predicate. The
+     * timeout applies to each read from the socket, not to the whole scan.
+     *
+     * @return a future completed with the accepted line, or with <code>null</code>
+     *         if the stream ended first
+     */
+    public CompletableFuture<String> readLineMatching(final Predicate<String> predicate, final long timeoutInMillis) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        scan(predicate, timeoutInMillis, future);
+        return future;
+    }
+
+    private void scan(final Predicate<String> predicate, final long timeoutInMillis, final CompletableFuture<String> future) {
+        try {
+            String line;
+            while ((line = nextBufferedLine()) != null) {
+                if (predicate.test(line)) {
+                    future.complete(line);
+                    return;
+                }
+            }
+            if (m_endOfStream) {
+                if (m_line.size() > 0) {
+                    line = takeLine();
+                    if (predicate.test(line)) {
+                        future.complete(line);
+                        return;
+                    }
+                }
+                future.complete(null);
+                return;
+            }
+        } catch (final RuntimeException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+
+        m_readBuffer.clear();
+        m_channel.read(m_readBuffer, timeoutInMillis, TimeUnit.MILLISECONDS, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(final Integer read, final Void attachment) {
+                m_readBuffer.flip();
+                if (read < 0) {
+                    m_endOfStream = true;
+                }
+                scan(predicate, timeoutInMillis, future);
+            }
+
+            @Override
+            public void failed(final Throwable t, final Void attachment) {
+                m_readBuffer.limit(0);
+                future.completeExceptionally(translate(t, timeoutInMillis));
+            }
+        });
+    }
+
+    /**
+     * Reads exactly the given number of bytes. Must not be used while a line
+     * has only been read in part.
+     *
+     * @return a future completed with the bytes, or failed with an
+     *         {@link EOFException} if the stream ended first
+     */
+    public CompletableFuture<byte[]> read(final int length, final long timeoutInMillis) {
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        fill(new byte[length], 0, timeoutInMillis, future);
+        return future;
+    }
+
+    private void fill(final byte[] data, final int offset, final long timeoutInMillis, final CompletableFuture<byte[]> future) {
+        final int buffered = Math.min(m_readBuffer.remaining(), data.length - offset);
+        m_readBuffer.get(data, offset, buffered);
+        final int filled = offset + buffered;
+        if (filled == data.length) {
+            future.complete(data);
+            return;
+        }
+        if (m_endOfStream) {
+            future.completeExceptionally(new EOFException("Stream ended after " + filled + " of " + data.length + " bytes"));
+            return;
+        }
+
+        m_readBuffer.clear();
+        m_channel.read(m_readBuffer, timeoutInMillis, TimeUnit.MILLISECONDS, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(final Integer read, final Void attachment) {
+                m_readBuffer.flip();
+                if (read < 0) {
+                    m_endOfStream = true;
+                }
+                fill(data, filled, timeoutInMillis, future);
+            }
+
+            @Override
+            public void failed(final Throwable t, final Void attachment) {
+                m_readBuffer.limit(0);
+                future.completeExceptionally(translate(t, timeoutInMillis));
+            }
+        });
+    }
+
+    private String nextBufferedLine() {
+        while (m_readBuffer.hasRemaining()) {
+            final byte b = m_readBuffer.get();
+            if (b == '\n') {
+                return takeLine();
+            }
+            m_line.write(b);
+            if (m_line.size() >= MAX_LINE_LENGTH) {
+                return takeLine();
+            }
+        }
+        return null;
+    }
+
+    private String takeLine() {
+        final byte[] bytes = m_line.toByteArray();
+        m_line.reset();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, m_charset);
+    }
+
+    private static Throwable translate(final Throwable t, final long timeoutInMillis) {
+        if (t instanceof InterruptedByTimeoutException) {
+            return new SocketTimeoutException("Read timed out after " + timeoutInMillis + "ms");
+        }
+        return t;
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(m_channel);
+    }
+
+    private static void closeQuietly(final AsynchronousSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            LOG.debug("Error closing socket.", e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+/**
+ * Exercises {@link AsyncHttpMonitor#pollAsync(MonitoredService, Map)} against a local server.
+ */
+public class AsyncHttpMonitorTest {
+
+    private ServerSocket m_server;
+
+    @Before
+    public void setUp() throws IOException {
+        MockLogAppender.setupLogging();
+        m_server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        m_server.close();
+    }
+
+    @Test(timeout = 30000)
+    public void isAvailableWhenTheStatusCodeIsInRange() throws Exception {
+        final Thread server = serve("HTTP/1.1 200 OK", "hello world");
+
+        final PollStatus status = poll(parameters());
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void isUnavailableWhenTheStatusCodeIsOutOfRange() throws Exception {
+        final Thread server = serve("HTTP/1.1 500 Internal Server Error", "");
+
+        final PollStatus status = poll(parameters());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void matchesTheResponseText() throws Exception {
+        Thread server = serve("HTTP/1.1 200 OK", "hello world");
+        final Map<String, Object> parameters = parameters();
+        parameters.put("response-text", "world");
+        assertEquals(PollStatus.SERVICE_AVAILABLE, poll(parameters).getStatusCode());
+        server.join();
+
+        server = serve("HTTP/1.1 200 OK", "hello there");
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, poll(parameters).getStatusCode());
+        server.join();
+    }
+
+    private static PollStatus poll(final Map<String, Object> parameters) throws Exception {
+        final MonitoredService svc = MonitorTestUtils.getMonitoredService(1, InetAddress.getLoopbackAddress(), "HTTP");
+        return new AsyncHttpMonitor().pollAsync(svc, parameters).get(10, TimeUnit.SECONDS);
+    }
+
+    private Map<String, Object> parameters() {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(m_server.getLocalPort()));
+        m.put("retry", "0");
+        m.put("timeout", "2000");
+        return m;
+    }
+
+    /**
+     * Answers a single request with the given status line and body and closes the connection.
+     */
+    private Thread serve(final String statusLine, final String body) {
+        final Thread thread = new Thread(() -> {
+            try (Socket socket = m_server.accept()) {
+                final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                    // skip the request headers
+                }
+                final OutputStream out = socket.getOutputStream();
+                out.write((statusLine + "\r\n"
+                        + "Content-Type: text/plain\r\n"
+                        + "Content-Length: " + body.length() + "\r\n"
+                        + "Connection: close\r\n"
+                        + "\r\n"
+                        + body).getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            } catch (final IOException e) {
+                // the client went away
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+/**
+ * Exercises the synchronous and asynchronous polls of the {@link DnsMonitor}
+ * against a local server that truncates its UDP responses.
+ */
+public class DnsMonitorTest {
+
+    private static final int NUM_ANSWERS = 3;
+
+    private ServerSocket m_tcpServer;
+
+    private DatagramSocket m_udpServer;
+
+    @Before
+    public void setUp() throws IOException {
+        MockLogAppender.setupLogging();
+        m_tcpServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        m_udpServer = new DatagramSocket(m_tcpServer.getLocalPort(), InetAddress.getLoopbackAddress());
+        serveUdp();
+        serveTcp();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        m_tcpServer.close();
+        m_udpServer.close();
+    }
+
+    @Test(timeout = 30000)
+    public void asyncPollRetriesTruncatedResponsesOverTcp() throws Exception {
+        final PollStatus status = new DnsMonitor().pollAsync(getService(), parameters(NUM_ANSWERS)).get(10, TimeUnit.SECONDS);
+        assertEquals(status.getReason(), PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    @Test(timeout = 30000)
+    public void syncPollRetriesTruncatedResponsesOverTcp() throws Exception {
+        final PollStatus status = new DnsMonitor().poll(getService(), parameters(NUM_ANSWERS));
+        assertEquals(status.getReason(), PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    @Test(timeout = 30000)
+    public void asyncPollChecksTheAnswersOfTheTcpResponse() throws Exception {
+        final PollStatus status = new DnsMonitor().pollAsync(getService(), parameters(NUM_ANSWERS + 1)).get(10, TimeUnit.SECONDS);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+    }
+
+    private static MonitoredService getService() {
+        return MonitorTestUtils.getMonitoredService(1, InetAddress.getLoopbackAddress(), "DNS");
+    }
+
+    private Map<String, Object> parameters(final int minAnswers) {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(m_tcpServer.getLocalPort()));
+        m.put("retry", "0");
+        m.put("timeout", "3000");
+        m.put("lookup", "example.com");
+        m.put("min-answers", String.valueOf(minAnswers));
+        return m;
+    }
+
+    /**
+     * Answers every query with a truncated response without answers.
+     */
+    private void serveUdp() {
+        final Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    final DatagramPacket packet = new DatagramPacket(new byte[512], 512);
+                    m_udpServer.receive(packet);
+                    final Message response = newResponse(Arrays.copyOf(packet.getData(), packet.getLength()), 0);
+                    response.getHeader().setFlag(Flags.TC);
+                    final byte[] wire = response.toWire();
+                    m_udpServer.send(new DatagramPacket(wire, wire.length, packet.getSocketAddress()));
+                }
+            } catch (final IOException e) {
+                // the socket was closed
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Answers every query with all of the answers.
+     */
+    private void serveTcp() {
+        final Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    try (Socket socket = m_tcpServer.accept()) {
+                        final DataInputStream in = new DataInputStream(socket.getInputStream());
+                        final byte[] query = new byte[in.readUnsignedShort()];
+                        in.readFully(query);
+                        final byte[] wire = newResponse(query, NUM_ANSWERS).toWire();
+                        final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        out.writeShort(wire.length);
+                        out.write(wire);
+                        out.flush();
+                    }
+                }
+            } catch (final IOException e) {
+                // the socket was closed
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Message newResponse(final byte[] wire, final int numAnswers) throws IOException {
+        final Message query = new Message(wire);
+        final Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        final Record question = query.getQuestion();
+        response.addRecord(question, Section.QUESTION);
+        for (int i = 1; i <= numAnswers; i++) {
+            response.addRecord(new ARecord(question.getName(), DClass.IN, 60, InetAddress.getByName("192.168.0." + i)), Section.ANSWER);
+        }
+        return response;
+    }
+}
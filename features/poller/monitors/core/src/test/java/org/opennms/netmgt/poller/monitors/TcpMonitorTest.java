@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+/**
+ * Exercises {@link TcpMonitor#pollAsync(MonitoredService, Map)} against a local server.
+ */
+public class TcpMonitorTest {
+
+    private ServerSocket m_server;
+
+    @Before
+    public void setUp() throws IOException {
+        MockLogAppender.setupLogging();
+        m_server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        m_server.close();
+    }
+
+    @Test(timeout = 30000)
+    public void isAvailableWhenTheBannerMatches() throws Exception {
+        final Thread server = serve("SSH-2.0-OpenSSH\r\n");
+
+        final PollStatus status = poll(parameters(m_server.getLocalPort(), "SSH"));
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNull(status.getReason());
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void isUnavailableWhenTheBannerDoesNotMatch() throws Exception {
+        final Thread server = serve("220 smtp ready\r\n");
+
+        final PollStatus status = poll(parameters(m_server.getLocalPort(), "SSH"));
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void isUnresponsiveWithoutABanner() throws Exception {
+        final Thread server = serve("");
+
+        final PollStatus status = poll(parameters(m_server.getLocalPort(), "SSH"));
+        assertEquals(PollStatus.SERVICE_UNRESPONSIVE, status.getStatusCode());
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void isUnavailableWhenTheConnectionIsRefused() throws Exception {
+        final int port = m_server.getLocalPort();
+        m_server.close();
+
+        final PollStatus status = poll(parameters(port, null));
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+    }
+
+    private static PollStatus poll(final Map<String, Object> parameters) throws Exception {
+        final MonitoredService svc = MonitorTestUtils.getMonitoredService(1, InetAddress.getLoopbackAddress(), "TCP");
+        return new TcpMonitor().pollAsync(svc, parameters).get(10, TimeUnit.SECONDS);
+    }
+
+    private static Map<String, Object> parameters(final int port, final String banner) {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(port));
+        m.put("retry", "0");
+        m.put("timeout", "2000");
+        if (banner != null) {
+            m.put("banner", banner);
+        }
+        return m;
+    }
+
+    private Thread serve(final String banner) {
+        final Thread thread = new Thread(() -> {
+            try (Socket socket = m_server.accept()) {
+                final OutputStream out = socket.getOutputStream();
+                out.write(banner.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            } catch (final IOException e) {
+                // the client went away
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncDatagramClientTest {
+
+    private DatagramSocket m_server;
+
+    @Before
+    public void setUp() throws IOException {
+        m_server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() {
+        m_server.close();
+    }
+
+    @Test(timeout = 30000)
+    public void matchesTheResponseToTheRequest() throws Exception {
+        final Thread server = new Thread(() -> {
+            try {
+                final DatagramPacket request = new DatagramPacket(new byte[512], 512);
+                m_server.receive(request);
+                // answer with the transaction id of the request followed by the payload
+                final byte[] response = { request.getData()[0], request.getData()[1], 'o', 'k' };
+                m_server.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+            } catch (final IOException e) {
+                // closed
+            }
+        });
+        server.start();
+
+        final byte[] response = AsyncDatagramClient.getInstance()
+                .exchange(peer(), id -> new byte[] { (byte)(id >> 8), (byte)id, 'h', 'i' }, 5000)
+                .get(10, TimeUnit.SECONDS);
+        assertArrayEquals(new byte[] { 'o', 'k' }, Arrays.copyOfRange(response, 2, 4));
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void failsWithASocketTimeoutWhenNoResponseArrives() throws Exception {
+        try {
+            AsyncDatagramClient.getInstance()
+                    .exchange(peer(), id -> new byte[] { (byte)(id >> 8), (byte)id }, 200)
+                    .get(10, TimeUnit.SECONDS);
+            fail("the exchange should have timed out");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    private InetSocketAddress peer() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), m_server.getLocalPort());
+    }
+}
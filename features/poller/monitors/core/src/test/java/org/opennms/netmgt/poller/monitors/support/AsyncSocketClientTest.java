@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncSocketClientTest {
+
+    private ServerSocket m_server;
+
+    @Before
+    public void setUp() throws IOException {
+        m_server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        m_server.close();
+    }
+
+    @Test(timeout = 30000)
+    public void readsLinesUntilTheEndOfTheStream() throws Exception {
+        final Thread server = serve(socket -> {
+            final OutputStream out = socket.getOutputStream();
+            out.write("first\r\nsecond\nthird".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        });
+
+        try (AsyncSocketClient client = connect()) {
+            assertEquals("first", client.readLine(5000).get(10, TimeUnit.SECONDS));
+            // the last line is returned even without a terminator
+            assertEquals("third", client.readLineMatching(line -> line.startsWith("th"), 5000).get(10, TimeUnit.SECONDS));
+            assertNull(client.readLine(5000).get(10, TimeUnit.SECONDS));
+        }
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void writesTheRequest() throws Exception {
+        final Thread server = serve(socket -> {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            final OutputStream out = socket.getOutputStream();
+            out.write(("echo " + in.readLine() + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        });
+
+        try (AsyncSocketClient client = connect()) {
+            client.write("hello\n".getBytes(StandardCharsets.US_ASCII), 5000).get(10, TimeUnit.SECONDS);
+            assertEquals("echo hello", client.readLine(5000).get(10, TimeUnit.SECONDS));
+        }
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void readsTheGivenNumberOfBytes() throws Exception {
+        final Thread server = serve(socket -> {
+            final OutputStream out = socket.getOutputStream();
+            out.write(new byte[] { 0, 3 });
+            out.flush();
+            out.write(new byte[] { 'a', 'b', 'c', 'd' });
+            out.flush();
+        });
+
+        try (AsyncSocketClient client = connect()) {
+            assertArrayEquals(new byte[] { 0, 3 }, client.read(2, 5000).get(10, TimeUnit.SECONDS));
+            assertArrayEquals(new byte[] { 'a', 'b', 'c' }, client.read(3, 5000).get(10, TimeUnit.SECONDS));
+            client.read(2, 5000).get(10, TimeUnit.SECONDS);
+            fail("the stream should have ended");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof EOFException);
+        }
+        server.join();
+    }
+
+    @Test(timeout = 30000)
+    public void failsWithASocketTimeoutWhenNothingIsRead() throws Exception {
+        final Thread server = serve(socket -> {
+            // keep the connection open without sending anything
+            socket.getInputStream().read();
+        });
+
+        try (AsyncSocketClient client = connect()) {
+            client.readLine(200).get(10, TimeUnit.SECONDS);
+            fail("the read should have timed out");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        server.join();
+    }
+
+    private AsyncSocketClient connect() throws Exception {
+        return AsyncSocketClient.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), m_server.getLocalPort()), 5000)
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    private interface Conversation {
+        void talk(Socket socket) throws IOException;
+    }
+
+    private Thread serve(final Conversation conversation) {
+        final Thread thread = new Thread(() -> {
+            try (Socket socket = m_server.accept()) {
+                conversation.talk(socket);
+            } catch (final IOException e) {
+                // the client went away
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -56,6 +56,8 @@ import com.google.common.base.Objects;
 import io.netty.buffer.ByteBuf;
 
 public class Netflow9UdpParser extends UdpParserBase implements UdpParser, Dispatchable {
+    private boolean compiledDecoding = false;
+
     public Netflow9UdpParser(final String name,
                              final AsyncDispatcher<TelemetryMessage> dispatcher,
                              final EventForwarder eventForwarder,
@@ -68,13 +70,25 @@ public class Netflow9UdpParser extends UdpParserBase implements UdpParser, Dispa
     @Override
     protected RecordProvider parse(Session session, ByteBuf buffer) throws Exception {
         final Header header = new Header(slice(buffer, Header.SIZE));
-        final Packet packet = new Packet(session, header, buffer);
+        final Packet packet = new Packet(session, header, buffer, this.compiledDecoding);
 
         detectClockSkew(header.unixSecs * 1000L, session.getRemoteAddress());
 
         return packet;
     }
 
+    public boolean getCompiledDecoding() {
+        return this.compiledDecoding;
+    }
+
+    /**
+     * Enables decoding data records directly into flow messages using compiled template plans instead of parsing
+     * every field into an intermediate value.
+     */
+    public void setCompiledDecoding(final boolean compiledDecoding) {
+        this.compiledDecoding = compiledDecoding;
+    }
+
     @Override
     public boolean handles(final ByteBuf buffer) {
         return uint16(buffer) == Header.VERSION;
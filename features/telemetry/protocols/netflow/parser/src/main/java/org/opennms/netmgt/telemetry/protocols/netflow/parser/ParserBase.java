@@ -44,6 +44,9 @@ import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
@@ -72,6 +75,14 @@ public abstract class ParserBase implements Parser {
 
     private static final long DEFAULT_CLOCK_SKEW_EVENT_RATE_SECONDS = TimeUnit.HOURS.toSeconds(1);
 
+    private static final long DEFAULT_DNS_CACHE_MAX_SIZE = 10000;
+
+    private static final long DEFAULT_DNS_POSITIVE_TTL_SECONDS = TimeUnit.MINUTES.toSeconds(15);
+
+    private static final long DEFAULT_DNS_NEGATIVE_TTL_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+
+    private static final double DEFAULT_DNS_LOOKUPS_PER_EXPORTER_PER_SECOND = 100.0;
+
     public static final String CLOCK_SKEW_EVENT_UEI = "uei.opennms.org/internal/telemetry/clockSkewDetected";
 
     private final ThreadLocal<Boolean> isParserThread = new ThreadLocal<>();
@@ -88,6 +99,8 @@ public abstract class ParserBase implements Parser {
 
     private final DnsResolver dnsResolver;
 
+    private final MetricRegistry metricRegistry;
+
     private final Meter recordsDispatched;
 
     private final Timer recordEnrichmentTimer;
@@ -102,6 +115,18 @@ public abstract class ParserBase implements Parser {
 
     private boolean dnsLookupsEnabled = true;
 
+    private boolean dnsLookupsAsync = false;
+
+    private long dnsCacheMaxSize = DEFAULT_DNS_CACHE_MAX_SIZE;
+
+    private long dnsPositiveTtlSeconds = DEFAULT_DNS_POSITIVE_TTL_SECONDS;
+
+    private long dnsNegativeTtlSeconds = DEFAULT_DNS_NEGATIVE_TTL_SECONDS;
+
+    private double dnsLookupsPerExporterPerSecond = DEFAULT_DNS_LOOKUPS_PER_EXPORTER_PER_SECOND;
+
+    private ReverseLookupCache reverseLookupCache;
+
     private LoadingCache<InetAddress, Optional<Instant>> eventCache;
 
     private ExecutorService executor;
@@ -119,7 +144,7 @@ public abstract class ParserBase implements Parser {
         this.eventForwarder = Objects.requireNonNull(eventForwarder);
         this.identity = Objects.requireNonNull(identity);
         this.dnsResolver = Objects.requireNonNull(dnsResolver);
-        Objects.requireNonNull(metricRegistry);
+        this.metricRegistry = Objects.requireNonNull(metricRegistry);
 
         // Create a thread factory that sets a thread local variable when the thread is created
         // This variable is used to identify the thread as one that belongs to this class
@@ -144,6 +169,11 @@ public abstract class ParserBase implements Parser {
 
     @Override
     public void start(ScheduledExecutorService executorService) {
+        if (dnsLookupsAsync) {
+            reverseLookupCache = new ReverseLookupCache(dnsResolver, dnsCacheMaxSize, dnsPositiveTtlSeconds, dnsNegativeTtlSeconds,
+                    dnsLookupsPerExporterPerSecond, metricRegistry, name);
+        }
+
         executor = new ThreadPoolExecutor(
                 // corePoolSize must be > 0 since we use the RejectedExecutionHandler to block when the queue is full
                 1, threads,
@@ -205,6 +235,50 @@ public abstract class ParserBase implements Parser {
         this.dnsLookupsEnabled = dnsLookupsEnabled;
     }
 
+    public boolean getDnsLookupsAsync() {
+        return dnsLookupsAsync;
+    }
+
+    /**
+     * If enabled, records are enriched using the hostnames cached by previous lookups instead of waiting for the
+     * lookups of the record's addresses to complete. Missing hostnames are looked up in the background.
+     */
+    public void setDnsLookupsAsync(boolean dnsLookupsAsync) {
+        this.dnsLookupsAsync = dnsLookupsAsync;
+    }
+
+    public long getDnsCacheMaxSize() {
+        return dnsCacheMaxSize;
+    }
+
+    public void setDnsCacheMaxSize(long dnsCacheMaxSize) {
+        this.dnsCacheMaxSize = dnsCacheMaxSize;
+    }
+
+    public long getDnsPositiveTtlSeconds() {
+        return dnsPositiveTtlSeconds;
+    }
+
+    public void setDnsPositiveTtlSeconds(long dnsPositiveTtlSeconds) {
+        this.dnsPositiveTtlSeconds = dnsPositiveTtlSeconds;
+    }
+
+    public long getDnsNegativeTtlSeconds() {
+        return dnsNegativeTtlSeconds;
+    }
+
+    public void setDnsNegativeTtlSeconds(long dnsNegativeTtlSeconds) {
+        this.dnsNegativeTtlSeconds = dnsNegativeTtlSeconds;
+    }
+
+    public double getDnsLookupsPerExporterPerSecond() {
+        return dnsLookupsPerExporterPerSecond;
+    }
+
+    public void setDnsLookupsPerExporterPerSecond(double dnsLookupsPerExporterPerSecond) {
+        this.dnsLookupsPerExporterPerSecond = dnsLookupsPerExporterPerSecond;
+    }
+
     public int getThreads() {
         return threads;
     }
@@ -221,54 +295,17 @@ public abstract class ParserBase implements Parser {
         //   LOG.trace("Got packet: {}", packet);
         // Perform the record enrichment and serialization in a thread pool allowing these to be parallelized
         final CompletableFuture<CompletableFuture[]> futureOfFutures = CompletableFuture.supplyAsync(() -> {
-            return packet.getRecords().map(record -> {
-                final CompletableFuture<AsyncDispatcher.DispatchStatus> future = new CompletableFuture<>();
-                final Timer.Context timerContext = recordEnrichmentTimer.time();
-                // Trigger record enrichment (performing DNS reverse lookups for example)
-                final RecordEnricher recordEnricher = new RecordEnricher(dnsResolver, getDnsLookupsEnabled());
-                recordEnricher.enrich(record).whenComplete((enrichment, ex) -> {
-                    timerContext.close();
-                    if (ex != null) {
-                        // Enrichment failed
-                        future.completeExceptionally(ex);
-                        return;
-                    }
-                    // Enrichment was successful
-
-                    // We're currently in the callback thread from the enrichment process
-                    // We want the remainder of the serialization and dispatching to be performed
-                    // from one of our executor threads so that we can put back-pressure on the listener
-                    // if we can't keep up
-                    final Runnable dispatch = () -> {
-                        // Let's serialize
-                        byte[] flowMessage = buildMessage(record, enrichment);
-
-                        // Build the message to dispatch
-                        final TelemetryMessage msg = new TelemetryMessage(remoteAddress, ByteBuffer.wrap(flowMessage));
-
-                        // Dispatch
-                        dispatcher.send(msg).whenComplete((b, exx) -> {
-                            if (exx != null) {
-                                future.completeExceptionally(exx);
-                                return;
-                            }
-                            future.complete(b);
-                        });
-
-                        recordsDispatched.mark();
-                    };
-
-                    // It's possible that the callback thread is already a thread from the pool, if that's the case
-                    // execute within the current thread. This helps avoid deadlocks.
-                    if (Boolean.TRUE.equals(isParserThread.get())) {
-                        dispatch.run();
-                    } else {
-                        // We're not in one of the parsers threads, execute the dispatch in the pool
-                        executor.execute(dispatch);
-                    }
-                });
-                return future;
-            }).toArray(CompletableFuture[]::new);
+            final RecordEnricher recordEnricher = new RecordEnricher(dnsResolver, getDnsLookupsEnabled(), reverseLookupCache, remoteAddress.getAddress());
+            return Stream.concat(
+                    packet.getRecords().map(record -> dispatch(
+                            () -> recordEnricher.enrich(record),
+                            enrichment -> buildMessage(record, enrichment),
+                            remoteAddress)),
+                    packet.getDecodedRecords().map(record -> dispatch(
+                            () -> recordEnricher.enrich(record.getAddresses()),
+                            record::buildData,
+                            remoteAddress))
+            ).toArray(CompletableFuture[]::new);
         }, executor);
 
         // Return a future which is completed when all records are finished dispatching (i.e. written to Kafka)
@@ -293,6 +330,56 @@ public abstract class ParserBase implements Parser {
         return future;
     }
 
+    private CompletableFuture<AsyncDispatcher.DispatchStatus> dispatch(final Supplier<CompletableFuture<RecordEnrichment>> enricher,
+                                                                       final Function<RecordEnrichment, byte[]> serializer,
+                                                                       final InetSocketAddress remoteAddress) {
+        final CompletableFuture<AsyncDispatcher.DispatchStatus> future = new CompletableFuture<>();
+        final Timer.Context timerContext = recordEnrichmentTimer.time();
+        // Trigger record enrichment (performing DNS reverse lookups for example)
+        enricher.get().whenComplete((enrichment, ex) -> {
+            timerContext.close();
+            if (ex != null) {
+                // Enrichment failed
+                future.completeExceptionally(ex);
+                return;
+            }
+            // Enrichment was successful
+
+            // We're currently in the callback thread from the enrichment process
+            // We want the remainder of the serialization and dispatching to be performed
+            // from one of our executor threads so that we can put back-pressure on the listener
+            // if we can't keep up
+            final Runnable dispatch = () -> {
+                // Let's serialize
+                byte[] flowMessage = serializer.apply(enrichment);
+
+                // Build the message to dispatch
+                final TelemetryMessage msg = new TelemetryMessage(remoteAddress, ByteBuffer.wrap(flowMessage));
+
+                // Dispatch
+                dispatcher.send(msg).whenComplete((b, exx) -> {
+                    if (exx != null) {
+                        future.completeExceptionally(exx);
+                        return;
+                    }
+                    future.complete(b);
+                });
+
+                recordsDispatched.mark();
+            };
+
+            // It's possible that the callback thread is already a thread from the pool, if that's the case
+            // execute within the current thread. This helps avoid deadlocks.
+            if (Boolean.TRUE.equals(isParserThread.get())) {
+                dispatch.run();
+            } else {
+                // We're not in one of the parsers threads, execute the dispatch in the pool
+                executor.execute(dispatch);
+            }
+        });
+        return future;
+    }
+
     protected abstract byte[] buildMessage(Iterable<Value<?>> record, RecordEnrichment enrichment);
 
 
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.telemetry.protocols.netflow.parser;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -61,26 +62,49 @@ import com.google.common.collect.Sets;
 public class RecordEnricher {
     private static final Logger LOG = LoggerFactory.getLogger(RecordEnricher.class);
 
+    private static final RecordEnrichment EMPTY_ENRICHMENT = new DefaultRecordEnrichment(Collections.<InetAddress, String>emptyMap());
+
     private final DnsResolver dnsResolver;
     private boolean dnsLookupsEnabled;
 
+    private final ReverseLookupCache reverseLookupCache;
+    private final InetAddress exporter;
+
     public RecordEnricher(DnsResolver dnsResolver, boolean dnsLookupsEnabled) {
+        this(dnsResolver, dnsLookupsEnabled, null, null);
+    }
+
+    /**
+     * Creates an enricher which serves hostnames from the given cache instead of waiting for the lookups to complete.
+     *
+     * @param exporter the exporter the enriched records were received from, used to rate limit lookups
+     */
+    public RecordEnricher(DnsResolver dnsResolver, boolean dnsLookupsEnabled, ReverseLookupCache reverseLookupCache, InetAddress exporter) {
         this.dnsResolver = Objects.requireNonNull(dnsResolver);
         this.dnsLookupsEnabled = dnsLookupsEnabled;
+        this.reverseLookupCache = reverseLookupCache;
+        this.exporter = exporter;
     }
 
     public CompletableFuture<RecordEnrichment> enrich(Iterable<Value<?>> record) {
         if (!this.dnsLookupsEnabled) {
-            final CompletableFuture<RecordEnrichment> emptyFuture = new CompletableFuture<>();
-            final RecordEnrichment emptyEnrichment = new DefaultRecordEnrichment(Collections.<InetAddress, String>emptyMap());
-            emptyFuture.complete(emptyEnrichment);
-            return emptyFuture;
+            return CompletableFuture.completedFuture(EMPTY_ENRICHMENT);
         }
         final IpAddressCapturingVisitor ipAddressCapturingVisitor = new IpAddressCapturingVisitor();
         for (final Value<?> value : record) {
             value.visit(ipAddressCapturingVisitor);
         }
-        final Set<InetAddress> addressesToReverseLookup = ipAddressCapturingVisitor.getAddresses();
+        return this.enrich(ipAddressCapturingVisitor.getAddresses());
+    }
+
+    public CompletableFuture<RecordEnrichment> enrich(Collection<InetAddress> addresses) {
+        if (!this.dnsLookupsEnabled || addresses.isEmpty()) {
+            return CompletableFuture.completedFuture(EMPTY_ENRICHMENT);
+        }
+        if (this.reverseLookupCache != null) {
+            return CompletableFuture.completedFuture(new DefaultRecordEnrichment(this.reverseLookupCache.getHostnames(this.exporter, addresses)));
+        }
+        final Set<InetAddress> addressesToReverseLookup = addresses instanceof Set ? (Set<InetAddress>) addresses : new HashSet<>(addresses);
         final Map<InetAddress, String> hostnamesByAddress = new HashMap<>(addressesToReverseLookup.size());
         final CompletableFuture reverseLookupFutures[] = addressesToReverseLookup.stream()
                 .map(addr -> {
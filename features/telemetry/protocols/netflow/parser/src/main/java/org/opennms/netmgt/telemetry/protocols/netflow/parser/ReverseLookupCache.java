@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.dnsresolver.api.DnsResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Shared cache of reverse lookup results used to enrich flows without waiting for the resolver.
+ *
+ * Hostnames are served from the cache only. Missing or expired entries are looked up in the background and become
+ * available to subsequent flows. Expired entries are still served until the background lookup replaces them. Failed
+ * and empty lookups are cached using the negative TTL, so unresolvable addresses do not cause a lookup per flow. The
+ * number of background lookups triggered by a single exporter is rate limited.
+ */
+public class ReverseLookupCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ReverseLookupCache.class);
+
+    private static final class Entry {
+        private final String hostname;
+        private final long expiresAt;
+
+        private Entry(final String hostname, final long expiresAt) {
+            this.hostname = hostname;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final DnsResolver dnsResolver;
+
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+
+    private final Cache<InetAddress, Entry> cache;
+
+    private final Set<InetAddress> pending = ConcurrentHashMap.newKeySet();
+
+    private final LoadingCache<InetAddress, RateLimiter> rateLimiters;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter rateLimited;
+
+    /**
+     * @param lookupsPerExporterPerSecond the maximum rate of background lookups per exporter, or 0 for no limit
+     */
+    public ReverseLookupCache(final DnsResolver dnsResolver,
+                              final long maxSize,
+                              final long positiveTtlSeconds,
+                              final long negativeTtlSeconds,
+                              final double lookupsPerExporterPerSecond,
+                              final MetricRegistry metricRegistry,
+                              final String name) {
+        this.dnsResolver = Objects.requireNonNull(dnsResolver);
+        this.positiveTtlMillis = TimeUnit.SECONDS.toMillis(positiveTtlSeconds);
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+
+        this.rateLimiters = lookupsPerExporterPerSecond > 0
+                ? CacheBuilder.newBuilder()
+                        .expireAfterAccess(10, TimeUnit.MINUTES)
+                        .build(new CacheLoader<InetAddress, RateLimiter>() {
+                            @Override
+                            public RateLimiter load(final InetAddress key) {
+                                return RateLimiter.create(lookupsPerExporterPerSecond);
+                            }
+                        })
+                : null;
+
+        this.hits = metricRegistry.meter(MetricRegistry.name("parsers", name, "dnsCacheHits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name("parsers", name, "dnsCacheMisses"));
+        this.rateLimited = metricRegistry.meter(MetricRegistry.name("parsers", name, "dnsLookupsRateLimited"));
+    }
+
+    /**
+     * Returns the cached hostnames for the given addresses and schedules background lookups for the addresses which
+     * are not cached or expired. Never blocks.
+     *
+     * @param exporter the exporter the addresses were received from
+     */
+    public Map<InetAddress, String> getHostnames(final InetAddress exporter, final Collection<InetAddress> addresses) {
+        final Map<InetAddress, String> hostnames = new HashMap<>(addresses.size());
+        final long now = System.currentTimeMillis();
+
+        for (final InetAddress address : addresses) {
+            final Entry entry = this.cache.getIfPresent(address);
+            if (entry != null && entry.expiresAt > now) {
+                this.hits.mark();
+            } else {
+                this.misses.mark();
+                this.backfill(exporter, address);
+            }
+
+            if (entry != null && entry.hostname != null) {
+                hostnames.put(address, entry.hostname);
+            }
+        }
+
+        return hostnames;
+    }
+
+    private void backfill(final InetAddress exporter, final InetAddress address) {
+        if (this.pending.contains(address)) {
+            return;
+        }
+
+        if (this.rateLimiters != null && exporter != null && !this.rateLimiters.getUnchecked(exporter).tryAcquire()) {
+            this.rateLimited.mark();
+            return;
+        }
+
+        if (!this.pending.add(address)) {
+            return;
+        }
+
+        LOG.trace("Issuing background reverse lookup for: {}", address);
+        try {
+            this.dnsResolver.reverseLookup(address).whenComplete((hostname, ex) -> {
+                if (ex == null) {
+                    LOG.trace("Got reverse lookup answer for '{}': {}", address, hostname);
+                    this.complete(address, hostname.orElse(null), hostname.isPresent() ? this.positiveTtlMillis : this.negativeTtlMillis);
+                } else {
+                    this.failed(address, ex);
+                }
+            });
+        } catch (final RuntimeException ex) {
+            this.failed(address, ex);
+        }
+    }
+
+    private void failed(final InetAddress address, final Throwable ex) {
+        LOG.trace("Reverse lookup failed for '{}': {}", address, ex);
+        // Keep serving a previous answer, but do not retry before the negative TTL elapsed
+        final Entry previous = this.cache.getIfPresent(address);
+        this.complete(address, previous != null ? previous.hostname : null, this.negativeTtlMillis);
+    }
+
+    private void complete(final InetAddress address, final String hostname, final long ttlMillis) {
+        this.cache.put(address, new Entry(hostname, System.currentTimeMillis() + ttlMillis));
+        this.pending.remove(address);
+    }
+}
@@ -28,8 +28,11 @@
 
 package org.opennms.netmgt.telemetry.protocols.netflow.parser;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -45,6 +48,7 @@ import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.UdpSessionManager;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 
 import io.netty.buffer.ByteBuf;
@@ -52,6 +56,8 @@ import io.netty.buffer.ByteBuf;
 public abstract class UdpParserBase extends ParserBase implements UdpParser {
     public final static long HOUSEKEEPING_INTERVAL = 60000;
 
+    private final MetricRegistry metricRegistry;
+
     private UdpSessionManager sessionManager;
 
     private ScheduledFuture<?> housekeepingFuture;
@@ -65,6 +71,7 @@ public abstract class UdpParserBase extends ParserBase implements UdpParser {
                          final DnsResolver dnsResolver,
                          final MetricRegistry metricRegistry) {
         super(protocol, name, dispatcher, eventForwarder, identity, dnsResolver, metricRegistry);
+        this.metricRegistry = metricRegistry;
     }
 
     protected abstract RecordProvider parse(final Session session, final ByteBuf buffer) throws Exception;
@@ -88,7 +95,23 @@ public abstract class UdpParserBase extends ParserBase implements UdpParser {
     @Override
     public void start(final ScheduledExecutorService executorService) {
         super.start(executorService);
-        this.sessionManager = new UdpSessionManager(this.templateTimeout);
+        this.removeTemplateMetrics();
+        this.sessionManager = new UdpSessionManager(this.templateTimeout, new UdpSessionManager.ExporterListener() {
+            @Override
+            public void exporterAdded(final InetAddress exporter) {
+                registerExporterMetrics(exporter);
+            }
+
+            @Override
+            public void exporterRemoved(final InetAddress exporter) {
+                removeExporterMetrics(exporter);
+            }
+        });
+
+        final UdpSessionManager sessionManager = this.sessionManager;
+        this.metricRegistry.register(MetricRegistry.name("parsers", getName(), "templates"), (Gauge<Integer>) sessionManager::getTemplateCount);
+        this.metricRegistry.register(MetricRegistry.name("parsers", getName(), "templateMisses"), (Gauge<Long>) sessionManager::getTemplateMisses);
+        this.metricRegistry.register(MetricRegistry.name("parsers", getName(), "exporters"), (Gauge<Integer>) sessionManager::getExporterCount);
         this.housekeepingFuture = executorService.scheduleAtFixedRate(this.sessionManager::doHousekeeping,
                 HOUSEKEEPING_INTERVAL,
                 HOUSEKEEPING_INTERVAL,
@@ -98,9 +121,59 @@ public abstract class UdpParserBase extends ParserBase implements UdpParser {
     @Override
     public void stop() {
         this.housekeepingFuture.cancel(false);
+        this.removeTemplateMetrics();
         super.stop();
     }
 
+    private String exporterMetricPrefix(final InetAddress exporter) {
+        // Keep the dots and colons of the address from being taken as separators of the metric name
+        return MetricRegistry.name("parsers", getName(), "exporter", exporter.getHostAddress().replaceAll("[.:]", "_")) + ".";
+    }
+
+    /**
+     * Registers the template count, miss count and miss rate of the given exporter. The gauges are removed when the
+     * exporter is evicted from the session manager or the parser is stopped.
+     */
+    private synchronized void registerExporterMetrics(final InetAddress exporter) {
+        final UdpSessionManager sessionManager = this.sessionManager;
+        final String prefix = exporterMetricPrefix(exporter);
+        this.removeMetrics(prefix);
+        this.metricRegistry.register(prefix + "templates", (Gauge<Integer>) () -> {
+            final UdpSessionManager.ExporterStatistics statistics = sessionManager.getExporterStatistics(exporter);
+            return statistics != null ? statistics.templates : 0;
+        });
+        this.metricRegistry.register(prefix + "templateMisses", (Gauge<Long>) () -> {
+            final UdpSessionManager.ExporterStatistics statistics = sessionManager.getExporterStatistics(exporter);
+            return statistics != null ? statistics.misses : 0L;
+        });
+        this.metricRegistry.register(prefix + "templateMissRate", (Gauge<Double>) () -> {
+            final UdpSessionManager.ExporterStatistics statistics = sessionManager.getExporterStatistics(exporter);
+            return statistics != null ? statistics.getMissRate() : 0.0;
+        });
+    }
+
+    private synchronized void removeExporterMetrics(final InetAddress exporter) {
+        this.removeMetrics(exporterMetricPrefix(exporter));
+    }
+
+    private void removeMetrics(final String prefix) {
+        this.metricRegistry.removeMatching((name, metric) -> name.startsWith(prefix));
+    }
+
+    private synchronized void removeTemplateMetrics() {
+        this.metricRegistry.remove(MetricRegistry.name("parsers", getName(), "templates"));
+        this.metricRegistry.remove(MetricRegistry.name("parsers", getName(), "templateMisses"));
+        this.metricRegistry.remove(MetricRegistry.name("parsers", getName(), "exporters"));
+        this.removeMetrics(MetricRegistry.name("parsers", getName(), "exporter") + ".");
+    }
+
+    /**
+     * Per exporter template statistics, used to diagnose exporters causing missing template storms.
+     */
+    public List<UdpSessionManager.ExporterStatistics> getExporterStatistics() {
+        return this.sessionManager != null ? this.sessionManager.getExporterStatistics() : Collections.emptyList();
+    }
+
     public Duration getTemplateTimeout() {
         return this.templateTimeout;
     }
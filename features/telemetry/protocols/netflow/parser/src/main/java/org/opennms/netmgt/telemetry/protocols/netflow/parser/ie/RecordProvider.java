@@ -32,4 +32,8 @@ import java.util.stream.Stream;
 
 public interface RecordProvider {
     Stream<Iterable<Value<?>>> getRecords();
+
+    default Stream<? extends DecodedRecord> getDecodedRecords() {
+        return Stream.empty();
+    }
 }
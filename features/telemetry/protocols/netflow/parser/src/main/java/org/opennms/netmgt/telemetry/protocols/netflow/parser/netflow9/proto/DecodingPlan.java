@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.IPv4AddressValue;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.IPv6AddressValue;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Field;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder.Element;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * A template compiled into a flat list of field offsets and decoders.
+ *
+ * Records are decoded straight from the buffer into a {@link Netflow9MessageBuilder}. Fields which are not part of
+ * the resulting message are skipped without being parsed and numbers and addresses are read in place, so no
+ * intermediate {@link Value} is created for them.
+ */
+final class DecodingPlan {
+
+    private enum Kind {
+        SKIP,
+        UNSIGNED,
+        ADDRESS,
+        GENERIC,
+    }
+
+    private final Field[] fields;
+    private final Element[] elements;
+    private final Kind[] kinds;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private final int recordLength;
+
+    private DecodingPlan(final Template template) {
+        final int count = template.fields.size();
+
+        this.fields = template.fields.toArray(new Field[count]);
+        this.elements = new Element[count];
+        this.kinds = new Kind[count];
+        this.offsets = new int[count];
+        this.lengths = new int[count];
+
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            final Field field = this.fields[i];
+
+            this.offsets[i] = offset;
+            this.lengths[i] = field.length();
+            offset += field.length();
+
+            if (field instanceof FieldSpecifier) {
+                this.elements[i] = Element.forName(((FieldSpecifier) field).informationElement.getName());
+            }
+            this.kinds[i] = this.elements[i] != null
+                    ? kindOf(field)
+                    : Kind.SKIP;
+        }
+
+        this.recordLength = offset;
+    }
+
+    /**
+     * Determines how a field is decoded by parsing a zeroed sample of it once. Fields which can not be read in place
+     * are decoded using the field's own parser for every record.
+     */
+    private static Kind kindOf(final Field field) {
+        final Value<?> sample;
+        try {
+            sample = field.parse(null, Unpooled.wrappedBuffer(new byte[field.length()]));
+        } catch (final Exception e) {
+            return Kind.GENERIC;
+        }
+
+        // Unsigned values wider than a long are left to the field parser which yields a BigInteger for them
+        if (sample instanceof UnsignedValue && field.length() <= 8) {
+            return Kind.UNSIGNED;
+        }
+        if (sample instanceof IPv4AddressValue || sample instanceof IPv6AddressValue) {
+            return Kind.ADDRESS;
+        }
+        return Kind.GENERIC;
+    }
+
+    public static DecodingPlan forTemplate(final Template template) {
+        return template.plan(DecodingPlan::new);
+    }
+
+    /**
+     * Decodes all records contained in the buffer.
+     *
+     * @param header the header of the packet containing the records
+     * @param options the options applicable to the records
+     * @param records the list the decoded records are appended to
+     */
+    public void decode(final Header header,
+                       final Session.Resolver resolver,
+                       final List<Value<?>> options,
+                       final ByteBuf buffer,
+                       final List<Netflow9MessageBuilder> records) throws InvalidPacketException, MissingTemplateException {
+        final int start = records.size();
+
+        while (buffer.isReadable(this.recordLength)) {
+            final Netflow9MessageBuilder record = new Netflow9MessageBuilder();
+            record.add(Element.SEQUENCE_NUMBER, header.sequenceNumber);
+            record.add(Element.SYS_UP_TIME, header.sysUpTime);
+            record.add(Element.UNIX_SECS, header.unixSecs);
+            record.add(Element.SOURCE_ID, header.sourceId);
+
+            this.decodeFields(resolver, buffer, record);
+
+            for (final Value<?> option : options) {
+                record.addField(option);
+            }
+
+            records.add(record);
+        }
+
+        if (records.size() == start) {
+            throw new InvalidPacketException(buffer, "Empty set");
+        }
+    }
+
+    private void decodeFields(final Session.Resolver resolver,
+                              final ByteBuf buffer,
+                              final Netflow9MessageBuilder record) throws InvalidPacketException, MissingTemplateException {
+        final int base = buffer.readerIndex();
+
+        for (int i = 0; i < this.kinds.length; i++) {
+            final int index = base + this.offsets[i];
+            switch (this.kinds[i]) {
+                case UNSIGNED:
+                    record.add(this.elements[i], readUnsigned(buffer, index, this.lengths[i]));
+                    break;
+                case ADDRESS:
+                    record.add(this.elements[i], readAddress(buffer, index, this.lengths[i]));
+                    break;
+                case GENERIC:
+                    record.addField(this.fields[i].parse(resolver, buffer.slice(index, this.lengths[i])));
+                    break;
+            }
+        }
+
+        buffer.skipBytes(this.recordLength);
+    }
+
+    private static long readUnsigned(final ByteBuf buffer, final int index, final int length) {
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            result = (result << 8L) | (buffer.getUnsignedByte(index + i) & 0xFFL);
+        }
+        return result;
+    }
+
+    private static InetAddress readAddress(final ByteBuf buffer, final int index, final int length) throws InvalidPacketException {
+        final byte[] bytes = new byte[length];
+        buffer.getBytes(index, bytes);
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (final UnknownHostException e) {
+            throw new InvalidPacketException(buffer, "Error parsing address value", e);
+        }
+    }
+}
@@ -30,6 +30,7 @@ package org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto;
 
 import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -44,6 +45,7 @@ import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,14 +75,34 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
     public final List<OptionsTemplateSet> optionTemplateSets;
     public final List<DataSet> dataSets;
 
+    // Records of data sets decoded using the compiled template plans
+    private final List<Netflow9MessageBuilder> decodedRecords;
+
+    // Flow records of the packet, whether they were decoded or parsed into values. Records of option data sets are
+    // not flows and are not counted.
+    private final int recordCount;
+
     public Packet(final Session session,
                   final Header header,
                   final ByteBuf buffer) throws InvalidPacketException {
+        this(session, header, buffer, false);
+    }
+
+    /**
+     * @param compiled if set, records of data sets are decoded directly into flow messages using the compiled
+     *                 template plans instead of being parsed into values. These records are available from
+     *                 {@link #getDecodedRecords()} and are not part of {@link #dataSets}.
+     */
+    public Packet(final Session session,
+                  final Header header,
+                  final ByteBuf buffer,
+                  final boolean compiled) throws InvalidPacketException {
         this.header = Objects.requireNonNull(header);
 
         final List<TemplateSet> templateSets = new LinkedList<>();
         final List<OptionsTemplateSet> optionTemplateSets = new LinkedList<>();
         final List<DataSet> dataSets = new LinkedList<>();
+        final List<Netflow9MessageBuilder> decodedRecords = new ArrayList<>();
         while (buffer.isReadable()) {
             // We ignore header.counter here, because different exporters interpret it as flowset count or record count
 
@@ -134,6 +156,10 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
                 case DATA_FLOWSET: {
                     final Session.Resolver resolver = session.getResolver(header.sourceId);
 
+                    if (compiled && this.decode(resolver, setHeader, payloadBuffer, decodedRecords)) {
+                        break;
+                    }
+
                     final DataSet dataSet;
                     try {
                         dataSet = new DataSet(this, setHeader, resolver, payloadBuffer);
@@ -162,6 +188,43 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
         this.templateSets = Collections.unmodifiableList(templateSets);
         this.optionTemplateSets = Collections.unmodifiableList(optionTemplateSets);
         this.dataSets = Collections.unmodifiableList(dataSets);
+
+        this.recordCount = decodedRecords.size() + this.dataSets.stream()
+                .mapToInt(s -> s.records.size())
+                .sum();
+        for (final Netflow9MessageBuilder record : decodedRecords) {
+            record.add(Netflow9MessageBuilder.Element.RECORD_COUNT, this.recordCount);
+        }
+        this.decodedRecords = Collections.unmodifiableList(decodedRecords);
+    }
+
+    /**
+     * Decodes a data set using the compiled plan of its template.
+     *
+     * @return {@code false} if the data set must be handled by the generic parser
+     */
+    private boolean decode(final Session.Resolver resolver,
+                           final FlowSetHeader setHeader,
+                           final ByteBuf buffer,
+                           final List<Netflow9MessageBuilder> decodedRecords) throws InvalidPacketException {
+        final List<Netflow9MessageBuilder> records = new ArrayList<>();
+        try {
+            final Template template = resolver.lookupTemplate(setHeader.setId);
+            if (template.type != Template.Type.TEMPLATE) {
+                return false;
+            }
+
+            // Options are looked up by the system and template scopes which are the same for all records of the set
+            final List<Value<?>> options = resolver.lookupOptions(ScopeFieldSpecifier.buildScopeValues(this.header.sourceId, template.id));
+
+            DecodingPlan.forTemplate(template).decode(this.header, resolver, options, buffer, records);
+        } catch (final MissingTemplateException ex) {
+            LOG.debug("Skipping data-set due to missing template: {}", ex.getMessage());
+            return true;
+        }
+
+        decodedRecords.addAll(records);
+        return true;
     }
 
     @Override
@@ -173,15 +236,11 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
 
     @Override
     public Stream<Iterable<Value<?>>> getRecords() {
-        final int recordCount = this.dataSets.stream()
-                .mapToInt(s -> s.records.size())
-                .sum();
-
         return this.dataSets.stream()
                 .flatMap(s -> s.records.stream())
                 .map(r -> Iterables.concat(
                         ImmutableList.of(
-                                new UnsignedValue("@recordCount", recordCount),
+                                new UnsignedValue("@recordCount", this.recordCount),
                                 new UnsignedValue("@sequenceNumber", this.header.sequenceNumber),
                                 new UnsignedValue("@sysUpTime", this.header.sysUpTime),
                                 new UnsignedValue("@unixSecs", this.header.unixSecs),
@@ -191,6 +250,11 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
                 ));
     }
 
+    @Override
+    public Stream<Netflow9MessageBuilder> getDecodedRecords() {
+        return this.decodedRecords.stream();
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
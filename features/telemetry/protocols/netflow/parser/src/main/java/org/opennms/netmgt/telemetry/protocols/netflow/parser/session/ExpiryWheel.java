@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.session;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * A hashed wheel of expiring entries.
+ *
+ * Entries are hashed into slots by their deadline, so advancing the wheel only needs to look at the slots which became
+ * due since the last advance instead of scanning all entries. Adding entries is lock-free.
+ *
+ * The deadline of an entry can be extended while it is in the wheel. The entry stays in its slot and is moved to the
+ * slot of its new deadline once its old slot becomes due, so refreshing an entry does not add anything to the wheel.
+ */
+final class ExpiryWheel<E extends ExpiryWheel.Entry> {
+
+    abstract static class Entry {
+        private volatile long deadline;
+
+        // The tick of the slot the entry is queued in
+        private volatile long bucket;
+
+        private volatile boolean removed;
+
+        protected Entry(final long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * The point in time (in milliseconds since the epoch) at or after which the entry expires.
+         */
+        final long getDeadline() {
+            return this.deadline;
+        }
+
+        /**
+         * Moves the deadline of the entry.
+         */
+        final void setDeadline(final long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickMillis;
+
+    private final Queue<E>[] slots;
+
+    // The first tick which has not been completely processed yet
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    ExpiryWheel(final Duration timeout, final int slotCount, final long now) {
+        this.tickMillis = Math.max(1L, timeout.toMillis() / slotCount);
+        this.slots = new Queue[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            this.slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.tick = now / this.tickMillis;
+    }
+
+    void add(final E entry) {
+        entry.removed = false;
+        this.enqueue(entry);
+    }
+
+    /**
+     * Drops the entry from the wheel.
+     */
+    void remove(final E entry) {
+        // The flag covers an entry which is re-queued by a concurrent advance
+        entry.removed = true;
+        this.slot(entry.bucket).remove(entry);
+    }
+
+    /**
+     * Hands all entries which are expired at the given time to the predicate. Entries for which the predicate returns
+     * {@code true} are dropped from the wheel, all others are kept and checked again once their deadline is due.
+     */
+    synchronized void advance(final long now, final Predicate<E> expired) {
+        final long current = now / this.tickMillis;
+
+        // Each slot must be visited only once even if the wheel was not advanced for more than a full turn
+        for (long t = Math.max(this.tick, current - this.slots.length + 1); t <= current; t++) {
+            final Queue<E> slot = this.slot(t);
+
+            // Only look at the entries present now - entries which are not due yet are put back into the slot of
+            // their deadline
+            for (int n = slot.size(); n > 0; n--) {
+                final E entry = slot.poll();
+                if (entry == null) {
+                    break;
+                }
+
+                if (entry.removed) {
+                    continue;
+                }
+
+                if (entry.getDeadline() > now || !expired.test(entry)) {
+                    this.enqueue(entry);
+                }
+            }
+        }
+
+        // The current tick has not fully elapsed yet, so it will be visited again
+        this.tick = current;
+    }
+
+    /**
+     * The number of entries in the wheel.
+     */
+    int size() {
+        int size = 0;
+        for (final Queue<E> slot : this.slots) {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    private void enqueue(final E entry) {
+        final long bucket = entry.getDeadline() / this.tickMillis;
+        entry.bucket = bucket;
+        this.slot(bucket).add(entry);
+    }
+
+    private Queue<E> slot(final long tick) {
+        return this.slots[(int) Math.floorMod(tick, (long) this.slots.length)];
+    }
+}
@@ -33,6 +33,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -53,6 +54,9 @@ public final class Template implements Iterable<Field> {
     public final List<Field> fields;
     public final Set<String> scopeNames;
 
+    // Protocol specific decoding plan, compiled lazily on first use
+    private volatile Object plan;
+
     private Template(final int id,
                      final Type type,
                      final List<Scope> scopes,
@@ -79,6 +83,21 @@ public final class Template implements Iterable<Field> {
         return StreamSupport.stream(this.spliterator(), false);
     }
 
+    /**
+     * Returns the decoding plan attached to this template, compiling it using the given compiler if it does not
+     * exist yet. As templates are immutable, the plan can be shared by all records decoded using this template.
+     */
+    @SuppressWarnings("unchecked")
+    public <P> P plan(final Function<Template, P> compiler) {
+        Object plan = this.plan;
+        if (plan == null) {
+            // Racing threads may compile the plan twice which is harmless as the result is the same
+            plan = compiler.apply(this);
+            this.plan = plan;
+        }
+        return (P) plan;
+    }
+
     public static class Builder {
         private final int id;
         private final Type type;
@@ -26,66 +26,113 @@
  *     http://www.opennms.com/
  *******************************************************************************/
 
+
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.session;
 
 import java.net.InetAddress;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
+import com.google.common.base.MoreObjects;
 
+/**
+ * Keeps the templates and options announced by the exporters sending via UDP.
+ *
+ * The state is sharded by exporter session and observation domain. Lookups are lock-free and modifications only
+ * contend with other modifications of the same shard. Templates are expired using a hashed wheel, so housekeeping
+ * only looks at templates which are due instead of scanning all of them.
+ *
+ * Template lookups, misses and the number of templates are counted per exporter. Exporters which have not been heard of
+ * for longer than the template timeout and have no templates left are evicted during housekeeping.
+ */
 public class UdpSessionManager {
+    private static final Logger LOG = LoggerFactory.getLogger(UdpSessionManager.class);
+
+    private static final int EXPIRY_WHEEL_SLOTS = 64;
+
     public interface SessionKey {
         InetAddress getRemoteAddress();
     }
 
+    /**
+     * Notified when exporters start or stop being tracked.
+     */
+    public interface ExporterListener {
+        void exporterAdded(InetAddress exporter);
+
+        void exporterRemoved(InetAddress exporter);
+    }
+
+    private static final ExporterListener NO_OP_LISTENER = new ExporterListener() {
+        @Override
+        public void exporterAdded(final InetAddress exporter) {
+        }
+
+        @Override
+        public void exporterRemoved(final InetAddress exporter) {
+        }
+    };
+
     private final class UdpSession implements Session {
         private final class Resolver implements Session.Resolver {
-            private final long observationDomainId;
+            private final DomainKey domainKey;
 
             private Resolver(final long observationDomainId) {
-                this.observationDomainId = observationDomainId;
-            }
-
-            private Key key(final int templateId) {
-                return new Key(UdpSession.this.sessionKey, this.observationDomainId, templateId);
+                this.domainKey = new DomainKey(UdpSession.this.sessionKey, observationDomainId);
             }
 
             @Override
             public Template lookupTemplate(final int templateId) throws MissingTemplateException {
-                final TemplateWrapper templateWrapper = UdpSessionManager.this.templates.get(key(templateId));
-                if (templateWrapper != null) {
-                    return templateWrapper.template;
+                UdpSession.this.exporter.lookups.increment();
+
+                final Domain domain = UdpSessionManager.this.domains.get(this.domainKey);
+                final TemplateEntry entry = domain != null ? domain.templates.get(templateId) : null;
+                if (entry != null) {
+                    return entry.template;
                 } else {
+                    UdpSession.this.exporter.misses.increment();
+                    LOG.debug("Missing template {} for {} ({} misses for exporter)", templateId, this.domainKey, UdpSession.this.exporter.misses);
                     throw new MissingTemplateException(templateId);
                 }
             }
 
             @Override
             public List<Value<?>> lookupOptions(final List<Value<?>> values) {
+                final Domain domain = UdpSessionManager.this.domains.get(this.domainKey);
+                if (domain == null || domain.options.isEmpty()) {
+                    return new ArrayList<>();
+                }
+
                 final LinkedHashMap<String, Value<?>> options = new LinkedHashMap<>();
 
                 final Set<String> scoped = values.stream().map(Value::getName).collect(Collectors.toSet());
 
-                for (final Map.Entry<Key, Map<Set<Value<?>>, List<Value<?>>>> e : Iterables.filter(UdpSessionManager.this.options.entrySet(),
-                                                                                                   e -> Objects.equals(e.getKey().sessionKey, UdpSession.this.sessionKey) &&
-                                                                                                        Objects.equals(e.getKey().observationDomainId, this.observationDomainId))) {
-                    final Template template = UdpSessionManager.this.templates.get(e.getKey()).template;
+                for (final Map.Entry<Integer, Map<Set<Value<?>>, List<Value<?>>>> e : domain.options.entrySet()) {
+                    final TemplateEntry entry = domain.templates.get(e.getKey());
+                    if (entry == null) {
+                        continue;
+                    }
+
+                    final Template template = entry.template;
 
                     if (scoped.containsAll(template.scopeNames)) {
                         // Found option template where scoped fields is subset of actual data fields
@@ -106,25 +153,70 @@ public class UdpSessionManager {
 
         private final SessionKey sessionKey;
 
+        private final Exporter exporter;
+
         public UdpSession(final SessionKey sessionKey) {
             this.sessionKey = sessionKey;
+            this.exporter = UdpSessionManager.this.getExporter(sessionKey.getRemoteAddress());
+            this.exporter.lastSeen = System.currentTimeMillis();
         }
 
         @Override
         public void addTemplate(final long observationDomainId, final Template template) {
-            final Key key = new Key(this.sessionKey, observationDomainId, template.id);
-            UdpSessionManager.this.templates.put(key, new TemplateWrapper(template));
+            final long deadline = System.currentTimeMillis() + UdpSessionManager.this.timeout.toMillis();
+
+            final List<TemplateEntry> added = new ArrayList<>(1);
+            UdpSessionManager.this.domains.compute(new DomainKey(this.sessionKey, observationDomainId), (key, domain) -> {
+                if (domain == null) {
+                    domain = new Domain(key);
+                }
+
+                // Refreshed templates replace the template of the existing entry which stays in the expiry wheel
+                final TemplateEntry existing = domain.templates.get(template.id);
+                if (existing != null) {
+                    existing.template = template;
+                    existing.setDeadline(deadline);
+                } else {
+                    final TemplateEntry entry = new TemplateEntry(domain, template, deadline);
+                    domain.templates.put(template.id, entry);
+                    UdpSession.this.exporter.templates.incrementAndGet();
+                    added.add(entry);
+                }
+                return domain;
+            });
+            added.forEach(UdpSessionManager.this.expiryWheel::add);
         }
 
         @Override
         public void removeTemplate(final long observationDomainId, final int templateId) {
-            final Key key = new Key(this.sessionKey, observationDomainId, templateId);
-            UdpSessionManager.this.templates.remove(key);
+            final List<TemplateEntry> removed = new ArrayList<>(1);
+            UdpSessionManager.this.domains.computeIfPresent(new DomainKey(this.sessionKey, observationDomainId), (key, domain) -> {
+                final TemplateEntry entry = domain.remove(templateId);
+                if (entry != null) {
+                    UdpSession.this.exporter.templates.decrementAndGet();
+                    removed.add(entry);
+                }
+                return domain.isEmpty() ? null : domain;
+            });
+            removed.forEach(UdpSessionManager.this.expiryWheel::remove);
         }
 
         @Override
         public void removeAllTemplate(final long observationDomainId, final Template.Type type) {
-            UdpSessionManager.this.templates.entrySet().removeIf(e -> e.getKey().observationDomainId == observationDomainId && e.getValue().template.type == type);
+            final List<TemplateEntry> removed = new ArrayList<>();
+            UdpSessionManager.this.domains.computeIfPresent(new DomainKey(this.sessionKey, observationDomainId), (key, domain) -> {
+                domain.templates.values().removeIf(e -> {
+                    if (e.template.type == type) {
+                        removed.add(e);
+                        return true;
+                    }
+                    return false;
+                });
+                domain.options.keySet().retainAll(domain.templates.keySet());
+                return domain.isEmpty() ? null : domain;
+            });
+            UdpSession.this.exporter.templates.addAndGet(-removed.size());
+            removed.forEach(UdpSessionManager.this.expiryWheel::remove);
         }
 
         @Override
@@ -132,8 +224,13 @@ public class UdpSessionManager {
                                final int templateId,
                                final Collection<Value<?>> scopes,
                                final List<Value<?>> values) {
-            final Key key = new Key(this.sessionKey, observationDomainId, templateId);
-            UdpSessionManager.this.options.computeIfAbsent(key, (k) -> new HashMap<>()).put(new HashSet<>(scopes), values);
+            UdpSessionManager.this.domains.compute(new DomainKey(this.sessionKey, observationDomainId), (key, domain) -> {
+                if (domain == null) {
+                    domain = new Domain(key);
+                }
+                domain.options.computeIfAbsent(templateId, (k) -> new ConcurrentHashMap<>()).put(new HashSet<>(scopes), values);
+                return domain;
+            });
         }
 
         @Override
@@ -147,58 +244,225 @@ public class UdpSessionManager {
         }
     }
 
-    private final static class Key {
+    private final static class DomainKey {
         private final SessionKey sessionKey;
-        public final long observationDomainId;
-        public final int templateId;
+        private final long observationDomainId;
+
+        private final int hashCode;
 
-        Key(final SessionKey sessionKey,
-            final long observationDomainId,
-            final int templateId) {
+        DomainKey(final SessionKey sessionKey,
+                  final long observationDomainId) {
             this.sessionKey = Objects.requireNonNull(sessionKey);
             this.observationDomainId = observationDomainId;
-            this.templateId = templateId;
+            this.hashCode = Objects.hash(this.sessionKey, this.observationDomainId);
         }
 
         @Override
         public boolean equals(final Object o) {
             if (this == o) return true;
-            if (!(o instanceof Key)) return false;
+            if (!(o instanceof DomainKey)) return false;
 
-            final Key that = (Key) o;
+            final DomainKey that = (DomainKey) o;
             return this.observationDomainId == that.observationDomainId &&
-                    this.templateId == that.templateId &&
                     Objects.equals(this.sessionKey, that.sessionKey);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(this.sessionKey, this.observationDomainId, this.templateId);
+            return this.hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("sessionKey", this.sessionKey)
+                    .add("observationDomainId", this.observationDomainId)
+                    .toString();
+        }
+    }
+
+    /**
+     * The templates and options of a single observation domain of an exporter session.
+     */
+    private final static class Domain {
+        private final DomainKey key;
+
+        private final ConcurrentMap<Integer, TemplateEntry> templates = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Integer, Map<Set<Value<?>>, List<Value<?>>>> options = new ConcurrentHashMap<>();
+
+        private Domain(final DomainKey key) {
+            this.key = key;
+        }
+
+        private TemplateEntry remove(final int templateId) {
+            this.options.remove(templateId);
+            return this.templates.remove(templateId);
+        }
+
+        private boolean isEmpty() {
+            return this.templates.isEmpty() && this.options.isEmpty();
         }
     }
 
-    private final static class TemplateWrapper {
-        public final Instant insertionTime;
-        public final Template template;
+    private final static class TemplateEntry extends ExpiryWheel.Entry {
+        private final Domain domain;
 
-        private TemplateWrapper(final Template template) {
-            this.insertionTime = Instant.now();
+        private volatile Template template;
+
+        private TemplateEntry(final Domain domain, final Template template, final long deadline) {
+            super(deadline);
+            this.domain = domain;
             this.template = template;
         }
     }
 
-    private final Map<Key, TemplateWrapper> templates = Maps.newHashMap();
-    private final Map<Key, Map<Set<Value<?>>, List<Value<?>>>> options = Maps.newHashMap();
+    private final static class Exporter {
+        private final InetAddress address;
+
+        private final AtomicInteger templates = new AtomicInteger();
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private volatile long lastSeen;
+
+        private Exporter(final InetAddress address) {
+            this.address = address;
+            this.lastSeen = System.currentTimeMillis();
+        }
+
+        private ExporterStatistics getStatistics() {
+            return new ExporterStatistics(this.address, this.templates.get(), this.lookups.sum(), this.misses.sum());
+        }
+    }
+
+    /**
+     * Template statistics of a single exporter.
+     */
+    public final static class ExporterStatistics {
+        public final InetAddress exporter;
+        public final int templates;
+        public final long lookups;
+        public final long misses;
+
+        private ExporterStatistics(final InetAddress exporter, final int templates, final long lookups, final long misses) {
+            this.exporter = exporter;
+            this.templates = templates;
+            this.lookups = lookups;
+            this.misses = misses;
+        }
+
+        /**
+         * The ratio of template lookups which failed with a {@link MissingTemplateException}.
+         */
+        public double getMissRate() {
+            return this.lookups > 0 ? (double) this.misses / this.lookups : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("exporter", this.exporter)
+                    .add("templates", this.templates)
+                    .add("lookups", this.lookups)
+                    .add("misses", this.misses)
+                    .toString();
+        }
+    }
+
+    private final ConcurrentMap<DomainKey, Domain> domains = new ConcurrentHashMap<>();
+    private final ConcurrentMap<InetAddress, Exporter> exporters = new ConcurrentHashMap<>();
 
     private final Duration timeout;
 
+    private final ExpiryWheel<TemplateEntry> expiryWheel;
+
+    private final ExporterListener exporterListener;
+
     public UdpSessionManager(final Duration timeout) {
+        this(timeout, NO_OP_LISTENER);
+    }
+
+    public UdpSessionManager(final Duration timeout, final ExporterListener exporterListener) {
         this.timeout = timeout;
+        this.expiryWheel = new ExpiryWheel<>(timeout, EXPIRY_WHEEL_SLOTS, System.currentTimeMillis());
+        this.exporterListener = Objects.requireNonNull(exporterListener);
+    }
+
+    private Exporter getExporter(final InetAddress address) {
+        final Exporter exporter = this.exporters.get(address);
+        if (exporter != null) {
+            return exporter;
+        }
+
+        final boolean[] added = { false };
+        final Exporter created = this.exporters.computeIfAbsent(address, a -> {
+            added[0] = true;
+            return new Exporter(a);
+        });
+        if (added[0]) {
+            this.exporterListener.exporterAdded(address);
+        }
+        return created;
+    }
+
+    private void templatesRemoved(final Domain domain, final int count) {
+        final Exporter exporter = this.exporters.get(domain.key.sessionKey.getRemoteAddress());
+        if (exporter != null) {
+            exporter.templates.addAndGet(-count);
+        }
     }
 
     public void doHousekeeping() {
-        final Instant timeout = Instant.now().minus(this.timeout);
-        UdpSessionManager.this.templates.entrySet().removeIf(e -> e.getValue().insertionTime.isBefore(timeout));
+        final long now = System.currentTimeMillis();
+        this.expiryWheel.advance(now, entry -> {
+            final boolean[] expired = { true };
+            this.domains.computeIfPresent(entry.domain.key, (key, domain) -> {
+                // Entries which have been removed in the meantime are dropped from the wheel, entries which have been
+                // refreshed since the wheel looked at them are kept
+                if (domain == entry.domain && domain.templates.get(entry.template.id) == entry) {
+                    if (entry.getDeadline() > now) {
+                        expired[0] = false;
+                    } else {
+                        domain.remove(entry.template.id);
+                        this.templatesRemoved(domain, 1);
+                    }
+                }
+                return domain.isEmpty() ? null : domain;
+            });
+            return expired[0];
+        });
+
+        this.evictIdleExporters(now);
+    }
+
+    /**
+     * Forgets exporters which have not sent anything for longer than the template timeout and have no templates left,
+     * together with the options they left behind, so the exporter map does not grow with every address ever seen.
+     */
+    private void evictIdleExporters(final long now) {
+        final long idleSince = now - this.timeout.toMillis();
+
+        final Set<InetAddress> evicted = new HashSet<>();
+        for (final Exporter exporter : this.exporters.values()) {
+            if (exporter.lastSeen < idleSince && exporter.templates.get() <= 0 && this.exporters.remove(exporter.address, exporter)) {
+                evicted.add(exporter.address);
+            }
+        }
+        if (evicted.isEmpty()) {
+            return;
+        }
+
+        final Iterator<Domain> domains = this.domains.values().iterator();
+        while (domains.hasNext()) {
+            final Domain domain = domains.next();
+            if (evicted.contains(domain.key.sessionKey.getRemoteAddress())) {
+                domains.remove();
+                domain.templates.values().forEach(this.expiryWheel::remove);
+            }
+        }
+
+        LOG.debug("Evicted {} idle exporters", evicted.size());
+        evicted.forEach(this.exporterListener::exporterRemoved);
     }
 
     public Session getSession(final SessionKey sessionKey) {
@@ -206,6 +470,56 @@ public class UdpSessionManager {
     }
 
     public void drop(final SessionKey sessionKey) {
-        this.templates.entrySet().removeIf(e -> Objects.equals(e.getKey().sessionKey, sessionKey));
+        final Iterator<Domain> domains = this.domains.values().iterator();
+        while (domains.hasNext()) {
+            final Domain domain = domains.next();
+            if (Objects.equals(domain.key.sessionKey, sessionKey)) {
+                domains.remove();
+                this.templatesRemoved(domain, domain.templates.size());
+                domain.templates.values().forEach(this.expiryWheel::remove);
+            }
+        }
+    }
+
+    /**
+     * The number of templates known over all exporters.
+     */
+    public int getTemplateCount() {
+        return this.domains.values().stream().mapToInt(d -> d.templates.size()).sum();
+    }
+
+    /**
+     * The number of templates waiting for expiry.
+     */
+    public int getPendingExpiryCount() {
+        return this.expiryWheel.size();
+    }
+
+    /**
+     * The number of template lookups which failed over all exporters.
+     */
+    public long getTemplateMisses() {
+        return this.exporters.values().stream().mapToLong(e -> e.misses.sum()).sum();
+    }
+
+    /**
+     * The number of exporters currently tracked.
+     */
+    public int getExporterCount() {
+        return this.exporters.size();
+    }
+
+    public List<ExporterStatistics> getExporterStatistics() {
+        return this.exporters.values().stream()
+                .map(Exporter::getStatistics)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The template statistics of the given exporter or {@code null} if the exporter is not tracked.
+     */
+    public ExporterStatistics getExporterStatistics(final InetAddress exporter) {
+        final Exporter e = this.exporters.get(exporter);
+        return e != null ? e.getStatistics() : null;
     }
 }
@@ -26,53 +26,128 @@
  *     http://www.opennms.com/
  *******************************************************************************/
 
+
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.transport;
 
-import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.first;
-import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getDoubleValue;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getInetAddress;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getLongValue;
-import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getUInt32Value;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.getUInt64Value;
+import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setDoubleValue;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setIntValue;
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setLongValue;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.RecordEnrichment;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.DecodedRecord;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.Direction;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.FlowMessage;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.NetflowVersion;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.SamplingAlgorithm;
 
-public class Netflow9MessageBuilder {
+public class Netflow9MessageBuilder implements DecodedRecord {
+
+    /**
+     * The elements consumed by this builder, keyed by the name of the value carrying them.
+     */
+    public enum Element {
+        // Header
+        RECORD_COUNT("@recordCount", false),
+        SEQUENCE_NUMBER("@sequenceNumber", false),
+        SOURCE_ID("@sourceId", false),
+        SYS_UP_TIME("@sysUpTime", false),
+        UNIX_SECS("@unixSecs", false),
+
+        // Fields
+        IN_BYTES("IN_BYTES", false),
+        DIRECTION("DIRECTION", false),
+        IPV4_DST_ADDR("IPV4_DST_ADDR", true),
+        IPV6_DST_ADDR("IPV6_DST_ADDR", true),
+        DST_AS("DST_AS", false),
+        IPV6_DST_MASK("IPV6_DST_MASK", false),
+        DST_MASK("DST_MASK", false),
+        L4_DST_PORT("L4_DST_PORT", false),
+        ENGINE_ID("ENGINE_ID", false),
+        ENGINE_TYPE("ENGINE_TYPE", false),
+        FIRST_SWITCHED("FIRST_SWITCHED", false),
+        LAST_SWITCHED("LAST_SWITCHED", false),
+        INPUT_SNMP("INPUT_SNMP", false),
+        IP_PROTOCOL_VERSION("IP_PROTOCOL_VERSION", false),
+        OUTPUT_SNMP("OUTPUT_SNMP", false),
+        IPV6_NEXT_HOP("IPV6_NEXT_HOP", true),
+        IPV4_NEXT_HOP("IPV4_NEXT_HOP", true),
+        BPG_IPV6_NEXT_HOP("BPG_IPV6_NEXT_HOP", true),
+        BPG_IPV4_NEXT_HOP("BPG_IPV4_NEXT_HOP", true),
+        IN_PKTS("IN_PKTS", false),
+        PROTOCOL("PROTOCOL", false),
+        SAMPLING_ALGORITHM("SAMPLING_ALGORITHM", false),
+        SAMPLING_INTERVAL("SAMPLING_INTERVAL", false),
+        IPV6_SRC_ADDR("IPV6_SRC_ADDR", true),
+        IPV4_SRC_ADDR("IPV4_SRC_ADDR", true),
+        IPV6_SRC_MASK("IPV6_SRC_MASK", false),
+        SRC_MASK("SRC_MASK", false),
+        SRC_AS("SRC_AS", false),
+        L4_SRC_PORT("L4_SRC_PORT", false),
+        TCP_FLAGS("TCP_FLAGS", false),
+        TOS("TOS", false),
+        SRC_VLAN("SRC_VLAN", false),
+        DST_VLAN("DST_VLAN", false),
+        FLOW_ACTIVE_TIMEOUT("FLOW_ACTIVE_TIMEOUT", false),
+        FLOW_INACTIVE_TIMEOUT("FLOW_INACTIVE_TIMEOUT", false);
+
+        private static final Map<String, Element> BY_NAME = new HashMap<>();
+        static {
+            for (final Element element : values()) {
+                BY_NAME.put(element.valueName, element);
+            }
+        }
+
+        private final String valueName;
+        private final boolean address;
+
+        Element(final String valueName, final boolean address) {
+            this.valueName = valueName;
+            this.address = address;
+        }
+
+        public String getValueName() {
+            return this.valueName;
+        }
+
+        public boolean isAddress() {
+            return this.address;
+        }
+
+        /**
+         * Returns the element for the given value name or {@code null} if values with this name are ignored.
+         */
+        public static Element forName(final String valueName) {
+            return BY_NAME.get(valueName);
+        }
+    }
 
     private final FlowMessage.Builder builder;
     private final Iterable<Value<?>> values;
     private final RecordEnrichment enrichment;
+
+    // Numeric values which are only consumed while finishing the message, indexed by element ordinal
+    private final long[] numbers = new long[Element.values().length];
+    private long present;
+
     private InetAddress ipv4DstAddress;
     private InetAddress ipv6DstAddress;
-    private Long dstMask;
-    private Long ipv6DstMask;
     private InetAddress ipv4NextHop;
     private InetAddress ipv6NextHop;
     private InetAddress bgpIpv4NextHop;
     private InetAddress bgpIpv6NextHop;
     private InetAddress ipv4SrcAddress;
     private InetAddress ipv6SrcAddress;
-    private Long srcMask;
-    private Long ipv6SrcMask;
-    private Long srcVlan;
-    private Long dstVlan;
-    private Long flowActiveTimeout;
-    private Long flowInActiveTimeout;
-    private Long sysUpTime;
-    private Long unixSecs;
-    private Long numBytes;
-    private Long numPackets;
-    private Long firstSwitched;
-    private Long lastSwitched;
 
     public Netflow9MessageBuilder(Iterable<Value<?>> values, RecordEnrichment enrichment) {
         this.values = values;
@@ -80,59 +155,83 @@ public class Netflow9MessageBuilder {
         builder = FlowMessage.newBuilder();
     }
 
+    /**
+     * Creates an empty builder which is populated element by element using {@link #add(Element, long)} and
+     * {@link #add(Element, InetAddress)} and finished using {@link #buildData(RecordEnrichment)}.
+     */
+    public Netflow9MessageBuilder() {
+        this(Collections.emptyList(), null);
+    }
 
     public byte[] buildData() {
-
         values.forEach(this::addField);
+        return buildData(this.enrichment);
+    }
 
-        long timeStampInMsecs = this.unixSecs != null ? this.unixSecs * 1000 : 0;
+    @Override
+    public byte[] buildData(final RecordEnrichment enrichment) {
+        long timeStampInMsecs = has(Element.UNIX_SECS) ? get(Element.UNIX_SECS) * 1000 : 0;
         builder.setTimestamp(timeStampInMsecs);
 
-        long bootTime = timeStampInMsecs - this.sysUpTime;
+        long bootTime = timeStampInMsecs - get(Element.SYS_UP_TIME);
 
-        if (this.firstSwitched != null) {
-            builder.setFirstSwitched(setLongValue(this.firstSwitched + bootTime));
+        if (has(Element.FIRST_SWITCHED)) {
+            builder.setFirstSwitched(setLongValue(get(Element.FIRST_SWITCHED) + bootTime));
         }
-        if(this.lastSwitched != null) {
-            builder.setLastSwitched(setLongValue(this.lastSwitched + bootTime));
+        if (has(Element.LAST_SWITCHED)) {
+            builder.setLastSwitched(setLongValue(get(Element.LAST_SWITCHED) + bootTime));
         }
 
         // Set Destination address and host name.
-        first(ipv6DstAddress, ipv4DstAddress).ifPresent(inetAddress -> {
-            enrichment.getHostnameFor(inetAddress).ifPresent(builder::setDstHostname);
-            builder.setDstAddress(inetAddress.getHostAddress());
-        });
+        final InetAddress dstAddress = getDstAddress();
+        if (dstAddress != null) {
+            enrichment.getHostnameFor(dstAddress).ifPresent(builder::setDstHostname);
+            builder.setDstAddress(dstAddress.getHostAddress());
+        }
 
         // dst mask
-        first(ipv6DstMask, dstMask).ifPresent(dstMaskLen ->
-            builder.setDstMaskLen(setIntValue(dstMaskLen.intValue())));
+        if (has(Element.IPV6_DST_MASK)) {
+            builder.setDstMaskLen(setIntValue((int) get(Element.IPV6_DST_MASK)));
+        } else if (has(Element.DST_MASK)) {
+            builder.setDstMaskLen(setIntValue((int) get(Element.DST_MASK)));
+        }
 
         // Set Source address and host name.
-        first(ipv6SrcAddress, ipv4SrcAddress).ifPresent(inetAddress -> {
-            enrichment.getHostnameFor(inetAddress).ifPresent(builder::setSrcHostname);
-            builder.setSrcAddress(inetAddress.getHostAddress());
-        });
+        final InetAddress srcAddress = getSrcAddress();
+        if (srcAddress != null) {
+            enrichment.getHostnameFor(srcAddress).ifPresent(builder::setSrcHostname);
+            builder.setSrcAddress(srcAddress.getHostAddress());
+        }
+
         // src mask
-        first(ipv6SrcMask, srcMask).ifPresent(srcMaskLen -> builder.setSrcMaskLen(setIntValue(srcMaskLen.intValue())));
+        if (has(Element.IPV6_SRC_MASK)) {
+            builder.setSrcMaskLen(setIntValue((int) get(Element.IPV6_SRC_MASK)));
+        } else if (has(Element.SRC_MASK)) {
+            builder.setSrcMaskLen(setIntValue((int) get(Element.SRC_MASK)));
+        }
 
         // Set next hop address, hostname.
-        first(ipv6NextHop, ipv4NextHop, bgpIpv6NextHop, bgpIpv4NextHop).ifPresent(inetAddress -> {
-            enrichment.getHostnameFor(inetAddress).ifPresent(builder::setNextHopHostname);
-            builder.setNextHopAddress(inetAddress.getHostAddress());
-        });
-
+        final InetAddress nextHop = getNextHop();
+        if (nextHop != null) {
+            enrichment.getHostnameFor(nextHop).ifPresent(builder::setNextHopHostname);
+            builder.setNextHopAddress(nextHop.getHostAddress());
+        }
 
         // set vlan
-        first(srcVlan, dstVlan).ifPresent( vlan -> builder.setVlan(setIntValue(vlan.intValue())));
+        if (has(Element.SRC_VLAN)) {
+            builder.setVlan(setIntValue((int) get(Element.SRC_VLAN)));
+        } else if (has(Element.DST_VLAN)) {
+            builder.setVlan(setIntValue((int) get(Element.DST_VLAN)));
+        }
 
         Long firstSwitched = builder.hasFirstSwitched() ? builder.getFirstSwitched().getValue() : null;
         Long lastSwitched = builder.hasLastSwitched() ? builder.getLastSwitched().getValue() : null;
 
-        Timeout timeout = new Timeout(flowActiveTimeout, flowInActiveTimeout);
+        Timeout timeout = new Timeout(box(Element.FLOW_ACTIVE_TIMEOUT), box(Element.FLOW_INACTIVE_TIMEOUT));
         timeout.setFirstSwitched(firstSwitched);
         timeout.setLastSwitched(lastSwitched);
-        timeout.setNumBytes(this.numBytes);
-        timeout.setNumPackets(this.numPackets);
+        timeout.setNumBytes(box(Element.IN_BYTES));
+        timeout.setNumPackets(box(Element.IN_PKTS));
         Long deltaSwitched = timeout.getDeltaSwitched();
         getUInt64Value(deltaSwitched).ifPresent(builder::setDeltaSwitched);
 
@@ -140,164 +239,218 @@ public class Netflow9MessageBuilder {
         return builder.build().toByteArray();
     }
 
-    private void addField(Value<?> value) {
+    /**
+     * Returns the addresses which end up in the message and are therefore worth a reverse lookup.
+     */
+    @Override
+    public List<InetAddress> getAddresses() {
+        final List<InetAddress> addresses = new ArrayList<>(3);
+        final InetAddress dstAddress = getDstAddress();
+        if (dstAddress != null) {
+            addresses.add(dstAddress);
+        }
+        final InetAddress srcAddress = getSrcAddress();
+        if (srcAddress != null) {
+            addresses.add(srcAddress);
+        }
+        final InetAddress nextHop = getNextHop();
+        if (nextHop != null) {
+            addresses.add(nextHop);
+        }
+        return addresses;
+    }
 
-        switch (value.getName()) {
-            // Header
-            case "@recordCount":
-                getUInt32Value(value).ifPresent(builder::setNumFlowRecords);
-                break;
-            case "@sequenceNumber":
-                getUInt64Value(value).ifPresent(builder::setFlowSeqNum);
-                break;
-            case "@sourceId":
-                getUInt64Value(value).ifPresent(srcId ->
-                        builder.setNodeIdentifier(String.valueOf(srcId.getValue())));
-                break;
-            case "@sysUpTime":
-                sysUpTime = getLongValue(value);
-                break;
-            case "@unixSecs":
-                unixSecs = getLongValue(value);
-                break;
-            case "IN_BYTES":
-                getUInt64Value(value).ifPresent(bytes -> {
-                    numBytes = bytes.getValue();
-                    builder.setNumBytes(bytes);
-                });
-                break;
-            case "DIRECTION":
-                Long directionValue = getLongValue(value);
-                Direction direction = Direction.UNRECOGNIZED;
-                if (directionValue != null) {
-                    switch (directionValue.intValue()) {
-                        case 0:
-                            direction = Direction.INGRESS;
-                            break;
-                        case 1:
-                            direction = Direction.EGRESS;
-                            break;
-                    }
-                }
-                if (!direction.equals(Direction.UNRECOGNIZED)) {
-                    this.builder.setDirection(direction);
+    public void addField(final Value<?> value) {
+        final Element element = Element.forName(value.getName());
+        if (element == null) {
+            return;
+        }
+
+        if (element.isAddress()) {
+            add(element, getInetAddress(value));
+            return;
+        }
+
+        final Long longValue = getLongValue(value);
+        if (longValue != null) {
+            add(element, longValue.longValue());
+        } else {
+            clear(element);
+        }
+    }
+
+    public void add(final Element element, final long value) {
+        switch (element) {
+            case RECORD_COUNT:
+                builder.setNumFlowRecords(setIntValue((int) value));
+                break;
+            case SEQUENCE_NUMBER:
+                builder.setFlowSeqNum(setLongValue(value));
+                break;
+            case SOURCE_ID:
+                builder.setNodeIdentifier(String.valueOf(value));
+                break;
+            case IN_BYTES:
+                set(element, value);
+                builder.setNumBytes(setLongValue(value));
+                break;
+            case IN_PKTS:
+                set(element, value);
+                builder.setNumPackets(setLongValue(value));
+                break;
+            case DIRECTION:
+                switch ((int) value) {
+                    case 0:
+                        builder.setDirection(Direction.INGRESS);
+                        break;
+                    case 1:
+                        builder.setDirection(Direction.EGRESS);
+                        break;
                 }
                 break;
-            case "IPV4_DST_ADDR":
-                ipv4DstAddress = getInetAddress(value);
-                break;
-            case "IPV6_DST_ADDR":
-                ipv6DstAddress = getInetAddress(value);
+            case DST_AS:
+                builder.setDstAs(setLongValue(value));
                 break;
-            case "DST_AS":
-                getUInt64Value(value).ifPresent(builder::setDstAs);
+            case SRC_AS:
+                builder.setSrcAs(setLongValue(value));
                 break;
-            case "IPV6_DST_MASK":
-                ipv6DstMask = getLongValue(value);
+            case L4_DST_PORT:
+                builder.setDstPort(setIntValue((int) value));
                 break;
-            case "DST_MASK":
-                dstMask = getLongValue(value);
+            case L4_SRC_PORT:
+                builder.setSrcPort(setIntValue((int) value));
                 break;
-            case "L4_DST_PORT":
-                getUInt32Value(value).ifPresent(builder::setDstPort);
+            case ENGINE_ID:
+                builder.setEngineId(setIntValue((int) value));
                 break;
-            case "ENGINE_ID":
-                getUInt32Value(value).ifPresent(builder::setEngineId);
+            case ENGINE_TYPE:
+                builder.setEngineType(setIntValue((int) value));
                 break;
-            case "ENGINE_TYPE":
-                getUInt32Value(value).ifPresent(builder::setEngineType);
+            case INPUT_SNMP:
+                builder.setInputSnmpIfindex(setIntValue((int) value));
                 break;
-            case "FIRST_SWITCHED":
-                firstSwitched = getLongValue(value);
+            case OUTPUT_SNMP:
+                builder.setOutputSnmpIfindex(setIntValue((int) value));
                 break;
-            case "LAST_SWITCHED":
-                lastSwitched = getLongValue(value);
+            case IP_PROTOCOL_VERSION:
+                builder.setIpProtocolVersion(setIntValue((int) value));
                 break;
-            case "INPUT_SNMP":
-                getUInt32Value(value).ifPresent(builder::setInputSnmpIfindex);
+            case PROTOCOL:
+                builder.setProtocol(setIntValue((int) value));
                 break;
-            case "IP_PROTOCOL_VERSION":
-                getUInt32Value(value).ifPresent(builder::setIpProtocolVersion);
+            case TCP_FLAGS:
+                builder.setTcpFlags(setIntValue((int) value));
                 break;
-            case "OUTPUT_SNMP":
-                getUInt32Value(value).ifPresent(builder::setOutputSnmpIfindex);
+            case TOS:
+                builder.setTos(setIntValue((int) value));
                 break;
-            case "IPV6_NEXT_HOP":
-                ipv6NextHop = getInetAddress(value);
-                break;
-            case "IPV4_NEXT_HOP":
-                ipv4NextHop = getInetAddress(value);
-                break;
-            case "BPG_IPV6_NEXT_HOP":
-                bgpIpv6NextHop = getInetAddress(value);
-                break;
-            case "BPG_IPV4_NEXT_HOP":
-                bgpIpv4NextHop = getInetAddress(value);
-                break;
-            case "IN_PKTS":
-                getUInt64Value(value).ifPresent(numPackets -> {
-                    this.numPackets = numPackets.getValue();
-                    builder.setNumPackets(numPackets);
-                });
-                break;
-            case "PROTOCOL":
-                getUInt32Value(value).ifPresent(builder::setProtocol);
-                break;
-            case "SAMPLING_ALGORITHM":
-                Long saValue = getLongValue(value);
-                SamplingAlgorithm samplingAlgorithm = SamplingAlgorithm.UNASSIGNED;
-                if (saValue != null) {
-                    if (saValue.intValue() == 1) {
-                        samplingAlgorithm = SamplingAlgorithm.SYSTEMATIC_COUNT_BASED_SAMPLING;
-                    }
-                    if (saValue.intValue() == 2) {
-                        samplingAlgorithm = SamplingAlgorithm.RANDOM_N_OUT_OF_N_SAMPLING;
-                    }
+            case SAMPLING_ALGORITHM:
+                switch ((int) value) {
+                    case 1:
+                        builder.setSamplingAlgorithm(SamplingAlgorithm.SYSTEMATIC_COUNT_BASED_SAMPLING);
+                        break;
+                    case 2:
+                        builder.setSamplingAlgorithm(SamplingAlgorithm.RANDOM_N_OUT_OF_N_SAMPLING);
+                        break;
+                    default:
+                        builder.setSamplingAlgorithm(SamplingAlgorithm.UNASSIGNED);
                 }
-                builder.setSamplingAlgorithm(samplingAlgorithm);
-                break;
-            case "SAMPLING_INTERVAL":
-                getDoubleValue(value).ifPresent(builder::setSamplingInterval);
                 break;
-            case "IPV6_SRC_ADDR":
-                ipv6SrcAddress = getInetAddress(value);
+            case SAMPLING_INTERVAL:
+                builder.setSamplingInterval(setDoubleValue((double) value));
+                break;
+            case SYS_UP_TIME:
+            case UNIX_SECS:
+            case FIRST_SWITCHED:
+            case LAST_SWITCHED:
+            case DST_MASK:
+            case IPV6_DST_MASK:
+            case SRC_MASK:
+            case IPV6_SRC_MASK:
+            case SRC_VLAN:
+            case DST_VLAN:
+            case FLOW_ACTIVE_TIMEOUT:
+            case FLOW_INACTIVE_TIMEOUT:
+                set(element, value);
                 break;
-            case "IPV4_SRC_ADDR":
-                ipv4SrcAddress = getInetAddress(value);
-                break;
-            case "IPV6_SRC_MASK":
-                ipv6SrcMask = getLongValue(value);
+        }
+    }
+
+    public void add(final Element element, final InetAddress address) {
+        switch (element) {
+            case IPV4_DST_ADDR:
+                ipv4DstAddress = address;
                 break;
-            case "SRC_MASK":
-                srcMask = getLongValue(value);
+            case IPV6_DST_ADDR:
+                ipv6DstAddress = address;
                 break;
-            case "SRC_AS":
-                getUInt64Value(value).ifPresent(builder::setSrcAs);
+            case IPV6_NEXT_HOP:
+                ipv6NextHop = address;
                 break;
-            case "L4_SRC_PORT":
-                getUInt32Value(value).ifPresent(builder::setSrcPort);
+            case IPV4_NEXT_HOP:
+                ipv4NextHop = address;
                 break;
-            case "TCP_FLAGS":
-                getUInt32Value(value).ifPresent(builder::setTcpFlags);
+            case BPG_IPV6_NEXT_HOP:
+                bgpIpv6NextHop = address;
                 break;
-            case "TOS":
-                getUInt32Value(value).ifPresent(builder::setTos);
+            case BPG_IPV4_NEXT_HOP:
+                bgpIpv4NextHop = address;
                 break;
-            case "SRC_VLAN":
-                srcVlan = getLongValue(value);
+            case IPV6_SRC_ADDR:
+                ipv6SrcAddress = address;
                 break;
-            case "DST_VLAN":
-                dstVlan = getLongValue(value);
+            case IPV4_SRC_ADDR:
+                ipv4SrcAddress = address;
                 break;
-            case "FLOW_ACTIVE_TIMEOUT":
-                flowActiveTimeout = getLongValue(value);
+        }
+    }
+
+    private void clear(final Element element) {
+        switch (element) {
+            case SAMPLING_ALGORITHM:
+                builder.setSamplingAlgorithm(SamplingAlgorithm.UNASSIGNED);
                 break;
-            case "FLOW_INACTIVE_TIMEOUT":
-                flowInActiveTimeout = getLongValue(value);
+            case IN_BYTES:
+            case IN_PKTS:
+                // Counters are only ever overridden by a present value
                 break;
+            default:
+                present &= ~(1L << element.ordinal());
         }
+    }
+
+    private void set(final Element element, final long value) {
+        numbers[element.ordinal()] = value;
+        present |= 1L << element.ordinal();
+    }
+
+    private boolean has(final Element element) {
+        return (present & (1L << element.ordinal())) != 0;
+    }
 
+    private long get(final Element element) {
+        return numbers[element.ordinal()];
     }
 
+    private Long box(final Element element) {
+        return has(element) ? get(element) : null;
+    }
 
+    private InetAddress getDstAddress() {
+        return ipv6DstAddress != null ? ipv6DstAddress : ipv4DstAddress;
+    }
+
+    private InetAddress getSrcAddress() {
+        return ipv6SrcAddress != null ? ipv6SrcAddress : ipv4SrcAddress;
+    }
+
+    private InetAddress getNextHop() {
+        if (ipv6NextHop != null) {
+            return ipv6NextHop;
+        }
+        if (ipv4NextHop != null) {
+            return ipv4NextHop;
+        }
+        return bgpIpv6NextHop != null ? bgpIpv6NextHop : bgpIpv4NextHop;
+    }
 }
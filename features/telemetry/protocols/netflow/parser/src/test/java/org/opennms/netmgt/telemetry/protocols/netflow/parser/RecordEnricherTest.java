@@ -32,6 +32,8 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.InetAddress;
@@ -49,6 +51,8 @@ import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Head
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Packet;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow5.proto.Record;
 
+import com.codahale.metrics.MetricRegistry;
+
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 
@@ -76,6 +80,56 @@ public class RecordEnricherTest {
         enrichFlow(exceptionalFuture, Optional.empty(), false);
     }
 
+    /**
+     * Verifies that asynchronous enrichment never waits for the resolver and backfills the cache.
+     */
+    @Test
+    public void canEnrichFlowAsynchronously() throws Exception {
+        final InetAddress exporter = InetAddress.getByName("10.0.0.1");
+        final InetAddress resolvable = InetAddress.getByName("10.0.0.2");
+        final InetAddress unresolvable = InetAddress.getByName("10.0.0.3");
+
+        final CompletableFuture<Optional<String>> resolvableFuture = new CompletableFuture<>();
+        final CompletableFuture<Optional<String>> unresolvableFuture = new CompletableFuture<>();
+
+        final DnsResolver dnsResolver = mock(DnsResolver.class);
+        when(dnsResolver.reverseLookup(resolvable)).thenReturn(resolvableFuture);
+        when(dnsResolver.reverseLookup(unresolvable)).thenReturn(unresolvableFuture);
+
+        final ReverseLookupCache cache = new ReverseLookupCache(dnsResolver, 100, 60, 60, 0, new MetricRegistry(), "test");
+        final RecordEnricher enricher = new RecordEnricher(dnsResolver, true, cache, exporter);
+
+        // The lookups are pending, but the enrichment must be available right away
+        final CompletableFuture<RecordEnrichment> first = enricher.enrich(Arrays.asList(resolvable, unresolvable));
+        assertThat(first.isDone(), equalTo(true));
+        assertThat(first.get().getHostnameFor(resolvable), equalTo(Optional.empty()));
+
+        resolvableFuture.complete(Optional.of("test"));
+        unresolvableFuture.complete(Optional.empty());
+
+        final RecordEnrichment second = enricher.enrich(Arrays.asList(resolvable, unresolvable)).get();
+        assertThat(second.getHostnameFor(resolvable), equalTo(Optional.of("test")));
+        assertThat(second.getHostnameFor(unresolvable), equalTo(Optional.empty()));
+
+        // Both the positive and the negative answer are served from the cache
+        verify(dnsResolver, times(1)).reverseLookup(resolvable);
+        verify(dnsResolver, times(1)).reverseLookup(unresolvable);
+    }
+
+    @Test
+    public void canRateLimitLookupsPerExporter() throws Exception {
+        final DnsResolver dnsResolver = mock(DnsResolver.class);
+        when(dnsResolver.reverseLookup(any())).thenReturn(new CompletableFuture<>());
+
+        // Allows a single lookup at startup and one every 1000 seconds afterwards
+        final ReverseLookupCache cache = new ReverseLookupCache(dnsResolver, 100, 60, 60, 0.001, new MetricRegistry(), "test");
+        final RecordEnricher enricher = new RecordEnricher(dnsResolver, true, cache, InetAddress.getByName("10.0.0.1"));
+
+        enricher.enrich(Arrays.asList(InetAddress.getByName("10.0.0.2"), InetAddress.getByName("10.0.0.3"), InetAddress.getByName("10.0.0.4"))).get();
+
+        verify(dnsResolver, times(1)).reverseLookup(any());
+    }
+
     private void enrichFlow(CompletableFuture reverseLookupFuture, Optional<String> expectedValue, boolean dnsLookupsEnabled) throws InvalidPacketException, ExecutionException, InterruptedException, UnknownHostException {
         DnsResolver dnsResolver = mock(DnsResolver.class);
         when(dnsResolver.reverseLookup(any())).thenReturn(reverseLookupFuture);
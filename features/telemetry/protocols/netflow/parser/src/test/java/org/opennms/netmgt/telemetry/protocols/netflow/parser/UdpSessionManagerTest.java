@@ -28,11 +28,16 @@
 
 package org.opennms.netmgt.telemetry.protocols.netflow.parser;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -182,4 +187,130 @@ public class UdpSessionManagerTest {
         testIpFixSessionKeys(remoteAddress1, localAddress1, remoteAddress4, localAddress1, false);
         testIpFixSessionKeys(remoteAddress1, localAddress1, remoteAddress4, localAddress2, false);
     }
+
+    @Test
+    public void testTemplateExpiry() throws Exception {
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ofMillis(50));
+        final Session session = udpSessionManager.getSession(new Netflow9UdpParser.SessionKey(remoteAddress1.getAddress(), localAddress1));
+
+        session.addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build());
+        udpSessionManager.doHousekeeping();
+        Assert.assertEquals(templateId1, session.getResolver(observationId1).lookupTemplate(templateId1).id);
+
+        Thread.sleep(100);
+
+        // Re-announced templates are kept
+        session.addTemplate(observationId2, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build());
+        udpSessionManager.doHousekeeping();
+
+        try {
+            session.getResolver(observationId1).lookupTemplate(templateId1);
+            Assert.fail("Template should have expired");
+        } catch (final MissingTemplateException e) {
+            // expected
+        }
+        Assert.assertEquals(templateId1, session.getResolver(observationId2).lookupTemplate(templateId1).id);
+        Assert.assertEquals(1, udpSessionManager.getTemplateCount());
+    }
+
+    @Test
+    public void testTemplateRefresh() throws Exception {
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ofMillis(200));
+        final UdpSessionManager.SessionKey sessionKey = new Netflow9UdpParser.SessionKey(remoteAddress1.getAddress(), localAddress1);
+        final Session session = udpSessionManager.getSession(sessionKey);
+
+        // Refreshed templates extend the expiry of the existing entry instead of piling up in the wheel
+        for (int i = 0; i < 10; i++) {
+            session.addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field" + i, null))).build());
+            session.addTemplate(observationId1, Template.builder(templateId1 + 1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field" + i, null))).build());
+            udpSessionManager.doHousekeeping();
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, udpSessionManager.getPendingExpiryCount());
+        Assert.assertEquals(2, udpSessionManager.getTemplateCount());
+
+        // Templates refreshed after the initial deadline are still known
+        Assert.assertEquals(templateId1, session.getResolver(observationId1).lookupTemplate(templateId1).id);
+
+        session.removeTemplate(observationId1, templateId1);
+        Assert.assertEquals(1, udpSessionManager.getPendingExpiryCount());
+
+        udpSessionManager.drop(sessionKey);
+        Assert.assertEquals(0, udpSessionManager.getPendingExpiryCount());
+        Assert.assertEquals(0, udpSessionManager.getTemplateCount());
+    }
+
+    @Test
+    public void testExporterStatistics() throws Exception {
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ofMinutes(30));
+        final Session session1 = udpSessionManager.getSession(new Netflow9UdpParser.SessionKey(remoteAddress1.getAddress(), localAddress1));
+        final Session session2 = udpSessionManager.getSession(new Netflow9UdpParser.SessionKey(remoteAddress3.getAddress(), localAddress1));
+
+        session1.addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build());
+        session1.getResolver(observationId1).lookupTemplate(templateId1);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                session2.getResolver(observationId1).lookupTemplate(templateId1);
+                Assert.fail("Templates must not be shared between exporters");
+            } catch (final MissingTemplateException e) {
+                // expected
+            }
+        }
+
+        final Map<InetAddress, UdpSessionManager.ExporterStatistics> statistics = udpSessionManager.getExporterStatistics().stream()
+                .collect(Collectors.toMap(e -> e.exporter, e -> e));
+
+        Assert.assertEquals(1, statistics.get(remoteAddress1.getAddress()).templates);
+        Assert.assertEquals(0.0, statistics.get(remoteAddress1.getAddress()).getMissRate(), 0.0);
+        Assert.assertEquals(0, statistics.get(remoteAddress3.getAddress()).templates);
+        Assert.assertEquals(3, statistics.get(remoteAddress3.getAddress()).misses);
+        Assert.assertEquals(1.0, statistics.get(remoteAddress3.getAddress()).getMissRate(), 0.0);
+        Assert.assertEquals(3, udpSessionManager.getTemplateMisses());
+    }
+
+    @Test
+    public void testIdleExporterEviction() throws Exception {
+        final List<InetAddress> added = new ArrayList<>();
+        final List<InetAddress> removed = new ArrayList<>();
+        final UdpSessionManager udpSessionManager = new UdpSessionManager(Duration.ofMillis(50), new UdpSessionManager.ExporterListener() {
+            @Override
+            public void exporterAdded(final InetAddress exporter) {
+                added.add(exporter);
+            }
+
+            @Override
+            public void exporterRemoved(final InetAddress exporter) {
+                removed.add(exporter);
+            }
+        });
+
+        final Netflow9UdpParser.SessionKey sessionKey1 = new Netflow9UdpParser.SessionKey(remoteAddress1.getAddress(), localAddress1);
+        udpSessionManager.getSession(sessionKey1).addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build());
+        udpSessionManager.getSession(sessionKey1).addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build());
+        udpSessionManager.getSession(new Netflow9UdpParser.SessionKey(remoteAddress3.getAddress(), localAddress1));
+
+        Assert.assertEquals(Arrays.asList(remoteAddress1.getAddress(), remoteAddress3.getAddress()), added);
+        Assert.assertEquals(2, udpSessionManager.getExporterCount());
+        Assert.assertEquals(1, udpSessionManager.getExporterStatistics(remoteAddress1.getAddress()).templates);
+
+        Thread.sleep(100);
+
+        // The first exporter keeps sending and re-announces its template
+        udpSessionManager.getSession(sessionKey1).addTemplate(observationId1, Template.builder(templateId1, Template.Type.TEMPLATE).withFields(Collections.singletonList(field("field1", null))).build());
+        udpSessionManager.doHousekeeping();
+
+        Assert.assertEquals(Collections.singletonList(remoteAddress3.getAddress()), removed);
+        Assert.assertEquals(1, udpSessionManager.getExporterCount());
+        Assert.assertNull(udpSessionManager.getExporterStatistics(remoteAddress3.getAddress()));
+        Assert.assertEquals(1, udpSessionManager.getExporterStatistics(remoteAddress1.getAddress()).templates);
+
+        Thread.sleep(100);
+
+        // Once its templates expired, the first exporter is evicted as well
+        udpSessionManager.doHousekeeping();
+        Assert.assertEquals(Arrays.asList(remoteAddress3.getAddress(), remoteAddress1.getAddress()), removed);
+        Assert.assertEquals(0, udpSessionManager.getExporterCount());
+        Assert.assertEquals(0, udpSessionManager.getTemplateCount());
+    }
 }
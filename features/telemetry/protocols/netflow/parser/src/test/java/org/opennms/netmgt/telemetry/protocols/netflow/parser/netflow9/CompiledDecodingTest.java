@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.RecordEnrichment;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Packet;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.TcpSession;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder;
+import org.opennms.netmgt.telemetry.protocols.netflow.transport.FlowMessage;
+
+import com.google.common.collect.Iterables;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Verifies that records decoded using the compiled template plans result in the same flow messages as records parsed
+ * into values.
+ */
+@RunWith(Parameterized.class)
+public class CompiledDecodingTest {
+    private final static Path FOLDER = Paths.get("src/test/resources/flows");
+
+    private final static RecordEnrichment ENRICHMENT = address -> Optional.of("host-" + address.getHostAddress());
+
+    @Parameterized.Parameters(name = "file: {0}")
+    public static Iterable<Object[]> data() throws IOException {
+        return Iterables.concat(BlackboxTest.data(), Collections.singletonList(
+                // Option data set between the template and the data set of a single packet
+                new Object[]{Collections.singletonList("netflow9_test_option_data_tpl_data.dat")}));
+    }
+
+    private final List<String> files;
+
+    public CompiledDecodingTest(final List<String> files) {
+        this.files = files;
+    }
+
+    @Test
+    public void testParity() throws Exception {
+        final List<FlowMessage> parsed = decode(false);
+        final List<FlowMessage> compiled = decode(true);
+
+        assertThat(compiled, is(parsed));
+    }
+
+    private List<FlowMessage> decode(final boolean compiledDecoding) throws Exception {
+        final Session session = new TcpSession(InetAddress.getLoopbackAddress());
+
+        final List<FlowMessage> messages = new ArrayList<>();
+        for (final String file : this.files) {
+            try (final FileChannel channel = FileChannel.open(FOLDER.resolve(file))) {
+                final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                channel.read(buffer);
+                buffer.flip();
+
+                final ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+
+                do {
+                    final Header header = new Header(slice(buf, Header.SIZE));
+                    final Packet packet = new Packet(session, header, buf, compiledDecoding);
+
+                    final List<FlowMessage> packetMessages;
+                    if (compiledDecoding) {
+                        assertThat(packet.dataSets.isEmpty(), is(true));
+                        packetMessages = packet.getDecodedRecords()
+                                .map(r -> parse(r.buildData(ENRICHMENT)))
+                                .collect(Collectors.toList());
+                    } else {
+                        packetMessages = packet.getRecords()
+                                .map(r -> parse(new Netflow9MessageBuilder(r, ENRICHMENT).buildData()))
+                                .collect(Collectors.toList());
+                    }
+
+                    // Every record carries the number of flow records in its packet, records of option data excluded
+                    for (final FlowMessage message : packetMessages) {
+                        assertThat(message.getNumFlowRecords().getValue(), is(packetMessages.size()));
+                    }
+                    messages.addAll(packetMessages);
+                } while (buf.isReadable());
+            }
+        }
+        return messages;
+    }
+
+    private static FlowMessage parse(final byte[] data) {
+        try {
+            return FlowMessage.parseFrom(data);
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
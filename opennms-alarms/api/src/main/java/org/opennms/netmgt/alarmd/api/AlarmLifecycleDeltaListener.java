@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.api;
+
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.model.OnmsAlarm;
+
+/**
+ * An {@link AlarmLifecycleListener} that can be synchronized incrementally.
+ *
+ * Listeners that implement this interface receive a complete snapshot via
+ * {@link #handleAlarmSnapshot(List)} when they are first registered, and
+ * whenever the alarms tracked by the manager are found to have diverged from
+ * the database. In between, only the alarms that were created, updated or deleted
+ * since the previous snapshot are given to {@link #handleAlarmSnapshotDelta(List, Map)}.
+ *
+ * Calls to {@link #preHandleAlarmSnapshot()} and {@link #postHandleAlarmSnapshot()}
+ * surround both kinds of snapshots.
+ */
+public interface AlarmLifecycleDeltaListener extends AlarmLifecycleListener {
+
+    /**
+     * Called periodically with the alarms that changed since the previous snapshot,
+     * as present in the database at the time the delta was taken.
+     *
+     * The same considerations as for {@link #handleAlarmSnapshot(List)} apply: the
+     * current state of an alarm may differ from the state in the delta, and the method
+     * is called while the related session & transaction are still open.
+     *
+     * @param updatedAlarms alarms that were created or updated since the previous snapshot
+     * @param deletedAlarms reduction keys of the alarms that were deleted since the previous
+     *                      snapshot, by alarm id
+     */
+    void handleAlarmSnapshotDelta(List<OnmsAlarm> updatedAlarms, Map<Integer, String> deletedAlarms);
+
+}
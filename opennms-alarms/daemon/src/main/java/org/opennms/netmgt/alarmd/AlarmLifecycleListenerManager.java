@@ -28,17 +28,23 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleDeltaListener;
 import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.AlarmEntityListener;
@@ -53,6 +59,8 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 public class AlarmLifecycleListenerManager implements AlarmEntityListener, InitializingBean, DisposableBean {
@@ -62,9 +70,36 @@ public class AlarmLifecycleListenerManager implements AlarmEntityListener, Initi
     public static final String ALARM_SNAPSHOT_INTERVAL_MS_SYS_PROP = "org.opennms.alarms.snapshot.sync.ms";
     public static final long ALARM_SNAPSHOT_INTERVAL_MS = SystemProperties.getLong(ALARM_SNAPSHOT_INTERVAL_MS_SYS_PROP, TimeUnit.MINUTES.toMillis(2));
 
+    /**
+     * Maximum amount of time between two full snapshots when all of the listeners support deltas.
+     * Set to 0 to only perform full snapshots when listeners are registered or a divergence is detected.
+     */
+    public static final String ALARM_FULL_SNAPSHOT_INTERVAL_MS_SYS_PROP = "org.opennms.alarms.snapshot.full.sync.ms";
+    public static final long ALARM_FULL_SNAPSHOT_INTERVAL_MS = SystemProperties.getLong(ALARM_FULL_SNAPSHOT_INTERVAL_MS_SYS_PROP, TimeUnit.HOURS.toMillis(1));
+
+    /**
+     * Maximum number of ids used in a single query when loading the alarms for a delta.
+     */
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     private final Set<AlarmLifecycleListener> listeners = Sets.newConcurrentHashSet();
     private Timer timer;
 
+    /**
+     * Reduction keys of the alarms that were created, updated or deleted since the
+     * last snapshot, by alarm id.
+     */
+    private final Map<Integer, String> changedAlarms = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the alarms in the database, as of the last snapshot.
+     */
+    private final BitSet alarmIdsInDb = new BitSet();
+
+    private volatile boolean fullSnapshotRequired = true;
+    private boolean divergenceSuspected = false;
+    private long lastFullSnapshotMillis = -1;
+
     @Autowired
     private AlarmDao alarmDao;
 
@@ -94,20 +129,53 @@ public class AlarmLifecycleListenerManager implements AlarmEntityListener, Initi
         }
     }
 
-    protected void doSnapshot() {
+    protected synchronized void doSnapshot() {
         if (listeners.size() < 1) {
+            // The next listener will start with a full snapshot
+            changedAlarms.clear();
+            fullSnapshotRequired = true;
             return;
         }
 
+        if (isFullSnapshotRequired()) {
+            doFullSnapshot();
+        } else {
+            doDeltaSnapshot();
+        }
+    }
+
+    private boolean isFullSnapshotRequired() {
+        if (fullSnapshotRequired) {
+            return true;
+        }
+        if (ALARM_FULL_SNAPSHOT_INTERVAL_MS > 0 && System.currentTimeMillis() - lastFullSnapshotMillis >= ALARM_FULL_SNAPSHOT_INTERVAL_MS) {
+            return true;
+        }
+        // Loading most of the alarms by id is more expensive than loading them all at once
+        final int numChanged = changedAlarms.size();
+        if (numChanged > MAX_IDS_PER_QUERY && numChanged > alarmIdsInDb.cardinality() / 2) {
+            return true;
+        }
+        return !listeners.stream().allMatch(l -> l instanceof AlarmLifecycleDeltaListener);
+    }
+
+    private void doFullSnapshot() {
         final AtomicLong numAlarms = new AtomicLong(-1);
         final long systemMillisBeforeSnapshot = System.currentTimeMillis();
         final AtomicLong systemMillisAfterLoad = new AtomicLong(-1);
         try {
             forEachListener(AlarmLifecycleListener::preHandleAlarmSnapshot);
             sessionUtils.withTransaction(() -> {
+               // Changes made from here on are either part of the snapshot, or of the next delta
+               changedAlarms.clear();
                // Load all of the alarms
                final List<OnmsAlarm> allAlarms = alarmDao.findAll();
                numAlarms.set(allAlarms.size());
+               alarmIdsInDb.clear();
+               allAlarms.forEach(a -> alarmIdsInDb.set(a.getId()));
+               fullSnapshotRequired = false;
+               divergenceSuspected = false;
+               lastFullSnapshotMillis = systemMillisBeforeSnapshot;
                // Save the timestamp after the load, so we can differentiate between how long it took
                // to load the alarms and how long it took to invoke the callbacks
                systemMillisAfterLoad.set(System.currentTimeMillis());
@@ -131,10 +199,99 @@ public class AlarmLifecycleListenerManager implements AlarmEntityListener, Initi
         }
     }
 
+    /**
+     * Synchronizes the listeners by only loading the alarms that were changed since
+     * the last snapshot. Only called when all of the listeners support deltas.
+     */
+    private void doDeltaSnapshot() {
+        final AtomicLong numUpdated = new AtomicLong(-1);
+        final AtomicLong numDeleted = new AtomicLong(-1);
+        final long systemMillisBeforeSnapshot = System.currentTimeMillis();
+        final Map<Integer, String> changes = new HashMap<>();
+        try {
+            forEachListener(AlarmLifecycleListener::preHandleAlarmSnapshot);
+            // Changes made from here on are part of the next delta
+            for (Integer alarmId : new ArrayList<>(changedAlarms.keySet())) {
+                final String reductionKey = changedAlarms.remove(alarmId);
+                if (reductionKey != null) {
+                    changes.put(alarmId, reductionKey);
+                }
+            }
+            sessionUtils.withTransaction(() -> {
+                final int numAlarmsInDb = alarmDao.countAll();
+
+                // Alarms that changed, but are no longer in the database were deleted
+                final List<OnmsAlarm> updatedAlarms = findAlarmsWithIds(changes.keySet());
+                final Map<Integer, String> deletedAlarms = new HashMap<>(changes);
+                for (OnmsAlarm alarm : updatedAlarms) {
+                    deletedAlarms.remove(alarm.getId());
+                    alarmIdsInDb.set(alarm.getId());
+                }
+                deletedAlarms.keySet().forEach(alarmIdsInDb::clear);
+                numUpdated.set(updatedAlarms.size());
+                numDeleted.set(deletedAlarms.size());
+                checkForDivergence(numAlarmsInDb);
+
+                forEachListener(l -> {
+                    LOG.debug("Calling handleAlarmSnapshotDelta on listener: {}", l);
+                    ((AlarmLifecycleDeltaListener)l).handleAlarmSnapshotDelta(updatedAlarms, deletedAlarms);
+                    LOG.debug("Done calling listener.");
+                });
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Try again on the next snapshot
+            changes.forEach(changedAlarms::putIfAbsent);
+            throw e;
+        } finally {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Alarm snapshot delta for {} updated and {} deleted alarms completed in {}ms.",
+                        numUpdated.get(), numDeleted.get(), System.currentTimeMillis() - systemMillisBeforeSnapshot);
+            }
+            forEachListener(AlarmLifecycleListener::postHandleAlarmSnapshot);
+        }
+    }
+
+    private List<OnmsAlarm> findAlarmsWithIds(Set<Integer> alarmIds) {
+        final List<OnmsAlarm> alarms = new ArrayList<>(alarmIds.size());
+        for (List<Integer> ids : Lists.partition(new ArrayList<>(alarmIds), MAX_IDS_PER_QUERY)) {
+            alarms.addAll(alarmDao.findMatching(new CriteriaBuilder(OnmsAlarm.class).in("id", ids).toCriteria()));
+        }
+        return alarms;
+    }
+
+    /**
+     * Compares the number of alarms in the database with the number of alarms we know of.
+     *
+     * Alarms that are created or deleted while the delta is being taken can cause these to
+     * differ temporarily, so we only fall back to a full snapshot when the counts differ
+     * on two consecutive deltas.
+     */
+    private void checkForDivergence(int numAlarmsInDb) {
+        final int numAlarmsKnown = alarmIdsInDb.cardinality();
+        if (numAlarmsInDb == numAlarmsKnown) {
+            divergenceSuspected = false;
+            return;
+        }
+        if (divergenceSuspected) {
+            LOG.info("Found {} alarms in the database, but expected {}. Performing a full snapshot on the next sync.",
+                    numAlarmsInDb, numAlarmsKnown);
+            fullSnapshotRequired = true;
+        }
+        divergenceSuspected = true;
+    }
+
     public void onNewOrUpdatedAlarm(OnmsAlarm alarm) {
+        trackChangedAlarm(alarm);
         forEachListener(l -> l.handleNewOrUpdatedAlarm(alarm));
     }
 
+    private void trackChangedAlarm(OnmsAlarm alarm) {
+        if (alarm.getId() != null) {
+            changedAlarms.put(alarm.getId(), Strings.nullToEmpty(alarm.getReductionKey()));
+        }
+    }
+
     @Override
     public void onAlarmArchived(OnmsAlarm alarm, String previousReductionKey) {
         onNewOrUpdatedAlarm(alarm);
@@ -142,6 +299,7 @@ public class AlarmLifecycleListenerManager implements AlarmEntityListener, Initi
 
     @Override
     public void onAlarmDeleted(OnmsAlarm alarm) {
+        trackChangedAlarm(alarm);
         forEachListener(l -> l.handleDeletedAlarm(alarm.getId(), alarm.getReductionKey()));
     }
 
@@ -213,6 +371,8 @@ public class AlarmLifecycleListenerManager implements AlarmEntityListener, Initi
     public void onListenerRegistered(final AlarmLifecycleListener listener, final Map<String,String> properties) {
         LOG.debug("onListenerRegistered: {} with properties: {}", listener, properties);
         listeners.add(listener);
+        // Make sure the new listener starts with a complete set of alarms
+        fullSnapshotRequired = true;
     }
 
     public void onListenerUnregistered(final AlarmLifecycleListener listener, final Map<String,String> properties) {
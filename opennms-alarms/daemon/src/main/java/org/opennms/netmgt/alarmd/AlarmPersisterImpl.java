@@ -29,15 +29,23 @@
 package org.opennms.netmgt.alarmd;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.opennms.core.sysprops.SystemProperties;
@@ -58,6 +66,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.support.TransactionOperations;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Striped;
@@ -77,6 +87,17 @@ public class AlarmPersisterImpl implements AlarmPersister {
     protected static boolean NEW_IF_CLEARED = Boolean.getBoolean("org.opennms.alarmd.newIfClearedAlarmExists");
     protected static boolean LEGACY_ALARM_STATE = Boolean.getBoolean("org.opennms.alarmd.legacyAlarmState");
 
+    /**
+     * Maximum number of queued events with the same reduction key that are reduced
+     * in a single transaction. Defaults to 1, which reduces every event in its own transaction.
+     */
+    protected static final Integer MAX_REDUCTION_BATCH_SIZE = SystemProperties.getInteger("org.opennms.alarmd.reduction.batchSize", 1);
+
+    /**
+     * Maximum number of reduction keys for which the id of the current alarm is remembered.
+     */
+    protected static final Integer REDUCTION_KEY_INDEX_SIZE = SystemProperties.getInteger("org.opennms.alarmd.reduction.indexSize", 100000);
+
     @Autowired
     private AlarmDao m_alarmDao;
 
@@ -94,8 +115,35 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
     private Striped<Lock> lockStripes = StripedExt.fairLock(NUM_STRIPE_LOCKS);
 
+    /**
+     * Signalled, by the event that queued it, when a barrier is removed from the queue
+     * of any of the reduction keys guarded by the lock. One per stripe.
+     */
+    private final Map<Lock, Condition> barrierRemoved = new IdentityHashMap<>();
+    {
+        for (int i = 0; i < lockStripes.size(); i++) {
+            barrierRemoved.put(lockStripes.getAt(i), lockStripes.getAt(i).newCondition());
+        }
+    }
+
     private final Set<AlarmPersisterExtension> extensions = Sets.newConcurrentHashSet();
 
+    /**
+     * Events waiting to be reduced, by reduction key. These are drained by whichever
+     * thread acquires the lock for the key first.
+     */
+    private final Map<String, Queue<PendingReduction>> pendingReductions = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the alarms last seen for a given reduction key. Entries are verified
+     * against the alarm when used, so these may become stale.
+     */
+    private final Cache<String, Integer> alarmIdsByReductionKey = CacheBuilder.newBuilder()
+            .maximumSize(REDUCTION_KEY_INDEX_SIZE)
+            .build();
+
+    private int m_maxReductionBatchSize = MAX_REDUCTION_BATCH_SIZE;
+
     private boolean m_createNewAlarmIfClearedAlarmExists = LEGACY_ALARM_STATE == true ? false : NEW_IF_CLEARED;
     
     private boolean m_legacyAlarmState = LEGACY_ALARM_STATE;
@@ -111,13 +159,30 @@ public class AlarmPersisterImpl implements AlarmPersister {
             LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
         }
 
+        if (event.getAlarmData().getClearKey() == null && m_maxReductionBatchSize > 1) {
+            return persistCoalesced(event);
+        }
+
         // Lock both the reduction and clear keys (if set) using a fair striped lock
         // We do this to ensure that clears and triggers are processed in the same order
         // as the calls are made
-        final Iterable<Lock> locks = lockStripes.bulkGet(getLockKeys(event));
+        final Collection<String> lockKeys = getLockKeys(event);
+        final Iterable<Lock> locks = lockStripes.bulkGet(lockKeys);
+
+        // Keep the events queued for coalescing after this one from being reduced before it
+        final PendingReduction barrier = m_maxReductionBatchSize > 1 ? PendingReduction.barrier() : null;
+        if (barrier != null) {
+            lockKeys.forEach(key -> enqueue(key, barrier));
+        }
+
         final OnmsAlarm alarm;
         try {
             locks.forEach(Lock::lock);
+            if (barrier != null) {
+                lockKeys.forEach(key -> dequeue(key, barrier));
+                // Wake up the events that were queued behind the barrier, they'll run once we release the locks
+                locks.forEach(lock -> barrierRemoved.get(lock).signalAll());
+            }
             // Process the alarm inside a transaction
             alarm = m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(event));
         } finally {
@@ -127,13 +192,139 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return alarm;
     }
 
+    private Queue<PendingReduction> enqueue(String reductionKey, PendingReduction pending) {
+        // Add under the map's lock for the key, so that the queue can't be removed before the entry is in it
+        return pendingReductions.compute(reductionKey, (k, queue) -> {
+            if (queue == null) {
+                queue = new ConcurrentLinkedQueue<>();
+            }
+            queue.add(pending);
+            return queue;
+        });
+    }
+
+    private void dequeue(String reductionKey, PendingReduction pending) {
+        pendingReductions.computeIfPresent(reductionKey, (k, queue) -> {
+            queue.remove(pending);
+            return queue.isEmpty() ? null : queue;
+        });
+    }
+
+    /**
+     * Persists an event that only locks its reduction key.
+     *
+     * The event is queued for its reduction key before the lock is acquired. The
+     * thread that acquires the lock reduces all of the events queued for the key at
+     * that point, in order, within a single transaction. The alarm is only loaded
+     * and written once for the whole batch, while the extensions and the
+     * {@link AlarmEntityNotifier} are still invoked once per event.
+     *
+     * Events which lock more than their reduction key queue a barrier for each of
+     * their keys while they wait for the locks. Events queued behind a barrier are
+     * not drained until the waiting event has been processed, so that a clear is
+     * not overtaken by triggers that were persisted after it. Their threads wait on
+     * the condition of the stripe, which releases the lock for the waiting event.
+     */
+    private OnmsAlarm persistCoalesced(Event event) {
+        final String reductionKey = event.getAlarmData().getReductionKey();
+        final PendingReduction pending = new PendingReduction(event);
+        final Queue<PendingReduction> queue = enqueue(reductionKey, pending);
+
+        final Lock lock = lockStripes.get(reductionKey);
+        lock.lock();
+        try {
+            while (!pending.done) {
+                // Entries are only removed from the head of the queue while holding the lock
+                final List<PendingReduction> batch = new ArrayList<>();
+                PendingReduction next;
+                while (batch.size() < m_maxReductionBatchSize && (next = queue.peek()) != null && !next.isBarrier()) {
+                    batch.add(queue.poll());
+                }
+
+                if (batch.isEmpty()) {
+                    // Our event is queued behind a barrier, let the event waiting on it take the lock first
+                    barrierRemoved.get(lock).awaitUninterruptibly();
+                    continue;
+                }
+                reduce(batch);
+            }
+            pendingReductions.computeIfPresent(reductionKey, (k, q) -> q.isEmpty() ? null : q);
+        } finally {
+            lock.unlock();
+        }
+
+        if (pending.exception != null) {
+            throw pending.exception;
+        }
+        return pending.alarm;
+    }
+
+    private void reduce(List<PendingReduction> batch) {
+        if (batch.size() == 1) {
+            batch.get(0).complete(() -> m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(batch.get(0).event)));
+            return;
+        }
+
+        try {
+            m_transactionOperations.execute((action) -> {
+                // The notifications are held back until all of the events were written, since
+                // the whole batch is retried one by one if any of them fails
+                final List<Runnable> notifications = new ArrayList<>();
+                // Retrieve all of the events first, so that a missing event
+                // only fails its own call and doesn't roll back the others
+                final List<PendingReduction> reducible = new ArrayList<>(batch.size());
+                for (PendingReduction pending : batch) {
+                    pending.persistedEvent = m_eventDao.get(pending.event.getDbid());
+                    if (pending.persistedEvent != null) {
+                        reducible.add(pending);
+                    }
+                }
+                for (PendingReduction pending : reducible) {
+                    pending.alarm = addOrReduceEventAsAlarm(pending.event, pending.persistedEvent, notifications::add);
+                }
+                m_alarmDao.flush();
+
+                for (Runnable notification : notifications) {
+                    try {
+                        notification.run();
+                    } catch (Exception ex) {
+                        LOG.error("An error occurred while notifying the alarm entity listeners.", ex);
+                    }
+                }
+                return null;
+            });
+            batch.forEach(pending -> {
+                if (pending.persistedEvent == null) {
+                    pending.exception = deletedEventException(pending.event);
+                }
+                pending.done = true;
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to reduce {} events with reduction key: {}. Retrying them one by one.", batch.size(), batch.get(0).event.getAlarmData().getReductionKey(), e);
+            for (PendingReduction pending : batch) {
+                pending.alarm = null;
+                pending.complete(() -> m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(pending.event)));
+            }
+        }
+    }
+
     private OnmsAlarm addOrReduceEventAsAlarm(Event event) throws IllegalStateException {
-        
         final OnmsEvent persistedEvent = m_eventDao.get(event.getDbid());
         if (persistedEvent == null) {
-            throw new IllegalStateException("Event with id " + event.getDbid() + " was deleted before we could retrieve it and create an alarm.");
+            throw deletedEventException(event);
         }
+        return addOrReduceEventAsAlarm(event, persistedEvent, Runnable::run);
+    }
+
+    private static IllegalStateException deletedEventException(Event event) {
+        return new IllegalStateException("Event with id " + event.getDbid() + " was deleted before we could retrieve it and create an alarm.");
+    }
 
+    /**
+     * @param notify runs the {@link AlarmEntityNotifier} callbacks, either right away or once the
+     *               surrounding transaction has written all of its changes
+     */
+    private OnmsAlarm addOrReduceEventAsAlarm(Event event, OnmsEvent persistedEvent, Consumer<Runnable> notify) throws IllegalStateException {
         final String reductionKey = event.getAlarmData().getReductionKey();
         LOG.debug("addOrReduceEventAsAlarm: looking for existing reduction key: {}", reductionKey);
         
@@ -146,11 +337,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
             didSwapReductionKeyWithClearKey = true;
         }
 
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(key);
+        OnmsAlarm alarm = findByReductionKey(key);
 
         if (alarm == null && didSwapReductionKeyWithClearKey) {
             // if the clearKey returns null, still need to check the reductionKey
-            alarm = m_alarmDao.findByReductionKey(reductionKey);
+            alarm = findByReductionKey(reductionKey);
         }
 
         if (alarm == null || (m_createNewAlarmIfClearedAlarmExists && OnmsSeverity.CLEARED.equals(alarm.getSeverity()))) {
@@ -162,10 +353,12 @@ public class AlarmPersisterImpl implements AlarmPersister {
                 LOG.debug("addOrReduceEventAsAlarm: \"archiving\" cleared Alarm for problem: {}; " +
                         "A new alarm will be instantiated to manage the problem.", reductionKey);
                 alarm.archive();
+                alarmIdsByReductionKey.invalidate(reductionKey);
                 m_alarmDao.save(alarm);
                 m_alarmDao.flush();
 
-                m_alarmEntityNotifier.didArchiveAlarm(alarm, reductionKey);
+                final OnmsAlarm archivedAlarm = alarm;
+                notify.accept(() -> m_alarmEntityNotifier.didArchiveAlarm(archivedAlarm, reductionKey));
             }
 
             alarm = createNewAlarm(persistedEvent, event);
@@ -180,8 +373,12 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
             m_alarmDao.save(alarm);
             m_eventDao.saveOrUpdate(persistedEvent);
+            if (alarm.getId() != null) {
+                alarmIdsByReductionKey.put(alarm.getReductionKey(), alarm.getId());
+            }
 
-            m_alarmEntityNotifier.didCreateAlarm(alarm);
+            final OnmsAlarm createdAlarm = alarm;
+            notify.accept(() -> m_alarmEntityNotifier.didCreateAlarm(createdAlarm));
         } else {
             LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} found, reducing event to existing alarm: {}", reductionKey, alarm.getId());
             reduceEvent(persistedEvent, alarm, event);
@@ -201,7 +398,8 @@ public class AlarmPersisterImpl implements AlarmPersister {
                 m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), persistedEvent);
             }
 
-            m_alarmEntityNotifier.didUpdateAlarmWithReducedEvent(alarm);
+            final OnmsAlarm updatedAlarm = alarm;
+            notify.accept(() -> m_alarmEntityNotifier.didUpdateAlarmWithReducedEvent(updatedAlarm));
         }
         return alarm;
     }
@@ -392,7 +590,32 @@ public class AlarmPersisterImpl implements AlarmPersister {
         }
         Set<String> reductionKeys = list.stream().filter(AlarmPersisterImpl::isRelatedReductionKeyWithContent).map(p -> p.getValue().getContent()).collect(Collectors.toSet());
         // Only existing alarms are returned. Reduction Keys for non-existing alarms are dropped.
-        return reductionKeys.stream().map(reductionKey -> m_alarmDao.findByReductionKey(reductionKey)).filter(Objects::nonNull).collect(Collectors.toSet());
+        return reductionKeys.stream().map(this::findByReductionKey).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    /**
+     * Looks up the alarm with the given reduction key, by id if we've seen it before.
+     *
+     * Loading the alarm by id lets Hibernate serve it from the session when several events
+     * are reduced in the same transaction, instead of flushing the pending changes and
+     * querying by reduction key for every event.
+     */
+    private OnmsAlarm findByReductionKey(String reductionKey) {
+        final Integer alarmId = alarmIdsByReductionKey.getIfPresent(reductionKey);
+        if (alarmId != null) {
+            final OnmsAlarm alarm = m_alarmDao.get(alarmId);
+            if (alarm != null && reductionKey.equals(alarm.getReductionKey())) {
+                return alarm;
+            }
+            // The alarm was deleted or archived since
+            alarmIdsByReductionKey.invalidate(reductionKey);
+        }
+
+        final OnmsAlarm alarm = m_alarmDao.findByReductionKey(reductionKey);
+        if (alarm != null && alarm.getId() != null) {
+            alarmIdsByReductionKey.put(reductionKey, alarm.getId());
+        }
+        return alarm;
     }
 
     private static boolean isRelatedReductionKeyWithContent(Parm param) {
@@ -520,6 +743,14 @@ public class AlarmPersisterImpl implements AlarmPersister {
     public void setCreateNewAlarmIfClearedAlarmExists(boolean createNewAlarmIfClearedAlarmExists) {
         m_createNewAlarmIfClearedAlarmExists = createNewAlarmIfClearedAlarmExists;
     }
+    public int getMaxReductionBatchSize() {
+        return m_maxReductionBatchSize;
+    }
+
+    public void setMaxReductionBatchSize(int maxReductionBatchSize) {
+        m_maxReductionBatchSize = maxReductionBatchSize;
+    }
+
     public boolean islegacyAlarmState() {
         return m_legacyAlarmState;
     }
@@ -527,4 +758,39 @@ public class AlarmPersisterImpl implements AlarmPersister {
     public void setLegacyAlarmState(boolean legacyAlarmState) {
         m_legacyAlarmState = legacyAlarmState;
     }
+
+    /**
+     * An event waiting to be reduced, and the outcome once it has been.
+     */
+    private static class PendingReduction {
+        private final Event event;
+        private OnmsEvent persistedEvent;
+        private OnmsAlarm alarm;
+        private RuntimeException exception;
+        private boolean done;
+
+        private PendingReduction(Event event) {
+            this.event = event;
+        }
+
+        /**
+         * A placeholder for an event waiting to lock the reduction key which must not be overtaken.
+         */
+        private static PendingReduction barrier() {
+            return new PendingReduction(null);
+        }
+
+        private boolean isBarrier() {
+            return event == null;
+        }
+
+        private void complete(Supplier<OnmsAlarm> reduction) {
+            try {
+                alarm = reduction.get();
+            } catch (RuntimeException e) {
+                exception = e;
+            }
+            done = true;
+        }
+    }
 }
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.drools;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.opennms.netmgt.model.AlarmAssociation;
+import org.opennms.netmgt.model.OnmsAcknowledgment;
+import org.opennms.netmgt.model.OnmsAlarm;
+
+/**
+ * Copies the alarm facts that are inserted in more than one session of a partitioned {@link DroolsAlarmContext},
+ * so that every session, and the thread that fires it, works on its own instances.
+ *
+ * The copies are shallow: the node, event and memo entities are shared with the original alarm and must be treated
+ * as read-only by the rules. The related situations are not copied, only the flag indicating that the alarm is part
+ * of a situation.
+ */
+final class AlarmFacts {
+
+    private AlarmFacts() {}
+
+    /**
+     * Copies the given alarms. The associations of the situations in the list refer to the copies of the
+     * situation and of the related alarms, when these are part of the list.
+     *
+     * @param alarms the alarms to copy
+     * @return the copies, in the same order
+     */
+    static List<OnmsAlarm> copyAlarms(Collection<OnmsAlarm> alarms) {
+        final Map<OnmsAlarm, OnmsAlarm> copies = new HashMap<>();
+        final Map<Integer, OnmsAlarm> copiesById = new HashMap<>();
+        for (OnmsAlarm alarm : alarms) {
+            final OnmsAlarm copy = copyAlarmFields(alarm);
+            copies.put(alarm, copy);
+            if (alarm.getId() != null) {
+                copiesById.put(alarm.getId(), copy);
+            }
+        }
+        for (OnmsAlarm alarm : alarms) {
+            if (!alarm.isSituation()) {
+                continue;
+            }
+            final OnmsAlarm situation = copies.get(alarm);
+            final Set<AlarmAssociation> associations = new HashSet<>();
+            for (AlarmAssociation association : alarm.getAssociatedAlarms()) {
+                final OnmsAlarm relatedAlarm = association.getRelatedAlarm();
+                OnmsAlarm relatedCopy = copiesById.get(relatedAlarm.getId());
+                if (relatedCopy == null) {
+                    relatedCopy = copyAlarmFields(relatedAlarm);
+                }
+                final AlarmAssociation associationCopy = new AlarmAssociation(situation, relatedCopy, association.getMappedTime());
+                associationCopy.setId(association.getId());
+                associations.add(associationCopy);
+            }
+            situation.setAssociatedAlarms(associations);
+        }
+        return alarms.stream().map(copies::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Copies the acknowledgements with the given reference ids.
+     *
+     * @param acksByRefId the acknowledgements, keyed by alarm id
+     * @param refIds the ids of the alarms for which the acknowledgements should be copied
+     * @return the copies, keyed by alarm id
+     */
+    static Map<Integer, OnmsAcknowledgment> copyAcks(Map<Integer, OnmsAcknowledgment> acksByRefId, Collection<Integer> refIds) {
+        final Map<Integer, OnmsAcknowledgment> copies = new HashMap<>();
+        for (Integer refId : refIds) {
+            final OnmsAcknowledgment ack = acksByRefId.get(refId);
+            if (ack != null) {
+                copies.put(refId, copyAck(ack));
+            }
+        }
+        return copies;
+    }
+
+    private static OnmsAcknowledgment copyAck(OnmsAcknowledgment ack) {
+        final OnmsAcknowledgment copy = new OnmsAcknowledgment();
+        copy.setId(ack.getId());
+        copy.setAckTime(ack.getAckTime());
+        copy.setAckUser(ack.getAckUser());
+        copy.setAckType(ack.getAckType());
+        copy.setRefId(ack.getRefId());
+        copy.setAckAction(ack.getAckAction());
+        copy.setLog(ack.getLog());
+        return copy;
+    }
+
+    private static OnmsAlarm copyAlarmFields(OnmsAlarm alarm) {
+        final OnmsAlarm copy = new OnmsAlarm();
+        copy.setId(alarm.getId());
+        copy.setUei(alarm.getUei());
+        copy.setDistPoller(alarm.getDistPoller());
+        copy.setNode(alarm.getNode());
+        copy.setIpAddr(alarm.getIpAddr());
+        copy.setServiceType(alarm.getServiceType());
+        copy.setReductionKey(alarm.getReductionKey());
+        copy.setAlarmType(alarm.getAlarmType());
+        copy.setCounter(alarm.getCounter());
+        copy.setSeverity(alarm.getSeverity());
+        // Setting the last event also sets the last event time, so this must come first
+        copy.setLastEvent(alarm.getLastEvent());
+        copy.setFirstEventTime(alarm.getFirstEventTime());
+        copy.setLastEventTime(alarm.getLastEventTime());
+        copy.setFirstAutomationTime(alarm.getFirstAutomationTime());
+        copy.setLastAutomationTime(alarm.getLastAutomationTime());
+        copy.setDescription(alarm.getDescription());
+        copy.setLogMsg(alarm.getLogMsg());
+        copy.setOperInstruct(alarm.getOperInstruct());
+        copy.setTTicketId(alarm.getTTicketId());
+        copy.setTTicketState(alarm.getTTicketState());
+        copy.setMouseOverText(alarm.getMouseOverText());
+        copy.setSuppressedUntil(alarm.getSuppressedUntil());
+        copy.setSuppressedUser(alarm.getSuppressedUser());
+        copy.setSuppressedTime(alarm.getSuppressedTime());
+        copy.setAlarmAckUser(alarm.getAlarmAckUser());
+        copy.setAlarmAckTime(alarm.getAlarmAckTime());
+        copy.setClearKey(alarm.getClearKey());
+        copy.setManagedObjectInstance(alarm.getManagedObjectInstance());
+        copy.setManagedObjectType(alarm.getManagedObjectType());
+        copy.setApplicationDN(alarm.getApplicationDN());
+        copy.setOssPrimaryKey(alarm.getOssPrimaryKey());
+        copy.setX733AlarmType(alarm.getX733AlarmType());
+        copy.setQosAlarmState(alarm.getQosAlarmState());
+        copy.setX733ProbableCause(alarm.getX733ProbableCause());
+        copy.setDetails(alarm.getDetails());
+        copy.setStickyMemo(alarm.getStickyMemo());
+        copy.setReductionKeyMemo(alarm.getReductionKeyMemo());
+        copy.setIfIndex(alarm.getIfIndex());
+        copy.setSituation(alarm.isSituation());
+        copy.setPartOfSituation(alarm.isPartOfSituation());
+        return copy;
+    }
+}
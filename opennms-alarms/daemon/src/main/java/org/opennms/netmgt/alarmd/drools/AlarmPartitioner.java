@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.drools;
+
+import java.util.Objects;
+
+import org.opennms.netmgt.model.OnmsAlarm;
+
+/**
+ * Used to assign alarms to one of the partitioned sessions of the {@link DroolsAlarmContext}.
+ *
+ * Alarms that need to be matched by the same partition-local rule must be assigned to the same partition.
+ * Notably, an alarm that clears another must land in the same partition as the alarm it clears.
+ */
+@FunctionalInterface
+public interface AlarmPartitioner {
+
+    /**
+     * Partitions the alarms by clear key when set, falling back to the reduction key.
+     */
+    AlarmPartitioner BY_REDUCTION_KEY = (alarm, numPartitions) -> {
+        final String key = alarm.getClearKey() != null ? alarm.getClearKey() : alarm.getReductionKey();
+        return Math.floorMod(Objects.hashCode(key), numPartitions);
+    };
+
+    /**
+     * Partitions the alarms by node, so that all the alarms for the same node share a session.
+     *
+     * Alarms that are not associated with a node are partitioned by clear key when set, falling back
+     * to the reduction key, so that problem and resolution alarms are kept together.
+     */
+    AlarmPartitioner BY_NODE = (alarm, numPartitions) -> {
+        if (alarm.getNodeId() != null) {
+            return Math.floorMod(alarm.getNodeId(), numPartitions);
+        }
+        return BY_REDUCTION_KEY.getPartition(alarm, numPartitions);
+    };
+
+    /**
+     * Retrieves the partition for the given alarm.
+     *
+     * @param alarm the alarm
+     * @param numPartitions the number of partitions, always greater than 1
+     * @return the partition in the range [0, numPartitions)
+     */
+    int getPartition(OnmsAlarm alarm, int numPartitions);
+
+    /**
+     * Lookup one of the built-in partitioners by name.
+     *
+     * @param name either "node" or "reductionKey"
+     * @return the partitioner
+     * @throws IllegalArgumentException if no partitioner matches the given name
+     */
+    static AlarmPartitioner forName(String name) {
+        if ("node".equalsIgnoreCase(name)) {
+            return BY_NODE;
+        } else if ("reductionKey".equalsIgnoreCase(name)) {
+            return BY_REDUCTION_KEY;
+        }
+        throw new IllegalArgumentException("Unknown alarm partitioner: " + name);
+    }
+}
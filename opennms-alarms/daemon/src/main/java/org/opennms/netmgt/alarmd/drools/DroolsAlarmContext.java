@@ -33,6 +33,7 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -43,18 +44,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.hibernate.Hibernate;
 import org.hibernate.ObjectNotFoundException;
+import org.kie.api.definition.rule.Rule;
 import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.rule.FactHandle;
 import org.opennms.core.sysprops.SystemProperties;
 import org.opennms.core.utils.ConfigFileConstants;
 import org.opennms.netmgt.alarmd.Alarmd;
 import org.opennms.netmgt.alarmd.api.AlarmCallbackStateTracker;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleDeltaListener;
 import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
 import org.opennms.netmgt.dao.api.AcknowledgmentDao;
 import org.opennms.netmgt.dao.api.AlarmDao;
@@ -85,9 +89,15 @@ import com.swrve.ratelimitedlogger.RateLimitedLog;
  *
  * Atomic actions are used to update facts in working memory.
  *
+ * When configured with more than one partition, the alarms are distributed across a set of partitioned
+ * sessions using an {@link AlarmPartitioner}, each with its own fire thread. The partitioned sessions are built
+ * with all of the rules except those annotated with the {@value #SPANS_PARTITIONS} metadata. The session managed
+ * by this context is built with only the annotated rules, and only holds the situations and their related alarms,
+ * as copies, so that no fact instance is shared between sessions.
+ *
  * @author jwhite
  */
-public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLifecycleListener {
+public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLifecycleDeltaListener {
     private static final Logger LOG = LoggerFactory.getLogger(DroolsAlarmContext.class);
 
     private static final RateLimitedLog RATE_LIMITED_LOGGER = RateLimitedLog
@@ -99,6 +109,20 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
     private static final long MAX_NUM_ACTIONS_IN_FLIGHT = SystemProperties.getLong(
             "org.opennms.netmgt.alarmd.drools.max_num_actions_in_flight", 5000);
 
+    private static final int NUM_PARTITIONS = SystemProperties.getInteger(
+            "org.opennms.netmgt.alarmd.drools.partitions", 1);
+
+    private static final String PARTITION_BY = System.getProperty(
+            "org.opennms.netmgt.alarmd.drools.partition_by", "node");
+
+    /**
+     * Rule metadata used to identify the rules that need to match alarms across partitions, i.e.
+     * <pre>
+     * rule "mySituationRule" @spansPartitions(true)
+     * </pre>
+     */
+    public static final String SPANS_PARTITIONS = "spansPartitions";
+
     @Autowired
     private AlarmService alarmService;
 
@@ -130,12 +154,44 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
     private final Meter atomicActionsDropped = new Meter();
     private final Meter atomicActionsQueued = new Meter();
 
+    /**
+     * Index of this context when used as a partition, or -1 for the top-level context.
+     */
+    private final int partition;
+
+    private int numPartitions = NUM_PARTITIONS;
+
+    private AlarmPartitioner alarmPartitioner = AlarmPartitioner.forName(PARTITION_BY);
+
+    private volatile List<DroolsAlarmContext> partitions = Collections.emptyList();
+
+    /**
+     * Partition to which the alarms were last routed, used to route deletes.
+     */
+    private final Map<Integer, Integer> partitionByAlarmId = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the alarms related to the situations, keyed by situation id, used to determine which alarms
+     * are needed by the rules spanning partitions when partitioning. Guarded by itself.
+     */
+    private final Map<Integer, Set<Integer>> relatedAlarmIdsBySituationId = new HashMap<>();
+
+    /**
+     * Ids of the situations, keyed by related alarm id. Guarded by {@link #relatedAlarmIdsBySituationId}.
+     */
+    private final Map<Integer, Set<Integer>> situationIdsByRelatedAlarmId = new HashMap<>();
+
     public DroolsAlarmContext() {
         this(getDefaultRulesFolder());
     }
 
     public DroolsAlarmContext(File rulesFolder) {
-        super(rulesFolder, Alarmd.NAME, "DroolsAlarmContext");
+        this(rulesFolder, Alarmd.NAME, -1);
+    }
+
+    private DroolsAlarmContext(File rulesFolder, String kbaseName, int partition) {
+        super(rulesFolder, kbaseName, "DroolsAlarmContext");
+        this.partition = partition;
         setOnNewKiewSessionCallback(kieSession -> {
             kieSession.setGlobal("alarmService", alarmService);
             kieSession.insert(alarmTicketerService);
@@ -179,8 +235,72 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
         return Paths.get(ConfigFileConstants.getHome(), "etc", "alarmd", "drools-rules.d").toFile();
     }
 
+    @Override
+    public synchronized void start() {
+        if (partition < 0 && numPartitions > 1 && partitions.isEmpty()) {
+            LOG.info("Partitioning the alarms across {} sessions.", numPartitions);
+            setRuleFilter(DroolsAlarmContext::spansPartitions);
+            final List<DroolsAlarmContext> newPartitions = new ArrayList<>(numPartitions);
+            for (int i = 0; i < numPartitions; i++) {
+                final DroolsAlarmContext partitionContext = new DroolsAlarmContext(getRulesFolder(), Alarmd.NAME + "-partition-" + i, i);
+                partitionContext.setUsePseudoClock(isUsePseudoClock());
+                partitionContext.setUseManualTick(isUseManualTick());
+                partitionContext.setRuleFilter(rule -> !spansPartitions(rule));
+                partitionContext.setAlarmService(alarmService);
+                partitionContext.setAcknowledgmentDao(acknowledgmentDao);
+                partitionContext.setAlarmTicketerService(alarmTicketerService);
+                partitionContext.setTransactionTemplate(template);
+                partitionContext.setAlarmDao(alarmDao);
+                partitionContext.start();
+                newPartitions.add(partitionContext);
+            }
+            partitions = Collections.unmodifiableList(newPartitions);
+        }
+        super.start();
+    }
+
+    @Override
+    public synchronized void reload() {
+        super.reload();
+        for (DroolsAlarmContext partitionContext : partitions) {
+            partitionContext.reload();
+        }
+    }
+
+    @Override
+    public void tick() {
+        super.tick();
+        for (DroolsAlarmContext partitionContext : partitions) {
+            partitionContext.tick();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        super.stop();
+        final List<DroolsAlarmContext> partitionsToStop = partitions;
+        partitions = Collections.emptyList();
+        partitionByAlarmId.clear();
+        synchronized (relatedAlarmIdsBySituationId) {
+            relatedAlarmIdsBySituationId.clear();
+            situationIdsByRelatedAlarmId.clear();
+        }
+        for (DroolsAlarmContext partitionContext : partitionsToStop) {
+            partitionContext.stop();
+        }
+    }
+
+    private static boolean spansPartitions(Rule rule) {
+        return rule.getMetaData().containsKey(SPANS_PARTITIONS);
+    }
+
     @Override
     public void onStart() {
+        if (partition >= 0) {
+            // Partitions are seeded by the top-level context
+            seedSubmittedLatch.countDown();
+            return;
+        }
         final Thread seedThread = new Thread(() -> {
             // Seed the engine with the current set of alarms asynchronously
             // We do this async since we don't want to block the whole system from starting up
@@ -211,6 +331,9 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
     public void preHandleAlarmSnapshot() {
         // Start tracking alarm callbacks via the state tracker
         stateTracker.startTrackingAlarms();
+        for (DroolsAlarmContext partitionContext : partitions) {
+            partitionContext.preHandleAlarmSnapshot();
+        }
     }
 
     /**
@@ -272,9 +395,6 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
         }
 
         LOG.debug("Handling snapshot for {} alarms.", alarms.size());
-        final Map<Integer, OnmsAlarm> alarmsInDbById = alarms.stream()
-                .filter(a -> a.getId() != null)
-                .collect(Collectors.toMap(OnmsAlarm::getId, a -> a));
 
         // Eagerly initialize the alarms
         for (OnmsAlarm alarm : alarms) {
@@ -289,6 +409,41 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
         numAlarmsFromLastSnapshot.set(alarms.size() - numSituations);
         numSituationsFromLastSnapshot.set(numSituations);
 
+        final List<DroolsAlarmContext> partitions = this.partitions;
+        if (partitions.isEmpty()) {
+            submitAlarmSnapshot(alarms, acksByRefId);
+        } else {
+            final List<OnmsAlarm> alarmsSpanningPartitions = indexSituationsForSnapshot(alarms);
+            submitAlarmSnapshot(AlarmFacts.copyAlarms(alarmsSpanningPartitions),
+                    AlarmFacts.copyAcks(acksByRefId, getAlarmIds(alarmsSpanningPartitions)));
+
+            final List<List<OnmsAlarm>> alarmsByPartition = new ArrayList<>(partitions.size());
+            for (int i = 0; i < partitions.size(); i++) {
+                alarmsByPartition.add(new ArrayList<>());
+            }
+            final Set<Integer> alarmIdsInSnapshot = new HashSet<>();
+            for (OnmsAlarm alarm : alarms) {
+                if (alarm.getId() == null) {
+                    continue;
+                }
+                final int alarmPartition = alarmPartitioner.getPartition(alarm, partitions.size());
+                alarmsByPartition.get(alarmPartition).add(alarm);
+                partitionByAlarmId.put(alarm.getId(), alarmPartition);
+                alarmIdsInSnapshot.add(alarm.getId());
+            }
+            partitionByAlarmId.keySet().retainAll(alarmIdsInSnapshot);
+            // Every partition gets a snapshot, even when empty, so that the alarms that are no longer present are removed
+            for (int i = 0; i < partitions.size(); i++) {
+                partitions.get(i).submitAlarmSnapshot(alarmsByPartition.get(i), acksByRefId);
+            }
+        }
+    }
+
+    private void submitAlarmSnapshot(List<OnmsAlarm> alarms, Map<Integer, OnmsAcknowledgment> acksByRefId) {
+        final Map<Integer, OnmsAlarm> alarmsInDbById = alarms.stream()
+                .filter(a -> a.getId() != null)
+                .collect(Collectors.toMap(OnmsAlarm::getId, a -> a));
+
         submitOrRun(kieSession -> {
             final Set<Integer> alarmIdsInDb = alarmsInDbById.keySet();
             final Set<Integer> alarmIdsInWorkingMem = alarmsById.keySet();
@@ -357,6 +512,85 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
         });
     }
 
+    @Override
+    public void handleAlarmSnapshotDelta(List<OnmsAlarm> updatedAlarms, Map<Integer, String> deletedAlarms) {
+        if (!isStarted()) {
+            LOG.debug("Ignoring alarm snapshot delta. Drools session is stopped.");
+            return;
+        }
+
+        LOG.debug("Handling snapshot delta for {} updated and {} deleted alarms.", updatedAlarms.size(), deletedAlarms.size());
+        for (OnmsAlarm alarm : updatedAlarms) {
+            eagerlyInitializeAlarm(alarm);
+        }
+        final Map<Integer, OnmsAcknowledgment> acksByRefId = fetchAcks(updatedAlarms);
+
+        final List<DroolsAlarmContext> partitions = this.partitions;
+        if (partitions.isEmpty()) {
+            submitAlarmSnapshotDelta(updatedAlarms, deletedAlarms, acksByRefId);
+        } else {
+            final SpanningAlarmChanges changes = indexSituations(updatedAlarms, deletedAlarms.keySet());
+            final Map<Integer, String> alarmsToRemove = new HashMap<>(deletedAlarms);
+            changes.alarmIdsToRemove.forEach(alarmId -> alarmsToRemove.putIfAbsent(alarmId, null));
+            submitAlarmSnapshotDelta(AlarmFacts.copyAlarms(changes.alarmsToUpsert), alarmsToRemove,
+                    getAcksForSpanningAlarms(changes, acksByRefId));
+
+            final List<List<OnmsAlarm>> updatedAlarmsByPartition = new ArrayList<>(partitions.size());
+            final List<Map<Integer, String>> deletedAlarmsByPartition = new ArrayList<>(partitions.size());
+            for (int i = 0; i < partitions.size(); i++) {
+                updatedAlarmsByPartition.add(new ArrayList<>());
+                deletedAlarmsByPartition.add(new HashMap<>());
+            }
+            for (OnmsAlarm alarm : updatedAlarms) {
+                final int alarmPartition = alarmPartitioner.getPartition(alarm, partitions.size());
+                updatedAlarmsByPartition.get(alarmPartition).add(alarm);
+                final Integer previousPartition = partitionByAlarmId.put(alarm.getId(), alarmPartition);
+                if (previousPartition != null && previousPartition != alarmPartition && previousPartition < partitions.size()) {
+                    // The alarm moved, remove it from the partition it was previously in
+                    deletedAlarmsByPartition.get(previousPartition).put(alarm.getId(), alarm.getReductionKey());
+                }
+            }
+            deletedAlarms.forEach((alarmId, reductionKey) -> {
+                final Integer alarmPartition = partitionByAlarmId.remove(alarmId);
+                if (alarmPartition != null && alarmPartition < partitions.size()) {
+                    deletedAlarmsByPartition.get(alarmPartition).put(alarmId, reductionKey);
+                } else {
+                    deletedAlarmsByPartition.forEach(m -> m.put(alarmId, reductionKey));
+                }
+            });
+            // Every partition gets a delta, even when empty, so that the state trackers are reset
+            for (int i = 0; i < partitions.size(); i++) {
+                partitions.get(i).submitAlarmSnapshotDelta(updatedAlarmsByPartition.get(i), deletedAlarmsByPartition.get(i), acksByRefId);
+            }
+        }
+    }
+
+    private void submitAlarmSnapshotDelta(List<OnmsAlarm> updatedAlarms, Map<Integer, String> deletedAlarms,
+                                          Map<Integer, OnmsAcknowledgment> acksByRefId) {
+        submitOrRun(kieSession -> {
+            deletedAlarms.forEach((alarmId, reductionKey) -> {
+                // Only remove it from memory if the fact we have dates before the snapshot
+                if (!stateTracker.wasAlarmWithIdUpdated(alarmId)) {
+                    handleDeletedAlarmForAtomic(kieSession, alarmId, reductionKey);
+                }
+            });
+
+            for (OnmsAlarm alarm : updatedAlarms) {
+                // Don't bother updating the alarm in memory if the fact we have is more recent than the snapshot
+                if (stateTracker.wasAlarmWithIdUpdated(alarm.getId()) || stateTracker.wasAlarmWithIdDeleted(alarm.getId())) {
+                    continue;
+                }
+                final AlarmAndFact alarmAndFact = alarmsById.get(alarm.getId());
+                if (alarmAndFact == null || shouldUpdateAlarmForSnapshot(alarmAndFact.getAlarm(), alarm)) {
+                    handleNewOrUpdatedAlarmForAtomic(kieSession, alarm, acksByRefId.get(alarm.getId()));
+                }
+            }
+
+            stateTracker.resetStateAndStopTrackingAlarms();
+            LOG.debug("Done handling snapshot delta.");
+        });
+    }
+
     @Override
     public void postHandleAlarmSnapshot() {
         // pass
@@ -386,6 +620,30 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
         // Retrieve the acks from the database for the set of the alarms we've been given
         final Map<Integer, OnmsAcknowledgment> acksByRefId = fetchAcks(Collections.singletonList(alarm));
 
+        final List<DroolsAlarmContext> partitions = this.partitions;
+        if (partitions.isEmpty()) {
+            submitNewOrUpdatedAlarm(alarm, acksByRefId);
+        } else {
+            final SpanningAlarmChanges changes = indexSituations(Collections.singletonList(alarm), Collections.emptySet());
+            for (Integer alarmIdToRemove : changes.alarmIdsToRemove) {
+                submitDeletedAlarm(alarmIdToRemove, null);
+            }
+            final Map<Integer, OnmsAcknowledgment> acksForSpanningAlarms = getAcksForSpanningAlarms(changes, acksByRefId);
+            for (OnmsAlarm alarmToUpsert : AlarmFacts.copyAlarms(changes.alarmsToUpsert)) {
+                submitNewOrUpdatedAlarm(alarmToUpsert, acksForSpanningAlarms);
+            }
+
+            final int alarmPartition = alarmPartitioner.getPartition(alarm, partitions.size());
+            final Integer previousPartition = partitionByAlarmId.put(alarm.getId(), alarmPartition);
+            if (previousPartition != null && previousPartition != alarmPartition && previousPartition < partitions.size()) {
+                // The alarm moved, remove it from the partition it was previously in
+                partitions.get(previousPartition).submitDeletedAlarm(alarm.getId(), alarm.getReductionKey());
+            }
+            partitions.get(alarmPartition).submitNewOrUpdatedAlarm(alarm, acksByRefId);
+        }
+    }
+
+    private void submitNewOrUpdatedAlarm(OnmsAlarm alarm, Map<Integer, OnmsAcknowledgment> acksByRefId) {
         executeAtomicallyWhenTransactionComplete(kieSession -> {
             handleNewOrUpdatedAlarmForAtomic(kieSession, alarm, acksByRefId.get(alarm.getId()));
             stateTracker.trackNewOrUpdatedAlarm(alarm.getId(), alarm.getReductionKey());
@@ -533,6 +791,28 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
             return;
         }
 
+        submitDeletedAlarm(alarmId, reductionKey);
+
+        final List<DroolsAlarmContext> partitions = this.partitions;
+        if (!partitions.isEmpty()) {
+            final SpanningAlarmChanges changes = indexSituations(Collections.emptyList(), Collections.singleton(alarmId));
+            for (Integer alarmIdToRemove : changes.alarmIdsToRemove) {
+                submitDeletedAlarm(alarmIdToRemove, null);
+            }
+
+            final Integer alarmPartition = partitionByAlarmId.remove(alarmId);
+            if (alarmPartition != null && alarmPartition < partitions.size()) {
+                partitions.get(alarmPartition).submitDeletedAlarm(alarmId, reductionKey);
+            } else {
+                // We don't know where the alarm was routed, remove it from all of the partitions
+                for (DroolsAlarmContext partitionContext : partitions) {
+                    partitionContext.submitDeletedAlarm(alarmId, reductionKey);
+                }
+            }
+        }
+    }
+
+    private void submitDeletedAlarm(int alarmId, String reductionKey) {
         executeAtomicallyWhenTransactionComplete(kieSession -> {
             handleDeletedAlarmForAtomic(kieSession, alarmId, reductionKey);
             stateTracker.trackDeletedAlarm(alarmId, reductionKey);
@@ -565,6 +845,148 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
         }
     }
 
+    /**
+     * Alarms to add to, or remove from, the session that holds the alarms needed by the rules spanning partitions.
+     */
+    private static class SpanningAlarmChanges {
+        private final List<OnmsAlarm> alarmsToUpsert = new ArrayList<>();
+        private final Set<Integer> alarmIdsToRemove = new HashSet<>();
+    }
+
+    /**
+     * Rebuilds the situation index from the given snapshot.
+     *
+     * @return the situations in the snapshot, along with the related alarms that are part of the snapshot
+     */
+    private List<OnmsAlarm> indexSituationsForSnapshot(List<OnmsAlarm> alarms) {
+        synchronized (relatedAlarmIdsBySituationId) {
+            relatedAlarmIdsBySituationId.clear();
+            situationIdsByRelatedAlarmId.clear();
+            for (OnmsAlarm alarm : alarms) {
+                if (alarm.getId() != null && alarm.isSituation()) {
+                    addSituationToIndex(alarm.getId(), alarm.getRelatedAlarmIds());
+                }
+            }
+            return alarms.stream()
+                    .filter(alarm -> alarm.getId() != null && isSpanningPartitions(alarm.getId()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Updates the situation index with the given alarms and determines how the session holding
+     * the alarms needed by the rules spanning partitions must be changed.
+     *
+     * Alarms that are deleted are always removed from that session by the caller and are not part of the changes.
+     *
+     * @param updatedAlarms new or updated alarms
+     * @param deletedAlarmIds ids of the deleted alarms
+     * @return the changes
+     */
+    private SpanningAlarmChanges indexSituations(Collection<OnmsAlarm> updatedAlarms, Collection<Integer> deletedAlarmIds) {
+        final SpanningAlarmChanges changes = new SpanningAlarmChanges();
+        synchronized (relatedAlarmIdsBySituationId) {
+            // Gather the alarms that may be added to, or removed from, the session
+            final Set<Integer> affectedAlarmIds = new HashSet<>(deletedAlarmIds);
+            final Set<Integer> updatedAlarmIds = new HashSet<>();
+            for (Integer deletedAlarmId : deletedAlarmIds) {
+                affectedAlarmIds.addAll(relatedAlarmIdsBySituationId.getOrDefault(deletedAlarmId, Collections.emptySet()));
+            }
+            for (OnmsAlarm alarm : updatedAlarms) {
+                updatedAlarmIds.add(alarm.getId());
+                affectedAlarmIds.add(alarm.getId());
+                affectedAlarmIds.addAll(relatedAlarmIdsBySituationId.getOrDefault(alarm.getId(), Collections.emptySet()));
+                if (alarm.isSituation()) {
+                    affectedAlarmIds.addAll(alarm.getRelatedAlarmIds());
+                }
+            }
+            final Set<Integer> alarmIdsBefore = affectedAlarmIds.stream()
+                    .filter(this::isSpanningPartitions)
+                    .collect(Collectors.toSet());
+
+            // Update the index
+            for (Integer deletedAlarmId : deletedAlarmIds) {
+                removeSituationFromIndex(deletedAlarmId);
+            }
+            for (OnmsAlarm alarm : updatedAlarms) {
+                removeSituationFromIndex(alarm.getId());
+                if (alarm.isSituation()) {
+                    addSituationToIndex(alarm.getId(), alarm.getRelatedAlarmIds());
+                }
+            }
+            final Set<Integer> alarmIdsAfter = affectedAlarmIds.stream()
+                    .filter(alarmId -> !deletedAlarmIds.contains(alarmId) && isSpanningPartitions(alarmId))
+                    .collect(Collectors.toSet());
+
+            changes.alarmIdsToRemove.addAll(Sets.difference(alarmIdsBefore, alarmIdsAfter));
+            changes.alarmIdsToRemove.removeAll(deletedAlarmIds);
+            for (OnmsAlarm alarm : updatedAlarms) {
+                if (alarmIdsAfter.contains(alarm.getId())) {
+                    changes.alarmsToUpsert.add(alarm);
+                }
+            }
+            // Related alarms that were not previously needed are taken from the situations
+            for (OnmsAlarm alarm : updatedAlarms) {
+                if (!alarm.isSituation()) {
+                    continue;
+                }
+                for (OnmsAlarm relatedAlarm : alarm.getRelatedAlarms()) {
+                    final Integer relatedAlarmId = relatedAlarm.getId();
+                    if (alarmIdsAfter.contains(relatedAlarmId) && !alarmIdsBefore.contains(relatedAlarmId)
+                            && updatedAlarmIds.add(relatedAlarmId)) {
+                        changes.alarmsToUpsert.add(relatedAlarm);
+                    }
+                }
+            }
+        }
+        return changes;
+    }
+
+    private boolean isSpanningPartitions(Integer alarmId) {
+        return relatedAlarmIdsBySituationId.containsKey(alarmId) || situationIdsByRelatedAlarmId.containsKey(alarmId);
+    }
+
+    private void addSituationToIndex(Integer situationId, Set<Integer> relatedAlarmIds) {
+        relatedAlarmIdsBySituationId.put(situationId, relatedAlarmIds);
+        for (Integer relatedAlarmId : relatedAlarmIds) {
+            situationIdsByRelatedAlarmId.computeIfAbsent(relatedAlarmId, id -> new HashSet<>()).add(situationId);
+        }
+    }
+
+    private void removeSituationFromIndex(Integer situationId) {
+        final Set<Integer> relatedAlarmIds = relatedAlarmIdsBySituationId.remove(situationId);
+        if (relatedAlarmIds == null) {
+            return;
+        }
+        for (Integer relatedAlarmId : relatedAlarmIds) {
+            final Set<Integer> situationIds = situationIdsByRelatedAlarmId.get(relatedAlarmId);
+            if (situationIds != null) {
+                situationIds.remove(situationId);
+                if (situationIds.isEmpty()) {
+                    situationIdsByRelatedAlarmId.remove(relatedAlarmId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the acks for the alarms that are upserted in the session holding the alarms spanning partitions,
+     * fetching those of the related alarms that are newly added to the session.
+     */
+    private Map<Integer, OnmsAcknowledgment> getAcksForSpanningAlarms(SpanningAlarmChanges changes,
+                                                                      Map<Integer, OnmsAcknowledgment> acksByRefId) {
+        final List<OnmsAlarm> alarmsWithoutAcks = changes.alarmsToUpsert.stream()
+                .filter(alarm -> !acksByRefId.containsKey(alarm.getId()))
+                .collect(Collectors.toList());
+        final Map<Integer, OnmsAcknowledgment> acks = new HashMap<>(acksByRefId);
+        acks.putAll(fetchAcks(alarmsWithoutAcks));
+        return AlarmFacts.copyAcks(acks, getAlarmIds(changes.alarmsToUpsert));
+    }
+
+    private static Set<Integer> getAlarmIds(Collection<OnmsAlarm> alarms) {
+        return alarms.stream().map(OnmsAlarm::getId).collect(Collectors.toSet());
+    }
+
     public void setAlarmService(AlarmService alarmService) {
         this.alarmService = alarmService;
     }
@@ -577,6 +999,23 @@ public class DroolsAlarmContext extends ManagedDroolsContext implements AlarmLif
         this.alarmTicketerService = alarmTicketerService;
     }
 
+    /**
+     * Sets the number of partitioned sessions used to process the alarms.
+     * Must be set before the context is started. A value of 1 or less disables partitioning.
+     */
+    public void setNumPartitions(int numPartitions) {
+        this.numPartitions = numPartitions;
+    }
+
+    public void setAlarmPartitioner(AlarmPartitioner alarmPartitioner) {
+        this.alarmPartitioner = Objects.requireNonNull(alarmPartitioner);
+    }
+
+    @VisibleForTesting
+    List<DroolsAlarmContext> getPartitions() {
+        return partitions;
+    }
+
     @VisibleForTesting
     OnmsAcknowledgment getAckByAlarmId(Integer id) {
         return acknowledgementsByAlarmId.get(id).getAcknowledgement();
@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -43,9 +44,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.drools.core.ClockType;
+import org.kie.api.KieBase;
 import org.kie.api.KieServices;
 import org.kie.api.builder.KieBuilder;
 import org.kie.api.builder.KieFileSystem;
@@ -55,6 +58,11 @@ import org.kie.api.builder.model.KieBaseModel;
 import org.kie.api.builder.model.KieModuleModel;
 import org.kie.api.builder.model.KieSessionModel;
 import org.kie.api.conf.EventProcessingOption;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
 import org.kie.api.runtime.KieContainer;
 import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.conf.ClockTypeOption;
@@ -114,9 +122,12 @@ public class ManagedDroolsContext {
 
     private Consumer<KieSession> onNewKiewSessionCallback;
 
+    private Predicate<Rule> ruleFilter;
+
     private JmxReporter metricsReporter;
     private java.util.Timer livenessTimer;
     private Timer livenessTimerMetric;
+    private Timer fireTimerMetric;
 
     public ManagedDroolsContext(File rulesFolder, String kbaseName, String kSessionSuffixName) {
         this.rulesFolder = Objects.requireNonNull(rulesFolder);
@@ -127,6 +138,7 @@ public class ManagedDroolsContext {
         // Register metrics
         metrics.register("facts", (Gauge<Long>) () -> kieSession != null ? kieSession.getFactCount() : -1);
         livenessTimerMetric = metrics.timer("liveness");
+        fireTimerMetric = metrics.timer("fire");
     }
 
     public synchronized void start() {
@@ -157,6 +169,9 @@ public class ManagedDroolsContext {
     private void startWithModuleAndFacts(ReleaseId releaseId, List<Object> factObjects) {
         final KieServices ks = KieServices.Factory.get();
         kieContainer = ks.newKieContainer(releaseId);
+        if (ruleFilter != null) {
+            removeFilteredRules(kieContainer.getKieBase(kbaseName));
+        }
         kieSession = kieContainer.newKieSession(kSessionName);
         if (usePseudoClock) {
             clock = kieSession.getSessionClock();
@@ -164,6 +179,24 @@ public class ManagedDroolsContext {
         // Add the clock to the session
         kieSession.insert(kieSession.getSessionClock());
 
+        // Time the rules as they fire, matches are always fired from a single thread
+        kieSession.addEventListener(new DefaultAgendaEventListener() {
+            private Timer.Context ctx;
+
+            @Override
+            public void beforeMatchFired(BeforeMatchFiredEvent event) {
+                ctx = fireTimerMetric.time();
+            }
+
+            @Override
+            public void afterMatchFired(AfterMatchFiredEvent event) {
+                if (ctx != null) {
+                    ctx.stop();
+                    ctx = null;
+                }
+            }
+        });
+
         // Optionally restore any facts
         factObjects.forEach(factObject -> kieSession.insert(factObject));
 
@@ -327,6 +360,25 @@ public class ManagedDroolsContext {
         return id;
     }
 
+    /**
+     * Removes the rules that are rejected by the {@link #ruleFilter} from the given knowledge base,
+     * so that sessions created from it neither match nor fire these.
+     */
+    private void removeFilteredRules(KieBase kieBase) {
+        final List<Rule> rulesToRemove = new ArrayList<>();
+        for (KiePackage kiePackage : kieBase.getKiePackages()) {
+            for (Rule rule : kiePackage.getRules()) {
+                if (!ruleFilter.test(rule)) {
+                    rulesToRemove.add(rule);
+                }
+            }
+        }
+        for (Rule rule : rulesToRemove) {
+            kieBase.removeRule(rule.getPackageName(), rule.getName());
+        }
+        LOG.debug("Removed {} rules from kbase: {}", rulesToRemove.size(), kbaseName);
+    }
+
     private List<File> getRulesFiles() throws IOException {
         final Path droolsRulesRoot = rulesFolder.toPath();
         if (!droolsRulesRoot.toFile().isDirectory()) {
@@ -403,6 +455,10 @@ public class ManagedDroolsContext {
         this.usePseudoClock = usePseudoClock;
     }
 
+    public boolean isUseManualTick() {
+        return useManualTick;
+    }
+
     public void setUseManualTick(boolean useManualTick) {
         this.useManualTick = useManualTick;
     }
@@ -411,6 +467,21 @@ public class ManagedDroolsContext {
         this.onNewKiewSessionCallback = onNewKiewSessionCallback;
     }
 
+    public File getRulesFolder() {
+        return rulesFolder;
+    }
+
+    /**
+     * Limits the rules that are part of the session to those accepted by the given filter.
+     * The other rules are removed from the knowledge base before the session is created, so
+     * they do not take part in pattern matching. Must be set before the context is started.
+     *
+     * @param ruleFilter the filter, or null to keep all of the rules
+     */
+    public void setRuleFilter(Predicate<Rule> ruleFilter) {
+        this.ruleFilter = ruleFilter;
+    }
+
     public KieSession getKieSession() {
         return kieSession;
     }
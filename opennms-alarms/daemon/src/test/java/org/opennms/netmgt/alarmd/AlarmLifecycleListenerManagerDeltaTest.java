@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleDeltaListener;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.mock.MockSessionUtils;
+import org.opennms.netmgt.model.OnmsAlarm;
+
+import com.google.common.collect.Maps;
+
+public class AlarmLifecycleListenerManagerDeltaTest {
+
+    private final AlarmDao alarmDao = mock(AlarmDao.class);
+
+    private final List<OnmsAlarm> alarmsInDb = new ArrayList<>();
+
+    private final AlarmLifecycleListenerManager alm = new AlarmLifecycleListenerManager();
+
+    private final AlarmLifecycleDeltaListener listener = mock(AlarmLifecycleDeltaListener.class);
+
+    @Before
+    public void setUp() {
+        alarmsInDb.add(alarm(1, "rk1"));
+        alarmsInDb.add(alarm(2, "rk2"));
+        when(alarmDao.findAll()).thenAnswer(invocation -> new ArrayList<>(alarmsInDb));
+        when(alarmDao.countAll()).thenAnswer(invocation -> alarmsInDb.size());
+        // The criteria only ever contains the ids of the changed alarms, which are all
+        // kept in the database by these tests unless removed
+        when(alarmDao.findMatching(any(Criteria.class))).thenAnswer(invocation -> new ArrayList<>(alarmsInDb));
+
+        alm.setAlarmDao(alarmDao);
+        alm.setSessionUtils(new MockSessionUtils());
+        alm.onListenerRegistered(listener, Maps.newHashMap());
+    }
+
+    @Test
+    public void canSendDeltasAfterTheFirstSnapshot() {
+        alm.doSnapshot();
+        verify(listener, times(1)).handleAlarmSnapshot(alarmsInDb);
+        verify(alarmDao, times(1)).findAll();
+
+        // No changes
+        alm.doSnapshot();
+        verify(listener, times(1)).handleAlarmSnapshotDelta(Collections.emptyList(), Collections.emptyMap());
+        verify(alarmDao, never()).findMatching(any(Criteria.class));
+
+        // Update one alarm and delete the other
+        final OnmsAlarm deleted = alarmsInDb.remove(1);
+        alm.onAlarmUpdatedWithReducedEvent(alarmsInDb.get(0));
+        alm.onAlarmDeleted(deleted);
+        alm.doSnapshot();
+
+        verify(listener, times(1)).handleAlarmSnapshotDelta(alarmsInDb, Collections.singletonMap(2, "rk2"));
+        verify(alarmDao, times(1)).findAll();
+        verify(listener, times(3)).preHandleAlarmSnapshot();
+        verify(listener, times(3)).postHandleAlarmSnapshot();
+    }
+
+    @Test
+    public void canDetectDivergence() {
+        alm.doSnapshot();
+
+        // An alarm shows up in the database without a callback
+        alarmsInDb.add(alarm(3, "rk3"));
+
+        // The first delta only suspects a divergence
+        alm.doSnapshot();
+        verify(alarmDao, times(1)).findAll();
+        // The second confirms it
+        alm.doSnapshot();
+        verify(alarmDao, times(1)).findAll();
+        // So the next one is a full snapshot
+        alm.doSnapshot();
+        verify(alarmDao, times(2)).findAll();
+        verify(listener, times(1)).handleAlarmSnapshot(alarmsInDb);
+    }
+
+    @Test
+    public void canSendFullSnapshotsToListenersWithoutDeltaSupport() {
+        final AlarmLifecycleListener fullListener = mock(AlarmLifecycleListener.class);
+        alm.onListenerRegistered(fullListener, Maps.newHashMap());
+
+        alm.doSnapshot();
+        alm.doSnapshot();
+
+        verify(alarmDao, times(2)).findAll();
+        verify(fullListener, times(2)).handleAlarmSnapshot(alarmsInDb);
+        verify(listener, times(2)).handleAlarmSnapshot(alarmsInDb);
+        verify(listener, never()).handleAlarmSnapshotDelta(any(), any());
+
+        // Once it's gone, the remaining listener gets deltas again
+        alm.onListenerUnregistered(fullListener, Maps.newHashMap());
+        alm.doSnapshot();
+        verify(listener, times(1)).handleAlarmSnapshotDelta(Collections.emptyList(), Collections.emptyMap());
+    }
+
+    private static OnmsAlarm alarm(int id, String reductionKey) {
+        final OnmsAlarm alarm = new OnmsAlarm();
+        alarm.setId(id);
+        alarm.setReductionKey(reductionKey);
+        return alarm;
+    }
+}
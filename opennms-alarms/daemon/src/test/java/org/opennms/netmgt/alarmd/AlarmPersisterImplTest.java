@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.AlarmEntityNotifier;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+public class AlarmPersisterImplTest {
+
+    private static final String REDUCTION_KEY = "uei.opennms.org/test/trigger::1";
+
+    private static final int DELETED_EVENT_ID = 13;
+
+    private final AlarmDao alarmDao = mock(AlarmDao.class);
+
+    private final EventDao eventDao = mock(EventDao.class);
+
+    private final TransactionOperations transactionOperations = mock(TransactionOperations.class);
+
+    private final AlarmEntityNotifier alarmEntityNotifier = mock(AlarmEntityNotifier.class);
+
+    private final AtomicReference<OnmsAlarm> storedAlarm = new AtomicReference<>();
+
+    private final List<Integer> reducedEvents = new CopyOnWriteArrayList<>();
+
+    private final AlarmPersisterImpl alarmPersister = new AlarmPersisterImpl();
+
+    @Before
+    public void setUp() {
+        when(transactionOperations.execute(any())).thenAnswer(invocation -> {
+            final TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+        when(eventDao.get(anyInt())).thenAnswer(invocation -> {
+            final Integer id = invocation.getArgument(0);
+            if (id == DELETED_EVENT_ID) {
+                return null;
+            }
+            reducedEvents.add(id);
+            final OnmsEvent event = new OnmsEvent();
+            event.setId(id);
+            event.setEventUei("uei.opennms.org/test/trigger");
+            event.setEventTime(new Date());
+            event.setEventSeverity(OnmsSeverity.MAJOR.getId());
+            return event;
+        });
+        when(alarmDao.findByReductionKey(anyString())).thenAnswer(invocation -> storedAlarm.get());
+        when(alarmDao.get(1)).thenAnswer(invocation -> storedAlarm.get());
+        doAnswer(invocation -> {
+            final OnmsAlarm alarm = invocation.getArgument(0);
+            alarm.setId(1);
+            storedAlarm.set(alarm);
+            return 1;
+        }).when(alarmDao).save(any(OnmsAlarm.class));
+
+        alarmPersister.setAlarmDao(alarmDao);
+        alarmPersister.setEventDao(eventDao);
+        alarmPersister.setTransactionOperations(transactionOperations);
+        alarmPersister.setAlarmChangeListener(alarmEntityNotifier);
+        alarmPersister.setMaxReductionBatchSize(100);
+    }
+
+    @Test
+    public void reducesEveryEventInItsOwnTransactionByDefault() {
+        assertEquals(1, new AlarmPersisterImpl().getMaxReductionBatchSize());
+    }
+
+    @Test
+    public void canReduceUsingTheReductionKeyIndex() {
+        for (int i = 1; i <= 3; i++) {
+            final OnmsAlarm alarm = alarmPersister.persist(trigger(i));
+            assertEquals(Integer.valueOf(1), alarm.getId());
+            assertEquals(i, alarm.getCounter().intValue());
+        }
+
+        // Only the first event needs to query by reduction key
+        verify(alarmDao, times(1)).findByReductionKey(REDUCTION_KEY);
+        verify(alarmDao, times(2)).get(1);
+        verify(alarmEntityNotifier, times(1)).didCreateAlarm(any(OnmsAlarm.class));
+        verify(alarmEntityNotifier, times(2)).didUpdateAlarmWithReducedEvent(any(OnmsAlarm.class));
+    }
+
+    @Test
+    public void canReduceStormOfEventsWithTheSameReductionKey() throws Exception {
+        final int numThreads = 8;
+        final int numEventsPerThread = 250;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                final int offset = 1000 + i * numEventsPerThread;
+                futures.add(executor.submit(() -> {
+                    for (int k = 0; k < numEventsPerThread; k++) {
+                        alarmPersister.persist(trigger(offset + k));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final int numEvents = numThreads * numEventsPerThread;
+        assertEquals(numEvents, storedAlarm.get().getCounter().intValue());
+        verify(alarmEntityNotifier, times(1)).didCreateAlarm(any(OnmsAlarm.class));
+        verify(alarmEntityNotifier, times(numEvents - 1)).didUpdateAlarmWithReducedEvent(any(OnmsAlarm.class));
+    }
+
+    @Test
+    public void canCoalesceEventsQueuedWhileTheKeyIsBusy() throws Exception {
+        final CountDownLatch inFirstTransaction = new CountDownLatch(1);
+        final CountDownLatch releaseFirstTransaction = new CountDownLatch(1);
+        blockFirstTransaction(inFirstTransaction, releaseFirstTransaction);
+
+        final Thread first = persistInBackground(trigger(1));
+        inFirstTransaction.await();
+
+        final List<Thread> waiting = new ArrayList<>();
+        for (int i = 2; i <= 11; i++) {
+            waiting.add(awaitBlocked(persistInBackground(trigger(i))));
+        }
+        releaseFirstTransaction.countDown();
+
+        first.join();
+        for (Thread thread : waiting) {
+            thread.join();
+        }
+
+        // The first event has its own transaction, the ten that queued up behind it share one
+        verify(transactionOperations, times(2)).execute(any());
+        assertEquals(11, storedAlarm.get().getCounter().intValue());
+        assertEquals(IntStream.rangeClosed(1, 11).boxed().collect(Collectors.toList()), reducedEvents);
+        verify(alarmEntityNotifier, times(1)).didCreateAlarm(any(OnmsAlarm.class));
+        verify(alarmEntityNotifier, times(10)).didUpdateAlarmWithReducedEvent(any(OnmsAlarm.class));
+    }
+
+    @Test
+    public void doesNotReduceTriggersAheadOfAWaitingClear() throws Exception {
+        final CountDownLatch inFirstTransaction = new CountDownLatch(1);
+        final CountDownLatch releaseFirstTransaction = new CountDownLatch(1);
+        blockFirstTransaction(inFirstTransaction, releaseFirstTransaction);
+
+        final Thread first = persistInBackground(trigger(1));
+        inFirstTransaction.await();
+
+        // The clear waits for the lock after the second trigger, and before the third and fourth one
+        final Thread second = awaitBlocked(persistInBackground(trigger(2)));
+        final Thread clear = awaitBlocked(persistInBackground(clear(3)));
+        final Thread third = awaitBlocked(persistInBackground(trigger(4)));
+        final Thread fourth = awaitBlocked(persistInBackground(trigger(5)));
+        releaseFirstTransaction.countDown();
+
+        for (Thread thread : Arrays.asList(first, second, clear, third, fourth)) {
+            thread.join();
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), reducedEvents);
+        // The second trigger is not batched with the ones queued behind the clear, which are still reduced together
+        verify(transactionOperations, times(4)).execute(any());
+        assertEquals(OnmsSeverity.MAJOR, storedAlarm.get().getSeverity());
+    }
+
+    @Test
+    public void notifiesOnlyOnceWhenABatchIsRetried() throws Exception {
+        final CountDownLatch inFirstTransaction = new CountDownLatch(1);
+        final CountDownLatch releaseFirstTransaction = new CountDownLatch(1);
+        blockFirstTransaction(inFirstTransaction, releaseFirstTransaction);
+
+        final Thread first = persistInBackground(trigger(1));
+        inFirstTransaction.await();
+
+        final List<Thread> waiting = new ArrayList<>();
+        for (int i = 2; i <= 4; i++) {
+            waiting.add(awaitBlocked(persistInBackground(trigger(i))));
+        }
+
+        // Fail the batch once all of its events were reduced, as if writing the changes failed
+        doThrow(new RuntimeException("flush failed")).doNothing().when(alarmDao).flush();
+        releaseFirstTransaction.countDown();
+
+        first.join();
+        for (Thread thread : waiting) {
+            thread.join();
+        }
+
+        // The batch and the three transactions retrying its events one by one
+        verify(transactionOperations, times(5)).execute(any());
+        verify(alarmEntityNotifier, times(1)).didCreateAlarm(any(OnmsAlarm.class));
+        verify(alarmEntityNotifier, times(3)).didUpdateAlarmWithReducedEvent(any(OnmsAlarm.class));
+    }
+
+    @Test
+    public void canFailOnlyTheEventsThatWereDeleted() throws Exception {
+        alarmPersister.persist(trigger(1));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<OnmsAlarm>> futures = new ArrayList<>();
+            for (int i = 10; i < 20; i++) {
+                final int dbid = i;
+                futures.add(executor.submit(() -> alarmPersister.persist(trigger(dbid))));
+            }
+            for (Future<OnmsAlarm> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    assertEquals(IllegalStateException.class, e.getCause().getClass());
+                }
+            }
+            try {
+                futures.get(DELETED_EVENT_ID - 10).get();
+                fail("Expected persisting a deleted event to fail.");
+            } catch (ExecutionException e) {
+                // expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(10, storedAlarm.get().getCounter().intValue());
+    }
+
+    private void blockFirstTransaction(CountDownLatch inFirstTransaction, CountDownLatch releaseFirstTransaction) {
+        final AtomicInteger transactions = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (transactions.incrementAndGet() == 1) {
+                inFirstTransaction.countDown();
+                releaseFirstTransaction.await();
+            }
+            final TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        }).when(transactionOperations).execute(any());
+    }
+
+    private Thread persistInBackground(Event event) {
+        final Thread thread = new Thread(() -> alarmPersister.persist(event));
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Waits until the thread is parked, which is when it has queued its event and is waiting for the lock.
+     */
+    private static Thread awaitBlocked(Thread thread) {
+        await().atMost(10, TimeUnit.SECONDS).until(() -> thread.getState() == Thread.State.WAITING);
+        return thread;
+    }
+
+    private static Event clear(int dbid) {
+        final Event event = trigger(dbid);
+        event.getAlarmData().setAlarmType(2);
+        event.getAlarmData().setReductionKey("uei.opennms.org/test/clear::1");
+        event.getAlarmData().setClearKey(REDUCTION_KEY);
+        return event;
+    }
+
+    private static Event trigger(int dbid) {
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setAlarmType(1);
+        alarmData.setReductionKey(REDUCTION_KEY);
+
+        final Event event = new Event();
+        event.setDbid(dbid);
+        event.setUei("uei.opennms.org/test/trigger");
+        event.setTime(new Date());
+        event.setAlarmData(alarmData);
+        return event;
+    }
+}
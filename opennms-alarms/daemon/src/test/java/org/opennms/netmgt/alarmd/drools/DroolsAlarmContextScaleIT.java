@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.drools;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.netmgt.dao.api.AcknowledgmentDao;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.mock.MockTransactionTemplate;
+import org.opennms.netmgt.dao.support.AlarmEntityNotifierImpl;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads a large number of alarms in the Drools context with and without partitioning
+ * and reports how long it takes for the sessions to reach a steady state.
+ *
+ * The number of alarms can be controlled with the "org.opennms.alarmd.drools.scale.alarms" system property.
+ */
+public class DroolsAlarmContextScaleIT {
+    private static final Logger LOG = LoggerFactory.getLogger(DroolsAlarmContextScaleIT.class);
+
+    private static final int NUM_ALARMS = SystemProperties.getInteger("org.opennms.alarmd.drools.scale.alarms", 250000);
+    private static final int NUM_NODES = 1000;
+    private static final int NUM_SITUATIONS = 100;
+    private static final int ALARMS_PER_SITUATION = 10;
+
+    private File rulesFolder;
+    private DroolsAlarmContext dac;
+
+    @Before
+    public void setUp() throws IOException {
+        rulesFolder = AlarmdTestUtil.enableDisabledRules();
+    }
+
+    @After
+    public void tearDown() {
+        if (dac != null) {
+            dac.stop();
+        }
+    }
+
+    @Test(timeout = 600000)
+    public void canHandleManyAlarmsWithSingleSession() throws InterruptedException {
+        loadAlarmsWithPartitions(1);
+    }
+
+    @Test(timeout = 600000)
+    public void canHandleManyAlarmsWithPartitionedSessions() throws InterruptedException {
+        loadAlarmsWithPartitions(4);
+    }
+
+    private void loadAlarmsWithPartitions(int numPartitions) throws InterruptedException {
+        dac = createContext(numPartitions);
+        dac.start();
+        dac.waitForInitialSeedToBeSubmitted();
+
+        final List<OnmsAlarm> alarms = createAlarms();
+        final long start = System.currentTimeMillis();
+        dac.preHandleAlarmSnapshot();
+        dac.handleAlarmSnapshot(alarms);
+        dac.postHandleAlarmSnapshot();
+
+        final int numAlarmsAndSituations = NUM_ALARMS + NUM_SITUATIONS;
+        if (numPartitions > 1) {
+            // Every alarm should be in exactly one of the partitions, while the top-level session
+            // should only hold copies of the situations and of their related alarms
+            assertThat(dac.getPartitions(), hasSize(numPartitions));
+            await().atMost(10, TimeUnit.MINUTES).pollInterval(1, TimeUnit.SECONDS)
+                    .until(() -> dac.getPartitions().stream()
+                            .mapToInt(DroolsAlarmContextScaleIT::getNumAlarmsInSession)
+                            .sum(), equalTo(numAlarmsAndSituations));
+            await().atMost(10, TimeUnit.MINUTES).pollInterval(1, TimeUnit.SECONDS)
+                    .until(() -> getNumAlarmsInSession(dac), equalTo(NUM_SITUATIONS * (ALARMS_PER_SITUATION + 1)));
+            final Set<Object> alarmsInPartitions = Collections.newSetFromMap(new IdentityHashMap<>());
+            dac.getPartitions().forEach(partition -> alarmsInPartitions.addAll(partition.getKieSession().getObjects(o -> o instanceof OnmsAlarm)));
+            for (Object alarmInSession : dac.getKieSession().getObjects(o -> o instanceof OnmsAlarm)) {
+                assertThat(alarmsInPartitions.contains(alarmInSession), equalTo(false));
+            }
+        } else {
+            await().atMost(10, TimeUnit.MINUTES).pollInterval(1, TimeUnit.SECONDS)
+                    .until(() -> getNumAlarmsInSession(dac), equalTo(numAlarmsAndSituations));
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+
+        LOG.info("Loaded {} alarms into {} partition(s) in {}ms.", numAlarmsAndSituations, numPartitions, elapsed);
+        LOG.info("Top-level session has {} facts and fired {} rules.", dac.getKieSession().getFactCount(),
+                dac.getMetrics().timer("fire").getCount());
+        for (DroolsAlarmContext partition : dac.getPartitions()) {
+            LOG.info("Partition has {} facts and fired {} rules.", partition.getKieSession().getFactCount(),
+                    partition.getMetrics().timer("fire").getCount());
+        }
+    }
+
+    private static int getNumAlarmsInSession(DroolsAlarmContext context) {
+        return context.getKieSession().getObjects(o -> o instanceof OnmsAlarm).size();
+    }
+
+    private DroolsAlarmContext createContext(int numPartitions) {
+        final DroolsAlarmContext context = new DroolsAlarmContext(rulesFolder);
+        context.setNumPartitions(numPartitions);
+        context.setAlarmPartitioner(AlarmPartitioner.BY_NODE);
+        context.setAlarmTicketerService(mock(AlarmTicketerService.class));
+
+        final MockTransactionTemplate transactionTemplate = new MockTransactionTemplate();
+        transactionTemplate.afterPropertiesSet();
+        context.setTransactionTemplate(transactionTemplate);
+
+        final AlarmDao alarmDao = mock(AlarmDao.class);
+        when(alarmDao.findAll()).thenReturn(Collections.emptyList());
+        context.setAlarmDao(alarmDao);
+
+        final AcknowledgmentDao acknowledgmentDao = mock(AcknowledgmentDao.class);
+        when(acknowledgmentDao.findLatestAckForRefId(any(Integer.class))).thenReturn(Optional.empty());
+        when(acknowledgmentDao.findLatestAcks(any(Date.class))).thenReturn(Collections.emptyList());
+        context.setAcknowledgmentDao(acknowledgmentDao);
+
+        final DefaultAlarmService alarmService = new DefaultAlarmService();
+        alarmService.setAlarmDao(alarmDao);
+        alarmService.setAcknowledgmentDao(acknowledgmentDao);
+        alarmService.setEventForwarder(mock(EventForwarder.class));
+        alarmService.setAlarmEntityNotifier(mock(AlarmEntityNotifierImpl.class));
+        context.setAlarmService(alarmService);
+        return context;
+    }
+
+    private static List<OnmsAlarm> createAlarms() {
+        final List<OnmsNode> nodes = new ArrayList<>(NUM_NODES);
+        for (int i = 1; i <= NUM_NODES; i++) {
+            final OnmsNode node = new OnmsNode();
+            node.setId(i);
+            node.setLabel("n" + i);
+            nodes.add(node);
+        }
+
+        final Date now = new Date();
+        final List<OnmsAlarm> alarms = new ArrayList<>(NUM_ALARMS);
+        for (int i = 1; i <= NUM_ALARMS; i++) {
+            final OnmsNode node = nodes.get(i % NUM_NODES);
+            final OnmsAlarm alarm = new OnmsAlarm();
+            alarm.setId(i);
+            alarm.setAlarmType(1);
+            alarm.setSeverity(OnmsSeverity.WARNING);
+            alarm.setNode(node);
+            alarm.setReductionKey(String.format("uei.opennms.org/test/scale:%d:%d", node.getId(), i));
+            alarm.setFirstEventTime(now);
+            alarm.setLastEventTime(now);
+            alarm.setCounter(1);
+            alarms.add(alarm);
+        }
+
+        // Correlate alarms from different nodes in situations
+        for (int i = 0; i < NUM_SITUATIONS; i++) {
+            final OnmsAlarm situation = new OnmsAlarm();
+            situation.setId(NUM_ALARMS + 1 + i);
+            situation.setAlarmType(1);
+            situation.setSeverity(OnmsSeverity.WARNING);
+            situation.setReductionKey(String.format("uei.opennms.org/test/scale/situation:%d", i));
+            situation.setFirstEventTime(now);
+            situation.setLastEventTime(now);
+            situation.setCounter(1);
+            final Set<OnmsAlarm> relatedAlarms = new HashSet<>();
+            for (int j = 0; j < ALARMS_PER_SITUATION; j++) {
+                relatedAlarms.add(alarms.get(i * ALARMS_PER_SITUATION + j));
+            }
+            situation.setRelatedAlarms(relatedAlarms, now);
+            alarms.add(situation);
+        }
+        return alarms;
+    }
+}
@@ -117,6 +117,13 @@ public class TrapdConfiguration implements  Serializable {
 	@XmlAttribute(name="batch-interval", required=false)
     private int _batchInterval = 500;
 
+    /**
+     * Identical traps received within this interval (ms) are folded
+     * into a single event. Deduplication is disabled when 0.
+     */
+	@XmlAttribute(name="dedupe-window", required=false)
+    private int _dedupeWindow = 0;
+
     /**
      * keeps track of state for field: _newSuspectOnTrap
      */
@@ -209,7 +216,7 @@ public class TrapdConfiguration implements  Serializable {
 
     public int hashCode() {
         return Objects.hash(_snmpTrapAddress, _snmpTrapPort, _has_snmpTrapPort, _newSuspectOnTrap, _snmpv3UserList,
-                _includeRawMessage, _threads, _queueSize, _batchSize, _batchInterval, _useAddessFromVarbind);
+                _includeRawMessage, _threads, _queueSize, _batchSize, _batchInterval, _useAddessFromVarbind, _dedupeWindow);
     }
 
     @Override()
@@ -229,7 +236,8 @@ public class TrapdConfiguration implements  Serializable {
                     && Objects.equals(_queueSize, other._queueSize)
                     && Objects.equals(_batchSize, other._batchSize)
                     && Objects.equals(_batchInterval, other._batchInterval)
-                    && Objects.equals(_useAddessFromVarbind, other._useAddessFromVarbind);
+                    && Objects.equals(_useAddessFromVarbind, other._useAddessFromVarbind)
+                    && Objects.equals(_dedupeWindow, other._dedupeWindow);
             return equals;
         }
         return false;
@@ -558,4 +566,12 @@ public class TrapdConfiguration implements  Serializable {
     public void setBatchInterval(int _batchInterval) {
         this._batchInterval = _batchInterval;
     }
+
+    public int getDedupeWindow() {
+        return _dedupeWindow;
+    }
+
+    public void setDedupeWindow(int _dedupeWindow) {
+        this._dedupeWindow = _dedupeWindow;
+    }
 }
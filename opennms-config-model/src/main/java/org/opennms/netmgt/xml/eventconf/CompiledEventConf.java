@@ -0,0 +1,533 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_EID;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A compiled form of the event configuration used to find the event definition
+ * that matches a given event without walking the definitions one by one.
+ *
+ * The lookup returns the same definition as the recursive search implemented in
+ * {@link Events#findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}. To do so,
+ * the search order of the event configuration (the UEI index, followed by the ordered
+ * definitions of the level, for the root and then every event file) is flattened into a
+ * single sequence of candidates. The candidates are then indexed in a trie by the
+ * exact and prefix (i.e. <code>%</code> terminated) values their masks require for the
+ * UEI, the enterprise id, and the generic and specific trap numbers. For a given event,
+ * only the candidates found in the trie are evaluated, in their original order.
+ *
+ * Candidates which are fully described by the trie (i.e. they only match on exact or
+ * prefix values of these four fields) don't need to be evaluated at all, and when a lookup
+ * only touched such candidates, the result is cached by the values of the four fields.
+ *
+ * Instances are immutable, and must be recompiled when the configuration changes.
+ */
+public class CompiledEventConf {
+
+    /**
+     * System property used to override the maximum number of entries kept in the
+     * signature cache. Set to 0 to disable the cache.
+     */
+    public static final String CACHE_SIZE_SYS_PROP = "org.opennms.eventconf.cacheSize";
+
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static final String[] DIMENSIONS = new String[] { TAG_UEI, TAG_SNMP_EID, TAG_SNMP_GENERIC, TAG_SNMP_SPECIFIC };
+
+    private static final int UEI = 0;
+    private static final int ID = 1;
+
+    private static final Field[] FIELDS = new Field[] {
+            EventMatchers.field(TAG_UEI),
+            EventMatchers.field(TAG_SNMP_EID),
+            EventMatchers.field(TAG_SNMP_GENERIC),
+            EventMatchers.field(TAG_SNMP_SPECIFIC)
+    };
+
+    private final Candidate[] m_candidates;
+
+    private final Map<String, UeiShortcut> m_ueiShortcuts;
+
+    private final Node m_root;
+
+    private final Cache<Signature, Optional<Event>> m_cache;
+
+    private CompiledEventConf(final Candidate[] candidates, final Map<String, UeiShortcut> ueiShortcuts, final Node root, final int cacheSize) {
+        m_candidates = candidates;
+        m_ueiShortcuts = ueiShortcuts;
+        m_root = root;
+        m_cache = cacheSize > 0 ? CacheBuilder.newBuilder().maximumSize(cacheSize).build() : null;
+    }
+
+    public static CompiledEventConf compile(final Events root) {
+        return compile(root, Integer.getInteger(CACHE_SIZE_SYS_PROP, DEFAULT_CACHE_SIZE));
+    }
+
+    /**
+     * Compiles the given, already initialized, event configuration.
+     *
+     * @param root the root of the event configuration
+     * @param cacheSize maximum number of signatures to cache, 0 disables the cache
+     * @return the compiled configuration
+     */
+    public static CompiledEventConf compile(final Events root, final int cacheSize) {
+        final List<Candidate> candidates = new ArrayList<>();
+        final Map<String, UeiShortcut> ueiShortcuts = new HashMap<>();
+        final Node trie = new Node();
+
+        // Flatten the levels in the same order as they are searched
+        final List<Events> levels = new ArrayList<>();
+        levels.add(root);
+        levels.addAll(root.getLoadedEvents());
+
+        for (final Events level : levels) {
+            final int levelStart = candidates.size();
+
+            // The UEI index of a level is consulted before any of the definitions of the level
+            for (final Map.Entry<String, Event> entry : level.getEventsByUei().entrySet()) {
+                ueiShortcuts.putIfAbsent(entry.getKey(), new UeiShortcut(levelStart, entry.getValue()));
+            }
+
+            for (final Map.Entry<Event, List<String>> entry : level.getOrderedDefinitions().entrySet()) {
+                final Candidate candidate = Candidate.of(candidates.size(), entry.getKey(), entry.getValue());
+                if (candidate != null) {
+                    candidates.add(candidate);
+                    trie.insert(candidate, 0);
+                }
+            }
+        }
+
+        trie.freeze();
+        return new CompiledEventConf(candidates.toArray(new Candidate[candidates.size()]), ueiShortcuts, trie, cacheSize);
+    }
+
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final Signature signature = new Signature(matchingEvent);
+        if (m_cache != null) {
+            final Optional<Event> cached = m_cache.getIfPresent(signature);
+            if (cached != null) {
+                return cached.orElse(null);
+            }
+        }
+
+        // Candidates past the cutoff are never evaluated since the UEI index takes precedence
+        int cutoff = m_candidates.length;
+        Event result = null;
+        if (signature.values[UEI] != null) {
+            final UeiShortcut shortcut = m_ueiShortcuts.get(signature.values[UEI]);
+            if (shortcut != null) {
+                cutoff = shortcut.cutoff;
+                result = shortcut.event;
+            }
+        }
+
+        final List<int[]> lists = new ArrayList<>(1 << DIMENSIONS.length);
+        m_root.collect(signature, 0, lists);
+
+        // Walk the candidates in order by merging the (sorted) lists
+        boolean cacheable = true;
+        final int[] cursors = new int[lists.size()];
+        int last = -1;
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            int nextList = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                final int[] list = lists.get(i);
+                if (cursors[i] < list.length && list[cursors[i]] < next) {
+                    next = list[cursors[i]];
+                    nextList = i;
+                }
+            }
+            if (nextList < 0 || next >= cutoff) {
+                break;
+            }
+            cursors[nextList]++;
+            if (next == last) {
+                // Reached through more than one value of the same mask element
+                continue;
+            }
+            last = next;
+
+            final Candidate candidate = m_candidates[next];
+            if (candidate.exact) {
+                // The trie has already verified all of the conditions
+                result = candidate.event;
+                break;
+            }
+
+            // The result now depends on more than the signature
+            cacheable = false;
+            if (candidate.event.matches(matchingEvent).matched()) {
+                result = candidate.event;
+                break;
+            }
+        }
+
+        if (cacheable && m_cache != null) {
+            m_cache.put(signature, Optional.ofNullable(result));
+        }
+        return result;
+    }
+
+    public int getCandidateCount() {
+        return m_candidates.length;
+    }
+
+    public long getCacheSize() {
+        return m_cache == null ? 0 : m_cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("candidates", m_candidates.length)
+                .add("ueiShortcuts", m_ueiShortcuts.size())
+                .add("cacheSize", getCacheSize())
+                .toString();
+    }
+
+    /**
+     * Builds the ordered list of definitions that are searched at the given level,
+     * along with the partition keys under which they are found (<code>null</code>
+     * if they are searched for all events).
+     */
+    static Map<Event, List<String>> orderDefinitions(final List<Event> nullPartitionedEvents, final Map<String, List<Event>> partitionedEvents) {
+        final Map<Event, List<String>> keysByEvent = new IdentityHashMap<>();
+        for (final Map.Entry<String, List<Event>> entry : partitionedEvents.entrySet()) {
+            for (final Event event : entry.getValue()) {
+                keysByEvent.computeIfAbsent(event, e -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        for (final Event event : nullPartitionedEvents) {
+            keysByEvent.put(event, null);
+        }
+
+        final List<Event> ordered = new ArrayList<>(keysByEvent.keySet());
+        Collections.sort(ordered);
+
+        final Map<Event, List<String>> orderedDefinitions = new LinkedHashMap<>();
+        for (final Event event : ordered) {
+            orderedDefinitions.put(event, keysByEvent.get(event));
+        }
+        return orderedDefinitions;
+    }
+
+    private static final class UeiShortcut {
+        private final int cutoff;
+        private final Event event;
+
+        private UeiShortcut(final int cutoff, final Event event) {
+            this.cutoff = cutoff;
+            this.event = event;
+        }
+    }
+
+    private static final class Candidate {
+        private final int ordinal;
+        private final Event event;
+        /**
+         * The values accepted for each dimension, or <code>null</code> if any value is accepted.
+         */
+        private final Constraint[] constraints;
+        /**
+         * Whether or not the constraints are equivalent to the matcher of the event definition.
+         */
+        private final boolean exact;
+
+        private Candidate(final int ordinal, final Event event, final Constraint[] constraints, final boolean exact) {
+            this.ordinal = ordinal;
+            this.event = event;
+            this.constraints = constraints;
+            this.exact = exact;
+        }
+
+        /**
+         * @return the candidate, or <code>null</code> if the definition can never match
+         */
+        private static Candidate of(final int ordinal, final Event event, final List<String> partitionKeys) {
+            final Constraint[] constraints = new Constraint[DIMENSIONS.length];
+            boolean exact = true;
+
+            final Mask mask = event.getMask();
+            if (mask == null || mask.getMaskelements().size() <= 0) {
+                if (event.getUei() == null) {
+                    return null;
+                }
+                constraints[UEI] = new Constraint(Collections.singleton(event.getUei()), Collections.emptySet());
+            } else {
+                for (final Maskelement maskElement : mask.getMaskelements()) {
+                    final int dimension = dimensionOf(maskElement.getMename());
+                    final Constraint values = Constraint.of(maskElement.getMevalues());
+                    if (dimension < 0 || values == null) {
+                        exact = false;
+                        continue;
+                    }
+                    constraints[dimension] = Constraint.intersect(constraints[dimension], values);
+                }
+                if (mask.getVarbinds().size() > 0) {
+                    exact = false;
+                }
+            }
+
+            // Definitions which are partitioned are only ever searched for events with the same key
+            if (partitionKeys != null) {
+                constraints[ID] = Constraint.intersect(constraints[ID], new Constraint(new HashSet<>(partitionKeys), Collections.emptySet()));
+            }
+
+            for (final Constraint constraint : constraints) {
+                if (constraint != null && constraint.isEmpty()) {
+                    return null;
+                }
+            }
+            return new Candidate(ordinal, event, constraints, exact);
+        }
+
+        private static int dimensionOf(final String mename) {
+            for (int i = 0; i < DIMENSIONS.length; i++) {
+                if (DIMENSIONS[i].equals(mename)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The values accepted for one dimension: the event value must either be equal
+     * to one of the exact values, or start with one of the prefixes.
+     */
+    private static final class Constraint {
+        private final Set<String> values;
+        private final Set<String> prefixes;
+
+        private Constraint(final Set<String> values, final Set<String> prefixes) {
+            this.values = values;
+            this.prefixes = prefixes;
+        }
+
+        /**
+         * @return the constraint equivalent to the values of a mask element, or
+         * <code>null</code> if any of the values is a regex
+         */
+        private static Constraint of(final List<String> mevalues) {
+            final Set<String> values = new HashSet<>();
+            final Set<String> prefixes = new HashSet<>();
+            for (final String value : mevalues) {
+                if (value == null) {
+                    continue;
+                }
+                if (value.startsWith("~")) {
+                    return null;
+                }
+                if (value.endsWith("%")) {
+                    prefixes.add(value.substring(0, value.length() - 1));
+                } else {
+                    values.add(value);
+                }
+            }
+            return new Constraint(values, prefixes);
+        }
+
+        private static Constraint intersect(final Constraint a, final Constraint b) {
+            if (a == null) {
+                return b;
+            }
+            final Set<String> values = new HashSet<>(a.values);
+            values.retainAll(b.values);
+            for (final String value : a.values) {
+                if (b.hasPrefixOf(value)) {
+                    values.add(value);
+                }
+            }
+            for (final String value : b.values) {
+                if (a.hasPrefixOf(value)) {
+                    values.add(value);
+                }
+            }
+
+            // The longer of two nested prefixes
+            final Set<String> prefixes = new HashSet<>();
+            for (final String prefix : a.prefixes) {
+                for (final String other : b.prefixes) {
+                    if (prefix.startsWith(other)) {
+                        prefixes.add(prefix);
+                    } else if (other.startsWith(prefix)) {
+                        prefixes.add(other);
+                    }
+                }
+            }
+            return new Constraint(values, prefixes);
+        }
+
+        private boolean hasPrefixOf(final String value) {
+            for (final String prefix : prefixes) {
+                if (value.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isEmpty() {
+            return values.isEmpty() && prefixes.isEmpty();
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final Map<String, Node> prefixChildren = new HashMap<>();
+        /**
+         * The distinct lengths of the keys of {@link #prefixChildren}, in ascending order.
+         */
+        private int[] prefixLengths;
+        private Node any;
+        private List<Integer> building = new ArrayList<>();
+        private int[] ordinals;
+
+        private void insert(final Candidate candidate, final int depth) {
+            if (depth == DIMENSIONS.length) {
+                building.add(candidate.ordinal);
+                return;
+            }
+            final Constraint constraint = candidate.constraints[depth];
+            if (constraint == null) {
+                if (any == null) {
+                    any = new Node();
+                }
+                any.insert(candidate, depth + 1);
+            } else {
+                for (final String value : constraint.values) {
+                    children.computeIfAbsent(value, v -> new Node()).insert(candidate, depth + 1);
+                }
+                for (final String prefix : constraint.prefixes) {
+                    prefixChildren.computeIfAbsent(prefix, v -> new Node()).insert(candidate, depth + 1);
+                }
+            }
+        }
+
+        private void freeze() {
+            ordinals = new int[building.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = building.get(i);
+            }
+            building = null;
+            prefixLengths = prefixChildren.keySet().stream().mapToInt(String::length).distinct().sorted().toArray();
+            children.values().forEach(Node::freeze);
+            prefixChildren.values().forEach(Node::freeze);
+            if (any != null) {
+                any.freeze();
+            }
+        }
+
+        private void collect(final Signature signature, final int depth, final List<int[]> lists) {
+            if (depth == DIMENSIONS.length) {
+                if (ordinals.length > 0) {
+                    lists.add(ordinals);
+                }
+                return;
+            }
+            final String value = signature.values[depth];
+            if (value != null) {
+                final Node child = children.get(value);
+                if (child != null) {
+                    child.collect(signature, depth + 1, lists);
+                }
+                for (final int length : prefixLengths) {
+                    if (length > value.length()) {
+                        break;
+                    }
+                    final Node prefixChild = prefixChildren.get(value.substring(0, length));
+                    if (prefixChild != null) {
+                        prefixChild.collect(signature, depth + 1, lists);
+                    }
+                }
+            }
+            if (any != null) {
+                any.collect(signature, depth + 1, lists);
+            }
+        }
+    }
+
+    /**
+     * The values of the indexed fields of an event.
+     */
+    private static final class Signature {
+        private final String[] values = new String[DIMENSIONS.length];
+        private final int hashCode;
+
+        private Signature(final org.opennms.netmgt.xml.event.Event event) {
+            for (int i = 0; i < DIMENSIONS.length; i++) {
+                values[i] = FIELDS[i].get(event);
+            }
+            int hash = 1;
+            for (final String value : values) {
+                hash = 31 * hash + Objects.hashCode(value);
+            }
+            hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Signature)) return false;
+            final Signature that = (Signature) o;
+            for (int i = 0; i < DIMENSIONS.length; i++) {
+                if (!Objects.equals(values[i], that.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
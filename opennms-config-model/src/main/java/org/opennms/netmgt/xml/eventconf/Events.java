@@ -120,6 +120,12 @@ public class Events implements Serializable {
     @XmlTransient
     private EventOrdering m_ordering;
 
+    @XmlTransient
+    private transient volatile CompiledEventConf m_compiledEventConf;
+
+    @XmlTransient
+    private transient volatile int m_revision;
+
     public Global getGlobal() {
         return m_global;
     }
@@ -275,6 +281,11 @@ public class Events implements Serializable {
 
 
     public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final CompiledEventConf compiledEventConf = m_compiledEventConf;
+        if (compiledEventConf != null) {
+            return compiledEventConf.findFirstMatchingEvent(matchingEvent);
+        }
+
         // Atempt to match the event definition by UEI
         final String ueiToMatch = matchingEvent.getUei();
         if (ueiToMatch != null) {
@@ -347,6 +358,9 @@ public class Events implements Serializable {
     }
 
     public void initialize(final Partition partition, final EventOrdering eventOrdering) {
+        // Any previously compiled form is now stale
+        m_compiledEventConf = null;
+        m_revision++;
         m_ordering = eventOrdering;
 
         for (final Event event : m_events) {
@@ -371,6 +385,41 @@ public class Events implements Serializable {
         indexEventsByUei();
     }
 
+    /**
+     * Compiles the event definitions into an indexed form which is then used by
+     * {@link #findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}.
+     *
+     * This must be called after {@link #initialize(Partition, EventOrdering)}, and is
+     * discarded by any subsequent call to it.
+     */
+    public void compile() {
+        m_compiledEventConf = CompiledEventConf.compile(this);
+    }
+
+    public boolean isCompiled() {
+        return m_compiledEventConf != null;
+    }
+
+    /**
+     * Incremented every time the definitions are (re)initialized, so that callers
+     * holding on to lookup results can tell when these are stale.
+     */
+    public int getRevision() {
+        return m_revision;
+    }
+
+    Collection<Events> getLoadedEvents() {
+        return m_loadedEventFiles.values();
+    }
+
+    Map<String, Event> getEventsByUei() {
+        return m_eventsByUei;
+    }
+
+    Map<Event, List<String>> getOrderedDefinitions() {
+        return CompiledEventConf.orderDefinitions(m_nullPartitionedEvents, m_partitionedEvents);
+    }
+
     // Recurse through the configuration and return Event Definitions with priority > 0
     private List<Event> getPrioritizedEvents() {
         List<Event> prioritizedEvents = new ArrayList<Event>();
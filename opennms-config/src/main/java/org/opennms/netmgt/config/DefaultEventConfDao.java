@@ -63,6 +63,11 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	private static final Logger LOG = LoggerFactory.getLogger(DefaultEventConfDao.class);
 	private static final String DEFAULT_PROGRAMMATIC_STORE_RELATIVE_PATH = "events/programmatic.events.xml";
 
+	/**
+	 * System property used to fall back to searching the event definitions one by one.
+	 */
+	public static final String COMPILE_EVENTCONF_SYS_PROP = "org.opennms.eventconf.compile";
+
     /**
      * Relative URL for the programmatic store configuration, relative to the
      * root configuration resource (which must be resolvable to a URL).
@@ -83,6 +88,12 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	private ConfigReloadContainer<Events> m_extContainer;
 
+	/**
+	 * Whether or not the event definitions are compiled into an indexed form
+	 * used to match the events. See {@link org.opennms.netmgt.xml.eventconf.CompiledEventConf}.
+	 */
+	private boolean m_compileEventConf = Boolean.parseBoolean(System.getProperty(COMPILE_EVENTCONF_SYS_PROP, "true"));
+
 	public String getProgrammaticStoreRelativeUrl() {
 		return m_programmaticStoreRelativePath;
 	}
@@ -91,6 +102,14 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		m_programmaticStoreRelativePath = programmaticStoreRelativeUrl;
 	}
 
+	public boolean isCompileEventConf() {
+		return m_compileEventConf;
+	}
+
+	public void setCompileEventConf(boolean compileEventConf) {
+		m_compileEventConf = compileEventConf;
+	}
+
 	@Override
 	public void reload() throws DataAccessException {
 		try {
@@ -184,7 +203,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	@Override
 	public void addEvent(Event event) {
 		m_events.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
+		initialize(m_events);
 	}
 
 	@Override
@@ -196,7 +215,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		}
 
 		programmaticEvents.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
+		initialize(m_events);
 
 	}
 
@@ -210,7 +229,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 			m_events.removeLoadedEventFile(m_programmaticStoreRelativePath);
 		}
 
-		m_events.initialize(m_partition, new EventOrdering());
+		initialize(m_events);
 
 		return true;
 
@@ -312,7 +331,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
             events.loadEventFilesIfModified(m_configResource, m_lastModifiedEventFiles);
 
             // Order the events for efficient searching
-            events.initialize(m_partition, new EventOrdering());
+            initialize(events);
 
             m_events = events;
         } catch (Exception e) {
@@ -326,7 +345,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 			m_lastModifiedEventFiles = events.loadEventFiles(m_configResource);
 
 			m_partition = new EnterpriseIdPartition();
-			events.initialize(m_partition, new EventOrdering());
+			initialize(events);
 
 			m_events = events;
 		} catch (Exception e) {
@@ -334,6 +353,13 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		}
 	}
 
+    private void initialize(Events events) {
+        events.initialize(m_partition, new EventOrdering());
+        if (m_compileEventConf) {
+            events.compile();
+        }
+    }
+
     private void initExtensions() {
         m_extContainer = new ConfigReloadContainer.Builder<>(Events.class)
 				.withFolder((accumulator, next) -> accumulator.getEvents().addAll(next.getEvents()))
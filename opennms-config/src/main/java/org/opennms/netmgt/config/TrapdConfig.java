@@ -81,6 +81,14 @@ public interface TrapdConfig {
      */
     int getBatchIntervalMs();
 
+    /**
+     * Identical traps received from the same agent within this
+     * interval are folded into a single event.
+     *
+     * @return interval in ms, 0 if deduplication is disabled
+     */
+    int getDedupeWindowMs();
+
     void update(TrapdConfig config);
 
     boolean shouldUseAddressFromVarbind();
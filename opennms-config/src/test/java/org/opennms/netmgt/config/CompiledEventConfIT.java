@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.eventconf.EnterpriseIdPartition;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.EventOrdering;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.opennms.netmgt.xml.eventconf.Varbind;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Verifies that the compiled event configuration finds the same event definitions
+ * as the linear search.
+ *
+ * For every event definition, we generate a series of events that match (or nearly match)
+ * its mask and compare the results of both implementations.
+ */
+public class CompiledEventConfIT {
+
+    @Test
+    public void stockEventConfParity() throws Exception {
+        verifyParity(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+    }
+
+    @Test
+    public void matcherTestParity() throws Exception {
+        verifyParity(new FileSystemResource(new File("src/test/resources/matcher-test.events.xml")));
+    }
+
+    @Test
+    public void priorityParity() throws Exception {
+        verifyParity(new FileSystemResource(new File("src/test/resources/priority/eventconf.xml")));
+        verifyParity(new FileSystemResource(new File("src/test/resources/priority/eventconf2.xml")));
+        verifyParity(new FileSystemResource(new File("src/test/resources/priority/eventconf3.xml")));
+    }
+
+    @Test
+    public void programmaticStoreParity() throws Exception {
+        final Resource resource = new FileSystemResource(new File("src/test/resources/matcher-test.events.xml"));
+        final DefaultEventConfDao linear = load(resource, false);
+        final DefaultEventConfDao compiled = load(resource, true);
+
+        final Event event = new Event();
+        event.setUei("uei.opennms.org/test/programmatic");
+        linear.addEventToProgrammaticStore(event);
+        compiled.addEventToProgrammaticStore(event);
+        assertTrue(compiled.getRootEvents().isCompiled());
+
+        final org.opennms.netmgt.xml.event.Event matchingEvent = event("uei.opennms.org/test/programmatic", null, null, null);
+        assertSame(linear.findByEvent(matchingEvent), compiled.findByEvent(matchingEvent));
+
+        // Re-initializing the events directly discards the compiled form
+        compiled.getRootEvents().initialize(new EnterpriseIdPartition(), new EventOrdering());
+        assertFalse(compiled.getRootEvents().isCompiled());
+        assertSame(linear.findByEvent(matchingEvent), compiled.findByEvent(matchingEvent));
+    }
+
+    @Test
+    public void prefixMaskParity() {
+        final Events root = new Events();
+        root.addEvent(definition("uei.opennms.org/test/prefix",
+                maskElement(Maskelement.TAG_UEI, "uei.opennms.org/vendor/a%"),
+                maskElement(Maskelement.TAG_SNMP_SPECIFIC, "1")));
+        root.addEvent(definition("uei.opennms.org/test/nested",
+                maskElement(Maskelement.TAG_UEI, "uei.opennms.org/vendor/a/b%")));
+        root.addEvent(definition("uei.opennms.org/test/exact",
+                maskElement(Maskelement.TAG_UEI, "uei.opennms.org/vendor/a/c")));
+        root.addEvent(definition("uei.opennms.org/test/mixed",
+                maskElement(Maskelement.TAG_UEI, "uei.opennms.org/other%", "uei.opennms.org/vendor/z"),
+                maskElement(Maskelement.TAG_SNMP_SPECIFIC, "2%")));
+        root.initialize(new EnterpriseIdPartition(), new EventOrdering());
+
+        final List<org.opennms.netmgt.xml.event.Event> events = new ArrayList<>();
+        for (final String uei : new String[] { "uei.opennms.org/vendor/a", "uei.opennms.org/vendor/a/b/x", "uei.opennms.org/vendor/a/c",
+                "uei.opennms.org/vendor/ab", "uei.opennms.org/other/x", "uei.opennms.org/vendor/z", "uei.opennms.org/vendor", "unrelated" }) {
+            for (final int specific : new int[] { 1, 2, 21, 3 }) {
+                events.add(event(uei, null, 6, specific));
+            }
+        }
+
+        final List<Event> expected = new ArrayList<>();
+        for (final org.opennms.netmgt.xml.event.Event event : events) {
+            expected.add(root.findFirstMatchingEvent(event));
+        }
+        for (final String uei : new String[] { "/prefix", "/nested", "/exact", "/mixed" }) {
+            assertTrue("No event matched " + uei, expected.stream().anyMatch(e -> e != null && e.getUei().endsWith(uei)));
+        }
+
+        root.compile();
+        assertTrue(root.isCompiled());
+        for (int i = 0; i < events.size(); i++) {
+            // Once without and once with the cache
+            assertSame("Mismatch for " + events.get(i), expected.get(i), root.findFirstMatchingEvent(events.get(i)));
+            assertSame("Mismatch (cached) for " + events.get(i), expected.get(i), root.findFirstMatchingEvent(events.get(i)));
+        }
+    }
+
+    private static Maskelement maskElement(final String name, final String... values) {
+        final Maskelement element = new Maskelement();
+        element.setMename(name);
+        for (final String value : values) {
+            element.addMevalue(value);
+        }
+        return element;
+    }
+
+    private static Event definition(final String uei, final Maskelement... elements) {
+        final Mask mask = new Mask();
+        for (final Maskelement element : elements) {
+            mask.addMaskelement(element);
+        }
+        final Event definition = new Event();
+        definition.setUei(uei);
+        definition.setMask(mask);
+        return definition;
+    }
+
+    private static void verifyParity(final Resource resource) throws Exception {
+        final DefaultEventConfDao linear = load(resource, false);
+        final DefaultEventConfDao compiled = load(resource, true);
+        assertFalse(linear.getRootEvents().isCompiled());
+        assertTrue(compiled.getRootEvents().isCompiled());
+
+        int numEvents = 0;
+        for (final Event eventConf : linear.getAllEvents()) {
+            for (final org.opennms.netmgt.xml.event.Event event : eventsFor(eventConf)) {
+                final Event expected = linear.findByEvent(event);
+                // Once without and once with the cache
+                assertSame("Mismatch for " + event + " generated from " + eventConf, expected, compiled.findByEvent(event));
+                assertSame("Mismatch (cached) for " + event + " generated from " + eventConf, expected, compiled.findByEvent(event));
+                numEvents++;
+            }
+        }
+        assertTrue(numEvents > 0);
+        assertEquals(linear.getAllEvents().size(), compiled.getAllEvents().size());
+    }
+
+    private static DefaultEventConfDao load(final Resource resource, final boolean compile) throws Exception {
+        final DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setCompileEventConf(compile);
+        eventConfDao.setConfigResource(resource);
+        eventConfDao.afterPropertiesSet();
+        return eventConfDao;
+    }
+
+    /**
+     * Generates events derived from the mask of the given event definition.
+     */
+    private static List<org.opennms.netmgt.xml.event.Event> eventsFor(final Event eventConf) {
+        final List<org.opennms.netmgt.xml.event.Event> events = new ArrayList<>();
+
+        // Events with the UEI only
+        events.add(event(eventConf.getUei(), null, null, null));
+
+        if (eventConf.getMask() == null) {
+            return events;
+        }
+
+        // Events built from the mask, with and without the UEI
+        final org.opennms.netmgt.xml.event.Event fromMask = event(null, null, null, null);
+        for (final Maskelement maskElement : eventConf.getMask().getMaskelements()) {
+            final String value = sampleValue(maskElement.getMevalues());
+            if (value != null) {
+                apply(fromMask, maskElement.getMename(), value);
+            }
+        }
+        for (final Varbind varbind : eventConf.getMask().getVarbinds()) {
+            final String value = sampleValue(varbind.getVbvalues());
+            if (varbind.getVbnumber() != null && value != null) {
+                setVarbind(fromMask, varbind.getVbnumber(), value);
+            }
+        }
+        events.add(fromMask);
+        events.add(copy(fromMask, eventConf.getUei()));
+
+        // Near misses: change the specific trap number and the varbinds
+        final org.opennms.netmgt.xml.event.Event otherSpecific = copy(fromMask, null);
+        if (otherSpecific.getSnmp() != null && otherSpecific.getSnmp().hasSpecific()) {
+            otherSpecific.getSnmp().setSpecific(otherSpecific.getSnmp().getSpecific() + 1);
+            events.add(otherSpecific);
+        }
+        for (final Varbind varbind : eventConf.getMask().getVarbinds()) {
+            if (varbind.getVbnumber() != null) {
+                final org.opennms.netmgt.xml.event.Event otherVarbind = copy(fromMask, null);
+                setVarbind(otherVarbind, varbind.getVbnumber(), "no-such-value");
+                events.add(otherVarbind);
+            }
+        }
+
+        // Without any SNMP information
+        final org.opennms.netmgt.xml.event.Event noSnmp = copy(fromMask, null);
+        noSnmp.setSnmp(null);
+        events.add(noSnmp);
+
+        return events;
+    }
+
+    private static String sampleValue(final List<String> values) {
+        for (final String value : values) {
+            if (value == null || value.startsWith("~")) {
+                continue;
+            }
+            if (value.endsWith("%")) {
+                return value.substring(0, value.length() - 1) + "1";
+            }
+            return value;
+        }
+        return null;
+    }
+
+    private static void apply(final org.opennms.netmgt.xml.event.Event event, final String name, final String value) {
+        try {
+            switch (name) {
+                case Maskelement.TAG_UEI: event.setUei(value); break;
+                case Maskelement.TAG_SOURCE: event.setSource(value); break;
+                case Maskelement.TAG_NODEID: event.setNodeid(Long.parseLong(value)); break;
+                case Maskelement.TAG_HOST: event.setHost(value); break;
+                case Maskelement.TAG_INTERFACE: event.setInterface(value); break;
+                case Maskelement.TAG_SNMPHOST: event.setSnmphost(value); break;
+                case Maskelement.TAG_SERVICE: event.setService(value); break;
+                case Maskelement.TAG_SNMP_EID: snmp(event).setId(value); break;
+                case Maskelement.TAG_SNMP_COMMUNITY: snmp(event).setCommunity(value); break;
+                case Maskelement.TAG_SNMP_GENERIC: snmp(event).setGeneric(Integer.parseInt(value)); break;
+                case Maskelement.TAG_SNMP_SPECIFIC: snmp(event).setSpecific(Integer.parseInt(value)); break;
+                default:
+                    if (name.startsWith("parm[") && name.endsWith("]")) {
+                        event.addParm(new Parm(name.substring(5, name.length() - 1), value));
+                    }
+            }
+        } catch (final NumberFormatException e) {
+            // Leave the field unset
+        }
+    }
+
+    private static Snmp snmp(final org.opennms.netmgt.xml.event.Event event) {
+        if (event.getSnmp() == null) {
+            event.setSnmp(new Snmp());
+        }
+        return event.getSnmp();
+    }
+
+    private static void setVarbind(final org.opennms.netmgt.xml.event.Event event, final int vbnumber, final String value) {
+        final List<Parm> parms = new ArrayList<>(event.getParmCollection());
+        while (parms.size() < vbnumber) {
+            parms.add(new Parm(".1.3.6.1.4.1.5813.20." + (parms.size() + 1), "0"));
+        }
+        parms.set(vbnumber - 1, new Parm(".1.3.6.1.4.1.5813.20." + vbnumber, value));
+        event.setParmCollection(parms);
+    }
+
+    private static org.opennms.netmgt.xml.event.Event event(final String uei, final String id, final Integer generic, final Integer specific) {
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setUei(uei);
+        event.setSource("CompiledEventConfIT");
+        if (id != null || generic != null || specific != null) {
+            final Snmp snmp = snmp(event);
+            snmp.setId(id);
+            snmp.setGeneric(generic);
+            snmp.setSpecific(specific);
+        }
+        return event;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event copy(final org.opennms.netmgt.xml.event.Event source, final String uei) {
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setUei(uei != null ? uei : source.getUei());
+        event.setSource(source.getSource());
+        event.setNodeid(source.getNodeid());
+        event.setHost(source.getHost());
+        event.setInterface(source.getInterface());
+        event.setSnmphost(source.getSnmphost());
+        event.setService(source.getService());
+        if (source.getSnmp() != null) {
+            final Snmp snmp = snmp(event);
+            snmp.setId(source.getSnmp().getId());
+            snmp.setCommunity(source.getSnmp().getCommunity());
+            snmp.setGeneric(source.getSnmp().hasGeneric() ? source.getSnmp().getGeneric() : null);
+            snmp.setSpecific(source.getSnmp().hasSpecific() ? source.getSnmp().getSpecific() : null);
+        }
+        event.setParmCollection(source.getParmCollection());
+        return event;
+    }
+}
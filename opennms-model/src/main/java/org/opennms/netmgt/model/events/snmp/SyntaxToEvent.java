@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.model.events.snmp;
 
+import java.util.regex.Pattern;
+
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.snmp.SnmpValue;
 import org.opennms.netmgt.xml.event.Parm;
@@ -41,6 +43,9 @@ public class SyntaxToEvent {
 
     String m_type;
 
+    /** Varbinds with names matching this pattern are encoded as MAC addresses */
+    private static final Pattern MAC_ADDRESS_NAME = Pattern.compile(".*[Mm][Aa][Cc].*");
+
     /** Constant <code>m_syntaxToEvents</code> */
     public static SyntaxToEvent[] m_syntaxToEvents;
 
@@ -104,35 +109,33 @@ public class SyntaxToEvent {
      * @return a {@link org.opennms.netmgt.xml.event.Parm} object.
      */
     public static Parm processSyntax(final String name, final SnmpValue value) {
-    	final Value val = new Value();
+        return processSyntax(name, getTypeFor(value.getType()), getDisplayableEncodingFor(name), value);
+    }
 
-        boolean found = false;
-        for (int i = 0; i < m_syntaxToEvents.length; i++) {
-            if (m_syntaxToEvents[i].getTypeId() == -1 || m_syntaxToEvents[i].getTypeId() == value.getType()) {
-                val.setType(m_syntaxToEvents[i].getType());
-                String encoding = null;
-                if (value.isDisplayable()) {
-                    if (name.matches(".*[Mm][Aa][Cc].*")) {
-                        encoding = EventConstants.XML_ENCODING_MAC_ADDRESS;
-                    } else {
-                        encoding = EventConstants.XML_ENCODING_TEXT;
-                    }
-                } else {
-                    if (value.getBytes().length == 6) {
-                        encoding = EventConstants.XML_ENCODING_MAC_ADDRESS;
-                    } else {
-                        encoding = EventConstants.XML_ENCODING_BASE64;
-                    }
-                }
-                val.setEncoding(encoding);
-                val.setContent(EventConstants.toString(encoding, value));
-                found = true;
-                break;
-            }
-        }
-        if (!found) {
-            throw new IllegalStateException("Internal error: fell through the " + "bottom of the loop.  The syntax-to-events array might not have a " + "catch-all for Object");
+    /**
+     * Converts a varbind into an event parameter, using the event type and the
+     * encoding of displayable values that were resolved ahead of time with
+     * {@link #getTypeFor(int)} and {@link #getDisplayableEncodingFor(String)}.
+     *
+     * @param name the name of the varbind
+     * @param type the event type of the syntax of the value
+     * @param displayableEncoding the encoding used if the value is displayable
+     * @param value the value of the varbind
+     * @return a {@link org.opennms.netmgt.xml.event.Parm} object.
+     */
+    public static Parm processSyntax(final String name, final String type, final String displayableEncoding, final SnmpValue value) {
+        final Value val = new Value();
+        val.setType(type);
+        final String encoding;
+        if (value.isDisplayable()) {
+            encoding = displayableEncoding;
+        } else if (value.getBytes().length == 6) {
+            encoding = EventConstants.XML_ENCODING_MAC_ADDRESS;
+        } else {
+            encoding = EventConstants.XML_ENCODING_BASE64;
         }
+        val.setEncoding(encoding);
+        val.setContent(EventConstants.toString(encoding, value));
 
         final Parm parm = new Parm();
         parm.setParmName(name);
@@ -140,4 +143,29 @@ public class SyntaxToEvent {
 
         return parm;
     }
+
+    /**
+     * <p>getTypeFor</p>
+     *
+     * @param typeId the SNMP syntax of a value
+     * @return the event type values of this syntax are converted to
+     */
+    public static String getTypeFor(final int typeId) {
+        for (int i = 0; i < m_syntaxToEvents.length; i++) {
+            if (m_syntaxToEvents[i].getTypeId() == -1 || m_syntaxToEvents[i].getTypeId() == typeId) {
+                return m_syntaxToEvents[i].getType();
+            }
+        }
+        throw new IllegalStateException("Internal error: fell through the " + "bottom of the loop.  The syntax-to-events array might not have a " + "catch-all for Object");
+    }
+
+    /**
+     * <p>getDisplayableEncodingFor</p>
+     *
+     * @param name the name of a varbind
+     * @return the encoding of the displayable values of this varbind
+     */
+    public static String getDisplayableEncodingFor(final String name) {
+        return MAC_ADDRESS_NAME.matcher(name).matches() ? EventConstants.XML_ENCODING_MAC_ADDRESS : EventConstants.XML_ENCODING_TEXT;
+    }
 }
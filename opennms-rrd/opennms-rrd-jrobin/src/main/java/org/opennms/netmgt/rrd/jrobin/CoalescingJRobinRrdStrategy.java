@@ -0,0 +1,725 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jrobin.core.RrdBackendFactory;
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.jrobin.core.RrdException;
+import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdGraphDetails;
+import org.opennms.netmgt.rrd.RrdStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JRobin based RrdStrategy that buffers updates per file and writes them
+ * in batches.
+ *
+ * Files are spread across a fixed number of write threads by name. Each
+ * write thread keeps the pending updates of its files in arrival order and
+ * a bounded LRU of open {@link RrdDb} instances, so a file that is written
+ * every collection interval stays open and all of its pending samples are
+ * applied in a single open/update sequence. Files whose number of pending
+ * updates reaches <code>maxPendingUpdates</code> are written first, the
+ * remaining files are written once their oldest pending update is older
+ * than <code>maxPendingAge</code> milliseconds.
+ *
+ * The open files use the <code>backendFactory</code> JRobin backend, NIO
+ * (memory mapped) by default, which leaves it to the backend to sync the
+ * dirty pages when the file is evicted from the LRU. An open file is
+ * reopened when the file on disk was replaced, e.g. deleted and created
+ * again, since the open handle would keep writing to the removed file.
+ *
+ * Coalescing only pays off when several samples of a file are pending at
+ * once, so <code>maxPendingAge</code> has to span a few collection steps:
+ * the default of 15 minutes holds three samples of the usual 5 minute step.
+ * The trade-off is that up to <code>maxPendingAge</code> of samples are only
+ * held in memory and are lost if OpenNMS does not shut down cleanly. Reads
+ * of a file through this strategy flush its pending updates first.
+ *
+ * Likewise, the LRU only saves re-opening a file when it can hold every file
+ * written within one <code>maxPendingAge</code> window. Otherwise each file
+ * is evicted before it is written again and every write opens and syncs it,
+ * so <code>openFiles</code> should be set to at least the number of RRD files
+ * being updated, within the open file limit of the process. Evictions of
+ * files that were written within the window are counted as thrashing and
+ * logged.
+ *
+ * This strategy does its own queuing and should be used with
+ * <code>org.opennms.rrd.usequeue=false</code>.
+ */
+public class CoalescingJRobinRrdStrategy implements RrdStrategy<RrdDef,String> {
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingJRobinRrdStrategy.class);
+
+    private static final String PROPERTY_PREFIX = "org.opennms.rrd.jrobin.coalescing.";
+    public static final String WRITE_THREADS_PROPERTY = PROPERTY_PREFIX + "writeThreads";
+    public static final String OPEN_FILES_PROPERTY = PROPERTY_PREFIX + "openFiles";
+    public static final String MAX_PENDING_UPDATES_PROPERTY = PROPERTY_PREFIX + "maxPendingUpdates";
+    public static final String MAX_PENDING_AGE_PROPERTY = PROPERTY_PREFIX + "maxPendingAge";
+    public static final String BACKEND_FACTORY_PROPERTY = PROPERTY_PREFIX + "backendFactory";
+
+    private static final int DEFAULT_WRITE_THREADS = 2;
+    private static final int DEFAULT_OPEN_FILES = 16384;
+    private static final int DEFAULT_MAX_PENDING_UPDATES = 4;
+    /* three samples of a 5 minute step */
+    private static final long DEFAULT_MAX_PENDING_AGE = 900000;
+    private static final String DEFAULT_BACKEND_FACTORY = "NIO";
+
+    private final JRobinRrdStrategy m_delegate;
+
+    private Properties m_configurationProperties;
+
+    private int m_writeThreads = DEFAULT_WRITE_THREADS;
+    private int m_openFiles = DEFAULT_OPEN_FILES;
+    private int m_maxPendingUpdates = DEFAULT_MAX_PENDING_UPDATES;
+    private long m_maxPendingAge = DEFAULT_MAX_PENDING_AGE;
+    private String m_backendFactoryName = DEFAULT_BACKEND_FACTORY;
+
+    private RrdBackendFactory m_backendFactory;
+    private Shard[] m_shards;
+
+    private final AtomicLong m_updatesEnqueued = new AtomicLong();
+    private final AtomicLong m_updatesPending = new AtomicLong();
+    private final AtomicLong m_updatesWritten = new AtomicLong();
+    private final AtomicLong m_fileWrites = new AtomicLong();
+    private final AtomicLong m_backendOpens = new AtomicLong();
+    private final AtomicLong m_backendEvictions = new AtomicLong();
+    private final AtomicLong m_backendThrashes = new AtomicLong();
+    private final AtomicLong m_errors = new AtomicLong();
+
+    /**
+     * The updates waiting to be written to a single file.
+     */
+    private static class PendingFile {
+        private final String m_fileName;
+        private final long m_firstEnqueued;
+        private final List<String> m_updates = new ArrayList<>(4);
+        private boolean m_dirty = false;
+        /* set when the file was created since the write thread last took it */
+        private boolean m_created = false;
+
+        private PendingFile(final String fileName, final long firstEnqueued) {
+            m_fileName = fileName;
+            m_firstEnqueued = firstEnqueued;
+        }
+    }
+
+    /**
+     * A file in the LRU of a write thread.
+     */
+    private static class OpenFile {
+        private final RrdDb m_rrd;
+        /* identifies the file on disk the handle was opened for */
+        private final Object m_identity;
+        private long m_lastWritten;
+
+        private OpenFile(final RrdDb rrd, final Object identity) {
+            m_rrd = rrd;
+            m_identity = identity;
+        }
+    }
+
+    /**
+     * The pending updates and open files of a single write thread.
+     */
+    private class Shard implements Runnable {
+        /* guards m_pending, m_dirty, m_created, m_inFlight and m_running */
+        private final Object m_lock = new Object();
+        /* insertion order is the order of the oldest pending update */
+        private final Map<String, PendingFile> m_pending = new LinkedHashMap<>();
+        private final Deque<PendingFile> m_dirty = new ArrayDeque<>();
+        private final Set<String> m_created = new HashSet<>();
+        private String m_inFlight;
+        private boolean m_running = true;
+
+        /* only used by the write thread */
+        private final LinkedHashMap<String, OpenFile> m_open;
+
+        private final Thread m_thread;
+
+        private Shard(final int index, final int openFiles) {
+            m_open = new LinkedHashMap<String, OpenFile>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, OpenFile> eldest) {
+                    if (size() <= openFiles) {
+                        return false;
+                    }
+                    close(eldest.getKey(), eldest.getValue().m_rrd);
+                    m_backendEvictions.incrementAndGet();
+                    if (System.currentTimeMillis() - eldest.getValue().m_lastWritten < m_maxPendingAge) {
+                        // the file will most likely be written again before it would have been evicted
+                        if (m_backendThrashes.getAndIncrement() == 0) {
+                            LOG.warn("Write thread {} evicted file {} within {}ms of writing it, the {} open files do not hold all of the files being written. Increase {}.",
+                                     m_thread.getName(), eldest.getKey(), m_maxPendingAge, m_openFiles, OPEN_FILES_PROPERTY);
+                        }
+                    }
+                    return true;
+                }
+            };
+            m_thread = new Thread(this, "CoalescingRrdWriter-" + index);
+            m_thread.setDaemon(true);
+        }
+
+        private void enqueue(final String fileName, final String update) {
+            synchronized (m_lock) {
+                PendingFile file = m_pending.get(fileName);
+                if (file == null) {
+                    file = new PendingFile(fileName, System.currentTimeMillis());
+                    m_pending.put(fileName, file);
+                    if (m_pending.size() == 1) {
+                        m_lock.notifyAll();
+                    }
+                }
+                file.m_updates.add(update);
+                if (!file.m_dirty && file.m_updates.size() >= m_maxPendingUpdates) {
+                    file.m_dirty = true;
+                    m_dirty.addLast(file);
+                    m_lock.notifyAll();
+                }
+            }
+        }
+
+        private void promote(final String fileName) {
+            synchronized (m_lock) {
+                final PendingFile file = m_pending.get(fileName);
+                if (file != null) {
+                    // may already be queued further back, take() skips the stale entry
+                    file.m_dirty = true;
+                    m_dirty.addFirst(file);
+                    m_lock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits until all updates enqueued for the given file so far have
+         * been written.
+         */
+        private void flush(final String fileName) throws InterruptedException {
+            promote(fileName);
+            synchronized (m_lock) {
+                while (m_running && (m_pending.containsKey(fileName) || fileName.equals(m_inFlight))) {
+                    m_lock.wait();
+                }
+            }
+        }
+
+        /**
+         * Makes the write thread reopen the file before writing to it again.
+         */
+        private void created(final String fileName) {
+            synchronized (m_lock) {
+                m_created.add(fileName);
+            }
+        }
+
+        private int getPendingFiles() {
+            synchronized (m_lock) {
+                return m_pending.size();
+            }
+        }
+
+        private void stop() {
+            synchronized (m_lock) {
+                m_running = false;
+                m_lock.notifyAll();
+            }
+        }
+
+        /**
+         * Returns the next file to write: dirty files first, then the file
+         * with the oldest pending update once it has aged out. Everything
+         * is drained without waiting once the shard is stopped.
+         */
+        private PendingFile take() throws InterruptedException {
+            synchronized (m_lock) {
+                m_inFlight = null;
+                m_lock.notifyAll();
+                while (true) {
+                    PendingFile file;
+                    while ((file = m_dirty.pollFirst()) != null) {
+                        if (m_pending.remove(file.m_fileName, file)) {
+                            return inFlight(file);
+                        }
+                    }
+                    final Iterator<PendingFile> oldest = m_pending.values().iterator();
+                    if (oldest.hasNext()) {
+                        file = oldest.next();
+                        final long wait = file.m_firstEnqueued + m_maxPendingAge - System.currentTimeMillis();
+                        if (wait <= 0 || !m_running) {
+                            oldest.remove();
+                            return inFlight(file);
+                        }
+                        m_lock.wait(wait);
+                    } else if (m_running) {
+                        m_lock.wait();
+                    } else {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        private PendingFile inFlight(final PendingFile file) {
+            m_inFlight = file.m_fileName;
+            file.m_created = m_created.remove(file.m_fileName);
+            return file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                PendingFile file;
+                while ((file = take()) != null) {
+                    write(file);
+                }
+            } catch (final InterruptedException e) {
+                LOG.warn("Write thread {} interrupted, pending updates will not be written.", m_thread.getName());
+                Thread.currentThread().interrupt();
+            } finally {
+                for (final Map.Entry<String, OpenFile> entry : m_open.entrySet()) {
+                    close(entry.getKey(), entry.getValue().m_rrd);
+                }
+                m_open.clear();
+                synchronized (m_lock) {
+                    m_running = false;
+                    m_inFlight = null;
+                    m_lock.notifyAll();
+                }
+            }
+        }
+
+        private void write(final PendingFile file) {
+            final int count = file.m_updates.size();
+            try {
+                OpenFile open = m_open.get(file.m_fileName);
+                if (open != null && (file.m_created || !open.m_identity.equals(identify(file.m_fileName)))) {
+                    LOG.debug("File {} was replaced since it was opened, reopening it.", file.m_fileName);
+                    m_open.remove(file.m_fileName);
+                    close(file.m_fileName, open.m_rrd);
+                    open = null;
+                }
+                if (open == null) {
+                    // identify the file first, if it is replaced while being opened the next write reopens it
+                    final Object identity = identify(file.m_fileName);
+                    open = new OpenFile(new RrdDb(file.m_fileName, m_backendFactory), identity);
+                    m_backendOpens.incrementAndGet();
+                    m_open.put(file.m_fileName, open);
+                }
+                open.m_lastWritten = System.currentTimeMillis();
+                final RrdDb rrd = open.m_rrd;
+
+                int written = 0;
+                for (final String update : file.m_updates) {
+                    try {
+                        rrd.createSample().setAndUpdate(update);
+                        written++;
+                    } catch (final RrdException | RuntimeException e) {
+                        // most likely a sample that is not newer than the last one, the others may still apply
+                        m_errors.incrementAndGet();
+                        LOG.debug("Error processing update for file {}: {}", file.m_fileName, update, e);
+                    }
+                }
+                m_updatesWritten.addAndGet(written);
+                m_fileWrites.incrementAndGet();
+            } catch (final IOException | RrdException e) {
+                m_errors.incrementAndGet();
+                LOG.warn("Failed to write {} pending updates to file {}.", count, file.m_fileName, e);
+                final OpenFile open = m_open.remove(file.m_fileName);
+                if (open != null) {
+                    close(file.m_fileName, open.m_rrd);
+                }
+            } finally {
+                m_updatesPending.addAndGet(-count);
+            }
+        }
+    }
+
+    /**
+     * <p>Constructor for CoalescingJRobinRrdStrategy.</p>
+     *
+     * @throws java.lang.Exception if any.
+     */
+    public CoalescingJRobinRrdStrategy() throws Exception {
+        m_delegate = new JRobinRrdStrategy();
+    }
+
+    /**
+     * <p>getConfigurationProperties</p>
+     *
+     * @return a {@link java.util.Properties} object.
+     */
+    public Properties getConfigurationProperties() {
+        return m_configurationProperties;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void setConfigurationProperties(final Properties configurationParameters) {
+        m_configurationProperties = configurationParameters;
+        m_delegate.setConfigurationProperties(configurationParameters);
+        if (configurationParameters == null) {
+            return;
+        }
+        m_writeThreads = getIntProperty(configurationParameters, WRITE_THREADS_PROPERTY, DEFAULT_WRITE_THREADS);
+        m_openFiles = getIntProperty(configurationParameters, OPEN_FILES_PROPERTY, DEFAULT_OPEN_FILES);
+        m_maxPendingUpdates = getIntProperty(configurationParameters, MAX_PENDING_UPDATES_PROPERTY, DEFAULT_MAX_PENDING_UPDATES);
+        m_maxPendingAge = getIntProperty(configurationParameters, MAX_PENDING_AGE_PROPERTY, (int)DEFAULT_MAX_PENDING_AGE);
+        m_backendFactoryName = configurationParameters.getProperty(BACKEND_FACTORY_PROPERTY, DEFAULT_BACKEND_FACTORY);
+    }
+
+    private static int getIntProperty(final Properties properties, final String name, final int defaultValue) {
+        final String value = properties.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (final NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for {}, using {}.", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private synchronized Shard[] getShards() {
+        if (m_shards == null) {
+            try {
+                m_backendFactory = RrdBackendFactory.getFactory(m_backendFactoryName);
+            } catch (final RrdException e) {
+                LOG.warn("JRobin backend factory {} is not available, using the default factory.", m_backendFactoryName, e);
+                m_backendFactory = RrdBackendFactory.getDefaultFactory();
+            }
+
+            final Shard[] shards = new Shard[m_writeThreads];
+            final int openFilesPerShard = Math.max(1, m_openFiles / m_writeThreads);
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard(i, openFilesPerShard);
+                shards[i].m_thread.start();
+            }
+            m_shards = shards;
+
+            Runtime.getRuntime().addShutdownHook(new Thread("CoalescingRrdWriter-shutdown") {
+                @Override
+                public void run() {
+                    shutdown();
+                }
+            });
+            LOG.info("Started {} coalescing write threads with {} open files each using the {} backend.", shards.length, openFilesPerShard, m_backendFactory.getFactoryName());
+        }
+        return m_shards;
+    }
+
+    private Shard getShard(final String fileName) {
+        final Shard[] shards = getShards();
+        return shards[(fileName.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    /**
+     * Returns the identity of the file on disk, its inode where the file
+     * system has one and otherwise its creation time.
+     */
+    private static Object identify(final String fileName) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(Paths.get(fileName), BasicFileAttributes.class);
+        final Object fileKey = attributes.fileKey();
+        return fileKey != null ? fileKey : attributes.creationTime();
+    }
+
+    private static void close(final String fileName, final RrdDb rrd) {
+        try {
+            rrd.close();
+        } catch (final IOException e) {
+            LOG.error("Failed to close rrd file: {}", fileName, e);
+        }
+    }
+
+    /**
+     * Writes all pending updates, closes all open files and stops the write
+     * threads. Updates enqueued afterwards are not written.
+     */
+    public void shutdown() {
+        final Shard[] shards;
+        synchronized (this) {
+            shards = m_shards;
+        }
+        if (shards == null) {
+            return;
+        }
+        for (final Shard shard : shards) {
+            shard.stop();
+        }
+        for (final Shard shard : shards) {
+            try {
+                shard.m_thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDefaultFileExtension() {
+        return m_delegate.getDefaultFileExtension();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RrdDef createDefinition(final String creator, final String directory, final String rrdName, final int step, final List<RrdDataSource> dataSources, final List<String> rraList) throws Exception {
+        return m_delegate.createDefinition(creator, directory, rrdName, step, dataSources, rraList);
+    }
+
+    /**
+     * Creates the file right away, updates to it are then buffered. A handle
+     * to a previous file with the same name is closed before the next write.
+     *
+     * @param rrdDef a {@link RrdDef} object.
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void createFile(final RrdDef rrdDef) throws Exception {
+        m_delegate.createFile(rrdDef);
+        if (rrdDef != null) {
+            getShard(rrdDef.getPath()).created(rrdDef.getPath());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The file is opened by the write thread, this just returns its name.
+     */
+    @Override
+    public String openFile(final String fileName) throws Exception {
+        return fileName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Buffers the update for the file's write thread.
+     */
+    @Override
+    public void updateFile(final String fileName, final String owner, final String data) throws Exception {
+        m_updatesEnqueued.incrementAndGet();
+        m_updatesPending.incrementAndGet();
+        getShard(fileName).enqueue(fileName, data);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Files stay open in the write thread's LRU, so there is nothing to close.
+     */
+    @Override
+    public void closeFile(final String fileName) throws Exception {
+    }
+
+    /**
+     * Writes the pending updates of the file before reading it.
+     */
+    private void flush(final String fileName) throws org.opennms.netmgt.rrd.RrdException {
+        try {
+            getShard(fileName).flush(fileName);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new org.opennms.netmgt.rrd.RrdException("Interrupted while writing pending updates to " + fileName, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValue(final String fileName, final String ds, final int interval) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
+        flush(fileName);
+        return m_delegate.fetchLastValue(fileName, ds, interval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValue(final String fileName, final String ds, final String consolidationFunction, final int interval) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
+        flush(fileName);
+        return m_delegate.fetchLastValue(fileName, ds, consolidationFunction, interval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
+        flush(fileName);
+        return m_delegate.fetchLastValueInRange(fileName, ds, interval, range);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InputStream createGraph(final String command, final File workDir) throws IOException, org.opennms.netmgt.rrd.RrdException {
+        return m_delegate.createGraph(command, workDir);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RrdGraphDetails createGraphReturnDetails(final String command, final File workDir) throws IOException, org.opennms.netmgt.rrd.RrdException {
+        return m_delegate.createGraphReturnDetails(command, workDir);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphLeftOffset() {
+        return m_delegate.getGraphLeftOffset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphRightOffset() {
+        return m_delegate.getGraphRightOffset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphTopOffsetWithText() {
+        return m_delegate.getGraphTopOffsetWithText();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Moves the given files to the front of the write queue.
+     */
+    @Override
+    public void promoteEnqueuedFiles(final Collection<String> rrdFiles) {
+        for (final String fileName : rrdFiles) {
+            getShard(fileName).promote(fileName);
+        }
+    }
+
+    /**
+     * <p>getPendingFiles</p>
+     *
+     * @return the number of files with updates waiting to be written
+     */
+    public int getPendingFiles() {
+        int pending = 0;
+        for (final Shard shard : getShards()) {
+            pending += shard.getPendingFiles();
+        }
+        return pending;
+    }
+
+    /**
+     * <p>getPendingUpdates</p>
+     *
+     * @return the number of updates waiting to be written
+     */
+    public long getPendingUpdates() {
+        return m_updatesPending.get();
+    }
+
+    public long getUpdatesEnqueued() {
+        return m_updatesEnqueued.get();
+    }
+
+    public long getUpdatesWritten() {
+        return m_updatesWritten.get();
+    }
+
+    /**
+     * <p>getFileWrites</p>
+     *
+     * @return the number of batches written, one per file and flush
+     */
+    public long getFileWrites() {
+        return m_fileWrites.get();
+    }
+
+    /**
+     * <p>getBackendOpens</p>
+     *
+     * @return the number of times a file had to be opened because it was not in the LRU
+     */
+    public long getBackendOpens() {
+        return m_backendOpens.get();
+    }
+
+    public long getBackendEvictions() {
+        return m_backendEvictions.get();
+    }
+
+    /**
+     * <p>getBackendThrashes</p>
+     *
+     * @return the number of files evicted from the LRU within <code>maxPendingAge</code> of being written
+     */
+    public long getBackendThrashes() {
+        return m_backendThrashes.get();
+    }
+
+    public long getErrors() {
+        return m_errors.get();
+    }
+
+    /**
+     * Returns the number of file writes per written update. The plain
+     * {@link JRobinRrdStrategy} opens, writes and closes the file for every
+     * update, which is a write amplification of 1.
+     *
+     * @return a double, 0 until the first update has been written
+     */
+    public double getWriteAmplification() {
+        final long updates = m_updatesWritten.get();
+        return updates == 0 ? 0.0 : (double)m_fileWrites.get() / updates;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getStats() {
+        return String.format("pendingFiles=%d pendingUpdates=%d updatesEnqueued=%d updatesWritten=%d fileWrites=%d backendOpens=%d backendEvictions=%d errors=%d writeAmplification=%.3f",
+                             getPendingFiles(), getPendingUpdates(), getUpdatesEnqueued(), getUpdatesWritten(), getFileWrites(),
+                             getBackendOpens(), getBackendEvictions(), getErrors(), getWriteAmplification());
+    }
+}
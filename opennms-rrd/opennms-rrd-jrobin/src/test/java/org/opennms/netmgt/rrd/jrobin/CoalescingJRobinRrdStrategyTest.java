@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.rrd.RrdAttributeType;
+import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.test.FileAnticipator;
+
+public class CoalescingJRobinRrdStrategyTest {
+
+    private static final String RRD_FILE_BASE = "foo";
+
+    private CoalescingJRobinRrdStrategy m_strategy;
+    private FileAnticipator m_fileAnticipator;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true, "DEBUG");
+
+        // Only write when asked to
+        final Properties props = new Properties();
+        props.setProperty(CoalescingJRobinRrdStrategy.WRITE_THREADS_PROPERTY, "1");
+        props.setProperty(CoalescingJRobinRrdStrategy.MAX_PENDING_UPDATES_PROPERTY, "1000");
+        props.setProperty(CoalescingJRobinRrdStrategy.MAX_PENDING_AGE_PROPERTY, "3600000");
+
+        m_strategy = new CoalescingJRobinRrdStrategy();
+        m_strategy.setConfigurationProperties(props);
+
+        m_fileAnticipator = new FileAnticipator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_strategy.shutdown();
+        m_fileAnticipator.deleteExpected();
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testUpdatesAreCoalescedUntilRead() throws Exception {
+        final File rrdFile = createRrdFile();
+        final String fileName = m_strategy.openFile(rrdFile.getAbsolutePath());
+        final long endTime = enqueueUpdates(fileName, 10);
+        m_strategy.closeFile(fileName);
+
+        assertEquals(1, m_strategy.getPendingFiles());
+        assertEquals(10, m_strategy.getPendingUpdates());
+        assertEquals(0, m_strategy.getFileWrites());
+
+        // Reading the file writes its pending updates first
+        assertEquals(Double.valueOf(42.0), m_strategy.fetchLastValueInRange(fileName, "bar", 300000, 3600000));
+        assertEquals(0, m_strategy.getPendingFiles());
+        assertEquals(0, m_strategy.getPendingUpdates());
+        assertEquals(10, m_strategy.getUpdatesWritten());
+        assertEquals(1, m_strategy.getFileWrites());
+        assertEquals(1, m_strategy.getBackendOpens());
+        assertEquals(0.1, m_strategy.getWriteAmplification(), 0.0001);
+        assertEquals(0, m_strategy.getErrors());
+
+        // The file stays open for the next batch
+        m_strategy.updateFile(fileName, "test", (endTime + 300) + ":42.0");
+        m_strategy.fetchLastValueInRange(fileName, "bar", 300000, 3600000);
+        assertEquals(2, m_strategy.getFileWrites());
+        assertEquals(1, m_strategy.getBackendOpens());
+    }
+
+    @Test
+    public void testPromotedFilesAreWritten() throws Exception {
+        final File rrdFile = createRrdFile();
+        final String fileName = m_strategy.openFile(rrdFile.getAbsolutePath());
+        enqueueUpdates(fileName, 5);
+
+        m_strategy.promoteEnqueuedFiles(Collections.singletonList(fileName));
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (m_strategy.getPendingUpdates() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, m_strategy.getPendingUpdates());
+        assertEquals(5, m_strategy.getUpdatesWritten());
+        assertEquals(1, m_strategy.getFileWrites());
+    }
+
+    @Test
+    public void testShutdownWritesPendingUpdates() throws Exception {
+        final File rrdFile = createRrdFile();
+        final String fileName = m_strategy.openFile(rrdFile.getAbsolutePath());
+        final long endTime = enqueueUpdates(fileName, 3);
+
+        // Out of order samples are counted and skipped
+        m_strategy.updateFile(fileName, "test", (endTime - 300) + ":1.0");
+
+        m_strategy.shutdown();
+        assertEquals(0, m_strategy.getPendingUpdates());
+        assertEquals(3, m_strategy.getUpdatesWritten());
+        assertEquals(1, m_strategy.getErrors());
+        assertTrue(m_strategy.getStats().contains("writeAmplification="));
+
+        final RrdDb rrd = new RrdDb(fileName, true);
+        try {
+            assertEquals(endTime, rrd.getLastUpdateTime());
+        } finally {
+            rrd.close();
+        }
+    }
+
+    @Test
+    public void testReplacedFilesAreReopened() throws Exception {
+        final File rrdFile = createRrdFile();
+        final String fileName = m_strategy.openFile(rrdFile.getAbsolutePath());
+        final long endTime = enqueueUpdates(fileName, 3);
+        m_strategy.fetchLastValueInRange(fileName, "bar", 300000, 3600000);
+        assertEquals(1, m_strategy.getBackendOpens());
+
+        // The open handle would keep writing to the deleted file
+        assertTrue(rrdFile.delete());
+        m_strategy.createFile(createRrdDefinition());
+        m_strategy.updateFile(fileName, "test", (endTime + 300) + ":7.0");
+        m_strategy.fetchLastValueInRange(fileName, "bar", 300000, 3600000);
+        assertEquals(2, m_strategy.getBackendOpens());
+
+        m_strategy.shutdown();
+        assertEquals(0, m_strategy.getErrors());
+        final RrdDb rrd = new RrdDb(fileName, true);
+        try {
+            assertEquals(endTime + 300, rrd.getLastUpdateTime());
+        } finally {
+            rrd.close();
+        }
+    }
+
+    @Test
+    public void testEvictingRecentlyWrittenFilesIsCountedAsThrashing() throws Exception {
+        m_strategy.shutdown();
+        final Properties props = new Properties();
+        props.setProperty(CoalescingJRobinRrdStrategy.WRITE_THREADS_PROPERTY, "1");
+        props.setProperty(CoalescingJRobinRrdStrategy.OPEN_FILES_PROPERTY, "1");
+        props.setProperty(CoalescingJRobinRrdStrategy.MAX_PENDING_UPDATES_PROPERTY, "1000");
+        props.setProperty(CoalescingJRobinRrdStrategy.MAX_PENDING_AGE_PROPERTY, "3600000");
+        m_strategy = new CoalescingJRobinRrdStrategy();
+        m_strategy.setConfigurationProperties(props);
+
+        final String first = m_strategy.openFile(createRrdFile(RRD_FILE_BASE).getAbsolutePath());
+        final String second = m_strategy.openFile(createRrdFile("bar").getAbsolutePath());
+        enqueueUpdates(first, 1);
+        m_strategy.fetchLastValueInRange(first, "bar", 300000, 3600000);
+        enqueueUpdates(second, 1);
+        m_strategy.fetchLastValueInRange(second, "bar", 300000, 3600000);
+
+        // The LRU cannot hold both files, so the first one is evicted right after being written
+        assertEquals(2, m_strategy.getBackendOpens());
+        assertEquals(1, m_strategy.getBackendEvictions());
+        assertEquals(1, m_strategy.getBackendThrashes());
+    }
+
+    private long enqueueUpdates(final String fileName, final int count) throws Exception {
+        long endTime = System.currentTimeMillis() / 1000;
+        endTime -= (endTime % 300);
+        long sampleTime = endTime - ((count - 1) * 300);
+        for (int i = 0; i < count; i++) {
+            m_strategy.updateFile(fileName, "test", sampleTime + ":42.0");
+            sampleTime += 300;
+        }
+        return endTime;
+    }
+
+    private File createRrdFile() throws Exception {
+        return createRrdFile(RRD_FILE_BASE);
+    }
+
+    private File createRrdFile(final String base) throws Exception {
+        m_strategy.createFile(createRrdDefinition(base));
+
+        return m_fileAnticipator.expecting(base + m_strategy.getDefaultFileExtension());
+    }
+
+    private RrdDef createRrdDefinition() throws Exception {
+        return createRrdDefinition(RRD_FILE_BASE);
+    }
+
+    private RrdDef createRrdDefinition(final String base) throws Exception {
+        final List<RrdDataSource> dataSources = new ArrayList<>();
+        dataSources.add(new RrdDataSource("bar", RrdAttributeType.GAUGE, 3000, "U", "U"));
+        final List<String> rraList = new ArrayList<>();
+        rraList.add("RRA:AVERAGE:0.5:1:2016");
+        return m_strategy.createDefinition("hello!", m_fileAnticipator.getTempDir().getAbsolutePath(), base, 300, dataSources, rraList);
+    }
+}
@@ -30,6 +30,9 @@ package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.ScheduleLagHistogram;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
@@ -134,6 +137,8 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
     public long getTaskQueuePendingCount() {
         if (getThreadPoolStatsStatus()) {
             return getExecutor().getQueue().size();
+        } else if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getQueued();
         } else {
             return 0L;
         }
@@ -153,6 +158,32 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
         return getDaemon().getCollectableServiceCount();
     }
     
+    @Override
+    public long getScheduleLagMedian() {
+        final ScheduleLagHistogram lag = getLagHistogram();
+        return lag == null ? 0L : lag.getPercentile(50);
+    }
+
+    @Override
+    public long getScheduleLag99thPercentile() {
+        final ScheduleLagHistogram lag = getLagHistogram();
+        return lag == null ? 0L : lag.getPercentile(99);
+    }
+
+    @Override
+    public long getScheduleLagMax() {
+        final ScheduleLagHistogram lag = getLagHistogram();
+        return lag == null ? 0L : lag.getMax();
+    }
+
+    private ScheduleLagHistogram getLagHistogram() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getLagHistogram();
+        }
+        return null;
+    }
+
     private ThreadPoolExecutor getExecutor() {
         return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
     }
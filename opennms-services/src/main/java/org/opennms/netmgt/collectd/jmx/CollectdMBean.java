@@ -91,4 +91,19 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of pending tasks
      */
     public long getTaskQueueRemainingCapacity();
+
+    /**
+     * @return The median delay in milliseconds between the time a task was due and the time it started, 0 if unknown
+     */
+    public long getScheduleLagMedian();
+
+    /**
+     * @return The 99th percentile of the delay in milliseconds between the time a task was due and the time it started, 0 if unknown
+     */
+    public long getScheduleLag99thPercentile();
+
+    /**
+     * @return The largest delay in milliseconds between the time a task was due and the time it started, 0 if unknown
+     */
+    public long getScheduleLagMax();
 }
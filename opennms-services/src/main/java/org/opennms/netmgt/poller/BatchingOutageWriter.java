@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+
+/**
+ * Groups the outage updates and events generated by service transitions
+ * into batches.
+ *
+ * Operations and events are queued by the pollers and written by a single
+ * thread: everything queued within a window of {@link #getWindowMillis()}
+ * (or up to {@link #getMaxBatchSize()} entries) is applied to the database
+ * with one call to {@link QueryManager#applyOutageOperations(List)} and the
+ * events are then sent to the event bus as a single {@link Log}. Entries are
+ * processed in the order in which they were queued, so that events are
+ * never sent before the outages queued ahead of them have been committed.
+ *
+ * When a batch fails, its operations are retried one at a time with the
+ * regular {@link QueryManager} methods so that a single bad entry does not
+ * discard the rest of the batch.
+ */
+public class BatchingOutageWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingOutageWriter.class);
+
+    /**
+     * Time in milliseconds to wait for more entries before writing a batch.
+     * Batching is disabled when this is 0, which is the default.
+     */
+    public static final String WINDOW_PROPERTY = "org.opennms.netmgt.poller.outageBatch.window";
+
+    public static final String MAX_BATCH_SIZE_PROPERTY = "org.opennms.netmgt.poller.outageBatch.maxSize";
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    private final QueryManager m_queryManager;
+    private final EventForwarder m_eventForwarder;
+    private final long m_windowMillis;
+    private final int m_maxBatchSize;
+
+    private final BlockingQueue<Entry> m_queue = new LinkedBlockingQueue<>();
+    private final Histogram m_latency = new Histogram(new ExponentiallyDecayingReservoir());
+    private final AtomicLong m_batches = new AtomicLong();
+    private final AtomicLong m_operations = new AtomicLong();
+    private final AtomicLong m_events = new AtomicLong();
+    private final AtomicLong m_failedBatches = new AtomicLong();
+
+    /** Held while writing, so that inline writes don't interleave with the writer thread */
+    private final Object m_writeLock = new Object();
+
+    private volatile Thread m_thread;
+    private volatile boolean m_running;
+
+    private static class Entry {
+        private final OutageOperation operation;
+        private final Event event;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+
+        private Entry(final OutageOperation operation, final Event event) {
+            this.operation = operation;
+            this.event = event;
+        }
+
+        /** A barrier carries neither an operation nor an event, and ends the batch. */
+        private boolean isBarrier() {
+            return operation == null && event == null;
+        }
+    }
+
+    public BatchingOutageWriter(final QueryManager queryManager, final EventForwarder eventForwarder, final long windowMillis, final int maxBatchSize) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        m_queryManager = Objects.requireNonNull(queryManager);
+        m_eventForwarder = Objects.requireNonNull(eventForwarder);
+        m_windowMillis = windowMillis;
+        m_maxBatchSize = maxBatchSize;
+    }
+
+    public synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        m_running = true;
+        m_thread = new Thread(this::run, "BatchingOutageWriter");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Stops the writer thread after writing everything that was queued.
+     */
+    public synchronized void stop() {
+        if (!m_running) {
+            return;
+        }
+        flush();
+        m_running = false;
+        m_thread.interrupt();
+        try {
+            m_thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        m_thread = null;
+        // Anything queued while stopping
+        writeRemaining();
+    }
+
+    /**
+     * Queues the given operation.
+     *
+     * @return a future completed with the outage id returned by
+     *         {@link QueryManager#applyOutageOperations(List)} once the
+     *         operation has been committed
+     */
+    public CompletableFuture<Integer> submit(final OutageOperation operation) {
+        return enqueue(new Entry(Objects.requireNonNull(operation), null));
+    }
+
+    /**
+     * Queues the given event, which is sent once the operations queued
+     * before it have been committed.
+     */
+    public void sendEvent(final Event event) {
+        enqueue(new Entry(null, Objects.requireNonNull(event)));
+    }
+
+    /**
+     * Blocks until everything queued before this call has been written.
+     */
+    public void flush() {
+        final CompletableFuture<Integer> barrier = enqueue(new Entry(null, null));
+        try {
+            barrier.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to flush the pending outage operations.", e.getCause());
+        }
+    }
+
+    private CompletableFuture<Integer> enqueue(final Entry entry) {
+        if (!m_running || Thread.currentThread() == m_thread && entry.isBarrier()) {
+            // Not started, or a flush from a completion callback: write what we have inline
+            m_queue.add(entry);
+            writeRemaining();
+        } else {
+            m_queue.add(entry);
+        }
+        return entry.future;
+    }
+
+    private void writeRemaining() {
+        synchronized (m_writeLock) {
+            final List<Entry> batch = new ArrayList<>();
+            while (m_queue.drainTo(batch) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void run() {
+        final List<Entry> batch = new ArrayList<>(m_maxBatchSize);
+        while (m_running) {
+            try {
+                final Entry first = m_queue.take();
+                batch.add(first);
+                final long deadline = first.enqueuedAt + TimeUnit.MILLISECONDS.toNanos(m_windowMillis);
+                while (batch.size() < m_maxBatchSize && !batch.get(batch.size() - 1).isBarrier()) {
+                    final long remaining = deadline - System.nanoTime();
+                    final Entry next = remaining > 0 ? m_queue.poll(remaining, TimeUnit.NANOSECONDS) : m_queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (!m_running) {
+                    break;
+                }
+            }
+            if (!batch.isEmpty()) {
+                synchronized (m_writeLock) {
+                    write(batch);
+                }
+                batch.clear();
+            }
+        }
+        // Write anything taken before we were interrupted
+        if (!batch.isEmpty()) {
+            synchronized (m_writeLock) {
+                write(batch);
+            }
+        }
+    }
+
+    private void write(final List<Entry> batch) {
+        final List<Entry> operations = new ArrayList<>();
+        final Log log = new Log();
+        for (final Entry entry : batch) {
+            if (entry.operation != null) {
+                operations.add(entry);
+            } else if (entry.event != null) {
+                log.addEvent(entry.event);
+            }
+        }
+
+        if (!operations.isEmpty()) {
+            final List<Integer> outageIds = apply(operations);
+            m_operations.addAndGet(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                operations.get(i).future.complete(outageIds.get(i));
+            }
+        }
+
+        if (log.getEvents() != null && log.getEvents().getEventCount() > 0) {
+            try {
+                m_eventForwarder.sendNow(log);
+                m_events.addAndGet(log.getEvents().getEventCount());
+            } catch (Exception e) {
+                LOG.error("Failed to send {} poller events.", log.getEvents().getEventCount(), e);
+            }
+        }
+
+        m_batches.incrementAndGet();
+        final long now = System.nanoTime();
+        for (final Entry entry : batch) {
+            if (!entry.isBarrier()) {
+                m_latency.update(TimeUnit.NANOSECONDS.toMillis(now - entry.enqueuedAt));
+            }
+            entry.future.complete(null);
+        }
+    }
+
+    private List<Integer> apply(final List<Entry> entries) {
+        final List<OutageOperation> operations = new ArrayList<>(entries.size());
+        for (final Entry entry : entries) {
+            operations.add(entry.operation);
+        }
+        try {
+            final List<Integer> outageIds = m_queryManager.applyOutageOperations(operations);
+            if (outageIds != null && outageIds.size() == operations.size()) {
+                return outageIds;
+            }
+            LOG.warn("Expected {} results from the outage batch, but got {}. Applying the operations one at a time.",
+                    operations.size(), outageIds == null ? null : outageIds.size());
+        } catch (Exception e) {
+            LOG.warn("Failed to apply a batch of {} outage operations. Applying the operations one at a time.", operations.size(), e);
+        }
+        m_failedBatches.incrementAndGet();
+
+        final List<Integer> outageIds = new ArrayList<>(operations.size());
+        for (final OutageOperation operation : operations) {
+            try {
+                outageIds.add(applyOne(operation));
+            } catch (Exception e) {
+                LOG.error("Failed to apply outage operation {}.", operation, e);
+                outageIds.add(null);
+            }
+        }
+        return outageIds;
+    }
+
+    private Integer applyOne(final OutageOperation op) {
+        switch (op.getType()) {
+        case OPEN:
+            return m_queryManager.openOutagePendingLostEventId(op.getNodeId(), op.getIpAddr(), op.getSvcName(), op.getDate());
+        case RESOLVE:
+            return m_queryManager.resolveOutagePendingRegainEventId(op.getNodeId(), op.getIpAddr(), op.getSvcName(), op.getDate());
+        case SET_LOST_EVENT:
+            m_queryManager.updateOpenOutageWithEventId(op.getOutageId(), op.getEventId());
+            return op.getOutageId();
+        case SET_REGAINED_EVENT:
+            m_queryManager.updateResolvedOutageWithEventId(op.getOutageId(), op.getEventId());
+            return op.getOutageId();
+        default:
+            throw new IllegalArgumentException("Unsupported operation: " + op);
+        }
+    }
+
+    public long getWindowMillis() {
+        return m_windowMillis;
+    }
+
+    public int getMaxBatchSize() {
+        return m_maxBatchSize;
+    }
+
+    /**
+     * @return the number of entries waiting to be written
+     */
+    public int getPending() {
+        return m_queue.size();
+    }
+
+    public long getBatchesWritten() {
+        return m_batches.get();
+    }
+
+    public long getOperationsWritten() {
+        return m_operations.get();
+    }
+
+    public long getEventsSent() {
+        return m_events.get();
+    }
+
+    public long getFailedBatches() {
+        return m_failedBatches.get();
+    }
+
+    /**
+     * @return the time in milliseconds between queuing an entry and
+     *         committing or sending it
+     */
+    public Histogram getLatencyHistogram() {
+        return m_latency;
+    }
+}
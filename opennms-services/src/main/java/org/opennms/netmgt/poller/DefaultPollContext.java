@@ -102,6 +102,9 @@ public class DefaultPollContext implements PollContext, EventListener {
     private volatile String m_localHostName;
     private volatile boolean m_listenerAdded = false;
     private final Queue<PendingPollEvent> m_pendingPollEvents = new ConcurrentLinkedQueue<>();
+    private final boolean m_asyncPollingEnabled = Boolean.getBoolean(Poller.ASYNC_POLLING_PROPERTY);
+    private final long m_outageBatchWindow = Long.getLong(BatchingOutageWriter.WINDOW_PROPERTY, 0L);
+    private volatile BatchingOutageWriter m_outageWriter;
 
     /**
      * <p>getEventManager</p>
@@ -255,10 +258,48 @@ public class DefaultPollContext implements PollContext, EventListener {
         m_pendingPollEvents.add(pollEvent);
 
         //log().info("Sending "+event.getUei()+" for element "+event.getNodeid()+":"+event.getInterface()+":"+event.getService(), new Exception("StackTrace"));
-        getEventManager().sendNow(event);
+        final BatchingOutageWriter outageWriter = getOutageWriter();
+        if (outageWriter != null) {
+            outageWriter.sendEvent(event);
+        } else {
+            getEventManager().sendNow(event);
+        }
         return pollEvent;
     }
 
+    /**
+     * Returns the writer used to batch outage updates and events, or null if
+     * batching is disabled, see {@link BatchingOutageWriter#WINDOW_PROPERTY}.
+     */
+    public BatchingOutageWriter getOutageWriter() {
+        if (m_outageBatchWindow <= 0) {
+            return null;
+        }
+        BatchingOutageWriter outageWriter = m_outageWriter;
+        if (outageWriter == null) {
+            synchronized (this) {
+                outageWriter = m_outageWriter;
+                if (outageWriter == null) {
+                    LOG.info("Batching outage updates and events every {}ms", m_outageBatchWindow);
+                    outageWriter = new BatchingOutageWriter(getQueryManager(), getEventManager(), m_outageBatchWindow,
+                            Integer.getInteger(BatchingOutageWriter.MAX_BATCH_SIZE_PROPERTY, BatchingOutageWriter.DEFAULT_MAX_BATCH_SIZE));
+                    outageWriter.start();
+                    m_outageWriter = outageWriter;
+                }
+            }
+        }
+        return outageWriter;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flushPendingWrites() {
+        final BatchingOutageWriter outageWriter = m_outageWriter;
+        if (outageWriter != null) {
+            outageWriter.flush();
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.opennms.netmgt.poller.pollables.PollContext#createEvent(java.lang.String, int, java.net.InetAddress, java.lang.String, java.util.Date)
      */
@@ -314,9 +355,31 @@ public class DefaultPollContext implements PollContext, EventListener {
     /** {@inheritDoc} */
     @Override
     public void openOutage(final PollableService svc, final PollEvent svcLostEvent) {
+        final BatchingOutageWriter outageWriter = getOutageWriter();
+        if (outageWriter != null) {
+            // Open the outage with the next batch
+            outageWriter.submit(OutageOperation.open(svc.getNodeId(), svc.getIpAddr(), svc.getSvcName(), svcLostEvent.getDate()))
+                .thenAccept(outageId -> outageOpened(svc, svcLostEvent, outageId))
+                .whenComplete((v, t) -> {
+                    if (t != null) {
+                        LOG.error("openOutage: failed to open outage for: {} on {}", svc.getSvcName(), svc.getIpAddr(), t);
+                    }
+                });
+            return;
+        }
+
         // Open the outage immediately
         final Integer outageId = getQueryManager().openOutagePendingLostEventId(svc.getNodeId(),
                 svc.getIpAddr(), svc.getSvcName(), svcLostEvent.getDate());
+        outageOpened(svc, svcLostEvent, outageId);
+    }
+
+    private void outageOpened(final PollableService svc, final PollEvent svcLostEvent, final Integer outageId) {
+        final BatchingOutageWriter outageWriter = getOutageWriter();
+        if (outageWriter != null && outageId == null) {
+            LOG.warn("openOutage: no outage was opened for {} on {} with node id {}", svc.getSvcName(), svc.getIpAddr(), svc.getNodeId());
+            return;
+        }
 
         // Defer updating the outage with the event id until we receive back
         // from the event bus
@@ -324,7 +387,9 @@ public class DefaultPollContext implements PollContext, EventListener {
             @Override
             public void run() {
                 final int eventId = svcLostEvent.getEventId();
-                if (eventId > 0) {
+                if (eventId > 0 && outageWriter != null) {
+                    outageWriter.submit(OutageOperation.setLostEvent(outageId, eventId));
+                } else if (eventId > 0) {
                     getQueryManager().updateOpenOutageWithEventId(outageId, eventId);
                 } else {
                     LOG.warn("run: Failed to determine an eventId for service lost for: {} with event: {}", svc, svcLostEvent);
@@ -347,9 +412,27 @@ public class DefaultPollContext implements PollContext, EventListener {
     /** {@inheritDoc} */
     @Override
     public void resolveOutage(final PollableService svc, final PollEvent svcRegainEvent) {
+        final BatchingOutageWriter outageWriter = getOutageWriter();
+        if (outageWriter != null) {
+            // Resolve the outage with the next batch
+            outageWriter.submit(OutageOperation.resolve(svc.getNodeId(), svc.getIpAddr(), svc.getSvcName(), svcRegainEvent.getDate()))
+                .thenAccept(outageId -> outageResolved(svc, svcRegainEvent, outageId))
+                .whenComplete((v, t) -> {
+                    if (t != null) {
+                        LOG.error("resolveOutage: failed to resolve outage for: {} on {}", svc.getSvcName(), svc.getIpAddr(), t);
+                    }
+                });
+            return;
+        }
+
         // Resolve the outage immediately
         final Integer outageId = getQueryManager().resolveOutagePendingRegainEventId(svc.getNodeId(),
                 svc.getIpAddr(), svc.getSvcName(), svcRegainEvent.getDate());
+        outageResolved(svc, svcRegainEvent, outageId);
+    }
+
+    private void outageResolved(final PollableService svc, final PollEvent svcRegainEvent, final Integer outageId) {
+        final BatchingOutageWriter outageWriter = getOutageWriter();
 
         // There may be no outage for this particular service. This can happen when interfaces
         // are reparented or when a node gains a new service while down.
@@ -364,7 +447,9 @@ public class DefaultPollContext implements PollContext, EventListener {
             @Override
             public void run() {
                 final int eventId = svcRegainEvent.getEventId();
-                if (eventId > 0) {
+                if (eventId > 0 && outageWriter != null) {
+                    outageWriter.submit(OutageOperation.setRegainedEvent(outageId, eventId));
+                } else if (eventId > 0) {
                     getQueryManager().updateResolvedOutageWithEventId(outageId, eventId);
                 } else {
                     LOG.warn("run: Failed to determine an eventId for service regained for: {} with event: {}", svc, svcRegainEvent);
@@ -394,6 +479,12 @@ public class DefaultPollContext implements PollContext, EventListener {
         return getPollerConfig().isServiceUnresponsiveEnabled();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean isAsyncPollingEnabled() {
+        return m_asyncPollingEnabled;
+    }
+
     /* (non-Javadoc)
      * @see org.opennms.netmgt.eventd.EventListener#onEvent(org.opennms.netmgt.events.api.model.IEvent)
      */
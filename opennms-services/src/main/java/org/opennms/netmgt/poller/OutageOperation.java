@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * A change to the outages table queued by the {@link BatchingOutageWriter}
+ * and applied with {@link QueryManager#applyOutageOperations(java.util.List)}.
+ */
+public class OutageOperation {
+
+    public enum Type {
+        /** Open an outage for a service, see {@link QueryManager#openOutagePendingLostEventId(int, String, String, Date)} */
+        OPEN,
+        /** Resolve the current outage of a service, see {@link QueryManager#resolveOutagePendingRegainEventId(int, String, String, Date)} */
+        RESOLVE,
+        /** See {@link QueryManager#updateOpenOutageWithEventId(int, int)} */
+        SET_LOST_EVENT,
+        /** See {@link QueryManager#updateResolvedOutageWithEventId(int, int)} */
+        SET_REGAINED_EVENT
+    }
+
+    private final Type m_type;
+    private final int m_nodeId;
+    private final String m_ipAddr;
+    private final String m_svcName;
+    private final Date m_date;
+    private final int m_outageId;
+    private final int m_eventId;
+
+    private OutageOperation(final Type type, final int nodeId, final String ipAddr, final String svcName, final Date date, final int outageId, final int eventId) {
+        m_type = Objects.requireNonNull(type);
+        m_nodeId = nodeId;
+        m_ipAddr = ipAddr;
+        m_svcName = svcName;
+        m_date = date;
+        m_outageId = outageId;
+        m_eventId = eventId;
+    }
+
+    public static OutageOperation open(final int nodeId, final String ipAddr, final String svcName, final Date lostTime) {
+        return new OutageOperation(Type.OPEN, nodeId, ipAddr, svcName, lostTime, 0, 0);
+    }
+
+    public static OutageOperation resolve(final int nodeId, final String ipAddr, final String svcName, final Date regainedTime) {
+        return new OutageOperation(Type.RESOLVE, nodeId, ipAddr, svcName, regainedTime, 0, 0);
+    }
+
+    public static OutageOperation setLostEvent(final int outageId, final int lostEventId) {
+        return new OutageOperation(Type.SET_LOST_EVENT, 0, null, null, null, outageId, lostEventId);
+    }
+
+    public static OutageOperation setRegainedEvent(final int outageId, final int regainedEventId) {
+        return new OutageOperation(Type.SET_REGAINED_EVENT, 0, null, null, null, outageId, regainedEventId);
+    }
+
+    public Type getType() {
+        return m_type;
+    }
+
+    public int getNodeId() {
+        return m_nodeId;
+    }
+
+    public String getIpAddr() {
+        return m_ipAddr;
+    }
+
+    public String getSvcName() {
+        return m_svcName;
+    }
+
+    public Date getDate() {
+        return m_date;
+    }
+
+    public int getOutageId() {
+        return m_outageId;
+    }
+
+    public int getEventId() {
+        return m_eventId;
+    }
+
+    @Override
+    public String toString() {
+        switch (m_type) {
+        case OPEN:
+        case RESOLVE:
+            return m_type + "[" + m_nodeId + ":" + m_ipAddr + ":" + m_svcName + " @ " + m_date + "]";
+        default:
+            return m_type + "[outage=" + m_outageId + ", event=" + m_eventId + "]";
+        }
+    }
+}
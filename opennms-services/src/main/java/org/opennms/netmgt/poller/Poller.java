@@ -60,7 +60,7 @@ import org.opennms.netmgt.poller.pollables.PollableService;
 import org.opennms.netmgt.poller.pollables.PollableServiceConfig;
 import org.opennms.netmgt.poller.pollables.PollableVisitor;
 import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.Schedulers;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
 import org.opennms.netmgt.threshd.api.ThresholdingService;
@@ -86,9 +86,15 @@ public class Poller extends AbstractServiceDaemon {
 
     private static final String LOG4J_CATEGORY = "poller";
 
+    /**
+     * When set to true, polls are started ahead of their execution through the
+     * monitors' non-blocking API and the scheduler threads only process their results.
+     */
+    public static final String ASYNC_POLLING_PROPERTY = "org.opennms.netmgt.poller.async";
+
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
 
     private PollerEventProcessor m_eventProcessor;
 
@@ -270,9 +276,9 @@ public class Poller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
@@ -335,7 +341,10 @@ public class Poller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating poller scheduler");
 
-            setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            // The legacy scheduler only checks the head of each interval queue for readiness,
+            // so a poll still in flight would hold back every service with the same interval
+            final String defaultType = Boolean.getBoolean(ASYNC_POLLING_PROPERTY) ? Schedulers.WHEEL : Schedulers.LEGACY;
+            setScheduler(Schedulers.newScheduler("Poller", getPollerConfig().getThreads(), defaultType));
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create poller scheduler", e);
             throw e;
@@ -369,6 +378,9 @@ public class Poller extends AbstractServiceDaemon {
         if(getScheduler()!=null) {
             getScheduler().stop();
         }
+        if(getNetwork()!=null && getNetwork().getContext()!=null) {
+            getNetwork().getContext().flushPendingWrites();
+        }
         if(getEventProcessor()!=null) {
             getEventProcessor().close();
         }
@@ -357,6 +357,7 @@ final class PollerEventProcessor implements EventListener {
 
         Date closeDate = event.getTime();
 
+        flushPendingWrites();
         getPoller().getQueryManager().closeOutagesForNode(closeDate, event.getDbid(), nodeId.intValue());
 
 
@@ -428,6 +429,7 @@ final class PollerEventProcessor implements EventListener {
 
         Date closeDate = event.getTime();
 
+        flushPendingWrites();
         getPoller().getQueryManager().closeOutagesForInterface(closeDate, event.getDbid(), nodeId.intValue(), str(ipAddr));
 
 
@@ -453,6 +455,7 @@ final class PollerEventProcessor implements EventListener {
 
         Date closeDate = event.getTime();
 
+        flushPendingWrites();
         getPoller().getQueryManager().closeOutagesForService(closeDate, event.getDbid(), nodeId.intValue(), str(ipAddr), service);
 
         PollableService svc = getNetwork().getService(nodeId.intValue(), ipAddr, service);
@@ -774,6 +777,7 @@ final class PollerEventProcessor implements EventListener {
 
     protected void closeOutagesForService(final IEvent event, final Long nodeId, final Date closeDate,
                                           final Service polledService) {
+        flushPendingWrites();
         getPoller().getQueryManager().closeOutagesForService(closeDate, event.getDbid(), nodeId.intValue(), polledService.getAddress(), polledService.getServiceName());
     }
 
@@ -795,6 +799,14 @@ final class PollerEventProcessor implements EventListener {
         return "Poller:PollerEventProcessor";
     }
 
+    /**
+     * Outages may still be queued by the poll context when batching is
+     * enabled. Write them before closing outages directly.
+     */
+    private void flushPendingWrites() {
+        getNetwork().getContext().flushPendingWrites();
+    }
+
     private Poller getPoller() {
         return m_poller;
     }
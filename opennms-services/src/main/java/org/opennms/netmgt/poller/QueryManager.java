@@ -78,6 +78,14 @@ public interface QueryManager {
      */
     void updateResolvedOutageWithEventId(int outageId, int regainedEventId);
 
+    /**
+     * Applies the given operations, in order, within a single transaction.
+     *
+     * @return the outage id affected by each operation, or null where the
+     *         operation found nothing to act on
+     */
+    List<Integer> applyOutageOperations(List<OutageOperation> operations);
+
     /**
      * @param nodeId
      * @return
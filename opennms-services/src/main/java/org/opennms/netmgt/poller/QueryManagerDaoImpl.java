@@ -32,12 +32,24 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.criteria.Alias;
 import org.opennms.core.criteria.Alias.JoinType;
@@ -58,6 +70,9 @@ import org.opennms.netmgt.model.OnmsOutage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionOperations;
 
@@ -85,6 +100,11 @@ public class QueryManagerDaoImpl implements QueryManager {
     @Autowired
     private TransactionOperations m_transcationOps;
 
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    private final AtomicLong m_outageStatements = new AtomicLong();
+
     /** {@inheritDoc} */
     @Override
     public String getNodeLabel(int nodeId) {
@@ -173,6 +193,273 @@ public class QueryManagerDaoImpl implements QueryManager {
         m_outageDao.saveOrUpdate(outage);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The operations are applied with plain JDBC instead of one Hibernate
+     * flush per outage. The services, outages and events referenced by the
+     * operations are looked up with one query each, and the ids of the new
+     * outages are allocated with a single query. The operations are then
+     * folded in memory, so an outage opened and resolved within the same batch
+     * is inserted once, already resolved. The new outages are written with one
+     * batched INSERT and the changed ones with one batched UPDATE.
+     */
+    @Override
+    public List<Integer> applyOutageOperations(List<OutageOperation> operations) {
+        if (operations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return m_transcationOps.execute(transactionStatus -> {
+            final Set<Integer> nodeIds = new HashSet<>();
+            final Set<Integer> outageIds = new HashSet<>();
+            final Set<Integer> eventIds = new HashSet<>();
+            for (final OutageOperation op : operations) {
+                switch (op.getType()) {
+                case OPEN:
+                case RESOLVE:
+                    nodeIds.add(op.getNodeId());
+                    break;
+                default:
+                    outageIds.add(op.getOutageId());
+                    eventIds.add(op.getEventId());
+                }
+            }
+            int numStatements = 0;
+
+            // Service ids by node/interface/service name
+            final Map<String, Integer> services = new HashMap<>();
+            if (!nodeIds.isEmpty()) {
+                m_jdbcTemplate.query(SELECT_SERVICES_SQL + "(" + placeholders(nodeIds.size()) + ")", (RowCallbackHandler) rs -> {
+                    services.put(serviceKey(rs.getInt(2), rs.getString(3), rs.getString(4)), rs.getInt(1));
+                }, nodeIds.toArray());
+                numStatements++;
+            }
+
+            // Currently open outages of these services, and the outages referenced by id
+            final Map<Integer, PendingOutage> openOutagesByService = new HashMap<>();
+            final Map<Integer, PendingOutage> outagesById = new HashMap<>();
+            if (!services.isEmpty() || !outageIds.isEmpty()) {
+                final List<String> conditions = new ArrayList<>(2);
+                final List<Object> args = new ArrayList<>(services.size() + outageIds.size());
+                if (!services.isEmpty()) {
+                    conditions.add("(perspective IS NULL AND ifRegainedService IS NULL AND ifServiceId IN (" + placeholders(services.size()) + "))");
+                    args.addAll(services.values());
+                }
+                if (!outageIds.isEmpty()) {
+                    conditions.add("outageId IN (" + placeholders(outageIds.size()) + ")");
+                    args.addAll(outageIds);
+                }
+                m_jdbcTemplate.query(SELECT_OUTAGES_SQL + String.join(" OR ", conditions), (RowCallbackHandler) rs -> {
+                    final PendingOutage outage = new PendingOutage(rs.getInt(1), rs.getInt(2), false);
+                    outagesById.put(outage.m_id, outage);
+                    if (rs.getTimestamp(3) == null && rs.getString(4) == null) {
+                        openOutagesByService.put(outage.m_serviceId, outage);
+                    }
+                }, args.toArray());
+                numStatements++;
+            }
+
+            final Set<Integer> events = new HashSet<>();
+            if (!eventIds.isEmpty()) {
+                events.addAll(m_jdbcTemplate.queryForList("SELECT eventId FROM events WHERE eventId IN (" + placeholders(eventIds.size()) + ")",
+                        Integer.class, eventIds.toArray()));
+                numStatements++;
+            }
+
+            int numOpens = 0;
+            for (final OutageOperation op : operations) {
+                if (op.getType() == OutageOperation.Type.OPEN && services.containsKey(serviceKey(op.getNodeId(), op.getIpAddr(), op.getSvcName()))) {
+                    numOpens++;
+                }
+            }
+            final Iterator<Integer> newOutageIds;
+            if (numOpens > 0) {
+                newOutageIds = m_jdbcTemplate.queryForList("SELECT nextval('outageNxtId') FROM generate_series(1, ?)", Integer.class, numOpens).iterator();
+                numStatements++;
+            } else {
+                newOutageIds = Collections.emptyIterator();
+            }
+
+            final List<PendingOutage> inserts = new ArrayList<>();
+            final Set<PendingOutage> updates = new LinkedHashSet<>();
+            final List<Integer> outageIdsByOperation = new ArrayList<>(operations.size());
+            for (final OutageOperation op : operations) {
+                LOG.debug("applying {}", op);
+                switch (op.getType()) {
+                case OPEN: {
+                    final Integer serviceId = services.get(serviceKey(op.getNodeId(), op.getIpAddr(), op.getSvcName()));
+                    if (serviceId == null) {
+                        LOG.warn("Failed to open an outage for {}:{}:{} @ {}. The service could not be found.",
+                                op.getNodeId(), op.getIpAddr(), op.getSvcName(), op.getDate());
+                        outageIdsByOperation.add(null);
+                        break;
+                    }
+                    final PendingOutage outage = new PendingOutage(newOutageIds.next(), serviceId, true);
+                    outage.m_lost = op.getDate();
+                    openOutagesByService.put(serviceId, outage);
+                    outagesById.put(outage.m_id, outage);
+                    inserts.add(outage);
+                    outageIdsByOperation.add(outage.m_id);
+                    break;
+                }
+                case RESOLVE: {
+                    final Integer serviceId = services.get(serviceKey(op.getNodeId(), op.getIpAddr(), op.getSvcName()));
+                    if (serviceId == null) {
+                        LOG.warn("Failed to resolve the pending outage for {}:{}:{} @ {}. The service could not be found.",
+                                op.getNodeId(), op.getIpAddr(), op.getSvcName(), op.getDate());
+                        outageIdsByOperation.add(null);
+                        break;
+                    }
+                    final PendingOutage outage = openOutagesByService.remove(serviceId);
+                    if (outage == null) {
+                        outageIdsByOperation.add(null);
+                        break;
+                    }
+                    outage.m_regained = op.getDate();
+                    if (!outage.m_new) {
+                        updates.add(outage);
+                    }
+                    outageIdsByOperation.add(outage.m_id);
+                    break;
+                }
+                case SET_LOST_EVENT:
+                case SET_REGAINED_EVENT: {
+                    final PendingOutage outage = outagesById.get(op.getOutageId());
+                    if (outage == null) {
+                        LOG.warn("Failed to update outage {} with event id {}. The outage no longer exists.",
+                                op.getOutageId(), op.getEventId());
+                        outageIdsByOperation.add(null);
+                        break;
+                    }
+                    if (!events.contains(op.getEventId())) {
+                        LOG.warn("Failed to update outage {} with event id {}. The event no longer exists.",
+                                op.getOutageId(), op.getEventId());
+                    } else if (op.getType() == OutageOperation.Type.SET_LOST_EVENT) {
+                        outage.m_lostEventId = op.getEventId();
+                    } else {
+                        outage.m_regainedEventId = op.getEventId();
+                    }
+                    if (!outage.m_new) {
+                        updates.add(outage);
+                    }
+                    outageIdsByOperation.add(outage.m_id);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unsupported operation: " + op);
+                }
+            }
+
+            if (!inserts.isEmpty()) {
+                m_jdbcTemplate.batchUpdate(INSERT_OUTAGE_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        final PendingOutage outage = inserts.get(i);
+                        ps.setInt(1, outage.m_id);
+                        ps.setInt(2, outage.m_serviceId);
+                        ps.setTimestamp(3, toTimestamp(outage.m_lost));
+                        setInteger(ps, 4, outage.m_lostEventId);
+                        ps.setTimestamp(5, toTimestamp(outage.m_regained));
+                        setInteger(ps, 6, outage.m_regainedEventId);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return inserts.size();
+                    }
+                });
+                numStatements++;
+            }
+
+            if (!updates.isEmpty()) {
+                final List<PendingOutage> changed = new ArrayList<>(updates);
+                m_jdbcTemplate.batchUpdate(UPDATE_OUTAGE_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        final PendingOutage outage = changed.get(i);
+                        ps.setTimestamp(1, toTimestamp(outage.m_regained));
+                        setInteger(ps, 2, outage.m_lostEventId);
+                        setInteger(ps, 3, outage.m_regainedEventId);
+                        ps.setInt(4, outage.m_id);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return changed.size();
+                    }
+                });
+                numStatements++;
+            }
+
+            LOG.debug("applied {} outage operations with {} statements", operations.size(), numStatements);
+            m_outageStatements.addAndGet(numStatements);
+            return outageIdsByOperation;
+        });
+    }
+
+    /**
+     * The number of statements issued by {@link #applyOutageOperations(List)} so far.
+     */
+    public long getOutageStatementCount() {
+        return m_outageStatements.get();
+    }
+
+    private static final String SELECT_SERVICES_SQL = "SELECT ifServices.id, ipInterface.nodeId, ipInterface.ipAddr, service.serviceName " +
+            "FROM ifServices " +
+            "JOIN ipInterface ON ifServices.ipInterfaceId = ipInterface.id " +
+            "JOIN service ON ifServices.serviceId = service.serviceId " +
+            "WHERE ipInterface.nodeId IN ";
+
+    private static final String SELECT_OUTAGES_SQL = "SELECT outageId, ifServiceId, ifRegainedService, perspective FROM outages WHERE ";
+
+    private static final String INSERT_OUTAGE_SQL = "INSERT INTO outages (outageId, ifServiceId, ifLostService, svcLostEventId, " +
+            "ifRegainedService, svcRegainedEventId) VALUES (?, ?, ?, ?, ?, ?)";
+
+    // Only columns changed by the batch are set, the others are kept as they are
+    private static final String UPDATE_OUTAGE_SQL = "UPDATE outages SET ifRegainedService = COALESCE(?, ifRegainedService), " +
+            "svcLostEventId = COALESCE(?, svcLostEventId), svcRegainedEventId = COALESCE(?, svcRegainedEventId) " +
+            "WHERE outageId = ?";
+
+    /**
+     * The state of an outage changed by a batch of {@link OutageOperation}s.
+     * For existing outages, fields left null are not updated.
+     */
+    private static class PendingOutage {
+        private final int m_id;
+        private final int m_serviceId;
+        private final boolean m_new;
+        private Date m_lost;
+        private Date m_regained;
+        private Integer m_lostEventId;
+        private Integer m_regainedEventId;
+
+        private PendingOutage(final int id, final int serviceId, final boolean isNew) {
+            m_id = id;
+            m_serviceId = serviceId;
+            m_new = isNew;
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static Timestamp toTimestamp(Date date) {
+        return date != null ? new Timestamp(date.getTime()) : null;
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static String serviceKey(int nodeId, String ipAddr, String svcName) {
+        return nodeId + ":" + InetAddressUtils.str(addr(ipAddr)) + ":" + svcName;
+    }
+
     @Override
     public List<String[]> getNodeServices(int nodeId){
         final LinkedList<String[]> servicemap = new LinkedList<>();
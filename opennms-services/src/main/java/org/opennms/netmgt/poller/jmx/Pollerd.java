@@ -31,7 +31,13 @@ package org.opennms.netmgt.poller.jmx;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.poller.BatchingOutageWriter;
+import org.opennms.netmgt.poller.DefaultPollContext;
+import org.opennms.netmgt.poller.pollables.PollContext;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.ScheduleLagHistogram;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 
 /**
  * <p>Pollerd class.</p>
@@ -145,6 +151,8 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
     public long getTaskQueuePendingCount() {
         if (getThreadPoolStatsStatus()) {
             return getExecutor().getQueue().size();
+        } else if (getDaemon().getScheduler() instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) getDaemon().getScheduler()).getQueued();
         } else {
             return 0L;
         }
@@ -159,6 +167,70 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
         }
     }
     
+    @Override
+    public long getScheduleLagMedian() {
+        final ScheduleLagHistogram lag = getLagHistogram();
+        return lag == null ? 0L : lag.getPercentile(50);
+    }
+
+    @Override
+    public long getScheduleLag99thPercentile() {
+        final ScheduleLagHistogram lag = getLagHistogram();
+        return lag == null ? 0L : lag.getPercentile(99);
+    }
+
+    @Override
+    public long getScheduleLagMax() {
+        final ScheduleLagHistogram lag = getLagHistogram();
+        return lag == null ? 0L : lag.getMax();
+    }
+
+    @Override
+    public long getOutageBatchesWritten() {
+        final BatchingOutageWriter writer = getOutageWriter();
+        return writer == null ? 0L : writer.getBatchesWritten();
+    }
+
+    @Override
+    public long getOutageOperationsWritten() {
+        final BatchingOutageWriter writer = getOutageWriter();
+        return writer == null ? 0L : writer.getOperationsWritten();
+    }
+
+    @Override
+    public long getOutageWritesPending() {
+        final BatchingOutageWriter writer = getOutageWriter();
+        return writer == null ? 0L : writer.getPending();
+    }
+
+    @Override
+    public long getOutageWriteLatencyMedian() {
+        final BatchingOutageWriter writer = getOutageWriter();
+        return writer == null ? 0L : (long) writer.getLatencyHistogram().getSnapshot().getMedian();
+    }
+
+    @Override
+    public long getOutageWriteLatencyMax() {
+        final BatchingOutageWriter writer = getOutageWriter();
+        return writer == null ? 0L : writer.getLatencyHistogram().getSnapshot().getMax();
+    }
+
+    private BatchingOutageWriter getOutageWriter() {
+        final PollContext context = getDaemon().getNetwork().getContext();
+        if (context instanceof DefaultPollContext) {
+            return ((DefaultPollContext) context).getOutageWriter();
+        }
+        return null;
+    }
+
+    private ScheduleLagHistogram getLagHistogram() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getLagHistogram();
+        }
+        return null;
+    }
+
     private ThreadPoolExecutor getExecutor() {
         return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
     }
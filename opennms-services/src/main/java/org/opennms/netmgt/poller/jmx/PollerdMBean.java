@@ -93,4 +93,44 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return The number of open slots on our ExecutorService queue.
      */
     public long getTaskQueueRemainingCapacity();
+
+    /**
+     * @return The median delay in milliseconds between the time a task was due and the time it started, 0 if unknown
+     */
+    public long getScheduleLagMedian();
+
+    /**
+     * @return The 99th percentile of the delay in milliseconds between the time a task was due and the time it started, 0 if unknown
+     */
+    public long getScheduleLag99thPercentile();
+
+    /**
+     * @return The largest delay in milliseconds between the time a task was due and the time it started, 0 if unknown
+     */
+    public long getScheduleLagMax();
+
+    /**
+     * @return The number of batches of outage updates and events written, 0 if batching is disabled
+     */
+    public long getOutageBatchesWritten();
+
+    /**
+     * @return The number of outage updates written in batches, 0 if batching is disabled
+     */
+    public long getOutageOperationsWritten();
+
+    /**
+     * @return The number of outage updates and events waiting to be written, 0 if batching is disabled
+     */
+    public long getOutageWritesPending();
+
+    /**
+     * @return The median delay in milliseconds between queuing an outage update or event and writing it, 0 if unknown
+     */
+    public long getOutageWriteLatencyMedian();
+
+    /**
+     * @return The largest delay in milliseconds between queuing an outage update or event and writing it, 0 if unknown
+     */
+    public long getOutageWriteLatencyMax();
 }
@@ -47,6 +47,29 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * Starts the next poll ahead of time so that {@link #poll()} does not
+     * have to wait for it.
+     *
+     * @param tick the run of the schedule the poll is started for, see
+     *        {@link org.opennms.netmgt.scheduler.Schedule#getTick()}. The result
+     *        is only used by a {@link #poll()} during the same run.
+     * @return true once the result of the poll is available
+     */
+    default boolean prefetchPoll(long tick) {
+        return true;
+    }
+
+    /**
+     * Runs the callback once the poll started by {@link #prefetchPoll(long)}
+     * for the given run of the schedule is done.
+     *
+     * @return false if there is no such poll, the callback is not run then
+     */
+    default boolean notifyWhenPrefetched(long tick, Runnable callback) {
+        return false;
+    }
+
     /**
      * <p>getCurrentTime</p>
      *
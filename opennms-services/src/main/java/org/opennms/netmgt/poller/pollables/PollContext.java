@@ -106,5 +106,21 @@ public interface PollContext {
      */
     public boolean isServiceUnresponsiveEnabled();
 
+    /**
+     * <p>isAsyncPollingEnabled</p>
+     *
+     * @return true if polls should be started before the service is run, see {@link PollableService#isReady()}
+     */
+    default boolean isAsyncPollingEnabled() {
+        return false;
+    }
+
+    /**
+     * Blocks until the outage updates and events queued by {@link #openOutage(PollableService, PollEvent)},
+     * {@link #resolveOutage(PollableService, PollEvent)} and {@link #sendEvent(Event)} have been written.
+     */
+    default void flushPendingWrites() {
+    }
+
     void trackPoll(PollableService service, PollStatus result);
 }
@@ -364,10 +364,30 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
 		 * be the optimal way to do it to promote fairness but... not for now.
 		 */
         //return isTreeLockAvailable();
+
+        // With async polling the poll is started here and the service is only handed to a
+        // scheduler thread once its result has arrived, so that no thread waits on the monitor.
+        // The poller selects a scheduler which checks every task for readiness in this mode.
+        final Schedule schedule = m_schedule;
+        if (getContext().isAsyncPollingEnabled() && m_pollConfig != null && schedule != null) {
+            return m_pollConfig.prefetchPoll(schedule.getTick());
+        }
 		return true;
 		
     }
 
+    /**
+     * Runs the callback once the poll started by {@link #isReady()} is done.
+     */
+    @Override
+    public boolean notifyWhenReady(Runnable callback) {
+        final Schedule schedule = m_schedule;
+        if (getContext().isAsyncPollingEnabled() && m_pollConfig != null && schedule != null) {
+            return m_pollConfig.notifyWhenPrefetched(schedule.getTick(), callback);
+        }
+        return false;
+    }
+
 
     /* (non-Javadoc)
      * @see java.lang.Runnable#run()
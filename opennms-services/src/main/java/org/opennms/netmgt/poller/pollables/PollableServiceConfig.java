@@ -34,6 +34,7 @@ import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.core.rpc.api.RpcExceptionHandler;
 import org.opennms.core.rpc.api.RpcExceptionUtils;
@@ -45,9 +46,11 @@ import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.config.poller.Parameter;
 import org.opennms.netmgt.config.poller.Service;
 import org.opennms.netmgt.poller.LocationAwarePollerClient;
+import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
-import org.opennms.netmgt.poller.PollerResponse;
 import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.ServiceMonitorAdaptor;
+import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
 import org.opennms.netmgt.scheduler.Timer;
 import org.opennms.netmgt.threshd.api.ThresholdingService;
@@ -78,6 +81,39 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     private final InvertedStatusServiceMonitorAdaptor m_invertedStatusServiceMonitorAdaptor = new InvertedStatusServiceMonitorAdaptor();
 
     private final ReadablePollOutagesDao m_pollOutagesDao;
+
+    /**
+     * A poll that was started ahead of time and whose result is consumed by the {@link #poll()}
+     * of the same run of the schedule.
+     */
+    private final AtomicReference<PendingPoll> m_pendingPoll = new AtomicReference<>();
+
+    /**
+     * Takes the place of the {@link LatencyStoringServiceMonitorAdaptor} for a prefetched poll.
+     * The latency is only stored and thresholded, and the poll only tracked, once the result is
+     * consumed, so that a poll which is discarded and run again isn't accounted for twice.
+     */
+    private static class PendingPoll implements ServiceMonitorAdaptor {
+        private final long m_tick;
+        private final CompletableFuture<PollStatus> m_future;
+
+        private volatile MonitoredService m_svc;
+        private volatile Map<String, Object> m_parameters;
+        private volatile PollStatus m_status;
+
+        private PendingPoll(long tick, CompletableFuture<PollStatus> future) {
+            m_tick = tick;
+            m_future = future;
+        }
+
+        @Override
+        public PollStatus handlePollResult(MonitoredService svc, Map<String, Object> parameters, PollStatus status) {
+            m_svc = svc;
+            m_parameters = parameters;
+            m_status = status;
+            return status;
+        }
+    }
     
     /**
      * <p>Constructor for PollableServiceConfig.</p>
@@ -113,35 +149,28 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     /**
      * <p>poll</p>
      *
+     * Uses the result of the poll started by {@link #prefetchPoll(long)} if there is one
+     * for the current run of the schedule.
+     *
      * @return a {@link org.opennms.netmgt.poller.PollStatus} object.
      */
     @Override
     public PollStatus poll() {
         try {
-            final String packageName = getPackageName();
-            // Use the service's configured interval as the TTL for this request
-            final Long ttlInMs = m_configService.getInterval();
-            LOG.debug("Polling {} with TTL {} using pkg {}",
-                    m_service, ttlInMs, packageName);
-
-            CompletableFuture<PollerResponse> future = m_locationAwarePollerClient.poll()
-                .withService(m_service)
-                .withMonitor(m_serviceMonitor)
-                .withTimeToLive(ttlInMs)
-                .withAttributes(getParameters())
-                .withAdaptor(m_latencyStoringServiceMonitorAdaptor)
-                .withAdaptor(m_invertedStatusServiceMonitorAdaptor)
-                .withPatternVariables(m_patternVariables)
-                .execute();
-
-            PollerResponse response = future.get();
-            PollStatus result = response.getPollStatus();
-            LOG.debug("Finish polling {} using pkg {} result = {}", m_service, packageName, result);
-
-            // Track the results of the poll
-            m_service.getContext().trackPoll(m_service, result);
-
-            return result;
+            final PendingPoll pending = m_pendingPoll.getAndSet(null);
+            if (pending != null) {
+                final Schedule schedule = m_service.getSchedule();
+                if (schedule != null && schedule.getTick() == pending.m_tick) {
+                    final PollStatus result = pending.m_future.get();
+                    if (pending.m_status != null) {
+                        m_latencyStoringServiceMonitorAdaptor.handlePollResult(pending.m_svc, pending.m_parameters, pending.m_status);
+                    }
+                    m_service.getContext().trackPoll(m_service, result);
+                    return result;
+                }
+                LOG.debug("Discarding the poll of {} started for an earlier run of its schedule.", m_service);
+            }
+            return pollAsync().get();
         } catch (Throwable e) {
             return RpcExceptionUtils.handleException(e, new RpcExceptionHandler<PollStatus>() {
                 @Override
@@ -174,6 +203,101 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         }
     }
 
+    /**
+     * Starts the poll without waiting for its result.
+     *
+     * @return a future completed with the status once the poll is done
+     */
+    public CompletableFuture<PollStatus> pollAsync() {
+        return pollAsync(m_latencyStoringServiceMonitorAdaptor, true);
+    }
+
+    /**
+     * @param latencyAdaptor the adaptor invoked with the status returned by the monitor
+     * @param track whether or not to track the result of the poll once it is available
+     */
+    private CompletableFuture<PollStatus> pollAsync(ServiceMonitorAdaptor latencyAdaptor, boolean track) {
+        final String packageName = getPackageName();
+        // Use the service's configured interval as the TTL for this request
+        final Long ttlInMs = m_configService.getInterval();
+        LOG.debug("Polling {} with TTL {} using pkg {}",
+                m_service, ttlInMs, packageName);
+
+        return m_locationAwarePollerClient.poll()
+            .withService(m_service)
+            .withMonitor(m_serviceMonitor)
+            .withTimeToLive(ttlInMs)
+            .withAttributes(getParameters())
+            .withAdaptor(latencyAdaptor)
+            .withAdaptor(m_invertedStatusServiceMonitorAdaptor)
+            .withPatternVariables(m_patternVariables)
+            .execute()
+            .thenApply(response -> {
+                PollStatus result = response.getPollStatus();
+                LOG.debug("Finish polling {} using pkg {} result = {}", m_service, packageName, result);
+
+                // Track the results of the poll
+                if (track) {
+                    m_service.getContext().trackPoll(m_service, result);
+                }
+
+                return result;
+            });
+    }
+
+    /**
+     * Starts the next poll, unless one is already in flight for the given
+     * run of the schedule, so that its result is ready by the time the
+     * service is run. A poll left over from an earlier run is replaced.
+     *
+     * The latency of a prefetched poll is only stored, and the poll only
+     * tracked, by the {@link #poll()} that consumes it.
+     *
+     * @param tick the run of the schedule the poll is started for
+     * @return true once the result of the pending poll is available
+     */
+    @Override
+    public boolean prefetchPoll(long tick) {
+        if (scheduledSuspension()) {
+            // the poll will be skipped
+            return true;
+        }
+        final PendingPoll pending = m_pendingPoll.get();
+        if (pending != null && pending.m_tick == tick) {
+            return pending.m_future.isDone();
+        }
+
+        // Reserve the slot before starting the poll so that concurrent checks don't start a second one
+        final PendingPoll next = new PendingPoll(tick, new CompletableFuture<>());
+        if (!m_pendingPoll.compareAndSet(pending, next)) {
+            // replaced or consumed in the meantime, check again on the next pass
+            return false;
+        }
+        try {
+            pollAsync(next, false).whenComplete((status, e) -> {
+                if (e != null) {
+                    next.m_future.completeExceptionally(e);
+                } else {
+                    next.m_future.complete(status);
+                }
+            });
+        } catch (Throwable e) {
+            // Let poll() handle the failure
+            next.m_future.completeExceptionally(e);
+        }
+        return next.m_future.isDone();
+    }
+
+    @Override
+    public boolean notifyWhenPrefetched(long tick, Runnable callback) {
+        final PendingPoll pending = m_pendingPoll.get();
+        if (pending == null || pending.m_tick != tick) {
+            return false;
+        }
+        pending.m_future.whenComplete((status, e) -> callback.run());
+        return true;
+    }
+
     /**
      * Uses the existing package name to try and re-obtain the package from the poller config factory.
      * Should be called when the poller config has been reloaded.
@@ -187,6 +311,9 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         m_pkg = newPkg;
 
         this.findService();
+
+        // Don't report a poll that was started with the previous configuration
+        m_pendingPoll.set(null);
     }
 
     private synchronized Map<String,Object> getParameters() {
@@ -54,6 +54,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -189,7 +190,8 @@ public class AvailabilityServiceHibernateImpl implements AvailabilityService {
         return level;
     }
 
-    private static double getOutageTimeInWindow(List<OnmsOutage> outages, Date start, Date end) {
+    @VisibleForTesting
+    static double getOutageTimeInWindow(List<OnmsOutage> outages, Date start, Date end) {
         if (outages == null || outages.size() == 0) {
             return 0.0d;
         }
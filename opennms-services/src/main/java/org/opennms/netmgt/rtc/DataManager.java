@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.RTCConfigFactory;
@@ -49,7 +50,9 @@ import org.opennms.netmgt.dao.api.MonitoredServiceDao;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.filter.api.FilterParseException;
+import org.opennms.netmgt.rtc.datablock.RTCAvailability;
 import org.opennms.netmgt.rtc.datablock.RTCCategory;
+import org.opennms.netmgt.rtc.datablock.RTCCategoryAvailability;
 import org.opennms.netmgt.rtc.datablock.RTCHashMap;
 import org.opennms.netmgt.rtc.datablock.RTCNode;
 import org.opennms.netmgt.rtc.datablock.RTCNodeKey;
@@ -80,6 +83,11 @@ import org.springframework.transaction.support.TransactionTemplate;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * The availability of each category, and of the nodes in the context of
+ * each category, is maintained incrementally in 'RTCCategoryAvailability's as
+ * the data is altered. Availability queries read immutable snapshots of
+ * these and are not blocked by the updates.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -136,7 +144,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
 			for (RTCCategory cat : m_categories.values()) {
 				if (catContainsIfService(cat, key)) {
 					RTCNode rtcN = getRTCNode(key);
-					addNodeToCategory(cat, rtcN);
+					addNodeToCategory(cat, rtcN, m_availability.get(cat.getLabel()));
 				}
 			}
 		
@@ -185,12 +193,22 @@ public class DataManager implements AvailabilityService, InitializingBean {
      */
     private Map<String, RTCCategory> m_categories;
 
+    /**
+     * The availability of the RTC categories, keyed by label
+     */
+    private Map<String, RTCCategoryAvailability> m_availability;
+
+    /**
+     * The window for which the availability is maintained
+     */
+    private long m_rollingWindow;
+
     /**
      * map keyed using the RTCNodeKey or node ID or node ID/IP address
      */
     private RTCHashMap m_map;
 
-	private static void addOutageToRTCNode(RTCNode rtcN, Timestamp lostTimeTS, Timestamp regainedTimeTS) {
+	private void addOutageToRTCNode(RTCNode rtcN, Timestamp lostTimeTS, Timestamp regainedTimeTS) {
 		if (lostTimeTS == null) return;
 		long lostTime = lostTimeTS.getTime();
 		long regainedTime = -1;
@@ -201,14 +219,23 @@ public class DataManager implements AvailabilityService, InitializingBean {
 
 		LOG.debug("regained time for nodeid/ip/svc: {}/{}/{}: {}/{}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), regainedTimeTS, regainedTime);
 
-		rtcN.addSvcTime(lostTime, regainedTime);
+		if (rtcN.addSvcTime(lostTime, regainedTime)) {
+			for (String catlabel : rtcN.getCategories()) {
+				m_availability.get(catlabel).addOutage(rtcN.getNodeID(), lostTime, regainedTime);
+			}
+		}
 	}
 
 	private void addRTCNode(RTCNode rtcN) {
 		m_map.add(rtcN);
 	}
 
-	private static void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
+	private static void addNodeToCategory(RTCCategory cat, RTCNode rtcN, RTCCategoryAvailability availability) {
+
+		if (!rtcN.belongsTo(cat.getLabel())) {
+			// add the service, along with its outages, to the availability
+			availability.addService(rtcN.getNodeID(), rtcN.getOutages());
+		}
 
 		// add the category info to the node
         rtcN.addCategory(cat.getLabel());
@@ -255,6 +282,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
     			"            o.nodeid = ifsvc.nodeid " + 
     			"            and o.ipaddr = ifsvc.ipaddr " + 
     			"            and o.serviceid = ifsvc.serviceid " + 
+    			"            and o.perspective is null " + 
     			"            and " +
     			"            (" + 
     			"               o.ifLostService > ? " + 
@@ -321,6 +349,10 @@ public class DataManager implements AvailabilityService, InitializingBean {
 
     	LOG.debug("Number of categories read: {}", m_categories.size());
 
+    	m_rollingWindow = m_configFactory.getRollingWindow();
+    	m_availability = m_categories.values().stream()
+    			.collect(Collectors.toMap(RTCCategory::getLabel, cat -> new RTCCategoryAvailability(cat.getLabel(), m_rollingWindow)));
+
     	// create data holder
     	m_map = new RTCHashMap(30000);
 
@@ -424,7 +456,11 @@ public class DataManager implements AvailabilityService, InitializingBean {
         }
 
         // inform node
-        rtcN.nodeLostService(t);
+        if (rtcN.nodeLostService(t)) {
+            for (String catlabel : rtcN.getCategories()) {
+                m_availability.get(catlabel).addOutage(nodeid, t, -1);
+            }
+        }
 
     }
 
@@ -451,7 +487,12 @@ public class DataManager implements AvailabilityService, InitializingBean {
         }
 
         // inform node
-        rtcN.nodeRegainedService(t);
+        final long lostTime = rtcN.nodeRegainedService(t);
+        if (lostTime >= 0) {
+            for (String catlabel : rtcN.getCategories()) {
+                m_availability.get(catlabel).closeOutage(nodeid, lostTime, t);
+            }
+        }
     }
 
     /**
@@ -487,6 +528,9 @@ public class DataManager implements AvailabilityService, InitializingBean {
 
             RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
 
+            // remove the service, along with its outages, from the availability
+            m_availability.get(catlabel).removeService(nodeid, rtcN.getOutages());
+
             // get nodes in this category
             List<Integer> catNodes = cat.getNodes();
 
@@ -572,6 +616,12 @@ public class DataManager implements AvailabilityService, InitializingBean {
     	for (RTCCategory cat : m_categories.values()) {
 			cat.deleteNode(nodeid);
 		}
+
+    	for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+    		for (String catlabel : rtcN.getCategories()) {
+    			m_availability.get(catlabel).removeService(nodeid, rtcN.getOutages());
+    		}
+    	}
     	
     	m_map.deleteNode(nodeid);
     	
@@ -606,6 +656,13 @@ public class DataManager implements AvailabilityService, InitializingBean {
             // remove the node with the old node id from the map
             m_map.delete(rtcN);
 
+            // move the service, along with its outages, in the availability
+            for (String catlabel : rtcN.getCategories()) {
+                final RTCCategoryAvailability availability = m_availability.get(catlabel);
+                availability.removeService(oldNodeId, rtcN.getOutages());
+                availability.addService(newNodeId, rtcN.getOutages());
+            }
+
             // change the node ID on the RTCNode
             rtcN.setNodeID(newNodeId);
 
@@ -636,8 +693,14 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(RTCCategory category, long curTime, long rollingWindow) {
-        return m_map.getValue(category.getLabel(), curTime, rollingWindow);
+    public double getValue(RTCCategory category, long curTime, long rollingWindow) {
+        if (rollingWindow == m_rollingWindow) {
+            return m_availability.get(category.getLabel()).getAvailability(curTime).getValue(curTime);
+        }
+        // The availability is only maintained for the configured window, walk the services instead
+        synchronized (this) {
+            return m_map.getValue(category.getLabel(), curTime, rollingWindow);
+        }
     }
 
     /**
@@ -655,8 +718,15 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
-        return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
+    public double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
+        if (rollingWindow == m_rollingWindow) {
+            final RTCAvailability availability = m_availability.get(category.getLabel()).getAvailability(nodeid, curTime);
+            return availability != null ? availability.getValue(curTime) : RTCUtils.getOutagePercentage(0, rollingWindow, 0);
+        }
+        // The availability is only maintained for the configured window, walk the services instead
+        synchronized (this) {
+            return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
+        }
     }
 
     /**
@@ -670,8 +740,9 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(int nodeid, RTCCategory category) {
-        return m_map.getServiceCount(nodeid, category.getLabel());
+    public int getServiceCount(int nodeid, RTCCategory category) {
+        final RTCAvailability availability = m_availability.get(category.getLabel()).getAvailability(nodeid, System.currentTimeMillis());
+        return availability != null ? availability.getServiceCount() : 0;
     }
 
     /**
@@ -685,8 +756,9 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(int nodeid, RTCCategory category) {
-        return m_map.getServiceDownCount(nodeid, category.getLabel());
+    public int getServiceDownCount(int nodeid, RTCCategory category) {
+        final RTCAvailability availability = m_availability.get(category.getLabel()).getAvailability(nodeid, System.currentTimeMillis());
+        return availability != null ? availability.getServiceDownCount() : 0;
     }
 
     /**
@@ -695,12 +767,30 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the categories
      */
     @Override
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
+    /**
+     * Get the IDs of the nodes that have services in the passed category.
+     *
+     * @param category
+     *            the category
+     * @return the sorted node IDs
+     */
     public Collection<Integer> getNodes(RTCCategory category) {
-        return category.getNodes();
+        return m_availability.get(category.getLabel()).getNodeIds();
+    }
+
+    /**
+     * Get the availability of the passed category.
+     *
+     * @param category
+     *            the category
+     * @return the availability
+     */
+    public RTCCategoryAvailability getAvailability(RTCCategory category) {
+        return m_availability.get(category.getLabel());
     }
 
     @Override
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import org.opennms.netmgt.rtc.RTCUtils;
+
+/**
+ * An immutable snapshot of the availability of a node, or of a whole
+ * category, in the context of a category.
+ *
+ * The downtime is stored as a linear function of the current time, which
+ * remains accurate until the time returned by {@link #getValidUntil()}.
+ */
+public final class RTCAvailability {
+    private final long m_rollingWindow;
+
+    private final long m_time;
+
+    private final long m_validUntil;
+
+    private final long m_intercept;
+
+    private final long m_slope;
+
+    private final int m_serviceCount;
+
+    private final int m_serviceDownCount;
+
+    RTCAvailability(long rollingWindow, RTCDowntimeAggregate downtime, int serviceCount, int serviceDownCount) {
+        m_rollingWindow = rollingWindow;
+        m_time = downtime.getTime();
+        m_validUntil = downtime.getNextBreakpoint();
+        m_intercept = downtime.getIntercept();
+        m_slope = downtime.getSlope();
+        m_serviceCount = serviceCount;
+        m_serviceDownCount = serviceDownCount;
+    }
+
+    /**
+     * Return true if the snapshot can be used to calculate the downtime at the given time.
+     *
+     * @param curTime the current time
+     * @return true if the snapshot is valid at the given time
+     */
+    public boolean isValidAt(long curTime) {
+        return curTime < m_validUntil;
+    }
+
+    /**
+     * @return the time after which the snapshot can no longer be used
+     */
+    public long getValidUntil() {
+        return m_validUntil;
+    }
+
+    /**
+     * Return the total outage time of the services in the last 'rollingWindow'
+     * starting at 'curTime'.
+     *
+     * @param curTime the current time, times before the snapshot was taken are treated as the time of the snapshot
+     * @return the total outage time
+     */
+    public long getDownTime(long curTime) {
+        final long downTime = m_intercept + m_slope * Math.max(curTime, m_time);
+        return Math.max(0, Math.min(downTime, m_rollingWindow * m_serviceCount));
+    }
+
+    /**
+     * Return the value (uptime percentage) in the last 'rollingWindow'
+     * starting at 'curTime'.
+     *
+     * @param curTime the current time
+     * @return the value (uptime percentage)
+     */
+    public double getValue(long curTime) {
+        return RTCUtils.getOutagePercentage(getDownTime(curTime), m_rollingWindow, m_serviceCount);
+    }
+
+    /**
+     * @return the number of services
+     */
+    public int getServiceCount() {
+        return m_serviceCount;
+    }
+
+    /**
+     * @return the number of services that are currently down
+     */
+    public int getServiceDownCount() {
+        return m_serviceDownCount;
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maintains the availability of the services in a category, and of the nodes
+ * in the context of the category.
+ *
+ * Updates are applied incrementally to rolling window downtime sums kept for
+ * the category and for each of its nodes. After every update, immutable
+ * {@link RTCAvailability} snapshots are published so that readers never need
+ * to wait on the updates.
+ */
+public class RTCCategoryAvailability {
+
+    private static class NodeState {
+        private final RTCDowntimeAggregate m_downtime;
+        private int m_serviceCount = 0;
+        private int m_serviceDownCount = 0;
+
+        private NodeState(long rollingWindow) {
+            m_downtime = new RTCDowntimeAggregate(rollingWindow);
+        }
+    }
+
+    private final String m_label;
+
+    private final long m_rollingWindow;
+
+    /**
+     * Guarded by this
+     */
+    private final Map<Integer, NodeState> m_nodeStates = new HashMap<>();
+
+    /**
+     * Guarded by this
+     */
+    private final RTCDowntimeAggregate m_downtime;
+
+    private int m_serviceCount = 0;
+
+    private int m_serviceDownCount = 0;
+
+    private final ConcurrentSkipListMap<Integer, RTCAvailability> m_availabilityByNode = new ConcurrentSkipListMap<>();
+
+    private volatile RTCAvailability m_availability;
+
+    /**
+     * Constructor.
+     *
+     * @param label
+     *            the category label
+     * @param rollingWindow
+     *            the window for which availability is calculated
+     */
+    public RTCCategoryAvailability(String label, long rollingWindow) {
+        m_label = label;
+        m_rollingWindow = rollingWindow;
+        m_downtime = new RTCDowntimeAggregate(rollingWindow);
+        m_downtime.advance(System.currentTimeMillis());
+        m_availability = new RTCAvailability(rollingWindow, m_downtime, 0, 0);
+    }
+
+    /**
+     * Add a service, along with its outages, to the category.
+     *
+     * @param nodeId the node on which the service lives
+     * @param outages the outages of the service
+     */
+    public synchronized void addService(int nodeId, RTCServiceOutages outages) {
+        updateService(nodeId, outages, 1);
+    }
+
+    /**
+     * Remove a service, along with its outages, from the category.
+     *
+     * @param nodeId the node on which the service lives
+     * @param outages the outages of the service
+     */
+    public synchronized void removeService(int nodeId, RTCServiceOutages outages) {
+        updateService(nodeId, outages, -1);
+    }
+
+    /**
+     * Add an outage to a service that was previously added to the category.
+     *
+     * @param nodeId the node on which the service lives
+     * @param lostTime the time at which service was lost
+     * @param regainedTime the time at which service was regained, or -1 if the outage is still open
+     */
+    public synchronized void addOutage(int nodeId, long lostTime, long regainedTime) {
+        final NodeState node = m_nodeStates.get(nodeId);
+        if (node == null) {
+            return;
+        }
+        advance(node, Math.max(lostTime, regainedTime));
+        updateOutage(node, lostTime, regainedTime, 1);
+        publish(nodeId, node);
+    }
+
+    /**
+     * Close an outage that was previously added to the category.
+     *
+     * @param nodeId the node on which the service lives
+     * @param lostTime the time at which service was lost
+     * @param regainedTime the time at which service was regained
+     */
+    public synchronized void closeOutage(int nodeId, long lostTime, long regainedTime) {
+        final NodeState node = m_nodeStates.get(nodeId);
+        if (node == null) {
+            return;
+        }
+        advance(node, Math.max(lostTime, regainedTime));
+        updateOutage(node, lostTime, -1, -1);
+        updateOutage(node, lostTime, regainedTime, 1);
+        publish(nodeId, node);
+    }
+
+    /**
+     * Return the availability of the category.
+     *
+     * @param curTime the current time
+     * @return the availability
+     */
+    public RTCAvailability getAvailability(long curTime) {
+        final RTCAvailability availability = m_availability;
+        if (availability.isValidAt(curTime)) {
+            return availability;
+        }
+        synchronized (this) {
+            m_downtime.advance(curTime);
+            m_availability = new RTCAvailability(m_rollingWindow, m_downtime, m_serviceCount, m_serviceDownCount);
+            return m_availability;
+        }
+    }
+
+    /**
+     * Return the availability of the given node in the context of the category.
+     *
+     * @param nodeId the node
+     * @param curTime the current time
+     * @return the availability, or null if the node is not in the category
+     */
+    public RTCAvailability getAvailability(int nodeId, long curTime) {
+        final RTCAvailability availability = m_availabilityByNode.get(nodeId);
+        if (availability == null || availability.isValidAt(curTime)) {
+            return availability;
+        }
+        synchronized (this) {
+            final NodeState node = m_nodeStates.get(nodeId);
+            if (node == null) {
+                return null;
+            }
+            node.m_downtime.advance(curTime);
+            publish(nodeId, node);
+            return m_availabilityByNode.get(nodeId);
+        }
+    }
+
+    /**
+     * Return the IDs of the nodes that have at least one service in the category.
+     *
+     * @return the sorted node IDs
+     */
+    public NavigableSet<Integer> getNodeIds() {
+        return m_availabilityByNode.keySet();
+    }
+
+    /**
+     * @return the category label
+     */
+    public String getLabel() {
+        return m_label;
+    }
+
+    private void updateService(int nodeId, RTCServiceOutages outages, int sign) {
+        final NodeState node = sign > 0 ? m_nodeStates.computeIfAbsent(nodeId, id -> new NodeState(m_rollingWindow)) : m_nodeStates.get(nodeId);
+        if (node == null) {
+            return;
+        }
+        long latest = Long.MIN_VALUE;
+        for (int i = 0; i < outages.size(); i++) {
+            latest = Math.max(latest, Math.max(outages.getLostTime(i), outages.getRegainedTime(i)));
+        }
+        advance(node, latest);
+        for (int i = 0; i < outages.size(); i++) {
+            updateOutage(node, outages.getLostTime(i), outages.getRegainedTime(i), sign);
+        }
+        node.m_serviceCount += sign;
+        m_serviceCount += sign;
+        publish(nodeId, node);
+    }
+
+    private void updateOutage(NodeState node, long lostTime, long regainedTime, int sign) {
+        node.m_downtime.addOutage(lostTime, regainedTime, sign);
+        m_downtime.addOutage(lostTime, regainedTime, sign);
+        if (regainedTime < 0) {
+            node.m_serviceDownCount += sign;
+            m_serviceDownCount += sign;
+        }
+    }
+
+    /**
+     * Advance both the node and the category aggregates to the current time,
+     * or to the given event time if it is later.
+     */
+    private void advance(NodeState node, long eventTime) {
+        final long now = Math.max(Math.max(System.currentTimeMillis(), eventTime),
+                Math.max(node.m_downtime.getTime(), m_downtime.getTime()));
+        node.m_downtime.advance(now);
+        m_downtime.advance(now);
+    }
+
+    private void publish(int nodeId, NodeState node) {
+        if (node.m_serviceCount > 0) {
+            m_availabilityByNode.put(nodeId, new RTCAvailability(m_rollingWindow, node.m_downtime, node.m_serviceCount, node.m_serviceDownCount));
+        } else {
+            // All of the services, and their outages, were removed
+            m_nodeStates.remove(nodeId);
+            m_availabilityByNode.remove(nodeId);
+        }
+        m_availability = new RTCAvailability(m_rollingWindow, m_downtime, m_serviceCount, m_serviceDownCount);
+    }
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Arrays;
+
+/**
+ * Maintains the total downtime of a set of outages within a rolling window
+ * as the window slides forward, without revisiting the outages.
+ *
+ * The downtime contributed by a single outage is a piecewise linear function
+ * of the current time, so the sum over all outages is also piecewise linear:
+ * <pre>
+ *   downtime(now) = intercept + slope * now
+ * </pre>
+ * The points at which an outage's contribution changes shape (when the start
+ * of the window passes the time at which service was lost or regained) are
+ * kept in a min-heap of primitive arrays and applied as time advances.
+ *
+ * Outages are removed by adding their negation, so the breakpoints of removed
+ * outages cancel out when applied.
+ *
+ * This class is not thread-safe, access must be guarded by the caller.
+ */
+final class RTCDowntimeAggregate {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final long m_rollingWindow;
+
+    /**
+     * The time up to which the breakpoints have been applied
+     */
+    private long m_time = Long.MIN_VALUE;
+
+    private long m_intercept = 0;
+
+    private long m_slope = 0;
+
+    private long[] m_breakpointTimes = new long[INITIAL_CAPACITY];
+
+    private long[] m_interceptDeltas = new long[INITIAL_CAPACITY];
+
+    private long[] m_slopeDeltas = new long[INITIAL_CAPACITY];
+
+    private int m_numBreakpoints = 0;
+
+    RTCDowntimeAggregate(long rollingWindow) {
+        m_rollingWindow = rollingWindow;
+    }
+
+    /**
+     * Apply all of the breakpoints up to, and including the given time.
+     *
+     * @param now the current time, times before the last advance are ignored
+     */
+    void advance(long now) {
+        if (now <= m_time) {
+            return;
+        }
+        m_time = now;
+        while (m_numBreakpoints > 0 && m_breakpointTimes[0] <= now) {
+            m_intercept += m_interceptDeltas[0];
+            m_slope += m_slopeDeltas[0];
+            removeMin();
+        }
+    }
+
+    /**
+     * Add or remove the contribution of an outage.
+     *
+     * The aggregate must have been advanced past the time at which service was
+     * lost and regained.
+     *
+     * @param lostTime the time at which service was lost
+     * @param regainedTime the time at which service was regained, or -1 if the outage is still open
+     * @param sign 1 to add the outage, -1 to remove it
+     */
+    void addOutage(long lostTime, long regainedTime, int sign) {
+        // When the start of the window passes the time at which service was lost
+        final long windowStartsAfterLost = lostTime + m_rollingWindow;
+        if (regainedTime < 0) {
+            // Grows as 'now - lostTime' until the service has been down for the whole window
+            if (m_time < windowStartsAfterLost) {
+                add(-sign * lostTime, sign);
+                push(windowStartsAfterLost, sign * (m_rollingWindow + lostTime), -sign);
+            } else {
+                add(sign * m_rollingWindow, 0);
+            }
+            return;
+        }
+
+        // When the start of the window passes the time at which service was regained
+        final long windowStartsAfterRegained = regainedTime + m_rollingWindow;
+        if (m_time >= windowStartsAfterRegained) {
+            // Expired
+            return;
+        }
+        if (m_time < windowStartsAfterLost) {
+            // Entirely within the window
+            add(sign * (regainedTime - lostTime), 0);
+            push(windowStartsAfterLost, sign * (m_rollingWindow + lostTime), -sign);
+        } else {
+            // Partially within the window, shrinks as 'regainedTime - (now - rollingWindow)'
+            add(sign * windowStartsAfterRegained, -sign);
+        }
+        push(windowStartsAfterRegained, -sign * windowStartsAfterRegained, sign);
+    }
+
+    /**
+     * @return the time up to which the breakpoints have been applied
+     */
+    long getTime() {
+        return m_time;
+    }
+
+    long getIntercept() {
+        return m_intercept;
+    }
+
+    long getSlope() {
+        return m_slope;
+    }
+
+    /**
+     * @return the time of the next breakpoint, or {@link Long#MAX_VALUE} if there are none
+     */
+    long getNextBreakpoint() {
+        return m_numBreakpoints > 0 ? m_breakpointTimes[0] : Long.MAX_VALUE;
+    }
+
+    private void add(long intercept, long slope) {
+        m_intercept += intercept;
+        m_slope += slope;
+    }
+
+    private void push(long time, long interceptDelta, long slopeDelta) {
+        if (m_numBreakpoints == m_breakpointTimes.length) {
+            final int capacity = m_numBreakpoints * 2;
+            m_breakpointTimes = Arrays.copyOf(m_breakpointTimes, capacity);
+            m_interceptDeltas = Arrays.copyOf(m_interceptDeltas, capacity);
+            m_slopeDeltas = Arrays.copyOf(m_slopeDeltas, capacity);
+        }
+        // Sift up
+        int i = m_numBreakpoints++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (m_breakpointTimes[parent] <= time) {
+                break;
+            }
+            set(i, parent);
+            i = parent;
+        }
+        m_breakpointTimes[i] = time;
+        m_interceptDeltas[i] = interceptDelta;
+        m_slopeDeltas[i] = slopeDelta;
+    }
+
+    private void removeMin() {
+        final int last = --m_numBreakpoints;
+        if (last == 0) {
+            return;
+        }
+        final long time = m_breakpointTimes[last];
+        final long interceptDelta = m_interceptDeltas[last];
+        final long slopeDelta = m_slopeDeltas[last];
+        // Sift down
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && m_breakpointTimes[child + 1] < m_breakpointTimes[child]) {
+                child++;
+            }
+            if (time <= m_breakpointTimes[child]) {
+                break;
+            }
+            set(i, child);
+            i = child;
+        }
+        m_breakpointTimes[i] = time;
+        m_interceptDeltas[i] = interceptDelta;
+        m_slopeDeltas[i] = slopeDelta;
+    }
+
+    private void set(int to, int from) {
+        m_breakpointTimes[to] = m_breakpointTimes[from];
+        m_interceptDeltas[to] = m_interceptDeltas[from];
+        m_slopeDeltas[to] = m_slopeDeltas[from];
+    }
+}
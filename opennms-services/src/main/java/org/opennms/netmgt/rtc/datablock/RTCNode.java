@@ -41,7 +41,7 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  * RTCNode is the main data unit for the RTCManager - these datablocks are
  * created initially as data is read from the database and later if a
  * 'nodeGainedService' is received - each node maintains its node id, ip
- * address, service name and a list of 'RTCNodeSvcTime's
+ * address, service name and the lost/regained service times
  * </p>
  *
  * <p>
@@ -52,8 +52,7 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  * 
- * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTime
- * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimesList
+ * @see org.opennms.netmgt.rtc.datablock.RTCServiceOutages
  */
 public class RTCNode {
     /**
@@ -74,7 +73,7 @@ public class RTCNode {
     /**
      * List of the lost/regained service times for this node.
      */
-    private RTCNodeSvcTimesList m_svcTimesList;
+    private final RTCServiceOutages m_outages;
 
     /**
      * List of the categories this node belongs to
@@ -107,7 +106,7 @@ public class RTCNode {
 
         m_svcName = svcName;
 
-        m_svcTimesList = new RTCNodeSvcTimesList(rollingWindow);
+        m_outages = new RTCServiceOutages(rollingWindow);
     }
 
     /**
@@ -121,15 +120,16 @@ public class RTCNode {
     }
 
     /**
-     * Add a new 'RTCNodeSvcTime' entry for this node.
+     * Add a new lost/regained service time entry for this node.
      *
      * @param losttime
      *            time at which service was lost
      * @param regainedtime
      *            time at which service was regained
+     * @return true if the entry was added, false if it was rejected
      */
-    public void addSvcTime(long losttime, long regainedtime) {
-        m_svcTimesList.addSvcTime(losttime, regainedtime);
+    public boolean addSvcTime(long losttime, long regainedtime) {
+        return m_outages.add(losttime, regainedtime);
     }
 
     /**
@@ -165,26 +165,11 @@ public class RTCNode {
      *
      * @param t
      *            the time at which service was lost
+     * @return true if a new entry was created, false if the last entry was
+     *         still waiting for a regained service
      */
-    public synchronized void nodeLostService(long t) {
-        // check if the last element in the times list is 'open'
-        // i.e. is waiting for a regained service - if yes,
-        // don't add anything
-
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() == -1) {
-                // last event was a 'lostService'
-                // ignore this event
-                return;
-            }
-        }
-
-        // create a new entry
-        RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
-        m_svcTimesList.add(newStime);
+    public synchronized boolean nodeLostService(long t) {
+        return m_outages.open(t);
     }
 
     /**
@@ -194,20 +179,16 @@ public class RTCNode {
      *
      * @param t
      *            the time at which node regained service
+     * @return the time at which service was lost for the entry that was
+     *         updated, or -1 if there was no entry waiting for a regained
+     *         service
      */
-    public synchronized void nodeRegainedService(long t) {
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() != -1) {
-                // last event was a 'regainedService'
-                // ignore this event
-                return;
-            }
-
-            stime.setRegainedTime(t);
+    public synchronized long nodeRegainedService(long t) {
+        final int size = m_outages.size();
+        if (size < 1 || !m_outages.close(t)) {
+            return -1;
         }
+        return m_outages.getLostTime(size - 1);
     }
 
     /**
@@ -283,7 +264,16 @@ public class RTCNode {
             throw new NodeNotInCategoryException();
         }
 
-        return m_svcTimesList.getDownTime(curTime, rollingWindow);
+        return m_outages.getDownTime(curTime, rollingWindow);
+    }
+
+    /**
+     * Return the lost/regained service times for this node.
+     *
+     * @return the outages
+     */
+    public RTCServiceOutages getOutages() {
+        return m_outages;
     }
 
     /**
@@ -292,26 +282,7 @@ public class RTCNode {
      * @return true if the service is currently down
      */
     public boolean isServiceCurrentlyDown() {
-        int size = m_svcTimesList.size();
-        if (size == 0) {
-            return false;
-        }
-
-        // else get last entry
-        RTCNodeSvcTime svctime = (RTCNodeSvcTime) m_svcTimesList.get(size - 1);
-        if (svctime.getRegainedTime() != -1) {
-            // node has regained service - so service not currently down
-            return false;
-        }
-
-        // getting here means the service losttime is the one to be returned
-        long svclosttime = svctime.getLostTime();
-        if (svclosttime == -1) {
-            // huh? how is it possible?
-            return false;
-        }
-
-        return true;
+        return m_outages.isDown();
     }
 
     /** {@inheritDoc} */
@@ -322,7 +293,6 @@ public class RTCNode {
             .append(m_ip)
             .append(m_svcName)
             .append(m_categories)
-            .append(m_svcTimesList)
             .toHashCode();
     }
 
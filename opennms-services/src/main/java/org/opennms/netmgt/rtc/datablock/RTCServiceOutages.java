@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The lost/regained service times for a single service, kept in a pair of
+ * parallel primitive arrays ordered by the time at which service was lost.
+ *
+ * A regained time of -1 denotes an outage that is still open, only the last
+ * outage can be open.
+ *
+ * 'Expired' outages, those that were resolved before the start of the
+ * rolling window, are removed when outages are added.
+ *
+ * This class is not thread-safe, access must be guarded by the caller.
+ */
+public class RTCServiceOutages {
+    private static final Logger LOG = LoggerFactory.getLogger(RTCServiceOutages.class);
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    /**
+     * The window for which outages are retained
+     */
+    private final long m_rollingWindow;
+
+    private long[] m_lostTimes = new long[INITIAL_CAPACITY];
+
+    private long[] m_regainedTimes = new long[INITIAL_CAPACITY];
+
+    private int m_size = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param rollingWindow
+     *            the window for which outages are retained
+     */
+    public RTCServiceOutages(long rollingWindow) {
+        m_rollingWindow = rollingWindow;
+    }
+
+    /**
+     * Add a new outage.
+     *
+     * @param lostTime
+     *            time at which service was lost
+     * @param regainedTime
+     *            time at which service was regained, or a value &lt;= 0 if
+     *            the outage is still open
+     * @return true if the outage was added, false if it was rejected
+     */
+    public boolean add(long lostTime, long regainedTime) {
+        removeExpired(System.currentTimeMillis() - m_rollingWindow);
+
+        if (regainedTime > 0 && regainedTime < lostTime) {
+            LOG.warn("Rejecting service time pair since regained time in milliseconds: {} less than lost time -> losttime in milliseconds: {}", regainedTime, lostTime);
+            return false;
+        }
+
+        append(lostTime, regainedTime > 0 ? regainedTime : -1);
+        return true;
+    }
+
+    /**
+     * Open a new outage, unless one is already open.
+     *
+     * @param lostTime
+     *            the time at which service was lost
+     * @return true if the outage was opened, false if an outage was already open
+     */
+    public boolean open(long lostTime) {
+        if (isDown()) {
+            // last event was a 'lostService', ignore this event
+            return false;
+        }
+        removeExpired(System.currentTimeMillis() - m_rollingWindow);
+        append(lostTime, -1);
+        return true;
+    }
+
+    /**
+     * Close the currently open outage, if any.
+     *
+     * @param regainedTime
+     *            the time at which service was regained
+     * @return true if an outage was closed, false if there was no open outage
+     */
+    public boolean close(long regainedTime) {
+        if (!isDown() || regainedTime <= 0) {
+            // last event was a 'regainedService', ignore this event
+            return false;
+        }
+        final long lostTime = m_lostTimes[m_size - 1];
+        if (regainedTime < lostTime) {
+            throw new IllegalArgumentException("Cannot set outage end time to value less than outage start time: " + regainedTime + " < " + lostTime);
+        }
+        m_regainedTimes[m_size - 1] = regainedTime;
+        return true;
+    }
+
+    /**
+     * Return true if the service is currently down.
+     *
+     * @return true if the last outage is still open
+     */
+    public boolean isDown() {
+        return m_size > 0 && m_regainedTimes[m_size - 1] < 0;
+    }
+
+    /**
+     * Return the number of outages.
+     *
+     * @return the number of outages
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * Return the time at which service was lost for the given outage.
+     *
+     * @param index the index of the outage
+     * @return the service lost time
+     */
+    public long getLostTime(int index) {
+        return m_lostTimes[index];
+    }
+
+    /**
+     * Return the time at which service was regained for the given outage.
+     *
+     * @param index the index of the outage
+     * @return the service regained time, or -1 if the outage is still open
+     */
+    public long getRegainedTime(int index) {
+        return m_regainedTimes[index];
+    }
+
+    /**
+     * Calculate the total downtime of the outages for the last
+     * 'rollingWindow' time starting at 'curTime'
+     *
+     * @param curTime
+     *            the current time from which the down time is to be calculated
+     * @param rollingWindow
+     *            the last window for which the downtime is to be calculated
+     * @return total down time for all outages for this service
+     */
+    public long getDownTime(long curTime, long rollingWindow) {
+        final long startTime = curTime - rollingWindow;
+        long outTime = 0;
+        for (int i = 0; i < m_size; i++) {
+            final long lostTime = m_lostTimes[i];
+            final long regainedTime = m_regainedTimes[i];
+            if (curTime < lostTime) {
+                continue;
+            }
+            final long end = regainedTime < 0 || regainedTime >= curTime ? curTime : regainedTime;
+            final long start = Math.max(lostTime, startTime);
+            if (end > start) {
+                outTime += end - start;
+            }
+        }
+        return outTime;
+    }
+
+    /**
+     * Remove expired outages, those that were resolved at or before the given time.
+     *
+     * @param startOfRollingWindow
+     *            the start of the rolling window
+     */
+    private void removeExpired(long startOfRollingWindow) {
+        int j = 0;
+        for (int i = 0; i < m_size; i++) {
+            final long regainedTime = m_regainedTimes[i];
+            if (regainedTime >= 0 && regainedTime <= startOfRollingWindow) {
+                continue;
+            }
+            m_lostTimes[j] = m_lostTimes[i];
+            m_regainedTimes[j] = regainedTime;
+            j++;
+        }
+        m_size = j;
+    }
+
+    private void append(long lostTime, long regainedTime) {
+        if (m_size == m_lostTimes.length) {
+            m_lostTimes = Arrays.copyOf(m_lostTimes, m_size * 2);
+            m_regainedTimes = Arrays.copyOf(m_regainedTimes, m_size * 2);
+        }
+        // Outages are kept ordered by lost time, which is generally the order in which they are added
+        int i = m_size;
+        while (i > 0 && m_lostTimes[i - 1] > lostTime) {
+            m_lostTimes[i] = m_lostTimes[i - 1];
+            m_regainedTimes[i] = m_regainedTimes[i - 1];
+            i--;
+        }
+        m_lostTimes[i] = lostTime;
+        m_regainedTimes[i] = regainedTime;
+        m_size++;
+    }
+}
@@ -52,10 +52,6 @@ import org.slf4j.LoggerFactory;
  */
 public class LegacyEuiLevelMapper {
     private static final Logger LOG = LoggerFactory.getLogger(LegacyEuiLevelMapper.class);
-    /**
-     * The header to be sent out for the availability xml(rtceui.xsd)
-     */
-    private final Header m_header;
     private final DataManager m_dataMgr;
 
     /**
@@ -63,9 +59,6 @@ public class LegacyEuiLevelMapper {
      */
     public LegacyEuiLevelMapper(DataManager dataMgr) {
         m_dataMgr = dataMgr;
-        m_header = new Header();
-        m_header.setVer("1.9a");
-        m_header.setMstation("");
     }
 
     /**
@@ -88,38 +81,39 @@ public class LegacyEuiLevelMapper {
         // create the data
         EuiLevel level = new EuiLevel();
 
-        // set created in m_header and add to level
-        m_header.setCreated(EventConstants.formatToString(curDate));
-        level.setHeader(m_header);
+        // the header to be sent out for the availability xml(rtceui.xsd)
+        Header header = new Header();
+        header.setVer("1.9a");
+        header.setMstation("");
+        header.setCreated(EventConstants.formatToString(curDate));
+        level.setHeader(header);
 
         org.opennms.netmgt.xml.rtc.Category levelCat = new org.opennms.netmgt.xml.rtc.Category();
 
-        // get a handle to data
-        synchronized (m_dataMgr) {
-            // category label
-            levelCat.setCatlabel(rtcCat.getLabel());
+        // the data manager serves the availability from snapshots, so we don't need to hold a lock on it
+        // category label
+        levelCat.setCatlabel(rtcCat.getLabel());
 
-            // availability value for this category
-            levelCat.setCatvalue(m_dataMgr.getValue(rtcCat, curTime, rWindow));
+        // availability value for this category
+        levelCat.setCatvalue(m_dataMgr.getValue(rtcCat, curTime, rWindow));
 
-            // nodes in this category
-            for (int nodeID : m_dataMgr.getNodes(rtcCat)) {
+        // nodes in this category
+        for (int nodeID : m_dataMgr.getNodes(rtcCat)) {
 
-                Node levelNode = new Node();
-                levelNode.setNodeid(nodeID);
+            Node levelNode = new Node();
+            levelNode.setNodeid(nodeID);
 
-                // value for this node for this category
-                levelNode.setNodevalue(m_dataMgr.getValue(nodeID, rtcCat, curTime, rWindow));
+            // value for this node for this category
+            levelNode.setNodevalue(m_dataMgr.getValue(nodeID, rtcCat, curTime, rWindow));
 
-                // node service count
-                levelNode.setNodesvccount(m_dataMgr.getServiceCount(nodeID, rtcCat));
+            // node service count
+            levelNode.setNodesvccount(m_dataMgr.getServiceCount(nodeID, rtcCat));
 
-                // node service down count
-                levelNode.setNodesvcdowncount(m_dataMgr.getServiceDownCount(nodeID, rtcCat));
+            // node service down count
+            levelNode.setNodesvcdowncount(m_dataMgr.getServiceDownCount(nodeID, rtcCat));
 
-                // add the node
-                levelCat.getNode().add(levelNode);
-            }
+            // add the node
+            levelCat.getNode().add(levelNode);
         }
 
         // add category
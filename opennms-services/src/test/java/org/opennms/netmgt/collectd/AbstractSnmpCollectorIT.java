@@ -124,9 +124,9 @@ public abstract class AbstractSnmpCollectorIT implements InitializingBean, TestC
 
     private final static String TEST_NODE_LABEL = "TestNode"; 
 
-    private CollectionSpecification m_collectionSpecification;
+    protected CollectionSpecification m_collectionSpecification;
 
-    private SnmpCollectionAgent m_collectionAgent;
+    protected SnmpCollectionAgent m_collectionAgent;
 
     private SnmpAgentConfig m_agentConfig;
 
@@ -28,9 +28,66 @@
 
 package org.opennms.netmgt.collectd;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.core.collection.test.JUnitCollector;
+import org.opennms.core.test.snmp.annotations.JUnitSnmpAgent;
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.api.CollectionStatus;
+import org.opennms.netmgt.collection.support.builder.ColumnarCollectionSet;
+import org.springframework.transaction.annotation.Transactional;
+
 public class SnmpCollectorIT extends AbstractSnmpCollectorIT {
     @Override
     protected AbstractSnmpCollector createSnmpCollector() {
         return new SnmpCollector();
     }
+
+    /**
+     * The values that are stored in a columnar collection set while they are
+     * collected must be the same as the ones converted from the tree.
+     */
+    @Test
+    @Transactional
+    @JUnitCollector(
+                    datacollectionConfig = "/org/opennms/netmgt/config/datacollection-brocade-config.xml",
+                    datacollectionType = "snmp"
+            )
+    @JUnitSnmpAgent(resource = "/org/opennms/netmgt/snmp/brocadeTestData1.properties")
+    public void testColumnarCollect() throws Exception {
+        final CollectionSet collectionSet = m_collectionSpecification.collect(m_collectionAgent);
+        assertEquals(CollectionStatus.SUCCEEDED, collectionSet.getStatus());
+        final ColumnarCollectionSet converted = new SnmpCollectionSetToCollectionSetDTOConverter()
+                .withParameters(m_collectionSpecification.getServiceParameters())
+                .convertToColumnar((SnmpCollectionSet)collectionSet);
+
+        System.setProperty(SnmpCollector.COLUMNAR_SYS_PROP, "true");
+        try {
+            final CollectionSet columnar = m_collectionSpecification.collect(m_collectionAgent);
+            assertTrue(columnar instanceof ColumnarCollectionSet);
+            assertEquals(CollectionStatus.SUCCEEDED, columnar.getStatus());
+            assertTrue(converted.getAttributeCount() > 0);
+            assertEquals(getAttributes(converted), getAttributes((ColumnarCollectionSet)columnar));
+        } finally {
+            System.clearProperty(SnmpCollector.COLUMNAR_SYS_PROP);
+        }
+    }
+
+    private static List<String> getAttributes(ColumnarCollectionSet collectionSet) {
+        final List<String> attributes = new ArrayList<>();
+        for (int resource = 0; resource < collectionSet.getResourceCount(); resource++) {
+            for (int attribute = collectionSet.getAttributeStart(resource); attribute < collectionSet.getAttributeEnd(resource); attribute++) {
+                attributes.add(collectionSet.getResource(resource) + "/" + collectionSet.getAttributeType(attribute).getGroup()
+                        + "/" + collectionSet.getAttributeType(attribute).getName() + "="
+                        + (collectionSet.isStringAttribute(attribute) ? collectionSet.getStringValue(attribute) : collectionSet.getNumericValue(attribute)));
+            }
+        }
+        attributes.sort(null);
+        return attributes;
+    }
 }
@@ -36,6 +36,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.opennms.netmgt.poller.OutageOperation;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.QueryManager;
 
@@ -141,6 +142,15 @@ public class MockQueryManager implements QueryManager {
         // TODO Auto-generated method stub
     }
 
+    @Override
+    public List<Integer> applyOutageOperations(List<OutageOperation> operations) {
+        final List<Integer> outageIds = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            outageIds.add(null);
+        }
+        return outageIds;
+    }
+
     @Override
     public List<java.lang.String[]> getNodeServices(int nodeId) {
         return null;
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BatchingOutageWriterTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingOutageWriterTest.class);
+
+    private QueryManager m_queryManager;
+    private EventForwarder m_eventForwarder;
+    private BatchingOutageWriter m_writer;
+
+    private final AtomicInteger m_nextOutageId = new AtomicInteger(1);
+    private final AtomicInteger m_transactions = new AtomicInteger();
+    private final AtomicInteger m_logs = new AtomicInteger();
+    private final AtomicInteger m_events = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        m_queryManager = mock(QueryManager.class);
+        when(m_queryManager.applyOutageOperations(anyList())).thenAnswer(invocation -> {
+            m_transactions.incrementAndGet();
+            final List<OutageOperation> operations = invocation.getArgument(0);
+            return operations.stream()
+                    .map(op -> op.getType() == OutageOperation.Type.OPEN ? m_nextOutageId.getAndIncrement() : op.getOutageId())
+                    .collect(Collectors.toList());
+        });
+
+        m_eventForwarder = mock(EventForwarder.class);
+        doAnswer(invocation -> {
+            final Log log = invocation.getArgument(0);
+            m_logs.incrementAndGet();
+            m_events.addAndGet(log.getEvents().getEventCount());
+            return null;
+        }).when(m_eventForwarder).sendNow(any(Log.class));
+
+        m_writer = new BatchingOutageWriter(m_queryManager, m_eventForwarder, 50, 1000);
+        m_writer.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_writer.stop();
+    }
+
+    /**
+     * Simulates a core router failure: every service behind it goes down and
+     * comes back, and each transition opens or resolves an outage and sends an event.
+     */
+    @Test(timeout = 60000)
+    public void canBatchMassOutage() throws Exception {
+        final int numServices = 20000;
+        final Date now = new Date();
+
+        final long start = System.nanoTime();
+        final List<CompletableFuture<Integer>> opened = new ArrayList<>(numServices);
+        for (int i = 0; i < numServices; i++) {
+            opened.add(m_writer.submit(OutageOperation.open(i, "10.0.0.1", "ICMP", now)));
+            m_writer.sendEvent(new EventBuilder("uei.opennms.org/nodes/nodeLostService", "test").setNodeid(i).getEvent());
+        }
+        CompletableFuture.allOf(opened.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        m_writer.flush();
+        LOG.info("Wrote {} outages and {} events in {}ms using {} transactions and {} logs",
+                numServices, numServices, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), m_transactions.get(), m_logs.get());
+
+        for (int i = 0; i < numServices; i++) {
+            assertEquals(Integer.valueOf(i + 1), opened.get(i).get());
+        }
+        assertEquals(numServices, m_events.get());
+        assertEquals(numServices, m_writer.getOperationsWritten());
+        // 2 * 20000 entries in batches of at most 1000
+        assertTrue("too many transactions: " + m_transactions.get(), m_transactions.get() <= numServices / 10);
+        assertTrue("too many logs: " + m_logs.get(), m_logs.get() <= numServices / 10);
+
+        final List<CompletableFuture<Integer>> resolved = new ArrayList<>(numServices);
+        for (int i = 0; i < numServices; i++) {
+            resolved.add(m_writer.submit(OutageOperation.resolve(i, "10.0.0.1", "ICMP", now)));
+        }
+        m_writer.flush();
+        for (int i = 0; i < numServices; i++) {
+            assertTrue(resolved.get(i).isDone());
+        }
+        assertTrue(m_writer.getLatencyHistogram().getCount() >= 3 * numServices);
+        LOG.info("Outage write latency: median={}ms, max={}ms", m_writer.getLatencyHistogram().getSnapshot().getMedian(),
+                m_writer.getLatencyHistogram().getSnapshot().getMax());
+    }
+
+    @Test
+    public void canSendEventsAfterCommit() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        when(m_queryManager.applyOutageOperations(anyList())).thenAnswer(invocation -> {
+            calls.add("apply");
+            final List<OutageOperation> operations = invocation.getArgument(0);
+            return operations.stream().map(op -> 42).collect(Collectors.toList());
+        });
+        doAnswer(invocation -> {
+            calls.add("send");
+            return null;
+        }).when(m_eventForwarder).sendNow(any(Log.class));
+
+        // Use a long window so that both entries end up in the same batch
+        final BatchingOutageWriter writer = new BatchingOutageWriter(m_queryManager, m_eventForwarder, TimeUnit.MINUTES.toMillis(1), 1000);
+        writer.start();
+        writer.sendEvent(new EventBuilder("uei.opennms.org/nodes/nodeLostService", "test").getEvent());
+        final CompletableFuture<Integer> outageId = writer.submit(OutageOperation.open(1, "10.0.0.1", "ICMP", new Date()));
+        writer.flush();
+        writer.stop();
+
+        assertEquals(Integer.valueOf(42), outageId.get());
+        assertEquals(2, calls.size());
+        assertEquals("apply", calls.get(0));
+        assertEquals("send", calls.get(1));
+    }
+
+    @Test
+    public void canFallBackToSingleOperations() throws Exception {
+        when(m_queryManager.applyOutageOperations(anyList())).thenThrow(new IllegalStateException("deadlock"));
+        when(m_queryManager.openOutagePendingLostEventId(eq(1), anyString(), anyString(), any(Date.class))).thenReturn(7);
+        when(m_queryManager.openOutagePendingLostEventId(eq(2), anyString(), anyString(), any(Date.class))).thenThrow(new IllegalStateException("no such service"));
+
+        final CompletableFuture<Integer> first = m_writer.submit(OutageOperation.open(1, "10.0.0.1", "ICMP", new Date()));
+        final CompletableFuture<Integer> second = m_writer.submit(OutageOperation.open(2, "10.0.0.2", "ICMP", new Date()));
+        final CompletableFuture<Integer> third = m_writer.submit(OutageOperation.setLostEvent(7, 99));
+        m_writer.flush();
+
+        assertEquals(Integer.valueOf(7), first.get());
+        assertNull(second.get());
+        assertEquals(Integer.valueOf(7), third.get());
+        verify(m_queryManager, times(1)).updateOpenOutageWithEventId(7, 99);
+        verify(m_queryManager, times(0)).updateResolvedOutageWithEventId(anyInt(), anyInt());
+        assertEquals(1, m_writer.getFailedBatches());
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.db.DataSourceFactory;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.MockDatabase;
+import org.opennms.core.test.db.TemporaryDatabaseAware;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.mock.MockEventUtil;
+import org.opennms.netmgt.mock.MockNetwork;
+import org.opennms.netmgt.mock.MockService;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * Applies batches of {@link OutageOperation}s against the database and checks
+ * the resulting outages and the number of statements it took.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+
+        // Override the default QueryManager with the DAO version
+        "classpath:/META-INF/opennms/applicationContext-pollerdTest.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(tempDbClass=MockDatabase.class,reuseDatabase=false)
+public class QueryManagerDaoIT implements TemporaryDatabaseAware<MockDatabase> {
+
+    private MockDatabase m_db;
+
+    private MockNetwork m_network;
+
+    @Autowired
+    private QueryManagerDaoImpl m_queryManager;
+
+    @Override
+    public void setTemporaryDatabase(MockDatabase database) {
+        m_db = database;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+
+        m_network = new MockNetwork();
+        m_network.addNode(1, "Router");
+        m_network.addInterface("192.168.1.1");
+        m_network.addService("ICMP");
+        m_network.addService("SMTP");
+        m_network.addNode(2, "Server");
+        m_network.addInterface("192.168.1.2");
+        m_network.addService("HTTP");
+
+        m_db.populate(m_network);
+        DataSourceFactory.setInstance(m_db);
+    }
+
+    @Test
+    public void canOpenAndResolveTheSameServiceInOneBatch() {
+        final MockService icmp = m_network.getService(1, "192.168.1.1", "ICMP");
+        final MockService smtp = m_network.getService(1, "192.168.1.1", "SMTP");
+        final Date lost = new Date(System.currentTimeMillis() - 60000);
+        final Date regained = new Date(System.currentTimeMillis() - 30000);
+
+        final long statements = m_queryManager.getOutageStatementCount();
+        final List<Integer> outageIds = m_queryManager.applyOutageOperations(Arrays.asList(
+                OutageOperation.open(1, "192.168.1.1", "ICMP", lost),
+                OutageOperation.open(1, "192.168.1.1", "SMTP", lost),
+                OutageOperation.resolve(1, "192.168.1.1", "ICMP", regained)));
+
+        assertEquals(3, outageIds.size());
+        assertNotNull(outageIds.get(0));
+        assertNotNull(outageIds.get(1));
+        assertNotEquals(outageIds.get(0), outageIds.get(1));
+        assertEquals(outageIds.get(0), outageIds.get(2));
+
+        // The resolved outage was inserted once, already resolved
+        assertEquals(1, m_db.countOutagesForService(icmp));
+        assertEquals(0, m_db.countOpenOutagesForService(icmp));
+        assertEquals(new Timestamp(regained.getTime()), m_db.getJdbcTemplate().queryForObject(
+                "SELECT ifRegainedService FROM outages WHERE outageId = ?", Timestamp.class, outageIds.get(0)));
+        assertEquals(1, m_db.countOpenOutagesForService(smtp));
+
+        // Services, open outages, ids and the insert
+        assertEquals(4, m_queryManager.getOutageStatementCount() - statements);
+    }
+
+    @Test
+    public void skipsMissingServicesAndOutages() {
+        final long statements = m_queryManager.getOutageStatementCount();
+        final List<Integer> outageIds = m_queryManager.applyOutageOperations(Arrays.asList(
+                OutageOperation.open(1, "192.168.1.1", "HTTP", new Date()),
+                OutageOperation.resolve(2, "192.168.1.2", "HTTP", new Date()),
+                OutageOperation.setLostEvent(12345, 1)));
+
+        assertEquals(Arrays.asList(null, null, null), outageIds);
+        assertEquals(0, m_db.countOutages());
+
+        // Services, outages and events, nothing to write
+        assertEquals(3, m_queryManager.getOutageStatementCount() - statements);
+    }
+
+    @Test
+    public void canUpdateTheEventIdsOfExistingOutages() {
+        final MockService icmp = m_network.getService(1, "192.168.1.1", "ICMP");
+        final MockService http = m_network.getService(2, "192.168.1.2", "HTTP");
+
+        final Event icmpLost = MockEventUtil.createNodeLostServiceEvent("Test", icmp);
+        m_db.writeEvent(icmpLost);
+        m_db.createOutage(icmp, icmpLost);
+        final Integer icmpOutageId = m_db.getJdbcTemplate().queryForObject("SELECT outageId FROM outages", Integer.class);
+
+        final Event icmpRegained = MockEventUtil.createNodeRegainedServiceEvent("Test", icmp);
+        m_db.writeEvent(icmpRegained);
+        final Event httpLost = MockEventUtil.createNodeLostServiceEvent("Test", http);
+        m_db.writeEvent(httpLost);
+
+        final long statements = m_queryManager.getOutageStatementCount();
+        final List<Integer> outageIds = m_queryManager.applyOutageOperations(Arrays.asList(
+                OutageOperation.resolve(1, "192.168.1.1", "ICMP", icmpRegained.getTime()),
+                OutageOperation.setRegainedEvent(icmpOutageId, icmpRegained.getDbid()),
+                OutageOperation.open(2, "192.168.1.2", "HTTP", httpLost.getTime())));
+        assertEquals(icmpOutageId, outageIds.get(0));
+        assertEquals(icmpOutageId, outageIds.get(1));
+        assertNotNull(outageIds.get(2));
+
+        // Services, outages, events, ids, the insert and the update
+        assertEquals(6, m_queryManager.getOutageStatementCount() - statements);
+
+        final List<Integer> eventOutageIds = m_queryManager.applyOutageOperations(Arrays.asList(
+                OutageOperation.setLostEvent(outageIds.get(2), httpLost.getDbid())));
+        assertEquals(Arrays.asList(outageIds.get(2)), eventOutageIds);
+
+        assertEquals(0, m_db.countOpenOutagesForService(icmp));
+        assertEquals(icmpLost.getDbid(), m_db.getJdbcTemplate().queryForObject(
+                "SELECT svcLostEventId FROM outages WHERE outageId = ?", Integer.class, icmpOutageId));
+        assertEquals(icmpRegained.getDbid(), m_db.getJdbcTemplate().queryForObject(
+                "SELECT svcRegainedEventId FROM outages WHERE outageId = ?", Integer.class, icmpOutageId));
+        assertEquals(httpLost.getDbid(), m_db.getJdbcTemplate().queryForObject(
+                "SELECT svcLostEventId FROM outages WHERE outageId = ?", Integer.class, outageIds.get(2)));
+        assertNull(m_db.getJdbcTemplate().queryForObject(
+                "SELECT svcRegainedEventId FROM outages WHERE outageId = ?", Integer.class, outageIds.get(2)));
+    }
+}
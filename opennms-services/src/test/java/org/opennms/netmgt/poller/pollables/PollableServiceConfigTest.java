@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.pollables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.collection.api.PersisterFactory;
+import org.opennms.netmgt.config.PollerConfig;
+import org.opennms.netmgt.config.dao.outages.api.ReadablePollOutagesDao;
+import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.config.poller.Service;
+import org.opennms.netmgt.poller.LocationAwarePollerClient;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.PollerResponse;
+import org.opennms.netmgt.poller.ServiceMonitorAdaptor;
+import org.opennms.netmgt.scheduler.Schedule;
+import org.opennms.netmgt.scheduler.Timer;
+import org.opennms.netmgt.threshd.api.ThresholdingService;
+
+/**
+ * Verifies that a poll started by {@link PollableServiceConfig#prefetchPoll(long)}
+ * is only consumed by the run of the schedule it was started for.
+ */
+public class PollableServiceConfigTest {
+
+    private LocationAwarePollerClient m_client;
+    private Schedule m_schedule;
+    private PollContext m_context;
+    private PollableService m_svc;
+    private PollableServiceConfig m_psc;
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+
+        m_client = mock(LocationAwarePollerClient.class, Mockito.RETURNS_DEEP_STUBS);
+
+        m_schedule = mock(Schedule.class);
+        m_context = mock(PollContext.class);
+        final PollableService svc = mock(PollableService.class);
+        when(svc.getSvcName()).thenReturn("SVC");
+        when(svc.getContext()).thenReturn(m_context);
+        when(svc.getSchedule()).thenReturn(m_schedule);
+        m_svc = svc;
+
+        final Service configuredSvc = new Service();
+        configuredSvc.setName("SVC");
+        final Package pkg = mock(Package.class);
+        when(pkg.getName()).thenReturn("PKG");
+        when(pkg.findService("SVC")).thenReturn(Optional.of(new Package.ServiceMatch(configuredSvc)));
+        final PollerConfig pollerConfig = mock(PollerConfig.class);
+        when(pollerConfig.getPackage("PKG")).thenReturn(pkg);
+
+        m_psc = new PollableServiceConfig(svc, pollerConfig, pkg, mock(Timer.class),
+                mock(PersisterFactory.class), mock(ThresholdingService.class), m_client,
+                mock(ReadablePollOutagesDao.class));
+    }
+
+    @Test
+    public void consumesThePollPrefetchedForTheCurrentRun() throws Exception {
+        final CompletableFuture<PollerResponse> prefetched = new CompletableFuture<>();
+        givenPolls(prefetched);
+        when(m_schedule.getTick()).thenReturn(1L);
+
+        assertFalse(m_psc.prefetchPoll(1L));
+        // checking again doesn't start a second poll
+        assertFalse(m_psc.prefetchPoll(1L));
+
+        prefetched.complete(response(PollStatus.up()));
+        assertTrue(m_psc.prefetchPoll(1L));
+
+        assertTrue(m_psc.poll().isUp());
+        verifyPolls(1);
+    }
+
+    @Test
+    public void discardsThePollPrefetchedForAnEarlierRun() throws Exception {
+        givenPolls(CompletableFuture.completedFuture(response(PollStatus.up())),
+                CompletableFuture.completedFuture(response(PollStatus.down("down"))));
+
+        // prefetched, but the run was skipped or suspended
+        assertTrue(m_psc.prefetchPoll(1L));
+        when(m_schedule.getTick()).thenReturn(2L);
+
+        final PollStatus status = m_psc.poll();
+        assertTrue(status.isDown());
+        assertEquals("down", status.getReason());
+        verifyPolls(2);
+        verify(m_context, times(1)).trackPoll(any(), any());
+    }
+
+    @Test
+    public void replacesThePollPrefetchedForAnEarlierRun() throws Exception {
+        givenPolls(CompletableFuture.completedFuture(response(PollStatus.up())),
+                CompletableFuture.completedFuture(response(PollStatus.down("down"))));
+
+        assertTrue(m_psc.prefetchPoll(1L));
+        assertTrue(m_psc.prefetchPoll(2L));
+        when(m_schedule.getTick()).thenReturn(2L);
+
+        assertTrue(m_psc.poll().isDown());
+        verifyPolls(2);
+    }
+
+    @Test
+    public void onlyAccountsForTheConsumedPollWhenThePrefetchedTickIsReplaced() throws Exception {
+        givenPolls(CompletableFuture.completedFuture(response(PollStatus.up())),
+                CompletableFuture.completedFuture(response(PollStatus.down("down"))));
+
+        assertTrue(m_psc.prefetchPoll(1L));
+        assertTrue(m_psc.prefetchPoll(2L));
+        when(m_schedule.getTick()).thenReturn(2L);
+
+        final PollStatus status = m_psc.poll();
+        assertTrue(status.isDown());
+
+        // Neither of the prefetched polls stored its latency while it was in flight
+        final ArgumentCaptor<ServiceMonitorAdaptor> adaptors = ArgumentCaptor.forClass(ServiceMonitorAdaptor.class);
+        verify(m_client.poll()
+                .withService(any())
+                .withMonitor(any())
+                .withTimeToLive(any())
+                .withAttributes(any()), times(2)).withAdaptor(adaptors.capture());
+        for (ServiceMonitorAdaptor adaptor : adaptors.getAllValues()) {
+            assertFalse(adaptor instanceof LatencyStoringServiceMonitorAdaptor);
+        }
+
+        // Only the poll of the run that consumed it is tracked
+        verify(m_context, times(1)).trackPoll(any(), any());
+        verify(m_context).trackPoll(m_svc, status);
+    }
+
+    @Test
+    public void discardsThePrefetchedPollOnRefresh() throws Exception {
+        givenPolls(CompletableFuture.completedFuture(response(PollStatus.up())),
+                CompletableFuture.completedFuture(response(PollStatus.down("down"))));
+        when(m_schedule.getTick()).thenReturn(1L);
+
+        assertTrue(m_psc.prefetchPoll(1L));
+        m_psc.refresh();
+
+        assertTrue(m_psc.poll().isDown());
+        verifyPolls(2);
+    }
+
+    @SafeVarargs
+    private final void givenPolls(CompletableFuture<PollerResponse> first, CompletableFuture<PollerResponse>... rest) {
+        when(m_client.poll()
+                .withService(any())
+                .withMonitor(any())
+                .withTimeToLive(any())
+                .withAttributes(any())
+                .withAdaptor(any())
+                .withAdaptor(any())
+                .withPatternVariables(any())
+                .execute()).thenReturn(first, rest);
+    }
+
+    private void verifyPolls(int count) {
+        verify(m_client.poll()
+                .withService(any())
+                .withMonitor(any())
+                .withTimeToLive(any())
+                .withAttributes(any())
+                .withAdaptor(any())
+                .withAdaptor(any())
+                .withPatternVariables(any()), times(count)).execute();
+    }
+
+    private static PollerResponse response(PollStatus status) {
+        final PollerResponse response = mock(PollerResponse.class);
+        when(response.getPollStatus()).thenReturn(status);
+        return response;
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.OnmsOutage;
+import org.opennms.netmgt.rtc.datablock.RTCAvailability;
+import org.opennms.netmgt.rtc.datablock.RTCCategoryAvailability;
+import org.opennms.netmgt.rtc.datablock.RTCNode;
+
+/**
+ * Verifies that the availability maintained incrementally by the {@link DataManager}
+ * matches the availability calculated from the outages by the {@link AvailabilityServiceHibernateImpl}.
+ */
+public class AvailabilityParityTest {
+
+    private static final long ROLLING_WINDOW = TimeUnit.DAYS.toMillis(1);
+
+    private static final int NUM_NODES = 20;
+
+    private static final String[] SERVICES = new String[] { "ICMP", "SNMP", "HTTP" };
+
+    private final Random random = new Random(42);
+
+    private final RTCCategoryAvailability availability = new RTCCategoryAvailability("NOC", ROLLING_WINDOW);
+
+    private final List<RTCNode> services = new ArrayList<>();
+
+    private final Map<RTCNode, List<OnmsOutage>> outagesByService = new HashMap<>();
+
+    @Test
+    public void canMatchAvailabilityServiceCalculations() {
+        final long now = System.currentTimeMillis();
+
+        // Load the services with outages that started up to two windows ago
+        final InetAddress ip = InetAddressUtils.addr("192.168.1.1");
+        for (int nodeId = 1; nodeId <= NUM_NODES; nodeId++) {
+            for (String svcName : SERVICES) {
+                final RTCNode service = new RTCNode(nodeId, ip, svcName, ROLLING_WINDOW);
+                long lostTime = now - 2 * ROLLING_WINDOW + random.nextInt((int)TimeUnit.HOURS.toMillis(4));
+                while (lostTime < now) {
+                    final long regainedTime = lostTime + random.nextInt((int)TimeUnit.HOURS.toMillis(6));
+                    if (regainedTime >= now) {
+                        addOutage(service, lostTime, -1);
+                        break;
+                    }
+                    addOutage(service, lostTime, regainedTime);
+                    lostTime = regainedTime + random.nextInt((int)TimeUnit.HOURS.toMillis(8));
+                }
+                availability.addService(nodeId, service.getOutages());
+                services.add(service);
+            }
+        }
+        verifyParity(System.currentTimeMillis());
+
+        // Open and close outages as events would
+        for (RTCNode service : services) {
+            final long t = System.currentTimeMillis();
+            if (service.isServiceCurrentlyDown()) {
+                if (random.nextBoolean()) {
+                    final long lostTime = service.nodeRegainedService(t);
+                    availability.closeOutage(service.getNodeID(), lostTime, t);
+                    closeOutage(service, t);
+                }
+            } else if (random.nextInt(4) == 0) {
+                service.nodeLostService(t);
+                availability.addOutage(service.getNodeID(), t, -1);
+                outagesByService.get(service).add(toOutage(t, -1));
+            }
+        }
+        verifyParity(System.currentTimeMillis());
+
+        // Remove some of the services
+        for (int i = 0; i < services.size(); i += 5) {
+            final RTCNode service = services.remove(i);
+            availability.removeService(service.getNodeID(), service.getOutages());
+        }
+        verifyParity(System.currentTimeMillis());
+
+        // Slide the window forward until all of the closed outages have expired
+        final long start = System.currentTimeMillis();
+        for (int hours = 1; hours <= 30; hours++) {
+            verifyParity(start + TimeUnit.HOURS.toMillis(hours) + random.nextInt(60000));
+        }
+    }
+
+    private void addOutage(RTCNode service, long lostTime, long regainedTime) {
+        service.addSvcTime(lostTime, regainedTime);
+        outagesByService.computeIfAbsent(service, s -> new ArrayList<>()).add(toOutage(lostTime, regainedTime));
+    }
+
+    private void closeOutage(RTCNode service, long regainedTime) {
+        final List<OnmsOutage> outages = outagesByService.get(service);
+        outages.get(outages.size() - 1).setIfRegainedService(new Date(regainedTime));
+    }
+
+    private static OnmsOutage toOutage(long lostTime, long regainedTime) {
+        final OnmsOutage outage = new OnmsOutage();
+        outage.setIfLostService(new Date(lostTime));
+        if (regainedTime > 0) {
+            outage.setIfRegainedService(new Date(regainedTime));
+        }
+        return outage;
+    }
+
+    private void verifyParity(long curTime) {
+        final Date windowStart = new Date(curTime - ROLLING_WINDOW);
+        final Date windowEnd = new Date(curTime);
+
+        // Group the outages by node, using the same selection criteria as the availability service
+        final Map<Integer, List<OnmsOutage>> outagesByNode = new HashMap<>();
+        final Map<Integer, Integer> numServicesByNode = new HashMap<>();
+        for (RTCNode service : services) {
+            numServicesByNode.merge(service.getNodeID(), 1, Integer::sum);
+            final List<OnmsOutage> outagesForNode = outagesByNode.computeIfAbsent(service.getNodeID(), n -> new ArrayList<>());
+            for (OnmsOutage outage : outagesByService.getOrDefault(service, new ArrayList<>())) {
+                if (outage.getIfLostService().after(windowEnd)) {
+                    continue;
+                }
+                if (outage.getIfRegainedService() == null
+                        || (outage.getIfRegainedService().after(windowStart) && !outage.getIfRegainedService().after(windowEnd))) {
+                    outagesForNode.add(outage);
+                }
+            }
+        }
+
+        double outageTimeInCategory = 0.0;
+        int numServicesInCategory = 0;
+        for (Map.Entry<Integer, List<OnmsOutage>> entry : outagesByNode.entrySet()) {
+            final int nodeId = entry.getKey();
+            final List<OnmsOutage> outages = entry.getValue();
+            final double outageTime = AvailabilityServiceHibernateImpl.getOutageTimeInWindow(outages, windowStart, windowEnd);
+            final int numServices = numServicesByNode.get(nodeId);
+            final long numServicesDown = outages.stream()
+                    .filter(outage -> outage.getIfRegainedService() == null)
+                    .count();
+
+            final RTCAvailability nodeAvailability = availability.getAvailability(nodeId, curTime);
+            assertEquals(RTCUtils.getOutagePercentage(outageTime, ROLLING_WINDOW, numServices), nodeAvailability.getValue(curTime), 0.0001);
+            assertEquals(numServices, nodeAvailability.getServiceCount());
+            assertEquals(numServicesDown, nodeAvailability.getServiceDownCount());
+
+            numServicesInCategory += numServices;
+            outageTimeInCategory += outageTime;
+        }
+
+        assertEquals(outagesByNode.keySet(), availability.getNodeIds());
+        final RTCAvailability categoryAvailability = availability.getAvailability(curTime);
+        assertEquals(RTCUtils.getOutagePercentage(outageTimeInCategory, ROLLING_WINDOW, numServicesInCategory), categoryAvailability.getValue(curTime), 0.0001);
+        assertEquals(numServicesInCategory, categoryAvailability.getServiceCount());
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.aggregation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.core.ipc.sink.api.AggregatorType;
+
+/**
+ * Measures {@link Aggregator#aggregate(Object)} and {@link ShardedAggregator#aggregate(Object)}
+ * through an {@link AggregatingMessageProducer},
+ * using the completion size and interval of the syslog and trap sink modules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AggregatorBenchmark {
+
+    private static final int COMPLETION_SIZE = 1000;
+
+    private static final int COMPLETION_INTERVAL_MS = 500;
+
+    private static final int NUM_MESSAGES = 4096;
+
+    /**
+     * Number of distinct aggregation keys (i.e. sources, or exporters).
+     */
+    @Param({"1", "64", "1024"})
+    public int numKeys;
+
+    @Param({"DEFAULT", "SHARDED"})
+    public AggregatorType aggregatorType;
+
+    private final LongAdder dispatched = new LongAdder();
+
+    private AggregatingMessageProducer<Message, List<Message>> producer;
+
+    private Message[] messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        producer = new AggregatingMessageProducer<Message, List<Message>>("benchmark",
+                new ArrayListAggregationPolicy<>(COMPLETION_SIZE, COMPLETION_INTERVAL_MS, Message::getKey),
+                aggregatorType, null) {
+            @Override
+            public void dispatch(List<Message> message) {
+                dispatched.add(message.size());
+            }
+        };
+
+        messages = new Message[NUM_MESSAGES];
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+            messages[i] = new Message(i % numKeys, "<189>338: *Jan 17 17:05:36.608: %SYS-5-CONFIG_I: Configured from console by console");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        producer.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void aggregate(final Cursor cursor) {
+        producer.send(messages[cursor.next++ & (NUM_MESSAGES - 1)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void aggregateContended(final Cursor cursor) {
+        producer.send(messages[cursor.next++ & (NUM_MESSAGES - 1)]);
+    }
+
+    public static class Message {
+        private final Integer key;
+        private final String payload;
+
+        public Message(final int key, final String payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+
+        public Integer getKey() {
+            return key;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
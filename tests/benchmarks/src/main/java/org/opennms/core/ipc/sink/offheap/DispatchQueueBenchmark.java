@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.opennms.core.ipc.sink.api.DispatchQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the enqueue/dequeue throughput of the off-heap {@link DispatchQueue}.
+ *
+ * Every invocation spools {@link #BURST} messages into the queue and then drains it again,
+ * which emulates a Minion losing, and then recovering, its connection to the broker.
+ * When {@link #offHeap} is enabled, the in-memory portion is sized so that most of the burst
+ * is written to and read back from disk by the selected {@link #implementation}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DispatchQueueBenchmark {
+
+    private static final int BURST = 1000;
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    @Param({"256", "4096"})
+    public int messageSize;
+
+    @Param({"queue-file", "segment-log"})
+    public String implementation;
+
+    private Path directory;
+
+    private DispatchQueue<byte[]> queue;
+
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("dispatch-queue-benchmark");
+        queue = createQueue(directory);
+
+        message = new byte[messageSize];
+        final byte[] text = "<189>338: *Jan 17 17:05:36.608: %SYS-5-CONFIG_I: Configured from console by console ".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < messageSize; i++) {
+            message[i] = text[i % text.length];
+        }
+    }
+
+    protected DispatchQueue<byte[]> createQueue(final Path directory) throws Exception {
+        final int inMemoryQueueSize = offHeap ? BATCH_SIZE : BURST;
+        final long maxFileSizeInBytes = offHeap ? 1024L * 1024L * 1024L : 0;
+        if ("segment-log".equals(implementation)) {
+            return new SegmentLogOffHeapDispatchQueue<>(m -> m, m -> m, "benchmark", directory,
+                    inMemoryQueueSize, BATCH_SIZE, maxFileSizeInBytes);
+        } else {
+            return new QueueFileOffHeapDispatchQueue<>(m -> m, m -> m, "benchmark", directory,
+                    inMemoryQueueSize, BATCH_SIZE, maxFileSizeInBytes);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void spoolAndDrain(final Blackhole blackhole) throws Exception {
+        for (int i = 0; i < BURST; i++) {
+            queue.enqueue(message, "key");
+        }
+        for (int i = 0; i < BURST; i++) {
+            final Map.Entry<String, byte[]> entry = queue.dequeue();
+            blackhole.consume(entry);
+        }
+    }
+}
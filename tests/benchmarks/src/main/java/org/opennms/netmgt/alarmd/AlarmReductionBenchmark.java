@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.AlarmEntityNotifier;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+/**
+ * Measures {@link AlarmPersisterImpl#persist(Event)} during an event storm, where many threads
+ * reduce events into the same few alarms.
+ *
+ * The DAOs are backed by maps and count the statements that Hibernate would issue: one for
+ * every query or load that misses the session, and one for every entity that is dirty when
+ * the session is flushed. Queries flush the session first, loads by id do not. The statements
+ * and the events are reported as auxiliary counters next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AlarmReductionBenchmark {
+
+    private static final int NUM_EVENTS = 1024;
+
+    /**
+     * Number of distinct reduction keys in the storm.
+     */
+    @Param({"1", "64"})
+    public int numKeys;
+
+    /**
+     * Maximum number of events reduced per transaction, 1 reduces every event on its own.
+     */
+    @Param({"1", "100"})
+    public int maxReductionBatchSize;
+
+    /**
+     * The counters of the thread running the benchmark method, which is also the one
+     * running the transactions.
+     */
+    private final ThreadLocal<Counters> counters = new ThreadLocal<>();
+
+    private final ThreadLocal<Session> sessions = new ThreadLocal<>();
+
+    private final Map<String, OnmsAlarm> alarmsByReductionKey = new ConcurrentHashMap<>();
+
+    private final Map<Integer, OnmsAlarm> alarmsById = new ConcurrentHashMap<>();
+
+    private final AtomicInteger alarmIds = new AtomicInteger();
+
+    private AlarmPersisterImpl alarmPersister;
+
+    private Event[] storm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        alarmPersister = new AlarmPersisterImpl();
+        alarmPersister.setAlarmDao(proxy(AlarmDao.class, this::alarmDao));
+        alarmPersister.setEventDao(proxy(EventDao.class, this::eventDao));
+        alarmPersister.setAlarmChangeListener(proxy(AlarmEntityNotifier.class, (method, args) -> null));
+        alarmPersister.setTransactionOperations(new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+                final Session session = new Session();
+                sessions.set(session);
+                try {
+                    final T result = action.doInTransaction(null);
+                    session.flush();
+                    return result;
+                } finally {
+                    sessions.remove();
+                }
+            }
+        });
+        alarmPersister.setMaxReductionBatchSize(maxReductionBatchSize);
+
+        storm = new Event[NUM_EVENTS];
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            final AlarmData alarmData = new AlarmData();
+            alarmData.setAlarmType(1);
+            alarmData.setReductionKey("uei.opennms.org/generic/traps/SNMP_Link_Down::" + (i % numKeys) + ":1");
+
+            final Event event = new Event();
+            event.setDbid(i + 1);
+            event.setUei("uei.opennms.org/generic/traps/SNMP_Link_Down");
+            event.setTime(new Date());
+            event.setAlarmData(alarmData);
+            storm[i] = event;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    /**
+     * The number of statements issued and of events persisted, summed over all threads.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long statements;
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+            events = 0;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public OnmsAlarm persist(final Cursor cursor, final Counters counters) {
+        this.counters.set(counters);
+        counters.events++;
+        return alarmPersister.persist(storm[cursor.next++ & (NUM_EVENTS - 1)]);
+    }
+
+    private void countStatements(final int count) {
+        counters.get().statements += count;
+    }
+
+    private Object alarmDao(final String method, final Object[] args) {
+        final Session session = sessions.get();
+        switch (method) {
+            case "findByReductionKey":
+                session.flush();
+                countStatements(1);
+                final OnmsAlarm found = alarmsByReductionKey.get((String) args[0]);
+                if (found != null) {
+                    session.alarms.put(found.getId(), found);
+                }
+                return found;
+            case "get":
+                return session.load((Integer) args[0]);
+            case "save":
+                final OnmsAlarm alarm = (OnmsAlarm) args[0];
+                alarm.setId(alarmIds.incrementAndGet());
+                alarmsById.put(alarm.getId(), alarm);
+                alarmsByReductionKey.put(alarm.getReductionKey(), alarm);
+                session.dirty(alarm);
+                return alarm.getId();
+            case "update":
+            case "saveOrUpdate":
+                session.dirty(args[0]);
+                return null;
+            case "flush":
+                session.flush();
+                return null;
+            default:
+                throw new UnsupportedOperationException(method);
+        }
+    }
+
+    private Object eventDao(final String method, final Object[] args) {
+        final Session session = sessions.get();
+        switch (method) {
+            case "get":
+                countStatements(1);
+                final OnmsEvent event = new OnmsEvent();
+                event.setId((Integer) args[0]);
+                event.setEventUei("uei.opennms.org/generic/traps/SNMP_Link_Down");
+                event.setEventTime(new Date());
+                event.setEventSeverity(OnmsSeverity.MINOR.getId());
+                event.setEventLogMsg("Agent Interface Down (linkDown Trap)");
+                return event;
+            case "update":
+            case "saveOrUpdate":
+                session.dirty(args[0]);
+                return null;
+            case "deletePreviousEventsForAlarm":
+                session.flush();
+                countStatements(1);
+                return 0;
+            default:
+                throw new UnsupportedOperationException(method);
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(final Class<T> type, final Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(handler, args);
+            }
+            return handler.invoke(method.getName(), args);
+        }));
+    }
+
+    /**
+     * The entities loaded and modified within a transaction.
+     */
+    private class Session {
+        private final Map<Integer, OnmsAlarm> alarms = new ConcurrentHashMap<>();
+        private final Set<Object> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private OnmsAlarm load(final Integer id) {
+            return alarms.computeIfAbsent(id, k -> {
+                countStatements(1);
+                return alarmsById.get(k);
+            });
+        }
+
+        private void dirty(final Object entity) {
+            if (entity instanceof OnmsAlarm) {
+                alarms.put(((OnmsAlarm) entity).getId(), (OnmsAlarm) entity);
+            }
+            dirty.add(entity);
+        }
+
+        private void flush() {
+            countStatements(dirty.size());
+            dirty.clear();
+        }
+    }
+}
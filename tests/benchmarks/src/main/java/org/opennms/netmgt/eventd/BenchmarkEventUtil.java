@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * An {@link EventUtil} that answers all of the node related lookups with
+ * constants so that the expansion can be benchmarked without a database.
+ */
+public class BenchmarkEventUtil extends AbstractEventUtil {
+
+    public BenchmarkEventUtil(MetricRegistry registry) {
+        super(registry);
+    }
+
+    @Override
+    public String getHardwareFieldValue(String parm, long nodeId) {
+        return "hardware";
+    }
+
+    @Override
+    public String getHostName(int nodeId, String hostip) {
+        return "router1.example.org";
+    }
+
+    @Override
+    public String getIfAlias(long nodeId, String ipAddr) {
+        return "uplink";
+    }
+
+    @Override
+    public String getAssetFieldValue(String parm, long nodeId) {
+        return "asset";
+    }
+
+    @Override
+    public String getForeignId(long nodeId) {
+        return Long.toString(nodeId);
+    }
+
+    @Override
+    public String getForeignSource(long nodeId) {
+        return "Routers";
+    }
+
+    @Override
+    public String getNodeLabel(long nodeId) {
+        return "router1";
+    }
+
+    @Override
+    public String getNodeLocation(long nodeId) {
+        return "Default";
+    }
+
+    @Override
+    public String getPrimaryInterface(long nodeId) {
+        return "192.168.1.1";
+    }
+}
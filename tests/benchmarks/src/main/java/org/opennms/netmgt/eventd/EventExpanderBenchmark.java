@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.config.DefaultEventConfDao;
+import org.opennms.netmgt.xml.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.FileSystemResource;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Measures {@link EventExpander#expandEvent(Event)} against the stock eventconf.
+ *
+ * The expansion modifies the event in place, so every invocation builds a new event.
+ * The cost of doing so is measured separately by {@link #buildEventOnly()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EventExpanderBenchmark {
+
+    @Param({"linkDown", "ciscoConfigMan", "nodeLostService", "unknown"})
+    public String eventType;
+
+    private EventExpander eventExpander;
+
+    @Setup
+    public void setUp() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+
+        final DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        eventConfDao.afterPropertiesSet();
+
+        eventExpander = new EventExpander(registry);
+        eventExpander.setEventConfDao(eventConfDao);
+        eventExpander.setEventUtil(new BenchmarkEventUtil(registry));
+        eventExpander.afterPropertiesSet();
+    }
+
+    @Benchmark
+    public Event buildEventOnly() {
+        return EventFixtures.byName(eventType);
+    }
+
+    @Benchmark
+    public Event expandEvent() {
+        final Event event = EventFixtures.byName(eventType);
+        eventExpander.expandEvent(event);
+        return event;
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.net.InetAddress;
+import java.util.Date;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Realistic events used as input by the eventd and eventconf benchmarks.
+ *
+ * Every call returns a fresh instance since the code under test is allowed
+ * to modify the events it processes.
+ */
+public abstract class EventFixtures {
+
+    private static final InetAddress AGENT_ADDRESS = InetAddressUtils.addr("192.168.1.1");
+
+    /**
+     * A generic SNMP linkDown trap, as created by trapd before the UEI is resolved.
+     */
+    public static Event linkDownTrap() {
+        final EventBuilder eb = new EventBuilder(null, "trapd");
+        eb.setTime(new Date());
+        eb.setCommunity("public");
+        eb.setSnmpVersion("v2c");
+        eb.setSnmpHost(InetAddressUtils.str(AGENT_ADDRESS));
+        eb.setInterface(AGENT_ADDRESS);
+        eb.setHost(InetAddressUtils.str(AGENT_ADDRESS));
+        eb.setNodeid(1);
+        eb.setEnterpriseId(".1.3.6.1.6.3.1.1.5");
+        eb.setGeneric(2);
+        eb.setSpecific(0);
+        eb.setIfIndex(3);
+        eb.addParam(".1.3.6.1.2.1.2.2.1.1.3", 3);
+        eb.addParam(".1.3.6.1.2.1.2.2.1.7.3", 1);
+        eb.addParam(".1.3.6.1.2.1.2.2.1.8.3", 2);
+        return eb.getEvent();
+    }
+
+    /**
+     * An enterprise specific trap that is matched through its mask in a vendor event file.
+     */
+    public static Event ciscoConfigManTrap() {
+        final EventBuilder eb = new EventBuilder(null, "trapd");
+        eb.setTime(new Date());
+        eb.setCommunity("public");
+        eb.setSnmpVersion("v1");
+        eb.setSnmpHost(InetAddressUtils.str(AGENT_ADDRESS));
+        eb.setInterface(AGENT_ADDRESS);
+        eb.setNodeid(1);
+        eb.setEnterpriseId(".1.3.6.1.4.1.9.9.43.2");
+        eb.setGeneric(6);
+        eb.setSpecific(1);
+        eb.addParam(".1.3.6.1.4.1.9.9.43.1.1.6.1.3.42", 1);
+        eb.addParam(".1.3.6.1.4.1.9.9.43.1.1.6.1.4.42", 2);
+        eb.addParam(".1.3.6.1.4.1.9.9.43.1.1.6.1.5.42", 3);
+        return eb.getEvent();
+    }
+
+    /**
+     * An internal event that already carries its UEI.
+     */
+    public static Event nodeLostService() {
+        final EventBuilder eb = new EventBuilder("uei.opennms.org/nodes/nodeLostService", "OpenNMS.Poller.DefaultPollContext");
+        eb.setTime(new Date());
+        eb.setNodeid(1);
+        eb.setInterface(AGENT_ADDRESS);
+        eb.setService("ICMP");
+        eb.addParam("eventReason", "Timeout exceeded for ICMP");
+        return eb.getEvent();
+    }
+
+    /**
+     * An event with no matching definition, which falls back to the default definitions.
+     */
+    public static Event unknown() {
+        final EventBuilder eb = new EventBuilder(null, "trapd");
+        eb.setTime(new Date());
+        eb.setInterface(AGENT_ADDRESS);
+        eb.setEnterpriseId(".1.3.6.1.4.1.99999.1");
+        eb.setGeneric(6);
+        eb.setSpecific(42);
+        eb.addParam(".1.3.6.1.4.1.99999.1.1", "some value");
+        return eb.getEvent();
+    }
+
+    public static Event byName(final String name) {
+        switch (name) {
+            case "linkDown":
+                return linkDownTrap();
+            case "ciscoConfigMan":
+                return ciscoConfigManTrap();
+            case "nodeLostService":
+                return nodeLostService();
+            case "unknown":
+                return unknown();
+            default:
+                throw new IllegalArgumentException("Unknown event fixture: " + name);
+        }
+    }
+}
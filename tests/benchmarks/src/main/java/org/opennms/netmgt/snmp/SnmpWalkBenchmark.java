@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.mock.snmp.MockSnmpAgent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Walks a generated ifTable/ifXTable from the {@link MockSnmpAgent} with the
+ * SNMP4J strategy.
+ *
+ * The <code>static</code> mode uses the configured PDU sizes the same way
+ * walks did before {@link AgentPduProfiles}, <code>adaptive</code> learns
+ * the sizes per agent and <code>pipelined</code> additionally splits the
+ * columns across {@link #PIPELINE_DEPTH} outstanding requests. The agent
+ * only accepts small messages, so the configured sizes are too big for it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SnmpWalkBenchmark {
+
+    private static final String IF_TABLE = ".1.3.6.1.2.1.2.2.1";
+
+    private static final String IF_X_TABLE = ".1.3.6.1.2.1.31.1.1.1";
+
+    private static final int IF_TABLE_COLUMNS = 22;
+
+    private static final int IF_X_TABLE_COLUMNS = 19;
+
+    private static final int PIPELINE_DEPTH = 4;
+
+    @Param({"static", "adaptive", "pipelined"})
+    public String mode;
+
+    @Param({"100", "1000"})
+    public int interfaces;
+
+    private File moFile;
+
+    private MockSnmpAgent agent;
+
+    private SnmpAgentConfig agentConfig;
+
+    private AgentPduProfiles profiles;
+
+    private List<SnmpObjId> columns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        columns = new ArrayList<>();
+        moFile = File.createTempFile("snmp-walk-benchmark", ".properties");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(moFile.toPath(), StandardCharsets.US_ASCII))) {
+            for (int column = 1; column <= IF_TABLE_COLUMNS; column++) {
+                columns.add(SnmpObjId.get(IF_TABLE + "." + column));
+                for (int ifIndex = 1; ifIndex <= interfaces; ifIndex++) {
+                    out.println(IF_TABLE + "." + column + "." + ifIndex + " = Counter32: " + (column * ifIndex));
+                }
+            }
+            for (int column = 1; column <= IF_X_TABLE_COLUMNS; column++) {
+                columns.add(SnmpObjId.get(IF_X_TABLE + "." + column));
+                for (int ifIndex = 1; ifIndex <= interfaces; ifIndex++) {
+                    out.println(IF_X_TABLE + "." + column + "." + ifIndex + " = Counter64: " + (column * (long)ifIndex));
+                }
+            }
+        }
+
+        agent = MockSnmpAgent.createAgentAndRun(moFile.toURI().toURL(), "127.0.0.1/0");
+
+        agentConfig = new SnmpAgentConfig(agent.getInetAddress());
+        agentConfig.setPort(agent.getPort());
+        agentConfig.setVersion(SnmpAgentConfig.VERSION2C);
+        agentConfig.setMaxVarsPerPdu(50);
+        agentConfig.setMaxRepetitions(50);
+        agentConfig.setMaxRequestSize(1400);
+        agentConfig.setTimeout(500);
+        agentConfig.setRetries(1);
+
+        if (!"static".equals(mode)) {
+            profiles = new AgentPduProfiles(null);
+            profiles.setPipelineDepth("pipelined".equals(mode) ? PIPELINE_DEPTH : 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        agent.shutDownAndWait();
+        moFile.delete();
+    }
+
+    @Benchmark
+    public int walk() throws Exception {
+        final AtomicInteger results = new AtomicInteger();
+        final List<Collectable> trackers = new ArrayList<>(columns.size());
+        for (final SnmpObjId column : columns) {
+            trackers.add(new ColumnTracker(column) {
+                @Override
+                protected void storeResult(SnmpResult res) {
+                    results.incrementAndGet();
+                }
+            });
+        }
+        final AggregateTracker tracker = new AggregateTracker(trackers);
+
+        try (SnmpWalker walker = profiles == null
+                ? SnmpUtils.createWalker(agentConfig, "ifTable", tracker)
+                : profiles.createWalker(SnmpUtils.getStrategy(), agentConfig, "ifTable", tracker)) {
+            walker.start();
+            walker.waitFor();
+            if (walker.failed()) {
+                throw new IllegalStateException(walker.getErrorMessage());
+            }
+        }
+        return results.get();
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.xml.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link RadixTreeSyslogParser#parse()} using the default grok patterns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SyslogParserBenchmark {
+
+    private static final String SYSTEM_ID = "00000000-0000-0000-0000-000000000000";
+
+    private static final String LOCATION = "Default";
+
+    private static final InetAddress SOURCE = InetAddress.getLoopbackAddress();
+
+    @Param({"cisco", "rfc5424", "bsd"})
+    public String messageType;
+
+    private SyslogdConfig config;
+
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws Exception {
+        final String configuration = "<syslogd-configuration><configuration syslog-port=\"10514\"/></syslogd-configuration>";
+        config = new SyslogdConfigFactory(new ByteArrayInputStream(configuration.getBytes(StandardCharsets.UTF_8)));
+
+        final String text;
+        switch (messageType) {
+            case "cisco":
+                text = "<189>338: *Jan 17 17:05:36.608: %SYS-5-CONFIG_I: Configured from console by console";
+                break;
+            case "rfc5424":
+                text = "<34>1 2003-10-11T22:14:15.003Z mymachine.example.com su - ID47 - BOM'su root' failed for lonvick on /dev/pts/8";
+                break;
+            case "bsd":
+                text = "<13>Mar 15 08:09:53 192.168.1.1 sshd[4242]: Accepted publickey for admin from 10.0.0.1 port 55622 ssh2";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message type: " + messageType);
+        }
+        message = text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public SyslogMessage parse() {
+        // A new parser is created for every message, as done by the sink consumer
+        return new RadixTreeSyslogParser(config, ByteBuffer.wrap(message)).parse();
+    }
+
+    @Benchmark
+    public Event convert() throws MessageDiscardedException {
+        // Complete conversion from the received buffer to an event, as done by the sink consumer
+        return new ConvertToEvent(SYSTEM_ID, LOCATION, SOURCE, 514, ByteBuffer.wrap(message), config).getEvent();
+    }
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2020-2020 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2020 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser;
+
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.TcpSession;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.IpFixMessageBuilder;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Measures the decoding of Netflow v9 and IPFIX packets, as done by {@link Netflow9UdpParser}
+ * and {@link IpfixUdpParser}, and the conversion of the decoded records to the transport format.
+ *
+ * The templates are learned once during the setup so that only the data packets are measured.
+ * The packet captures are shared with the unit tests of the parser.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FlowParserBenchmark {
+
+    private static final String FLOWS_FOLDER = "features/telemetry/protocols/netflow/parser/src/test/resources/flows";
+
+    private static final RecordEnrichment NO_ENRICHMENT = address -> Optional.empty();
+
+    @Param({"netflow9", "ipfix"})
+    public String protocol;
+
+    private Session session;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        session = new TcpSession(InetAddress.getLoopbackAddress());
+
+        switch (protocol) {
+            case "netflow9":
+                decode(read("netflow9_test_nprobe_tpl.dat"), NO_OP);
+                data = read("netflow9_test_nprobe_data.dat");
+                break;
+            case "ipfix":
+                decode(read("ipfix_test_vmware_vds_tpl.dat"), NO_OP);
+                data = read("ipfix_test_vmware_vds_data264.dat");
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported protocol: " + protocol);
+        }
+    }
+
+    @Benchmark
+    public void decode(final Blackhole blackhole) throws Exception {
+        decode(data, packet -> packet.getRecords().forEach(record -> {
+            for (final Value<?> value : record) {
+                blackhole.consume(value);
+            }
+        }));
+    }
+
+    @Benchmark
+    public void decodeAndBuildMessages(final Blackhole blackhole) throws Exception {
+        decode(data, packet -> packet.getRecords().forEach(record -> blackhole.consume(buildMessage(record))));
+    }
+
+    private byte[] buildMessage(final Iterable<Value<?>> record) {
+        if ("netflow9".equals(protocol)) {
+            return new Netflow9MessageBuilder(record, NO_ENRICHMENT).buildData();
+        } else {
+            return new IpFixMessageBuilder(record, NO_ENRICHMENT).buildData();
+        }
+    }
+
+    private void decode(final byte[] bytes, final PacketConsumer consumer) throws Exception {
+        final ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+        do {
+            if ("netflow9".equals(protocol)) {
+                final org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header header =
+                        new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header(
+                                slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header.SIZE));
+                consumer.accept(new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Packet(session, header, buffer));
+            } else {
+                final org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header header =
+                        new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header(
+                                slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header.SIZE));
+                consumer.accept(new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Packet(session, header,
+                        slice(buffer, header.payloadLength())));
+            }
+        } while (buffer.isReadable());
+    }
+
+    private static byte[] read(final String file) throws IOException {
+        return Files.readAllBytes(new File(new File(ConfigurationTestUtils.getTopProjectDirectory(), FLOWS_FOLDER), file).toPath());
+    }
+
+    @FunctionalInterface
+    private interface PacketConsumer {
+        void accept(RecordProvider packet) throws Exception;
+    }
+
+    private static final PacketConsumer NO_OP = packet -> {};
+}